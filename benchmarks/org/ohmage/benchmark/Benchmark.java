@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark;
+
+/**
+ * A single benchmark that is run by the {@link BenchmarkRunner}. A benchmark
+ * is set up once with the fixtures, and then its {@link #run(Blackhole)} is
+ * called repeatedly. Each call should perform the operation once on each of
+ * the fixture's items and return the number of operations that it
+ * performed, e.g. the number of survey responses that were converted, so
+ * that the results are reported per operation.
+ */
+public abstract class Benchmark {
+	/**
+	 * Returns the name of this benchmark as it is reported in the results,
+	 * e.g. "campaign.xml".
+	 *
+	 * @return The name of this benchmark.
+	 */
+	public abstract String getName();
+
+	/**
+	 * Prepares the state that is needed to run this benchmark. This is not
+	 * measured. By default, this does nothing.
+	 *
+	 * @param fixtures The fixtures.
+	 *
+	 * @throws Exception There was an error reading the fixtures.
+	 */
+	public void setUp(final Fixtures fixtures) throws Exception {
+		// Nothing to do by default.
+	}
+
+	/**
+	 * Runs the operation once on each of the fixture's items. Every result
+	 * must be given to the blackhole so that the JIT cannot eliminate the
+	 * work that generated it.
+	 *
+	 * @param blackhole The sink for the results.
+	 *
+	 * @return The number of operations that were performed.
+	 *
+	 * @throws Exception There was an error running the operation, which
+	 * 					 fails the benchmark.
+	 */
+	public abstract int run(Blackhole blackhole) throws Exception;
+}
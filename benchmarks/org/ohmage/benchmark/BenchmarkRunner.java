@@ -0,0 +1,498 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+/**
+ * Runs the benchmarks of the server's CPU-bound hot paths against the
+ * checked-in fixtures and writes the results as JSON for trend tracking.
+ *
+ * Each benchmark is warmed up for a number of iterations, which are
+ * discarded, and then measured for a number of iterations. An iteration
+ * calls the benchmark repeatedly until the iteration time has elapsed, and
+ * its score is the average time of one operation. The reported score is the
+ * mean of the measured iterations with the half-width of its 99.9%
+ * confidence interval as the error. The bytes allocated per operation are
+ * reported as well when the JVM can measure them.
+ *
+ * The results file has the same layout as JMH's JSON results, i.e. an array
+ * with one object per benchmark with a "primaryMetric" and
+ * "secondaryMetrics", so that the tools that chart JMH results can chart
+ * these.
+ *
+ * This is run by the "benchmark" Ant target. It may also be run directly
+ * with the compiled classes and the libraries on the classpath from the root
+ * of the project:
+ *
+ * java -Dwebapp.root=web/ -cp "build/classes:build/benchmarks:lib/*" \
+ *     org.ohmage.benchmark.BenchmarkRunner \
+ *     [-fixtures benchmarks/fixtures] [-results build/benchmark-results.json] \
+ *     [-wi 5] [-i 10] [-t 1000] [name regex]
+ *
+ * The 'webapp.root' system property is required by the observers to find
+ * the JavaScript that validates the stream data.
+ */
+public final class BenchmarkRunner {
+	/**
+	 * The benchmarks in the order in which they are run.
+	 */
+	private static final Class<?>[] BENCHMARKS = {
+		CampaignXmlBenchmark.class,
+		ConditionValidatorBenchmark.class,
+		SurveyUploadBenchmark.class,
+		SurveyResponseJsonBenchmark.class,
+		SurveyResponseCsvBenchmark.class,
+		SurveyResponseCsvLegacyBenchmark.class,
+		SurveyResponseJsonColumnsBenchmark.class,
+		SurveyResponseJsonColumnsLegacyBenchmark.class,
+		StreamValidateBenchmark.class,
+		MobilityPointBenchmark.class,
+		RequestBuilderBenchmark.class
+	};
+
+	/**
+	 * The two-sided 99.9% critical values of Student's t-distribution for 1
+	 * through 30 degrees of freedom. Beyond that, the normal distribution's
+	 * value is used.
+	 */
+	private static final double[] T_999 = {
+		636.619, 31.599, 12.924, 8.610, 6.869,
+		5.959, 5.408, 5.041, 4.781, 4.587,
+		4.437, 4.318, 4.221, 4.140, 4.073,
+		4.015, 3.965, 3.922, 3.883, 3.850,
+		3.819, 3.792, 3.768, 3.745, 3.725,
+		3.707, 3.690, 3.674, 3.659, 3.646
+	};
+	private static final double Z_999 = 3.291;
+
+	private static final int DEFAULT_WARMUP_ITERATIONS = 5;
+	private static final int DEFAULT_MEASUREMENT_ITERATIONS = 10;
+	private static final long DEFAULT_ITERATION_MILLIS = 1000;
+
+	/**
+	 * The results of one benchmark.
+	 */
+	private static final class Result {
+		private final String name;
+		private final double[] nanosPerOperation;
+		private final double bytesPerOperation;
+
+		private Result(
+				final String name,
+				final double[] nanosPerOperation,
+				final double bytesPerOperation) {
+
+			this.name = name;
+			this.nanosPerOperation = nanosPerOperation;
+			this.bytesPerOperation = bytesPerOperation;
+		}
+
+		private double getMean() {
+			double sum = 0;
+			for(double value : nanosPerOperation) {
+				sum += value;
+			}
+			return sum / nanosPerOperation.length;
+		}
+
+		private double getError() {
+			int n = nanosPerOperation.length;
+			if(n < 2) {
+				return Double.NaN;
+			}
+
+			double mean = getMean();
+			double squares = 0;
+			for(double value : nanosPerOperation) {
+				squares += (value - mean) * (value - mean);
+			}
+			double standardDeviation = Math.sqrt(squares / (n - 1));
+
+			double t = (n - 1 <= T_999.length) ? T_999[n - 2] : Z_999;
+			return t * standardDeviation / Math.sqrt(n);
+		}
+	}
+
+	private final File fixturesDirectory;
+	private final File resultsFile;
+	private final int warmupIterations;
+	private final int measurementIterations;
+	private final long iterationNanos;
+	private final Pattern filter;
+
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private final boolean measuresAllocations;
+
+	/**
+	 * Creates the runner.
+	 *
+	 * @param fixturesDirectory The directory with the fixtures.
+	 *
+	 * @param resultsFile The file to which the results are written.
+	 *
+	 * @param warmupIterations The number of iterations to discard.
+	 *
+	 * @param measurementIterations The number of iterations to measure.
+	 *
+	 * @param iterationMillis The length of each iteration.
+	 *
+	 * @param filter Only the benchmarks whose names contain a match for this
+	 * 				 are run.
+	 */
+	private BenchmarkRunner(
+			final File fixturesDirectory,
+			final File resultsFile,
+			final int warmupIterations,
+			final int measurementIterations,
+			final long iterationMillis,
+			final Pattern filter) {
+
+		this.fixturesDirectory = fixturesDirectory;
+		this.resultsFile = resultsFile;
+		this.warmupIterations = warmupIterations;
+		this.measurementIterations = measurementIterations;
+		this.iterationNanos = iterationMillis * 1000 * 1000;
+		this.filter = filter;
+
+		boolean tMeasuresAllocations = false;
+		if(threadBean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunThreadBean =
+				(com.sun.management.ThreadMXBean) threadBean;
+
+			if(sunThreadBean.isThreadAllocatedMemorySupported()) {
+				sunThreadBean.setThreadAllocatedMemoryEnabled(true);
+				tMeasuresAllocations = true;
+			}
+		}
+		measuresAllocations = tMeasuresAllocations;
+	}
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args The options, described in the class documentation, and
+	 * 			   an optional regular expression that selects the
+	 * 			   benchmarks by name.
+	 *
+	 * @throws Exception A benchmark failed or the results could not be
+	 * 					 written.
+	 */
+	public static void main(final String[] args) throws Exception {
+		File fixtures = new File("benchmarks/fixtures");
+		File results = new File("build/benchmark-results.json");
+		int warmupIterations = DEFAULT_WARMUP_ITERATIONS;
+		int measurementIterations = DEFAULT_MEASUREMENT_ITERATIONS;
+		long iterationMillis = DEFAULT_ITERATION_MILLIS;
+		Pattern filter = Pattern.compile("");
+
+		for(int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if("-fixtures".equals(arg)) {
+				fixtures = new File(args[++i]);
+			}
+			else if("-results".equals(arg)) {
+				results = new File(args[++i]);
+			}
+			else if("-wi".equals(arg)) {
+				warmupIterations = Integer.parseInt(args[++i]);
+			}
+			else if("-i".equals(arg)) {
+				measurementIterations = Integer.parseInt(args[++i]);
+			}
+			else if("-t".equals(arg)) {
+				iterationMillis = Long.parseLong(args[++i]);
+			}
+			else if(arg.startsWith("-")) {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+			else {
+				filter = Pattern.compile(arg);
+			}
+		}
+		if(measurementIterations < 1) {
+			throw new IllegalArgumentException(
+				"At least one measurement iteration is required.");
+		}
+
+		new BenchmarkRunner(
+				fixtures,
+				results,
+				warmupIterations,
+				measurementIterations,
+				iterationMillis,
+				filter)
+			.run();
+	}
+
+	/**
+	 * Sets up and runs each of the selected benchmarks and writes the
+	 * results.
+	 *
+	 * @throws Exception A benchmark failed or the results could not be
+	 * 					 written.
+	 */
+	private void run() throws Exception {
+		Fixtures fixtures = new Fixtures(fixturesDirectory);
+
+		List<Result> results = new ArrayList<Result>();
+		for(Class<?> benchmarkClass : BENCHMARKS) {
+			Benchmark benchmark = (Benchmark) benchmarkClass.newInstance();
+			if(! filter.matcher(benchmark.getName()).find()) {
+				continue;
+			}
+
+			benchmark.setUp(fixtures);
+			Result result = measure(benchmark);
+			results.add(result);
+
+			System.out.println(
+				String.format(
+					"%-32s %14.1f +/- %12.1f ns/op %12.0f B/op",
+					result.name,
+					result.getMean(),
+					result.getError(),
+					result.bytesPerOperation));
+		}
+
+		writeResults(results);
+		System.out.println("Results written to: " + resultsFile);
+	}
+
+	/**
+	 * Warms up and measures one benchmark.
+	 *
+	 * @param benchmark The benchmark, which has been set up.
+	 *
+	 * @return The benchmark's results.
+	 *
+	 * @throws Exception The benchmark failed.
+	 */
+	private Result measure(final Benchmark benchmark) throws Exception {
+		Blackhole blackhole = new Blackhole();
+
+		for(int i = 0; i < warmupIterations; i++) {
+			iteration(benchmark, blackhole, null);
+		}
+		System.gc();
+
+		double[] nanosPerOperation = new double[measurementIterations];
+		long totalOperations = 0;
+		long totalBytes = 0;
+		for(int i = 0; i < measurementIterations; i++) {
+			long[] operationsAndBytes = new long[2];
+			nanosPerOperation[i] =
+				iteration(benchmark, blackhole, operationsAndBytes);
+			totalOperations += operationsAndBytes[0];
+			totalBytes += operationsAndBytes[1];
+		}
+
+		return
+			new Result(
+				benchmark.getName(),
+				nanosPerOperation,
+				measuresAllocations ?
+					((double) totalBytes) / totalOperations :
+					Double.NaN);
+	}
+
+	/**
+	 * Runs one iteration of a benchmark.
+	 *
+	 * @param benchmark The benchmark.
+	 *
+	 * @param blackhole The sink for the benchmark's results.
+	 *
+	 * @param operationsAndBytes If not null, the number of operations and
+	 * 							 the number of bytes that were allocated
+	 * 							 are placed in this.
+	 *
+	 * @return The average number of nanoseconds per operation.
+	 *
+	 * @throws Exception The benchmark failed.
+	 */
+	private double iteration(
+			final Benchmark benchmark,
+			final Blackhole blackhole,
+			final long[] operationsAndBytes)
+			throws Exception {
+
+		long startBytes = allocatedBytes();
+		long start = System.nanoTime();
+		long deadline = start + iterationNanos;
+
+		long operations = 0;
+		long now;
+		do {
+			operations += benchmark.run(blackhole);
+			now = System.nanoTime();
+		} while(now < deadline);
+
+		long bytes = allocatedBytes() - startBytes;
+		blackhole.publish();
+
+		if(operations == 0) {
+			throw new IllegalStateException(
+				"The benchmark did not perform any operations: " +
+					benchmark.getName());
+		}
+		if(operationsAndBytes != null) {
+			operationsAndBytes[0] = operations;
+			operationsAndBytes[1] = bytes;
+		}
+
+		return ((double) (now - start)) / operations;
+	}
+
+	/**
+	 * Returns the number of bytes that have been allocated by this thread or
+	 * 0 if they cannot be measured.
+	 *
+	 * @return The number of bytes that have been allocated by this thread.
+	 */
+	private long allocatedBytes() {
+		if(! measuresAllocations) {
+			return 0;
+		}
+
+		return
+			((com.sun.management.ThreadMXBean) threadBean)
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Writes the results file.
+	 *
+	 * @param results The results.
+	 *
+	 * @throws IOException The file could not be written.
+	 */
+	private void writeResults(final List<Result> results) throws IOException {
+		File parent = resultsFile.getAbsoluteFile().getParentFile();
+		if((parent != null) && (! parent.isDirectory()) && (! parent.mkdirs())) {
+			throw new IOException("The directory could not be created: " + parent);
+		}
+
+		JsonGenerator generator =
+			new JsonFactory()
+				.createJsonGenerator(resultsFile, JsonEncoding.UTF8);
+		try {
+			generator.useDefaultPrettyPrinter();
+
+			generator.writeStartArray();
+			for(Result result : results) {
+				double mean = result.getMean();
+				double error = result.getError();
+
+				generator.writeStartObject();
+				generator.writeStringField("benchmark", result.name);
+				generator.writeStringField("mode", "avgt");
+				generator.writeNumberField("threads", 1);
+				generator.writeStringField(
+					"jdkVersion",
+					System.getProperty("java.version"));
+				generator.writeStringField(
+					"vmName",
+					System.getProperty("java.vm.name"));
+				generator.writeStringField(
+					"vmVersion",
+					System.getProperty("java.vm.version"));
+				generator.writeNumberField(
+					"warmupIterations",
+					warmupIterations);
+				generator.writeNumberField(
+					"measurementIterations",
+					measurementIterations);
+				generator.writeStringField(
+					"measurementTime",
+					(iterationNanos / 1000 / 1000) + " ms");
+
+				generator.writeObjectFieldStart("primaryMetric");
+				generator.writeNumberField("score", mean);
+				writeNumberOrNull(generator, "scoreError", error);
+				generator.writeArrayFieldStart("scoreConfidence");
+				writeNumberOrNull(generator, mean - error);
+				writeNumberOrNull(generator, mean + error);
+				generator.writeEndArray();
+				generator.writeStringField("scoreUnit", "ns/op");
+				generator.writeArrayFieldStart("rawData");
+				generator.writeStartArray();
+				for(double value : result.nanosPerOperation) {
+					generator.writeNumber(value);
+				}
+				generator.writeEndArray();
+				generator.writeEndArray();
+				generator.writeEndObject();
+
+				generator.writeObjectFieldStart("secondaryMetrics");
+				if(! Double.isNaN(result.bytesPerOperation)) {
+					generator.writeObjectFieldStart("gc.alloc.rate.norm");
+					generator.writeNumberField(
+						"score",
+						result.bytesPerOperation);
+					generator.writeStringField("scoreUnit", "B/op");
+					generator.writeEndObject();
+				}
+				generator.writeEndObject();
+
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+		}
+		finally {
+			generator.close();
+		}
+	}
+
+	/**
+	 * Writes a number field or null if the number is not a number.
+	 */
+	private static void writeNumberOrNull(
+			final JsonGenerator generator,
+			final String name,
+			final double value)
+			throws IOException {
+
+		generator.writeFieldName(name);
+		writeNumberOrNull(generator, value);
+	}
+
+	/**
+	 * Writes a number or null if the number is not a number.
+	 */
+	private static void writeNumberOrNull(
+			final JsonGenerator generator,
+			final double value)
+			throws IOException {
+
+		if(Double.isNaN(value)) {
+			generator.writeNull();
+		}
+		else {
+			generator.writeNumber(value);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark;
+
+/**
+ * Consumes the results of a benchmark so that the JIT cannot prove that they
+ * are unused and remove the code that computed them. The results are folded
+ * into a value that is published to a volatile field at the end of every
+ * iteration, which is cheap compared to the operations being measured.
+ */
+public final class Blackhole {
+	private static volatile int published;
+
+	private int accumulator = 0;
+
+	/**
+	 * Creates a new blackhole. Only the runner creates them.
+	 */
+	Blackhole() {}
+
+	/**
+	 * Consumes an object.
+	 *
+	 * @param value The object, which may be null.
+	 */
+	public void consume(final Object value) {
+		accumulator = (accumulator * 31) + System.identityHashCode(value);
+	}
+
+	/**
+	 * Consumes a long value.
+	 *
+	 * @param value The value.
+	 */
+	public void consume(final long value) {
+		accumulator = (accumulator * 31) + (int) (value ^ (value >>> 32));
+	}
+
+	/**
+	 * Consumes a boolean value.
+	 *
+	 * @param value The value.
+	 */
+	public void consume(final boolean value) {
+		accumulator = (accumulator * 31) + (value ? 1 : 0);
+	}
+
+	/**
+	 * Publishes everything that has been consumed.
+	 */
+	void publish() {
+		published = accumulator;
+	}
+}
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark;
+
+/**
+ * Parses the campaign's XML into a {@link org.ohmage.domain.campaign.Campaign}
+ * which is done whenever a campaign is created, updated, or read from the
+ * database.
+ */
+public class CampaignXmlBenchmark extends Benchmark {
+	private String xml;
+
+	@Override
+	public String getName() {
+		return "campaign.xml";
+	}
+
+	@Override
+	public void setUp(final Fixtures fixtures) throws Exception {
+		xml = fixtures.read("campaign.xml");
+	}
+
+	@Override
+	public int run(final Blackhole blackhole) throws Exception {
+		blackhole.consume(Fixtures.parseCampaign(xml));
+		return 1;
+	}
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.ohmage.config.grammar.custom.ConditionValidator;
+import org.ohmage.domain.campaign.RepeatableSet;
+import org.ohmage.domain.campaign.Survey;
+import org.ohmage.domain.campaign.SurveyItem;
+
+/**
+ * Validates each of the conditions in the campaign with the
+ * {@link ConditionValidator}, which is done for every condition when a
+ * campaign is validated.
+ */
+public class ConditionValidatorBenchmark extends Benchmark {
+	private final List<String> conditions = new ArrayList<String>();
+
+	@Override
+	public String getName() {
+		return "condition.validate";
+	}
+
+	@Override
+	public void setUp(final Fixtures fixtures) throws Exception {
+		for(Survey survey : fixtures.getCampaign().getSurveys().values()) {
+			addConditions(survey.getSurveyItems());
+		}
+		if(conditions.isEmpty()) {
+			throw new IllegalStateException(
+				"The campaign does not have any conditions.");
+		}
+	}
+
+	@Override
+	public int run(final Blackhole blackhole) throws Exception {
+		for(String condition : conditions) {
+			blackhole.consume(ConditionValidator.validate(condition));
+		}
+		return conditions.size();
+	}
+
+	/**
+	 * Adds the conditions of the survey items and the survey items in their
+	 * repeatable sets.
+	 *
+	 * @param surveyItems The survey items.
+	 */
+	private void addConditions(final Map<Integer, SurveyItem> surveyItems) {
+		for(SurveyItem surveyItem : surveyItems.values()) {
+			if(surveyItem.getCondition() != null) {
+				conditions.add(surveyItem.getCondition());
+			}
+			if(surveyItem instanceof RepeatableSet) {
+				addConditions(((RepeatableSet) surveyItem).getSurveyItems());
+			}
+		}
+	}
+}
@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.domain.Observer;
+import org.ohmage.domain.campaign.Campaign;
+import org.ohmage.domain.campaign.SurveyResponse;
+import org.ohmage.exception.DomainException;
+
+/**
+ * The checked-in fixtures that the benchmarks run against. They live in the
+ * "fixtures" directory of the benchmarks tree:
+ * <ul>
+ *   <li>campaign.xml - A campaign with three surveys of every common prompt
+ *     type, conditions, and a message.</li>
+ *   <li>survey_upload.json - A survey upload of responses to that campaign
+ *     as a client would send it.</li>
+ *   <li>observer.xml - An observer with an extended Mobility stream.</li>
+ *   <li>stream_upload.json - A stream upload of points for that
+ *     observer.</li>
+ *   <li>request_uris.txt - The mix of request URIs that the server
+ *     receives.</li>
+ * </ul>
+ * The parsed objects are cached so that each benchmark's set up only pays
+ * for them once.
+ */
+public final class Fixtures {
+	/**
+	 * The username that owns the survey responses.
+	 */
+	public static final String USERNAME = "benchmark.user";
+	/**
+	 * The client that uploaded the survey responses.
+	 */
+	public static final String CLIENT = "android";
+
+	private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+	private final File directory;
+
+	private Campaign campaign = null;
+	private List<JSONObject> surveyUploads = null;
+	private List<SurveyResponse> surveyResponses = null;
+	private Observer observer = null;
+	private List<JsonNode> streamUploads = null;
+
+	/**
+	 * Creates the fixtures from a directory.
+	 *
+	 * @param directory The fixtures directory.
+	 *
+	 * @throws IllegalArgumentException The directory does not exist.
+	 */
+	Fixtures(final File directory) {
+		if(! directory.isDirectory()) {
+			throw new IllegalArgumentException(
+				"The fixtures directory does not exist: " + directory);
+		}
+
+		this.directory = directory;
+	}
+
+	/**
+	 * Reads a fixture as a string.
+	 *
+	 * @param name The fixture's file name.
+	 *
+	 * @return The contents of the fixture.
+	 *
+	 * @throws IOException The fixture could not be read.
+	 */
+	public String read(final String name) throws IOException {
+		return
+			new String(
+				Files.readAllBytes(new File(directory, name).toPath()),
+				StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads a fixture's lines, ignoring blank lines and lines that begin
+	 * with '#'.
+	 *
+	 * @param name The fixture's file name.
+	 *
+	 * @return The lines.
+	 *
+	 * @throws IOException The fixture could not be read.
+	 */
+	public List<String> readLines(final String name) throws IOException {
+		List<String> result = new ArrayList<String>();
+		for(String line :
+			Files.readAllLines(
+				new File(directory, name).toPath(),
+				StandardCharsets.UTF_8)) {
+
+			String trimmed = line.trim();
+			if((trimmed.length() > 0) && (! trimmed.startsWith("#"))) {
+				result.add(trimmed);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the campaign parsed from campaign.xml.
+	 *
+	 * @return The campaign.
+	 *
+	 * @throws IOException The fixture could not be read.
+	 *
+	 * @throws DomainException The fixture is not a valid campaign.
+	 */
+	public Campaign getCampaign() throws IOException, DomainException {
+		if(campaign == null) {
+			campaign = parseCampaign(read("campaign.xml"));
+		}
+		return campaign;
+	}
+
+	/**
+	 * Returns the survey responses in survey_upload.json as they are given
+	 * to the survey upload.
+	 *
+	 * @return The survey responses' JSON.
+	 *
+	 * @throws IOException The fixture could not be read.
+	 *
+	 * @throws JSONException The fixture is not a JSON array of objects.
+	 */
+	public List<JSONObject> getSurveyUploads()
+			throws IOException, JSONException {
+
+		if(surveyUploads == null) {
+			JSONArray array = new JSONArray(read("survey_upload.json"));
+
+			List<JSONObject> result =
+				new ArrayList<JSONObject>(array.length());
+			for(int i = 0; i < array.length(); i++) {
+				result.add(array.getJSONObject(i));
+			}
+			surveyUploads = Collections.unmodifiableList(result);
+		}
+		return surveyUploads;
+	}
+
+	/**
+	 * Returns the survey responses in survey_upload.json converted against
+	 * the campaign.
+	 *
+	 * @return The survey responses.
+	 *
+	 * @throws IOException A fixture could not be read.
+	 *
+	 * @throws JSONException The upload is not a JSON array of objects.
+	 *
+	 * @throws DomainException One of the fixtures is invalid.
+	 */
+	public List<SurveyResponse> getSurveyResponses()
+			throws IOException, JSONException, DomainException {
+
+		if(surveyResponses == null) {
+			Campaign currCampaign = getCampaign();
+			List<JSONObject> uploads = getSurveyUploads();
+
+			List<SurveyResponse> result =
+				new ArrayList<SurveyResponse>(uploads.size());
+			for(JSONObject upload : uploads) {
+				result.add(
+					new SurveyResponse(
+						USERNAME,
+						currCampaign.getId(),
+						CLIENT,
+						currCampaign,
+						upload,
+						false));
+			}
+			surveyResponses = Collections.unmodifiableList(result);
+		}
+		return surveyResponses;
+	}
+
+	/**
+	 * Returns the observer parsed from observer.xml.
+	 *
+	 * @return The observer.
+	 *
+	 * @throws IOException The fixture could not be read.
+	 *
+	 * @throws DomainException The fixture is not a valid observer.
+	 */
+	public Observer getObserver() throws IOException, DomainException {
+		if(observer == null) {
+			observer = new Observer(read("observer.xml"));
+		}
+		return observer;
+	}
+
+	/**
+	 * Returns the points in stream_upload.json as they are given to the
+	 * stream upload.
+	 *
+	 * @return The points.
+	 *
+	 * @throws IOException The fixture could not be read.
+	 */
+	public List<JsonNode> getStreamUploads() throws IOException {
+		if(streamUploads == null) {
+			JsonNode array = JSON_MAPPER.readTree(read("stream_upload.json"));
+
+			List<JsonNode> result = new ArrayList<JsonNode>(array.size());
+			for(JsonNode point : array) {
+				result.add(point);
+			}
+			streamUploads = Collections.unmodifiableList(result);
+		}
+		return streamUploads;
+	}
+
+	/**
+	 * Parses a campaign the way a campaign creation does.
+	 *
+	 * @param xml The campaign's XML.
+	 *
+	 * @return The campaign.
+	 *
+	 * @throws DomainException The XML is not a valid campaign.
+	 */
+	static Campaign parseCampaign(final String xml) throws DomainException {
+		return
+			new Campaign(
+				null,
+				null,
+				"A campaign used to benchmark the server.",
+				Campaign.RunningState.RUNNING,
+				Campaign.PrivacyState.SHARED,
+				new Date(0),
+				xml,
+				false);
+	}
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.JsonNode;
+import org.ohmage.domain.DataStream;
+import org.ohmage.domain.MobilityPoint;
+import org.ohmage.domain.MobilityPoint.PrivacyState;
+import org.ohmage.domain.MobilityPoint.SubType;
+import org.ohmage.domain.Observer;
+
+/**
+ * Creates a {@link MobilityPoint} with its sensor data from each of the
+ * uploaded points' {@link DataStream}, which is done for every extended
+ * Mobility point that is read through the stream API.
+ */
+public class MobilityPointBenchmark extends Benchmark {
+	private final List<DataStream> dataStreams = new ArrayList<DataStream>();
+
+	@Override
+	public String getName() {
+		return "mobility.point.fromDataStream";
+	}
+
+	@Override
+	public void setUp(final Fixtures fixtures) throws Exception {
+		Observer observer = fixtures.getObserver();
+		for(JsonNode point : fixtures.getStreamUploads()) {
+			dataStreams.add(observer.getDataStream(point));
+		}
+	}
+
+	@Override
+	public int run(final Blackhole blackhole) throws Exception {
+		for(DataStream dataStream : dataStreams) {
+			blackhole.consume(
+				new MobilityPoint(
+					dataStream,
+					SubType.SENSOR_DATA,
+					PrivacyState.PRIVATE));
+		}
+		return dataStreams.size();
+	}
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletContext;
+
+import org.ohmage.request.RequestBuilder;
+
+/**
+ * Dispatches each of the request URIs in the mix with
+ * {@link RequestBuilder#knownUri(String)}, which is called for every request
+ * and compares the URI with the known URIs in the same order as
+ * {@link RequestBuilder#buildRequest(javax.servlet.http.HttpServletRequest)}.
+ * Building the requests themselves requires the services, so only the
+ * dispatch is measured.
+ */
+public class RequestBuilderBenchmark extends Benchmark {
+	private static final String CONTEXT_PATH = "/app";
+
+	private final RequestBuilder requestBuilder = new RequestBuilder();
+	private final List<String> uris = new ArrayList<String>();
+
+	@Override
+	public String getName() {
+		return "request.dispatch";
+	}
+
+	@Override
+	public void setUp(final Fixtures fixtures) throws Exception {
+		requestBuilder.setServletContext(
+			(ServletContext) Proxy.newProxyInstance(
+				ServletContext.class.getClassLoader(),
+				new Class<?>[] { ServletContext.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(
+							final Object proxy,
+							final Method method,
+							final Object[] args) {
+
+						if("getContextPath".equals(method.getName())) {
+							return CONTEXT_PATH;
+						}
+						throw new UnsupportedOperationException(
+							method.getName());
+					}
+				}));
+
+		for(String line : fixtures.readLines("request_uris.txt")) {
+			String[] parts = line.split("\\s+", 2);
+			int count = Integer.parseInt(parts[0]);
+			for(int i = 0; i < count; i++) {
+				uris.add(CONTEXT_PATH + parts[1]);
+			}
+		}
+	}
+
+	@Override
+	public int run(final Blackhole blackhole) throws Exception {
+		for(String uri : uris) {
+			blackhole.consume(requestBuilder.knownUri(uri));
+		}
+		return uris.size();
+	}
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.JsonNode;
+import org.ohmage.domain.Observer;
+
+/**
+ * Validates the data of each uploaded point against its stream's schema with
+ * {@link Observer.Stream#validateData(JsonNode)}, which is done for every
+ * point of every stream upload.
+ */
+public class StreamValidateBenchmark extends Benchmark {
+	private final List<Observer.Stream> streams = new ArrayList<Observer.Stream>();
+	private final List<JsonNode> data = new ArrayList<JsonNode>();
+
+	@Override
+	public String getName() {
+		return "observer.stream.validateData";
+	}
+
+	@Override
+	public void setUp(final Fixtures fixtures) throws Exception {
+		Observer observer = fixtures.getObserver();
+		for(JsonNode point : fixtures.getStreamUploads()) {
+			streams.add(
+				observer
+					.getStreamsMap()
+						.get(point.get("stream_id").getTextValue()));
+			data.add(point.get("data"));
+		}
+	}
+
+	@Override
+	public int run(final Blackhole blackhole) throws Exception {
+		int numPoints = data.size();
+		for(int i = 0; i < numPoints; i++) {
+			blackhole.consume(streams.get(i).validateData(data.get(i)));
+		}
+		return numPoints;
+	}
+}
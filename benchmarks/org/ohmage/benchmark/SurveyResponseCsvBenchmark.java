@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark;
+
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.ohmage.domain.Location;
+import org.ohmage.domain.campaign.Prompt;
+import org.ohmage.domain.campaign.PromptResponse;
+import org.ohmage.domain.campaign.Response;
+import org.ohmage.domain.campaign.Survey;
+import org.ohmage.domain.campaign.SurveyItem;
+import org.ohmage.domain.campaign.SurveyResponse;
+import org.ohmage.domain.campaign.SurveyResponse.ColumnKey;
+import org.ohmage.request.ColumnarResultBuilder;
+import org.ohmage.request.ColumnarResultBuilder.DateTimeColumn;
+import org.ohmage.request.ColumnarResultBuilder.DictionaryColumn;
+import org.ohmage.request.ColumnarResultBuilder.DoubleColumn;
+import org.ohmage.request.ColumnarResultBuilder.LongColumn;
+import org.ohmage.request.ColumnarResultBuilder.ObjectColumn;
+
+/**
+ * Writes the survey responses as CSV. The survey response read request
+ * builds its CSV in private methods that require a request, so this builds
+ * the same kinds of columns, the context columns and one column per prompt,
+ * in a {@link ColumnarResultBuilder} from the survey responses and writes
+ * its rows the way the read request does.
+ */
+public class SurveyResponseCsvBenchmark extends Benchmark {
+	/**
+	 * A writer that discards everything so that only the CSV is measured.
+	 */
+	protected static final Writer NULL_WRITER = new Writer() {
+		@Override
+		public void write(final char[] buffer, final int offset, final int length) {
+			// Discard it.
+		}
+
+		@Override
+		public void write(final String string, final int offset, final int length) {
+			// Discard it.
+		}
+
+		@Override
+		public void flush() {
+			// Nothing to flush.
+		}
+
+		@Override
+		public void close() {
+			// Nothing to close.
+		}
+	};
+
+	private List<SurveyResponse> surveyResponses;
+	private final Map<String, Survey> surveys = new TreeMap<String, Survey>();
+
+	@Override
+	public String getName() {
+		return "survey.response.toCsv";
+	}
+
+	@Override
+	public void setUp(final Fixtures fixtures) throws Exception {
+		surveyResponses = fixtures.getSurveyResponses();
+		surveys.putAll(fixtures.getCampaign().getSurveys());
+	}
+
+	@Override
+	public int run(final Blackhole blackhole) throws Exception {
+		ColumnarResultBuilder builder = build();
+		builder.writeCsvRows(NULL_WRITER);
+		blackhole.consume(builder);
+		return surveyResponses.size();
+	}
+
+	/**
+	 * Builds the columns from the survey responses.
+	 *
+	 * @return The builder with one row per survey response.
+	 */
+	protected ColumnarResultBuilder build() {
+		ColumnarResultBuilder builder = new ColumnarResultBuilder();
+		DictionaryColumn usernames =
+			builder.addColumn(
+				ColumnKey.USER_ID.toString(),
+				new DictionaryColumn());
+		DictionaryColumn clients =
+			builder.addColumn(
+				ColumnKey.CONTEXT_CLIENT.toString(),
+				new DictionaryColumn());
+		DictionaryColumn surveyIds =
+			builder.addColumn(
+				ColumnKey.SURVEY_ID.toString(),
+				new DictionaryColumn());
+		DateTimeColumn timestamps =
+			builder.addColumn(
+				ColumnKey.CONTEXT_UTC_TIMESTAMP.toString(),
+				new DateTimeColumn(true));
+		LongColumn epochMillis =
+			builder.addColumn(
+				ColumnKey.CONTEXT_EPOCH_MILLIS.toString(),
+				new LongColumn());
+		DictionaryColumn timezones =
+			builder.addColumn(
+				ColumnKey.CONTEXT_TIMEZONE.toString(),
+				new DictionaryColumn());
+		DictionaryColumn locationStatuses =
+			builder.addColumn(
+				ColumnKey.CONTEXT_LOCATION_STATUS.toString(),
+				new DictionaryColumn());
+		DoubleColumn latitudes =
+			builder.addColumn(
+				ColumnKey.CONTEXT_LOCATION_LATITUDE.toString(),
+				new DoubleColumn());
+		DoubleColumn longitudes =
+			builder.addColumn(
+				ColumnKey.CONTEXT_LOCATION_LONGITUDE.toString(),
+				new DoubleColumn());
+		DictionaryColumn privacyStates =
+			builder.addColumn(
+				ColumnKey.SURVEY_PRIVACY_STATE.toString(),
+				new DictionaryColumn());
+
+		Map<String, ObjectColumn> prompts = new TreeMap<String, ObjectColumn>();
+		for(Survey survey : surveys.values()) {
+			for(SurveyItem surveyItem : survey.getSurveyItems().values()) {
+				if(surveyItem instanceof Prompt) {
+					prompts.put(surveyItem.getId(), new ObjectColumn());
+				}
+			}
+		}
+		for(Map.Entry<String, ObjectColumn> prompt : prompts.entrySet()) {
+			builder.addColumn(
+				ColumnKey.URN_PROMPT_ID_PREFIX + prompt.getKey(),
+				prompt.getValue());
+		}
+
+		for(SurveyResponse surveyResponse : surveyResponses) {
+			usernames.add(surveyResponse.getUsername());
+			clients.add(surveyResponse.getClient());
+			surveyIds.add(surveyResponse.getSurvey().getId());
+			timestamps.add(
+				surveyResponse.getTime(),
+				surveyResponse.getTimezone());
+			epochMillis.add(surveyResponse.getTime());
+			timezones.add(surveyResponse.getTimezone().getID());
+			locationStatuses.add(
+				surveyResponse.getLocationStatus().toString());
+			Location location = surveyResponse.getLocation();
+			if(location != null) {
+				latitudes.add(location.getLatitude());
+				longitudes.add(location.getLongitude());
+			}
+			privacyStates.add(surveyResponse.getPrivacyState().toString());
+
+			for(Response response : surveyResponse.getResponses().values()) {
+				if(response instanceof PromptResponse) {
+					prompts.get(response.getId()).add(response.getResponse());
+				}
+			}
+
+			builder.endRow();
+		}
+
+		return builder;
+	}
+
+	/**
+	 * Returns the number of survey responses that are built.
+	 *
+	 * @return The number of survey responses.
+	 */
+	protected int getNumSurveyResponses() {
+		return surveyResponses.size();
+	}
+}
@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.joda.time.DateTime;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.domain.Location;
+import org.ohmage.domain.campaign.Prompt;
+import org.ohmage.domain.campaign.PromptResponse;
+import org.ohmage.domain.campaign.Response;
+import org.ohmage.domain.campaign.Survey;
+import org.ohmage.domain.campaign.SurveyItem;
+import org.ohmage.domain.campaign.SurveyResponse;
+import org.ohmage.domain.campaign.SurveyResponse.ColumnKey;
+import org.ohmage.request.survey.SurveyResponseReadRequest;
+import org.ohmage.util.DateTimeUtils;
+
+/**
+ * Writes the survey responses as CSV the way the survey response read
+ * request did before it had a {@link org.ohmage.request.ColumnarResultBuilder}:
+ * each column is a {@link JSONArray} of boxed values, the prompts' columns
+ * are kept in a map of their IDs to their JSON, and each cell is looked up
+ * by its column's key when the rows are written. The columns are the same
+ * as those of {@link SurveyResponseCsvBenchmark}, so the two measure the
+ * same output on the same fixture.
+ */
+public class SurveyResponseCsvLegacyBenchmark extends Benchmark {
+	private static final String JSON_KEY_CONTEXT =
+		SurveyResponseReadRequest.JSON_KEY_CONTEXT;
+	private static final String JSON_KEY_VALUES =
+		SurveyResponseReadRequest.JSON_KEY_VALUES;
+
+	private List<SurveyResponse> surveyResponses;
+	private final Map<String, Survey> surveys = new TreeMap<String, Survey>();
+
+	@Override
+	public String getName() {
+		return "survey.response.toCsv.legacy";
+	}
+
+	@Override
+	public void setUp(final Fixtures fixtures) throws Exception {
+		surveyResponses = fixtures.getSurveyResponses();
+		surveys.putAll(fixtures.getCampaign().getSurveys());
+	}
+
+	@Override
+	public int run(final Blackhole blackhole) throws Exception {
+		JSONArray keysOrdered = new JSONArray();
+		JSONObject result = build(keysOrdered);
+
+		StringBuilder resultBuilder = new StringBuilder();
+		int keyLength = keysOrdered.length();
+		int numSurveyResponses = surveyResponses.size();
+		for(int i = 0; i < numSurveyResponses; i++) {
+			for(int j = 0; j < keyLength; j++) {
+				Object currResult =
+					result
+						.getJSONObject(keysOrdered.getString(j))
+						.getJSONArray(JSON_KEY_VALUES)
+						.get(i);
+
+				if(! JSONObject.NULL.equals(currResult)) {
+					resultBuilder
+						.append(
+							"\"" +
+								currResult.toString().replace("\"", "\"\"") +
+								"\"");
+				}
+
+				if((j + 1) != keyLength) {
+					resultBuilder.append(',');
+				}
+			}
+			resultBuilder.append('\n');
+		}
+		SurveyResponseCsvBenchmark.NULL_WRITER.write(resultBuilder.toString());
+
+		blackhole.consume(result);
+		return numSurveyResponses;
+	}
+
+	/**
+	 * Builds the columns from the survey responses.
+	 *
+	 * @param keysOrdered The array to which the columns' keys are added in
+	 * 					  the order in which they are output.
+	 *
+	 * @return The columns' keys to their JSON, each with a "values" array
+	 * 		   with one value per survey response.
+	 *
+	 * @throws JSONException There was an error building the JSON.
+	 */
+	protected JSONObject build(
+			final JSONArray keysOrdered)
+			throws JSONException {
+
+		JSONArray usernames = new JSONArray();
+		JSONArray clients = new JSONArray();
+		JSONArray surveyIds = new JSONArray();
+		JSONArray timestamps = new JSONArray();
+		JSONArray epochMillisTimestamps = new JSONArray();
+		JSONArray timezones = new JSONArray();
+		JSONArray locationStatuses = new JSONArray();
+		JSONArray locationLatitude = new JSONArray();
+		JSONArray locationLongitude = new JSONArray();
+		JSONArray privacyStates = new JSONArray();
+
+		Map<String, JSONObject> prompts = new HashMap<String, JSONObject>();
+		for(Survey survey : surveys.values()) {
+			for(SurveyItem surveyItem : survey.getSurveyItems().values()) {
+				if(surveyItem instanceof Prompt) {
+					JSONObject promptJson = new JSONObject();
+					promptJson.put(JSON_KEY_CONTEXT, surveyItem.toJson());
+					promptJson.put(JSON_KEY_VALUES, new JSONArray());
+					prompts.put(surveyItem.getId(), promptJson);
+				}
+			}
+		}
+
+		for(SurveyResponse surveyResponse : surveyResponses) {
+			usernames.put(surveyResponse.getUsername());
+			clients.put(surveyResponse.getClient());
+			surveyIds.put(surveyResponse.getSurvey().getId());
+			timestamps.put(
+				DateTimeUtils.getIso8601DateString(
+					new DateTime(
+						surveyResponse.getTime(),
+						surveyResponse.getTimezone()),
+					true));
+			epochMillisTimestamps.put(surveyResponse.getTime());
+			timezones.put(surveyResponse.getTimezone().getID());
+			locationStatuses.put(surveyResponse.getLocationStatus().toString());
+			Location location = surveyResponse.getLocation();
+			if(location == null) {
+				locationLatitude.put(JSONObject.NULL);
+				locationLongitude.put(JSONObject.NULL);
+			}
+			else {
+				locationLatitude.put(location.getLatitude());
+				locationLongitude.put(location.getLongitude());
+			}
+			privacyStates.put(surveyResponse.getPrivacyState().toString());
+
+			Set<String> promptIdsWithResponse = new HashSet<String>();
+			for(Response response : surveyResponse.getResponses().values()) {
+				if(response instanceof PromptResponse) {
+					promptIdsWithResponse.add(response.getId());
+					prompts
+						.get(response.getId())
+							.getJSONArray(JSON_KEY_VALUES)
+								.put(response.getResponse());
+				}
+			}
+
+			Set<String> promptIdsWithoutResponse =
+				new HashSet<String>(prompts.keySet());
+			promptIdsWithoutResponse.removeAll(promptIdsWithResponse);
+			for(String currPromptId : promptIdsWithoutResponse) {
+				prompts
+					.get(currPromptId)
+						.getJSONArray(JSON_KEY_VALUES)
+							.put(JSONObject.NULL);
+			}
+		}
+
+		JSONObject result = new JSONObject();
+		add(result, keysOrdered, ColumnKey.USER_ID, usernames);
+		add(result, keysOrdered, ColumnKey.CONTEXT_CLIENT, clients);
+		add(result, keysOrdered, ColumnKey.SURVEY_ID, surveyIds);
+		add(result, keysOrdered, ColumnKey.CONTEXT_UTC_TIMESTAMP, timestamps);
+		add(
+			result,
+			keysOrdered,
+			ColumnKey.CONTEXT_EPOCH_MILLIS,
+			epochMillisTimestamps);
+		add(result, keysOrdered, ColumnKey.CONTEXT_TIMEZONE, timezones);
+		add(
+			result,
+			keysOrdered,
+			ColumnKey.CONTEXT_LOCATION_STATUS,
+			locationStatuses);
+		add(
+			result,
+			keysOrdered,
+			ColumnKey.CONTEXT_LOCATION_LATITUDE,
+			locationLatitude);
+		add(
+			result,
+			keysOrdered,
+			ColumnKey.CONTEXT_LOCATION_LONGITUDE,
+			locationLongitude);
+		add(result, keysOrdered, ColumnKey.SURVEY_PRIVACY_STATE, privacyStates);
+		for(String promptId : new TreeMap<String, JSONObject>(prompts).keySet()) {
+			String key = ColumnKey.URN_PROMPT_ID_PREFIX + promptId;
+			result.put(key, prompts.get(promptId));
+			keysOrdered.put(key);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of survey responses that are built.
+	 *
+	 * @return The number of survey responses.
+	 */
+	protected int getNumSurveyResponses() {
+		return surveyResponses.size();
+	}
+
+	/**
+	 * Adds a context column to the result.
+	 *
+	 * @param result The result.
+	 *
+	 * @param keysOrdered The columns' keys in order.
+	 *
+	 * @param key The column's key.
+	 *
+	 * @param values The column's values.
+	 *
+	 * @throws JSONException There was an error building the JSON.
+	 */
+	private static void add(
+			final JSONObject result,
+			final JSONArray keysOrdered,
+			final ColumnKey key,
+			final JSONArray values)
+			throws JSONException {
+
+		JSONObject column = new JSONObject();
+		column.put(JSON_KEY_VALUES, values);
+		result.put(key.toString(), column);
+		keysOrdered.put(key.toString());
+	}
+}
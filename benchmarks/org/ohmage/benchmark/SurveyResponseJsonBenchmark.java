@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark;
+
+import java.util.List;
+
+import org.ohmage.domain.campaign.SurveyResponse;
+
+/**
+ * Serializes the survey responses with {@link SurveyResponse#toJson(boolean,
+ * boolean, boolean, boolean, boolean, boolean, boolean, boolean, boolean,
+ * boolean, boolean, boolean, boolean, boolean, boolean, boolean, boolean)}
+ * with every column, which is what a survey response read in the JSON_ROWS
+ * format does for each row, and then writes the JSON as a string.
+ */
+public class SurveyResponseJsonBenchmark extends Benchmark {
+	private List<SurveyResponse> surveyResponses;
+
+	@Override
+	public String getName() {
+		return "survey.response.toJson";
+	}
+
+	@Override
+	public void setUp(final Fixtures fixtures) throws Exception {
+		surveyResponses = fixtures.getSurveyResponses();
+	}
+
+	@Override
+	public int run(final Blackhole blackhole) throws Exception {
+		for(SurveyResponse surveyResponse : surveyResponses) {
+			blackhole.consume(
+				surveyResponse
+					.toJson(
+						true,
+						false,
+						true,
+						true,
+						true,
+						true,
+						true,
+						false,
+						true,
+						true,
+						true,
+						true,
+						true,
+						true,
+						false,
+						true,
+						false)
+					.toString());
+		}
+		return surveyResponses.size();
+	}
+}
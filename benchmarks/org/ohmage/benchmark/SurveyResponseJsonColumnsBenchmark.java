@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.ohmage.request.ColumnarResultBuilder;
+
+/**
+ * Writes the survey responses in the JSON_COLUMNS format. The columns are
+ * built as they are for {@link SurveyResponseCsvBenchmark}, and then they
+ * are streamed to a JSON generator inside the same envelope as the survey
+ * response read's response.
+ */
+public class SurveyResponseJsonColumnsBenchmark
+		extends SurveyResponseCsvBenchmark {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	@Override
+	public String getName() {
+		return "survey.response.toJsonColumns";
+	}
+
+	@Override
+	public int run(final Blackhole blackhole) throws Exception {
+		ColumnarResultBuilder builder = build();
+
+		JsonGenerator generator = JSON_FACTORY.createJsonGenerator(NULL_WRITER);
+		generator.writeStartObject();
+		generator.writeStringField("result", "success");
+		generator.writeFieldName("data");
+		builder.writeJsonColumns(generator);
+		generator.writeEndObject();
+		generator.flush();
+
+		blackhole.consume(builder);
+		return getNumSurveyResponses();
+	}
+}
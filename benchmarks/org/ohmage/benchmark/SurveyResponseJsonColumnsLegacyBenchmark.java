@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Writes the survey responses in the JSON_COLUMNS format the way the survey
+ * response read request did before it had a
+ * {@link org.ohmage.request.ColumnarResultBuilder}: the columns are built as
+ * they are for {@link SurveyResponseCsvLegacyBenchmark}, put in the same
+ * envelope as {@link SurveyResponseJsonColumnsBenchmark}'s, and the whole
+ * response is converted to a string before it is written.
+ */
+public class SurveyResponseJsonColumnsLegacyBenchmark
+		extends SurveyResponseCsvLegacyBenchmark {
+
+	@Override
+	public String getName() {
+		return "survey.response.toJsonColumns.legacy";
+	}
+
+	@Override
+	public int run(final Blackhole blackhole) throws Exception {
+		JSONObject result = build(new JSONArray());
+
+		JSONObject resultJson = new JSONObject();
+		resultJson.put("result", "success");
+		resultJson.put("data", result);
+		SurveyResponseCsvBenchmark.NULL_WRITER.write(resultJson.toString());
+
+		blackhole.consume(result);
+		return getNumSurveyResponses();
+	}
+}
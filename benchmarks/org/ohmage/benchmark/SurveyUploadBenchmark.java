@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark;
+
+import java.util.List;
+
+import org.json.JSONObject;
+import org.ohmage.domain.campaign.Campaign;
+import org.ohmage.domain.campaign.SurveyResponse;
+
+/**
+ * Converts the uploaded survey responses' JSON into {@link SurveyResponse}
+ * objects the way
+ * {@link org.ohmage.service.CampaignServices#getSurveyResponses(String, String, Campaign, java.util.Collection, boolean)}
+ * does for every survey upload. The service itself is a singleton that is
+ * created by Spring with its queries, so its loop is repeated here.
+ */
+public class SurveyUploadBenchmark extends Benchmark {
+	private Campaign campaign;
+	private List<JSONObject> uploads;
+
+	@Override
+	public String getName() {
+		return "survey.upload.fromJson";
+	}
+
+	@Override
+	public void setUp(final Fixtures fixtures) throws Exception {
+		campaign = fixtures.getCampaign();
+		uploads = fixtures.getSurveyUploads();
+	}
+
+	@Override
+	public int run(final Blackhole blackhole) throws Exception {
+		for(JSONObject upload : uploads) {
+			blackhole.consume(
+				new SurveyResponse(
+					Fixtures.USERNAME,
+					campaign.getId(),
+					Fixtures.CLIENT,
+					campaign,
+					upload,
+					false));
+		}
+		return uploads.size();
+	}
+}
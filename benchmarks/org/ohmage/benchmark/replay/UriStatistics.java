@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark.replay;
+
+import java.util.Arrays;
+
+/**
+ * The replayed requests' timings and outcomes for one URI. This is safe to
+ * record into from multiple threads.
+ *
+ * Two times are kept for each request. The latency is measured from the
+ * time at which the request should have been sent according to the
+ * workload's schedule, so that the time that a request spends waiting
+ * behind slow requests is counted instead of hidden. The service time is
+ * measured from when the request was actually sent.
+ */
+final class UriStatistics {
+	/**
+	 * How a replayed request ended.
+	 */
+	static enum Outcome {
+		/**
+		 * The server responded with success.
+		 */
+		SUCCESS,
+		/**
+		 * The server responded with an ohmage failure, e.g. the request was
+		 * invalid for the replaying user.
+		 */
+		FAILURE,
+		/**
+		 * The request failed at the HTTP level, e.g. the connection was
+		 * refused, timed out, or the status was not 200.
+		 */
+		ERROR
+	}
+
+	private final String uri;
+
+	private long[] latencies = new long[16];
+	private long[] serviceTimes = new long[16];
+	private int count = 0;
+	private int failures = 0;
+	private int errors = 0;
+	private int skipped = 0;
+
+	/**
+	 * Creates the statistics for a URI.
+	 *
+	 * @param uri The URI.
+	 */
+	UriStatistics(final String uri) {
+		this.uri = uri;
+	}
+
+	/**
+	 * Returns the URI.
+	 *
+	 * @return The URI.
+	 */
+	String getUri() {
+		return uri;
+	}
+
+	/**
+	 * Records a replayed request.
+	 *
+	 * @param latencyNanos The time from the scheduled send until the
+	 * 					   response was read.
+	 *
+	 * @param serviceNanos The time from the actual send until the response
+	 * 					   was read.
+	 *
+	 * @param outcome How the request ended.
+	 */
+	synchronized void record(
+			final long latencyNanos,
+			final long serviceNanos,
+			final Outcome outcome) {
+
+		if(count == latencies.length) {
+			latencies = Arrays.copyOf(latencies, count * 2);
+			serviceTimes = Arrays.copyOf(serviceTimes, count * 2);
+		}
+		latencies[count] = latencyNanos;
+		serviceTimes[count] = serviceNanos;
+		count++;
+
+		if(Outcome.FAILURE.equals(outcome)) {
+			failures++;
+		}
+		else if(Outcome.ERROR.equals(outcome)) {
+			errors++;
+		}
+	}
+
+	/**
+	 * Records a request that was not replayed.
+	 */
+	synchronized void skip() {
+		skipped++;
+	}
+
+	/**
+	 * Adds all of another URI's records to this one's.
+	 *
+	 * @param other The other URI's statistics.
+	 */
+	synchronized void add(final UriStatistics other) {
+		synchronized(other) {
+			latencies = Arrays.copyOf(latencies, count + other.count);
+			serviceTimes = Arrays.copyOf(serviceTimes, count + other.count);
+			System.arraycopy(
+				other.latencies, 0, latencies, count, other.count);
+			System.arraycopy(
+				other.serviceTimes, 0, serviceTimes, count, other.count);
+			count += other.count;
+			failures += other.failures;
+			errors += other.errors;
+			skipped += other.skipped;
+		}
+	}
+
+	/**
+	 * Returns the number of replayed requests.
+	 *
+	 * @return The number of replayed requests.
+	 */
+	synchronized int getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the number of requests that the server failed.
+	 *
+	 * @return The number of ohmage failures.
+	 */
+	synchronized int getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Returns the number of requests that failed at the HTTP level.
+	 *
+	 * @return The number of errors.
+	 */
+	synchronized int getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Returns the number of requests that were not replayed.
+	 *
+	 * @return The number of skipped requests.
+	 */
+	synchronized int getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * Returns the latencies' percentiles.
+	 *
+	 * @param percentiles The percentiles, each between 0 and 100.
+	 *
+	 * @return The latencies in milliseconds in the same order as the
+	 * 		   percentiles or NaN if no requests were replayed.
+	 */
+	synchronized double[] getLatencyPercentiles(final double... percentiles) {
+		return percentiles(latencies, percentiles);
+	}
+
+	/**
+	 * Returns the service times' percentiles.
+	 *
+	 * @param percentiles The percentiles, each between 0 and 100.
+	 *
+	 * @return The service times in milliseconds in the same order as the
+	 * 		   percentiles or NaN if no requests were replayed.
+	 */
+	synchronized double[] getServicePercentiles(final double... percentiles) {
+		return percentiles(serviceTimes, percentiles);
+	}
+
+	/**
+	 * Computes the nearest-rank percentiles of the recorded times.
+	 *
+	 * @param times The times in nanoseconds. Only the first 'count' are
+	 * 				used.
+	 *
+	 * @param percentiles The percentiles.
+	 *
+	 * @return The percentiles in milliseconds.
+	 */
+	private double[] percentiles(
+			final long[] times,
+			final double[] percentiles) {
+
+		double[] result = new double[percentiles.length];
+		if(count == 0) {
+			Arrays.fill(result, Double.NaN);
+			return result;
+		}
+
+		long[] sorted = Arrays.copyOf(times, count);
+		Arrays.sort(sorted);
+		for(int i = 0; i < percentiles.length; i++) {
+			int rank = (int) Math.ceil((percentiles[i] / 100.0) * count);
+			int index = Math.min(Math.max(rank - 1, 0), count - 1);
+			result[i] = sorted[index] / 1000000.0;
+		}
+		return result;
+	}
+}
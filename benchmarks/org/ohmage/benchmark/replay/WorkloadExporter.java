@@ -0,0 +1,340 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.ohmage.request.InputKeys;
+import org.ohmage.request.Request;
+
+/**
+ * Exports a sanitized workload from the audit tables. Every audited request
+ * in a time range is written, in the order in which it was received, as a
+ * {@link WorkloadRequest}.
+ *
+ * The audit already omits the uploaded data and the passwords. The export
+ * additionally:
+ * <ul>
+ *   <li>replaces the authentication tokens with a placeholder for the
+ *     replaying user's token,</li>
+ *   <li>replaces the passwords and, on the requests that carry a password,
+ *     the username with placeholders for the replaying user's
+ *     credentials,</li>
+ *   <li>drops the device IDs and the media that the audit omitted, and</li>
+ *   <li>marks the uploads, whose payloads were never recorded, so that the
+ *     replay can skip them.</li>
+ * </ul>
+ * Only the first value of a parameter that was given more than once is
+ * kept, so such requests, which the server usually rejects, are replayed as
+ * if they had been valid.
+ *
+ * This is run by the "workload-export" Ant target. It may also be run
+ * directly with the compiled classes and the libraries on the classpath from
+ * the root of the project:
+ *
+ * java -cp "build/classes:build/benchmarks:lib/*" \
+ *     org.ohmage.benchmark.replay.WorkloadExporter \
+ *     -url jdbc:mysql://localhost:3306/ohmage -user ohmage -password ohmage \
+ *     [-start millis] [-end millis] [-output build/workload.jsonl]
+ */
+public final class WorkloadExporter {
+	/**
+	 * The value that the audit records in place of media.
+	 */
+	private static final String MEDIA_OMITTED = "<<<Media omitted.>>>";
+	/**
+	 * The beginning of the value that the audit records in place of values
+	 * that are too long to store.
+	 */
+	private static final String LONG_VALUE_OMITTED_PREFIX = "<<<Value exeeded ";
+
+	private static final String KEY_DEVICE_ID = "device_id";
+	private static final String UPLOAD_URI_SUFFIX = "/upload";
+
+	private static final String SQL_GET_AUDITS =
+		"SELECT a.id, art.request_type, a.uri, a.response, " +
+			"a.received_millis, a.respond_millis, " +
+			"ap.param_key, ap.param_value " +
+		"FROM audit a " +
+		"JOIN audit_request_type art ON a.request_type_id = art.id " +
+		"LEFT JOIN audit_parameter ap ON a.id = ap.audit_id " +
+		"WHERE a.received_millis >= ? " +
+		"AND a.received_millis <= ? " +
+		"ORDER BY a.received_millis + 0, a.id, ap.id";
+
+	private final String url;
+	private final String user;
+	private final String password;
+	private final long start;
+	private final long end;
+	private final File output;
+
+	/**
+	 * The audit that is currently being read.
+	 */
+	private long currentId = -1;
+	private String currentMethod;
+	private String currentUri;
+	private boolean currentSuccess;
+	private long currentReceived;
+	private long currentMillis;
+	private boolean currentUpload;
+	private boolean currentHasPassword;
+	private final Map<String, String> currentParameters =
+		new LinkedHashMap<String, String>();
+
+	/**
+	 * The time that the first exported request was received.
+	 */
+	private long firstReceived = -1;
+
+	private WorkloadExporter(
+			final String url,
+			final String user,
+			final String password,
+			final long start,
+			final long end,
+			final File output) {
+
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.start = start;
+		this.end = end;
+		this.output = output;
+	}
+
+	/**
+	 * Parses the options and exports the workload.
+	 *
+	 * @param args The options.
+	 *
+	 * @throws Exception The audits could not be read or the workload could
+	 * 					 not be written.
+	 */
+	public static void main(final String[] args) throws Exception {
+		String url = null;
+		String user = null;
+		String password = null;
+		long start = 0;
+		long end = Long.MAX_VALUE;
+		File output = new File("build/workload.jsonl");
+
+		for(int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if("-url".equals(arg)) {
+				url = args[++i];
+			}
+			else if("-user".equals(arg)) {
+				user = args[++i];
+			}
+			else if("-password".equals(arg)) {
+				password = args[++i];
+			}
+			else if("-start".equals(arg)) {
+				start = Long.parseLong(args[++i]);
+			}
+			else if("-end".equals(arg)) {
+				end = Long.parseLong(args[++i]);
+			}
+			else if("-output".equals(arg)) {
+				output = new File(args[++i]);
+			}
+			else {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+		if(url == null) {
+			throw new IllegalArgumentException("The JDBC URL is required.");
+		}
+
+		int exported =
+			new WorkloadExporter(url, user, password, start, end, output)
+				.export();
+		System.out.println(
+			"Exported " + exported + " requests to " + output + ".");
+	}
+
+	/**
+	 * Reads the audits and writes the workload.
+	 *
+	 * @return The number of requests that were written.
+	 *
+	 * @throws SQLException The audits could not be read.
+	 *
+	 * @throws IOException The workload could not be written.
+	 */
+	private int export() throws SQLException, IOException {
+		File parent = output.getAbsoluteFile().getParentFile();
+		if(parent != null) {
+			parent.mkdirs();
+		}
+
+		int exported = 0;
+		Connection connection =
+			DriverManager.getConnection(url, user, password);
+		try {
+			PreparedStatement statement =
+				connection.prepareStatement(
+					SQL_GET_AUDITS,
+					ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY);
+			// This makes MySQL's driver stream the rows instead of reading
+			// all of them into memory.
+			statement.setFetchSize(Integer.MIN_VALUE);
+			statement.setLong(1, start);
+			statement.setLong(2, end);
+
+			Writer writer =
+				Files.newBufferedWriter(
+					output.toPath(),
+					StandardCharsets.UTF_8);
+			try {
+				ResultSet rs = statement.executeQuery();
+				while(rs.next()) {
+					long id = rs.getLong("id");
+					if(id != currentId) {
+						exported += flush(writer);
+						begin(id, rs);
+					}
+
+					String key = rs.getString("param_key");
+					if(key != null) {
+						addParameter(key, rs.getString("param_value"));
+					}
+				}
+				exported += flush(writer);
+				rs.close();
+			}
+			finally {
+				writer.close();
+				statement.close();
+			}
+		}
+		finally {
+			connection.close();
+		}
+
+		return exported;
+	}
+
+	/**
+	 * Begins reading a new audit.
+	 *
+	 * @param id The audit's database ID.
+	 *
+	 * @param rs The result set positioned at the audit's first row.
+	 *
+	 * @throws SQLException The row could not be read.
+	 */
+	private void begin(final long id, final ResultSet rs) throws SQLException {
+		currentId = id;
+		currentMethod = rs.getString("request_type");
+		currentUri = rs.getString("uri");
+		currentSuccess =
+			Request.RESPONSE_SUCCESS_JSON_TEXT.equals(rs.getString("response"));
+		currentReceived = rs.getLong("received_millis");
+		currentMillis = rs.getLong("respond_millis") - currentReceived;
+		currentUpload = currentUri.endsWith(UPLOAD_URI_SUFFIX);
+		currentHasPassword = false;
+		currentParameters.clear();
+	}
+
+	/**
+	 * Sanitizes and adds one of the current audit's parameters.
+	 *
+	 * @param key The parameter's key.
+	 *
+	 * @param value The parameter's value.
+	 */
+	private void addParameter(final String key, final String value) {
+		if(currentParameters.containsKey(key) || KEY_DEVICE_ID.equals(key)) {
+			return;
+		}
+
+		if(MEDIA_OMITTED.equals(value) ||
+			((value != null) && value.startsWith(LONG_VALUE_OMITTED_PREFIX))) {
+
+			currentUpload = true;
+		}
+		else if(InputKeys.AUTH_TOKEN.equals(key) ||
+			InputKeys.KEYCLOAK_TOKEN.equals(key)) {
+
+			currentParameters.put(key, WorkloadRequest.PLACEHOLDER_AUTH_TOKEN);
+		}
+		else if(InputKeys.PASSWORD.equals(key) ||
+			InputKeys.NEW_PASSWORD.equals(key)) {
+
+			currentHasPassword = true;
+			currentParameters.put(key, WorkloadRequest.PLACEHOLDER_PASSWORD);
+		}
+		else {
+			currentParameters.put(key, value);
+		}
+	}
+
+	/**
+	 * Writes the current audit, if any, to the workload.
+	 *
+	 * @param writer The workload's writer.
+	 *
+	 * @return The number of requests that were written, either 0 or 1.
+	 *
+	 * @throws IOException The request could not be written.
+	 */
+	private int flush(final Writer writer) throws IOException {
+		if(currentId == -1) {
+			return 0;
+		}
+		if(firstReceived == -1) {
+			firstReceived = currentReceived;
+		}
+
+		// The password belongs to the user in the request, so both must be
+		// the replaying user's.
+		if(currentHasPassword && currentParameters.containsKey(InputKeys.USER)) {
+			currentParameters.put(
+				InputKeys.USER,
+				WorkloadRequest.PLACEHOLDER_USERNAME);
+		}
+
+		writer.write(
+			new WorkloadRequest(
+					currentReceived - firstReceived,
+					currentMethod,
+					currentUri,
+					currentParameters,
+					currentUpload,
+					currentMillis,
+					currentSuccess)
+				.toJson());
+		writer.write('\n');
+
+		currentId = -1;
+		return 1;
+	}
+}
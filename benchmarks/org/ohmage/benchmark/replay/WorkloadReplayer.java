@@ -0,0 +1,555 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark.replay;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.ohmage.lib.OhmageApi;
+import org.ohmage.lib.exception.ApiException;
+import org.ohmage.lib.exception.RequestErrorException;
+import org.ohmage.request.InputKeys;
+import org.ohmage.request.auth.AuthTokenRequest;
+
+/**
+ * Replays a workload that was exported by the {@link WorkloadExporter}
+ * against a running server and reports each URI's throughput and latency
+ * percentiles.
+ *
+ * The requests are sent on the workload's schedule divided by the speed-up,
+ * e.g. a speed-up of 10 replays an hour of traffic in six minutes, by a
+ * fixed number of threads that share one pooled {@link OhmageApi}. A
+ * speed-up of 0 sends the requests as fast as the threads allow. The
+ * latencies are measured from when each request should have been sent, so
+ * a server that cannot keep up shows it in the latencies instead of by
+ * quietly slowing down the replay.
+ *
+ * The requests are made as one user, whose credentials fill in the
+ * workload's placeholders. The user logs in once before the replay begins.
+ * Requests for data that the user cannot access are still made and are
+ * reported as failures. The uploads, whose payloads were not recorded, are
+ * skipped and counted.
+ *
+ * This is run by the "workload-replay" Ant target. It may also be run
+ * directly with the compiled classes and the libraries on the classpath from
+ * the root of the project:
+ *
+ * java -cp "build/classes:build/benchmarks:lib/*" \
+ *     org.ohmage.benchmark.replay.WorkloadReplayer \
+ *     -server localhost -username load.test -password secret \
+ *     [-port 8080] [-secure] [-client replay] \
+ *     [-auth-uri /app/user/auth_token] [-input build/workload.jsonl] \
+ *     [-results build/replay-results.json] [-speedup 1] [-concurrency 16]
+ */
+public final class WorkloadReplayer {
+	/**
+	 * The default number of threads that send the requests.
+	 */
+	private static final int DEFAULT_CONCURRENCY = 16;
+	/**
+	 * The percentiles that are reported.
+	 */
+	private static final double[] PERCENTILES = { 50, 90, 99, 100 };
+	private static final String[] PERCENTILE_NAMES =
+		{ "p50", "p90", "p99", "max" };
+
+	private static final String TOTAL = "TOTAL";
+
+	private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+	private final OhmageApi api;
+	private final String username;
+	private final String password;
+	private final String client;
+	private final String authUri;
+	private final double speedup;
+	private final int concurrency;
+	private final File resultsFile;
+
+	private final ConcurrentMap<String, UriStatistics> statistics =
+		new ConcurrentHashMap<String, UriStatistics>();
+
+	private WorkloadReplayer(
+			final OhmageApi api,
+			final String username,
+			final String password,
+			final String client,
+			final String authUri,
+			final double speedup,
+			final int concurrency,
+			final File resultsFile) {
+
+		this.api = api;
+		this.username = username;
+		this.password = password;
+		this.client = client;
+		this.authUri = authUri;
+		this.speedup = speedup;
+		this.concurrency = concurrency;
+		this.resultsFile = resultsFile;
+	}
+
+	/**
+	 * Parses the options and replays the workload.
+	 *
+	 * @param args The options.
+	 *
+	 * @throws Exception The workload could not be read, the user could not
+	 * 					 log in, or the results could not be written.
+	 */
+	public static void main(final String[] args) throws Exception {
+		String server = null;
+		Integer port = null;
+		boolean secure = false;
+		String username = null;
+		String password = null;
+		String client = "replay";
+		String authUri = "/app/user/auth_token";
+		File input = new File("build/workload.jsonl");
+		File results = new File("build/replay-results.json");
+		double speedup = 1;
+		int concurrency = DEFAULT_CONCURRENCY;
+
+		for(int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if("-server".equals(arg)) {
+				server = args[++i];
+			}
+			else if("-port".equals(arg)) {
+				port = Integer.valueOf(args[++i]);
+			}
+			else if("-secure".equals(arg)) {
+				secure = true;
+			}
+			else if("-username".equals(arg)) {
+				username = args[++i];
+			}
+			else if("-password".equals(arg)) {
+				password = args[++i];
+			}
+			else if("-client".equals(arg)) {
+				client = args[++i];
+			}
+			else if("-auth-uri".equals(arg)) {
+				authUri = args[++i];
+			}
+			else if("-input".equals(arg)) {
+				input = new File(args[++i]);
+			}
+			else if("-results".equals(arg)) {
+				results = new File(args[++i]);
+			}
+			else if("-speedup".equals(arg)) {
+				speedup = Double.parseDouble(args[++i]);
+			}
+			else if("-concurrency".equals(arg)) {
+				concurrency = Integer.parseInt(args[++i]);
+			}
+			else {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+		if((server == null) || (username == null) || (password == null)) {
+			throw new IllegalArgumentException(
+				"The server, username, and password are required.");
+		}
+		if(speedup < 0) {
+			throw new IllegalArgumentException(
+				"The speed-up cannot be negative.");
+		}
+		if(concurrency < 1) {
+			throw new IllegalArgumentException(
+				"At least one thread is required.");
+		}
+
+		List<WorkloadRequest> workload = readWorkload(input);
+
+		OhmageApi api =
+			new OhmageApi(
+				server,
+				port,
+				secure,
+				concurrency,
+				OhmageApi.DEFAULT_CONNECTION_TIMEOUT,
+				OhmageApi.DEFAULT_SOCKET_TIMEOUT);
+		try {
+			new WorkloadReplayer(
+					api,
+					username,
+					password,
+					client,
+					authUri,
+					speedup,
+					concurrency,
+					results)
+				.replay(workload);
+		}
+		finally {
+			api.shutdown();
+		}
+	}
+
+	/**
+	 * Reads a workload.
+	 *
+	 * @param input The workload's file.
+	 *
+	 * @return The requests in the order in which they should be sent.
+	 *
+	 * @throws IOException The workload could not be read.
+	 */
+	private static List<WorkloadRequest> readWorkload(
+			final File input)
+			throws IOException {
+
+		List<WorkloadRequest> result = new ArrayList<WorkloadRequest>();
+		BufferedReader reader =
+			Files.newBufferedReader(input.toPath(), StandardCharsets.UTF_8);
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(line.trim().length() > 0) {
+					result.add(WorkloadRequest.fromJson(line));
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Logs in, sends every request on schedule, waits for the responses, and
+	 * reports the results.
+	 *
+	 * @param workload The requests.
+	 *
+	 * @throws Exception The user could not log in or the results could not
+	 * 					 be written.
+	 */
+	private void replay(final List<WorkloadRequest> workload) throws Exception {
+		final Map<String, String> placeholders = new HashMap<String, String>();
+		placeholders.put(WorkloadRequest.PLACEHOLDER_USERNAME, username);
+		placeholders.put(WorkloadRequest.PLACEHOLDER_PASSWORD, password);
+		placeholders.put(WorkloadRequest.PLACEHOLDER_AUTH_TOKEN, logIn());
+
+		System.out.println(
+			"Replaying " + workload.size() + " requests with " +
+				concurrency + " threads at " +
+				((speedup == 0) ? "full speed" : (speedup + "x speed")) +
+				".");
+
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		long start = System.nanoTime();
+		try {
+			for(final WorkloadRequest request : workload) {
+				final UriStatistics uriStatistics =
+					getStatistics(request.getUri());
+				if(request.isUpload()) {
+					uriStatistics.skip();
+					continue;
+				}
+
+				final long scheduled;
+				if(speedup == 0) {
+					scheduled = System.nanoTime();
+				}
+				else {
+					scheduled =
+						start +
+							(long) ((request.getOffset() * 1000000L) / speedup);
+					long wait = scheduled - System.nanoTime();
+					if(wait > 0) {
+						TimeUnit.NANOSECONDS.sleep(wait);
+					}
+				}
+
+				executor.execute(
+					new Runnable() {
+						@Override
+						public void run() {
+							send(request, placeholders, scheduled, uriStatistics);
+						}
+					});
+			}
+		}
+		finally {
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		double elapsedSeconds = (System.nanoTime() - start) / 1000000000.0;
+
+		report(elapsedSeconds);
+	}
+
+	/**
+	 * Logs in as the replaying user.
+	 *
+	 * @return The user's authentication token.
+	 *
+	 * @throws ApiException The server could not be reached or the response
+	 * 						was invalid.
+	 *
+	 * @throws RequestErrorException The server rejected the credentials.
+	 */
+	private String logIn() throws ApiException, RequestErrorException {
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put(InputKeys.USER, username);
+		parameters.put(InputKeys.PASSWORD, password);
+		parameters.put(InputKeys.CLIENT, client);
+
+		byte[] response = api.request(authUri, parameters, true);
+
+		JsonNode token;
+		try {
+			token =
+				JSON_MAPPER
+					.readTree(new String(response, StandardCharsets.UTF_8))
+					.get(AuthTokenRequest.KEY_AUTH_TOKEN);
+		}
+		catch(IOException e) {
+			throw new ApiException("The response was not proper JSON.", e);
+		}
+		if(token == null) {
+			throw new ApiException(
+				"The response did not contain an authentication token.");
+		}
+		return token.asText();
+	}
+
+	/**
+	 * Sends one request and records how it ended.
+	 *
+	 * @param request The request.
+	 *
+	 * @param placeholders The values of the placeholders.
+	 *
+	 * @param scheduled When the request should have been sent, from
+	 * 					{@link System#nanoTime()}.
+	 *
+	 * @param uriStatistics The statistics of the request's URI.
+	 */
+	private void send(
+			final WorkloadRequest request,
+			final Map<String, String> placeholders,
+			final long scheduled,
+			final UriStatistics uriStatistics) {
+
+		Map<String, Object> parameters =
+			new HashMap<String, Object>(request.getParameters().size());
+		for(Map.Entry<String, String> parameter :
+			request.getParameters().entrySet()) {
+
+			String value = placeholders.get(parameter.getValue());
+			parameters.put(
+				parameter.getKey(),
+				(value == null) ? parameter.getValue() : value);
+		}
+
+		UriStatistics.Outcome outcome;
+		long sent = System.nanoTime();
+		try {
+			api.request(request.getUri(), parameters, request.isPost());
+			outcome = UriStatistics.Outcome.SUCCESS;
+		}
+		catch(RequestErrorException e) {
+			outcome = UriStatistics.Outcome.FAILURE;
+		}
+		catch(ApiException e) {
+			outcome = UriStatistics.Outcome.ERROR;
+		}
+		long received = System.nanoTime();
+
+		uriStatistics.record(received - scheduled, received - sent, outcome);
+	}
+
+	/**
+	 * Returns the statistics of a URI, creating them if necessary.
+	 *
+	 * @param uri The URI.
+	 *
+	 * @return The URI's statistics.
+	 */
+	private UriStatistics getStatistics(final String uri) {
+		UriStatistics result = statistics.get(uri);
+		if(result == null) {
+			UriStatistics created = new UriStatistics(uri);
+			result = statistics.putIfAbsent(uri, created);
+			if(result == null) {
+				result = created;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Prints the results, with the busiest URIs first, and writes them as
+	 * JSON.
+	 *
+	 * @param elapsedSeconds The duration of the replay.
+	 *
+	 * @throws IOException The results could not be written.
+	 */
+	private void report(final double elapsedSeconds) throws IOException {
+		List<UriStatistics> results =
+			new ArrayList<UriStatistics>(statistics.values());
+		Collections.sort(
+			results,
+			new Comparator<UriStatistics>() {
+				@Override
+				public int compare(
+						final UriStatistics first,
+						final UriStatistics second) {
+
+					int result = second.getCount() - first.getCount();
+					if(result == 0) {
+						result = first.getUri().compareTo(second.getUri());
+					}
+					return result;
+				}
+			});
+
+		UriStatistics total = new UriStatistics(TOTAL);
+		for(UriStatistics result : results) {
+			total.add(result);
+		}
+		results.add(total);
+
+		System.out.println();
+		System.out.println(
+			String.format(
+				"%-45s %8s %8s %8s %8s %10s %10s %10s %10s %10s",
+				"URI", "Count", "Failed", "Errors", "Skipped", "Req/s",
+				"p50 (ms)", "p90 (ms)", "p99 (ms)", "max (ms)"));
+		for(UriStatistics result : results) {
+			double[] latencies = result.getLatencyPercentiles(PERCENTILES);
+			System.out.println(
+				String.format(
+					"%-45s %8d %8d %8d %8d %10.2f %10.1f %10.1f %10.1f %10.1f",
+					result.getUri(),
+					result.getCount(),
+					result.getFailures(),
+					result.getErrors(),
+					result.getSkipped(),
+					result.getCount() / elapsedSeconds,
+					latencies[0],
+					latencies[1],
+					latencies[2],
+					latencies[3]));
+		}
+
+		writeResults(results, elapsedSeconds);
+		System.out.println();
+		System.out.println("Results written to: " + resultsFile);
+	}
+
+	/**
+	 * Writes the results as a JSON array with one object per URI and a last
+	 * one for all of them.
+	 *
+	 * @param results The results.
+	 *
+	 * @param elapsedSeconds The duration of the replay.
+	 *
+	 * @throws IOException The results could not be written.
+	 */
+	private void writeResults(
+			final List<UriStatistics> results,
+			final double elapsedSeconds)
+			throws IOException {
+
+		File parent = resultsFile.getAbsoluteFile().getParentFile();
+		if((parent != null) && (! parent.isDirectory()) && (! parent.mkdirs())) {
+			throw new IOException("The directory could not be created: " + parent);
+		}
+
+		JsonGenerator generator =
+			new JsonFactory()
+				.createJsonGenerator(resultsFile, JsonEncoding.UTF8);
+		try {
+			generator.useDefaultPrettyPrinter();
+
+			generator.writeStartArray();
+			for(UriStatistics result : results) {
+				generator.writeStartObject();
+				generator.writeStringField("uri", result.getUri());
+				generator.writeNumberField("count", result.getCount());
+				generator.writeNumberField("failures", result.getFailures());
+				generator.writeNumberField("errors", result.getErrors());
+				generator.writeNumberField("skipped", result.getSkipped());
+				generator.writeNumberField(
+					"throughput",
+					result.getCount() / elapsedSeconds);
+				writePercentiles(
+					generator,
+					"latencyMillis",
+					result.getLatencyPercentiles(PERCENTILES));
+				writePercentiles(
+					generator,
+					"serviceMillis",
+					result.getServicePercentiles(PERCENTILES));
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+		}
+		finally {
+			generator.close();
+		}
+	}
+
+	/**
+	 * Writes an object of percentiles, with null for those that could not
+	 * be computed.
+	 */
+	private static void writePercentiles(
+			final JsonGenerator generator,
+			final String name,
+			final double[] values)
+			throws IOException {
+
+		generator.writeObjectFieldStart(name);
+		for(int i = 0; i < values.length; i++) {
+			generator.writeFieldName(PERCENTILE_NAMES[i]);
+			if(Double.isNaN(values[i])) {
+				generator.writeNull();
+			}
+			else {
+				generator.writeNumber(values[i]);
+			}
+		}
+		generator.writeEndObject();
+	}
+}
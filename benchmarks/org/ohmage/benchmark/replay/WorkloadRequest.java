@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.benchmark.replay;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ObjectNode;
+
+/**
+ * One request of a workload. A workload is a file with one of these, as a
+ * JSON object, per line, in the order that they were received.
+ */
+public final class WorkloadRequest {
+	/**
+	 * The placeholder for the replaying user's authentication token.
+	 */
+	public static final String PLACEHOLDER_AUTH_TOKEN = "${auth_token}";
+	/**
+	 * The placeholder for the replaying user's username.
+	 */
+	public static final String PLACEHOLDER_USERNAME = "${username}";
+	/**
+	 * The placeholder for the replaying user's password.
+	 */
+	public static final String PLACEHOLDER_PASSWORD = "${password}";
+
+	private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+	private static final String JSON_KEY_OFFSET = "offset";
+	private static final String JSON_KEY_METHOD = "method";
+	private static final String JSON_KEY_URI = "uri";
+	private static final String JSON_KEY_PARAMETERS = "parameters";
+	private static final String JSON_KEY_UPLOAD = "upload";
+	private static final String JSON_KEY_ORIGINAL_MILLIS = "original_millis";
+	private static final String JSON_KEY_ORIGINAL_SUCCESS = "original_success";
+
+	private final long offset;
+	private final String method;
+	private final String uri;
+	private final Map<String, String> parameters;
+	private final boolean upload;
+	private final long originalMillis;
+	private final boolean originalSuccess;
+
+	/**
+	 * Creates a workload request.
+	 *
+	 * @param offset The number of milliseconds after the first request of
+	 * 				 the workload that this request was received.
+	 *
+	 * @param method The HTTP method, e.g. "get".
+	 *
+	 * @param uri The request's URI, including the context path.
+	 *
+	 * @param parameters The sanitized parameters.
+	 *
+	 * @param upload Whether this request's payload was not recorded, so it
+	 * 				 cannot be replayed faithfully.
+	 *
+	 * @param originalMillis The number of milliseconds that it originally
+	 * 						 took to respond.
+	 *
+	 * @param originalSuccess Whether the request originally succeeded.
+	 */
+	public WorkloadRequest(
+			final long offset,
+			final String method,
+			final String uri,
+			final Map<String, String> parameters,
+			final boolean upload,
+			final long originalMillis,
+			final boolean originalSuccess) {
+
+		if(uri == null) {
+			throw new IllegalArgumentException("The URI is null.");
+		}
+
+		this.offset = offset;
+		this.method = (method == null) ? "get" : method;
+		this.uri = uri;
+		this.parameters =
+			Collections.unmodifiableMap(
+				new LinkedHashMap<String, String>(parameters));
+		this.upload = upload;
+		this.originalMillis = originalMillis;
+		this.originalSuccess = originalSuccess;
+	}
+
+	/**
+	 * Returns the number of milliseconds after the first request of the
+	 * workload that this request was received.
+	 *
+	 * @return The offset in milliseconds.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Returns whether this request should be made as a POST.
+	 *
+	 * @return Whether this request is a POST.
+	 */
+	public boolean isPost() {
+		return "post".equalsIgnoreCase(method);
+	}
+
+	/**
+	 * Returns the request's URI, including the context path.
+	 *
+	 * @return The request's URI.
+	 */
+	public String getUri() {
+		return uri;
+	}
+
+	/**
+	 * Returns the sanitized parameters, which may contain the placeholders.
+	 *
+	 * @return An unmodifiable view of the parameters.
+	 */
+	public Map<String, String> getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Returns whether this request's payload was not recorded.
+	 *
+	 * @return Whether this request is an upload.
+	 */
+	public boolean isUpload() {
+		return upload;
+	}
+
+	/**
+	 * Returns the number of milliseconds that it originally took to respond.
+	 *
+	 * @return The original response time.
+	 */
+	public long getOriginalMillis() {
+		return originalMillis;
+	}
+
+	/**
+	 * Returns whether the request originally succeeded.
+	 *
+	 * @return Whether the request originally succeeded.
+	 */
+	public boolean getOriginalSuccess() {
+		return originalSuccess;
+	}
+
+	/**
+	 * Serializes this request as a single line of JSON.
+	 *
+	 * @return The JSON without a trailing newline.
+	 *
+	 * @throws IOException The request could not be serialized.
+	 */
+	public String toJson() throws IOException {
+		ObjectNode result = JSON_MAPPER.createObjectNode();
+		result.put(JSON_KEY_OFFSET, offset);
+		result.put(JSON_KEY_METHOD, method);
+		result.put(JSON_KEY_URI, uri);
+
+		ObjectNode parametersNode = result.putObject(JSON_KEY_PARAMETERS);
+		for(Map.Entry<String, String> parameter : parameters.entrySet()) {
+			parametersNode.put(parameter.getKey(), parameter.getValue());
+		}
+
+		result.put(JSON_KEY_UPLOAD, upload);
+		result.put(JSON_KEY_ORIGINAL_MILLIS, originalMillis);
+		result.put(JSON_KEY_ORIGINAL_SUCCESS, originalSuccess);
+
+		return JSON_MAPPER.writeValueAsString(result);
+	}
+
+	/**
+	 * Parses a request from one line of a workload.
+	 *
+	 * @param line The line.
+	 *
+	 * @return The request.
+	 *
+	 * @throws IOException The line is not valid JSON.
+	 *
+	 * @throws IllegalArgumentException The line is missing the URI.
+	 */
+	public static WorkloadRequest fromJson(
+			final String line)
+			throws IOException {
+
+		JsonNode node = JSON_MAPPER.readTree(line);
+
+		JsonNode uriNode = node.get(JSON_KEY_URI);
+		if(uriNode == null) {
+			throw new IllegalArgumentException(
+				"The workload request is missing its URI: " + line);
+		}
+
+		Map<String, String> parameters = new LinkedHashMap<String, String>();
+		JsonNode parametersNode = node.get(JSON_KEY_PARAMETERS);
+		if(parametersNode != null) {
+			Iterator<Map.Entry<String, JsonNode>> fields =
+				parametersNode.getFields();
+			while(fields.hasNext()) {
+				Map.Entry<String, JsonNode> field = fields.next();
+				parameters.put(field.getKey(), field.getValue().asText());
+			}
+		}
+
+		return
+			new WorkloadRequest(
+				node.path(JSON_KEY_OFFSET).asLong(),
+				node.path(JSON_KEY_METHOD).asText(),
+				uriNode.asText(),
+				parameters,
+				node.path(JSON_KEY_UPLOAD).asBoolean(),
+				node.path(JSON_KEY_ORIGINAL_MILLIS).asLong(),
+				node.path(JSON_KEY_ORIGINAL_SUCCESS).asBoolean());
+	}
+}
@@ -0,0 +1,27 @@
+-- ----------------------------------------------------------------------
+-- Typed copies of the numeric, timestamp, and single-choice prompt
+-- responses so that they may be aggregated in the database.
+-------------------------------------------------------------------------
+-- response_number:    number and hours_before_now responses.
+-- response_timestamp: timestamp responses as milliseconds since the epoch.
+-- response_key:       single_choice responses' keys.
+-- response_typed:     whether or not the typed columns have been populated.
+--                     Existing rows are populated by the background
+--                     PromptResponseTypeBackfill task.
+ALTER TABLE prompt_response
+    ADD COLUMN response_number double DEFAULT NULL,
+    ADD COLUMN response_timestamp bigint DEFAULT NULL,
+    ADD COLUMN response_key int DEFAULT NULL,
+    ADD COLUMN response_typed bit NOT NULL DEFAULT FALSE,
+    ADD INDEX prompt_response_number (prompt_id, response_number),
+    ADD INDEX prompt_response_timestamp (prompt_id, response_timestamp),
+    ADD INDEX prompt_response_key (prompt_id, response_key),
+    ADD INDEX prompt_response_typed (response_typed, id);
+
+-- Responses to the other prompt types never have typed values, so there is
+-- nothing for the backfill to do for them. The audit timestamp is preserved.
+UPDATE prompt_response
+SET response_typed = TRUE,
+    audit_timestamp = audit_timestamp
+WHERE prompt_type NOT IN
+    ('number', 'hours_before_now', 'timestamp', 'single_choice');
@@ -0,0 +1,66 @@
+-- ----------------------------------------------------------------------
+-- Trigram index used to search users, classes, campaigns, and documents
+-- by partial values without scanning their tables.
+-------------------------------------------------------------------------
+-- field:   which of the entity's values contains the trigram. The codes
+--          are defined by org.ohmage.query.impl.SearchIndexQueries.Field.
+-- trigram: three consecutive characters of the value after its case and
+--          accents have been folded.
+CREATE TABLE user_search_trigram (
+  field tinyint unsigned NOT NULL,
+  trigram char(3) NOT NULL,
+  user_id int unsigned NOT NULL,
+  PRIMARY KEY (field, trigram, user_id),
+  KEY (user_id),
+  CONSTRAINT FOREIGN KEY (user_id) REFERENCES user (id) ON DELETE CASCADE ON UPDATE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE TABLE class_search_trigram (
+  field tinyint unsigned NOT NULL,
+  trigram char(3) NOT NULL,
+  class_id int unsigned NOT NULL,
+  PRIMARY KEY (field, trigram, class_id),
+  KEY (class_id),
+  CONSTRAINT FOREIGN KEY (class_id) REFERENCES class (id) ON DELETE CASCADE ON UPDATE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE TABLE campaign_search_trigram (
+  field tinyint unsigned NOT NULL,
+  trigram char(3) NOT NULL,
+  campaign_id int unsigned NOT NULL,
+  PRIMARY KEY (field, trigram, campaign_id),
+  KEY (campaign_id),
+  CONSTRAINT FOREIGN KEY (campaign_id) REFERENCES campaign (id) ON DELETE CASCADE ON UPDATE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE TABLE document_search_trigram (
+  field tinyint unsigned NOT NULL,
+  trigram char(3) NOT NULL,
+  document_id int unsigned NOT NULL,
+  PRIMARY KEY (field, trigram, document_id),
+  KEY (document_id),
+  CONSTRAINT FOREIGN KEY (document_id) REFERENCES document (id) ON DELETE CASCADE ON UPDATE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- The entities whose trigrams are missing or stale. They are always
+-- included in searches and are indexed by the background SearchIndexer
+-- task.
+CREATE TABLE search_index_queue (
+  entity_type varchar(16) NOT NULL,
+  entity_id int unsigned NOT NULL,
+  PRIMARY KEY (entity_type, entity_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- Queue every existing entity so that the index is built in the
+-- background.
+INSERT INTO search_index_queue(entity_type, entity_id)
+SELECT 'user', id FROM user;
+
+INSERT INTO search_index_queue(entity_type, entity_id)
+SELECT 'class', id FROM class;
+
+INSERT INTO search_index_queue(entity_type, entity_id)
+SELECT 'campaign', id FROM campaign;
+
+INSERT INTO search_index_queue(entity_type, entity_id)
+SELECT 'document', id FROM document;
@@ -0,0 +1,37 @@
+-- ----------------------------------------------------------------------
+-- Survey response statistics for each campaign so that campaign reads do
+-- not need to count the survey_response table.
+-------------------------------------------------------------------------
+-- There is one row for each user's survey responses in each privacy state
+-- in each campaign. This allows the counts to be restricted to those
+-- survey responses that the requesting user may see and allows the
+-- number of participants to be derived.
+--
+-- response_count:        the number of survey responses.
+-- last_upload_timestamp: when the most recent of those survey responses
+--                        was uploaded.
+--
+-- The rows are maintained in the same transactions that upload, update,
+-- and delete survey responses.
+CREATE TABLE campaign_stats (
+  campaign_id int unsigned NOT NULL,
+  user_id int unsigned NOT NULL,
+  privacy_state_id int unsigned NOT NULL,
+  response_count int unsigned NOT NULL,
+  last_upload_timestamp datetime NOT NULL,
+  PRIMARY KEY (campaign_id, user_id, privacy_state_id),
+  KEY (user_id),
+  CONSTRAINT FOREIGN KEY (campaign_id) REFERENCES campaign (id) ON DELETE CASCADE ON UPDATE CASCADE,
+  CONSTRAINT FOREIGN KEY (user_id) REFERENCES user (id) ON DELETE CASCADE ON UPDATE CASCADE,
+  CONSTRAINT FOREIGN KEY (privacy_state_id) REFERENCES survey_response_privacy_state (id) ON DELETE CASCADE ON UPDATE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+INSERT INTO campaign_stats(
+  campaign_id,
+  user_id,
+  privacy_state_id,
+  response_count,
+  last_upload_timestamp)
+SELECT campaign_id, user_id, privacy_state_id, COUNT(*), MAX(upload_timestamp)
+FROM survey_response
+GROUP BY campaign_id, user_id, privacy_state_id;
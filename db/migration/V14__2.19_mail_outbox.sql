@@ -0,0 +1,31 @@
+-- ----------------------------------------------------------------------
+-- Outgoing mail that has been queued by requests and is sent in the
+-- background so that requests do not wait on the mail server.
+-------------------------------------------------------------------------
+-- attempts:               the number of times sending has failed.
+-- next_attempt_timestamp: when the message may next be sent. While a
+--                         sender is working on a message this is pushed
+--                         into the future so that other senders ignore
+--                         it and it is retried if that sender dies. It is
+--                         NULL once the message has failed too many times.
+-- claim_id:               identifies the sender that is working on the
+--                         message.
+-- last_error:             why the most recent attempt failed.
+--
+-- Messages are deleted once they have been sent.
+CREATE TABLE mail_outbox (
+  id bigint unsigned NOT NULL auto_increment,
+  sender varchar(320) NOT NULL,
+  recipient varchar(320) NOT NULL,
+  subject varchar(1024) NOT NULL,
+  body mediumtext NOT NULL,
+  content_type varchar(255) NOT NULL,
+  attempts int unsigned NOT NULL DEFAULT 0,
+  creation_timestamp datetime NOT NULL,
+  next_attempt_timestamp datetime DEFAULT NULL,
+  claim_id char(36) DEFAULT NULL,
+  last_error text DEFAULT NULL,
+  PRIMARY KEY (id),
+  KEY (next_attempt_timestamp),
+  KEY (claim_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
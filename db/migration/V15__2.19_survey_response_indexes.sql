@@ -0,0 +1,33 @@
+-- ----------------------------------------------------------------------
+-- Composite indexes that match the way survey responses are read. Every
+-- read is restricted to one campaign, optionally to some users, surveys, and
+-- a range of times, and is ordered by time and then by the survey
+-- response's ID.
+-------------------------------------------------------------------------
+-- survey_response_campaign_time:        a campaign's responses in order,
+--                                       optionally within a time range.
+-- survey_response_campaign_survey_time: the same, restricted to some
+--                                       surveys.
+-- survey_response_user_campaign_time:   the same, restricted to some users.
+--
+-- The ID is part of each index so that the order can be read from the
+-- index. The single-column campaign and user indexes are replaced as these
+-- indexes begin with those columns and may be used for the foreign keys.
+ALTER TABLE survey_response
+    ADD INDEX survey_response_campaign_time
+        (campaign_id, epoch_millis, id),
+    ADD INDEX survey_response_campaign_survey_time
+        (campaign_id, survey_id, epoch_millis, id),
+    ADD INDEX survey_response_user_campaign_time
+        (user_id, campaign_id, epoch_millis, id),
+    DROP INDEX key_campaign_id,
+    DROP INDEX key_user_id;
+
+-- A survey response's prompt responses are always read together, sometimes
+-- restricted to some prompts. The single-column survey response index is
+-- replaced as this index begins with that column and may be used for the
+-- foreign key.
+ALTER TABLE prompt_response
+    ADD INDEX prompt_response_survey_response_prompt
+        (survey_response_id, prompt_id),
+    DROP INDEX survey_response_id;
@@ -0,0 +1,170 @@
+-- ----------------------------------------------------------------------
+-- Partitions the stream data and Mobility tables by month so that reads of
+-- a range of time only search the months in that range and old data may be
+-- removed by dropping whole months.
+-------------------------------------------------------------------------
+-- Each table is partitioned by RANGE on its time column:
+--
+--   observer_stream_data: time_adjusted
+--   mobility:             epoch_millis
+--   mobility_extended:    epoch_millis, copied from its Mobility point
+--
+-- The partitions are:
+--
+--   p_undated: Stream data without a time, whose time_adjusted is NULL.
+--              This is never dropped.
+--   p_history: Everything before the month in which this was run.
+--   pYYYYMM:   One month, which is this month and the next three at first.
+--   p_future:  Everything after the last month. This should always be
+--              empty and is split into new months ahead of time by the
+--              PartitionMaintainer task.
+--
+-- The boundaries are milliseconds since the epoch at the start of each month
+-- in UTC.
+--
+-- MySQL does not allow foreign keys on partitioned tables, so they are
+-- dropped. The only cascade that the server relied on was deleting a user's
+-- rows along with the user, which UserQueries.deleteUsers() now does itself.
+-- The other foreign keys point at observer stream links and Mobility privacy
+-- states, which are never deleted, and from the extended Mobility data to
+-- its Mobility point, which is only deleted along with its user.
+--
+-- Every unique key must include the partitioning column, so the primary keys
+-- and the Mobility UUID key include the time. The UUID key must stay unique
+-- because the Mobility upload relies on it to ignore points that were
+-- already uploaded. Stream data may not have a time, so its ID is no longer
+-- a primary key.
+--
+-- MySQL commits each ALTER TABLE on its own, so anything that could fail
+-- part of the way through is done before the first one.
+--
+-- Each table is rebuilt, which may take a long time on large tables. Run this
+-- against a copy of the production database first to see how long.
+
+-- V1 declares the Mobility UUID unique, but databases that were baselined
+-- from older releases may have the same point more than once. Only the first
+-- copy of each point, along with its extended data, is kept, so that the
+-- unique key below can be built.
+--
+-- The extended data is deleted first and on its own because the V1 foreign
+-- key that would cascade the deletion may be missing from those same
+-- databases, and it is dropped below regardless. When the key is there, the
+-- first statement deletes exactly the rows the cascade would have, so the
+-- second deletes no extended data. Either way, only the extended data of the
+-- copies that are deleted is touched. PartitionMigrationIntegrationTest
+-- checks both cases.
+DELETE me
+FROM mobility_extended me, mobility m, mobility earlier
+WHERE me.mobility_id = m.id
+AND earlier.uuid = m.uuid
+AND earlier.epoch_millis = m.epoch_millis
+AND earlier.id < m.id;
+
+DELETE m
+FROM mobility m, mobility earlier
+WHERE earlier.uuid = m.uuid
+AND earlier.epoch_millis = m.epoch_millis
+AND earlier.id < m.id;
+
+SET @month0 = DATE_FORMAT(UTC_DATE(), '%Y-%m-01');
+SET @month1 = @month0 + INTERVAL 1 MONTH;
+SET @month2 = @month0 + INTERVAL 2 MONTH;
+SET @month3 = @month0 + INTERVAL 3 MONTH;
+SET @month4 = @month0 + INTERVAL 4 MONTH;
+
+SET @partitions = CONCAT(
+    'PARTITION p_history VALUES LESS THAN (',
+        TIMESTAMPDIFF(SECOND, '1970-01-01', @month0) * 1000, '), ',
+    'PARTITION p', DATE_FORMAT(@month0, '%Y%m'), ' VALUES LESS THAN (',
+        TIMESTAMPDIFF(SECOND, '1970-01-01', @month1) * 1000, '), ',
+    'PARTITION p', DATE_FORMAT(@month1, '%Y%m'), ' VALUES LESS THAN (',
+        TIMESTAMPDIFF(SECOND, '1970-01-01', @month2) * 1000, '), ',
+    'PARTITION p', DATE_FORMAT(@month2, '%Y%m'), ' VALUES LESS THAN (',
+        TIMESTAMPDIFF(SECOND, '1970-01-01', @month3) * 1000, '), ',
+    'PARTITION p', DATE_FORMAT(@month3, '%Y%m'), ' VALUES LESS THAN (',
+        TIMESTAMPDIFF(SECOND, '1970-01-01', @month4) * 1000, '), ',
+    'PARTITION p_future VALUES LESS THAN MAXVALUE)');
+
+-- Drop the foreign keys on the three tables, whatever they are named.
+SELECT GROUP_CONCAT(CONCAT('DROP FOREIGN KEY ', constraint_name)) INTO @drops
+FROM information_schema.referential_constraints
+WHERE constraint_schema = DATABASE()
+AND table_name = 'observer_stream_data';
+SET @sql = CONCAT('ALTER TABLE observer_stream_data ', COALESCE(@drops, ''));
+PREPARE statement FROM @sql;
+EXECUTE statement;
+DEALLOCATE PREPARE statement;
+
+SELECT GROUP_CONCAT(CONCAT('DROP FOREIGN KEY ', constraint_name)) INTO @drops
+FROM information_schema.referential_constraints
+WHERE constraint_schema = DATABASE()
+AND table_name = 'mobility_extended';
+SET @sql = CONCAT('ALTER TABLE mobility_extended ', COALESCE(@drops, ''));
+PREPARE statement FROM @sql;
+EXECUTE statement;
+DEALLOCATE PREPARE statement;
+
+SELECT GROUP_CONCAT(CONCAT('DROP FOREIGN KEY ', constraint_name)) INTO @drops
+FROM information_schema.referential_constraints
+WHERE constraint_schema = DATABASE()
+AND table_name = 'mobility';
+SET @sql = CONCAT('ALTER TABLE mobility ', COALESCE(@drops, ''));
+PREPARE statement FROM @sql;
+EXECUTE statement;
+DEALLOCATE PREPARE statement;
+
+-- Stream data.
+SET @sql = CONCAT(
+    'ALTER TABLE observer_stream_data ',
+        'DROP PRIMARY KEY, ',
+        'ADD KEY observer_stream_data_key_id (id) ',
+    'PARTITION BY RANGE (time_adjusted) (',
+        'PARTITION p_undated VALUES LESS THAN (0), ',
+        @partitions);
+PREPARE statement FROM @sql;
+EXECUTE statement;
+DEALLOCATE PREPARE statement;
+
+-- Mobility. Any existing index that begins with the UUID is replaced by the
+-- unique index on the UUID and time, which is also used to read by UUID.
+SELECT GROUP_CONCAT(DISTINCT CONCAT('DROP INDEX ', index_name, ', ')
+        SEPARATOR '') INTO @drops
+FROM information_schema.statistics
+WHERE table_schema = DATABASE()
+AND table_name = 'mobility'
+AND column_name = 'uuid'
+AND seq_in_index = 1;
+SET @sql = CONCAT(
+    'ALTER TABLE mobility ',
+        COALESCE(@drops, ''),
+        'DROP PRIMARY KEY, ',
+        'ADD PRIMARY KEY (id, epoch_millis), ',
+        'ADD UNIQUE KEY mobility_unique_key_uuid (uuid, epoch_millis), ',
+        'ADD KEY mobility_key_user_id (user_id, epoch_millis) ',
+    'PARTITION BY RANGE (epoch_millis) (',
+        @partitions);
+PREPARE statement FROM @sql;
+EXECUTE statement;
+DEALLOCATE PREPARE statement;
+
+-- Mobility extended data, which is partitioned by its Mobility point's time.
+ALTER TABLE mobility_extended
+    ADD COLUMN epoch_millis bigint unsigned NOT NULL DEFAULT 0
+        AFTER mobility_id;
+
+UPDATE mobility_extended me, mobility m
+SET me.epoch_millis = m.epoch_millis,
+    me.audit_timestamp = me.audit_timestamp
+WHERE me.mobility_id = m.id;
+
+SET @sql = CONCAT(
+    'ALTER TABLE mobility_extended ',
+        'ALTER COLUMN epoch_millis DROP DEFAULT, ',
+        'DROP PRIMARY KEY, ',
+        'ADD PRIMARY KEY (id, epoch_millis), ',
+        'ADD KEY mobility_extended_key_mobility_id (mobility_id, epoch_millis) ',
+    'PARTITION BY RANGE (epoch_millis) (',
+        @partitions);
+PREPARE statement FROM @sql;
+EXECUTE statement;
+DEALLOCATE PREPARE statement;
@@ -0,0 +1,33 @@
+-- ----------------------------------------------------------------------
+-- The days on which each user has data for each observer's stream so that
+-- calendars do not need to group the observer_stream_data table.
+-------------------------------------------------------------------------
+-- There is one row for each day, in the time zone of the data point, on
+-- which a user uploaded at least one point for an observer's stream. The
+-- day is derived from time_adjusted, which is the point's local time as
+-- milliseconds since the epoch. Points without a time are not included.
+--
+-- The rows are inserted in the same transactions that store stream data,
+-- and they are deleted with the user or when the months that contain them
+-- are dropped from observer_stream_data.
+CREATE TABLE observer_stream_day (
+  user_id int unsigned NOT NULL,
+  observer_stream_link_id int unsigned NOT NULL,
+  day date NOT NULL,
+  PRIMARY KEY (user_id, observer_stream_link_id, day),
+  KEY (observer_stream_link_id),
+  KEY (day),
+  CONSTRAINT FOREIGN KEY (user_id) REFERENCES user (id) ON DELETE CASCADE ON UPDATE CASCADE,
+  CONSTRAINT FOREIGN KEY (observer_stream_link_id) REFERENCES observer_stream_link (id) ON DELETE CASCADE ON UPDATE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+INSERT IGNORE INTO observer_stream_day(
+  user_id,
+  observer_stream_link_id,
+  day)
+SELECT DISTINCT
+  user_id,
+  observer_stream_link_id,
+  DATE('1970-01-01' + INTERVAL FLOOR(time_adjusted / 86400000) DAY)
+FROM observer_stream_data
+WHERE time_adjusted IS NOT NULL;
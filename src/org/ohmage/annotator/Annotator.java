@@ -114,6 +114,9 @@ public class Annotator {
 		SURVEY_INVALID_SURVEY_PROMPT_MAP ("0630"),
 		SURVEY_DUPLICATE_MEDIA_UUIDS ("0631"), // when media or document uuids are duplicate
 		SURVEY_UPLOAD_INVALID_ARGUMENTS ("0632"),
+		SURVEY_INVALID_AGGREGATE_GROUP_ITEM ("0633"),
+		SURVEY_INVALID_AGGREGATE_BUCKET_WIDTH ("0634"),
+		SURVEY_INVALID_INCLUDE_ANNOTATIONS_VALUE ("0635"),
 
 		CAMPAIGN_INVALID_ID ("0700"),
 		CAMPAIGN_INVALID_NAME ("0701"),
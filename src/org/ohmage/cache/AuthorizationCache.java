@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.cache;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.ohmage.domain.AuthorizationContext;
+import org.ohmage.exception.DataAccessException;
+import org.ohmage.query.IAuthorizationQueries;
+
+/**
+ * <p>Caches users' {@link AuthorizationContext}s so that the admin flag,
+ * campaign roles, class roles, and campaign states are read once instead of
+ * once per check.</p>
+ *
+ * <p>A request binds its user to the thread that is servicing it once the
+ * user has been authenticated. The first authorization check on that thread
+ * then loads the user's snapshot, from this cache if a recent one exists or
+ * from the database otherwise, and every later check in the request uses the
+ * same snapshot. Snapshots are shared between requests for only a short
+ * time, and any change to a user's privileges, a class, or a campaign
+ * invalidates every snapshot.</p>
+ */
+public final class AuthorizationCache {
+	private static final Logger LOGGER =
+		Logger.getLogger(AuthorizationCache.class);
+
+	/**
+	 * The number of snapshots above which the expired snapshots are purged.
+	 */
+	private static final int PURGE_THRESHOLD = 10000;
+
+	/**
+	 * The user bound to a thread and, once it is needed, their snapshot.
+	 */
+	private static final class Binding {
+		private final String username;
+		private AuthorizationContext context = null;
+		private long generation = -1;
+
+		private Binding(final String username) {
+			this.username = username;
+		}
+	}
+
+	/**
+	 * The user bound to the current thread.
+	 */
+	private static final ThreadLocal<Binding> BINDING =
+		new ThreadLocal<Binding>();
+
+	/**
+	 * Incremented whenever the snapshots are invalidated. Snapshots that were
+	 * loaded before the latest invalidation are never used.
+	 */
+	private static final AtomicLong GENERATION = new AtomicLong(0);
+
+	private static AuthorizationCache instance = null;
+
+	private final IAuthorizationQueries authorizationQueries;
+	private final long timeToLive;
+
+	private final ConcurrentMap<String, AuthorizationContext> contexts =
+		new ConcurrentHashMap<String, AuthorizationContext>();
+	private volatile long contextsGeneration = 0;
+
+	/**
+	 * Creates the cache. This should only be called by Spring.
+	 *
+	 * @param authorizationQueries The queries used to load snapshots.
+	 *
+	 * @param timeToLive The number of milliseconds a snapshot may be shared
+	 * 					 between requests.
+	 *
+	 * @throws IllegalStateException The cache has already been created.
+	 */
+	private AuthorizationCache(
+			final IAuthorizationQueries authorizationQueries,
+			final long timeToLive) {
+
+		if(instance != null) {
+			throw new IllegalStateException(
+				"The authorization cache has already been created.");
+		}
+
+		this.authorizationQueries = authorizationQueries;
+		this.timeToLive = timeToLive;
+
+		instance = this;
+	}
+
+	/**
+	 * Binds a user to the current thread. Their snapshot is not loaded until
+	 * it is first needed.
+	 *
+	 * @param username The user's username.
+	 */
+	public static void bind(final String username) {
+		if(username == null) {
+			BINDING.remove();
+		}
+		else {
+			BINDING.set(new Binding(username));
+		}
+	}
+
+	/**
+	 * Unbinds the user from the current thread. This must be called once a
+	 * request has been completed as the thread will be reused.
+	 */
+	public static void unbind() {
+		BINDING.remove();
+	}
+
+	/**
+	 * Returns the username of the user bound to the current thread.
+	 *
+	 * @return The username or null if no user is bound to the current thread.
+	 */
+	public static String getCurrentUsername() {
+		Binding binding = BINDING.get();
+		return (binding == null) ? null : binding.username;
+	}
+
+	/**
+	 * Returns the snapshot of the user bound to the current thread.
+	 *
+	 * @return The snapshot or null if no user is bound to the current thread,
+	 * 		   the user does not exist, or the cache has not been created.
+	 *
+	 * @throws DataAccessException There was an error loading the snapshot.
+	 */
+	public static AuthorizationContext getCurrent()
+			throws DataAccessException {
+
+		Binding binding = BINDING.get();
+		if((binding == null) || (instance == null)) {
+			return null;
+		}
+
+		long generation = GENERATION.get();
+		if((binding.context == null) || (binding.generation != generation)) {
+			binding.context = instance.get(binding.username, generation);
+			binding.generation = generation;
+		}
+
+		return binding.context;
+	}
+
+	/**
+	 * Returns the snapshot of the user bound to the current thread if it is
+	 * the given user.
+	 *
+	 * @param username The user's username.
+	 *
+	 * @return The snapshot or null if the given user is not the one bound to
+	 * 		   the current thread.
+	 *
+	 * @throws DataAccessException There was an error loading the snapshot.
+	 *
+	 * @see #getCurrent()
+	 */
+	public static AuthorizationContext getCurrent(final String username)
+			throws DataAccessException {
+
+		Binding binding = BINDING.get();
+		if((binding == null) || (! binding.username.equals(username))) {
+			return null;
+		}
+
+		return getCurrent();
+	}
+
+	/**
+	 * Invalidates every snapshot, including those bound to requests that are
+	 * in progress. This should be called whenever a user's admin flag or
+	 * roles change or whenever a class or campaign is created, updated, or
+	 * deleted.
+	 */
+	public static void invalidateAll() {
+		GENERATION.incrementAndGet();
+
+		if(instance != null) {
+			instance.contexts.clear();
+		}
+	}
+
+	/**
+	 * Returns a user's snapshot, loading it if there is no recent one.
+	 *
+	 * @param username The user's username.
+	 *
+	 * @param generation The generation at the time of the request.
+	 *
+	 * @return The snapshot or null if the user does not exist.
+	 *
+	 * @throws DataAccessException There was an error loading the snapshot.
+	 */
+	private AuthorizationContext get(
+			final String username,
+			final long generation)
+			throws DataAccessException {
+
+		// If the cache was invalidated since it was last used, drop
+		// everything in it.
+		if(contextsGeneration != generation) {
+			contexts.clear();
+			contextsGeneration = generation;
+		}
+
+		long now = System.currentTimeMillis();
+		AuthorizationContext result = contexts.get(username);
+		if((result != null) &&
+			((now - result.getLoadedTimestamp()) < timeToLive)) {
+
+			return result;
+		}
+
+		result = authorizationQueries.getAuthorizationContext(username);
+		if(result == null) {
+			contexts.remove(username);
+			return null;
+		}
+
+		// Only share the snapshot if nothing was invalidated while it was
+		// being loaded.
+		if(GENERATION.get() == generation) {
+			contexts.put(username, result);
+
+			if(contexts.size() > PURGE_THRESHOLD) {
+				purge(now);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Removes the expired snapshots.
+	 *
+	 * @param now The current time.
+	 */
+	private void purge(final long now) {
+		Iterator<AuthorizationContext> iterator =
+			contexts.values().iterator();
+		while(iterator.hasNext()) {
+			if((now - iterator.next().getLoadedTimestamp()) >= timeToLive) {
+				iterator.remove();
+			}
+		}
+
+		if(LOGGER.isDebugEnabled()) {
+			LOGGER.debug(
+				"Purged the expired authorization snapshots; " +
+					contexts.size() +
+					" remain.");
+		}
+	}
+}
@@ -0,0 +1,242 @@
+package org.ohmage.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.domain.ServerConfig;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.request.Request;
+import org.ohmage.service.ConfigServices;
+
+/**
+ * Holds the serialized, successful response to a configuration read. The
+ * configuration is rebuilt each time the {@link PreferenceCache} has been
+ * refreshed and, only if its contents have changed, a new response is
+ * published. Configuration reads then only need to write the bytes of the
+ * current response.
+ */
+public final class ConfigResponseCache {
+	/**
+	 * The logger.
+	 */
+	private static final Logger LOGGER =
+		Logger.getLogger(ConfigResponseCache.class);
+
+	/**
+	 * The character set of the response.
+	 */
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	/**
+	 * An immutable, serialized configuration read response.
+	 */
+	public static final class Response {
+		private final byte[] body;
+		private final byte[] gzippedBody;
+		private final String version;
+		private final long lastModified;
+
+		/**
+		 * Creates a new response.
+		 *
+		 * @param body The uncompressed body.
+		 *
+		 * @param gzippedBody The GZIP'd body.
+		 *
+		 * @param version The value that uniquely identifies the body.
+		 *
+		 * @param lastModified The time the body was built in milliseconds
+		 * 					   since the epoch.
+		 */
+		private Response(
+				final byte[] body,
+				final byte[] gzippedBody,
+				final String version,
+				final long lastModified) {
+
+			this.body = body;
+			this.gzippedBody = gzippedBody;
+			this.version = version;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * Writes the body to a stream.
+		 *
+		 * @param outputStream The stream to write to.
+		 *
+		 * @param gzipped Whether to write the GZIP'd or uncompressed body.
+		 *
+		 * @throws IOException There was an error writing to the stream.
+		 */
+		public void writeBody(
+				final OutputStream outputStream,
+				final boolean gzipped)
+				throws IOException {
+
+			outputStream.write((gzipped) ? gzippedBody : body);
+		}
+
+		/**
+		 * Returns the length of the body.
+		 *
+		 * @param gzipped Whether to return the length of the GZIP'd or
+		 * 				  uncompressed body.
+		 *
+		 * @return The length of the body in bytes.
+		 */
+		public int getLength(final boolean gzipped) {
+			return (gzipped) ? gzippedBody.length : body.length;
+		}
+
+		/**
+		 * Returns the value that uniquely identifies the body, which is
+		 * suitable for an entity tag.
+		 *
+		 * @return The value that uniquely identifies the body.
+		 */
+		public String getVersion() {
+			return version;
+		}
+
+		/**
+		 * Returns the time that the body last changed.
+		 *
+		 * @return The time that the body last changed in milliseconds since
+		 * 		   the epoch.
+		 */
+		public long getLastModified() {
+			return lastModified;
+		}
+	}
+
+	// The reference to one's self to return to requesters.
+	private static ConfigResponseCache instance;
+
+	// The current response or null if it has never been built.
+	private volatile Response response = null;
+
+	/**
+	 * Default constructor that will be called by Spring via reflection.
+	 */
+	private ConfigResponseCache() {
+		LOGGER.info("Creating the config response cache.");
+
+		// Build the response before any requests are made. From then on, it
+		// is rebuilt after each refresh of the preferences.
+		rebuild();
+
+		instance = this;
+	}
+
+	/**
+	 * Returns the one instance of this class.
+	 *
+	 * @return The one instance of this class or null if it has not been
+	 * 		   created.
+	 */
+	public static ConfigResponseCache instance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the current response.
+	 *
+	 * @return The current response or null if it could not be built.
+	 */
+	public Response getResponse() {
+		return response;
+	}
+
+	/**
+	 * Immediately rebuilds the response. This is called by the
+	 * {@link PreferenceCache} after each refresh so that the response is
+	 * built from its newest values. The survey response privacy states are
+	 * read again at the same time.
+	 */
+	public void invalidate() {
+		rebuild();
+	}
+
+	/**
+	 * Reads the server's configuration and, if its serialized form differs
+	 * from the current response, publishes a new response. If there is an
+	 * error, the current response is kept.
+	 */
+	private synchronized void rebuild() {
+		byte[] body;
+		try {
+			ServerConfig config = ConfigServices.readServerConfiguration();
+
+			JSONObject result = new JSONObject();
+			result.put(Request.JSON_KEY_DATA, config.toJson());
+			result.put(Request.JSON_KEY_RESULT, Request.RESULT_SUCCESS);
+
+			body = result.toString().getBytes(CHARSET);
+		}
+		catch(ServiceException e) {
+			LOGGER.error("Could not read the server's configuration.", e);
+			return;
+		}
+		catch(JSONException e) {
+			LOGGER.error("Could not serialize the server's configuration.", e);
+			return;
+		}
+
+		Response current = response;
+		String version = getVersion(body);
+		if((current != null) && current.getVersion().equals(version)) {
+			return;
+		}
+
+		try {
+			ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+			GZIPOutputStream gzipStream = new GZIPOutputStream(gzipped);
+			gzipStream.write(body);
+			gzipStream.close();
+
+			response =
+				new Response(
+					body,
+					gzipped.toByteArray(),
+					version,
+					System.currentTimeMillis());
+		}
+		catch(IOException e) {
+			LOGGER.error("Could not compress the server's configuration.", e);
+		}
+	}
+
+	/**
+	 * Computes the value that uniquely identifies a body.
+	 *
+	 * @param body The body.
+	 *
+	 * @return The hexadecimal digest of the body.
+	 */
+	private static String getVersion(final byte[] body) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(body);
+
+			StringBuilder builder = new StringBuilder(digest.length * 2);
+			for(byte b : digest) {
+				builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+				builder.append(Character.forDigit(b & 0xF, 16));
+			}
+			return builder.toString();
+		}
+		catch(NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-1.
+			return Integer.toHexString(Arrays.hashCode(body));
+		}
+	}
+}
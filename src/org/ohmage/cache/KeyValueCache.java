@@ -18,25 +18,44 @@ package org.ohmage.cache;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import javax.sql.DataSource;
 
 import org.apache.log4j.Logger;
 import org.ohmage.exception.CacheMissException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 
 /**
  * The abstract cache class for key-Value pairs.
  * 
+ * The key-value pairs are held in an immutable snapshot that is replaced by a
+ * background task every update period, so lookups never block and never
+ * query the database. The server never changes the values itself, so a
+ * change made directly in the database is seen within one update period or,
+ * if whoever made it calls {@link #invalidate()}, immediately.
+ * 
+ * The first snapshot is loaded and the refreshes are started by
+ * {@link #init()}, which must be called once the cache has been constructed.
+ * 
  * @author John Jenkins
  */
-public abstract class KeyValueCache extends Cache {
+public abstract class KeyValueCache extends Cache implements DisposableBean {
 	private static final Logger LOGGER = Logger.getLogger(KeyValueCache.class);
 
+	/**
+	 * The timer that runs the background refreshes of every key-value cache.
+	 */
+	private static final Timer REFRESHER =
+		new Timer("KeyValueCache - Refreshing cached values.", true);
+
 	/**
 	 * Inner class for handling the results of a query for the String keys and
 	 * their respective String values.
@@ -65,8 +84,13 @@ public abstract class KeyValueCache extends Cache {
 		}
 	}
 
-	// The map of all the keys to their values.
-	private Map<String, String> keyValueMap;
+	// The immutable map of all the keys to their values. It is replaced, never
+	// modified.
+	private volatile Map<String, String> keyValueMap;
+
+	// The task that periodically refreshes the map or null if it has not been
+	// started.
+	private TimerTask refreshTask = null;
 
 	// The SQL to use to get the values which must return two String values as
 	// dictated by the private class KeyAndValue.
@@ -88,7 +112,7 @@ public abstract class KeyValueCache extends Cache {
 		String valueKey) {
 		super(dataSource, updateFrequency);
 
-		keyValueMap = new HashMap<String, String>();
+		keyValueMap = Collections.emptyMap();
 		this.sqlForRetrievingValues = sqlForRetrievingValues;
 
 		keyColumn = keyKey;
@@ -96,21 +120,39 @@ public abstract class KeyValueCache extends Cache {
 	}
 
 	/**
-	 * Compares the current timestamp with the last time we did an update plus
-	 * the amount of time between updates. If our cache has become stale, we
-	 * attempt to update it.
-	 * 
-	 * Then, we check to see if such a key exists in our cache. If not, we
-	 * throw an exception because, if someone is querying for a key that
-	 * doesn't exist, we need to bring it to their immediate attention rather
-	 * than returning an "error" value. Otherwise, the corresponding integer
-	 * value is returned.
+	 * Populates the map before any requests are made and then keeps it fresh
+	 * in the background. This is called by Spring once the cache, including
+	 * any subclass, has been constructed.
+	 */
+	public synchronized void init() {
+		if(refreshTask != null) {
+			return;
+		}
+
+		refreshMap();
+		refreshTask = new TimerTask() {
+			@Override
+			public void run() {
+				refreshMap();
+			}
+		};
+		REFRESHER.schedule(
+			refreshTask,
+			getUpdateFrequency(),
+			getUpdateFrequency());
+	}
+
+	/**
+	 * Checks to see if such a key exists in our cache. If not, we throw an
+	 * exception because, if someone is querying for a key that doesn't exist,
+	 * we need to bring it to their immediate attention rather than returning
+	 * an "error" value. Otherwise, the corresponding value is returned.
 	 * 
 	 * It is recommended, but not required, to use the constants declared in
 	 * the concrete cache class as the parameter.
 	 * 
-	 * The complexity is O(n) if a refresh is required; otherwise, the
-	 * complexity of a Java Map object to lookup a key and return its value.
+	 * This never blocks or queries the database; the values are those of the
+	 * most recent refresh.
 	 * 
 	 * @param key
 	 *        The key whose corresponding value is being requested.
@@ -121,15 +163,14 @@ public abstract class KeyValueCache extends Cache {
 	 *         Thrown if no such key exists.
 	 */
 	public String lookup(String key) throws CacheMissException {
-		// If the lookup table is out-of-date, refresh it.
-		if((getLastUpdateTimestamp() + getUpdateFrequency()) <= System
-			.currentTimeMillis()) {
-			refreshMap();
-		}
+		// Read the snapshot once so that the check and the retrieval see the
+		// same map.
+		Map<String, String> keyValueMap = this.keyValueMap;
 
 		// If the key exists in the lookup table, return its value.
-		if(keyValueMap.containsKey(key)) {
-			return keyValueMap.get(key);
+		String value = keyValueMap.get(key);
+		if((value != null) || keyValueMap.containsKey(key)) {
+			return value;
 		}
 		// Otherwise, throw an exception that it is an unknown state.
 		else {
@@ -144,13 +185,36 @@ public abstract class KeyValueCache extends Cache {
 	 */
 	@Override
 	public Set<String> getKeys() {
-		// If the lookup table is out-of-date, refresh it.
-		if((getLastUpdateTimestamp() + getUpdateFrequency()) <= System
-			.currentTimeMillis()) {
-			refreshMap();
+		return keyValueMap.keySet();
+	}
+
+	/**
+	 * Replaces the snapshot with the current values in the database before
+	 * returning, instead of waiting for the next background refresh. This
+	 * should be called whenever the values are known to have changed.
+	 */
+	public synchronized void invalidate() {
+		refreshMap();
+	}
+
+	/**
+	 * Stops the background refreshes of this cache.
+	 */
+	@Override
+	public synchronized void destroy() throws Exception {
+		if(refreshTask != null) {
+			refreshTask.cancel();
+			REFRESHER.purge();
 		}
+	}
 
-		return keyValueMap.keySet();
+	/**
+	 * Called after every successful refresh, from the thread that did it, so
+	 * that anything derived from the values can be rebuilt from the new
+	 * snapshot. By default, this does nothing.
+	 */
+	protected void refreshed() {
+		// Nothing is derived from the values by default.
 	}
 
 	/**
@@ -166,17 +230,12 @@ public abstract class KeyValueCache extends Cache {
 	 * its map with the gathered information. If there is an issue reading the
 	 * database, it will just remain with the current lookup table it has.
 	 * 
+	 * This is called by {@link #init()}, {@link #invalidate()}, and the
+	 * background refresh, never by a lookup.
+	 * 
 	 * @complexity O(n) where n is the number of keys in the database.
 	 */
 	protected synchronized void refreshMap() {
-		// Only one thread should be updating this information at a time. Once
-		// other threads enter, they should check to see if an update was just
-		// done and, if so, should abort a second update.
-		if((getLastUpdateTimestamp() + getUpdateFrequency()) > System
-			.currentTimeMillis()) {
-			return;
-		}
-
 		// This is the JdbcTemplate we will use for our query. If there is an
 		// issue report it and abort the update.
 		JdbcTemplate jdbcTemplate = new JdbcTemplate(getDataSource());
@@ -207,13 +266,15 @@ public abstract class KeyValueCache extends Cache {
 		}
 
 		// Create a new Map, populate it, and replace the old one. This allows
-		// for concurrent readying while the new Map is being created.
+		// for concurrent reading while the new Map is being created.
 		Map<String, String> keyValueMap = new HashMap<String, String>();
 		for(KeyAndValue currStateAndId : keyAndValue) {
 			keyValueMap.put(currStateAndId.key, currStateAndId.value);
 		}
-		this.keyValueMap = keyValueMap;
+		this.keyValueMap = Collections.unmodifiableMap(keyValueMap);
 
 		setLastUpdateTimestamp(System.currentTimeMillis());
+
+		refreshed();
 	}
 }
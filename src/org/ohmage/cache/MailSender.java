@@ -0,0 +1,180 @@
+package org.ohmage.cache;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.service.MailServices;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Sends the mail that requests have queued. A pool of senders works through
+ * the queue, and each sender sends its batches over a single connection to
+ * the mail server. The senders are started whenever mail is queued and
+ * periodically to retry the mail that previously failed.
+ */
+public final class MailSender extends TimerTask implements DisposableBean {
+	/**
+	 * The logger.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(MailSender.class);
+
+	/**
+	 * The task that is periodically run to retry the queued mail.
+	 */
+	private static final Timer RETRIER =
+		new Timer("MailSender - Retrying queued mail.", true);
+
+	/**
+	 * The number of messages each sender claims at a time.
+	 */
+	private static final int BATCH_SIZE = 25;
+
+	// The reference to one's self to return to requesters.
+	private static MailSender instance;
+
+	private final ExecutorService senders;
+	private final int numSenders;
+
+	// The number of senders that are currently working through the queue.
+	private final AtomicInteger activeSenders = new AtomicInteger(0);
+
+	/**
+	 * Default constructor that will be called by Spring via reflection.
+	 *
+	 * @param numSenders The number of messages that may be sent at once.
+	 *
+	 * @param retryFrequency The number of milliseconds between checks for
+	 * 						 mail that is ready to be retried.
+	 */
+	private MailSender(final int numSenders, final long retryFrequency) {
+		LOGGER.info("Creating the mail sender, periodic task.");
+
+		if(numSenders <= 0) {
+			throw new IllegalArgumentException(
+				"The number of senders must be positive.");
+		}
+
+		this.numSenders = numSenders;
+		senders =
+			Executors.newFixedThreadPool(
+				numSenders,
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger(0);
+
+					@Override
+					public Thread newThread(final Runnable runnable) {
+						Thread thread =
+							new Thread(
+								runnable,
+								"MailSender - Sending queued mail " +
+									count.incrementAndGet() +
+									".");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+
+		instance = this;
+
+		RETRIER.schedule(this, retryFrequency, retryFrequency);
+	}
+
+	/**
+	 * Returns the one instance of this class.
+	 *
+	 * @return The one instance of this class or null if it has not been
+	 * 		   created.
+	 */
+	public static MailSender instance() {
+		return instance;
+	}
+
+	/**
+	 * Starts a sender to send the newly queued mail unless every sender is
+	 * already working.
+	 */
+	public void wakeUp() {
+		startSender();
+	}
+
+	/**
+	 * Starts as many senders as are allowed to work through the mail that is
+	 * ready to be sent.
+	 */
+	@Override
+	public void run() {
+		for(int i = 0; i < numSenders; i++) {
+			if(! startSender()) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Stops the retry task and the senders.
+	 */
+	@Override
+	public void destroy() throws Exception {
+		RETRIER.cancel();
+		senders.shutdownNow();
+	}
+
+	/**
+	 * Starts a sender if fewer than the maximum are working.
+	 *
+	 * @return Whether a sender was started.
+	 */
+	private boolean startSender() {
+		int active;
+		do {
+			active = activeSenders.get();
+			if(active >= numSenders) {
+				return false;
+			}
+		} while(! activeSenders.compareAndSet(active, active + 1));
+
+		try {
+			senders.execute(
+				new Runnable() {
+					@Override
+					public void run() {
+						try {
+							sendAll();
+						}
+						finally {
+							activeSenders.decrementAndGet();
+						}
+					}
+				});
+		}
+		catch(RuntimeException e) {
+			activeSenders.decrementAndGet();
+			LOGGER.error("Could not start a mail sender.", e);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Sends batches of the queued mail until there is none that is ready.
+	 */
+	private static void sendAll() {
+		try {
+			while(MailServices.instance().sendQueuedMail(BATCH_SIZE) > 0) {
+				if(Thread.currentThread().isInterrupted()) {
+					return;
+				}
+			}
+		}
+		catch(ServiceException e) {
+			LOGGER.error("Failed to send the queued mail.", e);
+		}
+	}
+}
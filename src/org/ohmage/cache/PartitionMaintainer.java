@@ -0,0 +1,104 @@
+package org.ohmage.cache;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.log4j.Logger;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.service.PartitionServices;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Keeps the monthly partitions of the stream data and Mobility tables ahead
+ * of the data that is uploaded and, if there is a retention period, drops
+ * the months before it. Creating a month only divides the empty, last
+ * partition and dropping a month discards it without deleting its rows, so
+ * both are quick.
+ */
+public final class PartitionMaintainer
+		extends TimerTask
+		implements DisposableBean {
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger LOGGER =
+		Logger.getLogger(PartitionMaintainer.class);
+
+	/**
+	 * The task that is periodically run to maintain the partitions.
+	 */
+	private static final Timer MAINTAINER =
+		new Timer("PartitionMaintainer - Maintaining the partitions.", true);
+
+	/**
+	 * The number of milliseconds after start up before the first run.
+	 */
+	private static final long MILLISECONDS_BEFORE_FIRST_RUN = 1000 * 60;
+
+	/**
+	 * The number of milliseconds between each run.
+	 */
+	private static final long MILLISECONDS_BETWEEN_RUNS = 1000 * 60 * 60 * 24;
+
+	private final int monthsAhead;
+	private final int retentionMonths;
+
+	/**
+	 * Default constructor that will be called by Spring via reflection.
+	 *
+	 * @param monthsAhead The number of months after the current one that
+	 * 					  should always have partitions.
+	 *
+	 * @param retentionMonths The number of months before the current one
+	 * 						  whose data is kept. If this is zero, all data
+	 * 						  is kept.
+	 */
+	private PartitionMaintainer(
+			final int monthsAhead,
+			final int retentionMonths) {
+
+		LOGGER.info("Creating the partition maintainer, periodic task.");
+
+		if(monthsAhead < 1) {
+			throw new IllegalArgumentException(
+				"At least one month ahead must have partitions.");
+		}
+		if(retentionMonths < 0) {
+			throw new IllegalArgumentException(
+				"The number of months to keep cannot be negative.");
+		}
+
+		this.monthsAhead = monthsAhead;
+		this.retentionMonths = retentionMonths;
+
+		// Create the task that will be run periodically.
+		MAINTAINER.schedule(
+			this,
+			MILLISECONDS_BEFORE_FIRST_RUN,
+			MILLISECONDS_BETWEEN_RUNS);
+	}
+
+	/**
+	 * Calls to the partition services layer to create and drop partitions.
+	 */
+	@Override
+	public void run() {
+		try {
+			PartitionServices
+				.instance()
+				.maintainPartitions(monthsAhead, retentionMonths);
+		}
+		catch(ServiceException e) {
+			LOGGER.error("Failed to maintain the partitions.", e);
+		}
+	}
+
+	/**
+	 * Stops the maintainer task.
+	 */
+	@Override
+	public void destroy() throws Exception {
+		MAINTAINER.cancel();
+	}
+}
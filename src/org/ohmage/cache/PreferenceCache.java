@@ -18,10 +18,15 @@ package org.ohmage.cache;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.Properties;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.sql.DataSource;
 
+import org.apache.log4j.Logger;
 import org.ohmage.exception.CacheMissException;
 
 /**
@@ -30,7 +35,13 @@ import org.ohmage.exception.CacheMissException;
  * 
  * @author John Jenkins
  */
-public final class PreferenceCache extends KeyValueCache {
+public final class PreferenceCache
+	extends KeyValueCache
+	implements PreferenceCacheMBean {
+	
+	private static final Logger LOGGER =
+		Logger.getLogger(PreferenceCache.class);
+
 	private static final String SQL_KEY_KEY = "p_key";
 	private static final String SQL_VALUE_KEY = "p_value";
 	
@@ -42,6 +53,10 @@ public final class PreferenceCache extends KeyValueCache {
 	// to reference which key we want.
 	public static final String CACHE_KEY = "preferenceCache";
 	
+	// The name under which the cache is published over JMX.
+	private static final String OBJECT_NAME =
+		"org.ohmage:type=Cache,name=" + CACHE_KEY;
+	
 	// Known campaign privacy states.
 	public static final String KEY_DEFAULT_CAN_CREATE_PRIVILIEGE = "default_can_create_privilege";
 	public static final String KEY_DEFAULT_SURVEY_RESPONSE_SHARING_STATE = "default_survey_response_sharing_state";
@@ -163,6 +178,10 @@ public final class PreferenceCache extends KeyValueCache {
 	
 	private static Properties properties = null;
 	
+	// The name under which the cache is published over JMX or null if it is
+	// not published.
+	private ObjectName registeredName = null;
+	
 	/**
 	 * Default constructor set private to make this a Singleton.
 	 */
@@ -200,6 +219,68 @@ public final class PreferenceCache extends KeyValueCache {
 		return instance;
 	}
 	
+	/**
+	 * Loads the preferences, starts their refreshes, and publishes the cache
+	 * over JMX so that it can be invalidated after the preference table has
+	 * been changed with SQL.
+	 */
+	@Override
+	public synchronized void init() {
+		super.init();
+		
+		if(registeredName != null) {
+			return;
+		}
+		
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if(server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			registeredName = name;
+		}
+		catch(JMException e) {
+			LOGGER.warn("The preference cache could not be published.", e);
+		}
+	}
+	
+	/**
+	 * Stops the refreshes and stops publishing the cache.
+	 */
+	@Override
+	public synchronized void destroy() throws Exception {
+		super.destroy();
+		
+		if(registeredName != null) {
+			try {
+				ManagementFactory
+					.getPlatformMBeanServer()
+					.unregisterMBean(registeredName);
+			}
+			catch(JMException e) {
+				LOGGER.info("The preference cache was already removed.", e);
+			}
+			registeredName = null;
+		}
+	}
+	
+	/**
+	 * Rebuilds the configuration read response from the new preferences.
+	 */
+	@Override
+	protected void refreshed() {
+		ConfigResponseCache configResponseCache =
+			ConfigResponseCache.instance();
+
+		// The response is first built once the preferences have been loaded,
+		// so there is nothing to rebuild until then.
+		if(configResponseCache != null) {
+			configResponseCache.invalidate();
+		}
+	}
+	
 	/**
 	 * Returns a human-readable name for this cache.
 	 */
@@ -209,11 +290,7 @@ public final class PreferenceCache extends KeyValueCache {
 	}
 	
 	/**
-	 * Compares the current timestamp with the last time we did an update plus
-	 * the amount of time between updates. If our cache has become stale, we
-	 * attempt to update it.
-	 * 
-	 * Then, we check to see if such a key exists in our cache. If not, we
+	 * Checks to see if such a key exists in our cache. If not, we
 	 * throw an exception because, if someone is querying for a key that
 	 * doesn't exist, we need to bring it to their immediate attention rather
 	 * than returning an "error" value. Otherwise, the corresponding integer
@@ -222,8 +299,8 @@ public final class PreferenceCache extends KeyValueCache {
 	 * It is recommended, but not required, to use the constants declared in
 	 * the concrete cache class as the parameter.
 	 * 
-	 * The complexity is O(n) if a refresh is required; otherwise, the 
-	 * complexity of a Java Map object to lookup a key and return its value.
+	 * The build-specific values are read from the system properties file 
+	 * rather than the database.
 	 * 
 	 * @param key The key whose corresponding value is being requested.
 	 * 
@@ -231,12 +308,7 @@ public final class PreferenceCache extends KeyValueCache {
 	 * 
 	 * @throws CacheMissException Thrown if no such key exists.
 	 */
-	public String lookup(String key) throws CacheMissException {		
-		// If the lookup table is out-of-date, refresh it.
-		if((getLastUpdateTimestamp() + getUpdateFrequency()) <= System.currentTimeMillis()) {
-			refreshMap();
-		}
-
+	public String lookup(String key) throws CacheMissException {
 		if(KEY_APPLICATION_NAME.equals(key)) {
 		  try {
 		  	return super.lookup(SQL_KEY_APPLICATION_NAME); 
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.cache;
+
+/**
+ * The management operations of the {@link PreferenceCache}, which are
+ * published over JMX as "org.ohmage:type=Cache,name=preferenceCache".
+ */
+public interface PreferenceCacheMBean {
+	/**
+	 * Returns the cache's name.
+	 *
+	 * @return The name.
+	 */
+	String getName();
+
+	/**
+	 * Reloads the preferences from the database immediately. This is how a
+	 * change made to the preference table with SQL takes effect without
+	 * waiting for the next refresh.
+	 */
+	void invalidate();
+}
@@ -0,0 +1,100 @@
+package org.ohmage.cache;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.log4j.Logger;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.service.SurveyResponseServices;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Populates the typed columns of the prompt responses that were uploaded
+ * before those columns existed. Each run populates a number of small batches
+ * so that the prompt_response table is never locked for long. Once there are
+ * no more prompt responses to populate, the task stops itself.
+ */
+public final class PromptResponseTypeBackfill extends TimerTask implements DisposableBean {
+	/**
+	 * The logger.
+	 */
+	private static final Logger LOGGER =
+		Logger.getLogger(PromptResponseTypeBackfill.class);
+
+	/**
+	 * The backfill task that is periodically run to populate the typed
+	 * columns.
+	 */
+	private static final Timer BACKFILL =
+		new Timer(
+			"PromptResponseTypeBackfill - Populating typed prompt responses.",
+			true);
+
+	/**
+	 * The number of milliseconds between each run.
+	 */
+	private static final long MILLISECONDS_BETWEEN_RUNS = 1000 * 60;
+
+	/**
+	 * The number of prompt responses populated per batch.
+	 */
+	private static final int BATCH_SIZE = 1000;
+
+	/**
+	 * The maximum number of batches populated per run.
+	 */
+	private static final int BATCHES_PER_RUN = 50;
+
+	/**
+	 * Default constructor that will be called by Spring via reflection.
+	 */
+	private PromptResponseTypeBackfill() {
+		LOGGER.info("Creating the prompt response type backfill, periodic task.");
+
+		// Create the task that will be run periodically.
+		BACKFILL.schedule(
+			this,
+			MILLISECONDS_BETWEEN_RUNS,
+			MILLISECONDS_BETWEEN_RUNS);
+	}
+
+	/**
+	 * Calls to the survey response services layer to populate batches of
+	 * prompt responses.
+	 */
+	@Override
+	public void run() {
+		try {
+			long total = 0;
+			for(int i = 0; i < BATCHES_PER_RUN; i++) {
+				int populated =
+					SurveyResponseServices
+						.instance()
+						.populateTypedPromptResponses(BATCH_SIZE);
+				total += populated;
+
+				if(populated < BATCH_SIZE) {
+					LOGGER.info(
+						"Finished populating the typed prompt responses.");
+					cancel();
+					break;
+				}
+			}
+
+			if(LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Populated " + total + " typed prompt responses.");
+			}
+		}
+		catch(ServiceException e) {
+			LOGGER.error("Failed to populate the typed prompt responses.", e);
+		}
+	}
+
+	/**
+	 * Stops the backfill task.
+	 */
+	@Override
+	public void destroy() throws Exception {
+		BACKFILL.cancel();
+	}
+}
@@ -0,0 +1,95 @@
+package org.ohmage.cache;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.log4j.Logger;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.service.SearchIndexServices;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Rebuilds the search index entries of the users, classes, campaigns, and
+ * documents that were queued when they were created or changed. Queued
+ * entities are always searched without the index, so this only needs to run
+ * often enough to keep the queue short. When the search index is first
+ * created, every existing entity is queued and this works through them in
+ * batches.
+ */
+public final class SearchIndexer extends TimerTask implements DisposableBean {
+	/**
+	 * The logger.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(SearchIndexer.class);
+
+	/**
+	 * The task that is periodically run to index the queued entities.
+	 */
+	private static final Timer INDEXER =
+		new Timer("SearchIndexer - Indexing queued entities.", true);
+
+	/**
+	 * The number of milliseconds between each run.
+	 */
+	private static final long MILLISECONDS_BETWEEN_RUNS = 1000 * 10;
+
+	/**
+	 * The number of entities of each type indexed per batch.
+	 */
+	private static final int BATCH_SIZE = 100;
+
+	/**
+	 * The maximum number of batches indexed per run.
+	 */
+	private static final int BATCHES_PER_RUN = 50;
+
+	/**
+	 * Default constructor that will be called by Spring via reflection.
+	 */
+	private SearchIndexer() {
+		LOGGER.info("Creating the search indexer, periodic task.");
+
+		// Create the task that will be run periodically.
+		INDEXER.schedule(
+			this,
+			MILLISECONDS_BETWEEN_RUNS,
+			MILLISECONDS_BETWEEN_RUNS);
+	}
+
+	/**
+	 * Calls to the search index services layer to index batches of the
+	 * queued entities.
+	 */
+	@Override
+	public void run() {
+		try {
+			long total = 0;
+			for(int i = 0; i < BATCHES_PER_RUN; i++) {
+				int indexed =
+					SearchIndexServices
+						.instance()
+						.indexQueuedEntities(BATCH_SIZE);
+				total += indexed;
+
+				if(indexed == 0) {
+					break;
+				}
+			}
+
+			if((total > 0) && LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Indexed " + total + " queued entities.");
+			}
+		}
+		catch(ServiceException e) {
+			LOGGER.error("Failed to index the queued entities.", e);
+		}
+	}
+
+	/**
+	 * Stops the indexer task.
+	 */
+	@Override
+	public void destroy() throws Exception {
+		INDEXER.cancel();
+	}
+}
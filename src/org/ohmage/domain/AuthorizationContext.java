@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.domain;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ohmage.domain.campaign.Campaign;
+
+/**
+ * A snapshot of everything that is needed to authorize a user: whether or not
+ * they are an admin, their roles in each of their campaigns and classes, and
+ * the privacy and running states of their campaigns. A snapshot is loaded
+ * once and then shared by every authorization check in a request.
+ */
+public class AuthorizationContext {
+	private final String username;
+	private final boolean admin;
+
+	private final Map<String, List<Campaign.Role>> campaignRoles;
+	private final Map<String, Campaign.PrivacyState> campaignPrivacyStates;
+	private final Map<String, Campaign.RunningState> campaignRunningStates;
+
+	private final Map<String, Clazz.Role> classRoles;
+
+	private final long loadedTimestamp;
+
+	/**
+	 * Creates a new authorization snapshot.
+	 *
+	 * @param username The user's username.
+	 *
+	 * @param admin Whether or not the user is an admin.
+	 *
+	 * @param campaignRoles The user's roles in each of their campaigns.
+	 *
+	 * @param campaignPrivacyStates The privacy state of each of the user's
+	 * 								campaigns.
+	 *
+	 * @param campaignRunningStates The running state of each of the user's
+	 * 								campaigns.
+	 *
+	 * @param classRoles The user's role in each of their classes.
+	 *
+	 * @throws IllegalArgumentException The username or one of the maps is
+	 * 									null.
+	 */
+	public AuthorizationContext(
+			final String username,
+			final boolean admin,
+			final Map<String, List<Campaign.Role>> campaignRoles,
+			final Map<String, Campaign.PrivacyState> campaignPrivacyStates,
+			final Map<String, Campaign.RunningState> campaignRunningStates,
+			final Map<String, Clazz.Role> classRoles) {
+
+		if(username == null) {
+			throw new IllegalArgumentException("The username is null.");
+		}
+		if((campaignRoles == null) ||
+			(campaignPrivacyStates == null) ||
+			(campaignRunningStates == null) ||
+			(classRoles == null)) {
+
+			throw new IllegalArgumentException("A map is null.");
+		}
+
+		this.username = username;
+		this.admin = admin;
+
+		this.campaignRoles =
+			Collections.unmodifiableMap(
+				new HashMap<String, List<Campaign.Role>>(campaignRoles));
+		this.campaignPrivacyStates =
+			Collections.unmodifiableMap(
+				new HashMap<String, Campaign.PrivacyState>(
+					campaignPrivacyStates));
+		this.campaignRunningStates =
+			Collections.unmodifiableMap(
+				new HashMap<String, Campaign.RunningState>(
+					campaignRunningStates));
+		this.classRoles =
+			Collections.unmodifiableMap(
+				new HashMap<String, Clazz.Role>(classRoles));
+
+		loadedTimestamp = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the user's username.
+	 *
+	 * @return The user's username.
+	 */
+	public String getUsername() {
+		return username;
+	}
+
+	/**
+	 * Returns whether or not the user is an admin.
+	 *
+	 * @return Whether or not the user is an admin.
+	 */
+	public boolean isAdmin() {
+		return admin;
+	}
+
+	/**
+	 * Returns whether or not the user has any role in the campaign.
+	 *
+	 * @param campaignId The campaign's unique identifier.
+	 *
+	 * @return Whether or not the user belongs to the campaign.
+	 */
+	public boolean belongsToCampaign(final String campaignId) {
+		return campaignRoles.containsKey(campaignId);
+	}
+
+	/**
+	 * Returns the user's roles in the campaign.
+	 *
+	 * @param campaignId The campaign's unique identifier.
+	 *
+	 * @return The user's roles in the campaign, which is empty if they don't
+	 * 		   belong to the campaign.
+	 */
+	public List<Campaign.Role> getCampaignRoles(final String campaignId) {
+		List<Campaign.Role> result = campaignRoles.get(campaignId);
+		if(result == null) {
+			return Collections.emptyList();
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the privacy state of one of the user's campaigns.
+	 *
+	 * @param campaignId The campaign's unique identifier.
+	 *
+	 * @return The campaign's privacy state or null if the user doesn't
+	 * 		   belong to the campaign, in which case it is not known.
+	 */
+	public Campaign.PrivacyState getCampaignPrivacyState(
+			final String campaignId) {
+
+		return campaignPrivacyStates.get(campaignId);
+	}
+
+	/**
+	 * Returns the running state of one of the user's campaigns.
+	 *
+	 * @param campaignId The campaign's unique identifier.
+	 *
+	 * @return The campaign's running state or null if the user doesn't
+	 * 		   belong to the campaign, in which case it is not known.
+	 */
+	public Campaign.RunningState getCampaignRunningState(
+			final String campaignId) {
+
+		return campaignRunningStates.get(campaignId);
+	}
+
+	/**
+	 * Returns whether or not the user belongs to the class.
+	 *
+	 * @param classId The class' unique identifier.
+	 *
+	 * @return Whether or not the user belongs to the class.
+	 */
+	public boolean belongsToClass(final String classId) {
+		return classRoles.containsKey(classId);
+	}
+
+	/**
+	 * Returns the user's role in the class.
+	 *
+	 * @param classId The class' unique identifier.
+	 *
+	 * @return The user's role in the class or null if they don't belong to
+	 * 		   the class.
+	 */
+	public Clazz.Role getClassRole(final String classId) {
+		return classRoles.get(classId);
+	}
+
+	/**
+	 * Returns when this snapshot was loaded.
+	 *
+	 * @return The number of milliseconds since the epoch at which this
+	 * 		   snapshot was loaded.
+	 */
+	public long getLoadedTimestamp() {
+		return loadedTimestamp;
+	}
+}
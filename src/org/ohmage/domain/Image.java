@@ -1010,6 +1010,21 @@ public class Image implements IMedia{
 		return getImageData(size).getInputStream();
 	}
 	
+	/**
+	 * Returns the URL that references the image of the given size.
+	 * 
+	 * @param size The desired {@link Size} of the image.
+	 * 
+	 * @return The URL that references the image or null if the image only 
+	 * 		   exists in memory, e.g. it was uploaded or it was transformed 
+	 * 		   from the original.
+	 * 
+	 * @throws DomainException There was an error retrieving the image data.
+	 */
+	public URL getUrl(final Size size) throws DomainException {
+		return getImageData(size).getUrl();
+	}
+	
 	
 	/**
 	 * Close InputStreams of all Size connected to the image.
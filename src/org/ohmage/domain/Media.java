@@ -31,6 +31,8 @@ public class Media implements IMedia {
 
 	private final UUID id;
 	private final InputStream content; 
+	// The URL referencing the data or null if the data is in memory.
+	private final URL url;
 	private Media.ContentInfo contentInfo; 
 	// The size, in bytes, of the media file.
 	public final long size;
@@ -296,6 +298,7 @@ public class Media implements IMedia {
 		else {
 			this.content = new ByteArrayInputStream(content);
 		}
+		this.url = null;
 		
 		// Validate the size.
 		this.size = content.length;
@@ -349,6 +352,7 @@ public class Media implements IMedia {
 		else {
 			this.content = contentStream;
 		}
+		this.url = null;
 		
 		// Validate the size. 
 		this.size = fileSize; 
@@ -380,6 +384,7 @@ public class Media implements IMedia {
 		
 		if (url == null)
 			throw new DomainException("[MediaID " + id.toString() + "] URL is null.");
+		this.url = url;
 		
 		// Create a connection to the stream.
 		try {
@@ -437,6 +442,16 @@ public class Media implements IMedia {
 		return size;
 	}
 	
+	/**
+	 * Returns the URL that references the data.
+	 * 
+	 * @return The URL that references the data or null if the data only 
+	 * 		   exists in memory.
+	 */
+	public URL getUrl() {
+		return url;
+	}
+	
 	/**
 	 * Returns ContentInfo object associated with this media.
 	 * 
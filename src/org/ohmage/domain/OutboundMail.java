@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.domain;
+
+/**
+ * A mail message that has been queued to be sent. This class is immutable.
+ */
+public class OutboundMail {
+	private final long id;
+	private final String sender;
+	private final String recipient;
+	private final String subject;
+	private final String body;
+	private final String contentType;
+	private final int attempts;
+
+	/**
+	 * Creates a queued mail message.
+	 *
+	 * @param id The message's database identifier.
+	 *
+	 * @param sender The sender's email address.
+	 *
+	 * @param recipient The recipient's email address.
+	 *
+	 * @param subject The subject.
+	 *
+	 * @param body The body.
+	 *
+	 * @param contentType The MIME type of the body.
+	 *
+	 * @param attempts The number of times sending the message has failed.
+	 */
+	public OutboundMail(
+			final long id,
+			final String sender,
+			final String recipient,
+			final String subject,
+			final String body,
+			final String contentType,
+			final int attempts) {
+
+		this.id = id;
+		this.sender = sender;
+		this.recipient = recipient;
+		this.subject = subject;
+		this.body = body;
+		this.contentType = contentType;
+		this.attempts = attempts;
+	}
+
+	/**
+	 * Returns the message's database identifier.
+	 *
+	 * @return The message's database identifier.
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the sender's email address.
+	 *
+	 * @return The sender's email address.
+	 */
+	public String getSender() {
+		return sender;
+	}
+
+	/**
+	 * Returns the recipient's email address.
+	 *
+	 * @return The recipient's email address.
+	 */
+	public String getRecipient() {
+		return recipient;
+	}
+
+	/**
+	 * Returns the subject.
+	 *
+	 * @return The subject.
+	 */
+	public String getSubject() {
+		return subject;
+	}
+
+	/**
+	 * Returns the body.
+	 *
+	 * @return The body.
+	 */
+	public String getBody() {
+		return body;
+	}
+
+	/**
+	 * Returns the MIME type of the body.
+	 *
+	 * @return The MIME type of the body.
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Returns the number of times sending the message has failed.
+	 *
+	 * @return The number of times sending the message has failed.
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+}
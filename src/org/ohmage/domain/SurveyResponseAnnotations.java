@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.domain;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * All of the annotations on one survey response, both those on the survey
+ * response itself and those on its prompt responses.
+ */
+public class SurveyResponseAnnotations {
+	private static final Logger LOGGER =
+		Logger.getLogger(SurveyResponseAnnotations.class);
+
+	private static final String JSON_KEY_SURVEY_RESPONSE = "survey_response";
+	private static final String JSON_KEY_PROMPT_RESPONSES = "prompt_responses";
+	private static final String JSON_KEY_PROMPT_ID = "prompt_id";
+	private static final String JSON_KEY_REPEATABLE_SET_ID =
+		"repeatable_set_id";
+	private static final String JSON_KEY_REPEATABLE_SET_ITERATION =
+		"repeatable_set_iteration";
+
+	/**
+	 * An annotation on a single prompt response.
+	 */
+	public static final class PromptResponseAnnotation {
+		private final String promptId;
+		private final String repeatableSetId;
+		private final Integer repeatableSetIteration;
+		private final Annotation annotation;
+
+		/**
+		 * Creates a new prompt response annotation.
+		 *
+		 * @param promptId The prompt's unique identifier.
+		 *
+		 * @param repeatableSetId The repeatable set's unique identifier or
+		 * 						  null if the prompt is not in a repeatable
+		 * 						  set.
+		 *
+		 * @param repeatableSetIteration The iteration of the repeatable set
+		 * 								 or null if the prompt is not in a
+		 * 								 repeatable set.
+		 *
+		 * @param annotation The annotation.
+		 */
+		private PromptResponseAnnotation(
+				final String promptId,
+				final String repeatableSetId,
+				final Integer repeatableSetIteration,
+				final Annotation annotation) {
+
+			this.promptId = promptId;
+			this.repeatableSetId = repeatableSetId;
+			this.repeatableSetIteration = repeatableSetIteration;
+			this.annotation = annotation;
+		}
+
+		/**
+		 * Returns the prompt's unique identifier.
+		 *
+		 * @return The prompt's unique identifier.
+		 */
+		public String getPromptId() {
+			return promptId;
+		}
+
+		/**
+		 * Returns the repeatable set's unique identifier.
+		 *
+		 * @return The repeatable set's unique identifier or null if the
+		 * 		   prompt is not in a repeatable set.
+		 */
+		public String getRepeatableSetId() {
+			return repeatableSetId;
+		}
+
+		/**
+		 * Returns the iteration of the repeatable set.
+		 *
+		 * @return The iteration of the repeatable set or null if the prompt
+		 * 		   is not in a repeatable set.
+		 */
+		public Integer getRepeatableSetIteration() {
+			return repeatableSetIteration;
+		}
+
+		/**
+		 * Returns the annotation.
+		 *
+		 * @return The annotation.
+		 */
+		public Annotation getAnnotation() {
+			return annotation;
+		}
+
+		/**
+		 * Creates a JSONObject with the annotation and the prompt response
+		 * to which it is attached.
+		 *
+		 * @return A JSONObject representing this object.
+		 *
+		 * @throws JSONException There was an error building the JSONObject.
+		 */
+		private JSONObject toJson() throws JSONException {
+			JSONObject result = annotation.toJson();
+
+			result.put(JSON_KEY_PROMPT_ID, promptId);
+			if(repeatableSetId != null) {
+				result.put(JSON_KEY_REPEATABLE_SET_ID, repeatableSetId);
+				result.put(
+					JSON_KEY_REPEATABLE_SET_ITERATION,
+					repeatableSetIteration);
+			}
+
+			return result;
+		}
+	}
+
+	private final List<Annotation> surveyResponseAnnotations =
+		new LinkedList<Annotation>();
+	private final List<PromptResponseAnnotation> promptResponseAnnotations =
+		new LinkedList<PromptResponseAnnotation>();
+
+	/**
+	 * Adds an annotation on the survey response.
+	 *
+	 * @param annotation The annotation.
+	 */
+	public void addSurveyResponseAnnotation(final Annotation annotation) {
+		surveyResponseAnnotations.add(annotation);
+	}
+
+	/**
+	 * Adds an annotation on one of the survey response's prompt responses.
+	 *
+	 * @param promptId The prompt's unique identifier.
+	 *
+	 * @param repeatableSetId The repeatable set's unique identifier or null if
+	 * 						  the prompt is not in a repeatable set.
+	 *
+	 * @param repeatableSetIteration The iteration of the repeatable set or
+	 * 								 null if the prompt is not in a
+	 * 								 repeatable set.
+	 *
+	 * @param annotation The annotation.
+	 */
+	public void addPromptResponseAnnotation(
+			final String promptId,
+			final String repeatableSetId,
+			final Integer repeatableSetIteration,
+			final Annotation annotation) {
+
+		promptResponseAnnotations.add(
+			new PromptResponseAnnotation(
+				promptId,
+				repeatableSetId,
+				repeatableSetIteration,
+				annotation));
+	}
+
+	/**
+	 * Returns the annotations on the survey response.
+	 *
+	 * @return An unmodifiable list of the annotations on the survey response.
+	 */
+	public List<Annotation> getSurveyResponseAnnotations() {
+		return Collections.unmodifiableList(surveyResponseAnnotations);
+	}
+
+	/**
+	 * Returns the annotations on the survey response's prompt responses.
+	 *
+	 * @return An unmodifiable list of the annotations on the prompt
+	 * 		   responses.
+	 */
+	public List<PromptResponseAnnotation> getPromptResponseAnnotations() {
+		return Collections.unmodifiableList(promptResponseAnnotations);
+	}
+
+	/**
+	 * Creates a JSONObject with the survey response's annotations and its
+	 * prompt responses' annotations.
+	 *
+	 * @return A JSONObject representing this object. If there is an error
+	 * 		   building this object, null is returned.
+	 */
+	public JSONObject toJson() {
+		try {
+			JSONObject result = new JSONObject();
+
+			JSONArray surveyResponseJson = new JSONArray();
+			for(Annotation annotation : surveyResponseAnnotations) {
+				surveyResponseJson.put(annotation.toJson());
+			}
+			result.put(JSON_KEY_SURVEY_RESPONSE, surveyResponseJson);
+
+			JSONArray promptResponsesJson = new JSONArray();
+			for(PromptResponseAnnotation annotation : promptResponseAnnotations) {
+				promptResponsesJson.put(annotation.toJson());
+			}
+			result.put(JSON_KEY_PROMPT_RESPONSES, promptResponsesJson);
+
+			return result;
+		}
+		catch(JSONException e) {
+			LOGGER.error("Error building the JSONObject.", e);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.domain;
+
+/**
+ * The aggregate statistics about one user's uploads of one kind of data,
+ * e.g. survey responses or Mobility points. This class is immutable.
+ */
+public class UploadStats {
+	private static final double MILLIS_IN_A_HOUR = 60 * 60 * 1000;
+
+	private final Long lastUpload;
+	private final long recentCount;
+	private final long recentCountWithLocation;
+
+	/**
+	 * Creates the statistics.
+	 *
+	 * @param lastUpload The milliseconds since the epoch of the most recent
+	 * 					 upload or null if there are none.
+	 *
+	 * @param recentCount The number of uploads in the recent period.
+	 *
+	 * @param recentCountWithLocation The number of uploads in the recent
+	 * 								  period that have a location.
+	 */
+	public UploadStats(
+			final Long lastUpload,
+			final long recentCount,
+			final long recentCountWithLocation) {
+
+		this.lastUpload = lastUpload;
+		this.recentCount = recentCount;
+		this.recentCountWithLocation = recentCountWithLocation;
+	}
+
+	/**
+	 * Returns the milliseconds since the epoch of the most recent upload.
+	 *
+	 * @return The time of the most recent upload or null if there are none.
+	 */
+	public Long getLastUpload() {
+		return lastUpload;
+	}
+
+	/**
+	 * Returns the number of uploads in the recent period.
+	 *
+	 * @return The number of uploads in the recent period.
+	 */
+	public long getRecentCount() {
+		return recentCount;
+	}
+
+	/**
+	 * Returns the number of uploads in the recent period that have a
+	 * location.
+	 *
+	 * @return The number of recent uploads with a location.
+	 */
+	public long getRecentCountWithLocation() {
+		return recentCountWithLocation;
+	}
+
+	/**
+	 * Returns the number of hours between the most recent upload and some
+	 * time.
+	 *
+	 * @param now The milliseconds since the epoch to compare against.
+	 *
+	 * @return The number of hours or null if there are no uploads.
+	 */
+	public Double getHoursSinceLastUpload(final long now) {
+		if(lastUpload == null) {
+			return null;
+		}
+
+		return (now - lastUpload) / MILLIS_IN_A_HOUR;
+	}
+
+	/**
+	 * Returns the fraction of the uploads in the recent period that have a
+	 * location.
+	 *
+	 * @return The fraction between 0 and 1 or null if there were no uploads
+	 * 		   in the recent period.
+	 */
+	public Double getRecentPercentageWithLocation() {
+		if(recentCount == 0) {
+			return null;
+		}
+
+		return new Double(recentCountWithLocation) / new Double(recentCount);
+	}
+}
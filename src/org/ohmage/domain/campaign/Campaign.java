@@ -156,6 +156,10 @@ public class Campaign {
 	private static final String JSON_KEY_PARTICIPANT = "participant";
 
 	private static final String JSON_KEY_SURVEY_RESPONSE_COUNT = "survey_response_count";
+	private static final String JSON_KEY_SURVEY_RESPONSE_PARTICIPANT_COUNT = 
+		"survey_response_participant_count";
+	private static final String JSON_KEY_LAST_SURVEY_RESPONSE_UPLOAD_TIMESTAMP =
+		"last_survey_response_upload_timestamp";
 
 	private static final Pattern VALID_CHARACTERS_PATTERN = 
 			Pattern.compile("[a-zA-Z0-9_]+");
@@ -384,6 +388,16 @@ public class Campaign {
 	 */
 	private final Map<SurveyResponse.PrivacyState, Integer> surveyResponseCounts = new HashMap<SurveyResponse.PrivacyState, Integer>();
 	
+	/**
+	 * The number of users with survey responses.
+	 */
+	private int surveyResponseParticipantCount = 0;
+	
+	/**
+	 * When the most recent survey response was uploaded or null if unknown.
+	 */
+	private DateTime lastSurveyResponseUploadTimestamp = null;
+	
 	/**
 	 * Creates a new configuration object that represents the configuration
 	 * defined by the 'xml'.
@@ -1223,6 +1237,23 @@ public class Campaign {
 		this.surveyResponseCounts.putAll(responseCounts);
 	}
 	
+	/**
+	 * Adds the survey response statistics to the campaign: the number of
+	 * survey responses per privacy state, the number of users with survey
+	 * responses, and when the most recent one was uploaded.
+	 * 
+	 * @param stats The statistics. If null, this call is ignored.
+	 */
+	public void addSurveyResponseStats(final CampaignStats stats) {
+		if(stats == null) {
+			return;
+		}
+		
+		addSurveyResponseCounts(stats.getResponseCounts());
+		surveyResponseParticipantCount = stats.getParticipantCount();
+		lastSurveyResponseUploadTimestamp = stats.getLastUploadTimestamp();
+	}
+	
 	/**
 	 * Returns the surveyResponseCounts associated with the campaign. 
 	 * 
@@ -2028,6 +2059,17 @@ public class Campaign {
 			else counts.put(ps.toString(), 0);
 		    }
 		    result.put(JSON_KEY_SURVEY_RESPONSE_COUNT, counts);
+		    result.put(
+		    	JSON_KEY_SURVEY_RESPONSE_PARTICIPANT_COUNT, 
+		    	surveyResponseParticipantCount);
+		    if(lastSurveyResponseUploadTimestamp != null) {
+		    	result.put(
+		    		JSON_KEY_LAST_SURVEY_RESPONSE_UPLOAD_TIMESTAMP,
+		    		DateTimeUtils
+		    			.getIso8601DateString(
+		    				lastSurveyResponseUploadTimestamp, 
+		    				true));
+		    }
 		}
 		
 		if(withXml) {
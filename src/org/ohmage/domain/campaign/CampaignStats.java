@@ -0,0 +1,85 @@
+package org.ohmage.domain.campaign;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+
+/**
+ * The statistics about the survey responses in a campaign that are visible
+ * to some user. This class is immutable.
+ */
+public class CampaignStats {
+	private final Map<SurveyResponse.PrivacyState, Integer> responseCounts;
+	private final int participantCount;
+	private final DateTime lastUploadTimestamp;
+
+	/**
+	 * Creates a new set of statistics.
+	 *
+	 * @param responseCounts The number of survey responses in each privacy
+	 * 						 state. Privacy states without survey responses
+	 * 						 may be omitted.
+	 *
+	 * @param participantCount The number of users that have uploaded the
+	 * 						   survey responses.
+	 *
+	 * @param lastUploadTimestamp When the most recent survey response was
+	 * 							  uploaded or null if there are no survey
+	 * 							  responses.
+	 *
+	 * @throws IllegalArgumentException The response counts are null or the
+	 * 									participant count is negative.
+	 */
+	public CampaignStats(
+			final Map<SurveyResponse.PrivacyState, Integer> responseCounts,
+			final int participantCount,
+			final DateTime lastUploadTimestamp) {
+
+		if(responseCounts == null) {
+			throw new IllegalArgumentException("The response counts are null.");
+		}
+		if(participantCount < 0) {
+			throw new IllegalArgumentException(
+				"The participant count is negative.");
+		}
+
+		this.responseCounts =
+			Collections.unmodifiableMap(
+				new HashMap<SurveyResponse.PrivacyState, Integer>(
+					responseCounts));
+		this.participantCount = participantCount;
+		this.lastUploadTimestamp = lastUploadTimestamp;
+	}
+
+	/**
+	 * Returns the number of survey responses in each privacy state.
+	 *
+	 * @return An unmodifiable map of privacy states to their number of survey
+	 * 		   responses. Privacy states without survey responses may be
+	 * 		   omitted.
+	 */
+	public Map<SurveyResponse.PrivacyState, Integer> getResponseCounts() {
+		return responseCounts;
+	}
+
+	/**
+	 * Returns the number of users that have uploaded the survey responses.
+	 *
+	 * @return The number of users that have uploaded the survey responses.
+	 */
+	public int getParticipantCount() {
+		return participantCount;
+	}
+
+	/**
+	 * Returns when the most recent survey response was uploaded.
+	 *
+	 * @return When the most recent survey response was uploaded or null if
+	 * 		   there are no survey responses.
+	 */
+	public DateTime getLastUploadTimestamp() {
+		return lastUploadTimestamp;
+	}
+}
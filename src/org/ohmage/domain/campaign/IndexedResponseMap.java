@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.domain.campaign;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map of survey item indices to their responses that keeps the responses
+ * in an array indexed by the survey item's index instead of in hash entries.
+ * A survey's items are indexed from zero, so the array is dense and this
+ * uses a fraction of the memory of a HashMap when many survey responses are
+ * read at once. The entries are iterated in index order. Null responses are
+ * not allowed.
+ */
+final class IndexedResponseMap extends AbstractMap<Integer, Response> {
+	private Response[] responses;
+	private int size = 0;
+
+	/**
+	 * Creates an empty map.
+	 *
+	 * @param capacity The number of survey items in the survey, which is
+	 * 				   one more than the largest index that is expected.
+	 */
+	IndexedResponseMap(final int capacity) {
+		responses = new Response[Math.max(capacity, 0)];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractMap#size()
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractMap#containsKey(java.lang.Object)
+	 */
+	@Override
+	public boolean containsKey(final Object key) {
+		return get(key) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractMap#get(java.lang.Object)
+	 */
+	@Override
+	public Response get(final Object key) {
+		if(! (key instanceof Integer)) {
+			return null;
+		}
+
+		int index = (Integer) key;
+		if((index < 0) || (index >= responses.length)) {
+			return null;
+		}
+
+		return responses[index];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractMap#put(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public Response put(final Integer key, final Response value) {
+		if(key == null) {
+			throw new NullPointerException("The index is null.");
+		}
+		if(value == null) {
+			throw new NullPointerException("The response is null.");
+		}
+
+		int index = key;
+		if(index < 0) {
+			throw new IllegalArgumentException("The index is negative.");
+		}
+		if(index >= responses.length) {
+			responses =
+				Arrays.copyOf(
+					responses,
+					Math.max(index + 1, responses.length + (responses.length >> 1)));
+		}
+
+		Response previous = responses[index];
+		if(previous == null) {
+			size++;
+		}
+		responses[index] = value;
+
+		return previous;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractMap#remove(java.lang.Object)
+	 */
+	@Override
+	public Response remove(final Object key) {
+		Response previous = get(key);
+		if(previous != null) {
+			responses[(Integer) key] = null;
+			size--;
+		}
+
+		return previous;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractMap#clear()
+	 */
+	@Override
+	public void clear() {
+		Arrays.fill(responses, null);
+		size = 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractMap#entrySet()
+	 */
+	@Override
+	public Set<Map.Entry<Integer, Response>> entrySet() {
+		return new AbstractSet<Map.Entry<Integer, Response>>() {
+			/*
+			 * (non-Javadoc)
+			 * @see java.util.AbstractCollection#size()
+			 */
+			@Override
+			public int size() {
+				return size;
+			}
+
+			/*
+			 * (non-Javadoc)
+			 * @see java.util.AbstractCollection#iterator()
+			 */
+			@Override
+			public Iterator<Map.Entry<Integer, Response>> iterator() {
+				return new Iterator<Map.Entry<Integer, Response>>() {
+					private int next = advance(0);
+					private int last = -1;
+
+					/**
+					 * Returns the first index at or after some index that
+					 * has a response or the length of the array if there
+					 * are none.
+					 */
+					private int advance(final int from) {
+						int index = from;
+						while((index < responses.length) &&
+								(responses[index] == null)) {
+							index++;
+						}
+						return index;
+					}
+
+					@Override
+					public boolean hasNext() {
+						return next < responses.length;
+					}
+
+					@Override
+					public Map.Entry<Integer, Response> next() {
+						if(! hasNext()) {
+							throw new NoSuchElementException();
+						}
+
+						last = next;
+						next = advance(next + 1);
+
+						return
+							new AbstractMap.SimpleImmutableEntry<Integer, Response>(
+								last,
+								responses[last]);
+					}
+
+					@Override
+					public void remove() {
+						if((last == -1) || (responses[last] == null)) {
+							throw new IllegalStateException();
+						}
+
+						responses[last] = null;
+						size--;
+					}
+				};
+			}
+		};
+	}
+}
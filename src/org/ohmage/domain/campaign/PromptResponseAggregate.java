@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.domain.campaign;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.exception.DomainException;
+
+/**
+ * The aggregate of the typed values of a prompt's responses, optionally
+ * limited to a single user and/or a single day. The aggregate is computed by
+ * the database, so only the results are held here.
+ */
+public class PromptResponseAggregate {
+	public static final String JSON_KEY_PROMPT_ID = "prompt_id";
+	public static final String JSON_KEY_USER = "user";
+	public static final String JSON_KEY_DAY = "day";
+	public static final String JSON_KEY_COUNT = "count";
+	public static final String JSON_KEY_MIN = "min";
+	public static final String JSON_KEY_MAX = "max";
+	public static final String JSON_KEY_AVG = "avg";
+	public static final String JSON_KEY_HISTOGRAM = "histogram";
+
+	/**
+	 * The items by which the aggregates may be grouped in addition to the
+	 * prompt ID.
+	 */
+	public static enum GroupItem {
+		USER,
+		DAY;
+
+		/**
+		 * Generates the group item for the key.
+		 *
+		 * @param key The group item as a key.
+		 *
+		 * @return The group item.
+		 *
+		 * @throws IllegalArgumentException The key could not be decoded to a
+		 * 									group item.
+		 */
+		public static GroupItem getValue(final String key) {
+			return valueOf(key.toUpperCase());
+		}
+
+		/**
+		 * Returns this group item as a human-readable value.
+		 *
+		 * @return This group item as a human-readable value.
+		 */
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	private final String promptId;
+	private final String username;
+	private final String day;
+
+	private final long count;
+	private final Double min;
+	private final Double max;
+	private final Double avg;
+
+	private final Map<Double, Long> histogram;
+
+	/**
+	 * Creates a new aggregate.
+	 *
+	 * @param promptId The prompt's unique identifier.
+	 *
+	 * @param username The user to which this aggregate is limited or null if
+	 * 				   it was not grouped by user.
+	 *
+	 * @param day The day, "yyyy-MM-dd" in the phone's time zone, to which this
+	 * 			  aggregate is limited or null if it was not grouped by day.
+	 *
+	 * @param count The number of typed responses.
+	 *
+	 * @param min The minimum typed value or null if there were none.
+	 *
+	 * @param max The maximum typed value or null if there were none.
+	 *
+	 * @param avg The average typed value or null if there were none.
+	 *
+	 * @throws DomainException The prompt ID is null.
+	 */
+	public PromptResponseAggregate(
+			final String promptId,
+			final String username,
+			final String day,
+			final long count,
+			final Double min,
+			final Double max,
+			final Double avg)
+			throws DomainException {
+
+		if(promptId == null) {
+			throw new DomainException("The prompt ID is null.");
+		}
+
+		this.promptId = promptId;
+		this.username = username;
+		this.day = day;
+
+		this.count = count;
+		this.min = min;
+		this.max = max;
+		this.avg = avg;
+
+		histogram = new TreeMap<Double, Long>();
+	}
+
+	/**
+	 * Returns the prompt's unique identifier.
+	 *
+	 * @return The prompt's unique identifier.
+	 */
+	public String getPromptId() {
+		return promptId;
+	}
+
+	/**
+	 * Returns the user to which this aggregate is limited.
+	 *
+	 * @return The username or null if this aggregate was not grouped by user.
+	 */
+	public String getUsername() {
+		return username;
+	}
+
+	/**
+	 * Returns the day to which this aggregate is limited.
+	 *
+	 * @return The day or null if this aggregate was not grouped by day.
+	 */
+	public String getDay() {
+		return day;
+	}
+
+	/**
+	 * Returns the number of typed responses.
+	 *
+	 * @return The number of typed responses.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Adds a histogram bucket to this aggregate.
+	 *
+	 * @param bucket The lower bound of the bucket or, for single-choice
+	 * 				 prompts, the key.
+	 *
+	 * @param bucketCount The number of responses in the bucket.
+	 */
+	public void addHistogramBucket(final double bucket, final long bucketCount) {
+		histogram.put(bucket, bucketCount);
+	}
+
+	/**
+	 * Creates a JSONObject that represents this aggregate. The group items
+	 * that were not used are omitted, as are the histogram when it is empty
+	 * and the min, max, and average when there were no typed responses.
+	 *
+	 * @return A JSONObject that represents this aggregate.
+	 *
+	 * @throws JSONException There was an error building the JSONObject.
+	 */
+	public JSONObject toJsonObject() throws JSONException {
+		JSONObject result = new JSONObject();
+
+		result.put(JSON_KEY_PROMPT_ID, promptId);
+		result.putOpt(JSON_KEY_USER, username);
+		result.putOpt(JSON_KEY_DAY, day);
+
+		result.put(JSON_KEY_COUNT, count);
+		result.putOpt(JSON_KEY_MIN, min);
+		result.putOpt(JSON_KEY_MAX, max);
+		result.putOpt(JSON_KEY_AVG, avg);
+
+		if(! histogram.isEmpty()) {
+			JSONObject histogramJson = new JSONObject();
+			for(Double bucket : histogram.keySet()) {
+				// Keys and whole-number buckets are output without a
+				// fractional part.
+				String bucketKey;
+				if(bucket == Math.floor(bucket)) {
+					bucketKey = Long.toString(bucket.longValue());
+				}
+				else {
+					bucketKey = bucket.toString();
+				}
+				histogramJson.put(bucketKey, histogram.get(bucket));
+			}
+			result.put(JSON_KEY_HISTOGRAM, histogramJson);
+		}
+
+		return result;
+	}
+}
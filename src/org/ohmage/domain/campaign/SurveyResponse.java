@@ -15,6 +15,7 @@
  ******************************************************************************/
 package org.ohmage.domain.campaign;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -130,7 +131,11 @@ public class SurveyResponse {
 		}
 	}
 	private final LocationStatus locationStatus;
-	private final Location location;
+	// Survey responses that are read from the database keep the location as
+	// the UTF-8 bytes of its JSON until it is first requested, at which point
+	// it is parsed and the bytes are released.
+	private Location location;
+	private byte[] locationBytes;
 	
 	private final Survey survey;
 	private final UUID surveyResponseId;
@@ -387,7 +392,10 @@ public class SurveyResponse {
 			return true;
 		}
 	}
-	private final LaunchContext launchContext;
+	// Like the location, the launch context may be kept as the UTF-8 bytes of
+	// its JSON until it is first requested.
+	private LaunchContext launchContext;
+	private byte[] launchContextBytes;
 	
 	/**
 	 * The possible column keys that can be requested for survey response read.
@@ -813,12 +821,15 @@ public class SurveyResponse {
 	 * 				   response at the time is was generated.
 	 * 
 	 * @param launchContext Context information provided by the device about  
-	 * 						its state while this survey was being taken.
+	 * 						its state while this survey was being taken as
+	 * 						a JSON string. It is not parsed until it is 
+	 * 						requested.
 	 *  
 	 * @param locationStatus The status of the location information.
 	 * 
-	 * @param location The location information. This may be null if it  
-	 * 				   correlates with the location status.
+	 * @param location The location information as a JSON string. This may be
+	 * 				   null if it correlates with the location status. It is 
+	 * 				   not parsed until it is requested.
 	 * 
 	 * @throws DomainException Thrown if any of the information provided is 
 	 * 						   missing or invalid.
@@ -832,9 +843,9 @@ public class SurveyResponse {
 			final String client,
 			final long time, 
 			final DateTimeZone timezone, 
-			final JSONObject launchContext, 
+			final String launchContext, 
 			final String locationStatus, 
-			final JSONObject location,
+			final String location,
 			final PrivacyState privacyState) 
 			throws DomainException {
 
@@ -878,7 +889,8 @@ public class SurveyResponse {
 		this.survey = survey;
 		this.privacyState = privacyState;
 		
-		this.launchContext = new LaunchContext(launchContext);
+		this.launchContext = null;
+		this.launchContextBytes = launchContext.getBytes(StandardCharsets.UTF_8);
 		
 		try {
 			this.locationStatus = 
@@ -887,14 +899,15 @@ public class SurveyResponse {
 		catch(IllegalArgumentException e) {
 			throw new DomainException("Unknown location status.", e);
 		}
+		this.location = null;
 		if(location != null) {
-			this.location = new Location(location, timezone);
+			this.locationBytes = location.getBytes(StandardCharsets.UTF_8);
 		}
 		else {
-			this.location = null;
+			this.locationBytes = null;
 		}
 		
-		responses = new HashMap<Integer, Response>();
+		responses = new IndexedResponseMap(survey.getSurveyItems().size());
 	}
 	
 	/**
@@ -995,6 +1008,7 @@ public class SurveyResponse {
 		this.privacyState = privacyState;
 		
 		this.launchContext = launchContext;
+		this.launchContextBytes = null;
 		
 		this.locationStatus = locationStatus;
 		if((! LocationStatus.UNAVAILABLE.equals(locationStatus)) && 
@@ -1003,6 +1017,7 @@ public class SurveyResponse {
 					"The location cannot be null unless the location status is unavailable.");
 		}
 		this.location = location;
+		this.locationBytes = null;
 		
 		this.responses = new HashMap<Integer, Response>(responses);
 	}
@@ -1140,6 +1155,7 @@ public class SurveyResponse {
 		
 		try {
 			launchContext = new LaunchContext(response.getJSONObject(JSON_KEY_SURVEY_LAUNCH_CONTEXT));
+			launchContextBytes = null;
 		}
 		catch(JSONException e) {
 			throw new DomainException(
@@ -1183,6 +1199,7 @@ public class SurveyResponse {
 			}
 		}
 		location = tLocation;
+		locationBytes = null;
 		
 		PrivacyState tPrivacyState;
 		if(response.has(JSON_KEY_PRIVACY_STATE)) {
@@ -1327,8 +1344,33 @@ public class SurveyResponse {
 	 * launched.
 	 * 
 	 * @return Context information from the phone.
+	 * 
+	 * @throws IllegalStateException The launch context was read from the
+	 * 								 database and could not be parsed.
 	 */
 	public final LaunchContext getLaunchContext() {
+		if(launchContextBytes != null) {
+			try {
+				launchContext = 
+						new LaunchContext(
+							new JSONObject(
+								new String(
+									launchContextBytes, 
+									StandardCharsets.UTF_8)));
+			}
+			catch(JSONException e) {
+				throw new IllegalStateException(
+						"The stored launch context is not valid JSON.", 
+						e);
+			}
+			catch(DomainException e) {
+				throw new IllegalStateException(
+						"The stored launch context is invalid.", 
+						e);
+			}
+			launchContextBytes = null;
+		}
+		
 		return launchContext;
 	}
 
@@ -1347,8 +1389,34 @@ public class SurveyResponse {
 	 * response was generated if applicable.
 	 * 
 	 * @return The location information if available or null if not.
+	 * 
+	 * @throws IllegalStateException The location was read from the database
+	 * 								 and could not be parsed.
 	 */
 	public final Location getLocation() {
+		if(locationBytes != null) {
+			try {
+				location = 
+						new Location(
+							new JSONObject(
+								new String(
+									locationBytes, 
+									StandardCharsets.UTF_8)),
+							timezone);
+			}
+			catch(JSONException e) {
+				throw new IllegalStateException(
+						"The stored location is not valid JSON.", 
+						e);
+			}
+			catch(DomainException e) {
+				throw new IllegalStateException(
+						"The stored location is invalid.", 
+						e);
+			}
+			locationBytes = null;
+		}
+		
 		return location;
 	}
 	
@@ -1604,8 +1672,8 @@ public class SurveyResponse {
 			result.put(JSON_KEY_LOCATION_STATUS, locationStatus.toString());
 		}
 		
-		if(withLocation && (location != null)) {
-			result.put(JSON_KEY_LOCATION, location.toJson(false, LocationColumnKey.ALL_COLUMNS));
+		if(withLocation && (getLocation() != null)) {
+			result.put(JSON_KEY_LOCATION, getLocation().toJson(false, LocationColumnKey.ALL_COLUMNS));
 		}
 		
 		if(withSurveyId && (survey != null)) {
@@ -1621,11 +1689,11 @@ public class SurveyResponse {
 		}
 		
 		if(withLaunchContextShort) {
-			result.put(JSON_KEY_SURVEY_LAUNCH_CONTEXT_SHORT, launchContext.toJson(false));
+			result.put(JSON_KEY_SURVEY_LAUNCH_CONTEXT_SHORT, getLaunchContext().toJson(false));
 		}
 		
 		if(withLaunchContextLong) {
-			result.put(JSON_KEY_SURVEY_LAUNCH_CONTEXT_LONG, launchContext.toJson(true));
+			result.put(JSON_KEY_SURVEY_LAUNCH_CONTEXT_LONG, getLaunchContext().toJson(true));
 		}
 		
 		if(withResponses) {
@@ -1676,8 +1744,10 @@ public class SurveyResponse {
 		result = prime * result
 				+ ((campaignId == null) ? 0 : campaignId.hashCode());
 		result = prime * result + ((client == null) ? 0 : client.hashCode());
+		LaunchContext launchContext = getLaunchContext();
 		result = prime * result
 				+ ((launchContext == null) ? 0 : launchContext.hashCode());
+		Location location = getLocation();
 		result = prime * result
 				+ ((location == null) ? 0 : location.hashCode());
 		result = prime * result
@@ -1720,15 +1790,17 @@ public class SurveyResponse {
 				return false;
 		} else if (!client.equals(other.client))
 			return false;
+		LaunchContext launchContext = getLaunchContext();
 		if (launchContext == null) {
-			if (other.launchContext != null)
+			if (other.getLaunchContext() != null)
 				return false;
-		} else if (!launchContext.equals(other.launchContext))
+		} else if (!launchContext.equals(other.getLaunchContext()))
 			return false;
+		Location location = getLocation();
 		if (location == null) {
-			if (other.location != null)
+			if (other.getLocation() != null)
 				return false;
-		} else if (!location.equals(other.location))
+		} else if (!location.equals(other.getLocation()))
 			return false;
 		if (locationStatus != other.locationStatus)
 			return false;
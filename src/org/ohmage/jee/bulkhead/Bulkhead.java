@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.jee.bulkhead;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A concurrency limit for one class of requests. At most a fixed number of
+ * the requests run at once, and at most a fixed number more wait, for a
+ * bounded time, for one of them to finish. Any other request is rejected
+ * immediately so that it does not hold one of the container's threads.
+ * </p>
+ *
+ * <p>
+ * A bulkhead may also have its own budget of database connections. While a
+ * request is running, the bulkhead is bound to its thread, and the
+ * {@link BulkheadDataSource} makes the request wait, again for a bounded
+ * time, for one of the budget's connections before it takes one from the
+ * shared pool. This keeps long, read-heavy requests from draining the pool
+ * that the uploads need.
+ * </p>
+ */
+public class Bulkhead implements BulkheadMBean {
+	/**
+	 * The request attribute that is set to {@link Boolean#TRUE} by whoever
+	 * takes over an asynchronous request's place in the bulkhead. It then
+	 * calls {@link #exit()} itself once the request's work has finished,
+	 * which may be after the container has completed the request.
+	 */
+	public static final String ATTRIBUTE_EXIT_DEFERRED =
+		"_ohmage_bulkhead_exit_deferred_";
+
+	/**
+	 * The bulkhead of the request that the current thread is servicing.
+	 */
+	private static final ThreadLocal<Bulkhead> CURRENT =
+		new ThreadLocal<Bulkhead>();
+
+	private final String name;
+	private final Set<String> uris;
+	private final int maxConcurrent;
+	private final int maxWaiting;
+	private final long waitMillis;
+	private final int maxConnections;
+	private final int retryAfterSeconds;
+
+	private final Semaphore permits;
+	private final Semaphore connections;
+
+	private final AtomicInteger inFlight = new AtomicInteger(0);
+	private final AtomicInteger waiting = new AtomicInteger(0);
+	private final AtomicLong admitted = new AtomicLong(0);
+	private final AtomicLong rejected = new AtomicLong(0);
+	private final AtomicLong connectionTimeouts = new AtomicLong(0);
+
+	/**
+	 * Creates a bulkhead.
+	 *
+	 * @param name The bulkhead's name, which is used in the logs and the
+	 * 			   metrics.
+	 *
+	 * @param uris The comma-separated URIs of the requests, relative to the
+	 * 			   context path, e.g. "/survey_response/read,/stream/read".
+	 *
+	 * @param maxConcurrent The maximum number of requests that may run at
+	 * 						once.
+	 *
+	 * @param maxWaiting The maximum number of requests that may wait to run.
+	 *
+	 * @param waitMillis The maximum number of milliseconds that a request
+	 * 					 may wait to run or for a database connection.
+	 *
+	 * @param maxConnections The maximum number of database connections that
+	 * 						 the requests may hold at once or 0 to let them
+	 * 						 share the whole pool.
+	 *
+	 * @param retryAfterSeconds The number of seconds after which a rejected
+	 * 							client is told to try again.
+	 */
+	public Bulkhead(
+			final String name,
+			final String uris,
+			final int maxConcurrent,
+			final int maxWaiting,
+			final long waitMillis,
+			final int maxConnections,
+			final int retryAfterSeconds) {
+
+		if(name == null) {
+			throw new IllegalArgumentException("The name is null.");
+		}
+		if(maxConcurrent <= 0) {
+			throw new IllegalArgumentException(
+				"The maximum number of concurrent requests must be positive.");
+		}
+		if(maxWaiting < 0) {
+			throw new IllegalArgumentException(
+				"The maximum number of waiting requests may not be negative.");
+		}
+		if(waitMillis < 0) {
+			throw new IllegalArgumentException(
+				"The wait time may not be negative.");
+		}
+		if(maxConnections < 0) {
+			throw new IllegalArgumentException(
+				"The connection budget may not be negative.");
+		}
+
+		Set<String> tUris = new LinkedHashSet<String>();
+		if(uris != null) {
+			for(String uri : uris.split(",")) {
+				String trimmedUri = uri.trim();
+				if(trimmedUri.length() > 0) {
+					tUris.add(trimmedUri);
+				}
+			}
+		}
+
+		this.name = name;
+		this.uris = Collections.unmodifiableSet(tUris);
+		this.maxConcurrent = maxConcurrent;
+		this.maxWaiting = maxWaiting;
+		this.waitMillis = waitMillis;
+		this.maxConnections = maxConnections;
+		this.retryAfterSeconds = retryAfterSeconds;
+
+		permits = new Semaphore(maxConcurrent, true);
+		connections =
+			(maxConnections == 0) ? null : new Semaphore(maxConnections, true);
+	}
+
+	/**
+	 * Returns the URIs of the requests that this bulkhead limits.
+	 *
+	 * @return The URIs relative to the context path.
+	 */
+	public Set<String> getUris() {
+		return uris;
+	}
+
+	/**
+	 * Returns the number of seconds after which a rejected client should try
+	 * again.
+	 *
+	 * @return The value of the Retry-After header.
+	 */
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+
+	/**
+	 * Admits a request, waiting if the bulkhead is full and there is room to
+	 * wait. An admitted request must call {@link #exit()} when it finishes.
+	 *
+	 * @return Whether the request was admitted. If not, it should be
+	 * 		   rejected.
+	 *
+	 * @throws InterruptedException The thread was interrupted while waiting.
+	 */
+	public boolean enter() throws InterruptedException {
+		if(! permits.tryAcquire()) {
+			if(waiting.incrementAndGet() > maxWaiting) {
+				waiting.decrementAndGet();
+				rejected.incrementAndGet();
+				return false;
+			}
+
+			try {
+				if(! permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+					rejected.incrementAndGet();
+					return false;
+				}
+			}
+			finally {
+				waiting.decrementAndGet();
+			}
+		}
+
+		inFlight.incrementAndGet();
+		admitted.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Marks an admitted request as finished, which lets the next one run.
+	 */
+	public void exit() {
+		inFlight.decrementAndGet();
+		permits.release();
+	}
+
+	/**
+	 * Binds this bulkhead to the current thread for the duration of a
+	 * request.
+	 */
+	public void bind() {
+		CURRENT.set(this);
+	}
+
+	/**
+	 * Unbinds any bulkhead from the current thread. This must be called when
+	 * a request is finished, because the container reuses its threads.
+	 */
+	public static void unbind() {
+		CURRENT.remove();
+	}
+
+	/**
+	 * Returns the bulkhead bound to the current thread.
+	 *
+	 * @return The bulkhead or null if the current request is not limited.
+	 */
+	public static Bulkhead current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Takes one of this bulkhead's database connections, waiting if all of
+	 * them are in use. This always succeeds if the bulkhead does not have its
+	 * own budget.
+	 *
+	 * @return Whether a connection could be taken. If so, it must be given
+	 * 		   back with {@link #releaseConnection()}.
+	 *
+	 * @throws InterruptedException The thread was interrupted while waiting.
+	 */
+	boolean acquireConnection() throws InterruptedException {
+		if(connections == null) {
+			return true;
+		}
+		if(connections.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+			return true;
+		}
+		connectionTimeouts.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Gives back one of this bulkhead's database connections.
+	 */
+	void releaseConnection() {
+		if(connections != null) {
+			connections.release();
+		}
+	}
+
+	/**
+	 * Returns whether this bulkhead has its own budget of database
+	 * connections.
+	 *
+	 * @return Whether the connections are budgeted.
+	 */
+	boolean hasConnectionBudget() {
+		return connections != null;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+	@Override
+	public int getMaxWaiting() {
+		return maxWaiting;
+	}
+
+	@Override
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	@Override
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	@Override
+	public int getWaiting() {
+		return waiting.get();
+	}
+
+	@Override
+	public int getConnectionsInUse() {
+		return
+			(connections == null) ?
+				0 :
+				(maxConnections - connections.availablePermits());
+	}
+
+	@Override
+	public long getAdmitted() {
+		return admitted.get();
+	}
+
+	@Override
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	@Override
+	public long getConnectionTimeouts() {
+		return connectionTimeouts.get();
+	}
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.jee.bulkhead;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * A data source that holds the requests of a {@link Bulkhead} with its own
+ * connection budget to that budget. Connections are still taken from the
+ * shared pool, but a request first waits for one of its bulkhead's permits,
+ * which is given back when the connection is closed. Requests outside of
+ * such a bulkhead, including the background tasks, use the pool directly.
+ */
+public class BulkheadDataSource extends DelegatingDataSource {
+	/**
+	 * Creates the data source.
+	 *
+	 * @param targetDataSource The pool from which the connections are taken.
+	 */
+	public BulkheadDataSource(final DataSource targetDataSource) {
+		super(targetDataSource);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		Bulkhead bulkhead = acquire();
+		try {
+			return wrap(super.getConnection(), bulkhead);
+		}
+		catch(SQLException e) {
+			release(bulkhead);
+			throw e;
+		}
+		catch(RuntimeException e) {
+			release(bulkhead);
+			throw e;
+		}
+	}
+
+	@Override
+	public Connection getConnection(
+			final String username,
+			final String password)
+			throws SQLException {
+
+		Bulkhead bulkhead = acquire();
+		try {
+			return wrap(super.getConnection(username, password), bulkhead);
+		}
+		catch(SQLException e) {
+			release(bulkhead);
+			throw e;
+		}
+		catch(RuntimeException e) {
+			release(bulkhead);
+			throw e;
+		}
+	}
+
+	/**
+	 * Takes a permit from the current thread's bulkhead if it has a
+	 * connection budget.
+	 *
+	 * @return The bulkhead whose permit was taken or null if none was.
+	 *
+	 * @throws SQLException The budget stayed exhausted for too long.
+	 */
+	private static Bulkhead acquire() throws SQLException {
+		Bulkhead bulkhead = Bulkhead.current();
+		if((bulkhead == null) || (! bulkhead.hasConnectionBudget())) {
+			return null;
+		}
+
+		try {
+			if(! bulkhead.acquireConnection()) {
+				throw new SQLTransientConnectionException(
+					"The '" +
+						bulkhead.getName() +
+						"' requests' database connections are all in use.");
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLTransientConnectionException(
+				"Interrupted while waiting for a database connection.",
+				e);
+		}
+		return bulkhead;
+	}
+
+	/**
+	 * Gives back a bulkhead's permit.
+	 */
+	private static void release(final Bulkhead bulkhead) {
+		if(bulkhead != null) {
+			bulkhead.releaseConnection();
+		}
+	}
+
+	/**
+	 * Wraps a connection so that closing it gives back its bulkhead's permit
+	 * exactly once.
+	 */
+	private static Connection wrap(
+			final Connection connection,
+			final Bulkhead bulkhead) {
+
+		if(bulkhead == null) {
+			return connection;
+		}
+
+		final AtomicBoolean released = new AtomicBoolean(false);
+		return
+			(Connection) Proxy.newProxyInstance(
+				Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(
+							final Object proxy,
+							final Method method,
+							final Object[] args)
+							throws Throwable {
+
+						String name = method.getName();
+						if("equals".equals(name)) {
+							return proxy == args[0];
+						}
+						else if("hashCode".equals(name)) {
+							return System.identityHashCode(proxy);
+						}
+
+						try {
+							return method.invoke(connection, args);
+						}
+						catch(InvocationTargetException e) {
+							throw e.getCause();
+						}
+						finally {
+							if("close".equals(name) &&
+								released.compareAndSet(false, true)) {
+
+								bulkhead.releaseConnection();
+							}
+						}
+					}
+				});
+	}
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.jee.bulkhead;
+
+/**
+ * The live metrics of a {@link Bulkhead}, which are published over JMX as
+ * "org.ohmage:type=Bulkhead,name=&lt;name&gt;".
+ */
+public interface BulkheadMBean {
+	/**
+	 * Returns the bulkhead's name.
+	 *
+	 * @return The name.
+	 */
+	String getName();
+
+	/**
+	 * Returns the maximum number of requests that may run at once.
+	 *
+	 * @return The maximum number of concurrent requests.
+	 */
+	int getMaxConcurrent();
+
+	/**
+	 * Returns the maximum number of requests that may wait to run.
+	 *
+	 * @return The size of the wait queue.
+	 */
+	int getMaxWaiting();
+
+	/**
+	 * Returns the maximum number of database connections that the requests
+	 * may hold at once.
+	 *
+	 * @return The connection budget or 0 if they share the whole pool.
+	 */
+	int getMaxConnections();
+
+	/**
+	 * Returns the number of requests that are running.
+	 *
+	 * @return The number of in-flight requests.
+	 */
+	int getInFlight();
+
+	/**
+	 * Returns the number of requests that are waiting to run.
+	 *
+	 * @return The number of waiting requests.
+	 */
+	int getWaiting();
+
+	/**
+	 * Returns the number of database connections that the requests hold.
+	 *
+	 * @return The number of connections in use.
+	 */
+	int getConnectionsInUse();
+
+	/**
+	 * Returns the number of requests that have been admitted.
+	 *
+	 * @return The total number of admitted requests.
+	 */
+	long getAdmitted();
+
+	/**
+	 * Returns the number of requests that were rejected because the wait
+	 * queue was full or they waited too long.
+	 *
+	 * @return The total number of rejected requests.
+	 */
+	long getRejected();
+
+	/**
+	 * Returns the number of times that a request waited too long for one of
+	 * the bulkhead's database connections.
+	 *
+	 * @return The total number of connection timeouts.
+	 */
+	long getConnectionTimeouts();
+}
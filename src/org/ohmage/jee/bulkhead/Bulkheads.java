@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.jee.bulkhead;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * The bulkheads of the request classes, keyed by the URIs under which the
+ * {@link org.ohmage.request.RequestBuilder} registers them. Requests whose
+ * URIs are not in any bulkhead are not limited beyond the container's own
+ * thread pool.
+ *
+ * Each bulkhead's metrics are published over JMX while the application is
+ * running.
+ */
+public class Bulkheads implements DisposableBean {
+	private static final Logger LOGGER = Logger.getLogger(Bulkheads.class);
+
+	private static final String OBJECT_NAME_PREFIX =
+		"org.ohmage:type=Bulkhead,name=";
+
+	private static Bulkheads instance;
+
+	private final List<Bulkhead> bulkheads;
+	private final Map<String, Bulkhead> bulkheadsByUri;
+	private final List<ObjectName> registeredNames =
+		new ArrayList<ObjectName>();
+
+	/**
+	 * Creates the bulkheads. This should only be called by Spring and by
+	 * tests.
+	 *
+	 * @param bulkheads The bulkheads.
+	 *
+	 * @throws IllegalArgumentException A URI is in more than one bulkhead.
+	 */
+	public Bulkheads(final Collection<Bulkhead> bulkheads) {
+		this.bulkheads =
+			Collections.unmodifiableList(new ArrayList<Bulkhead>(bulkheads));
+
+		Map<String, Bulkhead> tBulkheadsByUri = new HashMap<String, Bulkhead>();
+		for(Bulkhead bulkhead : bulkheads) {
+			for(String uri : bulkhead.getUris()) {
+				Bulkhead other = tBulkheadsByUri.put(uri, bulkhead);
+				if(other != null) {
+					throw new IllegalArgumentException(
+						"The URI is in both the '" +
+							other.getName() +
+							"' and '" +
+							bulkhead.getName() +
+							"' bulkheads: " +
+							uri);
+				}
+			}
+		}
+		bulkheadsByUri = tBulkheadsByUri;
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for(Bulkhead bulkhead : bulkheads) {
+			try {
+				ObjectName name =
+					new ObjectName(OBJECT_NAME_PREFIX + bulkhead.getName());
+				if(server.isRegistered(name)) {
+					server.unregisterMBean(name);
+				}
+				server.registerMBean(bulkhead, name);
+				registeredNames.add(name);
+			}
+			catch(JMException e) {
+				LOGGER.warn(
+					"The bulkhead's metrics could not be published: " +
+						bulkhead.getName(),
+					e);
+			}
+		}
+
+		instance = this;
+	}
+
+	/**
+	 * Returns the instance of the bulkheads.
+	 *
+	 * @return The bulkheads or null if they have not been created.
+	 */
+	public static Bulkheads instance() {
+		return instance;
+	}
+
+	/**
+	 * Returns all of the bulkheads.
+	 *
+	 * @return The bulkheads.
+	 */
+	public List<Bulkhead> getBulkheads() {
+		return bulkheads;
+	}
+
+	/**
+	 * Returns the bulkhead of a request.
+	 *
+	 * @param uri The request's URI relative to the context path, e.g.
+	 * 			  "/survey/upload".
+	 *
+	 * @return The bulkhead or null if the request is not limited.
+	 */
+	public Bulkhead get(final String uri) {
+		return bulkheadsByUri.get(uri);
+	}
+
+	/**
+	 * Stops publishing the metrics.
+	 */
+	@Override
+	public void destroy() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for(ObjectName name : registeredNames) {
+			try {
+				server.unregisterMBean(name);
+			}
+			catch(JMException e) {
+				LOGGER.info("The bulkhead's metrics were already removed.", e);
+			}
+		}
+		registeredNames.clear();
+	}
+}
@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.jee.filter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.jee.bulkhead.Bulkhead;
+import org.ohmage.jee.bulkhead.Bulkheads;
+import org.ohmage.request.Request;
+import org.ohmage.request.RequestBuilder;
+
+/**
+ * <p>
+ * Admits each request through its {@link Bulkhead}, if it has one, before
+ * its parameters are read. A request that cannot be admitted is rejected
+ * with a 503 and a Retry-After header, so that a burst of exports is turned
+ * away instead of occupying every container thread and database connection
+ * that the uploads need.
+ * </p>
+ *
+ * <p>
+ * If the request goes asynchronous, it keeps its place in the bulkhead until
+ * the asynchronous request is complete, unless whoever services the request
+ * has taken its place over with {@link Bulkhead#ATTRIBUTE_EXIT_DEFERRED}.
+ * </p>
+ */
+public class BulkheadFilter implements Filter {
+	/**
+	 * The logger for the filter.
+	 */
+	private static final Logger LOGGER =
+		Logger.getLogger(BulkheadFilter.class);
+
+	/**
+	 * Warns about any bulkhead URI that no request is registered under, as
+	 * it is most likely a typo in the configuration.
+	 */
+	@Override
+	public void init(final FilterConfig config) throws ServletException {
+		Bulkheads bulkheads = Bulkheads.instance();
+		RequestBuilder requestBuilder = RequestBuilder.getInstance();
+		if((bulkheads == null) || (requestBuilder == null)) {
+			return;
+		}
+
+		String contextPath = config.getServletContext().getContextPath();
+		for(Bulkhead bulkhead : bulkheads.getBulkheads()) {
+			for(String uri : bulkhead.getUris()) {
+				if(! requestBuilder.knownUri(contextPath + uri)) {
+					LOGGER.warn(
+						"The '" +
+							bulkhead.getName() +
+							"' bulkhead has an unknown URI: " +
+							uri);
+				}
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.servlet.Filter#destroy()
+	 */
+	@Override
+	public void destroy() {
+		// Do nothing.
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.servlet.Filter#doFilter(javax.servlet.ServletRequest, javax.servlet.ServletResponse, javax.servlet.FilterChain)
+	 */
+	@Override
+	public void doFilter(
+			final ServletRequest request,
+			final ServletResponse response,
+			final FilterChain chain)
+			throws IOException, ServletException {
+
+		Bulkheads bulkheads = Bulkheads.instance();
+		if(	(bulkheads == null) ||
+			(! (request instanceof HttpServletRequest)) ||
+			(! (response instanceof HttpServletResponse))) {
+
+			chain.doFilter(request, response);
+			return;
+		}
+
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
+		String uri =
+			httpRequest
+				.getRequestURI()
+				.substring(httpRequest.getContextPath().length());
+
+		final Bulkhead bulkhead = bulkheads.get(uri);
+		if(bulkhead == null) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		boolean admitted;
+		try {
+			admitted = bulkhead.enter();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			admitted = false;
+		}
+
+		if(! admitted) {
+			LOGGER.warn(
+				"The '" +
+					bulkhead.getName() +
+					"' bulkhead is full. Rejecting the request: " +
+					uri);
+			reject((HttpServletResponse) response, bulkhead);
+			return;
+		}
+
+		boolean async = false;
+		bulkhead.bind();
+		try {
+			chain.doFilter(request, response);
+
+			// Whoever took over the request's place exits the bulkhead.
+			if(	request.isAsyncStarted() &&
+				Boolean.TRUE.equals(
+					request.getAttribute(Bulkhead.ATTRIBUTE_EXIT_DEFERRED))) {
+
+				async = true;
+			}
+			else if(request.isAsyncStarted()) {
+				final AtomicBoolean exited = new AtomicBoolean(false);
+				request.getAsyncContext().addListener(new AsyncListener() {
+					@Override
+					public void onStartAsync(final AsyncEvent event) {
+						event.getAsyncContext().addListener(this);
+					}
+
+					@Override
+					public void onTimeout(final AsyncEvent event) {
+						// The request is completed, or errors, afterwards.
+					}
+
+					@Override
+					public void onError(final AsyncEvent event) {
+						exit();
+					}
+
+					@Override
+					public void onComplete(final AsyncEvent event) {
+						exit();
+					}
+
+					private void exit() {
+						if(exited.compareAndSet(false, true)) {
+							bulkhead.exit();
+						}
+					}
+				});
+				async = true;
+			}
+		}
+		finally {
+			Bulkhead.unbind();
+			if(! async) {
+				bulkhead.exit();
+			}
+		}
+	}
+
+	/**
+	 * Tells the requester that the server is too busy to service the request
+	 * and when to try again.
+	 *
+	 * @param httpResponse The response to the rejected request.
+	 *
+	 * @param bulkhead The bulkhead that was full.
+	 */
+	private void reject(
+			final HttpServletResponse httpResponse,
+			final Bulkhead bulkhead) {
+
+		httpResponse.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		httpResponse.setHeader(
+			"Retry-After",
+			Integer.toString(bulkhead.getRetryAfterSeconds()));
+		httpResponse.setContentType("application/json");
+
+		String result;
+		try {
+			JSONObject resultJson = new JSONObject();
+			resultJson.put(Request.JSON_KEY_RESULT, Request.RESULT_FAILURE);
+			JSONArray errors = new JSONArray();
+			errors.put(
+				new JSONObject()
+					.put(
+						ErrorCode.SYSTEM_GENERAL_ERROR.toString(),
+						"The server is too busy. Please, try again later."));
+			resultJson.put(Request.JSON_KEY_ERRORS, errors);
+			result = resultJson.toString();
+		}
+		catch(JSONException e) {
+			LOGGER.error(
+				"An error occurred while building the failure JSON response.",
+				e);
+			result = Request.RESPONSE_ERROR_JSON_TEXT;
+		}
+
+		try {
+			Writer writer = httpResponse.getWriter();
+			writer.write(result);
+			writer.flush();
+			writer.close();
+		}
+		catch(IOException e) {
+			LOGGER.error("Could not respond with an error.", e);
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.jee.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.ohmage.request.RequestCancellation;
+
+/**
+ * A response that refuses to be written to once its request has been
+ * cancelled. Every write checks the cancellation first and fails with an
+ * {@link IOException}, so a request that is streaming its response stops at
+ * its next write instead of running to the end.
+ */
+final class CancellableResponse extends HttpServletResponseWrapper {
+	private final RequestCancellation cancellation;
+
+	private ServletOutputStream outputStream = null;
+	private PrintWriter writer = null;
+
+	/**
+	 * Wraps a response.
+	 *
+	 * @param response The response to which the request writes.
+	 *
+	 * @param cancellation The request's cancellation.
+	 */
+	CancellableResponse(
+		final HttpServletResponse response,
+		final RequestCancellation cancellation) {
+
+		super(response);
+
+		this.cancellation = cancellation;
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException {
+		if(outputStream == null) {
+			final ServletOutputStream delegate = super.getOutputStream();
+			outputStream = new ServletOutputStream() {
+				@Override
+				public void write(final int b) throws IOException {
+					check();
+					delegate.write(b);
+				}
+
+				@Override
+				public void write(
+					final byte[] b,
+					final int off,
+					final int len)
+					throws IOException {
+
+					check();
+					delegate.write(b, off, len);
+				}
+
+				@Override
+				public void flush() throws IOException {
+					check();
+					delegate.flush();
+				}
+
+				@Override
+				public void close() throws IOException {
+					check();
+					delegate.close();
+				}
+			};
+		}
+		return outputStream;
+	}
+
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		if(writer == null) {
+			final PrintWriter delegate = super.getWriter();
+			writer = new PrintWriter(new Writer() {
+				@Override
+				public void write(
+					final char[] cbuf,
+					final int off,
+					final int len)
+					throws IOException {
+
+					check();
+					delegate.write(cbuf, off, len);
+				}
+
+				@Override
+				public void flush() throws IOException {
+					check();
+					delegate.flush();
+				}
+
+				@Override
+				public void close() throws IOException {
+					check();
+					delegate.close();
+				}
+			});
+		}
+		return writer;
+	}
+
+	@Override
+	public void flushBuffer() throws IOException {
+		check();
+		super.flushBuffer();
+	}
+
+	@Override
+	public void sendError(final int sc, final String msg) throws IOException {
+		check();
+		super.sendError(sc, msg);
+	}
+
+	@Override
+	public void sendError(final int sc) throws IOException {
+		check();
+		super.sendError(sc);
+	}
+
+	@Override
+	public void sendRedirect(final String location) throws IOException {
+		check();
+		super.sendRedirect(location);
+	}
+
+	/**
+	 * Fails if the request has been cancelled.
+	 *
+	 * @throws IOException The request has been cancelled.
+	 */
+	private void check() throws IOException {
+		if(cancellation.isCancelled()) {
+			throw new IOException("The request was cancelled.");
+		}
+	}
+}
@@ -22,8 +22,20 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Stack;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.MultipartConfig;
 import javax.servlet.http.HttpServlet;
@@ -31,18 +43,29 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.log4j.Logger;
+import org.apache.log4j.NDC;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.cache.AuthorizationCache;
 import org.ohmage.exception.InvalidRequestException;
 import org.ohmage.exception.ServiceException;
+import org.ohmage.jee.bulkhead.Bulkhead;
 import org.ohmage.jee.filter.Log4jNdcFilter;
 import org.ohmage.request.InputKeys;
 import org.ohmage.request.Request;
 import org.ohmage.request.RequestBuilder;
+import org.ohmage.request.RequestCancellation;
 import org.ohmage.request.UserRequest;
+import org.ohmage.request.image.ImageBatchZipReadRequest;
+import org.ohmage.request.mobility.MobilityReadCsvRequest;
+import org.ohmage.request.observer.StreamReadRequest;
+import org.ohmage.request.survey.SurveyResponseReadRequest;
+import org.ohmage.request.visualization.VisualizationRequest;
 import org.ohmage.service.AuditServices;
+import org.ohmage.service.ExportExecutor;
+import org.ohmage.service.VisualizationClient;
 
 /**
  * Handler for all incoming HTTP requests.
@@ -101,9 +124,15 @@ public class RequestServlet extends HttpServlet {
 	private static final String KEY_DEVICE_ID = "device_id";
 	
 	private static final String KEY_ATTRIBUTE = "_ohmage_request_";
+	private static final String KEY_RECEIVED_TIMESTAMP = "_ohmage_received_";
 	
 	private static final long serialVersionUID = 1L;
 	
+	/**
+	 * Cancels the asynchronous requests that have run past their timeouts.
+	 */
+	private transient ScheduledThreadPoolExecutor deadlines;
+	
 	/**
 	 * The different possible HTTP request types.
 	 *  
@@ -298,6 +327,39 @@ public class RequestServlet extends HttpServlet {
 		}
 	}
 	
+	/**
+	 * Starts the thread that enforces the asynchronous requests' timeouts.
+	 */
+	@Override
+	public void init() throws ServletException {
+		super.init();
+		
+		deadlines = 
+			new ScheduledThreadPoolExecutor(
+				1,
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(final Runnable runnable) {
+						Thread result = 
+							new Thread(runnable, "Request deadlines");
+						result.setDaemon(true);
+						return result;
+					}
+				});
+		// Nearly every request finishes before its deadline.
+		deadlines.setRemoveOnCancelPolicy(true);
+	}
+	
+	/**
+	 * Stops the thread that enforces the asynchronous requests' timeouts.
+	 */
+	@Override
+	public void destroy() {
+		deadlines.shutdownNow();
+		
+		super.destroy();
+	}
+	
 	/**
 	 * This injects itself between Tomcat and our request servicing components,
 	 * so that we can audit all incoming requests.
@@ -306,10 +368,32 @@ public class RequestServlet extends HttpServlet {
 	protected final void service(HttpServletRequest httpRequest, HttpServletResponse httpResponse) throws ServletException, IOException {
 		// Get the moment we received the request.
 		long receivedTimestamp = System.currentTimeMillis();
+		httpRequest.setAttribute(KEY_RECEIVED_TIMESTAMP, receivedTimestamp);
 		
 		// Service the request by calling the appropriate getXXX() method.
 		super.service(httpRequest, httpResponse);
 		
+		// If the request is being processed asynchronously, it will be
+		// audited once it has completed.
+		if(httpRequest.isAsyncStarted()) {
+			return;
+		}
+		
+		audit(httpRequest, receivedTimestamp);
+	}
+	
+	/**
+	 * Gathers the audit information about a request that has been fully
+	 * responded to and starts a thread to store it.
+	 * 
+	 * @param httpRequest The HTTP request that was processed.
+	 * 
+	 * @param receivedTimestamp The moment the request was received.
+	 */
+	private void audit(
+			final HttpServletRequest httpRequest, 
+			final long receivedTimestamp) {
+		
 		// Get the moment we have completed 
 		long respondedTimestamp = System.currentTimeMillis();
 		
@@ -449,6 +533,40 @@ public class RequestServlet extends HttpServlet {
 		
 		try {
 			Request request = RequestBuilder.getInstance().buildRequest(httpRequest);
+			
+			// Visualizations spend nearly all of their time waiting on the
+			// visualization server, so they are handed off to its executor to
+			// keep the container's threads free.
+			if(	(request instanceof VisualizationRequest) &&
+				(! request.isFailed()) &&
+				httpRequest.isAsyncSupported()) {
+				
+				VisualizationClient client = VisualizationClient.instance();
+				processRequestAsynchronously(
+					httpRequest, 
+					httpResponse, 
+					request, 
+					client, 
+					client.getAsyncTimeout());
+				return;
+			}
+			
+			// Exports and downloads may take minutes, so they are handed off
+			// to their own bounded executor for the same reason.
+			ExportExecutor exportExecutor = ExportExecutor.instance();
+			if(	isExport(request) &&
+				(! request.isFailed()) &&
+				(exportExecutor != null) &&
+				httpRequest.isAsyncSupported()) {
+				
+				processRequestAsynchronously(
+					httpRequest, 
+					httpResponse, 
+					request, 
+					exportExecutor, 
+					exportExecutor.getAsyncTimeout());
+				return;
+			}
 	
 			if(! request.isFailed()) {
 				request.service();
@@ -475,6 +593,300 @@ public class RequestServlet extends HttpServlet {
 					"General server errors occured while executing the request");
 		
 		}
+		finally {
+			// The container reuses this thread for other users' requests.
+			AuthorizationCache.unbind();
+		}
+	}
+
+	/**
+	 * Returns whether a request is a long-running export or download.
+	 * 
+	 * @param request The request.
+	 * 
+	 * @return Whether the request should be serviced on the
+	 * 		   {@link ExportExecutor}.
+	 */
+	private static boolean isExport(final Request request) {
+		return
+			(request instanceof SurveyResponseReadRequest) ||
+			(request instanceof StreamReadRequest) ||
+			(request instanceof ImageBatchZipReadRequest) ||
+			(request instanceof MobilityReadCsvRequest);
+	}
+
+	/**
+	 * Puts the request into asynchronous mode and services and responds to it
+	 * on the given executor. The worker is the only thread that writes to or
+	 * completes the response, and it audits the request once it is done. If
+	 * the request takes too long or its connection fails, it is cancelled:
+	 * the blocking work it registered is stopped, e.g. its call to the
+	 * visualization server is aborted or its queries are cancelled, and its
+	 * next write fails. If the connection fails, the container is held off
+	 * until the worker has finished, but no longer than the request's
+	 * deadline, after which the container completes the request and the
+	 * worker leaves it alone. Either way, the request keeps its place in its
+	 * bulkhead until the worker has finished. If the executor refuses the
+	 * request, the requester is told to try again later.
+	 * 
+	 * @param httpRequest The HTTP request that is to be serviced and 
+	 * 					  responded.
+	 * 
+	 * @param httpResponse The HTTP response that will be sent back to the user
+	 * 					   once the request has been processed.
+	 * 
+	 * @param request The already-built request.
+	 * 
+	 * @param executor The executor on which to service the request.
+	 * 
+	 * @param timeout The maximum number of milliseconds the request may take.
+	 */
+	protected void processRequestAsynchronously(
+			final HttpServletRequest httpRequest, 
+			final HttpServletResponse httpResponse,
+			final Request request,
+			final Executor executor,
+			final long timeout) {
+		
+		final RequestCancellation cancellation = new RequestCancellation();
+		final AtomicBoolean timedOut = new AtomicBoolean(false);
+		
+		// Whether the worker has started, or the request was abandoned before
+		// it could, and when the worker has finished.
+		final AtomicBoolean claimed = new AtomicBoolean(false);
+		final CountDownLatch finished = new CountDownLatch(1);
+		
+		// Whether the worker or the container completes the request. Only
+		// the one that does may touch the request afterwards.
+		final AtomicBoolean completing = new AtomicBoolean(false);
+		final long expires = System.currentTimeMillis() + timeout;
+		
+		// The worker takes over this thread's bulkhead so that it is held to
+		// the bulkhead's connection budget, and the request keeps its place
+		// in the bulkhead until it is no longer being worked on.
+		final Bulkhead bulkhead = Bulkhead.current();
+		final AtomicBoolean exited = new AtomicBoolean(false);
+		final Runnable exitBulkhead = new Runnable() {
+			@Override
+			public void run() {
+				if((bulkhead != null) && exited.compareAndSet(false, true)) {
+					bulkhead.exit();
+				}
+			}
+		};
+		
+		// The worker logs under this request's ID.
+		final Stack<?> ndc = NDC.cloneStack();
+		
+		final ScheduledFuture<?> deadline =
+			deadlines.schedule(
+				new Runnable() {
+					@Override
+					public void run() {
+						LOGGER.warn(
+							"The request timed out: " + 
+								httpRequest.getRequestURI());
+						timedOut.set(true);
+						cancellation.cancel();
+					}
+				},
+				timeout,
+				TimeUnit.MILLISECONDS);
+		
+		final AsyncContext asyncContext = 
+			httpRequest.startAsync(httpRequest, httpResponse);
+		if(bulkhead != null) {
+			httpRequest.setAttribute(
+				Bulkhead.ATTRIBUTE_EXIT_DEFERRED, 
+				Boolean.TRUE);
+		}
+		// The container must not complete the request while the worker may
+		// still be writing to it, so the timeout is enforced by a deadline
+		// that only cancels the request, and the worker completes it.
+		asyncContext.setTimeout(0);
+		asyncContext.addListener(new AsyncListener() {
+			@Override
+			public void onTimeout(final AsyncEvent event) {
+				// Do nothing.
+			}
+			
+			@Override
+			public void onError(final AsyncEvent event) {
+				LOGGER.info(
+					"There was an error while processing the request.", 
+					event.getThrowable());
+				
+				// This is most likely the client disconnecting, so there is
+				// no one to respond to.
+				cancellation.cancel();
+				
+				// If the worker never started, it never will, and the
+				// container may complete the request.
+				if(claimed.compareAndSet(false, true)) {
+					deadline.cancel(false);
+					completing.set(true);
+					httpRequest.setAttribute(KEY_ATTRIBUTE, request);
+					audit(httpRequest, getReceivedTimestamp(httpRequest));
+					exitBulkhead.run();
+					return;
+				}
+				
+				// Otherwise, the container would complete the request once
+				// this returns, so wait for the cancelled worker to stop
+				// writing and complete it itself, but not past the request's
+				// deadline, as the worker may be stuck, e.g. on a query whose
+				// cancellation the driver ignored.
+				boolean workerFinished;
+				try {
+					workerFinished = 
+						finished.await(
+							Math.max(expires - System.currentTimeMillis(), 0),
+							TimeUnit.MILLISECONDS);
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					workerFinished = false;
+				}
+				
+				// If the worker has not started completing the request, the
+				// container completes it instead. The worker keeps the
+				// request's place in its bulkhead until it has stopped.
+				if((! workerFinished) && completing.compareAndSet(false, true)) {
+					LOGGER.warn(
+						"The cancelled request did not stop by its deadline; " +
+							"it is being completed without it: " + 
+							httpRequest.getRequestURI());
+					httpRequest.setAttribute(KEY_ATTRIBUTE, request);
+					audit(httpRequest, getReceivedTimestamp(httpRequest));
+				}
+			}
+			
+			@Override
+			public void onStartAsync(final AsyncEvent event) {
+				// Do nothing.
+			}
+			
+			@Override
+			public void onComplete(final AsyncEvent event) {
+				// Do nothing.
+			}
+		});
+		
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					// The request was abandoned while it was queued.
+					if(! claimed.compareAndSet(false, true)) {
+						return;
+					}
+					
+					NDC.inherit(ndc);
+					if(bulkhead != null) {
+						bulkhead.bind();
+					}
+					cancellation.bind();
+					try {
+						HttpServletResponse response =
+							new CancellableResponse(
+								httpResponse, 
+								cancellation);
+						
+						// The request may have been cancelled while it was
+						// queued.
+						if(! cancellation.isCancelled()) {
+							request.service();
+						}
+						if(! cancellation.isCancelled()) {
+							request.respond(httpRequest, response);
+						}
+					}
+					catch(Exception e) {
+						LOGGER.info(
+							"There was an issue executing the request.", 
+							e);
+					}
+					finally {
+						deadline.cancel(false);
+						
+						AuthorizationCache.unbind();
+						Bulkhead.unbind();
+						RequestCancellation.unbind();
+						
+						try {
+							// The container may already have completed the
+							// request, in which case it must not be touched.
+							if(completing.compareAndSet(false, true)) {
+								if(	timedOut.get() && 
+									(! httpResponse.isCommitted())) {
+									
+									httpResponse.resetBuffer();
+									httpResponse.setStatus(
+										HttpServletResponse
+											.SC_SERVICE_UNAVAILABLE);
+								}
+								
+								httpRequest.setAttribute(KEY_ATTRIBUTE, request);
+								audit(
+									httpRequest, 
+									getReceivedTimestamp(httpRequest));
+								
+								asyncContext.complete();
+							}
+						}
+						finally {
+							NDC.remove();
+							finished.countDown();
+							exitBulkhead.run();
+						}
+					}
+				}
+			});
+		}
+		catch(RejectedExecutionException e) {
+			deadline.cancel(false);
+			
+			LOGGER.warn(
+				"Too many concurrent requests; rejecting: " + 
+					httpRequest.getRequestURI());
+			
+			httpResponse.setHeader("Retry-After", "5");
+			respondFailure(
+				httpResponse, 
+				HttpServletResponse.SC_SERVICE_UNAVAILABLE, 
+				ErrorCode.SYSTEM_GENERAL_ERROR, 
+				"The server is too busy. Please, try again later.");
+			claimed.set(true);
+			completing.set(true);
+			httpRequest.setAttribute(KEY_ATTRIBUTE, request);
+			audit(httpRequest, getReceivedTimestamp(httpRequest));
+			try {
+				asyncContext.complete();
+			}
+			finally {
+				exitBulkhead.run();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the moment the request was received as recorded by
+	 * {@link #service(HttpServletRequest, HttpServletResponse)}.
+	 * 
+	 * @param httpRequest The HTTP request.
+	 * 
+	 * @return The moment the request was received.
+	 */
+	private static long getReceivedTimestamp(
+			final HttpServletRequest httpRequest) {
+		
+		Object receivedTimestamp = 
+			httpRequest.getAttribute(KEY_RECEIVED_TIMESTAMP);
+		if(receivedTimestamp instanceof Long) {
+			return (Long) receivedTimestamp;
+		}
+		
+		return System.currentTimeMillis();
 	}
 
 	/**
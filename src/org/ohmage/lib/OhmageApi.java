@@ -15,6 +15,7 @@
  ******************************************************************************/
 package org.ohmage.lib;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -40,11 +41,18 @@ import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.entity.mime.MultipartEntity;
 import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.entity.mime.content.StringBody;
-import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.ContentEncodingHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.util.EntityUtils;
 import org.joda.time.DateTime;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -88,11 +96,57 @@ public class OhmageApi {
 	
 	private static final String CONTENT_TYPE_HEADER = "Content-Type";
 	private static final String CONTENT_TYPE_HTML = "text/html";
+	
+	/**
+	 * The default maximum number of simultaneous connections to the server.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 20;
+	/**
+	 * The default number of milliseconds to wait for a connection to be
+	 * established.
+	 */
+	public static final int DEFAULT_CONNECTION_TIMEOUT = 30 * 1000;
+	/**
+	 * The default number of milliseconds to wait for data from the server
+	 * before giving up.
+	 */
+	public static final int DEFAULT_SOCKET_TIMEOUT = 5 * 60 * 1000;
 		
 	private final URL url;
 	
 	/**
-	 * Creates a new OhmageAPI object that points to a single server.
+	 * The client shared by all requests. Its connections are pooled so that
+	 * they are kept alive and reused between requests, and it requests and
+	 * decompresses GZIP'd responses.
+	 */
+	private final HttpClient httpClient;
+	
+	/**
+	 * A request that was made to the server and its response.
+	 */
+	private static final class Exchange {
+		private final HttpUriRequest request;
+		private final HttpResponse httpResponse;
+		
+		/**
+		 * Creates an exchange.
+		 * 
+		 * @param request The request.
+		 * 
+		 * @param httpResponse The response to the request.
+		 */
+		private Exchange(
+				final HttpUriRequest request, 
+				final HttpResponse httpResponse) {
+			
+			this.request = request;
+			this.httpResponse = httpResponse;
+		}
+	}
+	
+	/**
+	 * Creates a new OhmageAPI object that points to a single server. It uses
+	 * the default connection limits and timeouts.
 	 * 
 	 * @param serverAddress The servers address. This includes only the domain
 	 * 						section of the URL such as "dev.andwellness.org" or
@@ -108,13 +162,67 @@ public class OhmageApi {
 	 * 
 	 * @throws IllegalArgumentException Thrown if the server address is null or
 	 * 									not a valid address.
+	 * 
+	 * @see #OhmageApi(String, Integer, boolean, int, int, int)
 	 */
 	public OhmageApi(final String serverAddress, final Integer port, 
 			final boolean secure) {
 		
+		this(
+			serverAddress, 
+			port, 
+			secure, 
+			DEFAULT_MAX_CONNECTIONS, 
+			DEFAULT_CONNECTION_TIMEOUT, 
+			DEFAULT_SOCKET_TIMEOUT);
+	}
+	
+	/**
+	 * Creates a new OhmageAPI object that points to a single server.
+	 * 
+	 * @param serverAddress The servers address. This includes only the domain
+	 * 						section of the URL such as "dev.andwellness.org" or
+	 * 						"dev.mobilizingcs.org".
+	 * 
+	 * @param port The port to use instead of the standard HTTP and HTTPS 
+	 * 			   ports. To use the standard ports, make this null.
+	 * 
+	 * @param secure If set, HTTPS will be used; otherwise, HTTP will be used.
+	 * 				 If one is used and the server sends back a HTTP 301 or 302
+	 * 				 status code, the call will be redirected to the 
+	 * 				 appropriate protocol.
+	 * 
+	 * @param maxConnections The maximum number of simultaneous connections
+	 * 						 to the server. Requests beyond this will wait for
+	 * 						 a connection to be released.
+	 * 
+	 * @param connectionTimeout The number of milliseconds to wait for a
+	 * 							connection to be established. Zero means to
+	 * 							wait forever.
+	 * 
+	 * @param socketTimeout The number of milliseconds to wait for data from 
+	 * 						the server. Zero means to wait forever.
+	 * 
+	 * @throws IllegalArgumentException Thrown if the server address is null or
+	 * 									not a valid address or if any of the
+	 * 									limits are invalid.
+	 */
+	public OhmageApi(final String serverAddress, final Integer port, 
+			final boolean secure, final int maxConnections,
+			final int connectionTimeout, final int socketTimeout) {
+		
 		if(StringUtils.isEmptyOrWhitespaceOnly(serverAddress)) {
 			throw new IllegalArgumentException("The server's address cannot be null.");
 		}
+		if(maxConnections <= 0) {
+			throw new IllegalArgumentException("The maximum number of connections must be positive.");
+		}
+		if(connectionTimeout < 0) {
+			throw new IllegalArgumentException("The connection timeout cannot be negative.");
+		}
+		if(socketTimeout < 0) {
+			throw new IllegalArgumentException("The socket timeout cannot be negative.");
+		}
 		
 		// Builds the server URL.
 		StringBuilder serverUrlBuilder = new StringBuilder();
@@ -141,6 +249,27 @@ public class OhmageApi {
 		catch(MalformedURLException e) {
 			throw new IllegalArgumentException("The server's address is invalid.");
 		}
+		
+		// Every request is to the same server, so it may use every pooled
+		// connection.
+		ThreadSafeClientConnManager connectionManager = 
+			new ThreadSafeClientConnManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnections);
+		
+		HttpParams params = new BasicHttpParams();
+		HttpConnectionParams.setConnectionTimeout(params, connectionTimeout);
+		HttpConnectionParams.setSoTimeout(params, socketTimeout);
+		
+		httpClient = new ContentEncodingHttpClient(connectionManager, params);
+	}
+	
+	/**
+	 * Closes all of the connections to the server. This object may not be
+	 * used after it has been shut down.
+	 */
+	public void shutdown() {
+		httpClient.getConnectionManager().shutdown();
 	}
 	
 	/**************************************************************************
@@ -1415,19 +1544,9 @@ public class OhmageApi {
 			final String username, final String password, final String client,
 			final DateTime date) throws ApiException, RequestErrorException {
 
-		Map<String, Object> parameters = new HashMap<String, Object>();
-		parameters.put(InputKeys.USER, username);
-		parameters.put(InputKeys.PASSWORD, password);
-		parameters.put(InputKeys.AUTH_TOKEN, authenticationToken);
-		parameters.put(InputKeys.CLIENT, client);
-		
-		if(date != null) {
-			parameters.put(InputKeys.DATE, DateTimeUtils.getIso8601DateString(date, false));
-		}
-		
-		parameters.put(
-			InputKeys.COLUMN_LIST, 
-			"mobility:id,mobility:time,mobility:timestamp,mobility:timezone,mobility:location,mobility:subtype,mobility:sensor_data,mobility:mode");
+		Map<String, Object> parameters = 
+			getMobilityReadParameters(
+				authenticationToken, username, password, client, date);
 		
 		JSONArray response;
 		try {
@@ -1469,17 +1588,74 @@ public class OhmageApi {
 			}
 			*/
 			
-			try {
-				results.add(new MobilityPoint(currResult, MobilityPoint.PrivacyState.PRIVATE));
-			}
-			catch(DomainException e) {
-				throw new ApiException("The server returned an malformed MobilityInformation object.", e);
-			}
+			results.add(toMobilityPoint(currResult));
 		}
 		
 		return results;
 	}
 	
+	/**
+	 * Reads Mobility points exactly like 
+	 * {@link #readMobilityPoints(String, String, String, String, DateTime)},
+	 * but the points are read one at a time as they arrive from the server
+	 * instead of all at once.<br />
+	 * <br />
+	 * The reader holds a connection to the server, so it must be closed once
+	 * the caller is done with it.
+	 * 
+	 * @param authenticationToken The authentication token for the user making
+	 * 							  the request. This may be null if a username
+	 * 							  and password are provided.
+	 * 
+	 * @param username The username of the user that is making the request. 
+	 * 				   This may be null if the authentication token is 
+	 * 				   provided.
+	 * 
+	 * @param password The hashed password of the user that is making the 
+	 * 				   request. This may be null if the authentication token is
+	 * 				   provided.
+	 * 
+	 * @param client The client value.
+	 * 
+	 * @param date The date for which the Mobility points will be gathered.
+	 * 
+	 * @return A reader for the Mobility points.
+	 * 
+	 * @throws ApiException Thrown if there is a library error.
+	 * 
+	 * @throws RequestErrorException Thrown if the server returns an error.
+	 */
+	public ResultReader<MobilityPoint> readMobilityPointsIncrementally(
+			final String authenticationToken, final String username, 
+			final String password, final String client, final DateTime date) 
+			throws ApiException, RequestErrorException {
+		
+		Map<String, Object> parameters = 
+			getMobilityReadParameters(
+				authenticationToken, username, password, client, date);
+		
+		InputStream response;
+		try {
+			response = 
+				makeStreamingRequest(
+					new URL(url.toString() + RequestBuilder.getInstance().getApiMobilityRead()), 
+					parameters, 
+					false);
+		}
+		catch(MalformedURLException e) {
+			throw new ApiException("The URL was incorrectly created.", e);
+		}
+		
+		return new ResultReader<MobilityPoint>(response) {
+			@Override
+			protected MobilityPoint convert(final JSONObject result)
+					throws ApiException {
+				
+				return toMobilityPoint(result);
+			}
+		};
+	}
+	
 	/**************************************************************************
 	 * Survey Response Requests
 	 *************************************************************************/
@@ -1637,58 +1813,12 @@ public class OhmageApi {
 			final Boolean returnId)
 			throws ApiException, RequestErrorException {
 		
-		Map<String, Object> parameters = new HashMap<String, Object>();
-		parameters.put(InputKeys.USER, username);
-		parameters.put(InputKeys.PASSWORD, hashedPassword);
-		parameters.put(InputKeys.AUTH_TOKEN, authenticationToken);
-		parameters.put(InputKeys.CLIENT, client);
-		parameters.put(InputKeys.CAMPAIGN_URN, campaignId);
-		parameters.put(InputKeys.OUTPUT_FORMAT, SurveyResponse.OutputFormat.CSV);
-		
-		if(usernames != null) {
-			if(usernames.size() == 0) {
-				parameters.put(InputKeys.USER_LIST, SurveyResponseRequest.URN_SPECIAL_ALL);
-			}
-			else {
-				parameters.put(InputKeys.USER_LIST, StringUtils.collectionToStringList(usernames, InputKeys.LIST_ITEM_SEPARATOR));
-			}
-		}
-		
-		if(columnList != null) {
-			if(columnList.size() == 0) {
-				parameters.put(InputKeys.COLUMN_LIST, SurveyResponseRequest.URN_SPECIAL_ALL);
-			}
-			else {
-				parameters.put(InputKeys.COLUMN_LIST, StringUtils.collectionToStringList(columnList, InputKeys.LIST_ITEM_SEPARATOR));
-			}
-		}
-		
-		if(surveyIdList != null) {
-			if(surveyIdList.size() == 0) {
-				parameters.put(InputKeys.SURVEY_ID_LIST, SurveyResponseRequest.URN_SPECIAL_ALL);
-			}
-			else {
-				parameters.put(InputKeys.SURVEY_ID_LIST, StringUtils.collectionToStringList(surveyIdList, InputKeys.LIST_ITEM_SEPARATOR));
-			}
-		}
-		if(promptIdList != null) {
-			if(promptIdList.size() == 0) {
-				parameters.put(InputKeys.PROMPT_ID_LIST, SurveyResponseRequest.URN_SPECIAL_ALL);
-			}
-			else {
-				parameters.put(InputKeys.PROMPT_ID_LIST, StringUtils.collectionToStringList(promptIdList, InputKeys.LIST_ITEM_SEPARATOR));
-			}
-		}
-		
-		parameters.put(InputKeys.COLLAPSE, collapse);
-		parameters.put(InputKeys.SUPPRESS_METADATA, suppressMetadata);
-		parameters.put(InputKeys.START_DATE, DateTimeUtils.getIso8601DateString(startDate, true));
-		parameters.put(InputKeys.END_DATE, DateTimeUtils.getIso8601DateString(endDate, true));
-		parameters.put(InputKeys.RETURN_ID, returnId);
-		
-		if(privacyState != null) {
-			parameters.put(InputKeys.PRIVACY_STATE, privacyState.toString());
-		}
+		Map<String, Object> parameters = 
+			getSurveyResponseReadParameters(
+				authenticationToken, username, hashedPassword, client,
+				campaignId, usernames, columnList, surveyIdList,
+				promptIdList, startDate, endDate, privacyState, collapse,
+				suppressMetadata, returnId, SurveyResponse.OutputFormat.CSV);
 		
 		byte[] response;
 		try {
@@ -1922,55 +2052,13 @@ public class OhmageApi {
 			final Boolean returnId)
 			throws ApiException, RequestErrorException {
 		
-		Map<String, Object> parameters = new HashMap<String, Object>();
-		parameters.put(InputKeys.USER, username);
-		parameters.put(InputKeys.PASSWORD, hashedPassword);
-		parameters.put(InputKeys.AUTH_TOKEN, authenticationToken);
-		parameters.put(InputKeys.CLIENT, client);
-		parameters.put(InputKeys.CAMPAIGN_URN, campaignId);
-		parameters.put(InputKeys.OUTPUT_FORMAT, SurveyResponse.OutputFormat.JSON_ROWS);
-		
-		if(usernames != null) {
-			if(usernames.size() == 0) {
-				parameters.put(InputKeys.USER_LIST, SurveyResponseRequest.URN_SPECIAL_ALL);
-			}
-			else {
-				parameters.put(InputKeys.USER_LIST, StringUtils.collectionToStringList(usernames, InputKeys.LIST_ITEM_SEPARATOR));
-			}
-		}
-		
-		if(columnList != null) {
-			if(columnList.size() == 0) {
-				parameters.put(InputKeys.COLUMN_LIST, SurveyResponseRequest.URN_SPECIAL_ALL);
-			}
-			else {
-				parameters.put(InputKeys.COLUMN_LIST, StringUtils.collectionToStringList(columnList, InputKeys.LIST_ITEM_SEPARATOR));
-			}
-		}
-		
-		if(surveyIdList != null) {
-			if(surveyIdList.size() == 0) {
-				parameters.put(InputKeys.SURVEY_ID_LIST, SurveyResponseRequest.URN_SPECIAL_ALL);
-			}
-			else {
-				parameters.put(InputKeys.SURVEY_ID_LIST, StringUtils.collectionToStringList(surveyIdList, InputKeys.LIST_ITEM_SEPARATOR));
-			}
-		}
-		if(promptIdList != null) {
-			if(promptIdList.size() == 0) {
-				parameters.put(InputKeys.PROMPT_ID_LIST, SurveyResponseRequest.URN_SPECIAL_ALL);
-			}
-			else {
-				parameters.put(InputKeys.PROMPT_ID_LIST, StringUtils.collectionToStringList(promptIdList, InputKeys.LIST_ITEM_SEPARATOR));
-			}
-		}
-
-		parameters.put(InputKeys.START_DATE, DateTimeUtils.getIso8601DateString(startDate, true));
-		parameters.put(InputKeys.END_DATE, DateTimeUtils.getIso8601DateString(endDate, true));
-		parameters.put(InputKeys.PRIVACY_STATE, privacyState);
-		parameters.put(InputKeys.COLLAPSE, collapse);
-		parameters.put(InputKeys.SUPPRESS_METADATA, suppressMetadata);
-		parameters.put(InputKeys.RETURN_ID, returnId);
+		Map<String, Object> parameters = 
+			getSurveyResponseReadParameters(
+				authenticationToken, username, hashedPassword, client,
+				campaignId, usernames, columnList, surveyIdList,
+				promptIdList, startDate, endDate, privacyState, collapse,
+				suppressMetadata, returnId, 
+				SurveyResponse.OutputFormat.JSON_ROWS);
 		
 		JSONArray response;
 		try {
@@ -2000,6 +2088,111 @@ public class OhmageApi {
 		// object.
 	}
 	
+	/**
+	 * Retrieves the survey responses as CSV exactly like
+	 * {@link #getSurveyResponsesCsv(String, String, String, String, String, Collection, Collection, Collection, Collection, DateTime, DateTime, org.ohmage.domain.campaign.SurveyResponse.PrivacyState, Boolean, Boolean, Boolean) getSurveyResponsesCsv},
+	 * but the CSV is returned as it arrives from the server instead of being
+	 * read into memory.<br />
+	 * <br />
+	 * The stream holds a connection to the server, so it must be closed once
+	 * the caller is done with it.
+	 * 
+	 * @return The CSV file as a stream.
+	 * 
+	 * @throws ApiException Thrown if there is a library error.
+	 * 
+	 * @throws RequestErrorException Thrown if the server returns an error.
+	 */
+	public InputStream getSurveyResponsesCsvStream(
+			final String authenticationToken, final String username, 
+			final String hashedPassword, final String client,
+			final String campaignId, final Collection<String> usernames,
+			final Collection<SurveyResponse.ColumnKey> columnList,
+			final Collection<String> surveyIdList, 
+			final Collection<String> promptIdList,
+			final DateTime startDate, final DateTime endDate, 
+			final SurveyResponse.PrivacyState privacyState,
+			final Boolean collapse, final Boolean suppressMetadata,
+			final Boolean returnId)
+			throws ApiException, RequestErrorException {
+		
+		Map<String, Object> parameters = 
+			getSurveyResponseReadParameters(
+				authenticationToken, username, hashedPassword, client,
+				campaignId, usernames, columnList, surveyIdList,
+				promptIdList, startDate, endDate, privacyState, collapse,
+				suppressMetadata, returnId, SurveyResponse.OutputFormat.CSV);
+		
+		try {
+			return makeStreamingRequest(
+					new URL(url.toString() + RequestBuilder.getInstance().getApiSurveyResponseRead()), 
+					parameters, 
+					false
+				);
+		}
+		catch(MalformedURLException e) {
+			throw new ApiException("The URL was incorrectly created.", e);
+		}
+	}
+	
+	/**
+	 * Retrieves the survey responses as JSON exactly like
+	 * {@link #getSurveyResponsesJsonRows(String, String, String, String, String, Collection, Collection, Collection, Collection, DateTime, DateTime, org.ohmage.domain.campaign.SurveyResponse.PrivacyState, Boolean, Boolean, Boolean) getSurveyResponsesJsonRows},
+	 * but the survey responses are read one at a time as they arrive from the
+	 * server instead of all at once.<br />
+	 * <br />
+	 * The reader holds a connection to the server, so it must be closed once
+	 * the caller is done with it.
+	 * 
+	 * @return A reader for the survey responses. Each survey response is a 
+	 * 		   JSONObject.
+	 * 
+	 * @throws ApiException Thrown if there is a library error.
+	 * 
+	 * @throws RequestErrorException Thrown if the server returns an error.
+	 */
+	public ResultReader<JSONObject> getSurveyResponsesJsonRowsIncrementally(
+			final String authenticationToken, final String username, 
+			final String hashedPassword, final String client,
+			final String campaignId, final Collection<String> usernames,
+			final Collection<SurveyResponse.ColumnKey> columnList,
+			final Collection<String> surveyIdList, 
+			final Collection<String> promptIdList,
+			final DateTime startDate, final DateTime endDate, 
+			final SurveyResponse.PrivacyState privacyState,
+			final Boolean collapse, final Boolean suppressMetadata,
+			final Boolean returnId)
+			throws ApiException, RequestErrorException {
+		
+		Map<String, Object> parameters = 
+			getSurveyResponseReadParameters(
+				authenticationToken, username, hashedPassword, client,
+				campaignId, usernames, columnList, surveyIdList,
+				promptIdList, startDate, endDate, privacyState, collapse,
+				suppressMetadata, returnId, 
+				SurveyResponse.OutputFormat.JSON_ROWS);
+		
+		InputStream response;
+		try {
+			response = 
+				makeStreamingRequest(
+					new URL(url.toString() + RequestBuilder.getInstance().getApiSurveyResponseRead()), 
+					parameters, 
+					false
+				);
+		}
+		catch(MalformedURLException e) {
+			throw new ApiException("The URL was incorrectly created.", e);
+		}
+		
+		return new ResultReader<JSONObject>(response) {
+			@Override
+			protected JSONObject convert(final JSONObject result) {
+				return result;
+			}
+		};
+	}
+	
 	/**
 	 * Retrieves the privacy states for all of the survey responses and the
 	 * count of each of those privacy states.
@@ -2565,10 +2758,209 @@ public class OhmageApi {
 		}
 	}
 	
+	/**************************************************************************
+	 * Generic Requests
+	 *************************************************************************/
+	
+	/**
+	 * Makes a request to any path on the server. This is for tools, such as
+	 * load generators, that replay requests that were recorded elsewhere
+	 * rather than build them from typed parameters. Unlike the other 
+	 * methods, this does not require the server's request paths to have 
+	 * been configured.
+	 * 
+	 * @param path The path of the request on the server, including the 
+	 * 			   context path, e.g. "/app/user/auth_token".
+	 * 
+	 * @param parameters The request's parameters. A null value is treated
+	 * 					 like an empty map.
+	 * 
+	 * @param post Whether the request should be a URL-encoded POST. If not,
+	 * 			   it is a GET and the parameters are encoded in the query
+	 * 			   string.
+	 * 
+	 * @return The response from the server.
+	 * 
+	 * @throws ApiException Thrown if there is a library error or if the 
+	 * 						server did not respond with success.
+	 * 
+	 * @throws RequestErrorException Thrown if the server returned an ohmage 
+	 * 								 error.
+	 */
+	public byte[] request(final String path, 
+			final Map<String, Object> parameters, final boolean post)
+			throws ApiException, RequestErrorException {
+		
+		if(path == null) {
+			throw new ApiException("The path is null.");
+		}
+		
+		Map<String, Object> validatedParameters = parameters;
+		if(validatedParameters == null) {
+			validatedParameters = new HashMap<String, Object>(0);
+		}
+		
+		StringBuilder requestUrl = new StringBuilder(url.toString());
+		requestUrl.append(path);
+		
+		if(! post) {
+			List<BasicNameValuePair> items = 
+				new ArrayList<BasicNameValuePair>(validatedParameters.size());
+			for(String key : validatedParameters.keySet()) {
+				Object value = validatedParameters.get(key);
+				
+				if(value != null) {
+					items.add(new BasicNameValuePair(key, String.valueOf(value)));
+				}
+			}
+			
+			if(items.size() > 0) {
+				requestUrl.append('?').append(URLEncodedUtils.format(items, "UTF-8"));
+			}
+		}
+		
+		try {
+			return makeRequest(
+					new URL(requestUrl.toString()), 
+					(post) ? validatedParameters : null, 
+					false);
+		}
+		catch(MalformedURLException e) {
+			throw new ApiException("The URL was incorrectly created.", e);
+		}
+	}
+	
 	/**************************************************************************
 	 * Private Methods
 	 *************************************************************************/
 	
+	/**
+	 * Builds the parameters for a survey response read. See
+	 * {@link #getSurveyResponsesJsonRows(String, String, String, String, String, Collection, Collection, Collection, Collection, DateTime, DateTime, org.ohmage.domain.campaign.SurveyResponse.PrivacyState, Boolean, Boolean, Boolean) getSurveyResponsesJsonRows}
+	 * for a description of the parameters.
+	 * 
+	 * @param outputFormat The format of the response.
+	 * 
+	 * @return The parameters for the request.
+	 */
+	private Map<String, Object> getSurveyResponseReadParameters(
+			final String authenticationToken, final String username, 
+			final String hashedPassword, final String client,
+			final String campaignId, final Collection<String> usernames,
+			final Collection<SurveyResponse.ColumnKey> columnList,
+			final Collection<String> surveyIdList, 
+			final Collection<String> promptIdList,
+			final DateTime startDate, final DateTime endDate, 
+			final SurveyResponse.PrivacyState privacyState,
+			final Boolean collapse, final Boolean suppressMetadata,
+			final Boolean returnId, 
+			final SurveyResponse.OutputFormat outputFormat) {
+		
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put(InputKeys.USER, username);
+		parameters.put(InputKeys.PASSWORD, hashedPassword);
+		parameters.put(InputKeys.AUTH_TOKEN, authenticationToken);
+		parameters.put(InputKeys.CLIENT, client);
+		parameters.put(InputKeys.CAMPAIGN_URN, campaignId);
+		parameters.put(InputKeys.OUTPUT_FORMAT, outputFormat);
+		
+		if(usernames != null) {
+			if(usernames.size() == 0) {
+				parameters.put(InputKeys.USER_LIST, SurveyResponseRequest.URN_SPECIAL_ALL);
+			}
+			else {
+				parameters.put(InputKeys.USER_LIST, StringUtils.collectionToStringList(usernames, InputKeys.LIST_ITEM_SEPARATOR));
+			}
+		}
+		
+		if(columnList != null) {
+			if(columnList.size() == 0) {
+				parameters.put(InputKeys.COLUMN_LIST, SurveyResponseRequest.URN_SPECIAL_ALL);
+			}
+			else {
+				parameters.put(InputKeys.COLUMN_LIST, StringUtils.collectionToStringList(columnList, InputKeys.LIST_ITEM_SEPARATOR));
+			}
+		}
+		
+		if(surveyIdList != null) {
+			if(surveyIdList.size() == 0) {
+				parameters.put(InputKeys.SURVEY_ID_LIST, SurveyResponseRequest.URN_SPECIAL_ALL);
+			}
+			else {
+				parameters.put(InputKeys.SURVEY_ID_LIST, StringUtils.collectionToStringList(surveyIdList, InputKeys.LIST_ITEM_SEPARATOR));
+			}
+		}
+		if(promptIdList != null) {
+			if(promptIdList.size() == 0) {
+				parameters.put(InputKeys.PROMPT_ID_LIST, SurveyResponseRequest.URN_SPECIAL_ALL);
+			}
+			else {
+				parameters.put(InputKeys.PROMPT_ID_LIST, StringUtils.collectionToStringList(promptIdList, InputKeys.LIST_ITEM_SEPARATOR));
+			}
+		}
+		
+		parameters.put(InputKeys.START_DATE, DateTimeUtils.getIso8601DateString(startDate, true));
+		parameters.put(InputKeys.END_DATE, DateTimeUtils.getIso8601DateString(endDate, true));
+		parameters.put(InputKeys.COLLAPSE, collapse);
+		parameters.put(InputKeys.SUPPRESS_METADATA, suppressMetadata);
+		parameters.put(InputKeys.RETURN_ID, returnId);
+		
+		if(privacyState != null) {
+			parameters.put(InputKeys.PRIVACY_STATE, privacyState.toString());
+		}
+		
+		return parameters;
+	}
+	
+	/**
+	 * Builds the parameters for a Mobility read. See
+	 * {@link #readMobilityPoints(String, String, String, String, DateTime)}
+	 * for a description of the parameters.
+	 * 
+	 * @return The parameters for the request.
+	 */
+	private Map<String, Object> getMobilityReadParameters(
+			final String authenticationToken, final String username, 
+			final String password, final String client, final DateTime date) {
+		
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put(InputKeys.USER, username);
+		parameters.put(InputKeys.PASSWORD, password);
+		parameters.put(InputKeys.AUTH_TOKEN, authenticationToken);
+		parameters.put(InputKeys.CLIENT, client);
+		
+		if(date != null) {
+			parameters.put(InputKeys.DATE, DateTimeUtils.getIso8601DateString(date, false));
+		}
+		
+		parameters.put(
+			InputKeys.COLUMN_LIST, 
+			"mobility:id,mobility:time,mobility:timestamp,mobility:timezone,mobility:location,mobility:subtype,mobility:sensor_data,mobility:mode");
+		
+		return parameters;
+	}
+	
+	/**
+	 * Converts a Mobility point returned by the server into a MobilityPoint
+	 * object.
+	 * 
+	 * @param point The Mobility point as returned by the server.
+	 * 
+	 * @return The MobilityPoint object.
+	 * 
+	 * @throws ApiException The point is malformed.
+	 */
+	private static MobilityPoint toMobilityPoint(final JSONObject point)
+			throws ApiException {
+		
+		try {
+			return new MobilityPoint(point, MobilityPoint.PrivacyState.PRIVATE);
+		}
+		catch(DomainException e) {
+			throw new ApiException("The server returned an malformed MobilityInformation object.", e);
+		}
+	}
+	
 	/**
 	 * Makes a call to the URL. The call will be a GET if 'postParameters' is
 	 * null and a POST if 'postParameters' is non-null, even if it is empty. If
@@ -2605,8 +2997,110 @@ public class OhmageApi {
 			final Map<String, Object> postParameters, final boolean isForm) 
 		throws ApiException, RequestErrorException {
 		
-		// Create a default client to use to connect with.
-		HttpClient httpClient = new DefaultHttpClient();
+		HttpResponse httpResponse = 
+			execute(url, postParameters, isForm).httpResponse;
+		
+		// Retrieve the server's response as an InputStream.
+		InputStream content;
+		try {
+			content = httpResponse.getEntity().getContent();
+		}
+		catch(IOException e) {
+			throw new ApiException("There was an error connecting to the response from the server.", e);
+		}
+		
+		byte[] result = readFully(content);
+		
+		// Finally, check the Content-Type to see if it suggests that this is
+		// an ohmage JSON result. If so, check if it failed and, if so, throw
+		// an exception.
+		if(isHtml(httpResponse)) {
+			checkFailure(result);
+		}
+		
+		// Return the byte array.
+		return result;
+	}
+	
+	/**
+	 * Makes a call to the URL exactly like 
+	 * {@link #makeRequest(URL, Map, boolean)}, but, instead of reading the
+	 * entire response into memory, it returns the response as it arrives
+	 * from the server.<br />
+	 * <br />
+	 * The connection to the server is held until the returned stream has been
+	 * closed, so the caller must always close it. If it is closed before the
+	 * entire response has been read, the request is aborted instead of the
+	 * rest of the response being downloaded.
+	 * 
+	 * @param url The URL which dictates the location to which the request
+	 * 			  should be made.
+	 * 
+	 * @param postParameters A map of keys to values for a POST call or null
+	 * 						 for a GET call.
+	 * 
+	 * @param isForm Whether the POST should be a "multipart/form-data" 
+	 * 				 request.
+	 * 
+	 * @return The response from the server, which has already been 
+	 * 		   decompressed if necessary.
+	 * 
+	 * @throws ApiException Thrown if the URL is not an HTTP URL or if there
+	 * 						   was an error communicating with the server.
+	 * 
+	 * @throws RequestErrorException Thrown if the server returned an ohmage 
+	 * 								 error.
+	 * 
+	 * @see #makeRequest(URL, Map, boolean)
+	 */
+	private InputStream makeStreamingRequest(final URL url,
+			final Map<String, Object> postParameters, final boolean isForm)
+		throws ApiException, RequestErrorException {
+		
+		Exchange exchange = execute(url, postParameters, isForm);
+		HttpResponse httpResponse = exchange.httpResponse;
+		
+		InputStream content;
+		try {
+			content = 
+				new StreamingResponse(
+					httpResponse.getEntity().getContent(), 
+					exchange.request);
+		}
+		catch(IOException e) {
+			throw new ApiException("There was an error connecting to the response from the server.", e);
+		}
+		
+		// Errors are small, so they are read to check for failure exactly 
+		// like non-streaming requests.
+		if(isHtml(httpResponse)) {
+			byte[] result = readFully(content);
+			checkFailure(result);
+			return new ByteArrayInputStream(result);
+		}
+		
+		return content;
+	}
+	
+	/**
+	 * Builds and executes a request and follows any redirects. See
+	 * {@link #makeRequest(URL, Map, boolean)} for a description of the 
+	 * parameters.<br />
+	 * <br />
+	 * If the request fails, its connection is released before the exception
+	 * is thrown. Otherwise, the caller must read or close the response's 
+	 * content to release the connection.
+	 * 
+	 * @return The request that was made, after any redirects, and its
+	 * 		   successful response from the server.
+	 * 
+	 * @throws ApiException Thrown if the URL is not an HTTP URL, if there
+	 * 						   was an error communicating with the server, or
+	 * 						   if the server did not respond with success.
+	 */
+	private Exchange execute(final URL url, 
+			final Map<String, Object> postParameters, final boolean isForm) 
+		throws ApiException {
 		
 		// Build the request based on the parameters.
 		HttpRequestBase request;
@@ -2693,31 +3187,47 @@ public class OhmageApi {
 		
 		// Check the status code.
 		int statusCode = httpResponse.getStatusLine().getStatusCode();
+		if(statusCode == 200) {
+			return new Exchange(request, httpResponse);
+		}
+		
+		// Any other response is discarded, which releases its connection back
+		// to the pool.
+		try {
+			EntityUtils.consume(httpResponse.getEntity());
+		}
+		catch(IOException e) {
+			throw new ApiException("There was an error reading from the server.", e);
+		}
+		
 		// If it is a redirect, get the new location and remake the request.
 		if((statusCode == 301) || (statusCode == 302)) {
 			String newLocation = httpResponse.getFirstHeader("Location").getValue();
 			
 			try {
-				return makeRequest(new URL(newLocation), postParameters, isForm);
+				return execute(new URL(newLocation), postParameters, isForm);
 			}
 			catch(MalformedURLException e) {
 				throw new ApiException("The server returned a bad redirect address: " + newLocation, e);
 			}
 		}
-		// Otherwise, if it is is a non-success code, fail the request.
-		else if(statusCode != 200) {
+		// Otherwise, it is is a non-success code, so fail the request.
+		else {
 			throw new ApiException("There was an error connecting to the server: " + statusCode);
 		}
-		
-		// Retrieve the server's response as an InputStream.
-		InputStream content;
-		try {
-			content = httpResponse.getEntity().getContent();
-		}
-		catch(IOException e) {
-			throw new ApiException("There was an error connecting to the response from the server.", e);
-		}
-		
+	}
+	
+	/**
+	 * Reads the rest of a response from the server and then closes it, which
+	 * releases its connection.
+	 * 
+	 * @param content The response from the server.
+	 * 
+	 * @return The response as a byte array.
+	 * 
+	 * @throws ApiException There was an error reading from the server.
+	 */
+	private byte[] readFully(final InputStream content) throws ApiException {
 		// Read the results as a byte array. This is used instead of a string 
 		// to allow the function to me more open to different types of return 
 		// values such as text, images, etc.
@@ -2732,19 +3242,30 @@ public class OhmageApi {
 		catch(IOException e) {
 			throw new ApiException("There was an error reading from the server.", e);
 		}
-		byte[] result = baos.toByteArray();
-		
-		// Finally, check the Content-Type to see if it suggests that this is
-		// an ohmage JSON result. If so, check if it failed and, if so, throw
-		// an exception.
-		Header[] headers = httpResponse.getHeaders(CONTENT_TYPE_HEADER);
-		String contentType = headers[0].getValue();
-		if(CONTENT_TYPE_HTML.equals(contentType)) {
-			checkFailure(result);
+		finally {
+			try {
+				content.close();
+			}
+			catch(IOException e) {
+				// The response has already been read or has already failed.
+			}
 		}
 		
-		// Return the byte array.
-		return result;
+		return baos.toByteArray();
+	}
+	
+	/**
+	 * Returns whether the Content-Type of a response suggests that it may be
+	 * an ohmage JSON result.
+	 * 
+	 * @param httpResponse The response.
+	 * 
+	 * @return Whether the response may be an ohmage JSON result.
+	 */
+	private static boolean isHtml(final HttpResponse httpResponse) {
+		Header header = httpResponse.getFirstHeader(CONTENT_TYPE_HEADER);
+		
+		return (header != null) && CONTENT_TYPE_HTML.equals(header.getValue());
 	}
 
 	/**
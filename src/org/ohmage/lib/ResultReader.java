@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.lib;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.NoSuchElementException;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.MappingJsonFactory;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.annotator.Annotator;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.lib.exception.ApiException;
+import org.ohmage.lib.exception.RequestErrorException;
+import org.ohmage.request.Request;
+
+/**
+ * Reads the results of an ohmage JSON response one at a time as they arrive
+ * from the server instead of reading the entire response into memory. The
+ * results are the objects in the response's data array.<br />
+ * <br />
+ * The reader holds a connection to the server until it has been closed, so
+ * it must always be closed once the caller is done with it. If it is closed
+ * before every result has been read, the request is aborted rather than the
+ * remaining results being downloaded.
+ *
+ * @param <T> The type of the results.
+ */
+public abstract class ResultReader<T> implements Closeable {
+	private static final JsonFactory JSON_FACTORY = new MappingJsonFactory();
+
+	private final InputStream content;
+	private final JsonParser parser;
+
+	// Whether or not the parser is on the first token of the next result.
+	private boolean hasNext;
+
+	// Whether or not the end of the data array has been read.
+	private boolean complete = false;
+
+	/**
+	 * Creates a reader for a response and positions it at the first result.
+	 * If the response indicates that the request failed, the response is
+	 * closed and an exception is thrown.
+	 *
+	 * @param content The response from the server. This will be closed when
+	 * 				  this reader is closed.
+	 *
+	 * @throws ApiException The response is not a valid ohmage JSON response.
+	 *
+	 * @throws RequestErrorException The server returned an error.
+	 */
+	protected ResultReader(final InputStream content)
+			throws ApiException, RequestErrorException {
+
+		this.content = content;
+
+		try {
+			parser = JSON_FACTORY.createJsonParser(content);
+
+			if(parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new ApiException("The response is not a JSON object.");
+			}
+
+			// Skip the other fields until the data array is found.
+			while(parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+
+				if(Request.JSON_KEY_DATA.equals(field) &&
+						(token == JsonToken.START_ARRAY)) {
+
+					hasNext = (parser.nextToken() != JsonToken.END_ARRAY);
+					complete = ! hasNext;
+					return;
+				}
+				else if(Request.JSON_KEY_ERRORS.equals(field)) {
+					throw getError(parser.readValueAsTree());
+				}
+
+				parser.skipChildren();
+			}
+
+			throw new ApiException("The response does not contain any data.");
+		}
+		catch(IOException e) {
+			closeQuietly();
+			throw new ApiException("There was an error reading the response from the server.", e);
+		}
+		catch(ApiException e) {
+			closeQuietly();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns whether or not there is another result.
+	 *
+	 * @return Whether or not there is another result.
+	 */
+	public boolean hasNext() {
+		return hasNext;
+	}
+
+	/**
+	 * Reads the next result from the response.
+	 *
+	 * @return The next result.
+	 *
+	 * @throws NoSuchElementException There are no more results.
+	 *
+	 * @throws ApiException There was an error reading the result from the
+	 * 						server or the result is invalid.
+	 */
+	public T next() throws ApiException {
+		if(! hasNext) {
+			throw new NoSuchElementException("There are no more results.");
+		}
+
+		JSONObject result;
+		try {
+			result = new JSONObject(parser.readValueAsTree().toString());
+			hasNext = (parser.nextToken() != JsonToken.END_ARRAY);
+			complete = ! hasNext;
+		}
+		catch(IOException e) {
+			hasNext = false;
+			throw new ApiException("There was an error reading the response from the server.", e);
+		}
+		catch(JSONException e) {
+			hasNext = false;
+			throw new ApiException("A result is not a JSON object.", e);
+		}
+
+		return convert(result);
+	}
+
+	/**
+	 * Closes the response. If every result has been read, the rest of the
+	 * response, which follows the data array, is read so that the connection
+	 * to the server can be reused. Otherwise, the request is aborted.
+	 */
+	@Override
+	public void close() throws IOException {
+		hasNext = false;
+
+		try {
+			if(complete) {
+				complete = false;
+				while(parser.nextToken() != null) {
+					parser.skipChildren();
+				}
+			}
+		}
+		finally {
+			content.close();
+		}
+	}
+
+	/**
+	 * Converts a single result into the desired type.
+	 *
+	 * @param result The result as it was returned by the server.
+	 *
+	 * @return The converted result.
+	 *
+	 * @throws ApiException The result is invalid.
+	 */
+	protected abstract T convert(final JSONObject result) throws ApiException;
+
+	/**
+	 * Closes the response, ignoring any errors, because an error has already
+	 * occurred.
+	 */
+	private void closeQuietly() {
+		try {
+			content.close();
+		}
+		catch(IOException e) {
+			// There is nothing more that can be done.
+		}
+	}
+
+	/**
+	 * Builds the exception for the errors in a failed response.
+	 *
+	 * @param errors The errors array from the response.
+	 *
+	 * @return The exception to throw.
+	 */
+	private static ApiException getError(final JsonNode errors) {
+		JsonNode error = errors.get(0);
+		if(error == null) {
+			return new ApiException(
+				"The failed JSON response doesn't contain a proper error object.");
+		}
+
+		ErrorCode errorCode;
+		try {
+			errorCode =
+				ErrorCode.getValue(
+					error.path(Annotator.JSON_KEY_CODE).getTextValue());
+		}
+		catch(IllegalArgumentException e) {
+			return new ApiException("The error code was unknown.", e);
+		}
+
+		return new RequestErrorException(
+			errorCode,
+			error.path(Annotator.JSON_KEY_TEXT).getTextValue());
+	}
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.lib;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * The content of a response that is read as it arrives from the server.
+ * Closing the content of a pooled response normally reads the rest of it so
+ * that the connection can be reused, which, for a large response, would
+ * download everything that the caller did not want. Instead, if this is
+ * closed before the end of the response has been read, the request is
+ * aborted, which closes its connection.
+ */
+final class StreamingResponse extends FilterInputStream {
+	private final HttpUriRequest request;
+
+	// Whether the end of the response has been read.
+	private boolean eof = false;
+
+	/**
+	 * Wraps the content of a response.
+	 *
+	 * @param content The content of the response.
+	 *
+	 * @param request The request whose response this is.
+	 */
+	StreamingResponse(final InputStream content, final HttpUriRequest request) {
+		super(content);
+
+		this.request = request;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int result = super.read();
+		if(result == -1) {
+			eof = true;
+		}
+		return result;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len)
+			throws IOException {
+
+		int result = super.read(b, off, len);
+		if(result == -1) {
+			eof = true;
+		}
+		return result;
+	}
+
+	/**
+	 * Releases the connection if the whole response has been read.
+	 * Otherwise, aborts the request.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(! eof) {
+			request.abort();
+		}
+
+		try {
+			super.close();
+		}
+		catch(IOException e) {
+			// After an abort, the connection is already closed.
+			if(eof) {
+				throw e;
+			}
+		}
+	}
+}
@@ -15,11 +15,14 @@
  ******************************************************************************/
 package org.ohmage.query;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.DateTimeZone;
 import org.ohmage.domain.Annotation;
+import org.ohmage.domain.SurveyResponseAnnotations;
 import org.ohmage.exception.DataAccessException;
 
 /**
@@ -58,6 +61,26 @@ public interface IAnnotationQueries {
 	 * @throws DataAccessException if an error occurs
 	 */
 	List<Annotation> readSurveyResponseAnnotations(UUID surveyId) throws DataAccessException;
+
+	/**
+	 * Retrieves all of the annotations on a set of survey responses and on
+	 * their prompt responses with a single query.
+	 * 
+	 * @param campaignId The unique identifier of the campaign to which the
+	 * 					 survey responses must belong. Survey responses in
+	 * 					 other campaigns are ignored.
+	 * 
+	 * @param surveyResponseIds The survey responses' unique identifiers.
+	 * 
+	 * @return A map of survey response IDs to their annotations. Survey
+	 * 		   responses without any annotations are omitted.
+	 * 
+	 * @throws DataAccessException if an error occurs
+	 */
+	Map<UUID, SurveyResponseAnnotations> readSurveyResponseAnnotations(
+		String campaignId,
+		Collection<UUID> surveyResponseIds
+	) throws DataAccessException;
 	
 	/**
 	 * Creates a prompt response annotation.
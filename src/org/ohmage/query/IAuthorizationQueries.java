@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query;
+
+import org.ohmage.domain.AuthorizationContext;
+import org.ohmage.exception.DataAccessException;
+
+public interface IAuthorizationQueries {
+	/**
+	 * Loads a snapshot of a user's admin flag, campaign roles, class roles,
+	 * and the states of their campaigns. This always reads from the database.
+	 *
+	 * @param username The user's username.
+	 *
+	 * @return The snapshot or null if the user does not exist.
+	 *
+	 * @throws DataAccessException There was an error reading from the
+	 * 							   database.
+	 */
+	AuthorizationContext getAuthorizationContext(String username)
+			throws DataAccessException;
+}
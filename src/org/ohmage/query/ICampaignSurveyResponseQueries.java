@@ -19,7 +19,7 @@ import java.util.Collection;
 import java.util.Map;
 import java.util.UUID;
 
-import org.ohmage.domain.campaign.SurveyResponse;
+import org.ohmage.domain.campaign.CampaignStats;
 import org.ohmage.exception.DataAccessException;
 
 public interface ICampaignSurveyResponseQueries {
@@ -66,27 +66,22 @@ public interface ICampaignSurveyResponseQueries {
 
 	
 	/**
-	 * Retrieves the total number of survey responses per privacy state
-	 * that are visible to the request users for campaigns.
+	 * Retrieves the survey response statistics for campaigns restricted to
+	 * the survey responses that are visible to the request user. The 
+	 * statistics are read from the maintained campaign_stats table rather
+	 * than counted.
 	 * 
 	 * @param requestUser The user that submits the request
 	 * 
-	 * @param campaignSqlStmt The sql statement addressing all search criteria 
-	 *                        for campaigns.
+	 * @param campaignIds The campaigns' unique identifiers.
 	 * 
-	 * @param campaignSqlParameters A list of parameters associated with the 
-	 *                              campaignSqlStmt. 
-	 * 
-	 * @return The total number of survey responses per privacy state for each 
-	 *         campaign. 
+	 * @return A map of campaign IDs to their statistics. Campaigns without
+	 * 		   any visible survey responses are omitted.
 	 *
 	 * @throws DataAccessException Thrown if there is an error.
 	 */	
-	public Map<String, Map<SurveyResponse.PrivacyState, Integer>> getSurveyResponseCountInfoForCampaigns(
+	public Map<String, CampaignStats> getSurveyResponseStatsForCampaigns(
 		final String requestUser,
-		final String campaignSqlStmt, 
-		final Collection<Object> campaignSqlParameters)
+		final Collection<String> campaignIds)
 			throws DataAccessException;	
-
-
 }
@@ -83,6 +83,17 @@ public interface IDocumentQueries {
 	 */
 	String getDocumentName(String documentId) throws DataAccessException;
 
+	/**
+	 * Returns the time at which the document, its contents or any of its
+	 * information, was last modified.
+	 * 
+	 * @param documentId The unique document identifier of the document in 
+	 * 					 question.
+	 * 
+	 * @return Returns the time the document was last modified.
+	 */
+	DateTime getDocumentLastModified(String documentId) throws DataAccessException;
+
 	/**
 	 * Return an SQL statement to retrieve a list of document ids that match 
 	 * any of the criteria. If all of the criteria are null, it will return 
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query;
+
+import java.util.List;
+
+import org.ohmage.domain.OutboundMail;
+import org.ohmage.exception.DataAccessException;
+
+public interface IMailOutboxQueries {
+	/**
+	 * Queues a mail message to be sent as soon as possible.
+	 *
+	 * @param sender The sender's email address.
+	 *
+	 * @param recipient The recipient's email address.
+	 *
+	 * @param subject The subject.
+	 *
+	 * @param body The body.
+	 *
+	 * @param contentType The MIME type of the body.
+	 *
+	 * @throws DataAccessException There was an error.
+	 */
+	void queueMail(
+		String sender,
+		String recipient,
+		String subject,
+		String body,
+		String contentType)
+		throws DataAccessException;
+
+	/**
+	 * Claims a batch of the messages that are ready to be sent. The claimed
+	 * messages will not be returned again until the lease has expired, at
+	 * which point they are assumed to have been abandoned.
+	 *
+	 * @param limit The maximum number of messages to claim.
+	 *
+	 * @param leaseSeconds The number of seconds the messages are claimed.
+	 *
+	 * @return The claimed messages, which may be empty.
+	 *
+	 * @throws DataAccessException There was an error.
+	 */
+	List<OutboundMail> claimMail(
+		int limit,
+		int leaseSeconds)
+		throws DataAccessException;
+
+	/**
+	 * Deletes a message after it has been sent.
+	 *
+	 * @param id The message's database identifier.
+	 *
+	 * @throws DataAccessException There was an error.
+	 */
+	void deleteMail(long id) throws DataAccessException;
+
+	/**
+	 * Records that sending a message failed.
+	 *
+	 * @param id The message's database identifier.
+	 *
+	 * @param retrySeconds The number of seconds until the message should be
+	 * 					   sent again or null if it should never be sent
+	 * 					   again.
+	 *
+	 * @param error Why sending failed.
+	 *
+	 * @throws DataAccessException There was an error.
+	 */
+	void failMail(
+		long id,
+		Integer retrySeconds,
+		String error)
+		throws DataAccessException;
+}
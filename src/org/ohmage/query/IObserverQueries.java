@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
 import org.ohmage.domain.DataStream;
 import org.ohmage.domain.Observer;
 import org.ohmage.domain.Observer.Stream;
@@ -242,6 +243,52 @@ public interface IObserverQueries {
 		final long numToReturn) 
 		throws DataAccessException;
 
+	/**
+	 * Retrieves the days on which a user has data for a stream. The days are
+	 * read from an index of days that is maintained when data is stored, so
+	 * the data itself is not read.
+	 * 
+	 * @param username The username of the user to which the data must belong.
+	 * 				   Required.
+	 * 
+	 * @param observerId The observer's unique identifier. Required.
+	 * 
+	 * @param observerVersion The observer's version. Optional.
+	 * 
+	 * @param streamId The stream's unique identifier. Required.
+	 * 
+	 * @param streamVersion The stream's version. Optional.
+	 * 
+	 * @param startDate The earliest day to return. Optional.
+	 * 
+	 * @param endDate The latest day to return. Optional.
+	 * 
+	 * @return The days, in the time zones of the data points, in order.
+	 * 
+	 * @throws DataAccessException There was an error.
+	 */
+	public List<LocalDate> readDates(
+		final String username,
+		final String observerId,
+		final Long observerVersion,
+		final String streamId,
+		final Long streamVersion,
+		final LocalDate startDate,
+		final LocalDate endDate)
+		throws DataAccessException;
+	
+	/**
+	 * Deletes the days from the index of days with data that are before some
+	 * day, which is done when the data for those days has been dropped.
+	 * 
+	 * @param date The first day to keep.
+	 * 
+	 * @throws DataAccessException There was an error.
+	 */
+	public void deleteDatesBefore(
+		final LocalDate date)
+		throws DataAccessException;
+
 	/**
 	 * Retrieves the data for a stream.
 	 * 
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.ohmage.exception.DataAccessException;
+
+public interface IPartitionQueries {
+	/**
+	 * Returns the partitions of a table that is partitioned by RANGE.
+	 *
+	 * @param table The table's name.
+	 *
+	 * @return A map of the partitions' names, in order, to the values that
+	 * 		   their rows must be less than. The last partition's value may be
+	 * 		   null, meaning that it has no upper bound. If the table is not
+	 * 		   partitioned, the map is empty.
+	 *
+	 * @throws DataAccessException There was an error.
+	 */
+	Map<String, Long> getPartitions(String table) throws DataAccessException;
+
+	/**
+	 * Creates new partitions by dividing the last partition, which has no
+	 * upper bound. The last partition keeps its name and is left with the
+	 * rows that are after the new partitions.
+	 *
+	 * @param table The table's name.
+	 *
+	 * @param lastPartition The name of the last partition.
+	 *
+	 * @param partitions A map of the new partitions' names, in order, to the
+	 * 					 values that their rows must be less than.
+	 *
+	 * @throws DataAccessException There was an error.
+	 */
+	void addPartitions(
+		String table,
+		String lastPartition,
+		Map<String, Long> partitions)
+		throws DataAccessException;
+
+	/**
+	 * Drops partitions and all of the rows in them.
+	 *
+	 * @param table The table's name.
+	 *
+	 * @param partitions The names of the partitions to drop.
+	 *
+	 * @throws DataAccessException There was an error.
+	 */
+	void dropPartitions(
+		String table,
+		Collection<String> partitions)
+		throws DataAccessException;
+}
@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query;
+
+import org.ohmage.exception.DataAccessException;
+
+public interface ISearchIndexQueries {
+	/**
+	 * Rebuilds the search index entries of the users, classes, campaigns, and
+	 * documents that have been queued because they were created or their
+	 * searchable values were changed.
+	 *
+	 * @param limit The maximum number of entities of each type to index.
+	 *
+	 * @return The number of entities that were indexed.
+	 *
+	 * @throws DataAccessException There was an error.
+	 */
+	int indexQueuedEntities(int limit) throws DataAccessException;
+}
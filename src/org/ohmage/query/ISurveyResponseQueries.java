@@ -17,11 +17,14 @@ package org.ohmage.query;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
 import org.ohmage.domain.campaign.Campaign;
+import org.ohmage.domain.campaign.Prompt;
+import org.ohmage.domain.campaign.PromptResponseAggregate;
 import org.ohmage.domain.campaign.SurveyResponse;
 import org.ohmage.domain.campaign.SurveyResponse.ColumnKey;
 import org.ohmage.domain.campaign.SurveyResponse.SortParameter;
@@ -153,5 +156,68 @@ public interface ISurveyResponseQueries {
 	 * @throws DataAccessException Thrown if there is an error.
 	 */
 	void deleteSurveyResponse(UUID surveyResponseId) throws DataAccessException;
+	
+	/**
+	 * Computes the count, minimum, maximum, and average of the typed values
+	 * of the responses to some prompts and, if a bucket width is given or the
+	 * prompt is a single-choice prompt, a histogram of those values. The
+	 * aggregation is done entirely in the database and is limited to the
+	 * responses that the requesting user is allowed to see.
+	 * 
+	 * @param campaign The campaign to which the survey responses must belong.
+	 * 
+	 * @param username The username of the user that is making this request.
+	 * 
+	 * @param prompts The prompts to aggregate mapped to their types. Only
+	 * 				  number, hours-before-now, timestamp, and single-choice
+	 * 				  prompts may be aggregated.
+	 * 
+	 * @param usernames Limits the results to only those submitted by any one 
+	 * 					of the users in the list.
+	 * 
+	 * @param startDate Limits the results to only those survey responses that
+	 * 					occurred on or after this date.
+	 * 
+	 * @param endDate Limits the results to only those survey responses that
+	 * 				  occurred on or before this date.
+	 * 
+	 * @param privacyState Limits the results to only those survey responses
+	 * 					   with this privacy state.
+	 * 
+	 * @param groupItems Further groups each prompt's aggregate by these items.
+	 * 
+	 * @param bucketWidth The width of the histogram buckets for number,
+	 * 					  hours-before-now, and timestamp prompts or null if
+	 * 					  no histogram should be computed for them.
+	 * 
+	 * @return The aggregates ordered by prompt and then by their groups.
+	 * 
+	 * @throws DataAccessException Thrown if there is an error.
+	 */
+	List<PromptResponseAggregate> retrievePromptResponseAggregates(
+			final Campaign campaign,
+			final String username,
+			final Map<String, Prompt.Type> prompts,
+			final Collection<String> usernames,
+			final DateTime startDate,
+			final DateTime endDate,
+			final SurveyResponse.PrivacyState privacyState,
+			final Collection<PromptResponseAggregate.GroupItem> groupItems,
+			final Double bucketWidth)
+			throws DataAccessException;
+	
+	/**
+	 * Populates the typed columns for a batch of prompt responses that were
+	 * uploaded before those columns existed.
+	 * 
+	 * @param batchSize The maximum number of prompt responses to populate.
+	 * 
+	 * @return The number of prompt responses that were populated. If this is
+	 * 		   less than the batch size, there are no more to populate.
+	 * 
+	 * @throws DataAccessException Thrown if there is an error.
+	 */
+	int populateTypedPromptResponses(final int batchSize)
+			throws DataAccessException;
 
 }
@@ -79,27 +79,6 @@ public interface IUserCampaignQueries {
 		throws DataAccessException;
 
 	
-	/**
-	 * Returns a List of roles for this user in all campaigns that fit the 
-	 * request criteria.
-	 * 
-	 * @param username
-	 *        The username of the user that whose roles are desired.
-	 * 
-	 * @param campaignSelectStmt
-	 *        The subselect statement that returns a list of campaigns. 
-	 *        
-	 * @param campaignSqlParameters 
-	 * 		  The parameters to be used for the subselect statement.
-	 * 
-	 * @return A possibly empty List of roles for this user in this campaign.
-	 */
-	public Map<String, Collection<Campaign.Role>> getCampaignsAndRolesForUserAndCampaigns(
-			final String username, 
-			final String campaignSelectStmt,
-			final Collection<Object> campaignSqlParameters) throws DataAccessException;
-
-		
 	/**
 	 * Retrieves all of the campaign IDs and a respective set of campaign roles
 	 * for a given user.
@@ -167,39 +146,44 @@ public interface IUserCampaignQueries {
 			throws DataAccessException;
 
 	/**
-	 * Returns a list of usernames to that are authors in a campaign.
+	 * Returns a map of campaign urns to a map of users and their roles in
+	 * those campaigns in a single query. This is used to read the requesting
+	 * user's roles, the authors, and, optionally, all of the users for a 
+	 * batch of campaigns at once.
 	 * 
-	 * @param campaignId
-	 *        The campaign's unique identifier.
+	 * @param campaignIds
+	 *        The campaigns' unique identifiers.
 	 * 
-	 * @return A list of authors' usernames.
+	 * @param username
+	 *        If not null, only this user's roles and the authors' roles are
+	 *        returned; otherwise, all users' roles are returned.
+	 * 
+	 * @return A map of campaign urns to a map of users and their roles 
+	 *         associated with each campaign.
 	 * 
 	 * @throws DataAccessException
 	 *         Thrown if there is an error.
 	 */
-	public List<String> getAuthorsForCampaign(
-			final String campaignId)
+	public Map<String, Map<String, Collection<Role>>> getUsersAndRolesForCampaignIds(
+			final Collection<String> campaignIds,
+			final String username)
 			throws DataAccessException;
-	
+
 	/**
-	 * Returns a map of campaigns and author lists associated with each campaign. 
-	 *  
-	 * @param campaignSelectStmt 
-	 *        The sub-select statement to be used to retrived a list of valid campaigns
+	 * Returns a list of usernames to that are authors in a campaign.
 	 * 
-	 * @param campaignSqlParameters 
-	 * 		  The list of objects to be used as parameters to the sub-select statement. 
+	 * @param campaignId
+	 *        The campaign's unique identifier.
 	 * 
-	 * @return A map of campaigns and author lists assoicated with each campaign.
+	 * @return A list of authors' usernames.
 	 * 
 	 * @throws DataAccessException
 	 *         Thrown if there is an error.
 	 */
-	public Map<String, Collection<String>> getAuthorsForCampaigns(
-			final String campaignSelectStmt, 
-			final Collection<Object> campaignSqlParameters)
-			throws DataAccessException; 
-			
+	public List<String> getAuthorsForCampaign(
+			final String campaignId)
+			throws DataAccessException;
+	
 	/**
 	 * Retrieves all of the campaign IDs and their respective names to which a
 	 * user is associated.
@@ -15,8 +15,10 @@
  ******************************************************************************/
 package org.ohmage.query;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -25,6 +27,7 @@ import org.ohmage.domain.MobilityAggregatePoint;
 import org.ohmage.domain.MobilityPoint;
 import org.ohmage.domain.MobilityPoint.LocationStatus;
 import org.ohmage.domain.MobilityPoint.Mode;
+import org.ohmage.domain.UploadStats;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.ServiceException;
 
@@ -172,6 +175,25 @@ public interface IUserMobilityQueries {
 	Double getPercentageOfNonNullLocations(String username, int hours)
 			throws DataAccessException;
 	
+	/**
+	 * Retrieves the statistics of the Mobility uploads of some users in a
+	 * constant number of queries.
+	 * 
+	 * @param usernames The users' usernames.
+	 * 
+	 * @param since The milliseconds since the epoch from which Mobility 
+	 * 				points are counted as recent.
+	 * 
+	 * @return A map of usernames to their statistics. Users that have never
+	 * 		   uploaded a Mobility point are not included.
+	 * 
+	 * @throws DataAccessException Thrown if there is an error.
+	 */
+	Map<String, UploadStats> getUploadStatsForUsers(
+			Collection<String> usernames,
+			long since)
+			throws DataAccessException;
+	
 	/**
 	 * Updates a Mobility point.
 	 * 
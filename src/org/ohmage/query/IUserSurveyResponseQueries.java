@@ -15,8 +15,11 @@
  ******************************************************************************/
 package org.ohmage.query;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.UUID;
 
+import org.ohmage.domain.UploadStats;
 import org.ohmage.exception.DataAccessException;
 
 public interface IUserSurveyResponseQueries {
@@ -68,4 +71,30 @@ public interface IUserSurveyResponseQueries {
 	Double getPercentageOfNonNullSurveyLocations(String requestersUsername,
 			String usersUsername, int hours) throws DataAccessException;
 
+	/**
+	 * Aggregates the survey responses of some users that are visible to a
+	 * requesting user in one query.
+	 * 
+	 * @param requestersUsername The username of the user that is requesting
+	 * 							 this information.
+	 * 
+	 * @param campaignId The campaign's unique identifier to limit the survey
+	 * 					 responses to or null to use every campaign.
+	 * 
+	 * @param usernames The usernames of the users to which the data belongs.
+	 * 
+	 * @param since The milliseconds since the epoch from which survey 
+	 * 				responses that were uploaded are counted as recent.
+	 * 
+	 * @return A map of usernames to their statistics. Users without any
+	 * 		   visible survey responses are not included.
+	 * 
+	 * @throws DataAccessException Thrown if there is an error.
+	 */
+	Map<String, UploadStats> getUploadStatsForUsers(
+			String requestersUsername,
+			String campaignId,
+			Collection<String> usernames,
+			long since)
+			throws DataAccessException;
 }
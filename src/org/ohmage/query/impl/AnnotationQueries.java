@@ -20,17 +20,23 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.sql.DataSource;
 
 import org.joda.time.DateTimeZone;
 import org.ohmage.domain.Annotation;
+import org.ohmage.domain.SurveyResponseAnnotations;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.DomainException;
 import org.ohmage.query.IAnnotationQueries;
+import org.ohmage.util.StringUtils;
 import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
@@ -80,6 +86,33 @@ public class AnnotationQueries extends Query implements IAnnotationQueries {
 		"AND pra.annotation_id = a.id " +
 		"AND a.user_id = u.id";
 	
+	// Reads the annotations on a set of survey responses and on their prompt
+	// responses. The first branch of the UNION has no prompt response
+	// information, which is how the survey response annotations are told
+	// apart from the prompt response annotations.
+	private static final String SQL_READ_SURVEY_RESPONSE_ANNOTATIONS_BATCH =
+		"SELECT sr.uuid, NULL, NULL, NULL, " +
+			"a.uuid, a.annotation, a.epoch_millis, a.timezone, u.username " +
+		"FROM campaign c, survey_response sr, survey_response_annotation sra, annotation a, user u " +
+		"WHERE c.urn = ? " +
+		"AND c.id = sr.campaign_id " +
+		"AND sr.uuid IN {uuids} " +
+		"AND sr.id = sra.survey_response_id " +
+		"AND sra.annotation_id = a.id " +
+		"AND a.user_id = u.id " +
+		"UNION ALL " +
+		"SELECT sr.uuid, pr.prompt_id, pr.repeatable_set_id, pr.repeatable_set_iteration, " +
+			"a.uuid, a.annotation, a.epoch_millis, a.timezone, u.username " +
+		"FROM campaign c, survey_response sr, prompt_response pr, prompt_response_annotation pra, annotation a, user u " +
+		"WHERE c.urn = ? " +
+		"AND c.id = sr.campaign_id " +
+		"AND sr.uuid IN {uuids} " +
+		"AND pr.survey_response_id = sr.id " +
+		"AND pr.id = pra.prompt_response_id " +
+		"AND pra.annotation_id = a.id " +
+		"AND a.user_id = u.id " +
+		"ORDER BY 7";
+
 	private static final String SQL_READ_PROMPT_RESPONSE_ANNOTATION_AND_REPEATABLE_SET =
 		" AND repeatable_set_id = ? " +
 		"AND repeatable_set_iteration = ?";
@@ -196,6 +229,88 @@ public class AnnotationQueries extends Query implements IAnnotationQueries {
 		}
 	}
 	
+	@Override
+	public Map<UUID, SurveyResponseAnnotations> readSurveyResponseAnnotations(
+			final String campaignId,
+			final Collection<UUID> surveyResponseIds)
+			throws DataAccessException {
+		
+		final Map<UUID, SurveyResponseAnnotations> result =
+			new HashMap<UUID, SurveyResponseAnnotations>();
+		if((surveyResponseIds == null) || surveyResponseIds.isEmpty()) {
+			return result;
+		}
+		
+		String sql =
+			SQL_READ_SURVEY_RESPONSE_ANNOTATIONS_BATCH.replace(
+				"{uuids}",
+				StringUtils.generateStatementPList(surveyResponseIds.size()));
+		
+		List<Object> args = new ArrayList<Object>(2 * (surveyResponseIds.size() + 1));
+		for(int i = 0; i < 2; i++) {
+			args.add(campaignId);
+			for(UUID surveyResponseId : surveyResponseIds) {
+				args.add(surveyResponseId.toString());
+			}
+		}
+		
+		try {
+			getJdbcTemplate().query(
+				sql,
+				args.toArray(),
+				new RowCallbackHandler() {
+					@Override
+					public void processRow(ResultSet rs) throws SQLException {
+						UUID surveyResponseId = UUID.fromString(rs.getString(1));
+						
+						Annotation annotation;
+						try {
+							annotation =
+								new Annotation(
+									rs.getString(5),
+									rs.getString(6),
+									rs.getLong(7),
+									rs.getString(8),
+									rs.getString(9));
+						}
+						catch(DomainException e) {
+							throw new SQLException("Error creating an annotation object.", e);
+						}
+						
+						SurveyResponseAnnotations annotations =
+							result.get(surveyResponseId);
+						if(annotations == null) {
+							annotations = new SurveyResponseAnnotations();
+							result.put(surveyResponseId, annotations);
+						}
+						
+						String promptId = rs.getString(2);
+						if(promptId == null) {
+							annotations.addSurveyResponseAnnotation(annotation);
+						}
+						else {
+							String repeatableSetId = rs.getString(3);
+							int repeatableSetIteration = rs.getInt(4);
+							
+							annotations.addPromptResponseAnnotation(
+								promptId,
+								repeatableSetId,
+								(rs.wasNull()) ? null : repeatableSetIteration,
+								annotation);
+						}
+					}
+				}
+			);
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + sql + "' with parameters: " + args,
+				e);
+		}
+		
+		return result;
+	}
+	
 	@Override
 	public void createPromptResponseAnnotation(final UUID annotationId, final String client, final Long time,
 		final DateTimeZone timezone, final String annotationText, Integer promptResponseId, String user)
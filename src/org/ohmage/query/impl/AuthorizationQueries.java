@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.ohmage.domain.AuthorizationContext;
+import org.ohmage.domain.Clazz;
+import org.ohmage.domain.campaign.Campaign;
+import org.ohmage.exception.DataAccessException;
+import org.ohmage.query.IAuthorizationQueries;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * This class is responsible for loading the snapshots of users' privileges
+ * that are used to authorize their requests.
+ */
+public final class AuthorizationQueries
+		extends Query
+		implements IAuthorizationQueries {
+
+	// Returns whether or not a user is an admin.
+	private static final String SQL_GET_ADMIN =
+		"SELECT admin " +
+		"FROM user " +
+		"WHERE username = ?";
+
+	// Returns every role a user has in every campaign along with the
+	// campaign's privacy and running states. Each row is a unique
+	// campaign-role combination.
+	private static final String SQL_GET_CAMPAIGN_ROLES_AND_STATES =
+		"SELECT c.urn, ur.role, cps.privacy_state, crs.running_state " +
+		"FROM user u, campaign c, user_role ur, user_role_campaign urc, " +
+			"campaign_privacy_state cps, campaign_running_state crs " +
+		"WHERE u.username = ? " +
+		"AND u.id = urc.user_id " +
+		"AND c.id = urc.campaign_id " +
+		"AND ur.id = urc.user_role_id " +
+		"AND cps.id = c.privacy_state_id " +
+		"AND crs.id = c.running_state_id";
+
+	// Returns the role a user has in each of their classes.
+	private static final String SQL_GET_CLASS_ROLES =
+		"SELECT c.urn, ucr.role " +
+		"FROM user u, class c, user_class uc, user_class_role ucr " +
+		"WHERE u.username = ? " +
+		"AND u.id = uc.user_id " +
+		"AND c.id = uc.class_id " +
+		"AND ucr.id = uc.user_class_role_id";
+
+	/**
+	 * Creates this object.
+	 *
+	 * @param dataSource The DataSource to use to query the database.
+	 */
+	private AuthorizationQueries(final DataSource dataSource) {
+		super(dataSource);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IAuthorizationQueries#getAuthorizationContext(java.lang.String)
+	 */
+	@Override
+	public AuthorizationContext getAuthorizationContext(
+			final String username)
+			throws DataAccessException {
+
+		List<Boolean> admin;
+		try {
+			admin =
+				getJdbcTemplate().queryForList(
+					SQL_GET_ADMIN,
+					new Object[] { username },
+					Boolean.class);
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + SQL_GET_ADMIN +
+					"' with parameter: " + username,
+				e);
+		}
+
+		// The user doesn't exist.
+		if(admin.isEmpty()) {
+			return null;
+		}
+
+		final Map<String, List<Campaign.Role>> campaignRoles =
+			new HashMap<String, List<Campaign.Role>>();
+		final Map<String, Campaign.PrivacyState> privacyStates =
+			new HashMap<String, Campaign.PrivacyState>();
+		final Map<String, Campaign.RunningState> runningStates =
+			new HashMap<String, Campaign.RunningState>();
+		try {
+			getJdbcTemplate().query(
+				SQL_GET_CAMPAIGN_ROLES_AND_STATES,
+				new Object[] { username },
+				new RowCallbackHandler() {
+					@Override
+					public void processRow(final ResultSet rs)
+							throws SQLException {
+
+						String campaignId = rs.getString("urn");
+
+						List<Campaign.Role> roles =
+							campaignRoles.get(campaignId);
+						if(roles == null) {
+							roles = new LinkedList<Campaign.Role>();
+							campaignRoles.put(campaignId, roles);
+
+							privacyStates.put(
+								campaignId,
+								Campaign.PrivacyState.getValue(
+									rs.getString("privacy_state")));
+							runningStates.put(
+								campaignId,
+								Campaign.RunningState.getValue(
+									rs.getString("running_state")));
+						}
+						roles.add(Campaign.Role.getValue(rs.getString("role")));
+					}
+				});
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + SQL_GET_CAMPAIGN_ROLES_AND_STATES +
+					"' with parameter: " + username,
+				e);
+		}
+
+		final Map<String, Clazz.Role> classRoles =
+			new HashMap<String, Clazz.Role>();
+		try {
+			getJdbcTemplate().query(
+				SQL_GET_CLASS_ROLES,
+				new Object[] { username },
+				new RowCallbackHandler() {
+					@Override
+					public void processRow(final ResultSet rs)
+							throws SQLException {
+
+						classRoles.put(
+							rs.getString("urn"),
+							Clazz.Role.getValue(rs.getString("role")));
+					}
+				});
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + SQL_GET_CLASS_ROLES +
+					"' with parameter: " + username,
+				e);
+		}
+
+		return
+			new AuthorizationContext(
+				username,
+				Boolean.TRUE.equals(admin.get(0)),
+				campaignRoles,
+				privacyStates,
+				runningStates,
+				classRoles);
+	}
+}
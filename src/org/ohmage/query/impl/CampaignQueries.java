@@ -22,6 +22,7 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -34,6 +35,8 @@ import java.util.Set;
 import javax.sql.DataSource;
 
 import org.joda.time.DateTime;
+import org.ohmage.cache.AuthorizationCache;
+import org.ohmage.domain.AuthorizationContext;
 import org.ohmage.domain.Clazz;
 import org.ohmage.domain.campaign.Campaign;
 import org.ohmage.domain.campaign.Prompt;
@@ -144,41 +147,6 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 		"SELECT urn " +
 		"FROM campaign";
 	
-	// Returns all campaign IDs that contain the parameterized value. Be sure
-	// to add the "%"s around the parameter before calling this.
-	private static final String SQL_GET_LIKE_ID =
-		"SELECT urn " +
-		"FROM campaign " +
-		"WHERE urn LIKE ?";
-	
-	// Returns all campaign IDs that contain the parameterized value. Be sure
-	// to add the "%"s around the parameter before calling this.
-	private static final String SQL_GET_LIKE_NAME =
-		"SELECT urn " +
-		"FROM campaign " +
-		"WHERE name LIKE ?";
-	
-	// Returns all campaign IDs that contain the parameterized value. Be sure
-	// to add the "%"s around the parameter before calling this.
-	private static final String SQL_GET_LIKE_DESCRIPTION =
-		"SELECT urn " +
-		"FROM campaign " +
-		"WHERE description LIKE ?";
-	
-	// Returns all campaign IDs that contain the parameterized value. Be sure
-	// to add the "%"s around the parameter before calling this.
-	private static final String SQL_GET_LIKE_XML =
-		"SELECT urn " +
-		"FROM campaign " +
-		"WHERE xml LIKE ?";
-	
-	// Returns all campaign IDs that contain the parameterized value. Be sure
-	// to add the "%"s around the parameter before calling this.
-	private static final String SQL_GET_LIKE_AUTHORED_BY =
-		"SELECT urn " +
-		"FROM campaign " +
-		"WHERE authored_by LIKE ?";
-	
 	// Returns all of the IDs for all of the campaigns whose creation timestamp
 	// was on or after some date.
 	private static final String SQL_GET_CAMPAIGNS_ON_OR_AFTER_DATE = 
@@ -463,6 +431,23 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 					e);
 			}
 			
+			// Queue the campaign to be added to the search index.
+			try {
+				SearchIndexQueries.queue(
+					getJdbcTemplate(),
+					SearchIndexQueries.Entity.CAMPAIGN,
+					campaign.getId());
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+					"Error executing SQL '" +
+						SearchIndexQueries.Entity.CAMPAIGN.getQueueSql() +
+						"' with parameter: " +
+						campaign.getId(),
+					e);
+			}
+			
 			// Create the set of survey and prompt IDs for this campaign.
 			final Set<String> surveyIds = new HashSet<String>();
 			final Set<String> promptIds = new HashSet<String>();
@@ -595,6 +580,7 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
+				AuthorizationCache.invalidateAll();
 			}
 			catch(TransactionException e) {
 				transactionManager.rollback(status);
@@ -654,20 +640,10 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 	public List<String> getCampaignsFromPartialId(String partialCampaignId)
 			throws DataAccessException {
 
-		try {
-			return getJdbcTemplate().query(
-					SQL_GET_LIKE_ID, 
-					new Object[] { "%" + partialCampaignId + "%" }, 
-					new SingleColumnRowMapper<String>());
-		}
-		catch(org.springframework.dao.DataAccessException e) {
-			throw new DataAccessException(
-					"Error executing SQL '" +
-						SQL_GET_LIKE_ID + 
-						"' with parameter: " +
-						"%" + partialCampaignId + "%",
-					e);
-		}
+		return getCampaignIdsFromPartialValue(
+			SearchIndexQueries.Field.CAMPAIGN_ID,
+			"urn",
+			partialCampaignId);
 	}
 
 	/*
@@ -678,20 +654,10 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 	public List<String> getCampaignsFromPartialName(String partialCampaignName)
 			throws DataAccessException {
 
-		try {
-			return getJdbcTemplate().query(
-					SQL_GET_LIKE_NAME, 
-					new Object[] { "%" + partialCampaignName + "%" }, 
-					new SingleColumnRowMapper<String>());
-		}
-		catch(org.springframework.dao.DataAccessException e) {
-			throw new DataAccessException(
-					"Error executing SQL '" +
-						SQL_GET_LIKE_NAME + 
-						"' with parameter: " +
-						"%" + partialCampaignName + "%",
-					e);
-		}
+		return getCampaignIdsFromPartialValue(
+			SearchIndexQueries.Field.CAMPAIGN_NAME,
+			"name",
+			partialCampaignName);
 	}
 
 	/*
@@ -702,20 +668,10 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 	public List<String> getCampaignsFromPartialDescription(
 			String partialDescription) throws DataAccessException {
 
-		try {
-			return getJdbcTemplate().query(
-					SQL_GET_LIKE_DESCRIPTION, 
-					new Object[] { "%" + partialDescription + "%" }, 
-					new SingleColumnRowMapper<String>());
-		}
-		catch(org.springframework.dao.DataAccessException e) {
-			throw new DataAccessException(
-					"Error executing SQL '" +
-						SQL_GET_LIKE_DESCRIPTION + 
-						"' with parameter: " +
-						"%" + partialDescription + "%",
-					e);
-		}
+		return getCampaignIdsFromPartialValue(
+			SearchIndexQueries.Field.CAMPAIGN_DESCRIPTION,
+			"description",
+			partialDescription);
 	}
 
 	/*
@@ -725,21 +681,11 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 	@Override
 	public List<String> getCampaignsFromPartialXml(String partialXml)
 			throws DataAccessException {
-		
-		try {
-			return getJdbcTemplate().query(
-					SQL_GET_LIKE_XML, 
-					new Object[] { "%" + partialXml + "%" }, 
-					new SingleColumnRowMapper<String>());
-		}
-		catch(org.springframework.dao.DataAccessException e) {
-			throw new DataAccessException(
-					"Error executing SQL '" +
-						SQL_GET_LIKE_XML + 
-						"' with parameter: " +
-						"%" + partialXml + "%",
-					e);
-		}
+
+		return getCampaignIdsFromPartialValue(
+			SearchIndexQueries.Field.CAMPAIGN_XML,
+			"xml",
+			partialXml);
 	}
 
 	/*
@@ -750,18 +696,57 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 	public List<String> getCampaignsFromPartialAuthoredBy(
 			String partialAuthoredBy) throws DataAccessException {
 
+		return getCampaignIdsFromPartialValue(
+			SearchIndexQueries.Field.CAMPAIGN_AUTHORED_BY,
+			"authored_by",
+			partialAuthoredBy);
+	}
+
+	/**
+	 * Returns the IDs of the campaigns where some value contains a partial
+	 * value. Only the candidates from the search index are compared.
+	 * 
+	 * @param field The value in the search index.
+	 * 
+	 * @param column The campaign's column with the value.
+	 * 
+	 * @param partialValue The partial value.
+	 * 
+	 * @return The campaign IDs.
+	 * 
+	 * @throws DataAccessException There was an error.
+	 */
+	private List<String> getCampaignIdsFromPartialValue(
+			final SearchIndexQueries.Field field,
+			final String column,
+			final String partialValue)
+			throws DataAccessException {
+		
+		String likePattern = "%" + partialValue + "%";
+		List<Object> parameters = new LinkedList<Object>();
+		
+		StringBuilder sql = new StringBuilder("SELECT ca.urn FROM campaign ca");
+		SearchIndexQueries.appendCandidateJoin(
+			sql,
+			parameters,
+			field,
+			"ca",
+			Collections.singleton(likePattern));
+		sql.append(" WHERE ca.").append(column).append(" LIKE ?");
+		parameters.add(likePattern);
+		
 		try {
 			return getJdbcTemplate().query(
-					SQL_GET_LIKE_AUTHORED_BY, 
-					new Object[] { "%" + partialAuthoredBy + "%" }, 
+					sql.toString(), 
+					parameters.toArray(), 
 					new SingleColumnRowMapper<String>());
 		}
 		catch(org.springframework.dao.DataAccessException e) {
 			throw new DataAccessException(
-					"Error executing SQL '" +
-						SQL_GET_LIKE_AUTHORED_BY + 
-						"' with parameter: " +
-						"%" + partialAuthoredBy + "%",
+					"Error executing SQL '" + 
+						sql + 
+						"' with parameters: " + 
+						parameters, 
 					e);
 		}
 	}
@@ -916,6 +901,16 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 	 * @see org.ohmage.query.impl.ICampaignQueries#getCampaignPrivacyState(java.lang.String)
 	 */
 	public Campaign.PrivacyState getCampaignPrivacyState(String campaignId) throws DataAccessException {
+		// The requester's snapshot knows the states of their campaigns.
+		AuthorizationContext context = AuthorizationCache.getCurrent();
+		if(context != null) {
+			Campaign.PrivacyState privacyState = 
+				context.getCampaignPrivacyState(campaignId);
+			if(privacyState != null) {
+				return privacyState;
+			}
+		}
+		
 		try {
 			return Campaign.PrivacyState.getValue(getJdbcTemplate().queryForObject(SQL_GET_PRIVACY_STATE, new Object[] { campaignId }, String.class));
 		}
@@ -935,6 +930,16 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 	 * @see org.ohmage.query.impl.ICampaignQueries#getCampaignRunningState(java.lang.String)
 	 */
 	public Campaign.RunningState getCampaignRunningState(String campaignId) throws DataAccessException {
+		// The requester's snapshot knows the states of their campaigns.
+		AuthorizationContext context = AuthorizationCache.getCurrent();
+		if(context != null) {
+			Campaign.RunningState runningState = 
+				context.getCampaignRunningState(campaignId);
+			if(runningState != null) {
+				return runningState;
+			}
+		}
+		
 		try {
 			return Campaign.RunningState.getValue(getJdbcTemplate().queryForObject(SQL_GET_RUNNING_STATE, new Object[] { campaignId }, String.class));
 		}
@@ -1114,29 +1119,62 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 					
 		try {
 			// Begin with a common set of elements to select, and the tables to
-			// which those elements belong.
+			// which those elements belong. The campaigns are limited to the
+			// candidates from the search index for each of the partial 
+			// values, and the LIKE comparisons below are still applied to the
+			// candidates.
 			StringBuilder builder = 
-				new StringBuilder(
-					"SELECT ca.id " +
-					"FROM " +
-						"user u, " +
-						"campaign ca, " +
-						"campaign_running_state crs, " +
-						"campaign_privacy_state cps " +
-					"WHERE u.username = ? " +
-					"AND ca.running_state_id = crs.id " +
-					"AND ca.privacy_state_id = cps.id " +
-					// ACL
-					"AND (" +
-						"(u.admin = true)" +
-						" OR " +
-						"EXISTS (" +
-							"SELECT id " +
-							"FROM user_role_campaign urc " +
-							"WHERE u.id = urc.user_id " +
-							"AND ca.id = urc.campaign_id " +
-						")" +
-					")");
+				new StringBuilder("SELECT ca.id FROM campaign ca");
+			SearchIndexQueries.appendCandidateJoin(
+				builder,
+				parameters,
+				SearchIndexQueries.Field.CAMPAIGN_ID,
+				"ca",
+				SearchIndexQueries.getContainsPatterns(partialCampaignId));
+			SearchIndexQueries.appendCandidateJoin(
+				builder,
+				parameters,
+				SearchIndexQueries.Field.CAMPAIGN_NAME,
+				"ca",
+				SearchIndexQueries.getContainsPatterns(partialCampaignName));
+			SearchIndexQueries.appendCandidateJoin(
+				builder,
+				parameters,
+				SearchIndexQueries.Field.CAMPAIGN_DESCRIPTION,
+				"ca",
+				SearchIndexQueries.getContainsPatterns(partialDescription));
+			SearchIndexQueries.appendCandidateJoin(
+				builder,
+				parameters,
+				SearchIndexQueries.Field.CAMPAIGN_XML,
+				"ca",
+				SearchIndexQueries.getContainsPatterns(partialXml));
+			SearchIndexQueries.appendCandidateJoin(
+				builder,
+				parameters,
+				SearchIndexQueries.Field.CAMPAIGN_AUTHORED_BY,
+				"ca",
+				SearchIndexQueries.getContainsPatterns(partialAuthoredBy));
+			
+			builder.append(
+				", " +
+					"user u, " +
+					"campaign_running_state crs, " +
+					"campaign_privacy_state cps " +
+				"WHERE u.username = ? " +
+				"AND ca.running_state_id = crs.id " +
+				"AND ca.privacy_state_id = cps.id " +
+				// ACL
+				"AND (" +
+					"(u.admin = true)" +
+					" OR " +
+					"EXISTS (" +
+						"SELECT id " +
+						"FROM user_role_campaign urc " +
+						"WHERE u.id = urc.user_id " +
+						"AND ca.id = urc.campaign_id " +
+					")" +
+				")");
 			
 			parameters.add(username);
 			
@@ -1213,29 +1251,44 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 					
 		try {
 			// Begin with a common set of elements to select, and the tables to
-			// which those elements belong.
+			// which those elements belong. The campaigns are limited to the
+			// candidates from the search index for the name and description
+			// tokens, and the LIKE comparisons below are still applied to the
+			// candidates.
 			StringBuilder builder = 
-				new StringBuilder(
-					"SELECT ca.id " +
-					"FROM " +
-						"user u, " +
-						"campaign ca, " +
-						"campaign_running_state crs, " +
-						"campaign_privacy_state cps " +
-					"WHERE u.username = ? " +
-					"AND ca.running_state_id = crs.id " +
-					"AND ca.privacy_state_id = cps.id " +
-					// ACL
-					"AND (" +
-						"(u.admin = true)" +
-						" OR " +
-						"EXISTS (" +
-							"SELECT id " +
-							"FROM user_role_campaign urc " +
-							"WHERE u.id = urc.user_id " +
-							"AND ca.id = urc.campaign_id" +
-						")" +
-					")");
+				new StringBuilder("SELECT ca.id FROM campaign ca");
+			SearchIndexQueries.appendCandidateJoin(
+				builder,
+				parameters,
+				SearchIndexQueries.Field.CAMPAIGN_NAME,
+				"ca",
+				SearchIndexQueries.getContainsPatterns(nameTokens));
+			SearchIndexQueries.appendCandidateJoin(
+				builder,
+				parameters,
+				SearchIndexQueries.Field.CAMPAIGN_DESCRIPTION,
+				"ca",
+				SearchIndexQueries.getContainsPatterns(descriptionTokens));
+			
+			builder.append(
+				", " +
+					"user u, " +
+					"campaign_running_state crs, " +
+					"campaign_privacy_state cps " +
+				"WHERE u.username = ? " +
+				"AND ca.running_state_id = crs.id " +
+				"AND ca.privacy_state_id = cps.id " +
+				// ACL
+				"AND (" +
+					"(u.admin = true)" +
+					" OR " +
+					"EXISTS (" +
+						"SELECT id " +
+						"FROM user_role_campaign urc " +
+						"WHERE u.id = urc.user_id " +
+						"AND ca.id = urc.campaign_id" +
+					")" +
+				")");
 			
 			parameters.add(username);
 			
@@ -1629,6 +1682,26 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 				}
 			}
 			
+			// If its XML or description changed, queue the campaign to have its
+			// search index entries rebuilt.
+			if((xml != null) || (description != null)) {
+				try {
+					SearchIndexQueries.queue(
+						getJdbcTemplate(),
+						SearchIndexQueries.Entity.CAMPAIGN,
+						campaignId);
+				}
+				catch(org.springframework.dao.DataAccessException e) {
+					transactionManager.rollback(status);
+					throw new DataAccessException(
+						"Error executing SQL '" +
+							SearchIndexQueries.Entity.CAMPAIGN.getQueueSql() +
+							"' with parameter: " +
+							campaignId,
+						e);
+				}
+			}
+			
 			// Update the running state if it is present.
 			if(runningState != null) {
 				try {
@@ -1785,6 +1858,7 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
+				AuthorizationCache.invalidateAll();
 			}
 			catch(TransactionException e) {
 				transactionManager.rollback(status);
@@ -1820,6 +1894,7 @@ public final class CampaignQueries extends Query implements ICampaignQueries {
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
+				AuthorizationCache.invalidateAll();
 			}
 			catch(TransactionException e) {
 				transactionManager.rollback(status);
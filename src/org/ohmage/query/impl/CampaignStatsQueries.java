@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query.impl;
+
+import java.util.Collection;
+
+import org.ohmage.util.StringUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Maintains the campaign_stats table, which holds the number of survey
+ * responses and the time of the most recent upload for each user and survey
+ * response privacy state in each campaign. These must be called within the
+ * same transaction that changes the survey responses.
+ */
+final class CampaignStatsQueries {
+	// Adds the survey responses to their statistics.
+	private static final String SQL_ADD =
+		"INSERT INTO campaign_stats(" +
+			"campaign_id, " +
+			"user_id, " +
+			"privacy_state_id, " +
+			"response_count, " +
+			"last_upload_timestamp) " +
+		"SELECT campaign_id, user_id, privacy_state_id, " +
+			"COUNT(*), MAX(upload_timestamp) " +
+		"FROM survey_response " +
+		"WHERE uuid IN {uuids} " +
+		"GROUP BY campaign_id, user_id, privacy_state_id " +
+		"ON DUPLICATE KEY UPDATE " +
+			"response_count = response_count + VALUES(response_count), " +
+			"last_upload_timestamp = " +
+				"GREATEST(" +
+					"last_upload_timestamp, " +
+					"VALUES(last_upload_timestamp))";
+
+	// Removes the survey responses from their statistics. The survey
+	// responses are grouped first because a multiple-table UPDATE only
+	// updates each row once.
+	private static final String SQL_REMOVE =
+		"UPDATE campaign_stats cs " +
+		"JOIN (" +
+			"SELECT campaign_id, user_id, privacy_state_id, " +
+				"COUNT(*) AS response_count " +
+			"FROM survey_response " +
+			"WHERE uuid IN {uuids} " +
+			"GROUP BY campaign_id, user_id, privacy_state_id" +
+		") sr " +
+			"ON cs.campaign_id = sr.campaign_id " +
+			"AND cs.user_id = sr.user_id " +
+			"AND cs.privacy_state_id = sr.privacy_state_id " +
+		"SET cs.response_count = " +
+			"GREATEST(CAST(cs.response_count AS SIGNED) - sr.response_count, 0)";
+
+	/**
+	 * This class only has static members.
+	 */
+	private CampaignStatsQueries() {}
+
+	/**
+	 * Adds survey responses to their campaigns' statistics. This must be
+	 * called after the survey responses have been inserted or after their
+	 * privacy state has been changed.
+	 *
+	 * @param jdbcTemplate The JdbcTemplate bound to the current transaction.
+	 *
+	 * @param surveyResponseIds The survey responses' unique identifiers.
+	 *
+	 * @throws org.springframework.dao.DataAccessException There was an error.
+	 */
+	static void add(
+			final JdbcTemplate jdbcTemplate,
+			final Collection<String> surveyResponseIds) {
+
+		update(jdbcTemplate, SQL_ADD, surveyResponseIds);
+	}
+
+	/**
+	 * Removes survey responses from their campaigns' statistics. This must be
+	 * called before the survey responses are deleted or before their privacy
+	 * state is changed. The last upload time is not changed as it records
+	 * when the upload happened.
+	 *
+	 * @param jdbcTemplate The JdbcTemplate bound to the current transaction.
+	 *
+	 * @param surveyResponseIds The survey responses' unique identifiers.
+	 *
+	 * @throws org.springframework.dao.DataAccessException There was an error.
+	 */
+	static void remove(
+			final JdbcTemplate jdbcTemplate,
+			final Collection<String> surveyResponseIds) {
+
+		update(jdbcTemplate, SQL_REMOVE, surveyResponseIds);
+	}
+
+	/**
+	 * Returns the SQL for adding survey responses to their statistics, which
+	 * is used in error messages.
+	 *
+	 * @return The SQL with a placeholder for the survey response IDs.
+	 */
+	static String getAddSql() {
+		return SQL_ADD;
+	}
+
+	/**
+	 * Returns the SQL for removing survey responses from their statistics,
+	 * which is used in error messages.
+	 *
+	 * @return The SQL with a placeholder for the survey response IDs.
+	 */
+	static String getRemoveSql() {
+		return SQL_REMOVE;
+	}
+
+	/**
+	 * Runs one of the statements for a set of survey responses.
+	 *
+	 * @param jdbcTemplate The JdbcTemplate bound to the current transaction.
+	 *
+	 * @param sql The statement with the "{uuids}" placeholder.
+	 *
+	 * @param surveyResponseIds The survey responses' unique identifiers.
+	 */
+	private static void update(
+			final JdbcTemplate jdbcTemplate,
+			final String sql,
+			final Collection<String> surveyResponseIds) {
+
+		if((surveyResponseIds == null) || surveyResponseIds.isEmpty()) {
+			return;
+		}
+
+		jdbcTemplate.update(
+			sql.replace(
+				"{uuids}",
+				StringUtils.generateStatementPList(surveyResponseIds.size())),
+			surveyResponseIds.toArray());
+	}
+}
@@ -17,18 +17,23 @@ package org.ohmage.query.impl;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 import javax.sql.DataSource;
 
+import org.joda.time.DateTime;
+import org.ohmage.domain.campaign.CampaignStats;
 import org.ohmage.domain.campaign.SurveyResponse;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.query.ICampaignSurveyResponseQueries;
-import org.springframework.jdbc.core.RowMapper;
+import org.ohmage.util.StringUtils;
+import org.springframework.jdbc.core.RowCallbackHandler;
 
 /**
  * This class contains all of the functionality for creating, reading, 
@@ -41,8 +46,8 @@ import org.springframework.jdbc.core.RowMapper;
 public class CampaignSurveyResponseQueries extends Query implements ICampaignSurveyResponseQueries {
 	// Retrieves the total number of survey responses for a campaign.
 	private static final String SQL_COUNT_SURVEY_RESPONSES =
-		"SELECT COUNT(Id) " +
-		"FROM survey_response " +
+		"SELECT COALESCE(SUM(response_count), 0) " +
+		"FROM campaign_stats " +
 		"WHERE campaign_id = (" +
 			"SELECT Id " +
 			"FROM campaign " +
@@ -71,6 +76,50 @@ public class CampaignSurveyResponseQueries extends Query implements ICampaignSur
 		"WHERE sr.uuid = ? " +
 		"AND sr.campaign_id = c.id";
 	
+	// Retrieves the statistics of the survey responses that are visible to
+	// the requesting user. The requesting user's roles are grouped first so
+	// that each statistic is only counted once. The rollup row for each 
+	// campaign holds the number of participants and the last upload across
+	// all privacy states.
+	private static final String SQL_GET_CAMPAIGN_STATS =
+		"SELECT c.urn, srps.privacy_state, " +
+			"SUM(cs.response_count) AS response_count, " +
+			"COUNT(DISTINCT cs.user_id) AS participant_count, " +
+			"MAX(cs.last_upload_timestamp) AS last_upload_timestamp " +
+		"FROM campaign c " +
+			"JOIN campaign_stats cs ON (cs.campaign_id = c.id) " +
+			"JOIN survey_response_privacy_state srps " +
+				"ON (cs.privacy_state_id = srps.id) " +
+			"JOIN campaign_privacy_state cps " +
+				"ON (c.privacy_state_id = cps.id) " +
+			"CROSS JOIN user ru " +
+			"LEFT JOIN (" +
+				"SELECT urc.campaign_id, " +
+					"MAX(ur.role = 'supervisor') AS supervisor, " +
+					"MAX(ur.role = 'author') AS author, " +
+					"MAX(ur.role = 'analyst') AS analyst " +
+				"FROM user u " +
+					"JOIN user_role_campaign urc ON (u.id = urc.user_id) " +
+					"JOIN user_role ur ON (urc.user_role_id = ur.id) " +
+				"WHERE u.username = ? " +
+				"GROUP BY urc.campaign_id" +
+			") rr ON (rr.campaign_id = c.id) " +
+		"WHERE ru.username = ? " +
+		"AND c.urn IN {campaignIds} " +
+		"AND cs.response_count > 0 " +
+		"AND (" +
+			"ru.admin = TRUE " +
+			"OR ru.id = cs.user_id " +
+			"OR rr.supervisor " +
+			"OR (rr.author AND srps.privacy_state = 'shared') " +
+			"OR (" +
+				"rr.analyst " +
+				"AND srps.privacy_state = 'shared' " +
+				"AND cps.privacy_state = 'shared'" +
+			")" +
+		") " +
+		"GROUP BY c.urn, srps.privacy_state WITH ROLLUP";
+	
 	/**
 	 * Private constructor that is used by Spring to setup this object.
 	 * 
@@ -126,87 +175,99 @@ public class CampaignSurveyResponseQueries extends Query implements ICampaignSur
 		}
 	}
 
-	/* (non-Javadoc)
-	 * @see org.ohmage.query.impl.ICampaignSurveyResponseQueries#getSurveyResponseCountInfo(java.lang.String, java.lang.String, java.lang.Collection)
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.ICampaignSurveyResponseQueries#getSurveyResponseStatsForCampaigns(java.lang.String, java.util.Collection)
 	 */
-	public Map<String, Map<SurveyResponse.PrivacyState, Integer>> getSurveyResponseCountInfoForCampaigns(
-		final String requestUser,
-		final String campaignSqlStmt, 
-		final Collection<Object> campaignSqlParameters)
+	@Override
+	public Map<String, CampaignStats> getSurveyResponseStatsForCampaigns(
+			final String requestUser,
+			final Collection<String> campaignIds)
 			throws DataAccessException {
-	
-	    Collection<Object> parameters = new LinkedList<Object>();
-	    
-	    StringBuilder sql = new StringBuilder(
-		    "SELECT c.urn, srps.privacy_state, COUNT(DISTINCT sr.id) as count " + 
-		    "FROM survey_response sr " +
-		    	"JOIN campaign c ON (sr.campaign_id = c.id) " +
-		    	"JOIN user u ON (sr.user_id = u.id) " + 
-		    	"JOIN survey_response_privacy_state srps ON (sr.privacy_state_id = srps.id) " + 
-		    	"JOIN campaign_privacy_state cps ON (c.privacy_state_id = cps.id) " +
-		    	"CROSS JOIN user ru " +
-		    	"LEFT JOIN user_role_campaign urc on (urc.user_id = ru.id AND urc.campaign_id = c.id) " +
-		    	"LEFT JOIN user_role ur on (urc.user_role_id = ur.id) " +
-		    "WHERE "  +
-		      "( " +
-		    	"ru.admin = TRUE " + 
-		        "OR ru.id = sr.user_id " +
-		        "OR ur.role = 'supervisor' " +
-		        "OR (ur.role = 'author' AND srps.privacy_state = 'shared') " +
-		        "OR (ur.role = 'analyst' AND srps.privacy_state = 'shared' AND cps.privacy_state = 'shared') " +
-		      ") " +
-		      "AND ru.username = ? " +
-		      "AND c.id IN ");
-	    sql.append(	   "(" + campaignSqlStmt  + ")");
-	    sql.append(" GROUP BY c.urn, srps.id ");
-	    parameters.add(requestUser);
-	    parameters.addAll(campaignSqlParameters);
-	    
-	    final Map<String, Map<SurveyResponse.PrivacyState, Integer>> responseCountInfoMap = 
-		    new HashMap<String, Map<SurveyResponse.PrivacyState, Integer>>();
-
-	    try {
-
-		getJdbcTemplate().query(
-			sql.toString(), 
-			parameters.toArray(), 
-			new RowMapper<Object>() {
-			    @Override
-			    public Object mapRow(final ResultSet rs, final int rowNum) throws SQLException {
-				try {
-
-				    String urn = rs.getString("urn");						    	
-				    Integer count = rs.getInt("count");
-				    SurveyResponse.PrivacyState privacy_state = SurveyResponse.PrivacyState.getValue(rs.getString("privacy_state"));
-				    
-				    Map<SurveyResponse.PrivacyState, Integer> responseCountInfo = responseCountInfoMap.get(urn);
-				    if (responseCountInfo == null) {
-					responseCountInfo = new HashMap<SurveyResponse.PrivacyState, Integer>();
-					responseCountInfoMap.put(urn, responseCountInfo);
-				    } 
-				    responseCountInfo.put(privacy_state, count);								
-				    
-				    return null;
-				} 
-				catch (IllegalArgumentException e) {
-					throw new SQLException("Can't resolve privacy state: " + rs.getString("privacy_state"), e); 
-				}
-				catch (Exception e) {
-				    throw new SQLException("Can't create a role with parameters: " + 
-					    rs.getString("username") + "," + rs.getString("urn") + "," + rs.getString("roles"), e);
-				}
-			    }
-			}
-			);
-		return responseCountInfoMap;
-	    }
-	    catch(org.springframework.dao.DataAccessException e) {
-		throw new DataAccessException("Error executing SQL '" + sql + 
-			"' with parameters: " + campaignSqlStmt , 
-			e);
-	    }
-	    
-	    
+		
+		final Map<String, CampaignStats> result = 
+			new HashMap<String, CampaignStats>();
+		if((campaignIds == null) || campaignIds.isEmpty()) {
+			return result;
+		}
+		
+		final String sql = 
+			SQL_GET_CAMPAIGN_STATS.replace(
+				"{campaignIds}", 
+				StringUtils.generateStatementPList(campaignIds.size()));
+		
+		List<Object> parameters = 
+			new ArrayList<Object>(campaignIds.size() + 2);
+		parameters.add(requestUser);
+		parameters.add(requestUser);
+		parameters.addAll(campaignIds);
+		
+		try {
+			getJdbcTemplate().query(
+				sql, 
+				parameters.toArray(), 
+				new RowCallbackHandler() {
+					// The counts of the campaign whose rows are being read.
+					// The rows are grouped by campaign and each campaign's
+					// rollup row follows its counts.
+					private Map<SurveyResponse.PrivacyState, Integer> counts =
+						new HashMap<SurveyResponse.PrivacyState, Integer>();
+					
+					@Override
+					public void processRow(
+							final ResultSet rs)
+							throws SQLException {
+						
+						String campaignId = rs.getString("urn");
+						
+						// Skip the grand total.
+						if(campaignId == null) {
+							return;
+						}
+						
+						String privacyState = rs.getString("privacy_state");
+						
+						// The rollup row for a campaign.
+						if(privacyState == null) {
+							Timestamp lastUpload = 
+								rs.getTimestamp("last_upload_timestamp");
+							
+							result.put(
+								campaignId, 
+								new CampaignStats(
+									counts,
+									rs.getInt("participant_count"),
+									(lastUpload == null) ?
+										null :
+										new DateTime(lastUpload.getTime())));
+							
+							counts = 
+								new HashMap<SurveyResponse.PrivacyState, Integer>();
+							return;
+						}
+						
+						try {
+							counts.put(
+								SurveyResponse.PrivacyState.getValue(
+									privacyState),
+								rs.getInt("response_count"));
+						}
+						catch(IllegalArgumentException e) {
+							throw new SQLException(
+								"Can't resolve privacy state: " + 
+									privacyState, 
+								e); 
+						}
+					}
+				});
+			
+			return result;
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + sql + 
+					"' with parameters: " + parameters, 
+				e);
+		}
 	}
-
 }
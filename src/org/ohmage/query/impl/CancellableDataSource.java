@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.log4j.Logger;
+import org.ohmage.request.RequestCancellation;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * A data source whose connections register their statements with the
+ * {@link RequestCancellation} bound to the thread that took them, if any, so
+ * that a long query can be cancelled when its request is abandoned.
+ * Connections taken without a cancellation are not wrapped.
+ */
+public class CancellableDataSource extends DelegatingDataSource {
+	private static final Logger LOGGER =
+		Logger.getLogger(CancellableDataSource.class);
+
+	/**
+	 * Creates the data source.
+	 *
+	 * @param targetDataSource The data source from which the connections are
+	 * 						   taken.
+	 */
+	public CancellableDataSource(final DataSource targetDataSource) {
+		super(targetDataSource);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return wrap(super.getConnection());
+	}
+
+	@Override
+	public Connection getConnection(
+			final String username,
+			final String password)
+			throws SQLException {
+
+		return wrap(super.getConnection(username, password));
+	}
+
+	/**
+	 * Wraps a connection so that its statements are registered with the
+	 * current thread's cancellation until the connection is closed. This must
+	 * happen before the connection is returned to the pool so that a late
+	 * cancellation cannot affect another request.
+	 */
+	private static Connection wrap(final Connection connection) {
+		final RequestCancellation cancellation = RequestCancellation.current();
+		if(cancellation == null) {
+			return connection;
+		}
+
+		final List<RequestCancellation.Cancellable> statements =
+			new ArrayList<RequestCancellation.Cancellable>();
+		return
+			(Connection) Proxy.newProxyInstance(
+				Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(
+							final Object proxy,
+							final Method method,
+							final Object[] args)
+							throws Throwable {
+
+						String name = method.getName();
+						if("equals".equals(name)) {
+							return proxy == args[0];
+						}
+						else if("hashCode".equals(name)) {
+							return System.identityHashCode(proxy);
+						}
+						else if("close".equals(name)) {
+							synchronized(statements) {
+								for(RequestCancellation.Cancellable statement
+										: statements) {
+									
+									cancellation.unregister(statement);
+								}
+								statements.clear();
+							}
+						}
+
+						Object result;
+						try {
+							result = method.invoke(connection, args);
+						}
+						catch(InvocationTargetException e) {
+							throw e.getCause();
+						}
+
+						if(result instanceof Statement) {
+							RequestCancellation.Cancellable statement =
+								cancellable((Statement) result);
+							synchronized(statements) {
+								statements.add(statement);
+							}
+							cancellation.register(statement);
+						}
+						return result;
+					}
+				});
+	}
+
+	/**
+	 * Returns a statement's cancellation, which ignores any error as the
+	 * statement may already have finished.
+	 */
+	private static RequestCancellation.Cancellable cancellable(
+			final Statement statement) {
+
+		return new RequestCancellation.Cancellable() {
+			@Override
+			public void cancel() {
+				try {
+					statement.cancel();
+				}
+				catch(SQLException e) {
+					LOGGER.debug("The statement could not be cancelled.", e);
+				}
+			}
+		};
+	}
+}
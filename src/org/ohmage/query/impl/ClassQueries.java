@@ -29,6 +29,7 @@ import java.util.Map;
 import javax.sql.DataSource;
 
 import org.apache.log4j.Logger;
+import org.ohmage.cache.AuthorizationCache;
 import org.ohmage.domain.Clazz;
 import org.ohmage.domain.Clazz.Role;
 import org.ohmage.domain.campaign.Campaign;
@@ -83,27 +84,6 @@ public class ClassQueries extends Query implements IClassQueries {
 		"SELECT urn " +
 		"FROM class";
 	
-	// Returns the class IDs that contain the paritial class ID. Be sure to add
-	// the "%" around the given value.
-	private static final String SQL_GET_LIKE_CLASS_ID =
-		"SELECT urn " +
-		"FROM class " +
-		"WHERE urn LIKE ?";
-	
-	// Returns the class IDs that contain the partial class name. Be sure to 
-	// add the "%" around the given value.
-	private static final String SQL_GET_LIKE_CLASS_NAME =
-		"SELECT urn " +
-		"FROM class " +
-		"WHERE name LIKE ?";
-	
-	// Returns the class IDs that contain the partial class description. Be 
-	// sure to add the "%" around the given value.
-	private static final String SQL_GET_LIKE_CLASS_DESCRIPTION =
-		"SELECT urn " +
-		"FROM class " +
-		"WHERE description LIKE ?";
-	
 	// Inserts a new class.
 	private static final String SQL_INSERT_CLASS =
 		"INSERT INTO class(urn, name, description, creation_timestamp) " +
@@ -272,9 +252,27 @@ public class ClassQueries extends Query implements IClassQueries {
 						classId + ", " + className + ", " + classDescription, e);
 			}
 			
+			// Queue the class to be added to the search index.
+			try {
+				SearchIndexQueries.queue(
+					getJdbcTemplate(),
+					SearchIndexQueries.Entity.CLASS,
+					classId);
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+					"Error executing SQL '" +
+						SearchIndexQueries.Entity.CLASS.getQueueSql() +
+						"' with parameter: " +
+						classId,
+					e);
+			}
+			
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
+				AuthorizationCache.invalidateAll();
 			}
 			catch(TransactionException e) {
 				transactionManager.rollback(status);
@@ -327,20 +325,10 @@ public class ClassQueries extends Query implements IClassQueries {
 	public List<String> getClassIdsFromPartialId(String partialId)
 			throws DataAccessException {
 
-		try {
-			return getJdbcTemplate().query(
-					SQL_GET_LIKE_CLASS_ID, 
-					new Object[] { "%" + partialId + "%" }, 
-					new SingleColumnRowMapper<String>());
-		}
-		catch(org.springframework.dao.DataAccessException e) {
-			throw new DataAccessException(
-					"Error executing SQL '" + 
-						SQL_GET_LIKE_CLASS_ID + 
-						"' with parameter: " + 
-						"%" + partialId + "%", 
-					e);
-		}
+		return getClassIdsFromPartialValue(
+			SearchIndexQueries.Field.CLASS_ID,
+			"urn",
+			partialId);
 	}
 
 	/*
@@ -351,20 +339,10 @@ public class ClassQueries extends Query implements IClassQueries {
 	public List<String> getClassIdsFromPartialName(String partialName)
 			throws DataAccessException {
 
-		try {
-			return getJdbcTemplate().query(
-					SQL_GET_LIKE_CLASS_NAME, 
-					new Object[] { "%" + partialName + "%" }, 
-					new SingleColumnRowMapper<String>());
-		}
-		catch(org.springframework.dao.DataAccessException e) {
-			throw new DataAccessException(
-					"Error executing SQL '" + 
-						SQL_GET_LIKE_CLASS_ID + 
-						"' with parameter: " + 
-						"%" + partialName + "%", 
-					e);
-		}
+		return getClassIdsFromPartialValue(
+			SearchIndexQueries.Field.CLASS_NAME,
+			"name",
+			partialName);
 	}
 
 	/*
@@ -376,18 +354,57 @@ public class ClassQueries extends Query implements IClassQueries {
 			String partialDescription) 
 			throws DataAccessException {
 
+		return getClassIdsFromPartialValue(
+			SearchIndexQueries.Field.CLASS_DESCRIPTION,
+			"description",
+			partialDescription);
+	}
+
+	/**
+	 * Returns the IDs of the classes where some value contains a partial
+	 * value. Only the candidates from the search index are compared.
+	 * 
+	 * @param field The value in the search index.
+	 * 
+	 * @param column The class' column with the value.
+	 * 
+	 * @param partialValue The partial value.
+	 * 
+	 * @return The class IDs.
+	 * 
+	 * @throws DataAccessException There was an error.
+	 */
+	private List<String> getClassIdsFromPartialValue(
+			final SearchIndexQueries.Field field,
+			final String column,
+			final String partialValue)
+			throws DataAccessException {
+		
+		String likePattern = "%" + partialValue + "%";
+		List<Object> parameters = new LinkedList<Object>();
+		
+		StringBuilder sql = new StringBuilder("SELECT c.urn FROM class c");
+		SearchIndexQueries.appendCandidateJoin(
+			sql,
+			parameters,
+			field,
+			"c",
+			Collections.singleton(likePattern));
+		sql.append(" WHERE c.").append(column).append(" LIKE ?");
+		parameters.add(likePattern);
+		
 		try {
 			return getJdbcTemplate().query(
-					SQL_GET_LIKE_CLASS_DESCRIPTION, 
-					new Object[] { "%" + partialDescription + "%" }, 
+					sql.toString(), 
+					parameters.toArray(), 
 					new SingleColumnRowMapper<String>());
 		}
 		catch(org.springframework.dao.DataAccessException e) {
 			throw new DataAccessException(
 					"Error executing SQL '" + 
-						SQL_GET_LIKE_CLASS_ID + 
-						"' with parameter: " + 
-						"%" + partialDescription + "%", 
+						sql + 
+						"' with parameters: " + 
+						parameters, 
 					e);
 		}
 	}
@@ -404,6 +421,8 @@ public class ClassQueries extends Query implements IClassQueries {
 			final Clazz.Role role) 
 			throws DataAccessException {
 		
+		List<Object> parameters = new LinkedList<Object>();
+		
 		// Build the default part of the query.
 		StringBuilder sqlBuilder = 
 				new StringBuilder(
@@ -417,24 +436,41 @@ public class ClassQueries extends Query implements IClassQueries {
 							// ID.
 							"SELECT u.id AS user_id, c.id AS class_id, " +
 								"c.urn, c.name, c.description " +
-							"FROM class c, user u " +
-							"WHERE u.username = ? " +
-							// ACL.
-							"AND (" +
-								"(u.admin = true)" +
-								" OR " +
-								"(" +
-									"c.id IN (" +
-										"SELECT uc.class_id " +
-										"FROM user_class uc " +
-										"WHERE u.id = uc.user_id" +
-									")" +
-								")" +
-							")");
+							"FROM class c");
+		
+		// Limit the classes to the candidates from the search index. The LIKE
+		// comparisons below are still applied to the candidates.
+		SearchIndexQueries.appendCandidateJoin(
+			sqlBuilder,
+			parameters,
+			SearchIndexQueries.Field.CLASS_NAME,
+			"c",
+			SearchIndexQueries.getContainsPatterns(classNameTokens));
+		SearchIndexQueries.appendCandidateJoin(
+			sqlBuilder,
+			parameters,
+			SearchIndexQueries.Field.CLASS_DESCRIPTION,
+			"c",
+			SearchIndexQueries.getContainsPatterns(classDescriptionTokens));
+		
+		sqlBuilder.append(
+			", user u " +
+			"WHERE u.username = ? " +
+			// ACL.
+			"AND (" +
+				"(u.admin = true)" +
+				" OR " +
+				"(" +
+					"c.id IN (" +
+						"SELECT uc.class_id " +
+						"FROM user_class uc " +
+						"WHERE u.id = uc.user_id" +
+					")" +
+				")" +
+			")");
 		
 		// Add the requesting user's username to the parameters as this is 
 		// always required for the ACL.
-		List<Object> parameters = new LinkedList<Object>();
 		parameters.add(username);
 		
 		// If we are going to intentionally limit the results to only a set of
@@ -704,6 +740,26 @@ public class ClassQueries extends Query implements IClassQueries {
 				}
 			}
 			
+			// If its name or description changed, queue the class to have its
+			// search index entries rebuilt.
+			if((className != null) || (classDescription != null)) {
+				try {
+					SearchIndexQueries.queue(
+						getJdbcTemplate(),
+						SearchIndexQueries.Entity.CLASS,
+						classId);
+				}
+				catch(org.springframework.dao.DataAccessException e) {
+					transactionManager.rollback(status);
+					throw new DataAccessException(
+						"Error executing SQL '" +
+							SearchIndexQueries.Entity.CLASS.getQueueSql() +
+							"' with parameter: " +
+							classId,
+						e);
+				}
+			}
+			
 			// If either of the user lists are non-empty, we grab the list of
 			// campaigns associated with the class now as it will be needed, 
 			// and we don't want to grab it multiple times.
@@ -1002,6 +1058,7 @@ public class ClassQueries extends Query implements IClassQueries {
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
+				AuthorizationCache.invalidateAll();
 			}
 			catch(TransactionException e) {
 				transactionManager.rollback(status);
@@ -1195,6 +1252,7 @@ public class ClassQueries extends Query implements IClassQueries {
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
+				AuthorizationCache.invalidateAll();
 			}
 			catch(TransactionException e) {
 				transactionManager.rollback(status);
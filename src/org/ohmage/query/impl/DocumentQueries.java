@@ -24,6 +24,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -93,6 +94,12 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 		"FROM document " +
 		"WHERE uuid = ?";
 	
+	// Returns the time a document was last modified.
+	private static final String SQL_GET_DOCUMENT_LAST_MODIFIED = 
+		"SELECT last_modified_timestamp " +
+		"FROM document " +
+		"WHERE uuid = ?";
+	
 	// Inserts the document into the database.
 	private static final String SQL_INSERT_DOCUMENT = 
 		"INSERT INTO document(uuid, name, description, extension, url, size, privacy_state_id, creation_timestamp) " +
@@ -383,6 +390,28 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 						uuid + ", " + name + ", " + description + ", " + extension + ", " + url + ", " + fileLength + ", " + privacyState, e);
 			}
 			
+			// Queue the document to be added to the search index.
+			try {
+				SearchIndexQueries.queue(
+					getJdbcTemplate(),
+					SearchIndexQueries.Entity.DOCUMENT,
+					uuid);
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				if(newFile.delete()) {
+					LOGGER.warn(
+						"Could not delete the file that was just created: " +
+							newFile.toString());
+				}
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+					"Error executing SQL '" +
+						SearchIndexQueries.Entity.DOCUMENT.getQueueSql() +
+						"' with parameter: " +
+						uuid,
+					e);
+			}
+			
 			// Insert the creator in the DB.
 			try {
 				getJdbcTemplate().update(
@@ -532,6 +561,23 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 		}
 	}
 	
+	/* (non-Javadoc)
+	 * @see org.ohmage.query.impl.IDocumentQueries#getDocumentLastModified(java.lang.String)
+	 */
+	public DateTime getDocumentLastModified(String documentId) throws DataAccessException {
+		try {
+			return new DateTime(
+					getJdbcTemplate().queryForObject(
+						SQL_GET_DOCUMENT_LAST_MODIFIED, 
+						new Object[] { documentId }, 
+						Timestamp.class)
+					.getTime());
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException("Error executing SQL '" + SQL_GET_DOCUMENT_LAST_MODIFIED + "' with parameter: " + documentId, e);
+		}
+	}
+	
 	/* (non-Javadoc)
 	 * @see org.ohmage.query.impl.IDocumentQueries#getVisibleDocumentsSql(java.lang.String)
 	 */
@@ -548,10 +594,25 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 			final DateTime endDate) 
 			throws DataAccessException {
 		
-		StringBuilder sql = 
-			new StringBuilder(
-				"SELECT d.id " +
-				"FROM user u, document d, " +
+		// The documents are limited to the candidates from the search index
+		// for the name and description tokens, and the LIKE comparisons below
+		// are still applied to the candidates.
+		StringBuilder sql = new StringBuilder("SELECT d.id FROM document d");
+		SearchIndexQueries.appendCandidateJoin(
+			sql,
+			sqlParameters,
+			SearchIndexQueries.Field.DOCUMENT_NAME,
+			"d",
+			SearchIndexQueries.getContainsPatterns(nameTokens));
+		SearchIndexQueries.appendCandidateJoin(
+			sql,
+			sqlParameters,
+			SearchIndexQueries.Field.DOCUMENT_DESCRIPTION,
+			"d",
+			SearchIndexQueries.getContainsPatterns(descriptionTokens));
+		
+		sql.append(
+				", user u, " +
 					"document_privacy_state dps, document_user_creator duc " +
 				"WHERE u.username = ? " +
 				"AND d.privacy_state_id = dps.id " +
@@ -884,6 +945,16 @@ public class DocumentQueries extends Query implements IDocumentQueries {
 			try {
 				updateName(documentId, name);
 				updateDescription(documentId, description);
+				
+				// If its name or description changed, queue the document to
+				// have its search index entries rebuilt.
+				if((name != null) || (description != null)) {
+					SearchIndexQueries.queue(
+						getJdbcTemplate(),
+						SearchIndexQueries.Entity.DOCUMENT,
+						documentId);
+				}
+				
 				updatePrivacyState(documentId, privacyState);
 				
 				// Update the campaign-document roles.
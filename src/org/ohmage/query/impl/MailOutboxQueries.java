@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.ohmage.domain.OutboundMail;
+import org.ohmage.exception.DataAccessException;
+import org.ohmage.query.IMailOutboxQueries;
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * This class is responsible for the queue of outgoing mail. Messages are
+ * claimed by stamping them with a random claim ID and pushing their next
+ * attempt into the future, which works with any number of senders on any
+ * number of servers without holding locks while the mail is being sent.
+ */
+public class MailOutboxQueries extends Query implements IMailOutboxQueries {
+	// Adds a message to the outbox.
+	private static final String SQL_INSERT_MAIL =
+		"INSERT INTO mail_outbox(" +
+			"sender, " +
+			"recipient, " +
+			"subject, " +
+			"body, " +
+			"content_type, " +
+			"creation_timestamp, " +
+			"next_attempt_timestamp) " +
+		"VALUES (?, ?, ?, ?, ?, NOW(), NOW())";
+
+	// Claims the messages that are ready to be sent.
+	private static final String SQL_UPDATE_CLAIM_MAIL =
+		"UPDATE mail_outbox " +
+		"SET claim_id = ?, " +
+			"next_attempt_timestamp = " +
+				"DATE_ADD(NOW(), INTERVAL ? SECOND) " +
+		"WHERE next_attempt_timestamp <= NOW() " +
+		"ORDER BY next_attempt_timestamp " +
+		"LIMIT ?";
+
+	// Retrieves the messages that were just claimed.
+	private static final String SQL_GET_CLAIMED_MAIL =
+		"SELECT id, sender, recipient, subject, body, content_type, attempts " +
+		"FROM mail_outbox " +
+		"WHERE claim_id = ? " +
+		"ORDER BY id";
+
+	// Removes a message that was sent.
+	private static final String SQL_DELETE_MAIL =
+		"DELETE FROM mail_outbox " +
+		"WHERE id = ?";
+
+	// Records a failed attempt and when to try again. If the time is NULL,
+	// the message is never retried.
+	private static final String SQL_UPDATE_FAIL_MAIL =
+		"UPDATE mail_outbox " +
+		"SET attempts = attempts + 1, " +
+			"claim_id = NULL, " +
+			"next_attempt_timestamp = " +
+				"DATE_ADD(NOW(), INTERVAL ? SECOND), " +
+			"last_error = ? " +
+		"WHERE id = ?";
+
+	/**
+	 * Creates this object via dependency injection (reflection).
+	 *
+	 * @param dataSource The DataSource to use when querying the database.
+	 */
+	private MailOutboxQueries(final DataSource dataSource) {
+		super(dataSource);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IMailOutboxQueries#queueMail(java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void queueMail(
+			final String sender,
+			final String recipient,
+			final String subject,
+			final String body,
+			final String contentType)
+			throws DataAccessException {
+
+		try {
+			getJdbcTemplate().update(
+				SQL_INSERT_MAIL,
+				sender,
+				recipient,
+				subject,
+				body,
+				contentType);
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" +
+					SQL_INSERT_MAIL +
+					"' with parameters: " +
+					sender + ", " +
+					recipient + ", " +
+					subject + ", " +
+					"<body>, " +
+					contentType,
+				e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IMailOutboxQueries#claimMail(int, int)
+	 */
+	@Override
+	public List<OutboundMail> claimMail(
+			final int limit,
+			final int leaseSeconds)
+			throws DataAccessException {
+
+		String claimId = UUID.randomUUID().toString();
+
+		try {
+			getJdbcTemplate().update(
+				SQL_UPDATE_CLAIM_MAIL,
+				claimId,
+				leaseSeconds,
+				limit);
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" +
+					SQL_UPDATE_CLAIM_MAIL +
+					"' with parameters: " +
+					claimId + ", " +
+					leaseSeconds + ", " +
+					limit,
+				e);
+		}
+
+		try {
+			return getJdbcTemplate().query(
+				SQL_GET_CLAIMED_MAIL,
+				new Object[] { claimId },
+				new RowMapper<OutboundMail>() {
+					@Override
+					public OutboundMail mapRow(
+							final ResultSet rs,
+							final int rowNum)
+							throws SQLException {
+
+						return new OutboundMail(
+							rs.getLong("id"),
+							rs.getString("sender"),
+							rs.getString("recipient"),
+							rs.getString("subject"),
+							rs.getString("body"),
+							rs.getString("content_type"),
+							rs.getInt("attempts"));
+					}
+				});
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" +
+					SQL_GET_CLAIMED_MAIL +
+					"' with parameter: " +
+					claimId,
+				e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IMailOutboxQueries#deleteMail(long)
+	 */
+	@Override
+	public void deleteMail(final long id) throws DataAccessException {
+		try {
+			getJdbcTemplate().update(SQL_DELETE_MAIL, id);
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" +
+					SQL_DELETE_MAIL +
+					"' with parameter: " +
+					id,
+				e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IMailOutboxQueries#failMail(long, java.lang.Integer, java.lang.String)
+	 */
+	@Override
+	public void failMail(
+			final long id,
+			final Integer retrySeconds,
+			final String error)
+			throws DataAccessException {
+
+		try {
+			getJdbcTemplate().update(
+				SQL_UPDATE_FAIL_MAIL,
+				retrySeconds,
+				error,
+				id);
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" +
+					SQL_UPDATE_FAIL_MAIL +
+					"' with parameters: " +
+					retrySeconds + ", " +
+					error + ", " +
+					id,
+				e);
+		}
+	}
+}
@@ -6,9 +6,11 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +25,7 @@ import org.codehaus.jackson.JsonProcessingException;
 import org.codehaus.jackson.map.MappingJsonFactory;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
 import org.joda.time.format.ISODateTimeFormat;
 import org.ohmage.domain.DataStream;
 import org.ohmage.domain.DataStream.MetaData;
@@ -266,6 +269,7 @@ public class ObserverQueries extends Query implements IObserverQueries {
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
+				ReplicaRoutingDataSource.recordWrite();
 			}
 			catch(TransactionException e) {
 				transactionManager.rollback(status);
@@ -911,7 +915,33 @@ public class ObserverQueries extends Query implements IObserverQueries {
 				"?, " +
 				"?)";
 		
+		// Records the days that now have data for each stream. The day is 
+		// the point's own local date, which is the date of time_adjusted.
+		String daySql =
+			"INSERT IGNORE INTO observer_stream_day (" +
+				"user_id, " +
+				"observer_stream_link_id, " +
+				"day) " +
+			"VALUES (" +
+				"(SELECT id FROM user WHERE username = ?), " +
+				"(" +
+					"SELECT osl.id " +
+					"FROM " +
+						"observer o, " +
+						"observer_stream os, " +
+						"observer_stream_link osl " +
+					"WHERE o.observer_id = ? " +
+					"AND o.version = ? " +
+					"AND os.stream_id = ? " +
+					"AND os.version = ? " +
+					"AND o.id = osl.observer_id " +
+					"AND os.id = osl.observer_stream_id" +
+				"), " +
+				"?)";
+		
 		List<Object[]> args = new ArrayList<Object[]>(data.size());
+		Map<List<Object>, Object[]> dayArgs = 
+			new LinkedHashMap<List<Object>, Object[]>();
 		for(DataStream currData : data) {
 			MetaData metaData = currData.getMetaData();
 			String id = null;
@@ -953,6 +983,19 @@ public class ObserverQueries extends Query implements IObserverQueries {
 					currData.getData().toString()
 				}
 			);
+			
+			if(timestamp != null) {
+				Object[] currDayArgs =
+					new Object[] {
+						username,
+						observer.getId(),
+						observer.getVersion(),
+						currData.getStream().getId(),
+						currData.getStream().getVersion(),
+						timestamp.toLocalDate().toString()
+					};
+				dayArgs.put(Arrays.asList(currDayArgs), currDayArgs);
+			}
 		}
 		
 		// Create the transaction.
@@ -975,9 +1018,23 @@ public class ObserverQueries extends Query implements IObserverQueries {
 					e);
 			}
 			
+			try {
+				getJdbcTemplate()
+					.batchUpdate(
+						daySql, 
+						new ArrayList<Object[]>(dayArgs.values()));
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+					"Error executing SQL '" + daySql +"'.", 
+					e);
+			}
+			
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
+				ReplicaRoutingDataSource.recordWrite();
 			}
 			catch(TransactionException e) {
 				transactionManager.rollback(status);
@@ -1063,6 +1120,7 @@ public class ObserverQueries extends Query implements IObserverQueries {
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
+				ReplicaRoutingDataSource.recordWrite();
 			}
 			catch(TransactionException e) {
 				transactionManager.rollback(status);
@@ -1151,7 +1209,9 @@ public class ObserverQueries extends Query implements IObserverQueries {
 		parameters.add(stream.getId());
 		parameters.add(stream.getVersion());
 		
-		// If a start date is given, add it to the overall query.
+		// If a start date is given, add it to the overall query. The table 
+		// is partitioned by month on time_adjusted, so limiting it directly
+		// restricts the query to the partitions within the dates.
 		if(startDate != null) {
 			builder.append(" AND osd.time_adjusted >= ?");
 			parameters.add(startDate.getMillis());
@@ -1180,7 +1240,7 @@ public class ObserverQueries extends Query implements IObserverQueries {
 		
 		try {
 			return
-				getJdbcTemplate().query(
+				getReadOnlyJdbcTemplate().query(
 					builder.toString(),
 					parameters.toArray(),
 					new RowMapper<DataStream>() {
@@ -1291,6 +1351,121 @@ public class ObserverQueries extends Query implements IObserverQueries {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IObserverQueries#readDates(java.lang.String, java.lang.String, java.lang.Long, java.lang.String, java.lang.Long, org.joda.time.LocalDate, org.joda.time.LocalDate)
+	 */
+	@Override
+	public List<LocalDate> readDates(
+			final String username,
+			final String observerId,
+			final Long observerVersion,
+			final String streamId,
+			final Long streamVersion,
+			final LocalDate startDate,
+			final LocalDate endDate)
+			throws DataAccessException {
+		
+		// Only the index of days is read, never the data itself.
+		StringBuilder builder =
+			new StringBuilder(
+				"SELECT DISTINCT osdy.day " +
+				"FROM observer_stream_day osdy " +
+				"WHERE osdy.user_id = (" +
+					"SELECT id " +
+					"FROM user " +
+					"WHERE username = ?" +
+				") " +
+				"AND osdy.observer_stream_link_id IN (" +
+					"SELECT osl.id " +
+					"FROM " +
+						"observer o, " +
+						"observer_stream os, " +
+						"observer_stream_link osl " +
+					"WHERE o.observer_id = ? " +
+					"AND os.stream_id = ? " +
+					"AND o.id = osl.observer_id " +
+					"AND os.id = osl.observer_stream_id");
+		
+		List<Object> parameters = new LinkedList<Object>();
+		parameters.add(username);
+		parameters.add(observerId);
+		parameters.add(streamId);
+		
+		if(observerVersion != null) {
+			builder.append(" AND o.version = ?");
+			parameters.add(observerVersion);
+		}
+		if(streamVersion != null) {
+			builder.append(" AND os.version = ?");
+			parameters.add(streamVersion);
+		}
+		builder.append(")");
+		
+		if(startDate != null) {
+			builder.append(" AND osdy.day >= ?");
+			parameters.add(startDate.toString());
+		}
+		if(endDate != null) {
+			builder.append(" AND osdy.day <= ?");
+			parameters.add(endDate.toString());
+		}
+		
+		builder.append(" ORDER BY osdy.day");
+		
+		try {
+			return
+				getJdbcTemplate().query(
+					builder.toString(),
+					parameters.toArray(),
+					new RowMapper<LocalDate>() {
+						/**
+						 * Decodes the day.
+						 */
+						@Override
+						public LocalDate mapRow(
+								final ResultSet rs,
+								final int rowNum)
+								throws SQLException {
+							
+							return LocalDate.parse(rs.getString("day"));
+						}
+					});
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + 
+					builder.toString() +
+					"' with parameters: " +
+					parameters,
+				e);
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IObserverQueries#deleteDatesBefore(org.joda.time.LocalDate)
+	 */
+	@Override
+	public void deleteDatesBefore(
+			final LocalDate date)
+			throws DataAccessException {
+		
+		String sql = "DELETE FROM observer_stream_day WHERE day < ?";
+		
+		try {
+			getJdbcTemplate().update(sql, date.toString());
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + 
+					sql +
+					"' with parameter: " +
+					date,
+				e);
+		}
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see org.ohmage.query.IObserverQueries#readInvalidData(org.ohmage.domain.Observer, org.joda.time.DateTime, org.joda.time.DateTime, long, long)
@@ -1342,7 +1517,7 @@ public class ObserverQueries extends Query implements IObserverQueries {
 		
 		try {
 			return
-				getJdbcTemplate()
+				getReadOnlyJdbcTemplate()
 					.query(
 						sqlBuilder.toString(),
 						parameters.toArray(),
@@ -1657,6 +1832,7 @@ public class ObserverQueries extends Query implements IObserverQueries {
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
+				ReplicaRoutingDataSource.recordWrite();
 			}
 			catch(TransactionException e) {
 				transactionManager.rollback(status);
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.ohmage.exception.DataAccessException;
+import org.ohmage.query.IPartitionQueries;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * This class is responsible for reading and changing the partitions of the
+ * tables that are partitioned by time. The partitions are changed with DDL,
+ * which cannot be parameterized, so the names are restricted to letters,
+ * digits, and underscores.
+ */
+public class PartitionQueries extends Query implements IPartitionQueries {
+	// The names that may be used in the DDL.
+	private static final Pattern NAME_PATTERN =
+		Pattern.compile("[A-Za-z0-9_]+");
+
+	// The value of a partition without an upper bound.
+	private static final String MAXVALUE = "MAXVALUE";
+
+	// Retrieves a table's partitions in order.
+	private static final String SQL_GET_PARTITIONS =
+		"SELECT partition_name, partition_description " +
+		"FROM information_schema.partitions " +
+		"WHERE table_schema = DATABASE() " +
+		"AND table_name = ? " +
+		"AND partition_name IS NOT NULL " +
+		"ORDER BY partition_ordinal_position";
+
+	/**
+	 * Creates this object via dependency injection (reflection).
+	 *
+	 * @param dataSource The DataSource to use when querying the database.
+	 */
+	private PartitionQueries(final DataSource dataSource) {
+		super(dataSource);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IPartitionQueries#getPartitions(java.lang.String)
+	 */
+	@Override
+	public Map<String, Long> getPartitions(
+			final String table)
+			throws DataAccessException {
+
+		final Map<String, Long> result = new LinkedHashMap<String, Long>();
+
+		try {
+			getJdbcTemplate().query(
+				SQL_GET_PARTITIONS,
+				new Object[] { table },
+				new RowCallbackHandler() {
+					@Override
+					public void processRow(
+							final ResultSet rs)
+							throws SQLException {
+
+						String description =
+							rs.getString("partition_description");
+
+						Long bound;
+						if(MAXVALUE.equalsIgnoreCase(description)) {
+							bound = null;
+						}
+						else {
+							try {
+								bound = Long.decode(description);
+							}
+							catch(NumberFormatException e) {
+								throw new SQLException(
+									"The partition's bound is not a number: " +
+										description,
+									e);
+							}
+						}
+
+						result.put(rs.getString("partition_name"), bound);
+					}
+				});
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" +
+					SQL_GET_PARTITIONS +
+					"' with parameter: " +
+					table,
+				e);
+		}
+
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IPartitionQueries#addPartitions(java.lang.String, java.lang.String, java.util.Map)
+	 */
+	@Override
+	public void addPartitions(
+			final String table,
+			final String lastPartition,
+			final Map<String, Long> partitions)
+			throws DataAccessException {
+
+		if(partitions.isEmpty()) {
+			return;
+		}
+
+		StringBuilder sqlBuilder =
+			new StringBuilder("ALTER TABLE ")
+				.append(validateName(table))
+				.append(" REORGANIZE PARTITION ")
+				.append(validateName(lastPartition))
+				.append(" INTO (");
+		for(String partition : partitions.keySet()) {
+			sqlBuilder
+				.append("PARTITION ")
+				.append(validateName(partition))
+				.append(" VALUES LESS THAN (")
+				.append(partitions.get(partition).longValue())
+				.append("), ");
+		}
+		sqlBuilder
+			.append("PARTITION ")
+			.append(lastPartition)
+			.append(" VALUES LESS THAN MAXVALUE)");
+
+		String sql = sqlBuilder.toString();
+		try {
+			getJdbcTemplate().execute(sql);
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + sql + "'.",
+				e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IPartitionQueries#dropPartitions(java.lang.String, java.util.Collection)
+	 */
+	@Override
+	public void dropPartitions(
+			final String table,
+			final Collection<String> partitions)
+			throws DataAccessException {
+
+		if(partitions.isEmpty()) {
+			return;
+		}
+
+		StringBuilder sqlBuilder =
+			new StringBuilder("ALTER TABLE ")
+				.append(validateName(table))
+				.append(" DROP PARTITION ");
+		boolean firstPass = true;
+		for(String partition : partitions) {
+			if(firstPass) {
+				firstPass = false;
+			}
+			else {
+				sqlBuilder.append(", ");
+			}
+			sqlBuilder.append(validateName(partition));
+		}
+
+		String sql = sqlBuilder.toString();
+		try {
+			getJdbcTemplate().execute(sql);
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + sql + "'.",
+				e);
+		}
+	}
+
+	/**
+	 * Verifies that a name may be used in the DDL.
+	 *
+	 * @param name The name.
+	 *
+	 * @return The name.
+	 *
+	 * @throws IllegalArgumentException The name contains other characters.
+	 */
+	private static String validateName(final String name) {
+		if((name == null) || (! NAME_PATTERN.matcher(name).matches())) {
+			throw new IllegalArgumentException(
+				"The name is not a valid table or partition name: " + name);
+		}
+
+		return name;
+	}
+}
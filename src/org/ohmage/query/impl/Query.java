@@ -35,6 +35,7 @@ public abstract class Query {
 	
 	private final DataSource dataSource;
 	private final JdbcTemplate jdbcTemplate;
+	private final JdbcTemplate readOnlyJdbcTemplate;
 	
 	/**
 	 * Builds this query object by keeping track of the DataSource that was 
@@ -62,6 +63,8 @@ public abstract class Query {
 		
 		this.dataSource = dataSource;
 		jdbcTemplate = new JdbcTemplate(dataSource);
+		readOnlyJdbcTemplate =
+			new JdbcTemplate(ReplicaRoutingDataSource.readOnly(dataSource));
 		
 		initialized = true;
 	}
@@ -110,4 +113,18 @@ public abstract class Query {
 	protected JdbcTemplate getJdbcTemplate() {
 		return jdbcTemplate;
 	}
+	
+	/**
+	 * Returns the JdbcTemplate that should be used for large reads that may
+	 * be serviced by a read replica. It must not be used for updates or
+	 * within a transaction, and the caller must accept data that is a few
+	 * seconds old unless the current user has just written it.
+	 * 
+	 * @return The JdbcTemplate for read-only queries.
+	 * 
+	 * @see ReplicaRoutingDataSource
+	 */
+	protected JdbcTemplate getReadOnlyJdbcTemplate() {
+		return readOnlyJdbcTemplate;
+	}
 }
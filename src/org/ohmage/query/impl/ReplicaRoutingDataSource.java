@@ -0,0 +1,547 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query.impl;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.apache.log4j.Logger;
+import org.apache.tomcat.jdbc.pool.PoolConfiguration;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.ohmage.cache.AuthorizationCache;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * <p>
+ * Routes read-only queries to read replicas of the primary database and
+ * everything else to the primary.
+ * </p>
+ *
+ * <p>
+ * A query is read-only if it uses the template from
+ * {@link Query#getReadOnlyJdbcTemplate()}. Such a query goes to one of the
+ * replicas unless:
+ * <ul>
+ *   <li>the user bound to the current thread wrote to the database within
+ *     the sticky time, as recorded with {@link #recordWrite()}, so that they
+ *     read their own writes,</li>
+ *   <li>every replica is down, is not replicating, or is further behind the
+ *     primary than the maximum lag, or</li>
+ *   <li>there are no replicas.</li>
+ * </ul>
+ * In each of these cases, the query goes to the primary.
+ * </p>
+ *
+ * <p>
+ * The replicas' pools are built from the primary's pool configuration with
+ * only the URL changed, so the replicas must accept the same credentials.
+ * Those credentials also need the REPLICATION CLIENT privilege so that the
+ * replicas' lag can be read.
+ * </p>
+ */
+public class ReplicaRoutingDataSource
+		extends AbstractDataSource
+		implements DisposableBean {
+
+	private static final Logger LOGGER =
+		Logger.getLogger(ReplicaRoutingDataSource.class);
+
+	/**
+	 * The number of sticky users above which the expired ones are purged.
+	 */
+	private static final int PURGE_THRESHOLD = 10000;
+
+	/**
+	 * The statements that report a replica's status, in the order they are
+	 * tried, and the columns that hold its lag in seconds.
+	 */
+	private static final String[] SQL_REPLICA_STATUS =
+		{ "SHOW SLAVE STATUS", "SHOW REPLICA STATUS" };
+	private static final String[] COLUMNS_LAG =
+		{ "Seconds_Behind_Master", "Seconds_Behind_Source" };
+
+	/**
+	 * Whether the current thread is getting a connection for a read-only
+	 * query.
+	 */
+	private static final ThreadLocal<Boolean> READ_ONLY =
+		new ThreadLocal<Boolean>();
+
+	private static ReplicaRoutingDataSource instance = null;
+
+	/**
+	 * One of the replicas and what was last learned about it.
+	 */
+	private static final class Replica {
+		private final String url;
+		private final org.apache.tomcat.jdbc.pool.DataSource dataSource;
+		private volatile boolean available = false;
+
+		private Replica(
+				final String url,
+				final org.apache.tomcat.jdbc.pool.DataSource dataSource) {
+
+			this.url = url;
+			this.dataSource = dataSource;
+		}
+	}
+
+	private final DataSource primary;
+	private final List<Replica> replicas;
+	private final long stickyTime;
+	private final long maxLag;
+
+	private final AtomicInteger nextReplica = new AtomicInteger(0);
+	private final ConcurrentMap<String, Long> stickyUntil =
+		new ConcurrentHashMap<String, Long>();
+	private final ScheduledExecutorService lagChecker;
+
+	/**
+	 * Creates the data source. This should only be called by Spring.
+	 *
+	 * @param primary The primary database's pool.
+	 *
+	 * @param replicaUrls The comma-separated JDBC URLs of the replicas,
+	 * 					  which may be empty.
+	 *
+	 * @param stickyTime The number of milliseconds after a user writes to
+	 * 					 the database that their read-only queries still go
+	 * 					 to the primary. This should be at least the maximum
+	 * 					 lag.
+	 *
+	 * @param maxLag The number of milliseconds a replica may be behind the
+	 * 				 primary before it is no longer used.
+	 *
+	 * @param lagCheckInterval The number of milliseconds between checks of
+	 * 						   the replicas' lag.
+	 */
+	public ReplicaRoutingDataSource(
+			final org.apache.tomcat.jdbc.pool.DataSource primary,
+			final String replicaUrls,
+			final long stickyTime,
+			final long maxLag,
+			final long lagCheckInterval) {
+
+		if(primary == null) {
+			throw new IllegalArgumentException("The primary is null.");
+		}
+		if(lagCheckInterval <= 0) {
+			throw new IllegalArgumentException(
+				"The lag check interval must be positive.");
+		}
+
+		this.primary = primary;
+		this.stickyTime = stickyTime;
+		this.maxLag = maxLag;
+
+		List<Replica> tReplicas = new ArrayList<Replica>();
+		if(replicaUrls != null) {
+			for(String replicaUrl : replicaUrls.split(",")) {
+				String url = replicaUrl.trim();
+				if(url.length() > 0) {
+					tReplicas.add(
+						new Replica(
+							url,
+							createPool(primary.getPoolProperties(), url)));
+				}
+			}
+		}
+		replicas = Collections.unmodifiableList(tReplicas);
+
+		if(replicas.isEmpty()) {
+			lagChecker = null;
+		}
+		else {
+			lagChecker =
+				Executors.newSingleThreadScheduledExecutor(
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(final Runnable runnable) {
+							Thread thread =
+								new Thread(runnable, "replica-lag-checker");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			lagChecker.scheduleWithFixedDelay(
+				new Runnable() {
+					@Override
+					public void run() {
+						checkReplicas();
+					}
+				},
+				0,
+				lagCheckInterval,
+				TimeUnit.MILLISECONDS);
+		}
+
+		instance = this;
+	}
+
+	/**
+	 * Returns a view of a data source whose connections are for read-only
+	 * queries. Connections are still taken from the given data source, but
+	 * any router beneath it may send them to a replica.
+	 *
+	 * @param dataSource The data source.
+	 *
+	 * @return The read-only view.
+	 */
+	public static DataSource readOnly(final DataSource dataSource) {
+		return new DelegatingDataSource(dataSource) {
+			@Override
+			public Connection getConnection() throws SQLException {
+				Boolean previous = READ_ONLY.get();
+				READ_ONLY.set(Boolean.TRUE);
+				try {
+					return super.getConnection();
+				}
+				finally {
+					READ_ONLY.set(previous);
+				}
+			}
+
+			@Override
+			public Connection getConnection(
+					final String username,
+					final String password)
+					throws SQLException {
+
+				Boolean previous = READ_ONLY.get();
+				READ_ONLY.set(Boolean.TRUE);
+				try {
+					return super.getConnection(username, password);
+				}
+				finally {
+					READ_ONLY.set(previous);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Records that the user bound to the current thread has written to the
+	 * database, so that their read-only queries go to the primary for the
+	 * sticky time. This should be called whenever a user's uploads, or
+	 * changes to them, have been committed.
+	 */
+	public static void recordWrite() {
+		ReplicaRoutingDataSource router = instance;
+		if((router == null) || router.replicas.isEmpty()) {
+			return;
+		}
+
+		String username = AuthorizationCache.getCurrentUsername();
+		if(username == null) {
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		router.stickyUntil.put(username, now + router.stickyTime);
+
+		if(router.stickyUntil.size() > PURGE_THRESHOLD) {
+			Iterator<Map.Entry<String, Long>> entries =
+				router.stickyUntil.entrySet().iterator();
+			while(entries.hasNext()) {
+				if(entries.next().getValue() <= now) {
+					entries.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of replicas that read-only queries may currently be
+	 * sent to.
+	 *
+	 * @return The number of available replicas.
+	 */
+	public int getAvailableReplicaCount() {
+		int result = 0;
+		for(Replica replica : replicas) {
+			if(replica.available) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sql.DataSource#getConnection()
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		Replica replica = chooseReplica();
+		if(replica != null) {
+			try {
+				return replica.dataSource.getConnection();
+			}
+			catch(SQLException e) {
+				LOGGER.warn(
+					"The replica could not be reached, so the primary will " +
+						"be used until it has been checked again: " +
+						replica.url,
+					e);
+				replica.available = false;
+			}
+		}
+
+		return primary.getConnection();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sql.DataSource#getConnection(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public Connection getConnection(
+			final String username,
+			final String password)
+			throws SQLException {
+
+		return primary.getConnection(username, password);
+	}
+
+	/**
+	 * Stops checking the replicas and closes their pools. The primary's pool
+	 * is closed by its own bean.
+	 */
+	@Override
+	public void destroy() {
+		if(lagChecker != null) {
+			lagChecker.shutdownNow();
+		}
+		for(Replica replica : replicas) {
+			replica.dataSource.close();
+		}
+		if(instance == this) {
+			instance = null;
+		}
+	}
+
+	/**
+	 * Chooses the replica for the current connection, rotating through the
+	 * available ones.
+	 *
+	 * @return The replica or null if the connection should go to the
+	 * 		   primary.
+	 */
+	private Replica chooseReplica() {
+		if(replicas.isEmpty() || (! Boolean.TRUE.equals(READ_ONLY.get()))) {
+			return null;
+		}
+
+		String username = AuthorizationCache.getCurrentUsername();
+		if(username != null) {
+			Long until = stickyUntil.get(username);
+			if(until != null) {
+				if(until > System.currentTimeMillis()) {
+					return null;
+				}
+				stickyUntil.remove(username, until);
+			}
+		}
+
+		int size = replicas.size();
+		int start = (nextReplica.getAndIncrement() & Integer.MAX_VALUE) % size;
+		for(int i = 0; i < size; i++) {
+			Replica replica = replicas.get((start + i) % size);
+			if(replica.available) {
+				return replica;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads each replica's lag and marks it as available if it is
+	 * replicating and is not too far behind.
+	 */
+	private void checkReplicas() {
+		for(Replica replica : replicas) {
+			boolean available;
+			try {
+				Long lag = readLag(replica.dataSource);
+				if(lag == null) {
+					available = false;
+					if(replica.available) {
+						LOGGER.warn(
+							"The replica is not replicating, so it will not " +
+								"be used: " +
+								replica.url);
+					}
+				}
+				else {
+					available = (lag <= maxLag);
+					if(replica.available && (! available)) {
+						LOGGER.warn(
+							"The replica is " +
+								lag +
+								" milliseconds behind, so it will not be " +
+								"used: " +
+								replica.url);
+					}
+				}
+			}
+			catch(SQLException e) {
+				available = false;
+				if(replica.available) {
+					LOGGER.warn(
+						"The replica's lag could not be read, so it will " +
+							"not be used: " +
+							replica.url,
+						e);
+				}
+			}
+			catch(RuntimeException e) {
+				available = false;
+				LOGGER.error(
+					"The replica could not be checked: " + replica.url,
+					e);
+			}
+
+			if(available && (! replica.available)) {
+				LOGGER.info("The replica will be used: " + replica.url);
+			}
+			replica.available = available;
+		}
+	}
+
+	/**
+	 * Reads a replica's lag.
+	 *
+	 * @param dataSource The replica's pool.
+	 *
+	 * @return The lag in milliseconds or null if the replica is not
+	 * 		   replicating.
+	 *
+	 * @throws SQLException The replica could not be reached or its status
+	 * 						could not be read.
+	 */
+	private static Long readLag(
+			final DataSource dataSource)
+			throws SQLException {
+
+		Connection connection = dataSource.getConnection();
+		try {
+			Statement statement = connection.createStatement();
+			try {
+				ResultSet resultSet = null;
+				SQLException error = null;
+				for(String sql : SQL_REPLICA_STATUS) {
+					try {
+						resultSet = statement.executeQuery(sql);
+						break;
+					}
+					catch(SQLException e) {
+						error = e;
+					}
+				}
+				if(resultSet == null) {
+					throw error;
+				}
+
+				try {
+					if(! resultSet.next()) {
+						return null;
+					}
+
+					ResultSetMetaData metaData = resultSet.getMetaData();
+					for(int i = 1; i <= metaData.getColumnCount(); i++) {
+						for(String column : COLUMNS_LAG) {
+							if(column.equalsIgnoreCase(
+								metaData.getColumnLabel(i))) {
+
+								long seconds = resultSet.getLong(i);
+								return
+									resultSet.wasNull() ?
+										null :
+										Long.valueOf(seconds * 1000);
+							}
+						}
+					}
+					return null;
+				}
+				finally {
+					resultSet.close();
+				}
+			}
+			finally {
+				statement.close();
+			}
+		}
+		finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Creates a replica's pool from the primary's configuration.
+	 *
+	 * @param configuration The primary's configuration.
+	 *
+	 * @param url The replica's JDBC URL.
+	 *
+	 * @return The replica's pool.
+	 */
+	private static org.apache.tomcat.jdbc.pool.DataSource createPool(
+			final PoolConfiguration configuration,
+			final String url) {
+
+		PoolProperties properties = new PoolProperties();
+		properties.setUrl(url);
+		properties.setDriverClassName(configuration.getDriverClassName());
+		properties.setUsername(configuration.getUsername());
+		properties.setPassword(configuration.getPassword());
+		properties.setDefaultAutoCommit(configuration.getDefaultAutoCommit());
+		properties.setDefaultReadOnly(Boolean.TRUE);
+		properties.setRollbackOnReturn(true);
+		properties.setValidationQuery(configuration.getValidationQuery());
+		properties.setTestOnBorrow(configuration.isTestOnBorrow());
+		properties.setTestWhileIdle(configuration.isTestWhileIdle());
+		properties.setTimeBetweenEvictionRunsMillis(
+			configuration.getTimeBetweenEvictionRunsMillis());
+		properties.setMinEvictableIdleTimeMillis(
+			configuration.getMinEvictableIdleTimeMillis());
+		properties.setInitialSize(configuration.getInitialSize());
+		properties.setMaxActive(configuration.getMaxActive());
+		properties.setMaxIdle(configuration.getMaxIdle());
+		properties.setMinIdle(configuration.getMinIdle());
+		properties.setMaxWait(configuration.getMaxWait());
+
+		return new org.apache.tomcat.jdbc.pool.DataSource(properties);
+	}
+}
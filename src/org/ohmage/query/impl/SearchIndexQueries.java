@@ -0,0 +1,617 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.ohmage.exception.DataAccessException;
+import org.ohmage.query.ISearchIndexQueries;
+import org.ohmage.util.StringUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.SingleColumnRowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * <p>This class is responsible for the trigram index that is used to search
+ * users, classes, campaigns, and documents by partial values.</p>
+ *
+ * <p>Every searchable value is broken into its distinct, case- and
+ * accent-folded, three character substrings. A search for a partial value
+ * then only needs to consider the entities whose values contain every
+ * trigram of the partial value, and the original LIKE comparison is only
+ * applied to those candidates.</p>
+ *
+ * <p>Entities are never indexed as part of the request that changes them.
+ * Instead, they are queued in the same transaction and a periodic task
+ * rebuilds their entries. The queued entities are always included in the
+ * candidates, so a search never misses an entity whose entries are missing
+ * or stale.</p>
+ */
+public final class SearchIndexQueries
+		extends Query
+		implements ISearchIndexQueries {
+
+	/**
+	 * The entities whose values are indexed.
+	 */
+	static enum Entity {
+		USER(
+			"user",
+			"user_search_trigram",
+			"user_id",
+			"username",
+			"SELECT u.id, u.username, u.email_address, " +
+				"up.first_name, up.last_name, up.organization, " +
+				"up.personal_id " +
+			"FROM user u LEFT JOIN user_personal up ON u.id = up.user_id " +
+			"WHERE u.id IN "),
+		CLASS(
+			"class",
+			"class_search_trigram",
+			"class_id",
+			"urn",
+			"SELECT c.id, c.urn, c.name, c.description " +
+			"FROM class c " +
+			"WHERE c.id IN "),
+		CAMPAIGN(
+			"campaign",
+			"campaign_search_trigram",
+			"campaign_id",
+			"urn",
+			"SELECT ca.id, ca.urn, ca.name, ca.description, ca.xml, " +
+				"ca.authored_by " +
+			"FROM campaign ca " +
+			"WHERE ca.id IN "),
+		DOCUMENT(
+			"document",
+			"document_search_trigram",
+			"document_id",
+			"uuid",
+			"SELECT d.id, d.name, d.description " +
+			"FROM document d " +
+			"WHERE d.id IN ");
+
+		private final String type;
+		private final String trigramTable;
+		private final String idColumn;
+		private final String queueSql;
+		private final String valuesSql;
+
+		private Entity(
+				final String type,
+				final String trigramTable,
+				final String idColumn,
+				final String keyColumn,
+				final String valuesSql) {
+
+			this.type = type;
+			this.trigramTable = trigramTable;
+			this.idColumn = idColumn;
+			this.valuesSql = valuesSql;
+
+			queueSql =
+				"INSERT IGNORE INTO search_index_queue(entity_type, entity_id) " +
+				"SELECT '" + type + "', id " +
+				"FROM " + type + " " +
+				"WHERE " + keyColumn + " = ?";
+		}
+
+		/**
+		 * Returns the SQL that queues an entity to be indexed. Its only
+		 * parameter is the entity's unique identifier, e.g. the username.
+		 *
+		 * @return The SQL that queues an entity to be indexed.
+		 */
+		String getQueueSql() {
+			return queueSql;
+		}
+	}
+
+	/**
+	 * The indexed values. The codes are stored in the database and must
+	 * never be changed.
+	 */
+	static enum Field {
+		USERNAME(Entity.USER, 1, "username"),
+		EMAIL_ADDRESS(Entity.USER, 2, "email_address"),
+		FIRST_NAME(Entity.USER, 3, "first_name"),
+		LAST_NAME(Entity.USER, 4, "last_name"),
+		ORGANIZATION(Entity.USER, 5, "organization"),
+		PERSONAL_ID(Entity.USER, 6, "personal_id"),
+		CLASS_ID(Entity.CLASS, 1, "urn"),
+		CLASS_NAME(Entity.CLASS, 2, "name"),
+		CLASS_DESCRIPTION(Entity.CLASS, 3, "description"),
+		CAMPAIGN_ID(Entity.CAMPAIGN, 1, "urn"),
+		CAMPAIGN_NAME(Entity.CAMPAIGN, 2, "name"),
+		CAMPAIGN_DESCRIPTION(Entity.CAMPAIGN, 3, "description"),
+		CAMPAIGN_XML(Entity.CAMPAIGN, 4, "xml"),
+		CAMPAIGN_AUTHORED_BY(Entity.CAMPAIGN, 5, "authored_by"),
+		DOCUMENT_NAME(Entity.DOCUMENT, 1, "name"),
+		DOCUMENT_DESCRIPTION(Entity.DOCUMENT, 2, "description");
+
+		private final Entity entity;
+		private final int code;
+		private final String column;
+
+		private Field(
+				final Entity entity,
+				final int code,
+				final String column) {
+
+			this.entity = entity;
+			this.code = code;
+			this.column = column;
+		}
+	}
+
+	/**
+	 * The maximum number of trigrams of a partial value that are used to find
+	 * the candidates. Any subset of the trigrams finds every match, so very
+	 * long partial values only use a spread of their trigrams.
+	 */
+	static final int MAX_SEARCH_TRIGRAMS = 16;
+
+	/**
+	 * The number of rows inserted per INSERT statement.
+	 */
+	private static final int INSERT_BATCH_SIZE = 500;
+
+	/**
+	 * The combining marks that are removed when the accents are folded.
+	 */
+	private static final Pattern PATTERN_COMBINING_MARKS =
+		Pattern.compile("\\p{M}+");
+
+	// Returns the IDs of the queued entities of some type.
+	private static final String SQL_GET_QUEUED =
+		"SELECT entity_id " +
+		"FROM search_index_queue " +
+		"WHERE entity_type = ? " +
+		"LIMIT ?";
+
+	// Removes entities from the queue. The list of IDs must be appended.
+	private static final String SQL_DELETE_QUEUED =
+		"DELETE FROM search_index_queue " +
+		"WHERE entity_type = ? " +
+		"AND entity_id IN ";
+
+	/**
+	 * Creates this object.
+	 *
+	 * @param dataSource The DataSource to use to query the database.
+	 */
+	private SearchIndexQueries(final DataSource dataSource) {
+		super(dataSource);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.ISearchIndexQueries#indexQueuedEntities(int)
+	 */
+	@Override
+	public int indexQueuedEntities(final int limit)
+			throws DataAccessException {
+
+		int result = 0;
+		for(Entity entity : Entity.values()) {
+			result += indexQueuedEntities(entity, limit);
+		}
+		return result;
+	}
+
+	/**
+	 * Queues an entity to have its entries rebuilt. This should be called in
+	 * the same transaction that creates the entity or changes any of its
+	 * searchable values.
+	 *
+	 * @param jdbcTemplate The template to use, which must be bound to the
+	 * 					   transaction.
+	 *
+	 * @param entity The type of entity.
+	 *
+	 * @param id The entity's unique identifier, e.g. the username.
+	 *
+	 * @throws org.springframework.dao.DataAccessException There was an error.
+	 *
+	 * @see Entity#getQueueSql()
+	 */
+	static void queue(
+			final JdbcTemplate jdbcTemplate,
+			final Entity entity,
+			final String id) {
+
+		jdbcTemplate.update(entity.getQueueSql(), id);
+	}
+
+	/**
+	 * <p>Appends a JOIN to a derived table of the IDs of the entities that
+	 * may match any of the LIKE patterns for the given value. The LIKE
+	 * comparisons must still be applied to the joined entities.</p>
+	 *
+	 * <p>If any of the patterns does not have a literal run of at least three
+	 * characters, every entity may match and nothing is appended.</p>
+	 *
+	 * @param sql The SQL being built, which should end with the entity's
+	 * 			  table.
+	 *
+	 * @param parameters The parameters to which the trigrams are added.
+	 *
+	 * @param field The value that is being searched.
+	 *
+	 * @param entityAlias The alias of the entity's table in the SQL.
+	 *
+	 * @param likePatterns The LIKE patterns, including their wildcards.
+	 *
+	 * @return Whether or not a JOIN was appended.
+	 */
+	static boolean appendCandidateJoin(
+			final StringBuilder sql,
+			final Collection<Object> parameters,
+			final Field field,
+			final String entityAlias,
+			final Collection<String> likePatterns) {
+
+		if((likePatterns == null) || likePatterns.isEmpty()) {
+			return false;
+		}
+
+		List<Set<String>> trigramSets = new ArrayList<Set<String>>();
+		for(String likePattern : likePatterns) {
+			Set<String> trigrams = getRequiredTrigrams(likePattern);
+			if(trigrams.isEmpty()) {
+				return false;
+			}
+			trigramSets.add(trigrams);
+		}
+
+		Entity entity = field.entity;
+		String alias = "st_" + field.name().toLowerCase();
+
+		sql.append(" JOIN (");
+		for(Set<String> trigrams : trigramSets) {
+			sql
+				.append("SELECT ").append(entity.idColumn).append(" AS id ")
+				.append("FROM ").append(entity.trigramTable).append(' ')
+				.append("WHERE field = ").append(field.code).append(' ')
+				.append("AND trigram IN ")
+				.append(StringUtils.generateStatementPList(trigrams.size()))
+				.append(" GROUP BY ").append(entity.idColumn)
+				.append(" HAVING COUNT(*) = ").append(trigrams.size())
+				.append(" UNION ");
+
+			parameters.addAll(trigrams);
+		}
+		sql
+			.append("SELECT entity_id ")
+			.append("FROM search_index_queue ")
+			.append("WHERE entity_type = '").append(entity.type).append("'")
+			.append(") ").append(alias)
+			.append(" ON ").append(alias).append(".id = ")
+			.append(entityAlias).append(".id");
+
+		return true;
+	}
+
+	/**
+	 * Returns the LIKE patterns that match values containing any of the
+	 * tokens.
+	 *
+	 * @param tokens The tokens, which may be null.
+	 *
+	 * @return The LIKE patterns or null if the tokens are null.
+	 */
+	static List<String> getContainsPatterns(final Collection<String> tokens) {
+		if(tokens == null) {
+			return null;
+		}
+
+		List<String> result = new ArrayList<String>(tokens.size());
+		for(String token : tokens) {
+			result.add('%' + token + '%');
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the LIKE pattern that matches values containing the token.
+	 *
+	 * @param token The token, which may be null.
+	 *
+	 * @return The LIKE pattern as the only element of a list or null if the
+	 * 		   token is null.
+	 */
+	static List<String> getContainsPatterns(final String token) {
+		if(token == null) {
+			return null;
+		}
+
+		return getContainsPatterns(Collections.singleton(token));
+	}
+
+	/**
+	 * Returns the distinct trigrams of some text after its case and accents
+	 * have been folded.
+	 *
+	 * @param text The text, which may be null.
+	 *
+	 * @return The trigrams in the order in which they first appear.
+	 */
+	static Set<String> getTrigrams(final String text) {
+		Set<String> result = new LinkedHashSet<String>();
+		if(text == null) {
+			return result;
+		}
+
+		String folded =
+			PATTERN_COMBINING_MARKS
+				.matcher(Normalizer.normalize(text, Normalizer.Form.NFD))
+				.replaceAll("")
+				.toLowerCase(Locale.ENGLISH);
+
+		int[] codePoints = new int[folded.codePointCount(0, folded.length())];
+		for(int i = 0, offset = 0; i < codePoints.length; i++) {
+			codePoints[i] = folded.codePointAt(offset);
+			offset += Character.charCount(codePoints[i]);
+		}
+
+		for(int i = 0; i + 3 <= codePoints.length; i++) {
+			// The database's character set cannot store supplementary
+			// characters.
+			if(Character.isSupplementaryCodePoint(codePoints[i]) ||
+				Character.isSupplementaryCodePoint(codePoints[i + 1]) ||
+				Character.isSupplementaryCodePoint(codePoints[i + 2])) {
+
+				continue;
+			}
+
+			result.add(new String(codePoints, i, 3));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns trigrams that every value matching a LIKE pattern must
+	 * contain. These are taken from the runs of literal characters between
+	 * the wildcards and are limited to {@link #MAX_SEARCH_TRIGRAMS}.
+	 *
+	 * @param likePattern The LIKE pattern where '\' is the escape character.
+	 *
+	 * @return The trigrams, which are empty if the pattern has no literal run
+	 * 		   of at least three characters.
+	 */
+	static Set<String> getRequiredTrigrams(final String likePattern) {
+		Set<String> trigrams = new LinkedHashSet<String>();
+
+		StringBuilder run = new StringBuilder();
+		for(int i = 0; i < likePattern.length(); i++) {
+			char c = likePattern.charAt(i);
+
+			if((c == '\\') && (i + 1 < likePattern.length())) {
+				run.append(likePattern.charAt(++i));
+			}
+			else if((c == '%') || (c == '_')) {
+				trigrams.addAll(getTrigrams(run.toString()));
+				run.setLength(0);
+			}
+			else {
+				run.append(c);
+			}
+		}
+		trigrams.addAll(getTrigrams(run.toString()));
+
+		if(trigrams.size() <= MAX_SEARCH_TRIGRAMS) {
+			return trigrams;
+		}
+
+		// Use a spread of the trigrams.
+		List<String> all = new ArrayList<String>(trigrams);
+		Set<String> result = new LinkedHashSet<String>();
+		for(int i = 0; i < MAX_SEARCH_TRIGRAMS; i++) {
+			result.add(all.get((i * all.size()) / MAX_SEARCH_TRIGRAMS));
+		}
+		return result;
+	}
+
+	/**
+	 * Rebuilds the entries of the queued entities of one type.
+	 *
+	 * @param entity The type of entity.
+	 *
+	 * @param limit The maximum number of entities to index.
+	 *
+	 * @return The number of entities that were indexed.
+	 *
+	 * @throws DataAccessException There was an error.
+	 */
+	private int indexQueuedEntities(final Entity entity, final int limit)
+			throws DataAccessException {
+
+		List<Long> ids;
+		try {
+			ids =
+				getJdbcTemplate().query(
+					SQL_GET_QUEUED,
+					new Object[] { entity.type, limit },
+					new SingleColumnRowMapper<Long>(Long.class));
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + SQL_GET_QUEUED +
+					"' with parameters: " + entity.type + ", " + limit,
+				e);
+		}
+
+		if(ids.isEmpty()) {
+			return 0;
+		}
+		String idList = StringUtils.generateStatementPList(ids.size());
+
+		DefaultTransactionDefinition def = new DefaultTransactionDefinition();
+		def.setName("Indexing the queued entities.");
+
+		try {
+			PlatformTransactionManager transactionManager =
+				new DataSourceTransactionManager(getDataSource());
+			TransactionStatus status = transactionManager.getTransaction(def);
+
+			// Read the values while preventing them from being changed until
+			// the entries have been rebuilt and the entities removed from the
+			// queue. Any change made afterwards queues the entity again.
+			final List<Object> rows = new LinkedList<Object>();
+			String valuesSql =
+				entity.valuesSql + idList + " LOCK IN SHARE MODE";
+			try {
+				getJdbcTemplate().query(
+					valuesSql,
+					ids.toArray(),
+					new RowCallbackHandler() {
+						@Override
+						public void processRow(final ResultSet rs)
+								throws SQLException {
+
+							long id = rs.getLong("id");
+							for(Field field : Field.values()) {
+								if(field.entity != entity) {
+									continue;
+								}
+
+								for(String trigram :
+										getTrigrams(
+											rs.getString(field.column))) {
+
+									rows.add(id);
+									rows.add(field.code);
+									rows.add(trigram);
+								}
+							}
+						}
+					});
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+					"Error executing SQL '" + valuesSql +
+						"' with parameters: " + ids,
+					e);
+			}
+
+			String deleteSql =
+				"DELETE FROM " + entity.trigramTable + " " +
+				"WHERE " + entity.idColumn + " IN " + idList;
+			try {
+				getJdbcTemplate().update(deleteSql, ids.toArray());
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+					"Error executing SQL '" + deleteSql +
+						"' with parameters: " + ids,
+					e);
+			}
+
+			// The trigrams are inserted with multiple rows per statement as
+			// a campaign's XML may have tens of thousands of them. They are
+			// compared case- and accent-insensitively in the database, so
+			// trigrams that only differ in ways that were not folded are
+			// ignored.
+			String insertSql =
+				"INSERT IGNORE INTO " + entity.trigramTable +
+					"(" + entity.idColumn + ", field, trigram) " +
+				"VALUES ";
+			List<Object> batch = new ArrayList<Object>(INSERT_BATCH_SIZE * 3);
+			while(! rows.isEmpty()) {
+				batch.clear();
+				StringBuilder batchSql = new StringBuilder(insertSql);
+				for(int i = 0; (i < INSERT_BATCH_SIZE) && (! rows.isEmpty()); i++) {
+					if(i > 0) {
+						batchSql.append(',');
+					}
+					batchSql.append("(?,?,?)");
+
+					batch.add(rows.remove(0));
+					batch.add(rows.remove(0));
+					batch.add(rows.remove(0));
+				}
+
+				try {
+					getJdbcTemplate().update(
+						batchSql.toString(),
+						batch.toArray());
+				}
+				catch(org.springframework.dao.DataAccessException e) {
+					transactionManager.rollback(status);
+					throw new DataAccessException(
+						"Error executing SQL '" + insertSql +
+							"...' for the entities: " + ids,
+						e);
+				}
+			}
+
+			List<Object> deleteQueuedParameters =
+				new ArrayList<Object>(ids.size() + 1);
+			deleteQueuedParameters.add(entity.type);
+			deleteQueuedParameters.addAll(ids);
+			try {
+				getJdbcTemplate().update(
+					SQL_DELETE_QUEUED + idList,
+					deleteQueuedParameters.toArray());
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+					"Error executing SQL '" + SQL_DELETE_QUEUED + idList +
+						"' with parameters: " + deleteQueuedParameters,
+					e);
+			}
+
+			try {
+				transactionManager.commit(status);
+			}
+			catch(TransactionException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+					"Error while committing the transaction.",
+					e);
+			}
+		}
+		catch(TransactionException e) {
+			throw new DataAccessException(
+				"Error while attempting to rollback the transaction.",
+				e);
+		}
+
+		return ids.size();
+	}
+}
@@ -15,6 +15,7 @@
  ******************************************************************************/
 package org.ohmage.query.impl;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -22,6 +23,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -31,10 +33,12 @@ import java.util.UUID;
 import javax.sql.DataSource;
 
 import org.joda.time.DateTime;
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.joda.time.DateTimeZone;
+import org.ohmage.cache.AuthorizationCache;
+import org.ohmage.domain.AuthorizationContext;
 import org.ohmage.domain.campaign.Campaign;
 import org.ohmage.domain.campaign.Prompt;
+import org.ohmage.domain.campaign.PromptResponseAggregate;
 import org.ohmage.domain.campaign.SurveyResponse;
 import org.ohmage.domain.campaign.SurveyResponse.ColumnKey;
 import org.ohmage.domain.campaign.SurveyResponse.PrivacyState;
@@ -44,7 +48,9 @@ import org.ohmage.exception.DomainException;
 import org.ohmage.query.ISurveyResponseQueries;
 import org.ohmage.util.DateTimeUtils;
 import org.ohmage.util.StringUtils;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -77,13 +83,16 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 	 */
 	private static final String SQL_BASE_FROM =
 		// Include as few tables as possible and use sub-queries when possible.
+		// Every survey response has exactly one of each of these, so inner
+		// joins return the same rows and leave the optimizer free to begin
+		// with the user when the usernames are given.
 		"FROM " +
 			"survey_response AS sr " +
-				"LEFT JOIN user AS u ON u.id = sr.user_id " +
-				"LEFT JOIN campaign AS c ON c.id = sr.campaign_id " +
-				"LEFT JOIN campaign_privacy_state AS cps " +
+				"JOIN user AS u ON u.id = sr.user_id " +
+				"JOIN campaign AS c ON c.id = sr.campaign_id " +
+				"JOIN campaign_privacy_state AS cps " +
 					"ON c.privacy_state_id = cps.id " +
-				"LEFT JOIN survey_response_privacy_state AS srps " +
+				"JOIN survey_response_privacy_state AS srps " +
 					"ON srps.id = sr.privacy_state_id ";
 	
 	/**
@@ -301,13 +310,13 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 	/**
 	 * Order the results first by the number of milliseconds since the epoch at
 	 * which time the survey was taken and then, if there is a collision, by
-	 * UUID. This guarantees that all prompt responses for a given survey 
+	 * ID. This guarantees that all prompt responses for a given survey 
 	 * response will be grouped together.
 	 * 
 	 * @see #SQL_GET_SURVEY_RESPONSES
 	 *
 	private static final String SQL_ORDER_BY =
-		" ORDER BY sr.epoch_millis DESC, sr.uuid";
+		" ORDER BY sr.epoch_millis DESC, sr.id DESC";
 	*/
 	
 	// Updates a survey response's privacy state.
@@ -321,6 +330,38 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 	private static final String SQL_DELETE_SURVEY_RESPONSE =
 		"DELETE FROM survey_response " +
 		"WHERE uuid = ?";
+	
+	// Retrieves a batch of prompt responses whose typed columns have not yet
+	// been populated.
+	private static final String SQL_GET_UNTYPED_PROMPT_RESPONSES =
+		"SELECT id, prompt_type, response " +
+		"FROM prompt_response " +
+		"WHERE response_typed = FALSE " +
+		"ORDER BY id " +
+		"LIMIT ?";
+	
+	// Populates a prompt response's typed columns without changing its audit
+	// timestamp.
+	private static final String SQL_UPDATE_PROMPT_RESPONSE_TYPED =
+		"UPDATE prompt_response " +
+		"SET response_number = ?, " +
+			"response_timestamp = ?, " +
+			"response_key = ?, " +
+			"response_typed = TRUE, " +
+			"audit_timestamp = audit_timestamp " +
+		"WHERE id = ?";
+	
+	/**
+	 * The expression for a survey response's date in the phone's time zone.
+	 * The phone's time zone is a named zone, e.g. "America/Los_Angeles", so
+	 * that the date follows its daylight saving time. A fixed offset would
+	 * put the responses near midnight on the wrong day for half of the year.
+	 * CONVERT_TZ only knows named zones once the MySQL time zone tables have
+	 * been loaded, e.g. with mysql_tzinfo_to_sql; otherwise, it returns NULL
+	 * and every response is counted under a NULL day.
+	 */
+	private static final String SQL_SURVEY_RESPONSE_DAY =
+		"DATE(CONVERT_TZ(FROM_UNIXTIME(sr.epoch_millis / 1000), 'UTC', sr.phone_timezone))";
 
 	/**
 	 * Creates this object.
@@ -445,7 +486,7 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 		final Collection<Integer> totalCount = new ArrayList<Integer>(1);
 		
 		try {
-			result.addAll(getJdbcTemplate().query(
+			result.addAll(getReadOnlyJdbcTemplate().query(
 				sql,
 				parameters.toArray(),
 				new ResultSetExtractor<List<SurveyResponse>>() {
@@ -467,6 +508,14 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 					 * that this is a common and acceptable way to view live
 					 * data.
 					 */
+					// The usernames, clients, campaign IDs, and time zones
+					// repeat across survey responses, so each survey 
+					// response references one shared copy of each.
+					private final Map<String, String> strings =
+							new HashMap<String, String>();
+					private final Map<String, DateTimeZone> timezones =
+							new HashMap<String, DateTimeZone>();
+					
 					@Override
 					public List<SurveyResponse> extractData(ResultSet rs)
 							throws SQLException,
@@ -520,25 +569,21 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 							// First, create the survey response object.
 							SurveyResponse surveyResponse;
 							try {
-								JSONObject locationJson = null;
-								String locationString = rs.getString("location");
-								if(locationString != null) {
-									locationJson = new JSONObject(locationString);
-								}
-								
+								// The launch context and location are kept as
+								// their JSON and only parsed if they are used.
 								surveyResponse =
 									new SurveyResponse(
 											rs.getLong("id"),
 											campaign.getSurveys().get(rs.getString("survey_id")),
 											UUID.fromString(rs.getString("uuid")),
-											rs.getString("username"),
-											rs.getString("urn"),
-											rs.getString("client"),
+											share(rs.getString("username")),
+											share(rs.getString("urn")),
+											share(rs.getString("client")),
 											rs.getLong("epoch_millis"),
-											DateTimeUtils.getDateTimeZoneFromString(rs.getString("phone_timezone")),
-											new JSONObject(rs.getString("launch_context")),
+											getTimezone(rs.getString("phone_timezone")),
+											rs.getString("launch_context"),
 											rs.getString("location_status"),
-											locationJson,
+											rs.getString("location"),
 											SurveyResponse.PrivacyState.getValue(rs.getString("privacy_state")));
 								
 								if(columns != null) {
@@ -549,9 +594,6 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 							catch(IllegalArgumentException e) {
 								throw new SQLException("The TimeZone is unknown.", e);
 							}
-							catch(JSONException e) {
-								throw new SQLException("Error creating a JSONObject.", e);
-							}
 							catch(DomainException e) {
 								throw new SQLException("Error creating the survey response information object.", e);
 							}
@@ -658,6 +700,40 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 						// Finally, return only the survey responses as a list.
 						return result;
 					}
+					
+					/**
+					 * Returns the shared copy of a string.
+					 */
+					private String share(final String value) {
+						if(value == null) {
+							return null;
+						}
+						
+						String shared = strings.get(value);
+						if(shared == null) {
+							strings.put(value, value);
+							shared = value;
+						}
+						return shared;
+					}
+					
+					/**
+					 * Returns the shared time zone for its string 
+					 * representation.
+					 * 
+					 * @throws IllegalArgumentException The time zone is
+					 * 									unknown.
+					 */
+					private DateTimeZone getTimezone(final String value) {
+						DateTimeZone timezone = timezones.get(value);
+						if(timezone == null) {
+							timezone = 
+									DateTimeUtils.getDateTimeZoneFromString(
+										value);
+							timezones.put(value, timezone);
+						}
+						return timezone;
+					}
 				}
 			));
 			
@@ -696,12 +772,16 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 		sqlBuilder.append(
 				StringUtils.generateStatementPList(surveyResponseIds.size()));
 
+		List<String> surveyResponseIdStrings = 
+				new ArrayList<String>(surveyResponseIds.size());
+		for(UUID surveyResponseId : surveyResponseIds) {
+			surveyResponseIdStrings.add(surveyResponseId.toString());
+		}
+		
 		List<Object> parameters = 
 				new ArrayList<Object>(surveyResponseIds.size() + 1);
 		parameters.add(newPrivacyState.toString());
-		for(UUID surveyResponseId : surveyResponseIds) {
-			parameters.add(surveyResponseId.toString());
-		}
+		parameters.addAll(surveyResponseIdStrings);
 		
 		// Create the transaction.
 		DefaultTransactionDefinition def = new DefaultTransactionDefinition();
@@ -713,6 +793,23 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 					new DataSourceTransactionManager(getDataSource());
 			TransactionStatus status = transactionManager.getTransaction(def);
 			
+			// Remove the survey responses from their old privacy state's
+			// statistics.
+			try {
+				CampaignStatsQueries.remove(
+						getJdbcTemplate(), 
+						surveyResponseIdStrings);
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+						"Error executing SQL '" + 
+								CampaignStatsQueries.getRemoveSql() + 
+							"' with parameters: " + 
+								surveyResponseIdStrings, 
+						e);
+			}
+			
 			try {
 				getJdbcTemplate().update(
 						sqlBuilder.toString(), 
@@ -728,9 +825,26 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 						e);
 			}
 			
+			// Add them to their new privacy state's statistics.
+			try {
+				CampaignStatsQueries.add(
+						getJdbcTemplate(), 
+						surveyResponseIdStrings);
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+						"Error executing SQL '" + 
+								CampaignStatsQueries.getAddSql() + 
+							"' with parameters: " + 
+								surveyResponseIdStrings, 
+						e);
+			}
+			
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
+				ReplicaRoutingDataSource.recordWrite();
 			}
 			catch(TransactionException e) {
 				transactionManager.rollback(status);
@@ -759,6 +873,22 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 					new DataSourceTransactionManager(getDataSource());
 			TransactionStatus status = transactionManager.getTransaction(def);
 			
+			// Remove the survey response from its campaign's statistics.
+			try {
+				CampaignStatsQueries.remove(
+						getJdbcTemplate(), 
+						Collections.singletonList(surveyResponseId.toString()));
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+						"Error executing SQL '" + 
+								CampaignStatsQueries.getRemoveSql() + 
+								"' with parameter: " + 
+								surveyResponseId.toString(), 
+						e);
+			}
+			
 			try {
 				getJdbcTemplate().update(
 						SQL_DELETE_SURVEY_RESPONSE, 
@@ -777,6 +907,7 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
+				ReplicaRoutingDataSource.recordWrite();
 			}
 			catch(TransactionException e) {
 				transactionManager.rollback(status);
@@ -788,6 +919,349 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 		}
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.ISurveyResponseQueries#retrievePromptResponseAggregates(org.ohmage.domain.campaign.Campaign, java.lang.String, java.util.Map, java.util.Collection, org.joda.time.DateTime, org.joda.time.DateTime, org.ohmage.domain.campaign.SurveyResponse.PrivacyState, java.util.Collection, java.lang.Double)
+	 */
+	@Override
+	public List<PromptResponseAggregate> retrievePromptResponseAggregates(
+			final Campaign campaign,
+			final String username,
+			final Map<String, Prompt.Type> prompts,
+			final Collection<String> usernames,
+			final DateTime startDate,
+			final DateTime endDate,
+			final SurveyResponse.PrivacyState privacyState,
+			final Collection<PromptResponseAggregate.GroupItem> groupItems,
+			final Double bucketWidth)
+			throws DataAccessException {
+		
+		final boolean byUser = 
+			groupItems.contains(PromptResponseAggregate.GroupItem.USER);
+		final boolean byDay =
+			groupItems.contains(PromptResponseAggregate.GroupItem.DAY);
+		
+		// Build the columns that are selected and grouped on.
+		StringBuilder groupBuilder = new StringBuilder();
+		if(byUser) {
+			groupBuilder.append("u.username AS username, ");
+		}
+		if(byDay) {
+			groupBuilder.append(SQL_SURVEY_RESPONSE_DAY).append(" AS day, ");
+		}
+		String groupColumns = groupBuilder.toString();
+		
+		StringBuilder groupByBuilder = new StringBuilder();
+		if(byUser) {
+			groupByBuilder.append("username");
+		}
+		if(byDay) {
+			if(byUser) {
+				groupByBuilder.append(", ");
+			}
+			groupByBuilder.append("day");
+		}
+		String groupBy = groupByBuilder.toString();
+		
+		// Build the WHERE clause shared by all of the prompts.
+		StringBuilder whereBuilder = new StringBuilder(SQL_BASE_WHERE);
+		List<Object> whereParameters = new LinkedList<Object>();
+		whereParameters.add(campaign.getId());
+		appendAclSqlAndParameters(
+			campaign, 
+			username, 
+			whereBuilder, 
+			whereParameters);
+		
+		if((usernames != null) && (usernames.size() > 0)) {
+			whereBuilder.append(SQL_WHERE_USERNAMES);
+			whereBuilder
+				.append(StringUtils.generateStatementPList(usernames.size()));
+			whereParameters.addAll(usernames);
+		}
+		if(startDate != null) {
+			whereBuilder.append(SQL_WHERE_ON_OR_AFTER);
+			whereParameters.add(startDate.getMillis());
+		}
+		if(endDate != null) {
+			whereBuilder.append(SQL_WHERE_ON_OR_BEFORE);
+			whereParameters.add(endDate.getMillis());
+		}
+		if(privacyState != null) {
+			whereBuilder.append(SQL_WHERE_PRIVACY_STATE);
+			whereParameters.add(privacyState.toString());
+		}
+		whereBuilder.append(" AND pr.prompt_id = ?");
+		String where = whereBuilder.toString();
+		
+		List<PromptResponseAggregate> result = 
+			new LinkedList<PromptResponseAggregate>();
+		for(final String promptId : prompts.keySet()) {
+			Prompt.Type promptType = prompts.get(promptId);
+			
+			// Select the typed column and, if any, the histogram's buckets.
+			String column;
+			String bucket = null;
+			switch(promptType) {
+			case NUMBER:
+			case HOURS_BEFORE_NOW:
+				column = "pr.response_number";
+				break;
+				
+			case TIMESTAMP:
+				column = "pr.response_timestamp";
+				break;
+				
+			case SINGLE_CHOICE:
+				column = "pr.response_key";
+				bucket = column;
+				break;
+				
+			default:
+				throw new DataAccessException(
+					"The prompt's responses cannot be aggregated: " + 
+						promptId);
+			}
+			final boolean widthBuckets = (bucket == null) && (bucketWidth != null);
+			if(widthBuckets) {
+				bucket = "(FLOOR(" + column + " / ?) * ?)";
+			}
+			
+			List<Object> parameters = new ArrayList<Object>(whereParameters);
+			parameters.add(promptId);
+			
+			// Compute the aggregates.
+			String sql =
+				"SELECT " + groupColumns +
+					"COUNT(" + column + ") AS count, " +
+					"MIN(" + column + ") AS min, " +
+					"MAX(" + column + ") AS max, " +
+					"AVG(" + column + ") AS avg " +
+				SQL_BASE_FROM +
+				SQL_FROM_WITH_PROMPT_RESPONSE +
+				where +
+				" AND " + column + " IS NOT NULL" +
+				(((byUser) || (byDay)) ? 
+					" GROUP BY " + groupBy + " ORDER BY " + groupBy : 
+					"");
+			
+			final Map<String, PromptResponseAggregate> aggregates =
+				new LinkedHashMap<String, PromptResponseAggregate>();
+			try {
+				getJdbcTemplate().query(
+					sql, 
+					parameters.toArray(), 
+					new RowCallbackHandler() {
+						/**
+						 * Creates an aggregate for each group.
+						 */
+						@Override
+						public void processRow(
+								final ResultSet rs)
+								throws SQLException {
+							
+							String rowUsername = 
+								(byUser) ? rs.getString("username") : null;
+							String rowDay =
+								(byDay) ? rs.getString("day") : null;
+							
+							try {
+								aggregates.put(
+									rowUsername + "/" + rowDay, 
+									new PromptResponseAggregate(
+										promptId, 
+										rowUsername, 
+										rowDay, 
+										rs.getLong("count"), 
+										getDouble(rs, "min"), 
+										getDouble(rs, "max"), 
+										getDouble(rs, "avg")));
+							}
+							catch(DomainException e) {
+								throw new SQLException(
+									"Error creating the aggregate.", 
+									e);
+							}
+						}
+					});
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				throw new DataAccessException(
+					"Error executing SQL '" + sql + "' with parameters: " +
+						parameters,
+					e);
+			}
+			
+			// Compute the histogram.
+			if(bucket != null) {
+				List<Object> histogramParameters = new LinkedList<Object>();
+				if(widthBuckets) {
+					histogramParameters.add(bucketWidth);
+					histogramParameters.add(bucketWidth);
+				}
+				histogramParameters.addAll(parameters);
+				
+				String histogramSql =
+					"SELECT " + groupColumns +
+						bucket + " AS bucket, " +
+						"COUNT(*) AS count " +
+					SQL_BASE_FROM +
+					SQL_FROM_WITH_PROMPT_RESPONSE +
+					where +
+					" AND " + column + " IS NOT NULL" +
+					" GROUP BY " + 
+						(((byUser) || (byDay)) ? groupBy + ", " : "") + 
+						"bucket";
+				
+				try {
+					getJdbcTemplate().query(
+						histogramSql, 
+						histogramParameters.toArray(), 
+						new RowCallbackHandler() {
+							/**
+							 * Adds each bucket to its group's aggregate.
+							 */
+							@Override
+							public void processRow(
+									final ResultSet rs)
+									throws SQLException {
+								
+								String rowUsername = 
+									(byUser) ? rs.getString("username") : null;
+								String rowDay =
+									(byDay) ? rs.getString("day") : null;
+								
+								PromptResponseAggregate aggregate =
+									aggregates.get(rowUsername + "/" + rowDay);
+								if(aggregate != null) {
+									aggregate.addHistogramBucket(
+										rs.getDouble("bucket"), 
+										rs.getLong("count"));
+								}
+							}
+						});
+				}
+				catch(org.springframework.dao.DataAccessException e) {
+					throw new DataAccessException(
+						"Error executing SQL '" + histogramSql + 
+							"' with parameters: " +
+							histogramParameters,
+						e);
+				}
+			}
+			
+			result.addAll(aggregates.values());
+		}
+		
+		return result;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.ISurveyResponseQueries#populateTypedPromptResponses(int)
+	 */
+	@Override
+	public int populateTypedPromptResponses(
+			final int batchSize)
+			throws DataAccessException {
+		
+		final List<Object[]> batch;
+		try {
+			batch = getJdbcTemplate().query(
+				SQL_GET_UNTYPED_PROMPT_RESPONSES,
+				new Object[] { batchSize },
+				new RowMapper<Object[]>() {
+					/**
+					 * Reads the ID, type, and response.
+					 */
+					@Override
+					public Object[] mapRow(
+							final ResultSet rs,
+							final int rowNum)
+							throws SQLException {
+						
+						return new Object[] {
+								rs.getLong("id"),
+								rs.getString("prompt_type"),
+								rs.getString("response") };
+					}
+				});
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + 
+					SQL_GET_UNTYPED_PROMPT_RESPONSES + 
+					"' with parameter: " + 
+					batchSize,
+				e);
+		}
+		
+		if(batch.size() == 0) {
+			return 0;
+		}
+		
+		try {
+			getJdbcTemplate().batchUpdate(
+				SQL_UPDATE_PROMPT_RESPONSE_TYPED,
+				new BatchPreparedStatementSetter() {
+					/**
+					 * Binds the typed values and the ID.
+					 */
+					@Override
+					public void setValues(
+							final PreparedStatement ps,
+							final int i)
+							throws SQLException {
+						
+						Object[] row = batch.get(i);
+						TypedPromptResponse.bind(
+							ps, 
+							1, 
+							(String) row[1], 
+							(String) row[2]);
+						ps.setLong(4, (Long) row[0]);
+					}
+					
+					/**
+					 * Returns the size of the batch.
+					 */
+					@Override
+					public int getBatchSize() {
+						return batch.size();
+					}
+				});
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+				"Error executing SQL '" + 
+					SQL_UPDATE_PROMPT_RESPONSE_TYPED + 
+					"'.",
+				e);
+		}
+		
+		return batch.size();
+	}
+	
+	/**
+	 * Reads a nullable double from a result set.
+	 * 
+	 * @param rs The result set.
+	 * 
+	 * @param column The column's label.
+	 * 
+	 * @return The value or null if it was NULL.
+	 * 
+	 * @throws SQLException There was an error reading the value.
+	 */
+	private static Double getDouble(
+			final ResultSet rs,
+			final String column)
+			throws SQLException {
+		
+		double value = rs.getDouble(column);
+		return (rs.wasNull()) ? null : value;
+	}
+	
 	/**
 	 * Builds the SQL for the survey response SELECT and generates a parameter
 	 * list that corresponds to that SQL. The parameter list is returned and
@@ -851,79 +1325,8 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 		StringBuilder sqlBuilder = new StringBuilder(SQL_BASE_WHERE);
 		parameters.add(campaign.getId());
 		
-		// Catch any query exceptions.
-		try {
-			// If the requesting user is an admin, don't bother applying the
-			// ACLs.
-			if(!
-				getJdbcTemplate()
-					.queryForObject(
-						"SELECT admin FROM user WHERE username = ?",
-						new Object[] { username },
-						Boolean.class)) {
-				
-				// Get the roles for the user in the campaign.
-				List<Campaign.Role> roles =
-					getJdbcTemplate().query(
-						"SELECT ur.role " +
-							"FROM user u, campaign c, user_role ur, user_role_campaign urc " +
-							"WHERE u.username = ? " +
-							"AND u.id = urc.user_id " +
-							"AND c.urn = ? " +
-							"AND c.id = urc.campaign_id " +
-							"AND urc.user_role_id = ur.id", 
-						new Object[] { username, campaign.getId() }, 
-						new RowMapper<Campaign.Role>() {
-							@Override
-							public Campaign.Role mapRow(
-								final ResultSet rs,
-								final int rowNum)
-								throws SQLException {
-								
-								return
-									Campaign
-										.Role
-										.getValue(rs.getString("role"));
-							}
-						}
-					);
-				
-				// If the user is not a supervisor in the campaign, then we
-				// will add additional ACLs based on their role.
-				if(! roles.contains(Campaign.Role.SUPERVISOR)) {
-					// Users are always allowed to query about themselves.
-					sqlBuilder.append(" AND ((u.username = ?)");
-					parameters.add(username);
-					
-					// If the user is an author or analyst, they may see shared
-					// responses as well.
-					if(
-						roles.contains(Campaign.Role.AUTHOR) ||
-						roles.contains(Campaign.Role.ANALYST)) {
-						
-						// Add the shared survey responses.
-						sqlBuilder
-							.append(" OR ((srps.privacy_state = 'shared')");
-						
-						// However, if the user is only an analyst, the
-						// campaign must also be shared.
-						if(! roles.contains(Campaign.Role.AUTHOR)) {
-							sqlBuilder
-								.append(" AND (cps.privacy_state = 'shared')");
-						}
-						
-						// Finally, close the OR.
-						sqlBuilder.append(')');
-					}
-					
-					// Finally, close the AND.
-					sqlBuilder.append(')');
-				}
-			}
-		}
-		catch(org.springframework.dao.DataAccessException e) {
-			throw new DataAccessException("Error querying about the user.", e);
-		}
+		// Limit the results to those the requesting user may see.
+		appendAclSqlAndParameters(campaign, username, sqlBuilder, parameters);
 		
 		// Check all of the criteria and if any are non-null add their SQL and
 		// append the parameters.
@@ -1091,9 +1494,11 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 		}
 		
 		// Finally, add some ordering to facilitate consistent results in the
-		// paging system.
+		// paging system. Both columns are descending so that the order can 
+		// be read backwards from the campaign and time indexes instead of 
+		// being sorted.
 		if(sortOrder == null) {
-			sqlBuilder.append(" ORDER BY epoch_millis DESC, uuid");
+			sqlBuilder.append(" ORDER BY sr.epoch_millis DESC, sr.id DESC");
 		}
 		else {
 			sqlBuilder.append(" ORDER BY ");
@@ -1108,17 +1513,134 @@ public class SurveyResponseQueries extends Query implements ISurveyResponseQueri
 				
 				sqlBuilder.append(sortParameter.getSqlColumn());
 			}
-			// We must always include the UUID in the order to guarantee that 
+			// We must always include the ID in the order to guarantee that 
 			// all survey responses are grouped together.
 			if(firstPass) {
-				sqlBuilder.append("uuid");
+				sqlBuilder.append("sr.id");
 			}
 			else {
-				sqlBuilder.append(", uuid");
+				sqlBuilder.append(", sr.id");
 			}
 		}
 		
 		return sqlBuilder.toString();
 	}
 	
+	/**
+	 * Appends the ACL criteria for the requesting user to the WHERE clause and
+	 * adds their parameters. Administrators and campaign supervisors may see
+	 * all of the responses in a campaign, so no criteria are added for them.
+	 * 
+	 * @param campaign The campaign to which the survey responses must belong.
+	 * 
+	 * @param username The username of the user that is making this request.
+	 * 
+	 * @param sqlBuilder The WHERE clause being built.
+	 * 
+	 * @param parameters The parameters for the SQL being built.
+	 * 
+	 * @throws DataAccessException There was an error reading the user's 
+	 * 							   privileges.
+	 */
+	private void appendAclSqlAndParameters(
+		final Campaign campaign,
+		final String username,
+		final StringBuilder sqlBuilder,
+		final Collection<Object> parameters)
+		throws DataAccessException {
+		
+		// Catch any query exceptions.
+		try {
+			// Use the requester's snapshot, if there is one, to avoid reading
+			// their privileges again.
+			AuthorizationContext context =
+				AuthorizationCache.getCurrent(username);
+			
+			boolean admin;
+			if(context != null) {
+				admin = context.isAdmin();
+			}
+			else {
+				admin =
+					getJdbcTemplate()
+						.queryForObject(
+							"SELECT admin FROM user WHERE username = ?",
+							new Object[] { username },
+							Boolean.class);
+			}
+			
+			// If the requesting user is an admin, don't bother applying the
+			// ACLs.
+			if(! admin) {
+				
+				// Get the roles for the user in the campaign.
+				List<Campaign.Role> roles;
+				if(context != null) {
+					roles = context.getCampaignRoles(campaign.getId());
+				}
+				else {
+					roles =
+						getJdbcTemplate().query(
+							"SELECT ur.role " +
+								"FROM user u, campaign c, user_role ur, user_role_campaign urc " +
+								"WHERE u.username = ? " +
+								"AND u.id = urc.user_id " +
+								"AND c.urn = ? " +
+								"AND c.id = urc.campaign_id " +
+								"AND urc.user_role_id = ur.id", 
+							new Object[] { username, campaign.getId() }, 
+							new RowMapper<Campaign.Role>() {
+								@Override
+								public Campaign.Role mapRow(
+									final ResultSet rs,
+									final int rowNum)
+									throws SQLException {
+									
+									return
+										Campaign
+											.Role
+											.getValue(rs.getString("role"));
+								}
+							}
+						);
+				}
+				
+				// If the user is not a supervisor in the campaign, then we
+				// will add additional ACLs based on their role.
+				if(! roles.contains(Campaign.Role.SUPERVISOR)) {
+					// Users are always allowed to query about themselves.
+					sqlBuilder.append(" AND ((u.username = ?)");
+					parameters.add(username);
+					
+					// If the user is an author or analyst, they may see shared
+					// responses as well.
+					if(
+						roles.contains(Campaign.Role.AUTHOR) ||
+						roles.contains(Campaign.Role.ANALYST)) {
+						
+						// Add the shared survey responses.
+						sqlBuilder
+							.append(" OR ((srps.privacy_state = 'shared')");
+						
+						// However, if the user is only an analyst, the
+						// campaign must also be shared.
+						if(! roles.contains(Campaign.Role.AUTHOR)) {
+							sqlBuilder
+								.append(" AND (cps.privacy_state = 'shared')");
+						}
+						
+						// Finally, close the OR.
+						sqlBuilder.append(')');
+					}
+					
+					// Finally, close the AND.
+					sqlBuilder.append(')');
+				}
+			}
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException("Error querying about the user.", e);
+		}
+	}
+	
 }
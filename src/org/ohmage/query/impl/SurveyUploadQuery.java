@@ -24,6 +24,7 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -111,8 +112,9 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 	private static final String SQL_INSERT_PROMPT_RESPONSE =
 		"INSERT into prompt_response " +
         "(survey_response_id, repeatable_set_id, repeatable_set_iteration," +
-        "prompt_type, prompt_id, response) " +
-        "VALUES (?,?,?,?,?,?)";
+        "prompt_type, prompt_id, response, " +
+        "response_number, response_timestamp, response_key, response_typed) " +
+        "VALUES (?,?,?,?,?,?,?,?,?,TRUE)";
 		
 	// Inserts an images/media information into the url_based_resource table.
 	private static final String SQL_INSERT_MEDIA = 
@@ -169,6 +171,7 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 		String currentSql = null;
 
 		List<File> fileList = new LinkedList<File>();  // keep track of files created along the process
+		List<String> insertedIdList = new ArrayList<String>(numberOfSurveys);  // the survey responses that were not duplicates
 		
 		// Wrap all of the inserts in a transaction 
 		DefaultTransactionDefinition def = new DefaultTransactionDefinition();
@@ -275,6 +278,8 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 				    	status);
 			    }
 			    
+			    insertedIdList.add(surveyUpload.getSurveyResponseId().toString());
+			    
 			} catch (DataIntegrityViolationException dive) { // a unique index exists only on the survey_response table
 			    if(isDuplicate(dive)) {
 				LOGGER.debug("Found a duplicate survey upload message for user " + username);				
@@ -310,9 +315,25 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 			}
 				
 		    } // for surveyIndex
+		    
+		    // Add the new survey responses to the campaign's statistics.
+		    try {
+			CampaignStatsQueries.add(getJdbcTemplate(), insertedIdList);
+		    } catch (org.springframework.dao.DataAccessException dae) {
+			LOGGER.error("caught DataAccessException", dae);
+			for(File f : fileList) {
+			    f.delete();
+			}
+			rollback(transactionManager, status);
+			throw new DataAccessException(
+				"Error executing SQL '" + CampaignStatsQueries.getAddSql() + 
+				"' with parameters: " + insertedIdList, 
+				dae);
+		    }
 			
 		    // Finally, commit the transaction
 		    transactionManager.commit(status);
+		    ReplicaRoutingDataSource.recordWrite();
 		    LOGGER.info("Completed survey message persistence");
 		} 		
 		catch (TransactionException te) { 	
@@ -464,13 +485,13 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 			    ps.setString(5, promptResponse.getPrompt().getId());
 			    
 			    Object response = promptResponse.getResponse();
+			    String responseString;
 			    if(response instanceof DateTime) {
-				ps.setString(
-					6,
+				responseString =
 					DateTimeUtils
 					.getW3cIso8601DateString(
 						(DateTime) response,
-						true));
+						true);
 			    }
 			    else if((promptResponse instanceof MultiChoiceCustomPromptResponse) && (response instanceof Collection)) {
 				JSONArray json = new JSONArray();
@@ -479,11 +500,18 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 				    json.put(currResponse);
 				}
 				
-				ps.setString(6, json.toString());
+				responseString = json.toString();
 			    }
 			    else {
-				ps.setString(6, response.toString());
+				responseString = response.toString();
 			    }
+			    ps.setString(6, responseString);
+			    
+			    TypedPromptResponse.bind(
+				    ps,
+				    7,
+				    promptResponse.getPrompt().getType().toString(),
+				    responseString);
 			    
 			    return ps;
 			}
@@ -768,6 +796,12 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 			currentSurveyResponse = uploadSurvey;
 			// need this to update the response json in the survey response entries
 			final SurveyResponse existingSurveyResponse = existingResponseMap.get(uploadSurvey.getSurveyResponseId());
+			final List<String> surveyResponseIdList = 
+				Collections.singletonList(uploadSurvey.getSurveyResponseId().toString());
+			
+			// remove the survey from the campaign's statistics as its 
+			// privacy state may change
+			CampaignStatsQueries.remove(getJdbcTemplate(), surveyResponseIdList);
 											
 			// update the survey
 			getJdbcTemplate().update(
@@ -830,6 +864,9 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 				    }
 				}
 				);
+			
+			// add it back with its new privacy state and upload time
+			CampaignStatsQueries.add(getJdbcTemplate(), surveyResponseIdList);
 								
 			final Number surveyResponseDbId = existingSurveyResponse.getSurveyResponseDbId();
 			// if surveyResponseDbId is null, something is wrong
@@ -887,6 +924,7 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 		
 		// Finally, commit the transaction
 		transactionManager.commit(status);
+		ReplicaRoutingDataSource.recordWrite();
 		
 		// Delete old files if the update is done successfully 
 		for (File f : oldFileList) {
@@ -990,7 +1028,12 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 	    }
 	    
 	    final PromptResponse promptResponse = (PromptResponse) uploadPromptResponse;
-	    final String sqlUpdateResponse = "UPDATE prompt_response SET response = ? WHERE survey_response_id = ? AND prompt_id = ?";
+	    final String sqlUpdateResponse =
+		    "UPDATE prompt_response " +
+		    "SET response = ?, " +
+		    "response_number = ?, response_timestamp = ?, response_key = ?, " +
+		    "response_typed = TRUE " +
+		    "WHERE survey_response_id = ? AND prompt_id = ?";
 			
 	    // In case of media prompts, extract the existing UUID to access the url_based_resource	
 	    getJdbcTemplate().update(
@@ -1017,8 +1060,13 @@ public class SurveyUploadQuery extends AbstractUploadQuery implements ISurveyUpl
 			    }
 				
 			    ps.setString(1, responseString);	
-			    ps.setLong(2, surveyResponseDbId.longValue());
-			    ps.setString(3, promptResponse.getPrompt().getId());
+			    TypedPromptResponse.bind(
+				    ps,
+				    2,
+				    promptResponse.getPrompt().getType().toString(),
+				    responseString);
+			    ps.setLong(5, surveyResponseDbId.longValue());
+			    ps.setString(6, promptResponse.getPrompt().getId());
 						
 			    return ps;
 			}
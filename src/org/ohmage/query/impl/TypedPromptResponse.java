@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query.impl;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.ohmage.domain.campaign.Prompt;
+import org.ohmage.util.DateTimeUtils;
+
+/**
+ * Derives the typed columns of a prompt response, response_number,
+ * response_timestamp, and response_key, from its type and its textual
+ * representation. Responses that have no typed value, e.g. text prompts or
+ * skipped prompts, have all three columns set to NULL.
+ */
+final class TypedPromptResponse {
+	/**
+	 * Default constructor. Made private as this is a static utility class.
+	 */
+	private TypedPromptResponse() {}
+
+	/**
+	 * Binds the response_number, response_timestamp, and response_key values
+	 * for a prompt response, in that order, beginning at 'index'.
+	 *
+	 * @param ps The statement to which the values should be bound.
+	 *
+	 * @param index The index of the first parameter.
+	 *
+	 * @param promptType The prompt's type as stored in the database.
+	 *
+	 * @param response The response as stored in the database.
+	 *
+	 * @throws SQLException There was an error binding the parameters.
+	 */
+	public static void bind(
+			final PreparedStatement ps,
+			final int index,
+			final String promptType,
+			final String response)
+			throws SQLException {
+
+		Double number = null;
+		Long timestamp = null;
+		Integer key = null;
+
+		if(response != null) {
+			try {
+				if(Prompt.Type.NUMBER.toString().equals(promptType) ||
+					Prompt.Type.HOURS_BEFORE_NOW.toString().equals(promptType)) {
+
+					number = new BigDecimal(response).doubleValue();
+				}
+				else if(Prompt.Type.TIMESTAMP.toString().equals(promptType)) {
+					timestamp =
+						DateTimeUtils.getDateTimeFromString(response).getMillis();
+				}
+				else if(Prompt.Type.SINGLE_CHOICE.toString().equals(promptType)) {
+					key = Integer.parseInt(response);
+				}
+			}
+			// This is a NoResponse value, e.g. "SKIPPED", which has no typed
+			// value. NumberFormatException is an IllegalArgumentException.
+			catch(IllegalArgumentException e) {
+				number = null;
+				timestamp = null;
+				key = null;
+			}
+		}
+
+		if(number == null) {
+			ps.setNull(index, Types.DOUBLE);
+		}
+		else {
+			ps.setDouble(index, number);
+		}
+
+		if(timestamp == null) {
+			ps.setNull(index + 1, Types.BIGINT);
+		}
+		else {
+			ps.setLong(index + 1, timestamp);
+		}
+
+		if(key == null) {
+			ps.setNull(index + 2, Types.INTEGER);
+		}
+		else {
+			ps.setInt(index + 2, key);
+		}
+	}
+}
@@ -20,7 +20,6 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -32,6 +31,8 @@ import java.util.Set;
 import javax.sql.DataSource;
 
 import org.joda.time.DateTime;
+import org.ohmage.cache.AuthorizationCache;
+import org.ohmage.domain.AuthorizationContext;
 import org.ohmage.domain.campaign.Campaign;
 import org.ohmage.domain.campaign.Campaign.Role;
 import org.ohmage.domain.campaign.CampaignMask;
@@ -42,6 +43,7 @@ import org.ohmage.query.IUserCampaignQueries;
 import org.ohmage.util.StringUtils;
 import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.SingleColumnRowMapper;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
@@ -282,6 +284,11 @@ public final class UserCampaignQueries extends Query implements IUserCampaignQue
 	 * @return Whether or not the user exists in a campaign.
 	 */
 	public boolean userBelongsToCampaign(String username, String campaignId) throws DataAccessException {
+		AuthorizationContext context = AuthorizationCache.getCurrent(username);
+		if(context != null) {
+			return context.belongsToCampaign(campaignId);
+		}
+		
 		try {
 			return getJdbcTemplate().queryForObject(SQL_EXISTS_USER_CAMPAIGN, new Object[] { campaignId, username }, Boolean.class);
 		}
@@ -319,6 +326,11 @@ public final class UserCampaignQueries extends Query implements IUserCampaignQue
 	 * @return A possibly empty List of roles for this user in this campaign.
 	 */
 	public List<Campaign.Role> getUserCampaignRoles(String username, String campaignId) throws DataAccessException {
+		AuthorizationContext context = AuthorizationCache.getCurrent(username);
+		if(context != null) {
+			return new ArrayList<Campaign.Role>(context.getCampaignRoles(campaignId));
+		}
+		
 		try {
 			return getJdbcTemplate().query(
 					SQL_GET_USER_CAMPAIGN_ROLES, 
@@ -337,66 +349,6 @@ public final class UserCampaignQueries extends Query implements IUserCampaignQue
 		}
 	}
 	
-	/**
-	 * Returns a List of roles for this user in a set of campaign.
-	 * 
-	 * @param username The username of the user that whose roles are desired.
-	 * 
-	 * @param campaignId The campaign ID for the campaign that the user's roles
-	 * 					 are being requested.
-	 * 
-	 * @return A possibly empty List of roles for this user in this campaign.
-	 */
-	public Map<String, Collection<Campaign.Role>> getCampaignsAndRolesForUserAndCampaigns(
-			final String username, 
-			final String campaignListSubSelect,
-			final Collection<Object> SubSelectParameters) throws DataAccessException {
-
-		List<Object> parameters = new LinkedList<Object>();
-		
-		StringBuilder sql = new StringBuilder(
-			 	"SELECT c.urn, GROUP_CONCAT(ur.role SEPARATOR ',') roles " + 
-			 	"FROM user u JOIN user_role_campaign urc on (u.id = urc.user_id) " +
-			 	"  JOIN campaign c ON (c.id = urc.campaign_id) " +
-			 	"  JOIN user_role ur on (ur.id = urc.user_role_id) " + 
-		     	"WHERE u.username = ? " +
-		     	"  AND c.id in ");
-		sql.append(	   "(" + campaignListSubSelect + ")");
-		sql.append(" GROUP BY c.id");
-		
-		parameters.add(username);
-		parameters.addAll(SubSelectParameters);
-		
-		final Map<String, Collection<Campaign.Role>> campaignUserRoles = new HashMap<String, Collection<Campaign.Role>>();
-
-		try {			
-			getJdbcTemplate().query(
-					sql.toString(),
-					parameters.toArray(),
-					new RowMapper<Object> () {
-						@Override
-						public Object mapRow(ResultSet rs, int rowNum) throws SQLException {				
-							Collection<Campaign.Role> userRoles = new LinkedList<Campaign.Role>();
-							for (String role : rs.getString("roles").split(",")){
-								userRoles.add(Campaign.Role.getValue(role));
-							}
-							campaignUserRoles.put(rs.getString("urn"), userRoles);
-							return null;
-						}
-					}
-		);
-		
-		return campaignUserRoles;
-		} 
-		catch(org.springframework.dao.DataAccessException e) {
-			throw new DataAccessException(
-					"Error executing SQL '" + sql + 
-					"' with parameters: " + campaignListSubSelect, 
-					e);
-		}
-			
-	}
-	
 	/*
 	 * (non-Javadoc)
 	 * @see org.ohmage.query.IUserCampaignQueries#getCampaignsAndRolesForUser(java.lang.String)
@@ -660,6 +612,78 @@ public final class UserCampaignQueries extends Query implements IUserCampaignQue
 	}
 	
 	
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IUserCampaignQueries#getUsersAndRolesForCampaignIds(java.util.Collection, java.lang.String)
+	 */
+	@Override
+	public Map<String, Map<String, Collection<Role>>> getUsersAndRolesForCampaignIds(
+			final Collection<String> campaignIds,
+			final String username)
+			throws DataAccessException {
+		
+		final Map<String, Map<String, Collection<Campaign.Role>>> campaignUserRoleMap = 
+				new HashMap<String, Map<String, Collection<Campaign.Role>>>();
+		if((campaignIds == null) || campaignIds.isEmpty()) {
+			return campaignUserRoleMap;
+		}
+		
+		List<Object> parameters = new LinkedList<Object>(campaignIds);
+		StringBuilder sql = new StringBuilder(
+			 	"SELECT c.urn, u.username, ur.role " + 
+			 	"FROM campaign c JOIN user_role_campaign urc on (c.id = urc.campaign_id) " +
+			 	"  JOIN user u ON (u.id = urc.user_id) " +
+			 	"  JOIN user_role ur on (ur.id = urc.user_role_id) " + 
+		     	"WHERE c.urn in ");
+		sql.append(StringUtils.generateStatementPList(campaignIds.size()));
+		if(username != null) {
+			sql.append(" AND (u.username = ? OR ur.role = 'author')");
+			parameters.add(username);
+		}
+		
+		try {
+			getJdbcTemplate().query(
+					sql.toString(), 
+					parameters.toArray(), 
+					new RowCallbackHandler() {
+						@Override
+						public void processRow(final ResultSet rs) throws SQLException {
+							String urn = rs.getString("urn");
+							String user = rs.getString("username");
+							
+							Campaign.Role role;
+							try {
+								role = Campaign.Role.getValue(rs.getString("role"));
+							}
+							catch(IllegalArgumentException e) {
+								throw new SQLException("The role is invalid: " + rs.getString("role"), e);
+							}
+							
+							Map<String, Collection<Campaign.Role>> userRoles = campaignUserRoleMap.get(urn);
+							if(userRoles == null) {
+								userRoles = new HashMap<String, Collection<Campaign.Role>>();
+								campaignUserRoleMap.put(urn, userRoles);
+							}
+							
+							Collection<Campaign.Role> roles = userRoles.get(user);
+							if(roles == null) {
+								roles = new HashSet<Campaign.Role>();
+								userRoles.put(user, roles);
+							}
+							roles.add(role);
+						}
+					}
+				);
+			
+			return campaignUserRoleMap;
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException("Error executing SQL '" + sql + 
+					"' with parameters: " + parameters, 
+					e);
+		}
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see org.ohmage.query.IUserCampaignQueries#getAuthorsForCampaign(java.lang.String)
@@ -693,52 +717,6 @@ public final class UserCampaignQueries extends Query implements IUserCampaignQue
 		}
 	}
 	
-	/*
-	 * (non-Javadoc)
-	 * @see org.ohmage.query.IUserCampaignQueries#getAuthorsForCampaigns(java.lang.String)
-	 */
-	public Map<String, Collection<String>> getAuthorsForCampaigns(
-			final String campaignListSubSelect, 
-			final Collection<Object> parameters)
-			throws DataAccessException {
-		
-		StringBuilder sql = new StringBuilder(
-				 	"SELECT c.urn, GROUP_CONCAT(u.username SEPARATOR ',') authors " + 
-				 	"FROM user u JOIN user_role_campaign urc on (u.id = urc.user_id) " +
-				 	"  JOIN campaign c ON (c.id = urc.campaign_id) " +
-				 	"  JOIN user_role ur on (ur.id = urc.user_role_id) " + 
-			     	"WHERE ur.role = 'author' AND c.id in ");
-		sql.append(	   "(" + campaignListSubSelect + ")");
-		sql.append(" GROUP BY c.id");
-		
-		final Map<String, Collection<String>> campaignAuthors = new HashMap<String, Collection<String>>();
-
-		try {			
-			getJdbcTemplate().query(
-						sql.toString(),
-						parameters.toArray(),
-						new RowMapper<Object> () {
-							@Override
-							public Object mapRow(ResultSet rs, int rowNum) throws SQLException {				
-								// List<String> authors = new ArrayList<String>(Arrays.asList(rs.getString("authors").split(",")));
-								Collection<String> authors = Arrays.asList(rs.getString("authors").split(","));
-								campaignAuthors.put(rs.getString("urn"), authors);
-								return null;
-							}
-						}
-			);
-			
-			return campaignAuthors;
-		} 
-		catch(org.springframework.dao.DataAccessException e) {
-			throw new DataAccessException(
-					"Error executing SQL '" + sql + 
-					"' with parameters: " + campaignListSubSelect, 
-					e);
-		}
-	}
-	
-	
 	/**
 	 * Retrieves all of the campaign IDs and their respective names to which a
 	 * user is associated.
@@ -30,6 +30,8 @@ import java.util.Set;
 import javax.sql.DataSource;
 
 import org.apache.log4j.Logger;
+import org.ohmage.cache.AuthorizationCache;
+import org.ohmage.domain.AuthorizationContext;
 import org.ohmage.domain.Clazz;
 import org.ohmage.domain.Clazz.Role;
 import org.ohmage.exception.DataAccessException;
@@ -175,6 +177,11 @@ public final class UserClassQueries extends Query implements IUserClassQueries {
 	 * @return Whether or not the user belongs to the class.
 	 */
 	public boolean userBelongsToClass(String classId, String username) throws DataAccessException {
+		AuthorizationContext context = AuthorizationCache.getCurrent(username);
+		if(context != null) {
+			return context.belongsToClass(classId);
+		}
+		
 		try {
 			return (Boolean) getJdbcTemplate().queryForObject(SQL_EXISTS_USER_CLASS, new Object[] { username, classId }, Boolean.class);
 		}
@@ -261,6 +268,11 @@ public final class UserClassQueries extends Query implements IUserClassQueries {
 	 * 		   the class in which case null is returned.
 	 */
 	public Clazz.Role getUserClassRole(String classId, String username) throws DataAccessException {
+		AuthorizationContext context = AuthorizationCache.getCurrent(username);
+		if(context != null) {
+			return context.getClassRole(classId);
+		}
+		
 		try {
 			return Clazz.Role.getValue(getJdbcTemplate().queryForObject(SQL_GET_USER_ROLE, new Object[] { username, classId }, String.class));
 		}
@@ -577,6 +589,7 @@ public final class UserClassQueries extends Query implements IUserClassQueries {
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
+				AuthorizationCache.invalidateAll();
 			}
 			catch(TransactionException e) {
 				transactionManager.rollback(status);
@@ -21,11 +21,14 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -33,6 +36,7 @@ import javax.sql.DataSource;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.ohmage.domain.Location;
@@ -46,11 +50,14 @@ import org.ohmage.domain.MobilityPoint.Mode;
 import org.ohmage.domain.MobilityPoint.PrivacyState;
 import org.ohmage.domain.MobilityPoint.SensorData.SensorDataColumnKey;
 import org.ohmage.domain.MobilityPoint.SubType;
+import org.ohmage.domain.UploadStats;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.DomainException;
 import org.ohmage.query.IUserMobilityQueries;
+import org.ohmage.util.StringUtils;
 import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.SingleColumnRowMapper;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
@@ -72,7 +79,6 @@ import edu.ucla.cens.mobilityclassifier.MobilityClassifier;
  * @author John Jenkins
  */
 public final class UserMobilityQueries extends AbstractUploadQuery implements IUserMobilityQueries {
-	private static final long MILLIS_PER_DAY = 1000 * 60 * 60 * 24;
 	
 	// Retrieves the ID for all of the Mobility points that belong to a user.
 	private static final String SQL_GET_IDS_FOR_USER = 
@@ -81,8 +87,9 @@ public final class UserMobilityQueries extends AbstractUploadQuery implements IU
 		"WHERE u.username = ? " +
 		"AND u.id = m.user_id";
 	
-	// Retrieves all of the columns necessary to construct a Mobility point
-	// and requires only a username.
+	// Retrieves all of the columns necessary to construct a Mobility point.
+	// This must be followed by the SQL_WHERE_USERNAME clause, and the date
+	// limits may be added to the join before it.
 	private static final String SQL_GET_MOBILITY_DATA =
 		"SELECT m.uuid, u.username, m.client, " +
 			"m.epoch_millis, m.upload_timestamp, " +
@@ -92,7 +99,19 @@ public final class UserMobilityQueries extends AbstractUploadQuery implements IU
 		"FROM user u, mobility_privacy_state mps, " +
 			"mobility m LEFT JOIN mobility_extended me " +
 			"ON m.id = me.mobility_id " +
-		"WHERE u.username = ? " +
+			"AND m.epoch_millis = me.epoch_millis";
+	
+	// Limits the extended data to the same dates as the Mobility points. The
+	// tables are partitioned by month, and these allow the partitions of the
+	// extended data outside of the dates to be skipped.
+	private static final String SQL_JOIN_EXTENDED_ON_OR_AFTER_DATE =
+		" AND me.epoch_millis >= ?";
+	private static final String SQL_JOIN_EXTENDED_ON_OR_BEFORE_DATE =
+		" AND me.epoch_millis <= ?";
+	
+	// Limits the Mobility points to those belonging to a user.
+	private static final String SQL_WHERE_USERNAME =
+		" WHERE u.username = ? " +
 		"AND u.id = m.user_id " +
 		"AND mps.id = m.privacy_state_id";
 	
@@ -121,26 +140,63 @@ public final class UserMobilityQueries extends AbstractUploadQuery implements IU
 	private static final String SQL_WHERE_MODE =
 		" AND m.mode = ?";
 	
+	// Retrieves the time of a user's most recent Mobility point.
+	private static final String SQL_GET_LAST_EPOCH_MILLIS_FOR_USER =
+		"SELECT MAX(m.epoch_millis) " +
+		"FROM user u, mobility m " +
+		"WHERE u.username = ? " +
+		"AND u.id = m.user_id";
+	
+	// Counts a user's Mobility points on or after a date and those of them
+	// with a location. Only the date's range of the (user_id, epoch_millis)
+	// index is read.
+	private static final String SQL_GET_LOCATION_COUNTS_FOR_USER_SINCE =
+		"SELECT COUNT(*) AS total, COUNT(m.location) AS with_location " +
+		"FROM user u, mobility m " +
+		"WHERE u.username = ? " +
+		"AND u.id = m.user_id " +
+		"AND m.epoch_millis >= ?";
+	
+	// Retrieves the time of the most recent Mobility point for each of a list
+	// of users, which must follow this.
+	private static final String SQL_GET_LAST_EPOCH_MILLIS_FOR_USERS =
+		"SELECT u.username, MAX(m.epoch_millis) AS last_epoch_millis " +
+		"FROM user u, mobility m " +
+		"WHERE u.id = m.user_id " +
+		"AND u.username IN ";
+	
+	// Counts the Mobility points on or after a date and those of them with a
+	// location for each of a list of users, which must follow this.
+	private static final String SQL_GET_LOCATION_COUNTS_FOR_USERS_SINCE =
+		"SELECT u.username, " +
+			"COUNT(*) AS total, COUNT(m.location) AS with_location " +
+		"FROM user u, mobility m " +
+		"WHERE u.id = m.user_id " +
+		"AND m.epoch_millis >= ? " +
+		"AND u.username IN ";
+	
+	// Returns one row per user.
+	private static final String SQL_GROUP_BY_USERNAME =
+		" GROUP BY u.username";
+	
 	// Adds an ordering to the results based on their date.
 	private static final String SQL_ORDER_BY_DATE =
 		" ORDER BY epoch_millis";
 	
-	// Retrieves the epoch millisecond values for all of the mobility points 
-	// for a user within the date ranges.
-	private static final String SQL_GET_MIN_MAX_MILLIS_FOR_USER_WITHIN_RANGE_GROUPED_BY_TIME_AND_TIMEZONE =
-		"SELECT time, time_zone " +
-		"FROM observer_stream_data " +
-		"WHERE user_id = (SELECT id FROM user WHERE username = ?) " +
-		"AND observer_stream_link_id IN (" +
-			"SELECT id FROM observer_stream_link WHERE observer_id IN (" +
-				"SELECT id " +
-				"FROM observer " +
-				"WHERE observer_id = 'edu.ucla.cens.Mobility'" +
-			")" +
+	// Retrieves the days within a range on which a user has Mobility points
+	// from the index of days with stream data.
+	private static final String SQL_GET_DATES_FOR_USER_WITHIN_RANGE =
+		"SELECT DISTINCT osdy.day " +
+		"FROM observer_stream_day osdy " +
+		"WHERE osdy.user_id = (SELECT id FROM user WHERE username = ?) " +
+		"AND osdy.observer_stream_link_id IN (" +
+			"SELECT osl.id " +
+			"FROM observer o, observer_stream_link osl " +
+			"WHERE o.observer_id = 'edu.ucla.cens.Mobility' " +
+			"AND o.id = osl.observer_id" +
 		") " +
-		"AND time_adjusted >= ? " +
-		"AND time_adjusted <= ? " +
-		"GROUP BY (time_adjusted DIV " + MILLIS_PER_DAY + ")";
+		"AND osdy.day >= ? " +
+		"AND osdy.day <= ?";
 	
 	// Inserts a mode-only entry into the database.
 	private static final String SQL_INSERT =
@@ -168,9 +224,10 @@ public final class UserMobilityQueries extends AbstractUploadQuery implements IU
 	
 	// Inserts an extended entry into the database.
 	private static final String SQL_INSERT_EXTENDED =
-		"INSERT INTO mobility_extended(mobility_id, sensor_data, features, classifier_version) " +
+		"INSERT INTO mobility_extended(mobility_id, epoch_millis, sensor_data, features, classifier_version) " +
 		"VALUES (" +
 			"?, " +		// mobility_id
+			"?, " +		// epoch_millis
 			"?, " +		// sensor_data
 			"?, " +		// features
 			"?" +		// classifier_version
@@ -310,6 +367,7 @@ public final class UserMobilityQueries extends AbstractUploadQuery implements IU
 						getJdbcTemplate().update(
 								SQL_INSERT_EXTENDED,
 								mobilityPointDatabaseKeyHolder.getKey().longValue(),
+								mobilityPoint.getTime(),
 								sensorData.toString(),
 								(classifierData == null) ? (new JSONObject()).toString() : classifierData.toString(),
 								MobilityClassifier.getVersion());
@@ -321,6 +379,7 @@ public final class UserMobilityQueries extends AbstractUploadQuery implements IU
 										SQL_INSERT_EXTENDED + 
 									"' with parameters: " +
 										mobilityPointDatabaseKeyHolder.getKey().longValue() + ", " +
+										mobilityPoint.getTime() + ", " +
 										sensorData.toString() + ", " +
 										((classifierData == null) ? (new JSONObject()).toString() : classifierData.toString()) + ", " +
 										MobilityClassifier.getVersion(),
@@ -369,6 +428,7 @@ public final class UserMobilityQueries extends AbstractUploadQuery implements IU
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
+				ReplicaRoutingDataSource.recordWrite();
 			}
 			catch(TransactionException e) {
 				transactionManager.rollback(status);
@@ -461,6 +521,17 @@ public final class UserMobilityQueries extends AbstractUploadQuery implements IU
 
 		StringBuilder sqlBuilder = new StringBuilder(SQL_GET_MOBILITY_DATA);
 		List<Object> parameters = new LinkedList<Object>();
+		
+		if(startDate != null) {
+			sqlBuilder.append(SQL_JOIN_EXTENDED_ON_OR_AFTER_DATE);
+			parameters.add(startDate.getMillis());
+		}
+		if(endDate != null) {
+			sqlBuilder.append(SQL_JOIN_EXTENDED_ON_OR_BEFORE_DATE);
+			parameters.add(endDate.getMillis());
+		}
+		
+		sqlBuilder.append(SQL_WHERE_USERNAME);
 		parameters.add(username);
 		
 		if(startDate != null) {
@@ -487,7 +558,7 @@ public final class UserMobilityQueries extends AbstractUploadQuery implements IU
 		sqlBuilder.append(SQL_ORDER_BY_DATE);
 		
 		try {
-			return getJdbcTemplate().query(
+			return getReadOnlyJdbcTemplate().query(
 					sqlBuilder.toString(),
 					parameters.toArray(),
 					new RowMapper<MobilityPoint>() {
@@ -579,7 +650,7 @@ public final class UserMobilityQueries extends AbstractUploadQuery implements IU
 		sqlBuilder.append(SQL_ORDER_BY_DATE);
 		
 		try {
-			return getJdbcTemplate().query(
+			return getReadOnlyJdbcTemplate().query(
 					sqlBuilder.toString(),
 					parameters.toArray(),
 					new RowMapper<MobilityAggregatePoint>() {
@@ -630,17 +701,17 @@ public final class UserMobilityQueries extends AbstractUploadQuery implements IU
 
 		List<Object> parameters = new ArrayList<Object>(3);
 		parameters.add(username);
-		parameters.add(startDate.getMillis());
-		parameters.add(endDate.getMillis());
+		parameters.add(startDate.toLocalDate().toString());
+		parameters.add(endDate.toLocalDate().toString());
 		
 		try {
-			return getJdbcTemplate().query(
-					SQL_GET_MIN_MAX_MILLIS_FOR_USER_WITHIN_RANGE_GROUPED_BY_TIME_AND_TIMEZONE, 
+			return getReadOnlyJdbcTemplate().query(
+					SQL_GET_DATES_FOR_USER_WITHIN_RANGE, 
 					parameters.toArray(),
 					new ResultSetExtractor<Set<DateTime>>() {
 						/**
-						 * Gathers the applicable dates based on their time 
-						 * zone.
+						 * Gathers the days, each of which is already in the
+						 * time zone of the points on it.
 						 */
 						@Override
 						public Set<DateTime> extractData(ResultSet rs)
@@ -650,15 +721,12 @@ public final class UserMobilityQueries extends AbstractUploadQuery implements IU
 							Set<DateTime> result = new HashSet<DateTime>();
 							
 							while(rs.next()) {
-								DateTimeZone timeZone =
-										DateTimeZone.forID(
-											rs.getString("time_zone"));
-								
 								result
 									.add(
-										new DateTime(
-											rs.getLong("time"), 
-											timeZone));
+										LocalDate
+											.parse(rs.getString("day"))
+											.toDateTimeAtStartOfDay(
+												DateTimeZone.UTC));
 							}
 							
 							return result;
@@ -669,7 +737,7 @@ public final class UserMobilityQueries extends AbstractUploadQuery implements IU
 		catch(org.springframework.dao.DataAccessException e) {
 			throw new DataAccessException(
 					"Error executing SQL '" +
-							SQL_GET_MIN_MAX_MILLIS_FOR_USER_WITHIN_RANGE_GROUPED_BY_TIME_AND_TIMEZONE + 
+							SQL_GET_DATES_FOR_USER_WITHIN_RANGE + 
 						"' with parameters: " + 
 							parameters,
 					e);
@@ -688,20 +756,13 @@ public final class UserMobilityQueries extends AbstractUploadQuery implements IU
 	@Override
 	public Date getLastUploadForUser(String username) throws DataAccessException {
 		try {
-			List<Long> timestamps = getJdbcTemplate().query(
-					SQL_GET_MOBILITY_DATA, 
+			Long timestamp = getJdbcTemplate().queryForObject(
+					SQL_GET_LAST_EPOCH_MILLIS_FOR_USER, 
 					new Object[] { username }, 
-					new RowMapper<Long>() {
-						@Override
-						public Long mapRow(ResultSet rs, int rowNum) throws SQLException {
-							return rs.getLong("epoch_millis");
-						}
-					}
-				);
+					Long.class);
 			
-			if(timestamps.size() > 0) {
-				Collections.sort(timestamps);
-				return new Date(timestamps.get(timestamps.size() - 1));
+			if(timestamp != null) {
+				return new Date(timestamp);
 			}
 			else {
 				return null;
@@ -710,7 +771,7 @@ public final class UserMobilityQueries extends AbstractUploadQuery implements IU
 		catch(org.springframework.dao.DataAccessException e) {
 			throw new DataAccessException(
 					"Error while executing '" + 
-							SQL_GET_MOBILITY_DATA + 
+							SQL_GET_LAST_EPOCH_MILLIS_FOR_USER + 
 						"' with parameters: " + 
 							username, 
 					e);
@@ -732,51 +793,131 @@ public final class UserMobilityQueries extends AbstractUploadQuery implements IU
 	public Double getPercentageOfNonNullLocations(String username, int hours) 
 		throws DataAccessException {
 		
+		// Get a time stamp from 'hours' ago.
+		Calendar dayAgo = Calendar.getInstance();
+		dayAgo.add(Calendar.HOUR_OF_DAY, -hours);
+		final long dayAgoMillis = dayAgo.getTimeInMillis();
+		
+		try {
+			return getJdbcTemplate().queryForObject(
+					SQL_GET_LOCATION_COUNTS_FOR_USER_SINCE, 
+					new Object[] { username, dayAgoMillis }, 
+					new RowMapper<Double>() {
+						@Override
+						public Double mapRow(ResultSet rs, int rowNum) throws SQLException {
+							return 
+								new UploadStats(
+										null, 
+										rs.getLong("total"), 
+										rs.getLong("with_location"))
+									.getRecentPercentageWithLocation();
+						}
+					}
+				);
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+					"Error while executing '" + 
+							SQL_GET_LOCATION_COUNTS_FOR_USER_SINCE + 
+						"' with parameters: " + 
+							username + ", " + 
+							dayAgoMillis, 
+					e);
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IUserMobilityQueries#getUploadStatsForUsers(java.util.Collection, long)
+	 */
+	@Override
+	public Map<String, UploadStats> getUploadStatsForUsers(
+			final Collection<String> usernames,
+			final long since)
+			throws DataAccessException {
+		
+		Map<String, UploadStats> result = new HashMap<String, UploadStats>();
+		if(usernames.isEmpty()) {
+			return result;
+		}
+		
+		// The most recent point is found by the (user_id, epoch_millis) index
+		// alone, and the counts only read the recent range of it, so neither
+		// query reads a user's whole history.
+		String lastSql = 
+			SQL_GET_LAST_EPOCH_MILLIS_FOR_USERS + 
+			StringUtils.generateStatementPList(usernames.size()) + 
+			SQL_GROUP_BY_USERNAME;
+		final Map<String, Long> lastUploads = new HashMap<String, Long>();
 		try {
-			// Get a time stamp from 'hours' ago.
-			Calendar dayAgo = Calendar.getInstance();
-			dayAgo.add(Calendar.HOUR_OF_DAY, -hours);
-			final long dayAgoMillis = dayAgo.getTimeInMillis();
-			
-			final List<String> nonNullLocations = new LinkedList<String>();
-			final List<String> allLocations = new LinkedList<String>();
-			
 			getJdbcTemplate().query(
-					SQL_GET_MOBILITY_DATA, 
-					new Object[] { username }, 
-					new RowMapper<Object>() {
+					lastSql, 
+					usernames.toArray(), 
+					new RowCallbackHandler() {
 						@Override
-						public Object mapRow(ResultSet rs, int rowNum) throws SQLException {
-							long currPointMillis = rs.getLong("epoch_millis");
-							
-							if(currPointMillis >= dayAgoMillis) {
-								String location = rs.getString("location");
-								if(location != null) {
-									nonNullLocations.add(location);
-								}
-								allLocations.add(location);
-							}
-							
-							return null;
+						public void processRow(ResultSet rs) throws SQLException {
+							lastUploads.put(
+									rs.getString("username"), 
+									rs.getLong("last_epoch_millis"));
 						}
 					}
 				);
-			
-			if(allLocations.size() == 0) {
-				return null;
-			}
-			else {
-				return new Double(nonNullLocations.size()) / new Double(allLocations.size());
-			}
 		}
 		catch(org.springframework.dao.DataAccessException e) {
 			throw new DataAccessException(
 					"Error while executing '" + 
-							SQL_GET_MOBILITY_DATA + 
+							lastSql + 
 						"' with parameters: " + 
-							username, 
+							usernames, 
+					e);
+		}
+		
+		String countSql = 
+			SQL_GET_LOCATION_COUNTS_FOR_USERS_SINCE + 
+			StringUtils.generateStatementPList(usernames.size()) + 
+			SQL_GROUP_BY_USERNAME;
+		List<Object> parameters = new ArrayList<Object>(usernames.size() + 1);
+		parameters.add(since);
+		parameters.addAll(usernames);
+		final Map<String, long[]> counts = new HashMap<String, long[]>();
+		try {
+			getJdbcTemplate().query(
+					countSql, 
+					parameters.toArray(), 
+					new RowCallbackHandler() {
+						@Override
+						public void processRow(ResultSet rs) throws SQLException {
+							counts.put(
+									rs.getString("username"), 
+									new long[] { 
+										rs.getLong("total"), 
+										rs.getLong("with_location") 
+									});
+						}
+					}
+				);
+		}
+		catch(org.springframework.dao.DataAccessException e) {
+			throw new DataAccessException(
+					"Error while executing '" + 
+							countSql + 
+						"' with parameters: " + 
+							parameters, 
 					e);
 		}
+		
+		for(String username : lastUploads.keySet()) {
+			long[] userCounts = counts.get(username);
+			
+			result.put(
+					username, 
+					new UploadStats(
+							lastUploads.get(username), 
+							(userCounts == null) ? 0 : userCounts[0], 
+							(userCounts == null) ? 0 : userCounts[1]));
+		}
+		
+		return result;
 	}
 
 	/*
@@ -830,6 +971,7 @@ public final class UserMobilityQueries extends AbstractUploadQuery implements IU
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
+				ReplicaRoutingDataSource.recordWrite();
 			}
 			catch(TransactionException e) {
 				transactionManager.rollback(status);
@@ -19,6 +19,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -26,7 +27,9 @@ import java.util.List;
 import javax.sql.DataSource;
 
 import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.cache.AuthorizationCache;
 import org.ohmage.cache.PreferenceCache;
+import org.ohmage.domain.AuthorizationContext;
 import org.ohmage.domain.Clazz;
 import org.ohmage.domain.UserInformation;
 import org.ohmage.domain.UserInformation.UserPersonal;
@@ -145,11 +148,6 @@ public class UserQueries extends Query implements IUserQueries {
 		"SELECT username " +
 		"FROM user";
 	
-	private static final String SQL_GET_USERNAMES_LIKE_USERNAME =
-		"SELECT username " +
-		"FROM user " +
-		"WHERE username LIKE ?";
-	
 	private static final String SQL_GET_USERNAMES_WITH_ADMIN_VALUE =
 		"SELECT username " +
 		"FROM user " +
@@ -170,35 +168,6 @@ public class UserQueries extends Query implements IUserQueries {
 		"FROM user " +
 		"WHERE campaign_creation_privilege = ?";
 	
-	private static final String SQL_GET_USERNAMES_LIKE_FIRST_NAME =
-		"SELECT username " +
-		"FROM user, user_personal " +
-		"WHERE user.id = user_id " +
-		"AND first_name LIKE ?";
-	
-	private static final String SQL_GET_USERNAMES_LIKE_LAST_NAME =
-		"SELECT username " +
-		"FROM user, user_personal " +
-		"WHERE user.id = user_id " +
-		"AND last_name LIKE ?";
-	
-	private static final String SQL_GET_USERNAMES_LIKE_ORGANIZATION =
-		"SELECT username " +
-		"FROM user, user_personal " +
-		"WHERE user.id = user_id " +
-		"AND organization LIKE ?";
-	
-	private static final String SQL_GET_USERNAMES_LIKE_PERSONAL_ID =
-		"SELECT username " +
-		"FROM user, user_personal " +
-		"WHERE user.id = user_id " +
-		"AND personal_id LIKE ?";
-	
-	private static final String SQL_GET_USERNAMES_LIKE_EMAIL_ADDRESS =
-		"SELECT username " +
-		"FROM user " +
-		"WHERE email_address LIKE ?";
-	
 	// Retrieves the personal information about a user.
 	private static final String SQL_GET_USER_PERSONAL =
 		"SELECT up.first_name, up.last_name, up.organization, up.personal_id " +
@@ -363,6 +332,31 @@ public class UserQueries extends Query implements IUserQueries {
 		"SET accepted_timestamp = ? " +
 		"WHERE registration_id = ?";
 	
+	// Deletes a user's stream data. The stream data and Mobility tables are
+	// partitioned, so they cannot have foreign keys that would delete their
+	// rows along with the user.
+	private static final String SQL_DELETE_USER_STREAM_DATA =
+		"DELETE osd " +
+		"FROM user u, observer_stream_data osd " +
+		"WHERE u.username = ? " +
+		"AND u.id = osd.user_id";
+	
+	// Deletes a user's extended Mobility data.
+	private static final String SQL_DELETE_USER_MOBILITY_EXTENDED =
+		"DELETE me " +
+		"FROM user u, mobility m, mobility_extended me " +
+		"WHERE u.username = ? " +
+		"AND u.id = m.user_id " +
+		"AND m.id = me.mobility_id " +
+		"AND m.epoch_millis = me.epoch_millis";
+	
+	// Deletes a user's Mobility data.
+	private static final String SQL_DELETE_USER_MOBILITY =
+		"DELETE m " +
+		"FROM user u, mobility m " +
+		"WHERE u.username = ? " +
+		"AND u.id = m.user_id";
+	
 	// Deletes the user.
 	private static final String SQL_DELETE_USER = 
 		"DELETE FROM user " +
@@ -458,6 +452,23 @@ public class UserQueries extends Query implements IUserQueries {
 						username + ", " + hashedPassword + ", " + initialPassword + ", " + emailAddress + ", " + tAdmin + ", " + tEnabled + ", " + tNewAccount + ", " + tCampaignCreationPrivilege + ", " + tExternalAccount, e);
 			}
 			
+			// Queue the user to be added to the search index.
+			try {
+				SearchIndexQueries.queue(
+					getJdbcTemplate(),
+					SearchIndexQueries.Entity.USER,
+					username);
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+					"Error executing SQL '" +
+						SearchIndexQueries.Entity.USER.getQueueSql() +
+						"' with parameter: " +
+						username,
+					e);
+			}
+			
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
@@ -549,6 +560,23 @@ public class UserQueries extends Query implements IUserQueries {
 						username + ", " + hashedPassword + ", " + initialPassword + ", " + emailAddress + ", " + tAdmin + ", " + tEnabled + ", " + tNewAccount + ", " + tCampaignCreationPrivilege + ", " + tExternalAccount, e);
 			}
 			
+			// Queue the user to be added to the search index.
+			try {
+				SearchIndexQueries.queue(
+					getJdbcTemplate(),
+					SearchIndexQueries.Entity.USER,
+					username);
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+					"Error executing SQL '" +
+						SearchIndexQueries.Entity.USER.getQueueSql() +
+						"' with parameter: " +
+						username,
+					e);
+			}
+			
 			if(personalInfo != null) {
 				try {
 					getJdbcTemplate().update(
@@ -785,6 +813,23 @@ public class UserQueries extends Query implements IUserQueries {
 						e);
 			}
 			
+			// Queue the user to be added to the search index.
+			try {
+				SearchIndexQueries.queue(
+					getJdbcTemplate(),
+					SearchIndexQueries.Entity.USER,
+					username);
+			}
+			catch(org.springframework.dao.DataAccessException e) {
+				transactionManager.rollback(status);
+				throw new DataAccessException(
+					"Error executing SQL '" +
+						SearchIndexQueries.Entity.USER.getQueueSql() +
+						"' with parameter: " +
+						username,
+					e);
+			}
+			
 			// Insert the new user into the class.
 			try {
 				getJdbcTemplate().update(
@@ -1014,6 +1059,11 @@ public class UserQueries extends Query implements IUserQueries {
 	 * 							   query.
 	 */
 	public Boolean userIsAdmin(String username) throws DataAccessException {
+		AuthorizationContext context = AuthorizationCache.getCurrent(username);
+		if(context != null) {
+			return context.isAdmin();
+		}
+		
 		try {
 			return getJdbcTemplate().queryForObject(
 					SQL_EXISTS_USER_IS_ADMIN, 
@@ -1214,21 +1264,10 @@ public class UserQueries extends Query implements IUserQueries {
 	public List<String> getUsernamesFromPartialUsername(String username)
 			throws DataAccessException {
 
-		try {
-			return getJdbcTemplate().query(
-					SQL_GET_USERNAMES_LIKE_USERNAME, 
-					new Object[] { "%" + username + "%" }, 
-					new SingleColumnRowMapper<String>()
-				);
-		}
-		catch(org.springframework.dao.DataAccessException e) {
-			throw new DataAccessException(
-					"Error executing SQL '" +
-						SQL_GET_USERNAMES_LIKE_USERNAME +
-						"' with parameter: " +
-						"%" + username + "%",
-					e);
-		}
+		return getUsernamesFromPartialValue(
+			SearchIndexQueries.Field.USERNAME,
+			"u.username",
+			username);
 	}
 
 	/*
@@ -1339,21 +1378,10 @@ public class UserQueries extends Query implements IUserQueries {
 	public List<String> getUsernamesFromPartialFirstName(String partialFirstName)
 			throws DataAccessException {
 
-		try {
-			return getJdbcTemplate().query(
-					SQL_GET_USERNAMES_LIKE_FIRST_NAME, 
-					new Object[] { "%" + partialFirstName + "%" }, 
-					new SingleColumnRowMapper<String>()
-				);
-		}
-		catch(org.springframework.dao.DataAccessException e) {
-			throw new DataAccessException(
-					"Error executing SQL '" +
-						SQL_GET_USERNAMES_LIKE_FIRST_NAME +
-						"' with parameter: " +
-						"%" + partialFirstName + "%",
-					e);
-		}
+		return getUsernamesFromPartialValue(
+			SearchIndexQueries.Field.FIRST_NAME,
+			"up.first_name",
+			partialFirstName);
 	}
 
 	/*
@@ -1364,21 +1392,10 @@ public class UserQueries extends Query implements IUserQueries {
 	public List<String> getUsernamesFromPartialLastName(String partialLastName)
 			throws DataAccessException {
 
-		try {
-			return getJdbcTemplate().query(
-					SQL_GET_USERNAMES_LIKE_LAST_NAME, 
-					new Object[] { "%" + partialLastName + "%" }, 
-					new SingleColumnRowMapper<String>()
-				);
-		}
-		catch(org.springframework.dao.DataAccessException e) {
-			throw new DataAccessException(
-					"Error executing SQL '" +
-						SQL_GET_USERNAMES_LIKE_LAST_NAME +
-						"' with parameter: " +
-						"%" + partialLastName + "%",
-					e);
-		}
+		return getUsernamesFromPartialValue(
+			SearchIndexQueries.Field.LAST_NAME,
+			"up.last_name",
+			partialLastName);
 	}
 
 	/*
@@ -1389,21 +1406,10 @@ public class UserQueries extends Query implements IUserQueries {
 	public List<String> getUsernamesFromPartialOrganization(
 			String partialOrganization) throws DataAccessException {
 
-		try {
-			return getJdbcTemplate().query(
-					SQL_GET_USERNAMES_LIKE_ORGANIZATION, 
-					new Object[] { "%" + partialOrganization + "%" }, 
-					new SingleColumnRowMapper<String>()
-				);
-		}
-		catch(org.springframework.dao.DataAccessException e) {
-			throw new DataAccessException(
-					"Error executing SQL '" +
-						SQL_GET_USERNAMES_LIKE_ORGANIZATION +
-						"' with parameter: " +
-						"%" + partialOrganization + "%",
-					e);
-		}
+		return getUsernamesFromPartialValue(
+			SearchIndexQueries.Field.ORGANIZATION,
+			"up.organization",
+			partialOrganization);
 	}
 
 	/*
@@ -1414,21 +1420,10 @@ public class UserQueries extends Query implements IUserQueries {
 	public List<String> getUsernamesFromPartialPersonalId(
 			String partialPersonalId) throws DataAccessException {
 
-		try {
-			return getJdbcTemplate().query(
-					SQL_GET_USERNAMES_LIKE_PERSONAL_ID, 
-					new Object[] { "%" + partialPersonalId + "%" }, 
-					new SingleColumnRowMapper<String>()
-				);
-		}
-		catch(org.springframework.dao.DataAccessException e) {
-			throw new DataAccessException(
-					"Error executing SQL '" +
-						SQL_GET_USERNAMES_LIKE_PERSONAL_ID +
-						"' with parameter: " +
-						"%" + partialPersonalId + "%",
-					e);
-		}
+		return getUsernamesFromPartialValue(
+			SearchIndexQueries.Field.PERSONAL_ID,
+			"up.personal_id",
+			partialPersonalId);
 	}
 
 	/*
@@ -1439,19 +1434,61 @@ public class UserQueries extends Query implements IUserQueries {
 	public List<String> getUsernamesFromPartialEmailAddress(
 			String partialEmailAddress) throws DataAccessException {
 
+		return getUsernamesFromPartialValue(
+			SearchIndexQueries.Field.EMAIL_ADDRESS,
+			"u.email_address",
+			partialEmailAddress);
+	}
+
+	/**
+	 * Returns the usernames of the users where some value contains a partial
+	 * value. Only the candidates from the search index are compared.
+	 * 
+	 * @param field The value in the search index.
+	 * 
+	 * @param column The column with the value, where the user table is 'u'
+	 * 				 and the user's personal information is 'up'.
+	 * 
+	 * @param partialValue The partial value.
+	 * 
+	 * @return The usernames.
+	 * 
+	 * @throws DataAccessException There was an error.
+	 */
+	private List<String> getUsernamesFromPartialValue(
+			final SearchIndexQueries.Field field,
+			final String column,
+			final String partialValue)
+			throws DataAccessException {
+		
+		String likePattern = "%" + partialValue + "%";
+		List<Object> parameters = new LinkedList<Object>();
+		
+		StringBuilder sql = new StringBuilder("SELECT u.username FROM user u");
+		SearchIndexQueries.appendCandidateJoin(
+			sql,
+			parameters,
+			field,
+			"u",
+			Collections.singleton(likePattern));
+		sql
+			.append(" LEFT JOIN user_personal up ON u.id = up.user_id")
+			.append(" WHERE ").append(column).append(" LIKE ?");
+		parameters.add(likePattern);
+		
 		try {
 			return getJdbcTemplate().query(
-					SQL_GET_USERNAMES_LIKE_EMAIL_ADDRESS, 
-					new Object[] { "%" + partialEmailAddress + "%" }, 
+					sql.toString(), 
+					parameters.toArray(), 
 					new SingleColumnRowMapper<String>()
 				);
 		}
 		catch(org.springframework.dao.DataAccessException e) {
 			throw new DataAccessException(
 					"Error executing SQL '" +
-						SQL_GET_USERNAMES_LIKE_EMAIL_ADDRESS +
-						"' with parameter: " +
-						"%" + partialEmailAddress + "%",
+						sql +
+						"' with parameters: " +
+						parameters,
 					e);
 		}
 	}
@@ -1609,72 +1646,105 @@ public class UserQueries extends Query implements IUserQueries {
 		throws DataAccessException {
 		
 		// The initial SELECT selects everything.
-		StringBuilder sql = 
-				new StringBuilder(
-						"SELECT u.id " +
-						"FROM user u " +
-							"LEFT JOIN user_personal up ON " +
-								"u.id = up.user_id, " +
-							"user ru " +
-						"WHERE ru.username = ? " +
-						// ACL
-						"AND (" +
-								settingUpUser +
-							" OR " +
-								"(u.id = ru.id)" +
-							" OR " +
-								"(ru.admin = true)" +
-							" OR EXISTS(" +
-								// If the requesting user shares a campaign
-								// with the desired user and is a 
-								// supervisor in that campaign.
-								"SELECT ru.id " +
-								"FROM user_role ur, " +
-									"user_role_campaign urc, " +
-									"user_role_campaign rurc " +
-								// The requesting user is associated with a
-								// campaign.
-								"WHERE ru.id = rurc.user_id " +
-								// The requesting user is a supervisor in
-								// that campaign.
-								"AND ur.id = rurc.user_role_id " +
-								"AND ur.role = '" +
-									Campaign.Role.SUPERVISOR.toString() +
-									"' " +
-								// The queried user is also in a campaign.
-								"AND u.id = urc.user_id " +
-								// And that campaign is the same as the one
-								// in which the requesting user is a 
-								// supervisor.
-								"AND urc.campaign_id = rurc.campaign_id" +
-							")" +
-							" OR EXISTS(" +
-								// If the requesting user shares a class 
-								// with the desired user and is privileged
-								// in that class.
-								"SELECT ru.id " +
-								"FROM user_class_role ucr, " +
-									"user_class uc, " +
-									"user_class ruc " +
-								// The requesting user is associated with a
-								// class.
-								"WHERE ru.id = ruc.user_id " +
-								// The requesting user is privileged in 
-								// that class.
-								"AND ucr.id = ruc.user_class_role_id " +
-								"AND ucr.role = '" +
-									Clazz.Role.PRIVILEGED.toString() +
-									"' " +
-								// The queried user is also in a class.
-								"AND u.id = uc.user_id " +
-								// And that class is the same as the one in
-								// which the requesting user is privileged.
-								"AND uc.class_id = ruc.class_id" +
-							")" +
-						")"
-				);
+		StringBuilder sql = new StringBuilder("SELECT u.id FROM user u");
+		
+		// Limit the users to the candidates from the search index for each of
+		// the partial values. The LIKE comparisons below are still applied to
+		// the candidates.
+		SearchIndexQueries.appendCandidateJoin(
+			sql, parameters, SearchIndexQueries.Field.USERNAME, "u", usernames);
+		SearchIndexQueries.appendCandidateJoin(
+			sql,
+			parameters,
+			SearchIndexQueries.Field.EMAIL_ADDRESS,
+			"u",
+			emailAddresses);
+		SearchIndexQueries.appendCandidateJoin(
+			sql,
+			parameters,
+			SearchIndexQueries.Field.FIRST_NAME,
+			"u",
+			firstNames);
+		SearchIndexQueries.appendCandidateJoin(
+			sql, parameters, SearchIndexQueries.Field.LAST_NAME, "u", lastNames);
+		SearchIndexQueries.appendCandidateJoin(
+			sql,
+			parameters,
+			SearchIndexQueries.Field.ORGANIZATION,
+			"u",
+			organizations);
+		SearchIndexQueries.appendCandidateJoin(
+			sql,
+			parameters,
+			SearchIndexQueries.Field.PERSONAL_ID,
+			"u",
+			personalIds);
 		
-		// The initial parameter list doesn't have any items.
+		sql.append(
+			" " +
+				"LEFT JOIN user_personal up ON " +
+					"u.id = up.user_id, " +
+				"user ru " +
+			"WHERE ru.username = ? " +
+			// ACL
+			"AND (" +
+					settingUpUser +
+				" OR " +
+					"(u.id = ru.id)" +
+				" OR " +
+					"(ru.admin = true)" +
+				" OR EXISTS(" +
+					// If the requesting user shares a campaign
+					// with the desired user and is a 
+					// supervisor in that campaign.
+					"SELECT ru.id " +
+					"FROM user_role ur, " +
+						"user_role_campaign urc, " +
+						"user_role_campaign rurc " +
+					// The requesting user is associated with a
+					// campaign.
+					"WHERE ru.id = rurc.user_id " +
+					// The requesting user is a supervisor in
+					// that campaign.
+					"AND ur.id = rurc.user_role_id " +
+					"AND ur.role = '" +
+						Campaign.Role.SUPERVISOR.toString() +
+						"' " +
+					// The queried user is also in a campaign.
+					"AND u.id = urc.user_id " +
+					// And that campaign is the same as the one
+					// in which the requesting user is a 
+					// supervisor.
+					"AND urc.campaign_id = rurc.campaign_id" +
+				")" +
+				" OR EXISTS(" +
+					// If the requesting user shares a class 
+					// with the desired user and is privileged
+					// in that class.
+					"SELECT ru.id " +
+					"FROM user_class_role ucr, " +
+						"user_class uc, " +
+						"user_class ruc " +
+					// The requesting user is associated with a
+					// class.
+					"WHERE ru.id = ruc.user_id " +
+					// The requesting user is privileged in 
+					// that class.
+					"AND ucr.id = ruc.user_class_role_id " +
+					"AND ucr.role = '" +
+						Clazz.Role.PRIVILEGED.toString() +
+						"' " +
+					// The queried user is also in a class.
+					"AND u.id = uc.user_id " +
+					// And that class is the same as the one in
+					// which the requesting user is privileged.
+					"AND uc.class_id = ruc.class_id" +
+				")" +
+			")"
+			);
+		
+		// The requesting user's username follows the search index's
+		// parameters.
 		parameters.add(requesterUsername);
 		
 		// If the list of usernames is present, add a WHERE clause component
@@ -2326,9 +2396,36 @@ public class UserQueries extends Query implements IUserQueries {
 				}
 			}
 			
+			// If any of the searchable values changed, queue the user to have
+			// their search index entries rebuilt.
+			if((emailAddress != null) ||
+				deletePersonalInfo ||
+				(firstName != null) ||
+				(lastName != null) ||
+				(organization != null) ||
+				(personalId != null)) {
+				
+				try {
+					SearchIndexQueries.queue(
+						getJdbcTemplate(),
+						SearchIndexQueries.Entity.USER,
+						username);
+				}
+				catch(org.springframework.dao.DataAccessException e) {
+					transactionManager.rollback(status);
+					throw new DataAccessException(
+						"Error executing SQL '" +
+							SearchIndexQueries.Entity.USER.getQueueSql() +
+							"' with parameter: " +
+							username,
+						e);
+				}
+			}
+			
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
+				AuthorizationCache.invalidateAll();
 			}
 			catch(TransactionException e) {
 				transactionManager.rollback(status);
@@ -2530,6 +2627,22 @@ public class UserQueries extends Query implements IUserQueries {
 			
 			// Delete the users.
 			for(String username : usernames) {
+				// Delete the data that is not deleted along with the user.
+				for(String sql : new String[] {
+						SQL_DELETE_USER_STREAM_DATA,
+						SQL_DELETE_USER_MOBILITY_EXTENDED,
+						SQL_DELETE_USER_MOBILITY }) {
+					
+					try {
+						getJdbcTemplate().update(sql, username);
+					}
+					catch(org.springframework.dao.DataAccessException e) {
+						transactionManager.rollback(status);
+						throw new DataAccessException("Error executing the following SQL '" + sql + "' with parameters: " + 
+								username, e);
+					}
+				}
+				
 				try {
 					getJdbcTemplate().update(SQL_DELETE_USER, username);
 				}
@@ -2543,6 +2656,7 @@ public class UserQueries extends Query implements IUserQueries {
 			// Commit the transaction.
 			try {
 				transactionManager.commit(status);
+				AuthorizationCache.invalidateAll();
 			}
 			catch(TransactionException e) {
 				transactionManager.rollback(status);
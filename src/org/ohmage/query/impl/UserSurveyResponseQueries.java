@@ -19,18 +19,23 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.sql.DataSource;
 
+import org.ohmage.domain.UploadStats;
 import org.ohmage.domain.campaign.Campaign;
 import org.ohmage.domain.campaign.SurveyResponse;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.query.IUserSurveyResponseQueries;
-import org.springframework.jdbc.core.RowMapper;
+import org.ohmage.util.StringUtils;
+import org.springframework.jdbc.core.RowCallbackHandler;
 
 /**
  * This class contains all of the functionality for creating, reading, 
@@ -48,77 +53,79 @@ public final class UserSurveyResponseQueries extends Query implements IUserSurve
 		"WHERE sr.uuid = ? " +
 		"AND sr.user_id = u.id";
 	
-	// Retrieves all of the survey responses for a user that are visible to a
-	// requesting user.
-	private static final String SQL_GET_SURVEY_RESPONSES_FOR_USER_FOR_REQUESTER = 
-		"SELECT c.urn, sr.client, sr.epoch_millis, sr.phone_timezone, sr.upload_timestamp, " +
-			"sr.survey_id, pr.prompt_id, pr.prompt_type, pr.repeatable_set_id, pr.repeatable_set_iteration, pr.response, " +
-			"sr.launch_context, sr.location_status, sr.location, srps.privacy_state, " +
-			"pr.audit_timestamp as prompt_audit_timestamp, sr.audit_timestamp as survey_audit_timestamp " +
-		"FROM user u, user ru, user_role ur, user_role_campaign urc, " +
-			"campaign c, campaign_running_state crs, campaign_privacy_state cps, " +
-			"survey_response sr, survey_response_privacy_state srps, " +
-			"prompt_response pr " +
-		// Get the user and their survey responses.
-		"WHERE u.username = ? " +
-		"AND u.id = sr.user_id " +
-		// Align the campaign.
-		"AND c.id = sr.campaign_id " +
-		// Align the survey response's privacy state.
-		"AND srps.id = sr.privacy_state_id " +
-		// Align the prompt response to the survey response.
-		"AND sr.id = pr.survey_response_id " +
+	// Aggregates the survey responses of some users that are visible to a
+	// requesting user. The visibility is checked per campaign with EXISTS so
+	// that each survey response is counted once, and the prompt responses
+	// are never read. This must be followed by the list of usernames and may
+	// then be followed by SQL_AND_CAMPAIGN before SQL_GROUP_BY_USERNAME.
+	private static final String SQL_GET_UPLOAD_STATS_FOR_REQUESTER =
+		"SELECT u.username, " +
+			"MAX(sr.epoch_millis) AS last_epoch_millis, " +
+			"COUNT(CASE WHEN sr.upload_timestamp >= ? THEN 1 END) " +
+				"AS recent_count, " +
+			"COUNT(CASE WHEN sr.upload_timestamp >= ? " +
+				"AND sr.location IS NOT NULL THEN 1 END) " +
+				"AS recent_count_with_location " +
+		"FROM user ru, user u " +
+			"JOIN survey_response sr ON sr.user_id = u.id " +
+			"JOIN campaign c ON c.id = sr.campaign_id " +
+			"JOIN survey_response_privacy_state srps " +
+				"ON srps.id = sr.privacy_state_id " +
 		// Get the requester.
-		"AND ru.username = ? " +
+		"WHERE ru.username = ? " +
 		"AND (" +
-			"(" +
-				// The requesting user is a supervisor.
-				"ru.id = urc.user_id " +
-				"AND c.id = urc.campaign_id " +
-				"AND ur.id = urc.user_role_id " +
-				"AND ur.role = '" + Campaign.Role.SUPERVISOR + "'" +
-			")" +
-			" OR " +
-			"(" +
-				// The requesting user is an analyst, the campaign's privacy
-				// state is shared, and the response's privacy state is not
-				// "invisible".
-				"ru.id = urc.user_id " +
-				"AND c.id = urc.campaign_id " +
-				"AND ur.id = urc.user_role_id " +
-				"AND ur.role = '" + Campaign.Role.ANALYST + "' " +
-				// Get the campaign's privacy state.
-				"AND c.privacy_state_id = cps.id " +
-				"AND cps.privacy_state = '" + Campaign.PrivacyState.SHARED + "' " +
-				// Ensure the survey response is not "invisible".
-				"AND srps.privacy_state != '" + SurveyResponse.PrivacyState.INVISIBLE + "'" +
-			")" +
-			" OR " +
-			"(" +
-				// The requester is an author and the response's privacy state
-				// is shared.
-				"ru.id = urc.user_id " +
-				"AND c.id = urc.campaign_id " +
-				"AND ur.id = urc.user_role_id " +
-				"AND ur.role = '" + Campaign.Role.AUTHOR + "' " +
-				// Get the survey response's privacy state.
-				"AND srps.id = sr.privacy_state_id " +
-				"AND srps.privacy_state = '" + SurveyResponse.PrivacyState.SHARED + "'" +
-			")" +
-			" OR " +
-			"(" +
+			"EXISTS (" +
+				"SELECT urc.user_id " +
+				"FROM user_role_campaign urc " +
+					"JOIN user_role ur ON ur.id = urc.user_role_id " +
+				"WHERE urc.user_id = ru.id " +
+				"AND urc.campaign_id = c.id " +
+				"AND (" +
+					// The requesting user is a supervisor.
+					"ur.role = '" + Campaign.Role.SUPERVISOR + "' " +
+					"OR (" +
+						// The requesting user is an analyst, the campaign's
+						// privacy state is shared, and the response's
+						// privacy state is not "invisible".
+						"ur.role = '" + Campaign.Role.ANALYST + "' " +
+						"AND srps.privacy_state != '" + SurveyResponse.PrivacyState.INVISIBLE + "' " +
+						"AND c.privacy_state_id = (" +
+							"SELECT cps.id " +
+							"FROM campaign_privacy_state cps " +
+							"WHERE cps.privacy_state = '" + Campaign.PrivacyState.SHARED + "'" +
+						")" +
+					") " +
+					"OR (" +
+						// The requester is an author and the response's
+						// privacy state is shared.
+						"ur.role = '" + Campaign.Role.AUTHOR + "' " +
+						"AND srps.privacy_state = '" + SurveyResponse.PrivacyState.SHARED + "'" +
+					")" +
+				")" +
+			") " +
+			"OR (" +
 				// The requesting user is the same as the user, the campaign is
 				// running, and the response's privacy state is not 
 				// "invisible".
 				// TODO: This may need to be updated with the new ACLs.
 				"ru.id = u.id " +
-				// Get the campaign's running state.
-				"AND c.running_state_id = crs.id " +
-				"AND crs.id = '" + Campaign.RunningState.RUNNING + "' " +
-				// Ensure the survey response is not "invisible".
-				"AND srps.privacy_state != '" + SurveyResponse.PrivacyState.INVISIBLE + "'" +
+				"AND srps.privacy_state != '" + SurveyResponse.PrivacyState.INVISIBLE + "' " +
+				"AND c.running_state_id = (" +
+					"SELECT crs.id " +
+					"FROM campaign_running_state crs " +
+					"WHERE crs.running_state = '" + Campaign.RunningState.RUNNING + "'" +
+				")" +
 			")" +
-		")";
+		") " +
+		"AND u.username IN ";
+	
+	// Limits the aggregates to one campaign.
+	private static final String SQL_AND_CAMPAIGN =
+		" AND c.urn = ?";
+	
+	// Returns one row of aggregates per user.
+	private static final String SQL_GROUP_BY_USERNAME =
+		" GROUP BY u.username";
 	
 	/**
 	 * Creates this object.
@@ -172,30 +179,15 @@ public final class UserSurveyResponseQueries extends Query implements IUserSurve
 	 * 		   not yet uploaded any surveys.
 	 */
 	public Long getLastUploadForUser(String requestersUsername, String usersUsername) throws DataAccessException {
-		try {
-			List<Long> epochMillis = getJdbcTemplate().query(
-					SQL_GET_SURVEY_RESPONSES_FOR_USER_FOR_REQUESTER,
-					new Object[] { usersUsername, requestersUsername },
-					new RowMapper<Long> () {
-						@Override
-						public Long mapRow(ResultSet rs, int rowNum) throws SQLException {
-							return rs.getLong("epoch_millis");
-						}
-					}
-				);
-			
-			if(epochMillis.size() == 0) {
-				return null;
-			}
-			else {
-				Collections.sort(epochMillis);
-				return epochMillis.get(epochMillis.size() - 1);
-			}
-		}
-		catch(org.springframework.dao.DataAccessException e) {
-			throw new DataAccessException("Error executing SQL '" + SQL_GET_SURVEY_RESPONSES_FOR_USER_FOR_REQUESTER + "' with parameters: " +
-					usersUsername + ", " + requestersUsername, e);
-		}
+		UploadStats stats =
+			getUploadStatsForUsers(
+					requestersUsername, 
+					null, 
+					Collections.singleton(usersUsername), 
+					System.currentTimeMillis())
+				.get(usersUsername);
+		
+		return (stats == null) ? null : stats.getLastUpload();
 	}
 	
 	/**
@@ -217,55 +209,81 @@ public final class UserSurveyResponseQueries extends Query implements IUserSurve
 	public Double getPercentageOfNonNullSurveyLocations(String requestersUsername, String usersUsername, int hours)
 		throws DataAccessException {
 		
-		long nonNullLocationsCount = 0;
-		long totalLocationsCount = 0;
+		// Get a time stamp from 'hours' ago.
+		Calendar hoursAgo = Calendar.getInstance();
+		hoursAgo.add(Calendar.HOUR_OF_DAY, -hours);
+		
+		UploadStats stats =
+			getUploadStatsForUsers(
+					requestersUsername, 
+					null, 
+					Collections.singleton(usersUsername), 
+					hoursAgo.getTimeInMillis())
+				.get(usersUsername);
+		
+		return (stats == null) ? null : stats.getRecentPercentageWithLocation();
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.ohmage.query.IUserSurveyResponseQueries#getUploadStatsForUsers(java.lang.String, java.lang.String, java.util.Collection, long)
+	 */
+	@Override
+	public Map<String, UploadStats> getUploadStatsForUsers(
+			final String requestersUsername,
+			final String campaignId,
+			final Collection<String> usernames,
+			final long since)
+			throws DataAccessException {
+		
+		final Map<String, UploadStats> result = 
+			new HashMap<String, UploadStats>();
+		if(usernames.isEmpty()) {
+			return result;
+		}
+		
+		Timestamp sinceTimestamp = new Timestamp(since);
+		
+		StringBuilder sqlBuilder = 
+			new StringBuilder(SQL_GET_UPLOAD_STATS_FOR_REQUESTER);
+		List<Object> parameters = new LinkedList<Object>();
+		parameters.add(sinceTimestamp);
+		parameters.add(sinceTimestamp);
+		parameters.add(requestersUsername);
+		
+		sqlBuilder.append(StringUtils.generateStatementPList(usernames.size()));
+		parameters.addAll(usernames);
+		
+		if(campaignId != null) {
+			sqlBuilder.append(SQL_AND_CAMPAIGN);
+			parameters.add(campaignId);
+		}
+		
+		sqlBuilder.append(SQL_GROUP_BY_USERNAME);
 		
 		try {
-			// Get a time stamp from 24 hours ago.
-			Calendar dayAgo = Calendar.getInstance();
-			dayAgo.add(Calendar.HOUR_OF_DAY, -hours);
-			final Timestamp dayAgoTimestamp = new Timestamp(dayAgo.getTimeInMillis());
-			
-			final List<String> nonNullLocations = new LinkedList<String>();
-			final List<String> allLocations = new LinkedList<String>();
-			
 			getJdbcTemplate().query(
-					SQL_GET_SURVEY_RESPONSES_FOR_USER_FOR_REQUESTER, 
-					new Object[] { usersUsername, requestersUsername }, 
-					new RowMapper<String>() {
+					sqlBuilder.toString(),
+					parameters.toArray(),
+					new RowCallbackHandler() {
 						@Override
-						public String mapRow(ResultSet rs, int rowNum) throws SQLException {
-							// Get the time the Mobility point was uploaded.
-							Timestamp generatedTimestamp = rs.getTimestamp("upload_timestamp");
+						public void processRow(ResultSet rs) throws SQLException {
+							long lastUpload = rs.getLong("last_epoch_millis");
 							
-							// If it was uploaded within the last 'hours' it is
-							// valid.
-							if(! generatedTimestamp.before(dayAgoTimestamp)) {
-								String location = rs.getString("location");
-								if(location != null) {
-									nonNullLocations.add(location);
-								}
-								allLocations.add(location);
-							}
-							
-							return null;
+							result.put(
+									rs.getString("username"),
+									new UploadStats(
+											rs.wasNull() ? null : lastUpload,
+											rs.getLong("recent_count"),
+											rs.getLong("recent_count_with_location")));
 						}
 					}
 				);
-			
-			nonNullLocationsCount += nonNullLocations.size();
-			totalLocationsCount += allLocations.size();
 		}
 		catch(org.springframework.dao.DataAccessException e) {
-			throw new DataAccessException("Error while executing '" + SQL_GET_SURVEY_RESPONSES_FOR_USER_FOR_REQUESTER + "' with parameters: " + 
-					usersUsername + ", " + requestersUsername, e);
+			throw new DataAccessException("Error executing SQL '" + sqlBuilder + "' with parameters: " + parameters, e);
 		}
 		
-		if(totalLocationsCount == 0) {
-			return null;
-		}
-		else {
-			return new Double(nonNullLocationsCount) / new Double(totalLocationsCount);
-		}
+		return result;
 	}
 }
@@ -0,0 +1,977 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.io.SerializedString;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONString;
+import org.ohmage.util.DateTimeUtils;
+
+/**
+ * <p>Builds a table one row at a time and writes it as either one JSON array
+ * per column or as CSV rows. This is used for large exports, like survey
+ * responses, where building a JSONArray per column would box every value
+ * and keep a JSON object for every cell until the entire result has been
+ * converted to a string.</p>
+ *
+ * <p>Each column keeps its values in a primitive array. Numbers are stored
+ * as longs and doubles with a separate set of null rows, strings that have
+ * few distinct values are stored as indices into a dictionary, and dates are
+ * stored as their milliseconds and time zone and are only formatted while
+ * they are being written.</p>
+ *
+ * <p>A column may be added under more than one header, in which case its
+ * values are written once for each header. After the values for a row have
+ * been added, {@link #endRow()} must be called, which fills any column that
+ * did not receive a value with null.</p>
+ */
+public class ColumnarResultBuilder {
+	private static final String JSON_KEY_CONTEXT = "context";
+	private static final String JSON_KEY_VALUES = "values";
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * The base class for all columns.
+	 */
+	public abstract static class Column {
+		private JSONObject context = null;
+
+		/**
+		 * The number of values in this column.
+		 */
+		protected int size = 0;
+
+		/**
+		 * Returns the number of values in this column.
+		 *
+		 * @return The number of values in this column.
+		 */
+		public final int size() {
+			return size;
+		}
+
+		/**
+		 * Sets the context for this column, which is written along with its
+		 * values for JSON output.
+		 *
+		 * @param context The context or null if there is none.
+		 */
+		public final void setContext(final JSONObject context) {
+			this.context = context;
+		}
+
+		/**
+		 * Returns the context for this column.
+		 *
+		 * @return The context or null if there is none.
+		 */
+		public final JSONObject getContext() {
+			return context;
+		}
+
+		/**
+		 * Adds a null value to the end of this column.
+		 */
+		public abstract void addNull();
+
+		/**
+		 * Returns whether or not the value in some row is null.
+		 *
+		 * @param row The row.
+		 *
+		 * @return Whether or not the value is null.
+		 */
+		public abstract boolean isNull(int row);
+
+		/**
+		 * Writes the value in some row as a JSON value.
+		 *
+		 * @param generator The generator to write the value to.
+		 *
+		 * @param row The row.
+		 *
+		 * @throws IOException There was an error writing the value.
+		 */
+		public abstract void writeJson(
+				JsonGenerator generator,
+				int row)
+				throws IOException;
+
+		/**
+		 * Writes the value in some row as a quoted CSV value. Null values are
+		 * written as nothing.
+		 *
+		 * @param writer The writer to write the value to.
+		 *
+		 * @param row The row.
+		 *
+		 * @throws IOException There was an error writing the value.
+		 */
+		public abstract void writeCsv(Writer writer, int row)
+				throws IOException;
+
+		/**
+		 * Returns the capacity of an array that is full.
+		 *
+		 * @param capacity The current capacity.
+		 *
+		 * @return The new capacity.
+		 */
+		protected static int grow(final int capacity) {
+			return Math.max(INITIAL_CAPACITY, capacity + (capacity >> 1));
+		}
+	}
+
+	/**
+	 * A column of longs.
+	 */
+	public static class LongColumn extends Column {
+		private long[] values = new long[0];
+		private final BitSet nulls = new BitSet();
+
+		/**
+		 * Adds a value to the end of this column.
+		 *
+		 * @param value The value.
+		 */
+		public void add(final long value) {
+			if(size == values.length) {
+				values = Arrays.copyOf(values, grow(values.length));
+			}
+			values[size++] = value;
+		}
+
+		/**
+		 * Adds a value to the end of this column.
+		 *
+		 * @param value The value, which may be null.
+		 */
+		public void add(final Long value) {
+			if(value == null) {
+				addNull();
+			}
+			else {
+				add(value.longValue());
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#addNull()
+		 */
+		@Override
+		public void addNull() {
+			nulls.set(size);
+			add(0L);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#isNull(int)
+		 */
+		@Override
+		public boolean isNull(final int row) {
+			return nulls.get(row);
+		}
+
+		/**
+		 * Returns the value in some row.
+		 *
+		 * @param row The row.
+		 *
+		 * @return The value, which is meaningless if the row is null.
+		 */
+		public long get(final int row) {
+			return values[row];
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#writeJson(org.codehaus.jackson.JsonGenerator, int)
+		 */
+		@Override
+		public void writeJson(
+				final JsonGenerator generator,
+				final int row)
+				throws IOException {
+
+			if(nulls.get(row)) {
+				generator.writeNull();
+			}
+			else {
+				generator.writeNumber(values[row]);
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#writeCsv(java.io.Writer, int)
+		 */
+		@Override
+		public void writeCsv(
+				final Writer writer,
+				final int row)
+				throws IOException {
+
+			if(! nulls.get(row)) {
+				writer.write('"');
+				writer.write(Long.toString(values[row]));
+				writer.write('"');
+			}
+		}
+	}
+
+	/**
+	 * A column of doubles. Values that are not finite are written as null.
+	 */
+	public static class DoubleColumn extends Column {
+		private double[] values = new double[0];
+
+		/**
+		 * Adds a value to the end of this column.
+		 *
+		 * @param value The value.
+		 */
+		public void add(final double value) {
+			if(size == values.length) {
+				values = Arrays.copyOf(values, grow(values.length));
+			}
+			values[size++] = value;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#addNull()
+		 */
+		@Override
+		public void addNull() {
+			add(Double.NaN);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#isNull(int)
+		 */
+		@Override
+		public boolean isNull(final int row) {
+			double value = values[row];
+			return Double.isNaN(value) || Double.isInfinite(value);
+		}
+
+		/**
+		 * Returns the value in some row.
+		 *
+		 * @param row The row.
+		 *
+		 * @return The value, which is NaN if the row is null.
+		 */
+		public double get(final int row) {
+			return values[row];
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#writeJson(org.codehaus.jackson.JsonGenerator, int)
+		 */
+		@Override
+		public void writeJson(
+				final JsonGenerator generator,
+				final int row)
+				throws IOException {
+
+			if(isNull(row)) {
+				generator.writeNull();
+			}
+			else {
+				generator.writeNumber(values[row]);
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#writeCsv(java.io.Writer, int)
+		 */
+		@Override
+		public void writeCsv(
+				final Writer writer,
+				final int row)
+				throws IOException {
+
+			if(! isNull(row)) {
+				writer.write('"');
+				writer.write(Double.toString(values[row]));
+				writer.write('"');
+			}
+		}
+	}
+
+	/**
+	 * A column of strings with few distinct values, e.g. usernames or time
+	 * zones. Each row is an index into a dictionary of the distinct values,
+	 * and each distinct value is only escaped once for each output format.
+	 */
+	public static class DictionaryColumn extends Column {
+		private static final int NULL_CODE = -1;
+
+		private int[] codes = new int[0];
+		private final List<String> dictionary = new ArrayList<String>();
+		private final Map<String, Integer> lookup =
+				new HashMap<String, Integer>();
+
+		private SerializedString[] jsonValues = new SerializedString[0];
+		private String[] csvValues = new String[0];
+
+		/**
+		 * Adds a value to the end of this column.
+		 *
+		 * @param value The value, which may be null.
+		 */
+		public void add(final String value) {
+			int code;
+			if(value == null) {
+				code = NULL_CODE;
+			}
+			else {
+				Integer existing = lookup.get(value);
+				if(existing == null) {
+					code = dictionary.size();
+					dictionary.add(value);
+					lookup.put(value, code);
+				}
+				else {
+					code = existing;
+				}
+			}
+
+			if(size == codes.length) {
+				codes = Arrays.copyOf(codes, grow(codes.length));
+			}
+			codes[size++] = code;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#addNull()
+		 */
+		@Override
+		public void addNull() {
+			add((String) null);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#isNull(int)
+		 */
+		@Override
+		public boolean isNull(final int row) {
+			return codes[row] == NULL_CODE;
+		}
+
+		/**
+		 * Returns the value in some row.
+		 *
+		 * @param row The row.
+		 *
+		 * @return The value, which may be null.
+		 */
+		public String get(final int row) {
+			int code = codes[row];
+			return (code == NULL_CODE) ? null : dictionary.get(code);
+		}
+
+		/**
+		 * Returns the number of distinct values in this column.
+		 *
+		 * @return The number of distinct, non-null values.
+		 */
+		public int getDictionarySize() {
+			return dictionary.size();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#writeJson(org.codehaus.jackson.JsonGenerator, int)
+		 */
+		@Override
+		public void writeJson(
+				final JsonGenerator generator,
+				final int row)
+				throws IOException {
+
+			int code = codes[row];
+			if(code == NULL_CODE) {
+				generator.writeNull();
+				return;
+			}
+
+			if(jsonValues.length < dictionary.size()) {
+				jsonValues = Arrays.copyOf(jsonValues, dictionary.size());
+			}
+			SerializedString value = jsonValues[code];
+			if(value == null) {
+				value = new SerializedString(dictionary.get(code));
+				jsonValues[code] = value;
+			}
+			generator.writeString(value);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#writeCsv(java.io.Writer, int)
+		 */
+		@Override
+		public void writeCsv(
+				final Writer writer,
+				final int row)
+				throws IOException {
+
+			int code = codes[row];
+			if(code == NULL_CODE) {
+				return;
+			}
+
+			if(csvValues.length < dictionary.size()) {
+				csvValues = Arrays.copyOf(csvValues, dictionary.size());
+			}
+			String value = csvValues[code];
+			if(value == null) {
+				value =
+						"\"" +
+						dictionary.get(code).replace("\"", "\"\"") +
+						"\"";
+				csvValues[code] = value;
+			}
+			writer.write(value);
+		}
+	}
+
+	/**
+	 * A column of strings that are mostly distinct, e.g. unique identifiers.
+	 */
+	public static class StringColumn extends Column {
+		private String[] values = new String[0];
+
+		/**
+		 * Adds a value to the end of this column.
+		 *
+		 * @param value The value, which may be null.
+		 */
+		public void add(final String value) {
+			if(size == values.length) {
+				values = Arrays.copyOf(values, grow(values.length));
+			}
+			values[size++] = value;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#addNull()
+		 */
+		@Override
+		public void addNull() {
+			add((String) null);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#isNull(int)
+		 */
+		@Override
+		public boolean isNull(final int row) {
+			return values[row] == null;
+		}
+
+		/**
+		 * Returns the value in some row.
+		 *
+		 * @param row The row.
+		 *
+		 * @return The value, which may be null.
+		 */
+		public String get(final int row) {
+			return values[row];
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#writeJson(org.codehaus.jackson.JsonGenerator, int)
+		 */
+		@Override
+		public void writeJson(
+				final JsonGenerator generator,
+				final int row)
+				throws IOException {
+
+			if(values[row] == null) {
+				generator.writeNull();
+			}
+			else {
+				generator.writeString(values[row]);
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#writeCsv(java.io.Writer, int)
+		 */
+		@Override
+		public void writeCsv(
+				final Writer writer,
+				final int row)
+				throws IOException {
+
+			if(values[row] != null) {
+				writeQuoted(writer, values[row]);
+			}
+		}
+	}
+
+	/**
+	 * A column of dates and times that are stored as their milliseconds since
+	 * the epoch and a dictionary of their time zones. They are written as
+	 * ISO-8601 strings in their own time zone.
+	 */
+	public static class DateTimeColumn extends Column {
+		private final boolean withTime;
+
+		private final LongColumn millis = new LongColumn();
+		private final List<DateTimeZone> zones = new ArrayList<DateTimeZone>();
+		private final Map<DateTimeZone, Integer> zoneLookup =
+				new HashMap<DateTimeZone, Integer>();
+		private int[] zoneCodes = new int[0];
+
+		/**
+		 * Creates a column of dates and times.
+		 *
+		 * @param withTime Whether or not to write the time as well as the
+		 * 				   date.
+		 */
+		public DateTimeColumn(final boolean withTime) {
+			this.withTime = withTime;
+		}
+
+		/**
+		 * Adds a value to the end of this column.
+		 *
+		 * @param millis The milliseconds since the epoch.
+		 *
+		 * @param zone The time zone.
+		 */
+		public void add(final long millis, final DateTimeZone zone) {
+			Integer code = zoneLookup.get(zone);
+			if(code == null) {
+				code = zones.size();
+				zones.add(zone);
+				zoneLookup.put(zone, code);
+			}
+
+			this.millis.add(millis);
+			if(size == zoneCodes.length) {
+				zoneCodes = Arrays.copyOf(zoneCodes, grow(zoneCodes.length));
+			}
+			zoneCodes[size++] = code;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#addNull()
+		 */
+		@Override
+		public void addNull() {
+			millis.addNull();
+			if(size == zoneCodes.length) {
+				zoneCodes = Arrays.copyOf(zoneCodes, grow(zoneCodes.length));
+			}
+			zoneCodes[size++] = 0;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#isNull(int)
+		 */
+		@Override
+		public boolean isNull(final int row) {
+			return millis.isNull(row);
+		}
+
+		/**
+		 * Returns the ISO-8601 representation of the value in some row.
+		 *
+		 * @param row The row.
+		 *
+		 * @return The value or null if the row is null.
+		 */
+		public String get(final int row) {
+			if(millis.isNull(row)) {
+				return null;
+			}
+
+			return
+				DateTimeUtils.getIso8601DateString(
+					new DateTime(millis.get(row), zones.get(zoneCodes[row])),
+					withTime);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#writeJson(org.codehaus.jackson.JsonGenerator, int)
+		 */
+		@Override
+		public void writeJson(
+				final JsonGenerator generator,
+				final int row)
+				throws IOException {
+
+			if(millis.isNull(row)) {
+				generator.writeNull();
+			}
+			else {
+				generator.writeString(get(row));
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#writeCsv(java.io.Writer, int)
+		 */
+		@Override
+		public void writeCsv(
+				final Writer writer,
+				final int row)
+				throws IOException {
+
+			if(! millis.isNull(row)) {
+				writeQuoted(writer, get(row));
+			}
+		}
+	}
+
+	/**
+	 * A column of arbitrary values, e.g. prompt responses. The values are
+	 * written to JSON the same way a JSONArray would write them and to CSV by
+	 * their string representation.
+	 */
+	public static class ObjectColumn extends Column {
+		private Object[] values = new Object[0];
+
+		/**
+		 * Adds a value to the end of this column.
+		 *
+		 * @param value The value, which may be null or JSONObject.NULL.
+		 */
+		public void add(final Object value) {
+			if(size == values.length) {
+				values = Arrays.copyOf(values, grow(values.length));
+			}
+			values[size++] = value;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#addNull()
+		 */
+		@Override
+		public void addNull() {
+			add(null);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#isNull(int)
+		 */
+		@Override
+		public boolean isNull(final int row) {
+			return JSONObject.NULL.equals(values[row]);
+		}
+
+		/**
+		 * Returns the value in some row.
+		 *
+		 * @param row The row.
+		 *
+		 * @return The value, which may be null.
+		 */
+		public Object get(final int row) {
+			return values[row];
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#writeJson(org.codehaus.jackson.JsonGenerator, int)
+		 */
+		@Override
+		public void writeJson(
+				final JsonGenerator generator,
+				final int row)
+				throws IOException {
+
+			writeJsonValue(generator, values[row]);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.ohmage.request.ColumnarResultBuilder.Column#writeCsv(java.io.Writer, int)
+		 */
+		@Override
+		public void writeCsv(
+				final Writer writer,
+				final int row)
+				throws IOException {
+
+			if(! isNull(row)) {
+				writeQuoted(writer, values[row].toString());
+			}
+		}
+	}
+
+	private final List<String> headers = new ArrayList<String>();
+	private final List<Column> columns = new ArrayList<Column>();
+	private int numRows = 0;
+
+	/**
+	 * Adds a column to the end of the table.
+	 *
+	 * @param header The column's header.
+	 *
+	 * @param column The column.
+	 *
+	 * @return The column.
+	 */
+	public <T extends Column> T addColumn(
+			final String header,
+			final T column) {
+
+		if(header == null) {
+			throw new IllegalArgumentException("The header is null.");
+		}
+		if(column == null) {
+			throw new IllegalArgumentException("The column is null.");
+		}
+
+		headers.add(header);
+		columns.add(column);
+
+		return column;
+	}
+
+	/**
+	 * Ends the current row by adding a null to every column that did not
+	 * receive a value for it.
+	 *
+	 * @throws IllegalStateException A column received more than one value for
+	 * 								 the row.
+	 */
+	public void endRow() {
+		numRows++;
+
+		for(Column column : columns) {
+			while(column.size() < numRows) {
+				column.addNull();
+			}
+
+			if(column.size() > numRows) {
+				throw new IllegalStateException(
+						"A column received more than one value for a row.");
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of rows.
+	 *
+	 * @return The number of rows.
+	 */
+	public int getNumRows() {
+		return numRows;
+	}
+
+	/**
+	 * Returns the headers of the columns in order.
+	 *
+	 * @return An unmodifiable list of the headers.
+	 */
+	public List<String> getHeaders() {
+		return Collections.unmodifiableList(headers);
+	}
+
+	/**
+	 * Writes the table as a JSON object whose keys are the headers and whose
+	 * values are objects with the column's context, if any, and an array of
+	 * its values.
+	 *
+	 * @param generator The generator to write the object to.
+	 *
+	 * @throws IOException There was an error writing the object.
+	 */
+	public void writeJsonColumns(
+			final JsonGenerator generator)
+			throws IOException {
+
+		generator.writeStartObject();
+
+		int numColumns = columns.size();
+		for(int i = 0; i < numColumns; i++) {
+			Column column = columns.get(i);
+
+			generator.writeFieldName(headers.get(i));
+			generator.writeStartObject();
+
+			if(column.getContext() != null) {
+				generator.writeFieldName(JSON_KEY_CONTEXT);
+				generator.writeRawValue(column.getContext().toString());
+			}
+
+			generator.writeArrayFieldStart(JSON_KEY_VALUES);
+			for(int row = 0; row < numRows; row++) {
+				column.writeJson(generator, row);
+			}
+			generator.writeEndArray();
+
+			generator.writeEndObject();
+		}
+
+		generator.writeEndObject();
+	}
+
+	/**
+	 * Writes each row as comma-separated, quoted values followed by a new
+	 * line. Null values are left empty. The header is not written.
+	 *
+	 * @param writer The writer to write the rows to.
+	 *
+	 * @throws IOException There was an error writing the rows.
+	 */
+	public void writeCsvRows(final Writer writer) throws IOException {
+		int numColumns = columns.size();
+		for(int row = 0; row < numRows; row++) {
+			for(int i = 0; i < numColumns; i++) {
+				if(i != 0) {
+					writer.write(',');
+				}
+
+				columns.get(i).writeCsv(writer, row);
+			}
+
+			writer.write('\n');
+		}
+	}
+
+	/**
+	 * Writes a value in quotes with any quotes in it doubled.
+	 *
+	 * @param writer The writer to write the value to.
+	 *
+	 * @param value The value.
+	 *
+	 * @throws IOException There was an error writing the value.
+	 */
+	private static void writeQuoted(
+			final Writer writer,
+			final String value)
+			throws IOException {
+
+		writer.write('"');
+
+		int start = 0;
+		int quote;
+		while((quote = value.indexOf('"', start)) != -1) {
+			writer.write(value, start, quote + 1 - start);
+			writer.write('"');
+			start = quote + 1;
+		}
+		writer.write(value, start, value.length() - start);
+
+		writer.write('"');
+	}
+
+	/**
+	 * Writes an arbitrary value the same way a JSONArray would when it is
+	 * converted to a string.
+	 *
+	 * @param generator The generator to write the value to.
+	 *
+	 * @param value The value.
+	 *
+	 * @throws IOException There was an error writing the value.
+	 */
+	private static void writeJsonValue(
+			final JsonGenerator generator,
+			final Object value)
+			throws IOException {
+
+		if(JSONObject.NULL.equals(value)) {
+			generator.writeNull();
+		}
+		else if(value instanceof String) {
+			generator.writeString((String) value);
+		}
+		else if((value instanceof Integer) ||
+				(value instanceof Long) ||
+				(value instanceof Short) ||
+				(value instanceof Byte)) {
+
+			generator.writeNumber(((Number) value).longValue());
+		}
+		else if((value instanceof Double) || (value instanceof Float)) {
+			double doubleValue = ((Number) value).doubleValue();
+			if(Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+				generator.writeNull();
+			}
+			else {
+				generator.writeNumber(doubleValue);
+			}
+		}
+		else if(value instanceof Number) {
+			generator.writeNumber(value.toString());
+		}
+		else if(value instanceof Boolean) {
+			generator.writeBoolean((Boolean) value);
+		}
+		else if(value instanceof JSONString) {
+			generator.writeRawValue(((JSONString) value).toJSONString());
+		}
+		else if((value instanceof JSONObject) || (value instanceof JSONArray)) {
+			generator.writeRawValue(value.toString());
+		}
+		else if(value instanceof Collection) {
+			generator.writeRawValue(
+					new JSONArray((Collection<?>) value).toString());
+		}
+		else if(value instanceof Map) {
+			generator.writeRawValue(
+					new JSONObject((Map<?, ?>) value).toString());
+		}
+		else {
+			generator.writeString(value.toString());
+		}
+	}
+}
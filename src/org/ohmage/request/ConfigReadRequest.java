@@ -16,6 +16,7 @@
 package org.ohmage.request;
 
 import java.io.IOException;
+import java.io.OutputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -23,13 +24,16 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.log4j.Logger;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.ohmage.cache.ConfigResponseCache;
 import org.ohmage.domain.ServerConfig;
 import org.ohmage.exception.InvalidRequestException;
 import org.ohmage.exception.ServiceException;
 import org.ohmage.service.ConfigServices;
 
 /**
- * <p>This class is responsible for updating a class.</p>
+ * <p>This class is responsible for reading the server's configuration. The
+ * response is normally the pre-serialized response from the
+ * {@link ConfigResponseCache}, which is validated by its ETag.</p>
  * <p>There are no required parameters for this call.</p>
  * 
  * @author John Jenkins
@@ -37,6 +41,7 @@ import org.ohmage.service.ConfigServices;
 public class ConfigReadRequest extends Request {
 	private static final Logger LOGGER = Logger.getLogger(ConfigReadRequest.class);
 	
+	private ConfigResponseCache.Response cachedResult;
 	private ServerConfig result;
 	
 	/**
@@ -53,6 +58,7 @@ public class ConfigReadRequest extends Request {
 		
 		super(httpRequest, null);
 		
+		cachedResult = null;
 		result = null;
 	}
 	
@@ -64,6 +70,19 @@ public class ConfigReadRequest extends Request {
 	public void service() {
 		LOGGER.info("Gathering information about the system.");
 		
+		ConfigResponseCache cache = ConfigResponseCache.instance();
+		if(cache != null) {
+			cachedResult = cache.getResponse();
+		}
+		if(cachedResult != null) {
+			// The body may be gzipped, so the tag is weak.
+			setCacheValidators(
+				buildETag(true, cachedResult.getVersion()),
+				cachedResult.getLastModified(),
+				false);
+			return;
+		}
+		
 		try {
 			result = ConfigServices.readServerConfiguration();
 		}
@@ -80,6 +99,11 @@ public class ConfigReadRequest extends Request {
 	public void respond(HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
 		LOGGER.info("Writing configuration read response.");
 		
+		if((cachedResult != null) && (! isFailed())) {
+			respondCached(httpRequest, httpResponse);
+			return;
+		}
+		
 		try {
 			JSONObject response = new JSONObject();
 			response.put(JSON_KEY_DATA, (result == null) ? null : result.toJson());
@@ -94,4 +118,48 @@ public class ConfigReadRequest extends Request {
 			respond(httpRequest, httpResponse, null);
 		}
 	}
+	
+	/**
+	 * Writes the cached response to the client, choosing its GZIP'd form if
+	 * the client accepts it, or a 304 if the client's copy is current.
+	 */
+	private void respondCached(
+			final HttpServletRequest httpRequest,
+			final HttpServletResponse httpResponse) {
+		
+		if(isNotModified()) {
+			respondNotModified(httpResponse);
+			return;
+		}
+		
+		cacheResponse(httpResponse);
+		httpResponse.setContentType("application/json");
+		
+		String encoding = httpRequest.getHeader("Accept-Encoding");
+		boolean gzipped = (encoding != null) && (encoding.indexOf("gzip") >= 0);
+		if(gzipped) {
+			httpResponse.setHeader("Content-Encoding", "gzip");
+		}
+		httpResponse.setHeader("Vary", "Accept-Encoding");
+		httpResponse.setContentLength(cachedResult.getLength(gzipped));
+		
+		OutputStream outputStream = null;
+		try {
+			outputStream = httpResponse.getOutputStream();
+			cachedResult.writeBody(outputStream, gzipped);
+		}
+		catch(IOException e) {
+			LOGGER.error("Unable to write response message. Aborting.", e);
+		}
+		finally {
+			if(outputStream != null) {
+				try {
+					outputStream.close();
+				}
+				catch(IOException e) {
+					LOGGER.warn("Unable to close the output stream.", e);
+				}
+			}
+		}
+	}
 }
@@ -101,6 +101,8 @@ public final class InputKeys {
 	public static final String SURVEYS = "surveys";
 	public static final String SURVEY_FUNCTION_PRIVACY_STATE_GROUP_ITEM_LIST = "privacy_state_item_list";
 	public static final String SURVEY_UPDATE_FLAG = "update";
+	public static final String SURVEY_AGGREGATE_GROUP_ITEM_LIST = "group_item_list";
+	public static final String SURVEY_AGGREGATE_BUCKET_WIDTH = "bucket_width";
 	
 	// Prompt Constants
 	public static final String PROMPT_ID = "prompt_id";
@@ -187,6 +189,7 @@ public final class InputKeys {
 	public static final String COLUMN_LIST = "column_list";
 	public static final String RETURN_ID = "return_id";
 	public static final String COLLAPSE = "collapse";
+	public static final String INCLUDE_ANNOTATIONS = "include_annotations";
 	
 	// Shared Constants
 	public static final String DESCRIPTION = "description";
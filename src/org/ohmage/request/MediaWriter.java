@@ -0,0 +1,607 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Writes media files, e.g. images, audio, and video, to the response. When
+ * the container supports it, a single range of a local file is handed to the
+ * container to be sent with sendfile, which is the only path that does not
+ * copy the file through the JVM. Otherwise, local files are copied to the
+ * response in chunks. Single and multiple byte ranges are
+ * supported for local files so that clients may seek within audio and video.
+ * Media that is not a local file is copied from its stream in its entirety.
+ * Media is never GZIP'd as it is almost always already compressed.
+ */
+public final class MediaWriter {
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER = Logger.getLogger(MediaWriter.class);
+
+	/**
+	 * The size of a chunk when copying media.
+	 */
+	public static final int CHUNK_SIZE = 65536;
+
+	/**
+	 * The maximum number of ranges that will be honored in a single request.
+	 * Requests with more ranges than this are given the whole file.
+	 */
+	public static final int MAX_RANGES = 16;
+
+	/**
+	 * The request attribute set by Tomcat when it supports sendfile.
+	 */
+	private static final String ATTRIBUTE_SENDFILE_SUPPORT =
+		"org.apache.tomcat.sendfile.support";
+	private static final String ATTRIBUTE_SENDFILE_FILENAME =
+		"org.apache.tomcat.sendfile.filename";
+	private static final String ATTRIBUTE_SENDFILE_START =
+		"org.apache.tomcat.sendfile.start";
+	private static final String ATTRIBUTE_SENDFILE_END =
+		"org.apache.tomcat.sendfile.end";
+
+	private static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+	private static final String HEADER_CONTENT_RANGE = "Content-Range";
+	private static final String HEADER_IF_RANGE = "If-Range";
+	private static final String HEADER_RANGE = "Range";
+
+	private static final String RANGE_UNIT = "bytes";
+	private static final String CRLF = "\r\n";
+	private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+	/**
+	 * An inclusive range of bytes within a file.
+	 */
+	public static final class ByteRange {
+		private final long start;
+		private final long end;
+
+		/**
+		 * Creates a new byte range.
+		 *
+		 * @param start The index of the first byte.
+		 *
+		 * @param end The index of the last byte, inclusive.
+		 */
+		public ByteRange(final long start, final long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * Returns the index of the first byte.
+		 *
+		 * @return The index of the first byte.
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		/**
+		 * Returns the index of the last byte, inclusive.
+		 *
+		 * @return The index of the last byte.
+		 */
+		public long getEnd() {
+			return end;
+		}
+
+		/**
+		 * Returns the number of bytes in this range.
+		 *
+		 * @return The number of bytes in this range.
+		 */
+		public long getLength() {
+			return end - start + 1;
+		}
+
+		/**
+		 * Returns the value of the Content-Range header for this range.
+		 *
+		 * @param total The total number of bytes in the file.
+		 *
+		 * @return The value of the Content-Range header.
+		 */
+		public String toContentRange(final long total) {
+			return RANGE_UNIT + " " + start + "-" + end + "/" + total;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(final Object obj) {
+			if(this == obj) {
+				return true;
+			}
+			if(! (obj instanceof ByteRange)) {
+				return false;
+			}
+			ByteRange other = (ByteRange) obj;
+			return (start == other.start) && (end == other.end);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return (int) (start ^ (start >>> 32)) * 31 +
+				(int) (end ^ (end >>> 32));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return start + "-" + end;
+		}
+	}
+
+	/**
+	 * Default constructor. Made private as this is a static utility class.
+	 */
+	private MediaWriter() {}
+
+	/**
+	 * Returns the local file that the URL references.
+	 *
+	 * @param url The URL, which may be null.
+	 *
+	 * @return The file if the URL is a "file" URL that references a readable
+	 * 		   file; otherwise, null.
+	 */
+	public static File getLocalFile(final URL url) {
+		if((url == null) || (! "file".equals(url.getProtocol()))) {
+			return null;
+		}
+
+		File file;
+		try {
+			file = new File(url.toURI());
+		}
+		catch(URISyntaxException e) {
+			file = new File(url.getPath());
+		}
+		catch(IllegalArgumentException e) {
+			file = new File(url.getPath());
+		}
+
+		if(file.isFile() && file.canRead()) {
+			return file;
+		}
+		return null;
+	}
+
+	/**
+	 * Parses the value of a Range header.
+	 *
+	 * @param header The Range header's value.
+	 *
+	 * @param length The total number of bytes in the file.
+	 *
+	 * @return Null if the header is missing, is not a byte range, is
+	 * 		   malformed, or has too many ranges, in which case the header
+	 * 		   should be ignored and the whole file returned. An empty list if
+	 * 		   none of the ranges can be satisfied. Otherwise, the satisfiable
+	 * 		   ranges in the order they were requested with their ends
+	 * 		   truncated to the end of the file.
+	 */
+	public static List<ByteRange> parseRanges(
+			final String header,
+			final long length) {
+
+		if(header == null) {
+			return null;
+		}
+
+		String value = header.trim();
+		if(! value.startsWith(RANGE_UNIT + "=")) {
+			return null;
+		}
+
+		String[] specs = value.substring(RANGE_UNIT.length() + 1).split(",");
+		if(specs.length > MAX_RANGES) {
+			return null;
+		}
+
+		List<ByteRange> result = new ArrayList<ByteRange>(specs.length);
+		for(String spec : specs) {
+			spec = spec.trim();
+
+			int dash = spec.indexOf('-');
+			if(dash < 0) {
+				return null;
+			}
+			String first = spec.substring(0, dash).trim();
+			String last = spec.substring(dash + 1).trim();
+
+			long start;
+			long end;
+			try {
+				// A suffix range, "-n", which is the last n bytes.
+				if(first.length() == 0) {
+					if(last.length() == 0) {
+						return null;
+					}
+
+					long suffix = Long.parseLong(last);
+					if(suffix < 0) {
+						return null;
+					}
+					else if(suffix == 0) {
+						continue;
+					}
+
+					start = Math.max(0, length - suffix);
+					end = length - 1;
+				}
+				else {
+					start = Long.parseLong(first);
+					if(last.length() == 0) {
+						end = Long.MAX_VALUE;
+					}
+					else {
+						end = Long.parseLong(last);
+					}
+
+					if((start < 0) || (end < start)) {
+						return null;
+					}
+					end = Math.min(end, length - 1);
+				}
+			}
+			catch(NumberFormatException e) {
+				return null;
+			}
+
+			// Skip the unsatisfiable ranges.
+			if((start >= length) || (length == 0)) {
+				continue;
+			}
+
+			result.add(new ByteRange(start, end));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Writes a local file to the response, honoring the request's Range and
+	 * If-Range headers. The content type and any caching headers, including
+	 * the ETag, should already have been set on the response.
+	 *
+	 * @param httpRequest The HTTP request.
+	 *
+	 * @param httpResponse The HTTP response.
+	 *
+	 * @param file The file to write.
+	 *
+	 * @throws IOException There was an error reading the file or writing to
+	 * 					   the response.
+	 */
+	public static void writeFile(
+			final HttpServletRequest httpRequest,
+			final HttpServletResponse httpResponse,
+			final File file)
+			throws IOException {
+
+		long length = file.length();
+		httpResponse.setHeader(HEADER_ACCEPT_RANGES, RANGE_UNIT);
+
+		List<ByteRange> ranges = null;
+		if(rangeApplies(httpRequest, httpResponse)) {
+			ranges =
+				parseRanges(httpRequest.getHeader(HEADER_RANGE), length);
+		}
+
+		// None of the ranges could be satisfied.
+		if((ranges != null) && ranges.isEmpty()) {
+			httpResponse.setStatus(
+				HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			httpResponse.setHeader(
+				HEADER_CONTENT_RANGE,
+				RANGE_UNIT + " */" + length);
+			httpResponse.setContentLength(0);
+			return;
+		}
+
+		// The whole file.
+		if(ranges == null) {
+			writeRange(
+				httpRequest,
+				httpResponse,
+				file,
+				new ByteRange(0, length - 1));
+		}
+		// A single range.
+		else if(ranges.size() == 1) {
+			ByteRange range = ranges.get(0);
+			httpResponse.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			httpResponse.setHeader(
+				HEADER_CONTENT_RANGE,
+				range.toContentRange(length));
+			writeRange(httpRequest, httpResponse, file, range);
+		}
+		// Multiple ranges.
+		else {
+			httpResponse.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			writeRanges(httpResponse, file, ranges);
+		}
+	}
+
+	/**
+	 * Copies a stream to the response in its entirety. This is used for
+	 * media that is not a local file and, therefore, cannot be ranged. The
+	 * content type and caching headers should already have been set on the
+	 * response.
+	 *
+	 * @param httpResponse The HTTP response.
+	 *
+	 * @param contents The stream to copy. It is not closed.
+	 *
+	 * @param length The number of bytes in the stream or a negative number if
+	 * 				 unknown.
+	 *
+	 * @throws IOException There was an error reading from the stream or
+	 * 					   writing to the response.
+	 */
+	public static void writeStream(
+			final HttpServletResponse httpResponse,
+			final InputStream contents,
+			final long length)
+			throws IOException {
+
+		httpResponse.setHeader(HEADER_ACCEPT_RANGES, "none");
+		if(length >= 0) {
+			httpResponse.setHeader("Content-Length", Long.toString(length));
+		}
+
+		OutputStream os = httpResponse.getOutputStream();
+		byte[] bytes = new byte[CHUNK_SIZE];
+		int currRead;
+		while((currRead = contents.read(bytes)) != -1) {
+			os.write(bytes, 0, currRead);
+		}
+		os.flush();
+	}
+
+	/**
+	 * Copies a range of a file to the output in chunks. The channel's
+	 * position is not used, so the same file channel may be used for
+	 * multiple ranges.
+	 *
+	 * @param source The file from which to read.
+	 *
+	 * @param range The range of bytes to copy.
+	 *
+	 * @param target The output.
+	 *
+	 * @throws IOException There was an error reading or writing.
+	 */
+	public static void transfer(
+			final FileChannel source,
+			final ByteRange range,
+			final OutputStream target)
+			throws IOException {
+
+		byte[] bytes = new byte[CHUNK_SIZE];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+		long position = range.getStart();
+		long remaining = range.getLength();
+		while(remaining > 0) {
+			buffer.clear();
+			buffer.limit((int) Math.min(bytes.length, remaining));
+			int read = source.read(buffer, position);
+
+			// The file was truncated out from under us.
+			if(read <= 0) {
+				throw new IOException(
+					"The file ended before the range was written: " + range);
+			}
+
+			target.write(bytes, 0, read);
+			position += read;
+			remaining -= read;
+		}
+	}
+
+	/**
+	 * Returns whether or not the Range header should be honored based on the
+	 * If-Range header. Only strong entity tags are compared, as required;
+	 * dates are not compared as media does not have a Last-Modified date, so
+	 * the whole file is returned.
+	 *
+	 * @param httpRequest The HTTP request.
+	 *
+	 * @param httpResponse The HTTP response with the ETag already set, if
+	 * 					   any.
+	 *
+	 * @return Whether or not the Range header should be honored.
+	 */
+	private static boolean rangeApplies(
+			final HttpServletRequest httpRequest,
+			final HttpServletResponse httpResponse) {
+
+		String ifRange = httpRequest.getHeader(HEADER_IF_RANGE);
+		if(ifRange == null) {
+			return true;
+		}
+
+		String eTag = httpResponse.getHeader("ETag");
+		return
+			(eTag != null) &&
+			(! eTag.startsWith("W/")) &&
+			eTag.equals(ifRange.trim());
+	}
+
+	/**
+	 * Writes a single range of the file as the body of the response. If the
+	 * container supports sendfile, the file is handed to the container.
+	 *
+	 * @param httpRequest The HTTP request.
+	 *
+	 * @param httpResponse The HTTP response.
+	 *
+	 * @param file The file.
+	 *
+	 * @param range The range of the file to write.
+	 *
+	 * @throws IOException There was an error reading the file or writing to
+	 * 					   the response.
+	 */
+	private static void writeRange(
+			final HttpServletRequest httpRequest,
+			final HttpServletResponse httpResponse,
+			final File file,
+			final ByteRange range)
+			throws IOException {
+
+		long length = Math.max(0, range.getLength());
+		httpResponse.setHeader("Content-Length", Long.toString(length));
+		if(length == 0) {
+			return;
+		}
+
+		// If the container supports sendfile, let it write the file. This is
+		// not done for asynchronous requests as the container only honors it
+		// when the servlet returns.
+		if(Boolean.TRUE.equals(
+				httpRequest.getAttribute(ATTRIBUTE_SENDFILE_SUPPORT)) &&
+			(! httpRequest.isAsyncStarted())) {
+
+			if(LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Using sendfile for: " + file.getName());
+			}
+
+			httpRequest.setAttribute(
+				ATTRIBUTE_SENDFILE_FILENAME,
+				file.getCanonicalPath());
+			httpRequest.setAttribute(
+				ATTRIBUTE_SENDFILE_START,
+				range.getStart());
+			httpRequest.setAttribute(
+				ATTRIBUTE_SENDFILE_END,
+				range.getEnd() + 1);
+			return;
+		}
+
+		FileInputStream fileStream = new FileInputStream(file);
+		try {
+			transfer(
+				fileStream.getChannel(),
+				range,
+				httpResponse.getOutputStream());
+			httpResponse.flushBuffer();
+		}
+		finally {
+			fileStream.close();
+		}
+	}
+
+	/**
+	 * Writes multiple ranges of the file as a "multipart/byteranges"
+	 * response.
+	 *
+	 * @param httpResponse The HTTP response.
+	 *
+	 * @param file The file.
+	 *
+	 * @param ranges The ranges of the file to write.
+	 *
+	 * @throws IOException There was an error reading the file or writing to
+	 * 					   the response.
+	 */
+	private static void writeRanges(
+			final HttpServletResponse httpResponse,
+			final File file,
+			final List<ByteRange> ranges)
+			throws IOException {
+
+		long total = file.length();
+		String contentType = httpResponse.getContentType();
+		String boundary = UUID.randomUUID().toString().replace("-", "");
+
+		// Build the part headers first so that the length can be computed.
+		List<byte[]> partHeaders = new ArrayList<byte[]>(ranges.size());
+		long length = 0;
+		for(ByteRange range : ranges) {
+			StringBuilder partHeader = new StringBuilder();
+			partHeader
+				.append(CRLF).append("--").append(boundary).append(CRLF);
+			if(contentType != null) {
+				partHeader
+					.append("Content-Type: ").append(contentType).append(CRLF);
+			}
+			partHeader
+				.append(HEADER_CONTENT_RANGE).append(": ")
+				.append(range.toContentRange(total)).append(CRLF)
+				.append(CRLF);
+
+			byte[] bytes = partHeader.toString().getBytes(CHARSET);
+			partHeaders.add(bytes);
+			length += bytes.length + range.getLength();
+		}
+		byte[] trailer =
+			(CRLF + "--" + boundary + "--" + CRLF).getBytes(CHARSET);
+		length += trailer.length;
+
+		httpResponse.setContentType(
+			"multipart/byteranges; boundary=" + boundary);
+		httpResponse.setHeader("Content-Length", Long.toString(length));
+
+		FileInputStream fileStream = new FileInputStream(file);
+		try {
+			FileChannel source = fileStream.getChannel();
+			OutputStream os = httpResponse.getOutputStream();
+
+			for(int i = 0; i < ranges.size(); i++) {
+				os.write(partHeaders.get(i));
+				transfer(source, ranges.get(i), os);
+			}
+			os.write(trailer);
+			os.flush();
+		}
+		finally {
+			fileStream.close();
+		}
+	}
+}
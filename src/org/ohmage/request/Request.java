@@ -122,12 +122,33 @@ public abstract class Request {
 	 */
 	public static final String ANDROID_CLIENT_NAME = "ohmage-android";
 	
+	/**
+	 * The Cache-Control value for resources whose contents never change for a
+	 * given identifier, e.g. images and media, which are named by their UUID.
+	 */
+	private static final String CACHE_CONTROL_IMMUTABLE =
+		"private, max-age=31536000, immutable";
+	/**
+	 * The Cache-Control value for resources that may change and must be
+	 * revalidated with the server before a cached copy is used.
+	 */
+	private static final String CACHE_CONTROL_REVALIDATE = 
+		"private, no-cache";
+	
 	private final Annotator annotator;
 	private boolean failed;
 	
 	private final Map<String, String[]> parameters;
 	private final String requesterInetAddr; 
 	
+	private final String ifNoneMatch;
+	private final long ifModifiedSince;
+	
+	private String eTag = null;
+	private long lastModified = -1;
+	private boolean immutable = false;
+	private boolean notModified = false;
+	
 	/**
 	 * Initializes this request.
 	 * 
@@ -156,11 +177,23 @@ public abstract class Request {
 
 		Map<String, String[]> tParameters = new HashMap<String, String[]>();
 		String tRequesterInetAddr = null;
+		String tIfNoneMatch = null;
+		long tIfModifiedSince = -1;
 		try {
 			if(httpRequest != null) {
 				// Get the requester's IP address.
 				tRequesterInetAddr = httpRequest.getRemoteAddr();
 				
+				// Get the validators for a conditional request.
+				tIfNoneMatch = httpRequest.getHeader("If-None-Match");
+				try {
+					tIfModifiedSince = 
+						httpRequest.getDateHeader("If-Modified-Since");
+				}
+				catch(IllegalArgumentException e) {
+					LOGGER.info("The If-Modified-Since header is malformed.");
+				}
+				
 				// Get the parameters.
 				if (parameters == null) {
 					// LOGGER.debug("HT: parameters is null");	
@@ -219,6 +252,9 @@ public abstract class Request {
 		
 		this.parameters = tParameters;
 		this.requesterInetAddr = tRequesterInetAddr;
+		
+		ifNoneMatch = tIfNoneMatch;
+		ifModifiedSince = tIfModifiedSince;
 	}
 	
 	/**
@@ -655,6 +691,150 @@ public abstract class Request {
 	     //response.setHeader("Access-Control-Allow-Origin","*");
 	}
 	
+	/**
+	 * Builds an entity tag from some value that uniquely identifies a version
+	 * of a resource.
+	 * 
+	 * @param weak Whether the tag only identifies the resource's semantic
+	 * 			   content, e.g. because it may be gzipped, rather than its
+	 * 			   exact bytes.
+	 * 
+	 * @param value The value that identifies the resource's version.
+	 * 
+	 * @return The quoted entity tag.
+	 */
+	protected static String buildETag(final boolean weak, final String value) {
+		return ((weak) ? "W/\"" : "\"") + value + '"';
+	}
+	
+	/**
+	 * Sets the validators for the resource that this request will return and
+	 * compares them against the requester's If-None-Match and 
+	 * If-Modified-Since headers. This should be called once the requester has
+	 * been authorized, but before the resource is read, so that the read can
+	 * be skipped if the requester's copy is current.
+	 * 
+	 * @param eTag The resource's entity tag built by 
+	 * 			   {@link #buildETag(boolean, String)}.
+	 * 
+	 * @param lastModified The time the resource was last modified in 
+	 * 					   milliseconds since the epoch or -1 if unknown.
+	 * 
+	 * @param immutable Whether the resource will never change. If so, clients
+	 * 					may cache it without revalidating it.
+	 * 
+	 * @return True if the requester's copy is current and a 304 should be
+	 * 		   returned; false, otherwise.
+	 */
+	protected final boolean setCacheValidators(
+			final String eTag,
+			final long lastModified,
+			final boolean immutable) {
+		
+		this.eTag = eTag;
+		this.lastModified = lastModified;
+		this.immutable = immutable;
+		
+		// If-None-Match takes precedence over If-Modified-Since.
+		if(ifNoneMatch != null) {
+			notModified = false;
+			for(String candidate : ifNoneMatch.split(",")) {
+				candidate = candidate.trim();
+				
+				// Use the weak comparison, which is what is required for GETs.
+				if(candidate.startsWith("W/")) {
+					candidate = candidate.substring(2);
+				}
+				String tag = eTag;
+				if(tag.startsWith("W/")) {
+					tag = tag.substring(2);
+				}
+				
+				if("*".equals(candidate) || tag.equals(candidate)) {
+					notModified = true;
+					break;
+				}
+			}
+		}
+		else if((ifModifiedSince >= 0) && (lastModified >= 0)) {
+			// HTTP dates only have second precision.
+			notModified = (lastModified / 1000) <= (ifModifiedSince / 1000);
+		}
+		else {
+			notModified = false;
+		}
+		
+		return notModified;
+	}
+	
+	/**
+	 * Returns whether or not the requester's copy of the resource is current
+	 * based on the validators given to
+	 * {@link #setCacheValidators(String, long, boolean)}.
+	 * 
+	 * @return Whether or not a 304 should be returned.
+	 */
+	protected final boolean isNotModified() {
+		return notModified && (! failed);
+	}
+	
+	/**
+	 * Sets the caching headers for the response. If validators were set and
+	 * the request has not failed, the ETag, Last-Modified, and Cache-Control
+	 * headers are set from them. Otherwise, caching is disallowed.
+	 * 
+	 * @param response The HTTP response.
+	 */
+	protected void cacheResponse(HttpServletResponse response) {
+		if((eTag == null) || failed) {
+			expireResponse(response);
+			return;
+		}
+		
+		response.setHeader("ETag", eTag);
+		if(lastModified >= 0) {
+			response.setDateHeader("Last-Modified", lastModified);
+		}
+		response.setHeader(
+			"Cache-Control", 
+			(immutable) ? CACHE_CONTROL_IMMUTABLE : CACHE_CONTROL_REVALIDATE);
+	}
+	
+	/**
+	 * Responds with a 304, Not Modified, and the resource's validators but no
+	 * body.
+	 * 
+	 * @param response The HTTP response.
+	 */
+	protected void respondNotModified(HttpServletResponse response) {
+		cacheResponse(response);
+		response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+	}
+	
+	/**
+	 * Returns whether or not content of the given type is already compressed,
+	 * e.g. images, audio, video, and archives, and, therefore, would not 
+	 * benefit from being GZIP'd.
+	 * 
+	 * @param contentType The content type, which may be null.
+	 * 
+	 * @return Whether or not the content is already compressed.
+	 */
+	protected static boolean isCompressedContentType(final String contentType) {
+		if(contentType == null) {
+			return false;
+		}
+		
+		String type = contentType.toLowerCase();
+		return
+			(type.startsWith("image/") && (! type.startsWith("image/svg"))) ||
+			type.startsWith("audio/") ||
+			type.startsWith("video/") ||
+			type.startsWith("application/zip") ||
+			type.startsWith("application/gzip") ||
+			type.startsWith("application/x-gzip");
+	}
+	
 	/**
 	 * There is functionality in Tomcat 6 to perform this action, but it is 
 	 * also nice to have it controlled programmatically.
@@ -667,9 +847,11 @@ public abstract class Request {
 		
 		OutputStream os = null; 
 		
-		// Determine if the response can be gzipped
+		// Determine if the response can be gzipped. Content that is already
+		// compressed is not gzipped again.
 		String encoding = request.getHeader("Accept-Encoding");
-		if (encoding != null && encoding.indexOf("gzip") >= 0) {
+		if (encoding != null && encoding.indexOf("gzip") >= 0 &&
+			(! isCompressedContentType(response.getContentType()))) {
             
 			if(LOGGER.isDebugEnabled()) {
 				LOGGER.debug("Returning a GZIPOutputStream");
@@ -65,6 +65,7 @@ import org.ohmage.request.mobility.MobilityUploadRequest;
 import org.ohmage.request.observer.ObserverCreationRequest;
 import org.ohmage.request.observer.ObserverReadRequest;
 import org.ohmage.request.observer.ObserverUpdateRequest;
+import org.ohmage.request.observer.StreamDatesReadRequest;
 import org.ohmage.request.observer.StreamReadInvalidRequest;
 import org.ohmage.request.observer.StreamReadRequest;
 import org.ohmage.request.observer.StreamUploadRequest;
@@ -77,6 +78,7 @@ import org.ohmage.request.omh.OmhRegistryUpdateRequest;
 import org.ohmage.request.omh.OmhWriteRequest;
 import org.ohmage.request.registration.RegistrationReadRequest;
 import org.ohmage.request.survey.SurveyResponseDeleteRequest;
+import org.ohmage.request.survey.SurveyResponseAggregateReadRequest;
 import org.ohmage.request.survey.SurveyResponseFunctionReadRequest;
 import org.ohmage.request.survey.SurveyResponseReadRequest;
 import org.ohmage.request.survey.SurveyResponseUpdateRequest;
@@ -85,6 +87,7 @@ import org.ohmage.request.survey.annotation.AnnotationDeleteRequest;
 import org.ohmage.request.survey.annotation.AnnotationUpdateRequest;
 import org.ohmage.request.survey.annotation.PromptResponseAnnotationCreationRequest;
 import org.ohmage.request.survey.annotation.PromptResponseAnnotationReadRequest;
+import org.ohmage.request.survey.annotation.SurveyResponseAnnotationBatchReadRequest;
 import org.ohmage.request.survey.annotation.SurveyResponseAnnotationCreationRequest;
 import org.ohmage.request.survey.annotation.SurveyResponseAnnotationReadRequest;
 import org.ohmage.request.user.UserActivationRequest;
@@ -98,6 +101,7 @@ import org.ohmage.request.user.UserRegistrationRequest;
 import org.ohmage.request.user.UserSearchRequest;
 import org.ohmage.request.user.UserSetupExternalRequest;
 import org.ohmage.request.user.UserSetupRequest;
+import org.ohmage.request.user.UserStatsBatchReadRequest;
 import org.ohmage.request.user.UserStatsReadRequest;
 import org.ohmage.request.user.UserUpdateRequest;
 import org.ohmage.request.video.VideoReadRequest;
@@ -131,6 +135,7 @@ public final class RequestBuilder implements ServletContextAware {
 	private String apiAnnotationPromptResponseRead;
 	private String apiAnnotationSurveyResponseCreate;
 	private String apiAnnotationSurveyResponseRead;
+	private String apiAnnotationSurveyResponseBatchRead;
 	private String apiAnnotationUpdate;
 	private String apiAnnotationDelete;
 	
@@ -197,6 +202,7 @@ public final class RequestBuilder implements ServletContextAware {
 	private String apiStreamUpload;
 	private String apiStreamRead;
 	private String apiStreamInvalidRead;
+	private String apiStreamDatesRead;
 	
 	// OMH
 	private String apiOmhAuth;
@@ -213,6 +219,7 @@ public final class RequestBuilder implements ServletContextAware {
 	private String apiSurveyResponseRead;
 	private String apiSurveyResponseUpdate;
 	private String apiSurveyResponseFunctionRead;
+	private String apiSurveyResponseAggregateRead;
 	
 	// User
 	private String apiUserCreate;
@@ -222,6 +229,7 @@ public final class RequestBuilder implements ServletContextAware {
 	private String apiUserRead;
 	private String apiUserInfoRead;
 	private String apiUserStatsRead;
+	private String apiUserStatsBatchRead;
 	private String apiUserSearch;
 	private String apiUserUpdate;
 	private String apiUserChangePassword;
@@ -293,6 +301,7 @@ public final class RequestBuilder implements ServletContextAware {
 		apiAnnotationPromptResponseRead = apiRoot + "/annotation/prompt_response/read";
 		apiAnnotationSurveyResponseCreate = apiRoot + "/annotation/survey_response/create";
 		apiAnnotationSurveyResponseRead = apiRoot + "/annotation/survey_response/read";
+		apiAnnotationSurveyResponseBatchRead = apiRoot + "/annotation/survey_response/batch_read";
 		apiAnnotationUpdate = apiRoot + "/annotation/update";
 		apiAnnotationDelete = apiRoot + "/annotation/delete";
 		
@@ -359,6 +368,7 @@ public final class RequestBuilder implements ServletContextAware {
 		apiStreamUpload = apiRoot + "/stream/upload";
 		apiStreamRead = apiRoot + "/stream/read";
 		apiStreamInvalidRead = apiRoot + "/stream/invalid/read";
+		apiStreamDatesRead = apiRoot + "/stream/dates/read";
 		
 		// OMH
 		apiOmhAuth = apiRoot + "/omh/v1.0/authenticate";
@@ -375,6 +385,7 @@ public final class RequestBuilder implements ServletContextAware {
 		apiSurveyResponseRead = apiRoot + "/survey_response/read";
 		apiSurveyResponseUpdate = apiRoot + "/survey_response/update";
 		apiSurveyResponseFunctionRead = apiRoot + "/survey_response/function/read";
+		apiSurveyResponseAggregateRead = apiRoot + "/survey_response/aggregate/read";
 		
 		// User
 		apiUserCreate = apiRoot + "/user/create";
@@ -384,6 +395,7 @@ public final class RequestBuilder implements ServletContextAware {
 		apiUserRead = apiRoot + "/user/read";
 		apiUserInfoRead = apiRoot + "/user_info/read";
 		apiUserStatsRead = apiRoot + "/user_stats/read";
+		apiUserStatsBatchRead = apiRoot + "/user_stats/batch/read";
 		apiUserSearch = apiRoot + "/user/search";
 		apiUserUpdate = apiRoot + "/user/update";
 		apiUserChangePassword = apiRoot + "/user/change_password";
@@ -486,6 +498,9 @@ public final class RequestBuilder implements ServletContextAware {
 		else if(apiAnnotationSurveyResponseRead.equals(requestUri)) {
 			return new SurveyResponseAnnotationReadRequest(httpRequest);
 		}
+		else if(apiAnnotationSurveyResponseBatchRead.equals(requestUri)) {
+			return new SurveyResponseAnnotationBatchReadRequest(httpRequest);
+		}
 		else if(apiAnnotationUpdate.equals(requestUri)) {
 			return new AnnotationUpdateRequest(httpRequest);
 		}
@@ -613,6 +628,9 @@ public final class RequestBuilder implements ServletContextAware {
 		else if(apiStreamInvalidRead.equals(requestUri)) {
 			return new StreamReadInvalidRequest(httpRequest);
 		}
+		else if(apiStreamDatesRead.equals(requestUri)) {
+			return new StreamDatesReadRequest(httpRequest);
+		}
 		// OMH
 		else if(apiOmhAuth.equals(requestUri)) {
 			return new OmhAuthenticateRequest(httpRequest);
@@ -651,6 +669,9 @@ public final class RequestBuilder implements ServletContextAware {
 		else if(apiSurveyResponseFunctionRead.equals(requestUri)) {
 			return new SurveyResponseFunctionReadRequest(httpRequest);
 		}
+		else if(apiSurveyResponseAggregateRead.equals(requestUri)) {
+			return new SurveyResponseAggregateReadRequest(httpRequest);
+		}
 		// User
 		else if(apiUserCreate.equals(requestUri)) {
 			return new UserCreationRequest(httpRequest);
@@ -673,6 +694,9 @@ public final class RequestBuilder implements ServletContextAware {
 		else if(apiUserStatsRead.equals(requestUri)) {
 			return new UserStatsReadRequest(httpRequest);
 		}
+		else if(apiUserStatsBatchRead.equals(requestUri)) {
+			return new UserStatsBatchReadRequest(httpRequest);
+		}
 		else if(apiUserSearch.equals(requestUri)) {
 			return new UserSearchRequest(httpRequest);
 		}
@@ -779,6 +803,7 @@ public final class RequestBuilder implements ServletContextAware {
 				apiAnnotationPromptResponseRead.equals(uri) ||
 				apiAnnotationSurveyResponseCreate.equals(uri) ||
 				apiAnnotationSurveyResponseRead.equals(uri) ||
+				apiAnnotationSurveyResponseBatchRead.equals(uri) ||
 				// Authentication
 				apiUserAuth.equals(uri) ||
 				apiUserAuthToken.equals(uri) ||
@@ -830,6 +855,7 @@ public final class RequestBuilder implements ServletContextAware {
 				apiStreamUpload.equals(uri) ||
 				apiStreamRead.equals(uri) ||
 				apiStreamInvalidRead.equals(uri) ||
+				apiStreamDatesRead.equals(uri) ||
 				// OMH
 				apiOmhAuth.equals(uri) ||
 				apiOmhRegistryCreate.equals(uri) ||
@@ -844,6 +870,7 @@ public final class RequestBuilder implements ServletContextAware {
 				apiSurveyResponseUpdate.equals(uri) ||
 				apiSurveyResponseDelete.equals(uri) ||
 				apiSurveyResponseFunctionRead.equals(uri) ||
+				apiSurveyResponseAggregateRead.equals(uri) ||
 				// User
 				apiUserCreate.equals(uri) ||
 				apiUserRegister.equals(uri) ||
@@ -852,6 +879,7 @@ public final class RequestBuilder implements ServletContextAware {
 				apiUserRead.equals(uri) ||
 				apiUserInfoRead.equals(uri) ||
 				apiUserStatsRead.equals(uri) ||
+				apiUserStatsBatchRead.equals(uri) ||
 				apiUserSearch.equals(uri) ||
 				apiUserUpdate.equals(uri) ||
 				apiUserChangePassword.equals(uri) ||
@@ -927,6 +955,15 @@ public final class RequestBuilder implements ServletContextAware {
 		return apiAnnotationSurveyResponseRead;
 	}
 
+	/**
+	 * Returns apiAnnotationSurveyResponseBatchRead.
+	 *
+	 * @return The apiAnnotationSurveyResponseBatchRead.
+	 */
+	public String getApiAnnotationSurveyResponseBatchRead() {
+		return apiAnnotationSurveyResponseBatchRead;
+	}
+
 	/**
 	 * Returns apiAnnotationUpdate.
 	 *
@@ -1314,6 +1351,15 @@ public final class RequestBuilder implements ServletContextAware {
 		return apiStreamInvalidRead;
 	}
 
+	/**
+	 * Returns apiStreamDatesRead.
+	 *
+	 * @return The apiStreamDatesRead.
+	 */
+	public String getApiStreamDatesRead() {
+		return apiStreamDatesRead;
+	}
+
 	/**
 	 * Returns apiSurveyUpload.
 	 *
@@ -1359,6 +1405,15 @@ public final class RequestBuilder implements ServletContextAware {
 		return apiSurveyResponseFunctionRead;
 	}
 
+	/**
+	 * Returns apiSurveyResponseAggregateRead.
+	 *
+	 * @return The apiSurveyResponseAggregateRead.
+	 */
+	public String getApiSurveyResponseAggregateRead() {
+		return apiSurveyResponseAggregateRead;
+	}
+
 	/**
 	 * Returns apiUserCreate.
 	 *
@@ -1422,6 +1477,15 @@ public final class RequestBuilder implements ServletContextAware {
 		return apiUserStatsRead;
 	}
 
+	/**
+	 * Returns apiUserStatsBatchRead.
+	 *
+	 * @return The apiUserStatsBatchRead.
+	 */
+	public String getApiUserStatsBatchRead() {
+		return apiUserStatsBatchRead;
+	}
+
 	/**
 	 * Returns apiUserSearch.
 	 *
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * Whether an asynchronous request has been abandoned, e.g. because it took
+ * too long or its client disconnected, along with the blocking work it is
+ * doing, so that the work can be stopped from another thread.
+ * </p>
+ *
+ * <p>
+ * The worker servicing the request binds the cancellation to its thread.
+ * Anything that blocks for a long time on the request's behalf, e.g. a call
+ * to the visualization server, registers itself while it runs. Once the
+ * request has been cancelled, everything that is registered is cancelled,
+ * and everything that is registered afterwards is cancelled immediately.
+ * The cancellation never touches the response; that is left to the worker.
+ * </p>
+ */
+public final class RequestCancellation {
+	private static final Logger LOGGER =
+		Logger.getLogger(RequestCancellation.class);
+
+	/**
+	 * Blocking work that can be stopped from another thread.
+	 */
+	public static interface Cancellable {
+		/**
+		 * Stops the work. This may be called at any time from any thread,
+		 * including after the work has finished.
+		 */
+		public void cancel();
+	}
+
+	/**
+	 * The cancellation of the request that the current thread is servicing.
+	 */
+	private static final ThreadLocal<RequestCancellation> CURRENT =
+		new ThreadLocal<RequestCancellation>();
+
+	private final Set<Cancellable> registered =
+		Collections.newSetFromMap(
+			new ConcurrentHashMap<Cancellable, Boolean>());
+	private volatile boolean cancelled = false;
+
+	/**
+	 * Binds this cancellation to the current thread.
+	 */
+	public void bind() {
+		CURRENT.set(this);
+	}
+
+	/**
+	 * Unbinds any cancellation from the current thread. This must be called
+	 * once a request has been completed as the thread will be reused.
+	 */
+	public static void unbind() {
+		CURRENT.remove();
+	}
+
+	/**
+	 * Returns the cancellation bound to the current thread.
+	 *
+	 * @return The cancellation or null if there is none.
+	 */
+	public static RequestCancellation current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Cancels the request and everything that is registered with it.
+	 */
+	public void cancel() {
+		cancelled = true;
+		for(Cancellable cancellable : registered) {
+			cancel(cancellable);
+		}
+	}
+
+	/**
+	 * Returns whether the request has been cancelled.
+	 *
+	 * @return Whether the request has been cancelled.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Registers work that is about to block. If the request has already been
+	 * cancelled, the work is cancelled immediately.
+	 *
+	 * @param cancellable The work.
+	 */
+	public void register(final Cancellable cancellable) {
+		registered.add(cancellable);
+		if(cancelled) {
+			cancel(cancellable);
+		}
+	}
+
+	/**
+	 * Unregisters work that has finished. This must be done before any
+	 * resource the work holds is reused by another request.
+	 *
+	 * @param cancellable The work.
+	 */
+	public void unregister(final Cancellable cancellable) {
+		registered.remove(cancellable);
+	}
+
+	/**
+	 * Cancels some work, ignoring any error as it may already have finished.
+	 */
+	private static void cancel(final Cancellable cancellable) {
+		try {
+			cancellable.cancel();
+		}
+		catch(RuntimeException e) {
+			LOGGER.debug("The work could not be cancelled.", e);
+		}
+	}
+}
@@ -0,0 +1,393 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.log4j.Logger;
+import org.ohmage.request.MediaWriter.ByteRange;
+
+/**
+ * Writes a ZIP file whose entries are STORED, not deflated. This is meant for
+ * media, e.g. JPEGs and PNGs, which are already compressed, so deflating them
+ * only costs CPU. A STORED entry must have its size and CRC known before it
+ * is written, so each file is read ahead of the writer by a shared pool of
+ * readers, with at most a fixed number of files being read ahead for any one
+ * ZIP file. Small files are buffered in memory while large local files only
+ * have their CRC computed ahead of time and are then copied directly from the
+ * file system.
+ *
+ * Entries and sizes beyond the limits of the original ZIP format are written
+ * with the Zip64 extensions.
+ */
+public class StoredZipWriter {
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger LOGGER =
+		Logger.getLogger(StoredZipWriter.class);
+
+	/**
+	 * The default number of files that may be read ahead of the writer.
+	 */
+	public static final int DEFAULT_READ_AHEAD = 8;
+
+	/**
+	 * The largest file that will be buffered in memory. Larger local files
+	 * are read twice, once for their CRC and once when they are written.
+	 */
+	public static final int MAX_BUFFERED_SIZE = 4 * 1024 * 1024;
+
+	/**
+	 * The number of threads shared by all ZIP files for reading files.
+	 */
+	private static final int NUM_READERS = 8;
+
+	/**
+	 * The size of the buffer used when reading files and when writing the ZIP
+	 * file.
+	 */
+	private static final int CHUNK_SIZE = 65536;
+
+	/**
+	 * The pool of readers shared by all ZIP files. Each ZIP file bounds its
+	 * own read-ahead, so the queue is bounded by the number of concurrent
+	 * ZIP files.
+	 */
+	private static final ExecutorService READERS;
+	static {
+		ThreadPoolExecutor readers =
+			new ThreadPoolExecutor(
+				NUM_READERS,
+				NUM_READERS,
+				60,
+				TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger(0);
+
+					@Override
+					public Thread newThread(final Runnable runnable) {
+						Thread thread =
+							new Thread(
+								runnable,
+								"StoredZipWriter - Reader " +
+									count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		readers.allowCoreThreadTimeOut(true);
+		READERS = readers;
+	}
+
+	/**
+	 * A file that has been read, or at least had its CRC computed, and is
+	 * ready to be written as an entry.
+	 */
+	private static final class ReadEntry {
+		private final String name;
+		private final long size;
+		private final long crc;
+		private final byte[] contents;
+		private final File file;
+
+		private ReadEntry(
+				final String name,
+				final long size,
+				final long crc,
+				final byte[] contents,
+				final File file) {
+
+			this.name = name;
+			this.size = size;
+			this.crc = crc;
+			this.contents = contents;
+			this.file = file;
+		}
+	}
+
+	private final int readAhead;
+
+	/**
+	 * Creates a new writer with the default read-ahead.
+	 */
+	public StoredZipWriter() {
+		this(DEFAULT_READ_AHEAD);
+	}
+
+	/**
+	 * Creates a new writer.
+	 *
+	 * @param readAhead The maximum number of files that may be read ahead of
+	 * 					the writer.
+	 *
+	 * @throws IllegalArgumentException The read-ahead is not positive.
+	 */
+	public StoredZipWriter(final int readAhead) {
+		if(readAhead <= 0) {
+			throw new IllegalArgumentException(
+				"The read-ahead must be positive.");
+		}
+
+		this.readAhead = readAhead;
+	}
+
+	/**
+	 * Writes the ZIP file. Files that cannot be read are logged and omitted
+	 * from the ZIP file. The output stream is finished, but not closed.
+	 *
+	 * @param entries The name of each entry mapped to the URL of its
+	 * 				  contents. The entries are written in the map's iteration
+	 * 				  order.
+	 *
+	 * @param outputStream The stream to which the ZIP file is written.
+	 *
+	 * @return The number of entries that were written.
+	 *
+	 * @throws IOException There was an error writing the ZIP file.
+	 */
+	public int write(
+			final Map<String, URL> entries,
+			final OutputStream outputStream)
+			throws IOException {
+
+		ZipOutputStream zipStream =
+			new ZipOutputStream(
+				new BufferedOutputStream(outputStream, CHUNK_SIZE));
+		zipStream.setMethod(ZipOutputStream.STORED);
+
+		Iterator<Map.Entry<String, URL>> iterator =
+			entries.entrySet().iterator();
+		LinkedList<Future<ReadEntry>> pending =
+			new LinkedList<Future<ReadEntry>>();
+		int written = 0;
+
+		try {
+			// Fill the read-ahead window.
+			while((pending.size() < readAhead) && iterator.hasNext()) {
+				pending.add(submit(iterator.next()));
+			}
+
+			while(! pending.isEmpty()) {
+				ReadEntry entry = await(pending.removeFirst());
+
+				// Keep the window full while this entry is being written.
+				if(iterator.hasNext()) {
+					pending.add(submit(iterator.next()));
+				}
+
+				if(entry == null) {
+					continue;
+				}
+
+				writeEntry(zipStream, entry);
+				written++;
+			}
+
+			zipStream.finish();
+			zipStream.flush();
+		}
+		finally {
+			// If the writer failed, e.g. the requester hung up, don't
+			// continue reading files for it.
+			for(Future<ReadEntry> future : pending) {
+				future.cancel(true);
+			}
+		}
+
+		return written;
+	}
+
+	/**
+	 * Submits an entry to be read.
+	 *
+	 * @param entry The entry's name and URL.
+	 *
+	 * @return The future that will hold the read entry or null if it could
+	 * 		   not be read.
+	 */
+	private Future<ReadEntry> submit(final Map.Entry<String, URL> entry) {
+		final String name = entry.getKey();
+		final URL url = entry.getValue();
+
+		return READERS.submit(new Callable<ReadEntry>() {
+			@Override
+			public ReadEntry call() {
+				try {
+					return read(name, url);
+				}
+				catch(IOException e) {
+					LOGGER.info(
+						"The file could not be read, so it will not be " +
+							"added to the ZIP file: " +
+							name,
+						e);
+					return null;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Waits for an entry to be read.
+	 *
+	 * @param future The future holding the entry.
+	 *
+	 * @return The entry or null if it could not be read.
+	 *
+	 * @throws IOException The thread was interrupted while waiting.
+	 */
+	private ReadEntry await(final Future<ReadEntry> future)
+			throws IOException {
+
+		try {
+			return future.get();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(
+				"Interrupted while waiting for a file to be read.",
+				e);
+		}
+		catch(ExecutionException e) {
+			LOGGER.error("A file could not be read.", e.getCause());
+			return null;
+		}
+	}
+
+	/**
+	 * Reads a file. Large local files only have their CRC computed.
+	 *
+	 * @param name The entry's name.
+	 *
+	 * @param url The URL of the file.
+	 *
+	 * @return The read entry.
+	 *
+	 * @throws IOException There was an error reading the file.
+	 */
+	private static ReadEntry read(final String name, final URL url)
+			throws IOException {
+
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[CHUNK_SIZE];
+		int read;
+
+		File file = MediaWriter.getLocalFile(url);
+		if((file != null) && (file.length() > MAX_BUFFERED_SIZE)) {
+			long size = 0;
+			InputStream fileStream = new FileInputStream(file);
+			try {
+				while((read = fileStream.read(buffer)) != -1) {
+					crc.update(buffer, 0, read);
+					size += read;
+				}
+			}
+			finally {
+				fileStream.close();
+			}
+
+			return new ReadEntry(name, size, crc.getValue(), null, file);
+		}
+
+		ByteArrayOutputStream contents =
+			new ByteArrayOutputStream(
+				(file == null) ? CHUNK_SIZE : (int) file.length());
+		InputStream inputStream =
+			(file == null) ? url.openStream() : new FileInputStream(file);
+		try {
+			while((read = inputStream.read(buffer)) != -1) {
+				crc.update(buffer, 0, read);
+				contents.write(buffer, 0, read);
+			}
+		}
+		finally {
+			inputStream.close();
+		}
+
+		return
+			new ReadEntry(
+				name,
+				contents.size(),
+				crc.getValue(),
+				contents.toByteArray(),
+				null);
+	}
+
+	/**
+	 * Writes an entry to the ZIP file.
+	 *
+	 * @param zipStream The ZIP file.
+	 *
+	 * @param entry The read entry.
+	 *
+	 * @throws IOException There was an error reading a large file or writing
+	 * 					   to the ZIP file.
+	 */
+	private static void writeEntry(
+			final ZipOutputStream zipStream,
+			final ReadEntry entry)
+			throws IOException {
+
+		ZipEntry zipEntry = new ZipEntry(entry.name);
+		zipEntry.setMethod(ZipEntry.STORED);
+		zipEntry.setSize(entry.size);
+		zipEntry.setCompressedSize(entry.size);
+		zipEntry.setCrc(entry.crc);
+		zipStream.putNextEntry(zipEntry);
+
+		if(entry.contents != null) {
+			zipStream.write(entry.contents);
+		}
+		else {
+			FileInputStream fileStream = new FileInputStream(entry.file);
+			try {
+				MediaWriter.transfer(
+					fileStream.getChannel(),
+					new ByteRange(0, entry.size - 1),
+					zipStream);
+			}
+			finally {
+				fileStream.close();
+			}
+		}
+
+		zipStream.closeEntry();
+	}
+}
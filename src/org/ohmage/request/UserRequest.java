@@ -27,9 +27,12 @@ import org.apache.log4j.Logger;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.cache.AuthorizationCache;
 import org.ohmage.cache.KeycloakCache;
 import org.ohmage.cache.UserBin;
+import org.ohmage.domain.AuthorizationContext;
 import org.ohmage.domain.User;
+import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.DomainException;
 import org.ohmage.exception.InvalidRequestException;
 import org.ohmage.exception.ServiceException;
@@ -236,7 +239,7 @@ public abstract class UserRequest extends Request {
 		try {
 			// Validate that the username and password are valid.
 			LOGGER.debug("Authenticating the user: " + getUser().getUsername());
-			return
+			boolean authenticated =
 				AuthenticationService
 					.instance()
 					.authenticate(
@@ -244,6 +247,14 @@ public abstract class UserRequest extends Request {
 						AllowNewAccount
 							.NEW_ACCOUNT_ALLOWED
 							.equals(newAccountsAllowed));
+			
+			// Bind the user to this thread so that their privileges are only
+			// read once for the rest of the request.
+			if(authenticated) {
+				AuthorizationCache.bind(getUser().getUsername());
+			}
+			
+			return authenticated;
 		}
 		catch(ServiceException e) {
 			e.logException(LOGGER);
@@ -251,6 +262,30 @@ public abstract class UserRequest extends Request {
 		}
 	}
 	
+	/**
+	 * Returns the snapshot of the authenticated user's privileges. This is
+	 * the same snapshot that the services and queries use for the rest of
+	 * the request.
+	 * 
+	 * @return The snapshot or null if the user has not been authenticated.
+	 * 
+	 * @throws ServiceException There was an error loading the snapshot.
+	 */
+	public final AuthorizationContext getAuthorizationContext()
+			throws ServiceException {
+		
+		if((getUser() == null) || isFailed()) {
+			return null;
+		}
+		
+		try {
+			return AuthorizationCache.getCurrent(getUser().getUsername());
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+	
 	/**
 	 * Returns an empty map. This is for requests that don't have any specific
 	 * information to return.
@@ -429,6 +429,25 @@ public class CampaignReadRequest extends UserRequest {
 						ErrorCode.CAMPAIGN_INVALID_ID,
 						"No campaigns were found.");
 			}
+			
+			// The XML is replaced whenever the campaign is updated, which also
+			// updates its creation timestamp. It may be gzipped, so the tag is
+			// weak.
+			if(OutputFormat.XML.equals(outputFormat)) {
+				Campaign campaign = campaignResults.iterator().next();
+				long creationTimestamp = 
+					campaign.getCreationTimestamp().getMillis();
+				
+				if(setCacheValidators(
+						buildETag(
+							true, 
+							campaign.getId() + "-" + creationTimestamp), 
+						creationTimestamp, 
+						false)) {
+					
+					LOGGER.info("The requester's copy of the XML is current.");
+				}
+			}
 		}
 		catch(ServiceException e) {
 			e.failRequest(this);
@@ -443,6 +462,12 @@ public class CampaignReadRequest extends UserRequest {
 	public void respond(HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
 		LOGGER.info("Responding to the campaign read request.");
 		
+		// If the requester already has this XML, don't send it again.
+		if(isNotModified()) {
+			respondNotModified(httpResponse);
+			return;
+		}
+		
 		// Creates the writer that will write the response, success or fail.
 		Writer writer;
 		try {
@@ -458,8 +483,9 @@ public class CampaignReadRequest extends UserRequest {
 			return;
 		}
 		
-		// Sets the HTTP headers to disable caching
-		expireResponse(httpResponse);
+		// Sets the HTTP headers to disable caching unless this is a campaign's
+		// XML, which must be revalidated before it is reused
+		cacheResponse(httpResponse);
 				
 		// If available, update the token.
 		if(getUser() != null) {
@@ -134,6 +134,19 @@ public class DocumentReadContentsRequest extends UserRequest {
 				UserDocumentServices.instance().userCanReadDocument(getUser().getUsername(), documentId);
 			}
 			
+			// The contents may be gzipped, so the tag is weak.
+			long lastModified = 
+				DocumentServices.instance()
+					.getDocumentLastModified(documentId).getMillis();
+			if(setCacheValidators(
+					buildETag(true, documentId + "-" + lastModified), 
+					lastModified, 
+					false)) {
+				
+				LOGGER.info("The requester's copy of the document is current.");
+				return;
+			}
+			
 			LOGGER.info("Retrieving the document's name.");
 			documentName = DocumentServices.instance().getDocumentName(documentId);
 			
@@ -157,6 +170,12 @@ public class DocumentReadContentsRequest extends UserRequest {
 	public void respond(HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
 		LOGGER.info("Writing read document contents response.");
 		
+		// If the requester already has these contents, don't send them again.
+		if(isNotModified()) {
+			respondNotModified(httpResponse);
+			return;
+		}
+		
 		// Creates the writer that will write the response, success or fail.
 		OutputStream os;
 		try {
@@ -167,8 +186,9 @@ public class DocumentReadContentsRequest extends UserRequest {
 			return;
 		}
 		
-		// Sets the HTTP headers to disable caching
-		expireResponse(httpResponse);
+		// Sets the HTTP headers to require revalidation before the contents
+		// are reused
+		cacheResponse(httpResponse);
 				
 		// If the request hasn't failed, attempt to write the file to the
 		// output stream. 
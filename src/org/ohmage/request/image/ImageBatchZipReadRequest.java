@@ -1,31 +1,34 @@
 package org.ohmage.request.image;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.UUID;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.log4j.Logger;
 import org.json.JSONObject;
+import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.domain.campaign.PromptResponse;
 import org.ohmage.domain.campaign.RepeatableSetResponse;
 import org.ohmage.domain.campaign.Response;
 import org.ohmage.domain.campaign.SurveyResponse;
 import org.ohmage.exception.InvalidRequestException;
 import org.ohmage.exception.ServiceException;
+import org.ohmage.exception.ValidationException;
+import org.ohmage.request.InputKeys;
+import org.ohmage.request.StoredZipWriter;
 import org.ohmage.request.survey.SurveyResponseRequest;
 import org.ohmage.service.ImageServices;
+import org.ohmage.validator.SurveyResponseValidators;
 
 /**
  * <p>Reads all of the images for a campaign that match the given criteria and
@@ -91,6 +94,20 @@ import org.ohmage.service.ImageServices;
  *       </td>
  *     <td>false</td>
  *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#NUM_TO_SKIP}</td>
+ *     <td>The number of survey responses to skip. The survey responses are
+ *       ordered oldest first, so an interrupted export may be resumed by
+ *       skipping the survey responses whose images were already received.
+ *       </td>
+ *     <td>false</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#NUM_TO_RETURN}</td>
+ *     <td>The number of survey responses whose images should be returned.
+ *       </td>
+ *     <td>false</td>
+ *   </tr>
  * </table>
  *
  * @author John Jenkins
@@ -99,6 +116,9 @@ public class ImageBatchZipReadRequest extends SurveyResponseRequest {
 	private static final Logger LOGGER = 
 			Logger.getLogger(ImageBatchZipReadRequest.class);
 	
+	private final long numSurveyResponsesToSkip;
+	private final long numSurveyResponsesToProcess;
+	
 	private final Map<UUID, URL> imageUrls;
 	
 	/**
@@ -114,13 +134,54 @@ public class ImageBatchZipReadRequest extends SurveyResponseRequest {
 	public ImageBatchZipReadRequest(final HttpServletRequest httpRequest) throws IOException, InvalidRequestException {
 		super(httpRequest);
 		
-		// There are no parameters specific to this API that aren't covered in
-		// the SurveyResponseRequest.
+		long tNumSurveyResponsesToSkip = 0;
+		long tNumSurveyResponsesToProcess = Long.MAX_VALUE;
+		
 		if(! isFailed()) {
 			LOGGER.info("Creating an image ZIP read request.");
+			String[] t;
+			
+			try {
+				// Number of survey responses to skip.
+				t = getParameterValues(InputKeys.NUM_TO_SKIP);
+				if(t.length > 1) {
+					throw new ValidationException(
+							ErrorCode.SERVER_INVALID_NUM_TO_SKIP, 
+							"Multiple values were given for the number of survey responses to skip: " + 
+								InputKeys.NUM_TO_SKIP);
+				}
+				else if(t.length == 1) {
+					tNumSurveyResponsesToSkip = 
+							SurveyResponseValidators
+								.validateNumSurveyResponsesToSkip(t[0]);
+				}
+				
+				// Number of survey responses to process.
+				t = getParameterValues(InputKeys.NUM_TO_RETURN);
+				if(t.length > 1) {
+					throw new ValidationException(
+							ErrorCode.SERVER_INVALID_NUM_TO_RETURN, 
+							"Multiple values were given for the number of survey responses to process: " + 
+								InputKeys.NUM_TO_RETURN);
+				}
+				else if(t.length == 1) {
+					tNumSurveyResponsesToProcess = 
+							SurveyResponseValidators
+								.validateNumSurveyResponsesToProcess(
+										t[0], 
+										tNumSurveyResponsesToProcess);
+				}
+			}
+			catch(ValidationException e) {
+				e.failRequest(this);
+				e.logException(LOGGER);
+			}
 		}
 		
-		imageUrls = new HashMap<UUID, URL>();
+		numSurveyResponsesToSkip = tNumSurveyResponsesToSkip;
+		numSurveyResponsesToProcess = tNumSurveyResponsesToProcess;
+		
+		imageUrls = new LinkedHashMap<UUID, URL>();
 	}
 	
 	/**
@@ -135,19 +196,21 @@ public class ImageBatchZipReadRequest extends SurveyResponseRequest {
 				new ArrayList<SurveyResponse.ColumnKey>(1);
 		promptResponseColumn.add(SurveyResponse.ColumnKey.PROMPT_RESPONSE);
 		
+		// The survey responses are ordered oldest first so that new uploads
+		// don't shift the survey responses of a resumed export.
 		super.service(
 				promptResponseColumn, 
 				"photo",
-				null,
+				Arrays.asList(SurveyResponse.SortParameter.TIMESTAMP),
 				false, 
-				0, 
-				Long.MAX_VALUE);
+				numSurveyResponsesToSkip, 
+				numSurveyResponsesToProcess);
 		if(isFailed()) {
 			return;
 		}
 		
 		LOGGER.info("Gathering the UUIDs from the survey responses.");
-		Collection<UUID> imageIds = new HashSet<UUID>();
+		Collection<UUID> imageIds = new LinkedHashSet<UUID>();
 		for(SurveyResponse surveyResponse : getSurveyResponses()) {
 			imageIds.addAll(getImageIds(surveyResponse.getResponses().values()));
 		}
@@ -189,123 +252,31 @@ public class ImageBatchZipReadRequest extends SurveyResponseRequest {
 		
 		// We are going to try to write the response, so we will need to set
 		// the header to indicate that this will be an attachment.
+		httpResponse.setContentType("application/zip");
 		httpResponse.setHeader(
 				"Content-Disposition", 
 				"attachment; filename=images.zip");
 		
-		// Create the zip stream to the outside world.
-		ZipOutputStream zipStream = null;
-		try {
-			zipStream = 
-					new ZipOutputStream(
-						getOutputStream(httpRequest, httpResponse));
-		}
-		catch(IOException e) {
-			LOGGER.error("Unable to write response message. Aborting.", e);
-			return;
-		}
-		
-		// Stream each image into the input of the ZIP stream.
-		int lengthRead;
-		byte[] buffer = new byte[4096];
+		// Build the entries in the order of the survey responses.
+		Map<String, URL> entries = new LinkedHashMap<String, URL>();
 		for(UUID imageId : imageUrls.keySet()) {
-			// First, attempt to connect to the image. If this cannot be done,
-			// we will simply skip this image and not return it in the ZIP 
-			// file.
-			InputStream imageStream;
-			try {
-				URL imageUrl = imageUrls.get(imageId);
-				imageStream = imageUrl.openStream();
-			}
-			catch(IOException e) {
-				LOGGER.info(
-						"The image does not exist, so it will not be added to the ZIP file: " +
-							imageId.toString(),
-						e);
-				continue;
-			}
-			
-			// Next, we create a new entry in the ZIP file for this image.
-			try {
-				zipStream.putNextEntry(new ZipEntry(imageId.toString() + ".png"));
-			}
-			catch(IOException e) {
-				LOGGER.error(
-						"Unable to add an entry to the stream: " +
-							imageId.toString(),
-						e);
-				break;
-			}
-			
-			// Attempt to read from the image buffer and shuffle it into the 
-			// ZIP file buffer.
-			try {
-				while((lengthRead = imageStream.read(buffer)) != -1) {
-					try {
-						zipStream.write(buffer, 0, lengthRead);
-					}
-					catch(IOException e) {
-						LOGGER.error(
-								"There was a problem writing the response: " +
-									imageId.toString(),
-								e);
-						break;
-					}
-				}
-			}
-			catch(IOException e) {
-				LOGGER.error(
-						"There was a problem reading the image's contents: " +
-							imageId.toString(),
-						e);
-				break;
-			}
-			
-			// Once we have copied the entire image into the buffer, we can 
-			// close it. If it fails to close, we don't really care because we
-			// have supposedly read everything we need.
-			try {
-				imageStream.close();	
-			}
-			catch(IOException e) {
-				LOGGER.error(
-						"There was a problem closing the connection to the image: " +
-							imageId.toString(),
-						e);
-				
-				// We don't abort here, because everything should have been
-				// successfully written to to the stream. Therefore, we should
-				// log that it happened, but we can safely continue.
-			}
-			
-			// Finally, close this entry in the ZIP file.
-			try {
-				zipStream.closeEntry();
-			}
-			catch(IOException e) {
-				LOGGER.error(
-						"There was a problem closing this image's entry: " +
-							imageId.toString(),
-						e);
-				break;
-			}
+			entries.put(imageId.toString() + ".png", imageUrls.get(imageId));
 		}
 		
-		// No matter what happens, we still try to flush what we did write to
-		// the output stream.
+		// The images are already compressed, so they are stored in the ZIP
+		// file as-is and the ZIP file is not GZIP'd.
 		try {
-			zipStream.flush();
-		}
-		catch(IOException e) {
-			LOGGER.error("Couldn't flush the stream.", e);
-		}
-		
-		// Finally, we always want to close the stream.
-		try {
-			zipStream.close();
+			int written = 
+					new StoredZipWriter().write(
+						entries, 
+						httpResponse.getOutputStream());
+			
+			LOGGER.info(
+					"Wrote " + written + " of " + entries.size() + 
+						" images to the ZIP file.");
 		}
 		catch(IOException e) {
-			LOGGER.error("Couldn't close the stream.", e);
+			LOGGER.error("Unable to write the ZIP file. Aborting.", e);
 		}
 	}
 	
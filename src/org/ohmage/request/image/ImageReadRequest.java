@@ -15,10 +15,9 @@
  ******************************************************************************/
 package org.ohmage.request.image;
 
-import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.UUID;
 
 import javax.servlet.http.HttpServletRequest;
@@ -34,6 +33,7 @@ import org.ohmage.exception.InvalidRequestException;
 import org.ohmage.exception.ServiceException;
 import org.ohmage.exception.ValidationException;
 import org.ohmage.request.InputKeys;
+import org.ohmage.request.MediaWriter;
 import org.ohmage.request.UserRequest;
 import org.ohmage.service.ImageServices;
 import org.ohmage.service.UserImageServices;
@@ -77,8 +77,6 @@ import org.ohmage.validator.ImageValidators;
 public class ImageReadRequest extends UserRequest {
 	private static final Logger LOGGER = Logger.getLogger(ImageReadRequest.class);
 	
-	private static final int CHUNK_SIZE = 4096;
-	
 	private final UUID imageId;
 	private final Image.Size size;
 	
@@ -177,6 +175,16 @@ public class ImageReadRequest extends UserRequest {
 				UserImageServices.instance().verifyUserCanReadImage(getUser().getUsername(), imageId);
 			}
 			
+			// Images are never modified, so their ID and size identify them.
+			if(setCacheValidators(
+					buildETag(false, imageId + "-" + size.getName()), 
+					-1, 
+					true)) {
+				
+				LOGGER.info("The requester's copy of the image is current.");
+				return;
+			}
+			
 			LOGGER.info("Retrieving the original image.");
 			image = ImageServices.instance().getImage(imageId, size);
 		}
@@ -194,25 +202,26 @@ public class ImageReadRequest extends UserRequest {
 	public void respond(HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
 		LOGGER.info("Writing the image read response.");
 		
-		if(ANDROID_CLIENT_NAME.equals(getClient())) {
-
-			// TODO move to web server configuration for all image file types?
-			// For now, this allows images to be stored by clients for one year
-			// and specifies private to disable intermediaries from caching the
-			// image. (HTTP 1.1)
-			httpResponse.setHeader("Cache-Control", "max-age=1051200, private");  
-						
-		} else {
-
-			// Sets the HTTP headers to disable caching
-			expireResponse(httpResponse);
+		// If the requester already has this image, don't send it again.
+		if(isNotModified()) {
+			respondNotModified(httpResponse);
+			return;
 		}
+		
+		// Allows the image to be cached by the requester, but not by
+		// intermediaries, as it never changes.
+		cacheResponse(httpResponse);
 				
-		// Open the connection to the image if it is not null.
+		// Find the image's file or, if it isn't a local file, open the
+		// connection to the image.
+		File imageFile = null;
 		InputStream imageStream = null;
 		try {
 			if(image != null) {
-				imageStream = image.getInputStream(size);
+				imageFile = MediaWriter.getLocalFile(image.getUrl(size));
+				if(imageFile == null) {
+					imageStream = image.getInputStream(size);
+				}
 			}
 		}
 		catch(DomainException e) {
@@ -236,9 +245,6 @@ public class ImageReadRequest extends UserRequest {
 				// some sort of image inspection to figure out what this should
 				// be.
 				httpResponse.setContentType(image.getContentType(size));
-				httpResponse.setHeader(
-						"Content-Length", 
-						new Long(image.getSizeBytes(size)).toString());
 				
 				// If available, set the token.
 				if(getUser() != null) {
@@ -251,41 +257,16 @@ public class ImageReadRequest extends UserRequest {
 					}
 				}
 
-				// Creates the writer that will write the response, success or 
-				// fail.
-				OutputStream os;
-				try {
-					os = httpResponse.getOutputStream();
-				}
-				catch(IOException e) {
-					LOGGER.error(
-							"Unable to create writer object. Aborting.", 
-							e);
-					return;
-				}
-				
-				// Set the output stream to the response.
-				DataOutputStream dos = new DataOutputStream(os);
-				byte[] bytes = new byte[CHUNK_SIZE];
-				int currRead;
-				try {
-					while((currRead = imageStream.read(bytes)) != -1) {
-						dos.write(bytes, 0, currRead);
-					}
+				// Write the image. Local files are written directly from the
+				// file system and may be ranged.
+				if(imageFile != null) {
+					MediaWriter.writeFile(httpRequest, httpResponse, imageFile);
 				}
-				finally {
-					// Close the data output stream to which we were writing.
-					try {
-						dos.close();
-					}
-					// SN: commenting as this exception is a subclass of IOException
-					// and the exception is tomcat-specific.
-					//catch(ClientAbortException e) {
-					//	LOGGER.info("The client hung up unexpectedly.", e);
-					//}
-					catch(IOException e) {
-						LOGGER.warn("Error closing the data output stream.", e);
-					}
+				else {
+					MediaWriter.writeStream(
+						httpResponse, 
+						imageStream, 
+						image.getSizeBytes(size));
 				}
 			}
 		}
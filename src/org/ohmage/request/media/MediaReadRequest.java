@@ -1,9 +1,8 @@
 package org.ohmage.request.media;
 
-import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.UUID;
 
 import javax.servlet.http.HttpServletRequest;
@@ -19,6 +18,7 @@ import org.ohmage.exception.InvalidRequestException;
 import org.ohmage.exception.ServiceException;
 import org.ohmage.exception.ValidationException;
 import org.ohmage.request.InputKeys;
+import org.ohmage.request.MediaWriter;
 import org.ohmage.request.UserRequest;
 import org.ohmage.service.ImageServices;
 import org.ohmage.service.MediaServices;
@@ -34,11 +34,6 @@ public class MediaReadRequest extends UserRequest {
 	private static final Logger LOGGER = 
 		Logger.getLogger(MediaReadRequest.class);
 
-	/**
-	 * The size of a chunk when reading the media data.
-	 */
-	private static final int CHUNK_SIZE = 4096;
-	
 	/**
 	 * The ID of the media file in question from the request.
 	 */
@@ -130,6 +125,21 @@ public class MediaReadRequest extends UserRequest {
 				getUser().getUsername(), 
 				mediaId);
 			
+			// Media are never modified, so their ID and size identify them.
+			if(setCacheValidators(
+					buildETag(
+						false, 
+						mediaId + 
+							((imageSize == null) ? 
+								"" : 
+								"-" + imageSize.getName())), 
+					-1, 
+					true)) {
+				
+				LOGGER.info("The requester's copy of the media is current.");
+				return;
+			}
+			
 			LOGGER.info("Connecting to the media stream.");
 			if (imageSize == null)
 				media = MediaServices.instance().getMedia(mediaId);
@@ -156,8 +166,15 @@ public class MediaReadRequest extends UserRequest {
 
 		LOGGER.info("Responding to a media read request.");
 		
-		// Sets the HTTP headers to disable caching
-		expireResponse(httpResponse);
+		// If the requester already has this media, don't send it again.
+		if(isNotModified()) {
+			respondNotModified(httpResponse);
+			return;
+		}
+		
+		// Allows the media to be cached by the requester, but not by
+		// intermediaries, as it never changes.
+		cacheResponse(httpResponse);
 				
 		// Open the connection to the media if it is not null.
 		InputStream mediaStream = null;
@@ -169,9 +186,16 @@ public class MediaReadRequest extends UserRequest {
 			}
 			else {
 				
+				// Local files are written directly from the file system and
+				// may be ranged.
+				File mediaFile;
+				long mediaSize;
 				if (imageSize == null) {
 					
-					mediaStream = media.getContentStream();
+					mediaFile = MediaWriter.getLocalFile(media.getUrl());
+					if (mediaFile == null)
+						mediaStream = media.getContentStream();
+					mediaSize = media.getFileSize();
 					String contentType = media.getContentType();
 					
 					// set content type
@@ -181,16 +205,13 @@ public class MediaReadRequest extends UserRequest {
 					if (contentType.startsWith("application") || contentType.startsWith("text"))
 						httpResponse.setHeader("Content-Disposition", 
 								"attachment; filename=" + media.getFileName());
-					
-					httpResponse.setHeader("Content-Length", 
-						new Long(media.getFileSize()).toString());
 
 				} else { // it is an image/read request
-					mediaStream =  image.getInputStream(imageSize);
+					mediaFile = MediaWriter.getLocalFile(image.getUrl(imageSize));
+					if (mediaFile == null)
+						mediaStream = image.getInputStream(imageSize);
+					mediaSize = image.getSizeBytes(imageSize);
 					httpResponse.setContentType(image.getContentType(imageSize));
-					httpResponse.setHeader("Content-Length", 
-							new Long(image.getSizeBytes(imageSize)).toString());
-					
 				}
 				
 				// If available, set the token.
@@ -204,39 +225,12 @@ public class MediaReadRequest extends UserRequest {
 					}
 				}
 
-				// Creates the writer that will write the response, success or 
-				// fail.
-				OutputStream os;
-				try {
-					os = httpResponse.getOutputStream();
+				if(mediaFile != null) {
+					MediaWriter.writeFile(httpRequest, httpResponse, mediaFile);
 				}
-				catch(IOException e) {
-					LOGGER.error(
-							"Unable to create writer object. Aborting.", 
-							e);
-					return;
+				else {
+					MediaWriter.writeStream(httpResponse, mediaStream, mediaSize);
 				}
-				
-				// Set the output stream to the response.
-				DataOutputStream dos = new DataOutputStream(os);
-				byte[] bytes = new byte[CHUNK_SIZE];
-				int currRead;
-				while((currRead = mediaStream.read(bytes)) != -1) {
-					dos.write(bytes, 0, currRead);
-				}
-				
-				// Close the image's InputStream.
-				mediaStream.close();
-				
-				// Flush and close the data output stream to which we were 
-				// writing.
-				dos.flush();
-				dos.close();
-				
-				// Flush and close the output stream that was used to generate
-				// the data output stream.
-				os.flush();
-				os.close();
 			}
 		}
 		catch(DomainException e) {
@@ -0,0 +1,365 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request.survey;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.joda.time.DateTime;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.campaign.Campaign;
+import org.ohmage.domain.campaign.PromptResponseAggregate;
+import org.ohmage.domain.campaign.SurveyResponse;
+import org.ohmage.exception.InvalidRequestException;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.exception.ValidationException;
+import org.ohmage.request.InputKeys;
+import org.ohmage.request.UserRequest;
+import org.ohmage.service.CampaignServices;
+import org.ohmage.service.SurveyResponseServices;
+import org.ohmage.validator.CampaignValidators;
+import org.ohmage.validator.SurveyResponseValidators;
+
+/**
+ * <p>Aggregates the responses to number, hours-before-now, timestamp, and
+ * single-choice prompts in the database. For each prompt, and optionally for
+ * each user and/or day, the count, minimum, maximum, and average of the
+ * responses are returned. Single-choice prompts also return a histogram of
+ * their keys, and the other prompts return a histogram if a bucket width is
+ * given. Skipped and not-displayed responses are not counted. Only the
+ * responses that the requester is allowed to see are aggregated.</p>
+ * <table border="1">
+ *   <tr>
+ *     <td>Parameter Name</td>
+ *     <td>Description</td>
+ *     <td>Required</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#AUTH_TOKEN}</td>
+ *     <td>The requesting user's authentication token. This may be a parameter
+ *       or may be a cookie in the HTTP request.</td>
+ *     <td>false</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#CLIENT}</td>
+ *     <td>A string describing the client that is making this request.</td>
+ *     <td>true</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#CAMPAIGN_URN}</td>
+ *     <td>The campaigns's unique identifier.</td>
+ *     <td>true</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#PROMPT_ID_LIST}</td>
+ *     <td>The prompts whose responses should be aggregated divided by
+ *       {@link org.ohmage.request.InputKeys#LIST_ITEM_SEPARATOR LIST_ITEM_SEPARATOR}s.
+ *       </td>
+ *     <td>true</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#SURVEY_AGGREGATE_GROUP_ITEM_LIST}</td>
+ *     <td>The items by which to further split the results. This should be a
+ *       list of
+ *       {@link org.ohmage.domain.campaign.PromptResponseAggregate.GroupItem}
+ *       values divided by
+ *       {@link org.ohmage.request.InputKeys#LIST_ITEM_SEPARATOR LIST_ITEM_SEPARATOR}s.
+ *       </td>
+ *     <td>false</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#SURVEY_AGGREGATE_BUCKET_WIDTH}</td>
+ *     <td>The width of the histogram buckets for number, hours-before-now,
+ *       and timestamp prompts. Timestamps are in milliseconds.</td>
+ *     <td>false</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#USER_LIST}</td>
+ *     <td>Limits the results to the responses from these users.</td>
+ *     <td>false</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#PRIVACY_STATE}</td>
+ *     <td>Limits the results to the responses with this privacy state.</td>
+ *     <td>false</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#START_DATE}</td>
+ *     <td>Limits the results to the responses on or after this date.</td>
+ *     <td>false</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#END_DATE}</td>
+ *     <td>Limits the results to the responses on or before this date.</td>
+ *     <td>false</td>
+ *   </tr>
+ * </table>
+ */
+public class SurveyResponseAggregateReadRequest extends UserRequest {
+	private static final Logger LOGGER =
+		Logger.getLogger(SurveyResponseAggregateReadRequest.class);
+
+	private final String campaignId;
+	private final Collection<String> promptIds;
+	private final Collection<PromptResponseAggregate.GroupItem> groupItems;
+	private final Double bucketWidth;
+
+	private final Collection<String> usernames;
+	private final SurveyResponse.PrivacyState privacyState;
+	private final DateTime startDate;
+	private final DateTime endDate;
+
+	private List<PromptResponseAggregate> aggregates;
+
+	/**
+	 * Creates a new survey response aggregate read request.
+	 *
+	 * @param httpRequest The HttpServletRequest with the parameters for the
+	 * 					  request.
+	 *
+	 * @throws InvalidRequestException Thrown if the parameters cannot be
+	 * 								   parsed.
+	 *
+	 * @throws IOException There was an error reading from the request.
+	 */
+	public SurveyResponseAggregateReadRequest(
+			final HttpServletRequest httpRequest)
+			throws IOException, InvalidRequestException {
+
+		super(httpRequest, false, TokenLocation.EITHER, null);
+
+		LOGGER.info("Creating a survey response aggregate read request.");
+
+		String tCampaignId = null;
+		Collection<String> tPromptIds = null;
+		Collection<PromptResponseAggregate.GroupItem> tGroupItems =
+			Collections.emptySet();
+		Double tBucketWidth = null;
+
+		Collection<String> tUsernames = null;
+		SurveyResponse.PrivacyState tPrivacyState = null;
+		DateTime tStartDate = null;
+		DateTime tEndDate = null;
+
+		if(! isFailed()) {
+			try {
+				String[] t;
+
+				t = getParameterValues(InputKeys.CAMPAIGN_URN);
+				if(t.length > 1) {
+					throw new ValidationException(
+							ErrorCode.CAMPAIGN_INVALID_ID,
+							"Multiple campaign IDs were found: " +
+								InputKeys.CAMPAIGN_URN);
+				}
+				else if(t.length == 1) {
+					tCampaignId = CampaignValidators.validateCampaignId(t[0]);
+				}
+				if(tCampaignId == null) {
+					throw new ValidationException(
+							ErrorCode.CAMPAIGN_INVALID_ID,
+							"The required campaign ID is missing: " +
+								InputKeys.CAMPAIGN_URN);
+				}
+
+				t = getParameterValues(InputKeys.PROMPT_ID_LIST);
+				if(t.length > 1) {
+					throw new ValidationException(
+							ErrorCode.SURVEY_MALFORMED_PROMPT_ID_LIST,
+							"Multiple prompt ID lists were given: " +
+								InputKeys.PROMPT_ID_LIST);
+				}
+				else if(t.length == 1) {
+					tPromptIds = SurveyResponseValidators.validatePromptIds(t[0]);
+				}
+				if((tPromptIds == null) || tPromptIds.isEmpty()) {
+					throw new ValidationException(
+							ErrorCode.SURVEY_MALFORMED_PROMPT_ID_LIST,
+							"The required prompt ID list is missing: " +
+								InputKeys.PROMPT_ID_LIST);
+				}
+
+				t = getParameterValues(
+						InputKeys.SURVEY_AGGREGATE_GROUP_ITEM_LIST);
+				if(t.length > 1) {
+					throw new ValidationException(
+							ErrorCode.SURVEY_INVALID_AGGREGATE_GROUP_ITEM,
+							"Multiple group item lists were given: " +
+								InputKeys.SURVEY_AGGREGATE_GROUP_ITEM_LIST);
+				}
+				else if(t.length == 1) {
+					tGroupItems =
+						SurveyResponseValidators.validateAggregateGroupList(
+								t[0]);
+				}
+
+				t = getParameterValues(InputKeys.SURVEY_AGGREGATE_BUCKET_WIDTH);
+				if(t.length > 1) {
+					throw new ValidationException(
+							ErrorCode.SURVEY_INVALID_AGGREGATE_BUCKET_WIDTH,
+							"Multiple bucket widths were given: " +
+								InputKeys.SURVEY_AGGREGATE_BUCKET_WIDTH);
+				}
+				else if(t.length == 1) {
+					tBucketWidth =
+						SurveyResponseValidators.validateBucketWidth(t[0]);
+				}
+
+				t = getParameterValues(InputKeys.USER_LIST);
+				if(t.length > 1) {
+					throw new ValidationException(
+							ErrorCode.SURVEY_MALFORMED_USER_LIST,
+							"Multiple user lists were given: " +
+								InputKeys.USER_LIST);
+				}
+				else if(t.length == 1) {
+					tUsernames = SurveyResponseValidators.validateUsernames(t[0]);
+
+					// The special "all" value is the same as no list.
+					if((tUsernames != null) &&
+						tUsernames.contains(
+							SurveyResponseRequest.URN_SPECIAL_ALL)) {
+
+						tUsernames = null;
+					}
+				}
+
+				t = getParameterValues(InputKeys.PRIVACY_STATE);
+				if(t.length > 1) {
+					throw new ValidationException(
+							ErrorCode.SURVEY_INVALID_PRIVACY_STATE,
+							"Multiple privacy states were given: " +
+								InputKeys.PRIVACY_STATE);
+				}
+				else if(t.length == 1) {
+					tPrivacyState =
+						SurveyResponseValidators.validatePrivacyState(t[0]);
+				}
+
+				t = getParameterValues(InputKeys.START_DATE);
+				if(t.length > 1) {
+					throw new ValidationException(
+							ErrorCode.SERVER_INVALID_DATE,
+							"Multiple start dates were given: " +
+								InputKeys.START_DATE);
+				}
+				else if(t.length == 1) {
+					tStartDate =
+						SurveyResponseValidators.validateStartDate(t[0]);
+				}
+
+				t = getParameterValues(InputKeys.END_DATE);
+				if(t.length > 1) {
+					throw new ValidationException(
+							ErrorCode.SERVER_INVALID_DATE,
+							"Multiple end dates were given: " +
+								InputKeys.END_DATE);
+				}
+				else if(t.length == 1) {
+					tEndDate = SurveyResponseValidators.validateEndDate(t[0]);
+				}
+			}
+			catch(ValidationException e) {
+				e.failRequest(this);
+				e.logException(LOGGER);
+			}
+		}
+
+		campaignId = tCampaignId;
+		promptIds = tPromptIds;
+		groupItems = tGroupItems;
+		bucketWidth = tBucketWidth;
+
+		usernames = tUsernames;
+		privacyState = tPrivacyState;
+		startDate = tStartDate;
+		endDate = tEndDate;
+
+		aggregates = Collections.emptyList();
+	}
+
+	/**
+	 * Services the request.
+	 */
+	@Override
+	public void service() {
+		LOGGER.info("Servicing the survey response aggregate read request.");
+
+		if(! authenticate(AllowNewAccount.NEW_ACCOUNT_DISALLOWED)) {
+			return;
+		}
+
+		try {
+			LOGGER.info("Verifying that the campaign exists.");
+			CampaignServices.instance().checkCampaignExistence(campaignId, true);
+
+			LOGGER.info("Gathering the campaign.");
+			Campaign campaign =
+				CampaignServices.instance().getCampaign(campaignId);
+
+			// No need for verification since the ACL is done at the response
+			// level.
+			LOGGER.info("Aggregating the prompt responses.");
+			aggregates =
+				SurveyResponseServices.instance().readPromptResponseAggregates(
+					campaign,
+					getUser().getUsername(),
+					promptIds,
+					usernames,
+					startDate,
+					endDate,
+					privacyState,
+					groupItems,
+					bucketWidth);
+		}
+		catch(ServiceException e) {
+			e.failRequest(this);
+			e.logException(LOGGER);
+		}
+	}
+
+	/**
+	 * Responds with the aggregates.
+	 */
+	@Override
+	public void respond(
+			final HttpServletRequest httpRequest,
+			final HttpServletResponse httpResponse) {
+
+		LOGGER.info("Responding to the survey response aggregate read request.");
+
+		JSONArray result = new JSONArray();
+		try {
+			for(PromptResponseAggregate aggregate : aggregates) {
+				result.put(aggregate.toJsonObject());
+			}
+		}
+		catch(JSONException e) {
+			LOGGER.error("Error building the response.", e);
+			setFailed();
+		}
+
+		super.respond(httpRequest, httpResponse, JSON_KEY_DATA, result);
+	}
+}
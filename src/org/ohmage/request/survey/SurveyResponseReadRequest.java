@@ -25,12 +25,12 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import javax.servlet.http.HttpServletRequest;
@@ -52,6 +52,7 @@ import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.cache.PreferenceCache;
 import org.ohmage.domain.Location;
 import org.ohmage.domain.Location.LocationColumnKey;
+import org.ohmage.domain.SurveyResponseAnnotations;
 import org.ohmage.domain.campaign.Prompt;
 import org.ohmage.domain.campaign.Prompt.LabelValuePair;
 import org.ohmage.domain.campaign.PromptResponse;
@@ -74,10 +75,19 @@ import org.ohmage.domain.campaign.response.SingleChoicePromptResponse;
 import org.ohmage.exception.CacheMissException;
 import org.ohmage.exception.DomainException;
 import org.ohmage.exception.InvalidRequestException;
+import org.ohmage.exception.ServiceException;
 import org.ohmage.exception.ValidationException;
+import org.ohmage.request.ColumnarResultBuilder;
+import org.ohmage.request.ColumnarResultBuilder.DateTimeColumn;
+import org.ohmage.request.ColumnarResultBuilder.DictionaryColumn;
+import org.ohmage.request.ColumnarResultBuilder.DoubleColumn;
+import org.ohmage.request.ColumnarResultBuilder.LongColumn;
+import org.ohmage.request.ColumnarResultBuilder.ObjectColumn;
+import org.ohmage.request.ColumnarResultBuilder.StringColumn;
 import org.ohmage.request.InputKeys;
 import org.ohmage.request.observer.StreamReadRequest.ColumnNode;
 import org.ohmage.request.omh.OmhReadResponder;
+import org.ohmage.service.UserAnnotationServices;
 import org.ohmage.util.DateTimeUtils;
 import org.ohmage.validator.SurveyResponseValidators;
 
@@ -199,6 +209,16 @@ import org.ohmage.validator.SurveyResponseValidators;
  *       </td>
  *     <td>false</td>
  *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#INCLUDE_ANNOTATIONS}</td>
+ *     <td>For {@value #_OUTPUT_FORMAT_JSON_ROWS} and
+ *     {@value #_OUTPUT_FORMAT_JSON_COLUMNS} output, whether to include the
+ *     annotations on each survey response and on its prompt responses. Only
+ *     admins and supervisors in the campaign may read annotations, and it
+ *     cannot be combined with
+ *     {@value org.ohmage.request.InputKeys#COLLAPSE}.</td>
+ *     <td>false</td>
+ *   </tr>
  * </table>
  * 
  * @author Joshua Selsky
@@ -260,6 +280,21 @@ public final class SurveyResponseReadRequest
 	 * @see org.ohmage.request.InputKeys#COLLAPSE
 	 */
 	public static final String JSON_KEY_COUNT = "count";
+	/**
+	 * The JSON key associated with every record's annotations if the input
+	 * parameter {@link org.ohmage.request.InputKeys#INCLUDE_ANNOTATIONS
+	 * include_annotations} is true.
+	 * 
+	 * @see org.ohmage.request.InputKeys#INCLUDE_ANNOTATIONS
+	 */
+	public static final String JSON_KEY_ANNOTATIONS = "annotations";
+	/**
+	 * The column key for the annotations in 
+	 * {@link org.ohmage.domain.campaign.SurveyResponse.OutputFormat#JSON_COLUMNS JSON_COLUMNS}
+	 * output.
+	 */
+	public static final String COLUMN_KEY_ANNOTATIONS = 
+		"urn:ohmage:context:annotations";
 	
 	final Collection<SurveyResponse.ColumnKey> columns;
 	private final SurveyResponse.OutputFormat outputFormat;
@@ -269,6 +304,9 @@ public final class SurveyResponseReadRequest
 	private final Boolean prettyPrint;
 	private final Boolean returnId;
 	private final Boolean suppressMetadata;
+	private final Boolean includeAnnotations;
+	
+	private Map<UUID, SurveyResponseAnnotations> annotations = null;
 	
 	final long surveyResponsesToSkip;
 	final long surveyResponsesToProcess;
@@ -378,6 +416,7 @@ public final class SurveyResponseReadRequest
 		this.prettyPrint = prettyPrint;
 		this.returnId = returnId;
 		this.suppressMetadata = suppressMetadata;
+		this.includeAnnotations = null;
 		
 		if(numResponsesToSkip == null) {
 			this.surveyResponsesToSkip = 0;
@@ -434,6 +473,7 @@ public final class SurveyResponseReadRequest
 		Boolean tPrettyPrint = null;
 		Boolean tReturnId = null;
 		Boolean tSuppressMetadata = null;
+		Boolean tIncludeAnnotations = null;
 		
 		long tSurveyResponsesToSkip = 0;
 		long tSurveyResponsesToProcess = -1;
@@ -581,6 +621,32 @@ public final class SurveyResponseReadRequest
 									t[0]);
 				}
 				
+				// Include annotations
+				t = getParameterValues(InputKeys.INCLUDE_ANNOTATIONS);
+				if(t.length > 1) {
+					throw new ValidationException(
+							ErrorCode.SURVEY_INVALID_INCLUDE_ANNOTATIONS_VALUE, 
+							"Multiple include annotations values were given: " + 
+								InputKeys.INCLUDE_ANNOTATIONS);
+				}
+				else if(t.length == 1) {
+					tIncludeAnnotations = 
+							SurveyResponseValidators.validateIncludeAnnotations(
+									t[0]);
+				}
+				if((tIncludeAnnotations != null) && tIncludeAnnotations) {
+					if(OutputFormat.CSV.equals(tOutputFormat)) {
+						throw new ValidationException(
+								ErrorCode.SURVEY_INVALID_INCLUDE_ANNOTATIONS_VALUE, 
+								"Annotations cannot be included in CSV output.");
+					}
+					if((tCollapse != null) && tCollapse) {
+						throw new ValidationException(
+								ErrorCode.SURVEY_INVALID_INCLUDE_ANNOTATIONS_VALUE, 
+								"Annotations cannot be included in collapsed results.");
+					}
+				}
+				
 				// Number of survey responses to skip.
 				t = getParameterValues(InputKeys.NUM_TO_SKIP);
 				if(t.length > 1) {
@@ -625,6 +691,7 @@ public final class SurveyResponseReadRequest
 		prettyPrint = tPrettyPrint;
 		returnId = tReturnId;
 		suppressMetadata = tSuppressMetadata;
+		includeAnnotations = tIncludeAnnotations;
 		
 		surveyResponsesToSkip = tSurveyResponsesToSkip;
 		surveyResponsesToProcess = tSurveyResponsesToProcess;
@@ -644,6 +711,34 @@ public final class SurveyResponseReadRequest
 				collapse, 
 				surveyResponsesToSkip, 
 				surveyResponsesToProcess);
+		
+		if(isFailed() || (includeAnnotations == null) || (! includeAnnotations)) {
+			return;
+		}
+		
+		try {
+			LOGGER.info("Verifying that the user may read the annotations.");
+			UserAnnotationServices.instance().verifyUserCanReadSurveyResponseAnnotations(
+					getUser().getUsername(), 
+					getCampaignId());
+			
+			// Read the annotations for the whole page at once.
+			LOGGER.info("Reading the annotations on the survey responses.");
+			Collection<SurveyResponse> surveyResponses = getSurveyResponses();
+			List<UUID> surveyResponseIds = 
+					new ArrayList<UUID>(surveyResponses.size());
+			for(SurveyResponse surveyResponse : surveyResponses) {
+				surveyResponseIds.add(surveyResponse.getSurveyResponseId());
+			}
+			annotations = 
+					UserAnnotationServices.instance().readSurveyResponseAnnotations(
+							getCampaignId(), 
+							surveyResponseIds);
+		}
+		catch(ServiceException e) {
+			e.failRequest(this);
+			e.logException(LOGGER);
+		}
 	}
 
 	/*
@@ -839,6 +934,12 @@ public final class SurveyResponseReadRequest
 							}
 						}
 						
+						if(annotations != null) {
+							currResult.put(
+									JSON_KEY_ANNOTATIONS, 
+									getAnnotationsJson(surveyResponse));
+						}
+						
 						results.put(currResult);
 					}
 					result.put(JSON_KEY_DATA, results);
@@ -902,28 +1003,8 @@ public final class SurveyResponseReadRequest
 				else if(OutputFormat.JSON_COLUMNS.equals(outputFormat) || 
 						OutputFormat.CSV.equals(outputFormat)) {
 					
-					JSONArray usernames = new JSONArray();
-					JSONArray clients = new JSONArray();
-					JSONArray privacyStates = new JSONArray();
-					JSONArray dates = new JSONArray();
-					JSONArray timestamps = new JSONArray();
-					JSONArray utcTimestamps = new JSONArray();
-					JSONArray epochMillisTimestamps = new JSONArray();
-					JSONArray timezones = new JSONArray();
-					JSONArray locationStatuses = new JSONArray();
-					JSONArray locationLongitude = new JSONArray();
-					JSONArray locationLatitude = new JSONArray();
-					JSONArray locationTimestamp = new JSONArray();
-					JSONArray locationTimeZone = new JSONArray();
-					JSONArray locationAccuracy = new JSONArray();
-					JSONArray locationProvider = new JSONArray();
-					JSONArray surveyIds = new JSONArray();
-					JSONArray surveyTitles = new JSONArray();
-					JSONArray surveyDescriptions = new JSONArray();
-					JSONArray launchContexts = new JSONArray();
-					JSONArray surveyResponseIds = new JSONArray();
-					JSONArray counts = new JSONArray();
-					Map<String, JSONObject> prompts = new HashMap<String, JSONObject>();
+					// The prompt columns sorted by their IDs.
+					Map<String, ObjectColumn> prompts = new TreeMap<String, ObjectColumn>();
 					
 					// If the user requested to know information about prompt
 					// responses, populate the prompt contexts with the 
@@ -997,26 +1078,19 @@ public final class SurveyResponseReadRequest
 						}
 					}
 					
-					// Process each of the survey responses and keep track of
-					// the number of prompt responses.
-					int numSurveyResponses = getSurveyResponses().size();
+					// Create the columns in the order in which they are
+					// output, per Hongsuda's request, and fill them with each
+					// of the survey responses while keeping track of the
+					// number of prompt responses.
+					ResponseColumns table = 
+							new ResponseColumns(allColumns, prompts);
 					int numPromptResponses = 0;
 					for(SurveyResponse surveyResponse : getSurveyResponses()) {
 						try {
 							numPromptResponses += processResponses(allColumns, 
 									surveyResponse, 
 									surveyResponse.getResponses(), 
-									prompts, 
-									usernames, clients, privacyStates, 
-									dates, timestamps, utcTimestamps, 
-									epochMillisTimestamps, timezones, 
-									locationStatuses, locationLongitude, 
-									locationLatitude, locationTimestamp, 
-									locationTimeZone,
-									locationAccuracy, locationProvider,
-									surveyIds, surveyTitles, surveyDescriptions, 
-									launchContexts, surveyResponseIds, counts
-								);
+									table);
 						} 
 						catch(DomainException e) {
 							LOGGER.error(
@@ -1027,160 +1101,6 @@ public final class SurveyResponseReadRequest
 						}
 					}
 					
-					// Add all of the applicable output stuff.
-					JSONObject result = new JSONObject();
-					JSONArray keysOrdered = new JSONArray();
-					
-					// For each of the requested columns, add their respective
-					// data to the result in a specific order per Hongsuda's
-					// request.
-					if(allColumns || columns.contains(ColumnKey.SURVEY_ID)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, surveyIds);
-						result.put(ColumnKey.SURVEY_ID.toString(), values);
-						keysOrdered.put(ColumnKey.SURVEY_ID.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.SURVEY_TITLE)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, surveyTitles);
-						result.put(ColumnKey.SURVEY_TITLE.toString(), values);
-						keysOrdered.put(ColumnKey.SURVEY_TITLE.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.SURVEY_DESCRIPTION)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, surveyDescriptions);
-						result.put(ColumnKey.SURVEY_DESCRIPTION.toString(), values);
-						keysOrdered.put(ColumnKey.SURVEY_DESCRIPTION.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.USER_ID)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, usernames);
-						result.put(ColumnKey.USER_ID.toString(), values);
-						keysOrdered.put(ColumnKey.USER_ID.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.CONTEXT_CLIENT)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, clients);
-						result.put(ColumnKey.CONTEXT_CLIENT.toString(), values);
-						keysOrdered.put(ColumnKey.CONTEXT_CLIENT.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.CONTEXT_UTC_TIMESTAMP)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, utcTimestamps);
-						result.put(ColumnKey.CONTEXT_UTC_TIMESTAMP.toString(), values);
-						keysOrdered.put(ColumnKey.CONTEXT_UTC_TIMESTAMP.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.CONTEXT_EPOCH_MILLIS)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, epochMillisTimestamps);
-						result.put(ColumnKey.CONTEXT_EPOCH_MILLIS.toString(), values);
-						keysOrdered.put(ColumnKey.CONTEXT_EPOCH_MILLIS.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.CONTEXT_DATE)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, timestamps);
-						result.put(ColumnKey.CONTEXT_DATE.toString(), values);
-						keysOrdered.put(ColumnKey.CONTEXT_DATE.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.CONTEXT_TIMESTAMP)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, timestamps);
-						result.put(ColumnKey.CONTEXT_TIMESTAMP.toString(), values);
-						keysOrdered.put(ColumnKey.CONTEXT_TIMESTAMP.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.CONTEXT_TIMEZONE)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, timezones);
-						result.put(ColumnKey.CONTEXT_TIMEZONE.toString(), values);
-						keysOrdered.put(ColumnKey.CONTEXT_TIMEZONE.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.PROMPT_RESPONSE)) {
-						List<String> unorderedList = new LinkedList<String>();
-						for(String promptId : prompts.keySet()) {
-							result.put(
-									SurveyResponse.ColumnKey.URN_PROMPT_ID_PREFIX + promptId, 
-									prompts.get(promptId));
-							unorderedList.add(SurveyResponse.ColumnKey.URN_PROMPT_ID_PREFIX + promptId);
-						}
-						Collections.sort(unorderedList);
-						
-						for(String columnId : unorderedList) {
-							keysOrdered.put(columnId);
-						}
-					}
-					if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_STATUS)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, locationStatuses);
-						result.put(ColumnKey.CONTEXT_LOCATION_STATUS.toString(), values);
-						keysOrdered.put(ColumnKey.CONTEXT_LOCATION_STATUS.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_LATITUDE)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, locationLatitude);
-						result.put(ColumnKey.CONTEXT_LOCATION_LATITUDE.toString(), values);
-						keysOrdered.put(ColumnKey.CONTEXT_LOCATION_LATITUDE.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_LONGITUDE)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, locationLongitude);
-						result.put(ColumnKey.CONTEXT_LOCATION_LONGITUDE.toString(), values);
-						keysOrdered.put(ColumnKey.CONTEXT_LOCATION_LONGITUDE.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_PROVIDER)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, locationProvider);
-						result.put(ColumnKey.CONTEXT_LOCATION_PROVIDER.toString(), values);
-						keysOrdered.put(ColumnKey.CONTEXT_LOCATION_PROVIDER.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_TIMESTAMP)) {
-						JSONObject timeValues = new JSONObject();
-						timeValues.put(JSON_KEY_VALUES, locationTimestamp);
-						result.put(ColumnKey.CONTEXT_LOCATION_TIMESTAMP.toString(), timeValues);
-						keysOrdered.put(ColumnKey.CONTEXT_LOCATION_TIMESTAMP.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_TIMEZONE)) {
-						JSONObject timeZoneValues = new JSONObject();
-						timeZoneValues.put(JSON_KEY_VALUES, locationTimeZone);
-						result.put(ColumnKey.CONTEXT_LOCATION_TIMEZONE.toString(), timeZoneValues);
-						keysOrdered.put(ColumnKey.CONTEXT_LOCATION_TIMEZONE.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_ACCURACY)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, locationAccuracy);
-						result.put(ColumnKey.CONTEXT_LOCATION_ACCURACY.toString(), values);
-						keysOrdered.put(ColumnKey.CONTEXT_LOCATION_ACCURACY.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.SURVEY_PRIVACY_STATE)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, privacyStates);
-						result.put(ColumnKey.SURVEY_PRIVACY_STATE.toString(), values);
-						keysOrdered.put(ColumnKey.SURVEY_PRIVACY_STATE.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.CONTEXT_LAUNCH_CONTEXT_LONG)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, launchContexts);
-						result.put(ColumnKey.CONTEXT_LAUNCH_CONTEXT_LONG.toString(), values);
-						keysOrdered.put(ColumnKey.CONTEXT_LAUNCH_CONTEXT_LONG.toString());
-					}
-					if(columns.contains(ColumnKey.CONTEXT_LAUNCH_CONTEXT_SHORT)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, launchContexts);
-						result.put(ColumnKey.CONTEXT_LAUNCH_CONTEXT_SHORT.toString(), values);
-						keysOrdered.put(ColumnKey.CONTEXT_LAUNCH_CONTEXT_SHORT.toString());
-					}
-					if(allColumns || columns.contains(ColumnKey.SURVEY_RESPONSE_ID)) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, surveyResponseIds);
-						result.put(ColumnKey.SURVEY_RESPONSE_ID.toString(), values);
-						keysOrdered.put(ColumnKey.SURVEY_RESPONSE_ID.toString());
-					}
-					if((collapse != null) && collapse) {
-						JSONObject values = new JSONObject();
-						values.put(JSON_KEY_VALUES, counts);
-						result.put("urn:ohmage:context:count", values);
-						keysOrdered.put("urn:ohmage:context:count");
-					}
-					
 					// If metadata is not suppressed, create it.
 					JSONObject metadata = null;
 					if((suppressMetadata == null) || (! suppressMetadata)) {
@@ -1196,52 +1116,34 @@ public final class SurveyResponseReadRequest
 								getSurveyResponseCount());
 					}
 					
+					// The columns are written directly to the response
+					// instead of being converted to a string first.
 					if(OutputFormat.JSON_COLUMNS.equals(outputFormat)) {
 						httpResponse.setContentType("application/json");
 						
-						JSONObject resultJson = new JSONObject();
-						resultJson.put(JSON_KEY_RESULT, RESULT_SUCCESS);
-						
-						int numHeaders = keysOrdered.length();
-						for(int i = 0; i < numHeaders; i++) {
-							String header = keysOrdered.getString(i);
-							
-							if(header.endsWith(":value") ||
-								header.endsWith(":key")) {
-
-								result.remove(header);
-								keysOrdered.remove(i);
-								i--;
-								numHeaders--;
-							}
-							else if(header.endsWith(":label")) {
-								String prunedHeader = header.substring(0, header.length() - 6);
-
-								result.put(prunedHeader, result.get(header));
-								result.remove(header);
-								
-								keysOrdered.put(i, prunedHeader);
-							}
+						JsonGenerator generator = 
+								JSON_FACTORY.createJsonGenerator(writer);
+						if((prettyPrint != null) && prettyPrint) {
+							generator.useDefaultPrettyPrinter();
 						}
 						
-						if((suppressMetadata == null) || (! suppressMetadata)) {
-							JSONArray itemsJson = new JSONArray();
-							Iterator<?> keys = result.keys();
-							while(keys.hasNext()) {
-								itemsJson.put(keys.next());
-							}
-							metadata.put("items", itemsJson);
-							resultJson.put(JSON_KEY_METADATA, metadata);
+						generator.writeStartObject();
+						generator.writeStringField(JSON_KEY_RESULT, RESULT_SUCCESS);
+						
+						if(metadata != null) {
+							metadata.put(
+									"items", 
+									new JSONArray(table.builder.getHeaders()));
+							
+							generator.writeFieldName(JSON_KEY_METADATA);
+							generator.writeRawValue(metadata.toString());
 						}
 						
-						resultJson.put(JSON_KEY_DATA, result);
+						generator.writeFieldName(JSON_KEY_DATA);
+						table.builder.writeJsonColumns(generator);
 						
-						if((prettyPrint != null) && prettyPrint) {
-							resultString = resultJson.toString(4);
-						}
-						else {
-							resultString = resultJson.toString();
-						}
+						generator.writeEndObject();
+						generator.flush();
 					}
 					// For CSV output,
 					else if(OutputFormat.CSV.equals(outputFormat)) {
@@ -1252,22 +1154,21 @@ public final class SurveyResponseReadRequest
 								"attachment; filename=" + 
 									getCampaign().getName() + 
 									".csv");
-
-						StringBuilder resultBuilder = new StringBuilder();
 						
-						// If the metadata is not suppressed, add it to the
-						// output builder.
-						if((suppressMetadata == null) || (! suppressMetadata)) {
+						// If the metadata is not suppressed, write it.
+						if(metadata != null) {
 							metadata.put(JSON_KEY_RESULT, RESULT_SUCCESS);
 							
-							resultBuilder.append("## begin metadata\n");
-							resultBuilder.append('#').append(metadata.toString().replace(',', ';')).append('\n');
-							resultBuilder.append("## end metadata\n");
+							writer.write("## begin metadata\n");
+							writer.write('#');
+							writer.write(metadata.toString().replace(',', ';'));
+							writer.write('\n');
+							writer.write("## end metadata\n");
 						
-							// Add the prompt contexts to the output builder if 
-							// prompts were desired.
+							// Write the prompt contexts if prompts were 
+							// desired.
 							if(allColumns || columns.contains(ColumnKey.PROMPT_RESPONSE)) {
-								resultBuilder.append("## begin prompt contexts\n");
+								writer.write("## begin prompt contexts\n");
 								for(String promptId : prompts.keySet()) {
 									JSONObject promptJson = new JSONObject();
 									
@@ -1275,28 +1176,22 @@ public final class SurveyResponseReadRequest
 									// the prompts.
 									promptJson.put(
 											promptId, 
-											prompts
-												.get(promptId)
-												.get(JSON_KEY_CONTEXT));
+											prompts.get(promptId).getContext());
 									
-									resultBuilder
-										.append('#')
-										.append(promptJson.toString())
-										.append('\n');
+									writer.write('#');
+									writer.write(promptJson.toString());
+									writer.write('\n');
 								}
-								resultBuilder.append("## end prompt contexts\n");
+								writer.write("## end prompt contexts\n");
 							}
 							
 							// Begin the data section of the CSV.
-							resultBuilder.append("## begin data\n");
+							writer.write("## begin data\n");
 						}
-
-						// Get the number of keys.
-						int keyLength = keysOrdered.length();
 						
-						// Create a comma-separated list of the header names.
-						for(int i = 0; i < keyLength; i++) {
-							String header = keysOrdered.getString(i);
+						// Write a comma-separated list of the header names.
+						boolean firstHeader = true;
+						for(String header : table.builder.getHeaders()) {
 							if(header.startsWith("urn:ohmage:")) {
 								// TODO: HT: This is where we deal with truncating the 
 								// column header for mobilize
@@ -1307,51 +1202,21 @@ public final class SurveyResponseReadRequest
 									header = header.substring(10);
 								}
 							}
-							resultBuilder.append(header);
 							
-							if((i + 1) != keyLength) {
-								resultBuilder.append(',');
+							if(! firstHeader) {
+								writer.write(',');
 							}
+							writer.write(header);
+							firstHeader = false;
 						}
-						resultBuilder.append('\n');
+						writer.write('\n');
 						
-						// For each of the responses, 
-						for(int i = 0; i < numSurveyResponses; i++) {
-							for(int j = 0; j < keyLength; j++) {
-								Object currResult = 
-										result
-											.getJSONObject(keysOrdered.getString(j))
-											.getJSONArray(JSON_KEY_VALUES)
-											.get(i);
-								
-								if(JSONObject.NULL.equals(currResult)) {
-									resultBuilder.append("");
-								}
-								else {
-									resultBuilder
-										.append(
-											"\"" +
-												currResult
-													.toString()
-														.replace(
-															"\"",
-															"\"\"") +
-											"\"");
-								}
-								
-								if((j + 1) != keyLength) {
-									resultBuilder.append(',');
-								}
-							}
-
-							resultBuilder.append('\n');
-						}
+						// Write each of the responses.
+						table.builder.writeCsvRows(writer);
 						
-						if((suppressMetadata == null) || (! suppressMetadata)) {
-							resultBuilder.append("## end data");
+						if(metadata != null) {
+							writer.write("## end data");
 						}
-						
-						resultString = resultBuilder.toString();
 					}
 				}
 			}
@@ -1367,6 +1232,11 @@ public final class SurveyResponseReadRequest
 				LOGGER.error(e.toString(), e);
 				setFailed();
 			}
+			// The columnar output is written directly to the response, so
+			// the client may hang up part way through it.
+			catch(IOException e) {
+				LOGGER.warn("Unable to write response message. Aborting.", e);
+			}
 		}
 		
 		if(isFailed()) {
@@ -1607,21 +1477,40 @@ public final class SurveyResponseReadRequest
 		}
 	}
 	
+	/**
+	 * Returns the annotations on a survey response and its prompt responses.
+	 * 
+	 * @param surveyResponse The survey response.
+	 * 
+	 * @return The JSONObject representing the annotations, which has empty
+	 * 		   lists if there are no annotations.
+	 */
+	private JSONObject getAnnotationsJson(final SurveyResponse surveyResponse) {
+		SurveyResponseAnnotations result = 
+				annotations.get(surveyResponse.getSurveyResponseId());
+		
+		if(result == null) {
+			result = new SurveyResponseAnnotations();
+		}
+		
+		return result.toJson();
+	}
+	
 	/**
 	 * Populates the prompts map with all of the prompts from all of the survey
 	 * items. 
 	 * 
 	 * @param surveyItems The map of survey item indices to the survey item.
 	 * 
-	 * @param prompts The prompts to be populated with all of the prompts in
-	 * 				  the survey item including all of the sub-prompts of 
-	 * 				  repeatable sets.
+	 * @param prompts The prompt columns to be populated with all of the 
+	 * 				  prompts in the survey item including all of the 
+	 * 				  sub-prompts of repeatable sets.
 	 * 
 	 * @throws JSONException Thrown if there is an error building the JSON.
 	 */
 	private void populatePrompts(
 			final Map<Integer, SurveyItem> surveyItems,
-			Map<String, JSONObject> prompts) 
+			Map<String, ObjectColumn> prompts) 
 			throws JSONException {
 		
 		for(SurveyItem surveyItem : surveyItems.values()) {
@@ -1632,33 +1521,29 @@ public final class SurveyResponseReadRequest
 					
 					ChoicePrompt prompt = (ChoicePrompt) surveyItem;
 
-					JSONObject promptJsonKey = new JSONObject();
-					promptJsonKey.put(JSON_KEY_CONTEXT, prompt.toJson());
-					promptJsonKey.put(JSON_KEY_VALUES, new JSONArray());
+					ObjectColumn promptKey = new ObjectColumn();
+					promptKey.setContext(prompt.toJson());
 					
-					JSONObject promptJsonLabel = new JSONObject();
-					promptJsonLabel.put(JSON_KEY_CONTEXT, prompt.toJson());
-					promptJsonLabel.put(JSON_KEY_VALUES, new JSONArray());
+					ObjectColumn promptLabel = new ObjectColumn();
+					promptLabel.setContext(prompt.toJson());
 					
-					prompts.put(prompt.getId() + ":key", promptJsonKey);
-					prompts.put(prompt.getId() + ":label", promptJsonLabel);
+					prompts.put(prompt.getId() + ":key", promptKey);
+					prompts.put(prompt.getId() + ":label", promptLabel);
 					
 					if(prompt.hasValues()) {
-						JSONObject promptJsonValue = new JSONObject();
-						promptJsonValue.put(JSON_KEY_CONTEXT, prompt.toJson());
-						promptJsonValue.put(JSON_KEY_VALUES, new JSONArray());
+						ObjectColumn promptValue = new ObjectColumn();
+						promptValue.setContext(prompt.toJson());
 
-						prompts.put(prompt.getId() + ":value", promptJsonValue);
+						prompts.put(prompt.getId() + ":value", promptValue);
 					}
 				}
 				else {
 					Prompt prompt = (Prompt) surveyItem;
 					
-					JSONObject promptJson = new JSONObject();
-					promptJson.put(JSON_KEY_CONTEXT, prompt.toJson());
-					promptJson.put(JSON_KEY_VALUES, new JSONArray());
+					ObjectColumn promptColumn = new ObjectColumn();
+					promptColumn.setContext(prompt.toJson());
 					
-					prompts.put(prompt.getId(), promptJson);
+					prompts.put(prompt.getId(), promptColumn);
 				}
 			}
 			else if(surveyItem instanceof RepeatableSet) {
@@ -1669,186 +1554,106 @@ public final class SurveyResponseReadRequest
 	}
 	
 	/**
-	 * Processes each of the responses in map to populate the JSONObjects by
-	 * placing the value from the response into its corresponding JSONObject.
+	 * Processes each of the responses in map by adding the value from the
+	 * response to its corresponding column and then ending the row.
 	 * 
-	 * @param allColumns Whether or not to populate all JSONObjects.
+	 * @param allColumns Whether or not to populate all columns.
 	 * 
 	 * @param surveyResponse The current survey response.
 	 * 
 	 * @param responses The map of response index from the survey response to
 	 * 					the actual response.
 	 * 
-	 * @param surveys The map of survey IDs to Survey objects.
-	 * 
-	 * @param prompts The map of prompt IDs to Prompt objects.
-	 * 
-	 * @param usernames The usernames JSONArray.
-	 * 
-	 * @param clients The clients JSONArray.
-	 * 
-	 * @param privacyStates The privacy states JSONArray.
-	 * 
-	 * @param timestamps The timestamps JSONArray.
-	 * 
-	 * @param utcTimestamps The timestamps JSONArray where the timestamps are
-	 * 						converted to UTC.
-	 * 
-	 * @param epochMillisTimestamps The epoch millis JSONArray.
-	 * 
-	 * @param timezones The timezones JSONArray.
-	 * 
-	 * @param locationStatuses The location statuses JSONArray.
-	 * 
-	 * @param locations The locations JSONArray.
-	 * 
-	 * @param surveyIds The survey IDs JSONArray.
-	 * 
-	 * @param surveyTitles The survey titles JSONArray.
-	 * 
-	 * @param surveyDescriptions The survey description JSONArray.
-	 * 
-	 * @param launchContexts The launch contexts JSONArray.
+	 * @param table The columns to populate.
 	 * 
 	 * @return The total number of prompt responses that were processed.
 	 * 
-	 * @throws JSONException Thrown if there is an error populating any of the
-	 * 						 JSONArrays.
+	 * @throws JSONException Thrown if there is an error building the JSON for
+	 * 						 any of the values.
 	 * 
 	 * @throws DomainException There was a problem aggregating the data.
 	 */
 	private int processResponses(final boolean allColumns, 
 			final SurveyResponse surveyResponse,
 			final Map<Integer, Response> responses, 
-			Map<String, JSONObject> prompts,
-			JSONArray usernames, JSONArray clients, JSONArray privacyStates,
-			JSONArray dates, JSONArray timestamps, JSONArray utcTimestamps, 
-			JSONArray epochMillisTimestamps, JSONArray timezones,
-			JSONArray locationStatuses, JSONArray locationLongitude,
-			JSONArray locationLatitude, JSONArray locationTime,
-			JSONArray locationTimeZone,
-			JSONArray locationAccuracy, JSONArray locationProvider,
-			JSONArray surveyIds, JSONArray surveyTitles, 
-			JSONArray surveyDescriptions, JSONArray launchContexts,
-			JSONArray surveyResponseIds, JSONArray counts) 
+			final ResponseColumns table) 
 			throws JSONException, DomainException {
 
 		// Add each of the survey response-wide pieces of information.
-		if(allColumns || columns.contains(ColumnKey.USER_ID)) {
-			usernames.put(surveyResponse.getUsername());
-		}
-		if(allColumns || columns.contains(ColumnKey.CONTEXT_CLIENT)) {
-			clients.put(surveyResponse.getClient());
-		}
-		if(allColumns || columns.contains(ColumnKey.SURVEY_PRIVACY_STATE)) {
-			privacyStates.put(surveyResponse.getPrivacyState().toString());
+		Location location = surveyResponse.getLocation();
+		
+		if(table.usernames != null) {
+			table.usernames.add(surveyResponse.getUsername());
 		}
-		if(allColumns || columns.contains(ColumnKey.CONTEXT_DATE)) {
-			dates.put(
-					DateTimeUtils.getIso8601DateString(
-						surveyResponse.getDate(), false));
+		if(table.clients != null) {
+			table.clients.add(surveyResponse.getClient());
 		}
-		if(allColumns || columns.contains(ColumnKey.CONTEXT_TIMESTAMP)) {
-			timestamps.put(
-					DateTimeUtils.getIso8601DateString(
-						surveyResponse.getDate(), true));
+		if(table.privacyStates != null) {
+			table.privacyStates.add(surveyResponse.getPrivacyState().toString());
 		}
-		if(allColumns || columns.contains(ColumnKey.CONTEXT_UTC_TIMESTAMP)) {
-			utcTimestamps.put(
-					DateTimeUtils.getIso8601DateString(
-						new DateTime(
-							surveyResponse.getTime(), 
-							DateTimeZone.UTC), 
-						true));
+		if(table.timestamps != null) {
+			table.timestamps.add(
+					surveyResponse.getTime(), 
+					surveyResponse.getTimezone());
 		}
-		if(allColumns || columns.contains(ColumnKey.CONTEXT_EPOCH_MILLIS)) {
-			epochMillisTimestamps.put(surveyResponse.getTime());
+		if(table.utcTimestamps != null) {
+			table.utcTimestamps.add(
+					surveyResponse.getTime(), 
+					DateTimeZone.UTC);
 		}
-		if(allColumns || columns.contains(ColumnKey.CONTEXT_TIMEZONE)) {
-			timezones.put(surveyResponse.getTimezone().getID());
+		if(table.epochMillisTimestamps != null) {
+			table.epochMillisTimestamps.add(surveyResponse.getTime());
 		}
-		if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_STATUS)) {
-			locationStatuses.put(surveyResponse.getLocationStatus().toString());
+		if(table.timezones != null) {
+			table.timezones.add(surveyResponse.getTimezone().getID());
 		}
-		if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_LONGITUDE)) {
-			Location location = surveyResponse.getLocation();
-			if(location == null) {
-				locationLongitude.put(JSONObject.NULL);
-			}
-			else {
-				locationLongitude.put(location.getLongitude());
-			}
+		if(table.locationStatuses != null) {
+			table.locationStatuses.add(surveyResponse.getLocationStatus().toString());
 		}
-		if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_LATITUDE)) {
-			Location location = surveyResponse.getLocation();
-			if(location == null) {
-				locationLatitude.put(JSONObject.NULL);
+		if(location != null) {
+			if(table.locationLongitude != null) {
+				table.locationLongitude.add(location.getLongitude());
 			}
-			else {
-				locationLatitude.put(location.getLatitude());
+			if(table.locationLatitude != null) {
+				table.locationLatitude.add(location.getLatitude());
 			}
-		}
-		if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_TIMESTAMP)) {
-			Location location = surveyResponse.getLocation();
-			if(location == null) {
-				locationTime.put(JSONObject.NULL);
+			if(table.locationTimestamp != null) {
+				table.locationTimestamp.add(location.getTime());
 			}
-			else {
-				locationTime.put(location.getTime());
+			if(table.locationTimeZone != null) {
+				table.locationTimeZone.add(location.getTimeZone().getID());
 			}
-		}
-		if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_TIMESTAMP)) {
-			Location location = surveyResponse.getLocation();
-			if(location == null) {
-				locationTimeZone.put(JSONObject.NULL);
+			if(table.locationAccuracy != null) {
+				table.locationAccuracy.add(location.getAccuracy());
 			}
-			else {
-				locationTimeZone.put(location.getTimeZone().getID());
+			if(table.locationProvider != null) {
+				table.locationProvider.add(location.getProvider());
 			}
 		}
-		if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_ACCURACY)) {
-			Location location = surveyResponse.getLocation();
-			if(location == null) {
-				locationAccuracy.put(JSONObject.NULL);
-			}
-			else {
-				locationAccuracy.put(location.getAccuracy());
-			}
-		}
-		if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_PROVIDER)) {
-			Location location = surveyResponse.getLocation();
-			if(location == null) {
-				locationProvider.put(JSONObject.NULL);
-			}
-			else {
-				locationProvider.put(location.getProvider());
-			}
+		if(table.surveyIds != null) {
+			table.surveyIds.add(surveyResponse.getSurvey().getId());
 		}
-		if(allColumns || columns.contains(ColumnKey.SURVEY_ID)) {
-			surveyIds.put(surveyResponse.getSurvey().getId());
+		if(table.surveyTitles != null) {
+			table.surveyTitles.add(surveyResponse.getSurvey().getTitle());
 		}
-		if(allColumns || columns.contains(ColumnKey.SURVEY_TITLE)) {
-			surveyTitles.put(surveyResponse.getSurvey().getTitle());
+		if(table.surveyDescriptions != null) {
+			table.surveyDescriptions.add(surveyResponse.getSurvey().getDescription());
 		}
-		if(allColumns || columns.contains(ColumnKey.SURVEY_DESCRIPTION)) {
-			surveyDescriptions.put(surveyResponse.getSurvey().getDescription());
+		if(table.launchContexts != null) {
+			table.launchContexts.add(surveyResponse.getLaunchContext().toJson(allColumns || columns.contains(ColumnKey.CONTEXT_LAUNCH_CONTEXT_LONG)));
 		}
-		if(allColumns || columns.contains(ColumnKey.CONTEXT_LAUNCH_CONTEXT_LONG) || columns.contains(ColumnKey.CONTEXT_LAUNCH_CONTEXT_SHORT)) {
-			launchContexts.put(surveyResponse.getLaunchContext().toJson(allColumns || columns.contains(ColumnKey.CONTEXT_LAUNCH_CONTEXT_LONG)));
+		if(table.surveyResponseIds != null) {
+			table.surveyResponseIds.add(surveyResponse.getSurveyResponseId().toString());
 		}
-		if(allColumns || columns.contains(ColumnKey.SURVEY_RESPONSE_ID)) {
-			surveyResponseIds.put(surveyResponse.getSurveyResponseId().toString());
+		if(table.counts != null) {
+			table.counts.add(surveyResponse.getCount());
 		}
-		if((collapse != null) && collapse) {
-			counts.put(surveyResponse.getCount());
+		if(table.annotations != null) {
+			table.annotations.add(getAnnotationsJson(surveyResponse));
 		}
 		
 		int numResponses = 0;
 		
-		// Create a map of which prompts were given a response in this 
-		// iteration.
-		Set<String> promptIdsWithResponse = new HashSet<String>();
-		
 		// Get the indices of each response in the list of responses and then
 		// sort them to ensure that we process each response in the correct 
 		// numeric order.
@@ -1879,26 +1684,13 @@ public final class SurveyResponseReadRequest
 						Object responseObject = response.getResponse();
 						
 						// If the response was not really a response, e.g.
-						// skipped, not displayed, etc., put a JSONObject.NULL
-						// object in for the key and value and put a quoted
-						// string-representation of the non-response.
+						// skipped, not displayed, etc., leave the key and 
+						// value null and put the non-response in as the 
+						// label.
 						if(responseObject instanceof NoResponse) {
-							JSONArray keys =
-									prompts.get(responseId + ":key")
-										.getJSONArray(JSON_KEY_VALUES);
-							keys.put(JSONObject.NULL);
-							
-							JSONArray labels =
-									prompts.get(responseId + ":label")
-										.getJSONArray(JSON_KEY_VALUES);
-							labels.put(responseObject);
-							
-							if(((ChoicePrompt) prompt).hasValues()) {
-								JSONArray values =
-										prompts.get(responseId + ":value")
-											.getJSONArray(JSON_KEY_VALUES);
-								values.put(JSONObject.NULL);
-							}
+							table.prompts
+								.get(responseId + ":label")
+									.add(responseObject);
 						}
 						// Otherwise, get the key, label, and, potentially,
 						// value and populate their corresponding columns.
@@ -1984,47 +1776,21 @@ public final class SurveyResponseReadRequest
 								throw new IllegalStateException("There exists a choice prompt that is not a (single/multi) [custom] choice.");
 							}
 						
-							promptIdsWithResponse.add(responseId + ":key");
-							JSONArray keys =
-									prompts.get(responseId + ":key")
-										.getJSONArray(JSON_KEY_VALUES);
-							keys.put(key);
-							
-							promptIdsWithResponse.add(responseId + ":label");
-							JSONArray labels =
-									prompts.get(responseId + ":label")
-										.getJSONArray(JSON_KEY_VALUES);
-							labels.put(label);
+							table.prompts.get(responseId + ":key").add(key);
+							table.prompts.get(responseId + ":label").add(label);
 							
 							if(choicePrompt.hasValues()) {
-								promptIdsWithResponse
-									.add(responseId + ":value");
-								JSONArray values =
-										prompts.get(responseId + ":value")
-											.getJSONArray(JSON_KEY_VALUES);
-								if(value == null) {
-									values.put("");
-								}
-								else {
-									values.put(value);
-								}
+								table.prompts
+									.get(responseId + ":value")
+										.add((value == null) ? "" : value);
 							}
 						}
-
-						// Finally, indicate that these prompts were given
-						// values so that the others may be populated with
-						// JSONObject.NULLs.
-						promptIdsWithResponse.add(responseId + ":key");
-						promptIdsWithResponse.add(responseId + ":label");
-						promptIdsWithResponse.add(responseId + ":value");
 					}
 					// Otherwise, only populate the value.
 					else {
-						promptIdsWithResponse.add(responseId);
-						prompts
+						table.prompts
 							.get(responseId)
-								.getJSONArray(JSON_KEY_VALUES)
-									.put(response.getResponse());
+								.add(response.getResponse());
 					}
 				}
 			}
@@ -2037,53 +1803,224 @@ public final class SurveyResponseReadRequest
 			// the prompt name. The problem is that before this function is 
 			// called we called a generic header creator for each prompt. This
 			// prompt would have had a header that was created but only the 
-			// one. We need to duplicate that header, JSONObject.NULL-out all 
-			// of the previous responses, and give it a new header with the
-			// iteration number.
+			// one. We need to duplicate that header, null-out all of the 
+			// previous responses, and give it a new header with the iteration
+			// number.
 			else if(response instanceof RepeatableSetResponse) {
-				/*
-				RepeatableSetResponse repeatableSetResponse =
-					(RepeatableSetResponse) response;
-				
-				Map<Integer, Map<Integer, Response>> repeatableSetResponses =
-					repeatableSetResponse.getResponseGroups();
-				
-				List<Integer> rsIterations = 
-					new ArrayList<Integer>(repeatableSetResponses.keySet());
-				
-				for(Integer rsIndex : rsIterations) {
-					numResponses += processResponses(allColumns, 
-							surveyResponse,
-							repeatableSetResponses.get(rsIndex), 
-							prompts, 
-							usernames, clients, privacyStates, 
-							timestamps, utcTimestamps, 
-							epochMillisTimestamps, timezones, 
-							locationStatuses, locationLongitude,
-							locationLatitude, locationTime, locationTimeZone,
-							locationAccuracy, locationProvider,
-							surveyIds, surveyTitles, surveyDescriptions, 
-							launchContexts
-						);
-				}
-				*/
+				// Ignored until the above is resolved.
 			}
 		}
 		
-		// Finally, get all of the prompts that didn't receive a value in this
-		// iteration and give them a value of JSONObject.NULL.
-		if(allColumns || columns.contains(ColumnKey.PROMPT_RESPONSE)) {
-			Set<String> promptIdsWithoutResponse = 
-				new HashSet<String>(prompts.keySet());
-			promptIdsWithoutResponse.removeAll(promptIdsWithResponse);
-			for(String currPromptId : promptIdsWithoutResponse) {
-				prompts
-					.get(currPromptId)
-					.getJSONArray(JSON_KEY_VALUES)
-					.put(JSONObject.NULL);
-			}
-		}
+		// Finally, give every column that didn't receive a value for this
+		// survey response, e.g. a prompt from another survey, a null.
+		table.builder.endRow();
 		
 		return numResponses;
 	}
+	
+	/**
+	 * The columns for the
+	 * {@link org.ohmage.domain.campaign.SurveyResponse.OutputFormat#JSON_COLUMNS JSON_COLUMNS}
+	 * and 
+	 * {@link org.ohmage.domain.campaign.SurveyResponse.OutputFormat#CSV CSV}
+	 * output. Only the columns that were requested are created, the rest are
+	 * null, and they are added to the builder in the order in which they are
+	 * output.
+	 */
+	private final class ResponseColumns {
+		private final ColumnarResultBuilder builder = 
+				new ColumnarResultBuilder();
+		
+		private DictionaryColumn surveyIds = null;
+		private DictionaryColumn surveyTitles = null;
+		private DictionaryColumn surveyDescriptions = null;
+		private DictionaryColumn usernames = null;
+		private DictionaryColumn clients = null;
+		private DateTimeColumn utcTimestamps = null;
+		private LongColumn epochMillisTimestamps = null;
+		private DateTimeColumn timestamps = null;
+		private DictionaryColumn timezones = null;
+		private Map<String, ObjectColumn> prompts = null;
+		private DictionaryColumn locationStatuses = null;
+		private DoubleColumn locationLatitude = null;
+		private DoubleColumn locationLongitude = null;
+		private DictionaryColumn locationProvider = null;
+		private LongColumn locationTimestamp = null;
+		private DictionaryColumn locationTimeZone = null;
+		private DoubleColumn locationAccuracy = null;
+		private DictionaryColumn privacyStates = null;
+		private ObjectColumn launchContexts = null;
+		private StringColumn surveyResponseIds = null;
+		private LongColumn counts = null;
+		private ObjectColumn annotations = null;
+		
+		/**
+		 * Creates the requested columns.
+		 * 
+		 * @param allColumns Whether or not all columns were requested.
+		 * 
+		 * @param prompts The prompt columns sorted by their IDs.
+		 */
+		private ResponseColumns(
+				final boolean allColumns,
+				final Map<String, ObjectColumn> prompts) {
+			
+			if(allColumns || columns.contains(ColumnKey.SURVEY_ID)) {
+				surveyIds = 
+						builder.addColumn(
+								ColumnKey.SURVEY_ID.toString(), 
+								new DictionaryColumn());
+			}
+			if(allColumns || columns.contains(ColumnKey.SURVEY_TITLE)) {
+				surveyTitles = 
+						builder.addColumn(
+								ColumnKey.SURVEY_TITLE.toString(), 
+								new DictionaryColumn());
+			}
+			if(allColumns || columns.contains(ColumnKey.SURVEY_DESCRIPTION)) {
+				surveyDescriptions = 
+						builder.addColumn(
+								ColumnKey.SURVEY_DESCRIPTION.toString(), 
+								new DictionaryColumn());
+			}
+			if(allColumns || columns.contains(ColumnKey.USER_ID)) {
+				usernames = 
+						builder.addColumn(
+								ColumnKey.USER_ID.toString(), 
+								new DictionaryColumn());
+			}
+			if(allColumns || columns.contains(ColumnKey.CONTEXT_CLIENT)) {
+				clients = 
+						builder.addColumn(
+								ColumnKey.CONTEXT_CLIENT.toString(), 
+								new DictionaryColumn());
+			}
+			if(allColumns || columns.contains(ColumnKey.CONTEXT_UTC_TIMESTAMP)) {
+				utcTimestamps = 
+						builder.addColumn(
+								ColumnKey.CONTEXT_UTC_TIMESTAMP.toString(), 
+								new DateTimeColumn(true));
+			}
+			if(allColumns || columns.contains(ColumnKey.CONTEXT_EPOCH_MILLIS)) {
+				epochMillisTimestamps = 
+						builder.addColumn(
+								ColumnKey.CONTEXT_EPOCH_MILLIS.toString(), 
+								new LongColumn());
+			}
+			// The date column has always contained the full timestamp, so it
+			// shares the timestamp column.
+			if(allColumns || 
+					columns.contains(ColumnKey.CONTEXT_DATE) ||
+					columns.contains(ColumnKey.CONTEXT_TIMESTAMP)) {
+				
+				timestamps = new DateTimeColumn(true);
+			}
+			if(allColumns || columns.contains(ColumnKey.CONTEXT_DATE)) {
+				builder.addColumn(ColumnKey.CONTEXT_DATE.toString(), timestamps);
+			}
+			if(allColumns || columns.contains(ColumnKey.CONTEXT_TIMESTAMP)) {
+				builder.addColumn(
+						ColumnKey.CONTEXT_TIMESTAMP.toString(), 
+						timestamps);
+			}
+			if(allColumns || columns.contains(ColumnKey.CONTEXT_TIMEZONE)) {
+				timezones = 
+						builder.addColumn(
+								ColumnKey.CONTEXT_TIMEZONE.toString(), 
+								new DictionaryColumn());
+			}
+			if(allColumns || columns.contains(ColumnKey.PROMPT_RESPONSE)) {
+				this.prompts = prompts;
+				for(String promptId : prompts.keySet()) {
+					builder.addColumn(
+							SurveyResponse.ColumnKey.URN_PROMPT_ID_PREFIX + promptId, 
+							prompts.get(promptId));
+				}
+			}
+			if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_STATUS)) {
+				locationStatuses = 
+						builder.addColumn(
+								ColumnKey.CONTEXT_LOCATION_STATUS.toString(), 
+								new DictionaryColumn());
+			}
+			if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_LATITUDE)) {
+				locationLatitude = 
+						builder.addColumn(
+								ColumnKey.CONTEXT_LOCATION_LATITUDE.toString(), 
+								new DoubleColumn());
+			}
+			if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_LONGITUDE)) {
+				locationLongitude = 
+						builder.addColumn(
+								ColumnKey.CONTEXT_LOCATION_LONGITUDE.toString(), 
+								new DoubleColumn());
+			}
+			if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_PROVIDER)) {
+				locationProvider = 
+						builder.addColumn(
+								ColumnKey.CONTEXT_LOCATION_PROVIDER.toString(), 
+								new DictionaryColumn());
+			}
+			if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_TIMESTAMP)) {
+				locationTimestamp = 
+						builder.addColumn(
+								ColumnKey.CONTEXT_LOCATION_TIMESTAMP.toString(), 
+								new LongColumn());
+			}
+			if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_TIMEZONE)) {
+				locationTimeZone = 
+						builder.addColumn(
+								ColumnKey.CONTEXT_LOCATION_TIMEZONE.toString(), 
+								new DictionaryColumn());
+			}
+			if(allColumns || columns.contains(ColumnKey.CONTEXT_LOCATION_ACCURACY)) {
+				locationAccuracy = 
+						builder.addColumn(
+								ColumnKey.CONTEXT_LOCATION_ACCURACY.toString(), 
+								new DoubleColumn());
+			}
+			if(allColumns || columns.contains(ColumnKey.SURVEY_PRIVACY_STATE)) {
+				privacyStates = 
+						builder.addColumn(
+								ColumnKey.SURVEY_PRIVACY_STATE.toString(), 
+								new DictionaryColumn());
+			}
+			// The long and short launch contexts share a column whose format
+			// depends on whether the long one was requested.
+			if(allColumns || 
+					columns.contains(ColumnKey.CONTEXT_LAUNCH_CONTEXT_LONG) ||
+					columns.contains(ColumnKey.CONTEXT_LAUNCH_CONTEXT_SHORT)) {
+				
+				launchContexts = new ObjectColumn();
+			}
+			if(allColumns || columns.contains(ColumnKey.CONTEXT_LAUNCH_CONTEXT_LONG)) {
+				builder.addColumn(
+						ColumnKey.CONTEXT_LAUNCH_CONTEXT_LONG.toString(), 
+						launchContexts);
+			}
+			if(columns.contains(ColumnKey.CONTEXT_LAUNCH_CONTEXT_SHORT)) {
+				builder.addColumn(
+						ColumnKey.CONTEXT_LAUNCH_CONTEXT_SHORT.toString(), 
+						launchContexts);
+			}
+			if(allColumns || columns.contains(ColumnKey.SURVEY_RESPONSE_ID)) {
+				surveyResponseIds = 
+						builder.addColumn(
+								ColumnKey.SURVEY_RESPONSE_ID.toString(), 
+								new StringColumn());
+			}
+			if((collapse != null) && collapse) {
+				counts = 
+						builder.addColumn(
+								"urn:ohmage:context:count", 
+								new LongColumn());
+			}
+			if(SurveyResponseReadRequest.this.annotations != null) {
+				annotations = 
+						builder.addColumn(
+								COLUMN_KEY_ANNOTATIONS, 
+								new ObjectColumn());
+			}
+		}
+	}
 }
@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request.survey.annotation;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.SurveyResponseAnnotations;
+import org.ohmage.exception.InvalidRequestException;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.exception.ValidationException;
+import org.ohmage.request.InputKeys;
+import org.ohmage.request.UserRequest;
+import org.ohmage.service.UserAnnotationServices;
+import org.ohmage.validator.CampaignValidators;
+import org.ohmage.validator.SurveyResponseValidators;
+
+/**
+ * <p>Reads the annotations on many survey responses and on their prompt
+ * responses at once. The annotations are returned as an object whose keys
+ * are the survey response IDs. Survey responses without any annotations, as
+ * well as survey responses that do not belong to the campaign, are omitted.
+ * Only admins and supervisors in the campaign may read the annotations.</p>
+ * <table border="1">
+ *   <tr>
+ *     <td>Parameter Name</td>
+ *     <td>Description</td>
+ *     <td>Required</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#AUTH_TOKEN}</td>
+ *     <td>The requesting user's authentication token.</td>
+ *     <td>true</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#CLIENT}</td>
+ *     <td>A string describing the client that is making this request.</td>
+ *     <td>true</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#CAMPAIGN_URN}</td>
+ *     <td>The campaign to which the survey responses belong.</td>
+ *     <td>true</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#SURVEY_ID_LIST}</td>
+ *     <td>A comma-separated list of survey response IDs (UUIDs). At most
+ *     {@value #MAX_SURVEY_IDS} may be given.</td>
+ *     <td>true</td>
+ *   </tr>
+ * </table>
+ */
+public class SurveyResponseAnnotationBatchReadRequest extends UserRequest {
+	private static final Logger LOGGER =
+		Logger.getLogger(SurveyResponseAnnotationBatchReadRequest.class);
+
+	/**
+	 * The maximum number of survey responses whose annotations may be read in
+	 * one request.
+	 */
+	public static final int MAX_SURVEY_IDS = 1000;
+
+	private static final String RESULT_KEY = "data";
+
+	private final String campaignId;
+	private final Set<UUID> surveyIds;
+
+	private Map<UUID, SurveyResponseAnnotations> annotationsToReturn;
+
+	/**
+	 * Creates a new survey response annotation batch read request.
+	 *
+	 * @param httpRequest The HttpServletRequest with the parameters for this
+	 * 					  request.
+	 *
+	 * @throws InvalidRequestException Thrown if the parameters cannot be
+	 * 								   parsed.
+	 *
+	 * @throws IOException There was an error reading from the request.
+	 */
+	public SurveyResponseAnnotationBatchReadRequest(
+			final HttpServletRequest httpRequest)
+			throws IOException, InvalidRequestException {
+
+		super(httpRequest, null, TokenLocation.PARAMETER, null);
+
+		LOGGER.info("Creating a survey response annotation batch read request.");
+
+		String tCampaignId = null;
+		Set<UUID> tSurveyIds = null;
+
+		if(! isFailed()) {
+			try {
+				String[] t;
+
+				t = getParameterValues(InputKeys.CAMPAIGN_URN);
+				if(t.length > 1) {
+					throw new ValidationException(
+						ErrorCode.CAMPAIGN_INVALID_ID,
+						"Multiple campaign IDs were given: " +
+							InputKeys.CAMPAIGN_URN);
+				}
+				else if(t.length == 1) {
+					tCampaignId = CampaignValidators.validateCampaignId(t[0]);
+				}
+				if(tCampaignId == null) {
+					throw new ValidationException(
+						ErrorCode.CAMPAIGN_INVALID_ID,
+						"The campaign ID is missing: " +
+							InputKeys.CAMPAIGN_URN);
+				}
+
+				t = getParameterValues(InputKeys.SURVEY_ID_LIST);
+				if(t.length > 1) {
+					throw new ValidationException(
+						ErrorCode.SURVEY_INVALID_SURVEY_ID,
+						"Multiple survey ID lists were given: " +
+							InputKeys.SURVEY_ID_LIST);
+				}
+				else if(t.length == 1) {
+					tSurveyIds =
+						SurveyResponseValidators.validateSurveyResponseIds(
+							t[0]);
+				}
+				if((tSurveyIds == null) || tSurveyIds.isEmpty()) {
+					throw new ValidationException(
+						ErrorCode.SURVEY_INVALID_SURVEY_ID,
+						"The survey ID list is missing: " +
+							InputKeys.SURVEY_ID_LIST);
+				}
+				else if(tSurveyIds.size() > MAX_SURVEY_IDS) {
+					throw new ValidationException(
+						ErrorCode.SURVEY_INVALID_SURVEY_ID,
+						"More than " +
+							MAX_SURVEY_IDS +
+							" survey IDs were given.");
+				}
+			}
+			catch(ValidationException e) {
+				e.failRequest(this);
+				e.logException(LOGGER);
+			}
+		}
+
+		campaignId = tCampaignId;
+		surveyIds = tSurveyIds;
+	}
+
+	/**
+	 * Services the request.
+	 */
+	@Override
+	public void service() {
+		LOGGER.info("Servicing a survey response annotation batch read request.");
+
+		if(! authenticate(AllowNewAccount.NEW_ACCOUNT_DISALLOWED)) {
+			return;
+		}
+
+		try {
+			LOGGER.info("Verifying that the logged in user can read survey response annotations.");
+			UserAnnotationServices.instance().verifyUserCanReadSurveyResponseAnnotations(
+				getUser().getUsername(),
+				campaignId);
+
+			LOGGER.info("Reading survey response annotations.");
+			annotationsToReturn =
+				UserAnnotationServices.instance().readSurveyResponseAnnotations(
+					campaignId,
+					surveyIds);
+		}
+		catch(ServiceException e) {
+			e.failRequest(this);
+			e.logException(LOGGER);
+		}
+	}
+
+	/**
+	 * Responds to the this request with success or a failure message
+	 * that contains a failure code and failure text.
+	 */
+	@Override
+	public void respond(
+			final HttpServletRequest httpRequest,
+			final HttpServletResponse httpResponse) {
+
+		LOGGER.info("Responding to the survey response annotation batch read request.");
+
+		JSONObject resultJson = null;
+		if(! isFailed()) {
+			try {
+				resultJson = new JSONObject();
+				for(UUID surveyId : annotationsToReturn.keySet()) {
+					resultJson.put(
+						surveyId.toString(),
+						annotationsToReturn.get(surveyId).toJson());
+				}
+			}
+			catch(JSONException e) {
+				LOGGER.error("There was an error building the response.", e);
+				setFailed();
+			}
+		}
+
+		super.respond(httpRequest, httpResponse, RESULT_KEY, resultJson);
+	}
+}
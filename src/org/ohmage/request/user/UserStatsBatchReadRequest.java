@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request.user;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.UploadStats;
+import org.ohmage.exception.InvalidRequestException;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.exception.ValidationException;
+import org.ohmage.request.InputKeys;
+import org.ohmage.request.UserRequest;
+import org.ohmage.service.CampaignServices;
+import org.ohmage.service.UserCampaignServices;
+import org.ohmage.service.UserMobilityServices;
+import org.ohmage.service.UserSurveyResponseServices;
+import org.ohmage.validator.CampaignValidators;
+import org.ohmage.validator.UserValidators;
+
+/**
+ * Reads the same statistical information as the
+ * {@link UserStatsReadRequest} for many users of a campaign at once. The
+ * statistics for all of the users are gathered with a constant number of
+ * queries. The requesting user must have sufficient permissions to view
+ * each user's survey responses, at least the shared ones, and their Mobility
+ * points, at least the shared ones. Only the survey responses in the
+ * campaign are used.
+ * <table border="1">
+ *   <tr>
+ *     <td>Parameter Name</td>
+ *     <td>Description</td>
+ *     <td>Required</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#CLIENT}</td>
+ *     <td>A string describing the client that is making this request.</td>
+ *     <td>true</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#CAMPAIGN_URN}</td>
+ *     <td>The unique identifier for the campaign to which the survey data will
+ *       pertain.</td>
+ *     <td>true</td>
+ *   </tr>
+ *   <tr>
+ *     <td>{@value org.ohmage.request.InputKeys#USER_LIST}</td>
+ *     <td>A list of usernames separated by
+ *       {@value org.ohmage.request.InputKeys#LIST_ITEM_SEPARATOR}s whose
+ *       statistical information is desired. If omitted, every user in the
+ *       campaign is used.</td>
+ *     <td>false</td>
+ *   </tr>
+ * </table>
+ */
+public class UserStatsBatchReadRequest extends UserRequest {
+	private static final Logger LOGGER = Logger.getLogger(UserStatsBatchReadRequest.class);
+
+	private static final Double DEFAULT_VALUE_IF_NO_UPLOADS = Double.MAX_VALUE;
+	private static final Double DEFAULT_VALUE_IF_NO_UPLOADS_IN_LAST_DAY = -1.0;
+
+	// Parameters
+	private final String campaignId;
+	private final Set<String> usernames;
+
+	// Results
+	private Collection<String> resultUsernames;
+	private Map<String, UploadStats> surveyStats;
+	private Map<String, UploadStats> mobilityStats;
+
+	/**
+	 * Creates a new user stats batch read request.
+	 *
+	 * @param httpRequest The HttpServletRequest with the parameters for this
+	 * 					  request.
+	 *
+	 * @throws InvalidRequestException Thrown if the parameters cannot be
+	 * 								   parsed.
+	 *
+	 * @throws IOException There was an error reading from the request.
+	 */
+	public UserStatsBatchReadRequest(HttpServletRequest httpRequest) throws IOException, InvalidRequestException {
+		super(httpRequest, false, TokenLocation.EITHER, null);
+
+		LOGGER.info("Creating a user stats batch read request.");
+
+		String tCampaignId = null;
+		Set<String> tUsernames = null;
+
+		try {
+			tCampaignId = CampaignValidators.validateCampaignId(httpRequest.getParameter(InputKeys.CAMPAIGN_URN));
+			if(tCampaignId == null) {
+				setFailed(ErrorCode.CAMPAIGN_INVALID_ID, "Missing the required campaign ID: " + InputKeys.CAMPAIGN_URN);
+				throw new ValidationException("Missing the required campaign ID: " + InputKeys.CAMPAIGN_URN);
+			}
+			else if(httpRequest.getParameterValues(InputKeys.CAMPAIGN_URN).length > 1) {
+				setFailed(ErrorCode.CAMPAIGN_INVALID_ID, "Multiple campaign ID parameters were given.");
+				throw new ValidationException("Multiple campaign ID parameters were given.");
+			}
+
+			String[] t = getParameterValues(InputKeys.USER_LIST);
+			if(t.length > 1) {
+				throw new ValidationException(
+						ErrorCode.USER_INVALID_USERNAME,
+						"Multiple username list parameters were given: " +
+							InputKeys.USER_LIST);
+			}
+			else if(t.length == 1) {
+				tUsernames = UserValidators.validateUsernames(t[0]);
+			}
+		}
+		catch(ValidationException e) {
+			e.failRequest(this);
+			LOGGER.info(e.toString());
+		}
+
+		campaignId = tCampaignId;
+		usernames = tUsernames;
+
+		resultUsernames = Collections.emptyList();
+		surveyStats = Collections.emptyMap();
+		mobilityStats = Collections.emptyMap();
+	}
+
+	/**
+	 * Services the request.
+	 */
+	@Override
+	public void service() {
+		LOGGER.info("Servicing the user stats batch read request.");
+
+		if(! authenticate(AllowNewAccount.NEW_ACCOUNT_DISALLOWED)) {
+			return;
+		}
+
+		try {
+			LOGGER.info("Verifying that the campaign exists.");
+			CampaignServices.instance().checkCampaignExistence(campaignId, true);
+
+			if(usernames == null) {
+				LOGGER.info("Gathering the users in the campaign.");
+				resultUsernames =
+					new TreeSet<String>(
+						UserCampaignServices.instance().getUsersInCampaign(campaignId));
+			}
+			else {
+				resultUsernames = new TreeSet<String>(usernames);
+			}
+
+			LOGGER.info("Verifying that the requester has permissions to view the survey information.");
+			UserCampaignServices.instance().requesterCanViewUsersSurveyResponses(
+					campaignId,
+					getUser().getUsername(),
+					resultUsernames.toArray(new String[resultUsernames.size()]));
+
+			LOGGER.info("Verifying that the requester has permissions to view the mobility information.");
+			UserMobilityServices.instance().requesterCanViewUsersMobilityData(
+					campaignId,
+					getUser().getUsername(),
+					resultUsernames);
+
+			LOGGER.info("Gathering the survey statistics.");
+			surveyStats =
+				UserSurveyResponseServices.instance().getUploadStatsForUsers(
+						getUser().getUsername(),
+						campaignId,
+						resultUsernames);
+
+			LOGGER.info("Gathering the Mobility statistics.");
+			mobilityStats =
+				UserMobilityServices.instance().getUploadStatsForUsers(
+						resultUsernames);
+		}
+		catch(ServiceException e) {
+			e.failRequest(this);
+			e.logException(LOGGER);
+		}
+	}
+
+	/**
+	 * Responds to the user's request with an object whose keys are the
+	 * usernames and whose values are the same objects as the
+	 * {@link UserStatsReadRequest}'s.
+	 */
+	@Override
+	public void respond(HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
+		JSONObject jsonResult = new JSONObject();
+
+		if(! isFailed()) {
+			long now = System.currentTimeMillis();
+
+			try {
+				for(String username : resultUsernames) {
+					UploadStats survey = surveyStats.get(username);
+					UploadStats mobility = mobilityStats.get(username);
+
+					JSONObject userResult = new JSONObject();
+
+					userResult.put(
+							UserStatsReadRequest.JSON_KEY_HOURS_SINCE_LAST_SURVEY_UPLOAD,
+							getValue(
+									(survey == null) ? null : survey.getHoursSinceLastUpload(now),
+									DEFAULT_VALUE_IF_NO_UPLOADS));
+
+					userResult.put(
+							UserStatsReadRequest.JSON_KEY_HOURS_SINCE_LAST_MOBILITY_UPLOAD,
+							getValue(
+									(mobility == null) ? null : mobility.getHoursSinceLastUpload(now),
+									DEFAULT_VALUE_IF_NO_UPLOADS));
+
+					userResult.put(
+							UserStatsReadRequest.JSON_KEY_PAST_DAY_SUCCESSFUL_SURVEY_LOCATION_UPDATES_PERCENTAGE,
+							getValue(
+									(survey == null) ? null : survey.getRecentPercentageWithLocation(),
+									DEFAULT_VALUE_IF_NO_UPLOADS_IN_LAST_DAY));
+
+					userResult.put(
+							UserStatsReadRequest.JSON_KEY_PAST_DAY_SUCCESSFUL_MOBILITY_LOCATION_UPDATES_PERCENTAGE,
+							getValue(
+									(mobility == null) ? null : mobility.getRecentPercentageWithLocation(),
+									DEFAULT_VALUE_IF_NO_UPLOADS_IN_LAST_DAY));
+
+					jsonResult.put(username, userResult);
+				}
+			}
+			catch(JSONException e) {
+				LOGGER.error("There was an error creating the JSONObject result object.", e);
+				setFailed();
+			}
+		}
+
+		super.respond(httpRequest, httpResponse, UserStatsReadRequest.JSON_KEY_RESULT, jsonResult);
+	}
+
+	/**
+	 * Returns a value or its default if it is null.
+	 */
+	private static Double getValue(final Double value, final Double defaultValue) {
+		return (value == null) ? defaultValue : value;
+	}
+}
@@ -17,6 +17,7 @@ package org.ohmage.request.visualization;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
@@ -36,6 +37,7 @@ import org.ohmage.exception.ValidationException;
 import org.ohmage.request.InputKeys;
 import org.ohmage.request.UserRequest;
 import org.ohmage.service.CampaignServices;
+import org.ohmage.service.VisualizationClient;
 import org.ohmage.service.VisualizationServices;
 import org.ohmage.util.CookieUtils;
 import org.ohmage.util.DateTimeUtils;
@@ -88,7 +90,8 @@ public abstract class VisualizationRequest extends UserRequest {
 	private final DateTime endDate;
 	private final SurveyResponse.PrivacyState privacyState;
 	
-	private byte[] result;
+	private String requestPath;
+	private Map<String, String> visualizationParameters;
 	
 	/**
 	 * Creates a new abstract visualization request.
@@ -148,7 +151,8 @@ public abstract class VisualizationRequest extends UserRequest {
 		endDate = tEndDate;
 		privacyState = tPrivacyState;
 		
-		result = null;
+		requestPath = null;
+		visualizationParameters = null;
 	}
 
 	/**
@@ -172,54 +176,93 @@ public abstract class VisualizationRequest extends UserRequest {
 	}
 
 	/**
-	 * Writes the resulting image to the response's output stream.
+	 * Requests the image from the visualization server and streams it to the
+	 * response's output stream as it arrives. If the visualization server
+	 * fails before anything has been written, the failure message is written
+	 * instead.
 	 */
 	@Override
-	public void respond(HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
+	public void respond(HttpServletRequest httpRequest, final HttpServletResponse httpResponse) {
 		LOGGER.info("Writing the visualization response.");
 		
-		// Creates the writer that will write the response, success or fail.
-		Writer writer;
-		OutputStream os;
-		try {
-			os = getOutputStream(httpRequest, httpResponse);
-			writer = new BufferedWriter(new OutputStreamWriter(os));
-		}
-		catch(IOException e) {
-			LOGGER.error("Unable to create writer object. Aborting.", e);
-			return;
-		}
-		
 		// Sets the HTTP headers to disable caching
 		expireResponse(httpResponse);
 		
-		// If the request hasn't failed, attempt to write the file to the
-		// output stream. 
-		if(! isFailed() && (result != null)) {
+		// If the request hasn't failed, attempt to stream the image from the
+		// visualization server to the output stream. The image is already
+		// compressed, so it is not GZIP'd.
+		if(! isFailed() && (requestPath != null)) {
 			try {
-				// Setup the response headers.
-				httpResponse.setContentType("image/png");
-				
-				// If available, set the token.
-				if(getUser() != null) {
-					final String token = getUser().getToken(); 
-					if(token != null) {
-						CookieUtils.setCookieValue(httpResponse, InputKeys.AUTH_TOKEN, token);
-					}
+				LOGGER.info("Making the request to the visualization server.");
+				VisualizationServices.streamVisualizationRequest(
+					requestPath, 
+					getUser().getToken(), 
+					campaignId, 
+					width, 
+					height, 
+					visualizationParameters,
+					new VisualizationClient.ResponseHandler() {
+						@Override
+						public void handle(
+							final String contentType,
+							final long contentLength,
+							final InputStream content)
+							throws IOException {
+							
+							// Setup the response headers.
+							httpResponse.setContentType("image/png");
+							if((contentLength >= 0) && 
+								(contentLength <= Integer.MAX_VALUE)) {
+								
+								httpResponse.setContentLength((int) contentLength);
+							}
+							
+							// If available, set the token.
+							if(getUser() != null) {
+								final String token = getUser().getToken(); 
+								if(token != null) {
+									CookieUtils.setCookieValue(httpResponse, InputKeys.AUTH_TOKEN, token);
+								}
+							}
+							
+							OutputStream os = httpResponse.getOutputStream();
+							byte[] chunk = new byte[4096];
+							int amountRead;
+							while((amountRead = content.read(chunk)) != -1) {
+								os.write(chunk, 0, amountRead);
+							}
+							os.flush();
+						}
+					});
+			}
+			catch(ServiceException e) {
+				// If we already started writing the image, there is no way to
+				// report the error to the requester.
+				if(httpResponse.isCommitted()) {
+					e.logException(LOGGER);
+					return;
 				}
 				
-				os.write(result);
-				os.flush();
-				os.close();
-			}
-			catch(IOException e) {
-				LOGGER.error("There was an error writing the image to the output stream.", e);
-				return;
+				e.failRequest(this);
+				e.logException(LOGGER);
 			}
 		}
 		
 		// If the request ever failed, write an error message.
 		if(isFailed()) {
+			// Creates the writer that will write the failure response.
+			Writer writer;
+			try {
+				writer = 
+					new BufferedWriter(
+						new OutputStreamWriter(
+							getOutputStream(httpRequest, httpResponse)));
+			}
+			catch(IOException e) {
+				LOGGER.error("Unable to create writer object. Aborting.", e);
+				return;
+			}
+			
 			httpResponse.setContentType("text/html");
 			
 			// Write the error response.
@@ -293,11 +336,21 @@ public abstract class VisualizationRequest extends UserRequest {
 	}
 	
 	/**
-	 * Sets the image result that will be returned to the requester.
+	 * Sets the visualization that will be requested from the visualization
+	 * server and streamed to the requester once this request responds.
+	 * 
+	 * @param requestPath The path of the visualization on the visualization
+	 * 					  server.
 	 * 
-	 * @param image The image as a byte array.
+	 * @param parameters The parameters to pass to the visualization server.
+	 * 
+	 * @see VisualizationServices#streamVisualizationRequest(String, String, String, int, int, Map, VisualizationClient.ResponseHandler)
 	 */
-	protected final void setImage(final byte[] image) {
-		result = image;
+	protected final void setVisualization(
+			final String requestPath, 
+			final Map<String, String> parameters) {
+		
+		this.requestPath = requestPath;
+		visualizationParameters = parameters;
 	}
 }
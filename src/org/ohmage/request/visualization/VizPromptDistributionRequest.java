@@ -114,9 +114,8 @@ public class VizPromptDistributionRequest extends VisualizationRequest {
 			Map<String, String> parameters = getVisualizationParameters();
 			parameters.put(VisualizationServices.PARAMETER_KEY_PROMPT_ID, promptId);
 			
-			LOGGER.info("Making the request to the visualization server.");
-			setImage(VisualizationServices.sendVisualizationRequest(REQUEST_PATH, getUser().getToken(), 
-					getCampaignId(), getWidth(), getHeight(), parameters));
+			LOGGER.info("Preparing the request to the visualization server.");
+			setVisualization(REQUEST_PATH, parameters);
 		}
 		catch(ServiceException e) {
 			e.failRequest(this);
@@ -138,9 +138,8 @@ private static final Logger LOGGER = Logger.getLogger(VizPromptTimeseriesRequest
 						aggregate.toString());
 			}
 			
-			LOGGER.info("Making the request to the visualization server.");
-			setImage(VisualizationServices.sendVisualizationRequest(REQUEST_PATH, getUser().getToken(), 
-					getCampaignId(), getWidth(), getHeight(), parameters));
+			LOGGER.info("Preparing the request to the visualization server.");
+			setVisualization(REQUEST_PATH, parameters);
 		}
 		catch(ServiceException e) {
 			e.failRequest(this);
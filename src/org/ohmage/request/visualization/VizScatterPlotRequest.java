@@ -132,9 +132,8 @@ public class VizScatterPlotRequest extends VisualizationRequest {
 			parameters.put(VisualizationServices.PARAMETER_KEY_PROMPT_ID, promptId);
 			parameters.put(VisualizationServices.PARAMETER_KEY_PROMPT2_ID, prompt2Id);
 			
-			LOGGER.info("Making the request to the visualization server.");
-			setImage(VisualizationServices.sendVisualizationRequest(REQUEST_PATH, getUser().getToken(), 
-					getCampaignId(), getWidth(), getHeight(), parameters));
+			LOGGER.info("Preparing the request to the visualization server.");
+			setVisualization(REQUEST_PATH, parameters);
 		}
 		catch(ServiceException e) {
 			e.failRequest(this);
@@ -116,9 +116,8 @@ public class VizSurveyResponsePrivacyStateRequest extends VisualizationRequest {
 						aggregate.toString());
 			}
 			
-			LOGGER.info("Making the request to the visualization server.");
-			setImage(VisualizationServices.sendVisualizationRequest(REQUEST_PATH, getUser().getToken(), 
-					getCampaignId(), getWidth(), getHeight(), parameters));
+			LOGGER.info("Preparing the request to the visualization server.");
+			setVisualization(REQUEST_PATH, parameters);
 		}
 		catch(ServiceException e) {
 			e.failRequest(this);
@@ -81,9 +81,8 @@ public class VizSurveyResponsePrivacyStateTimeseriesRequest extends Visualizatio
 			Map<String, String> parameters = getVisualizationParameters();
 			parameters.remove(VisualizationServices.PARAMETER_KEY_PRIVACY_STATE);
 			
-			LOGGER.info("Making the request to the visualization server.");
-			setImage(VisualizationServices.sendVisualizationRequest(REQUEST_PATH, getUser().getToken(), 
-					getCampaignId(), getWidth(), getHeight(), parameters));
+			LOGGER.info("Preparing the request to the visualization server.");
+			setVisualization(REQUEST_PATH, parameters);
 		}
 		catch(ServiceException e) {
 			e.failRequest(this);
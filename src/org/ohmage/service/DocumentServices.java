@@ -23,6 +23,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+import org.joda.time.DateTime;
 import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.domain.Document;
 import org.ohmage.exception.DataAccessException;
@@ -151,6 +152,26 @@ public class DocumentServices {
 		}
 	}
 	
+	/**
+	 * Retrieves the time at which the document was last modified.
+	 * 
+	 * @param documentId The unique identifier for the document.
+	 * 
+	 * @return The time at which the document was last modified.
+	 * 
+	 * @throws ServiceException Thrown if there is an error.
+	 */
+	public DateTime getDocumentLastModified(final String documentId) 
+			throws ServiceException {
+		
+		try {
+			return documentQueries.getDocumentLastModified(documentId);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+	
 	/**
 	 * Verifies that a role is not less than any of the other roles in a List
 	 * of roles. If so, it will fail the request stating that the user is
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * The bounded executor on which long-running exports and downloads, e.g.
+ * survey response, stream, and image batch reads, are serviced once their
+ * requests have gone asynchronous. This keeps the container's threads free
+ * for the short requests. The exports are admitted by the export bulkhead,
+ * so the executor has one thread per export the bulkhead lets run and only
+ * queues the exports that are admitted while a finished export's thread is
+ * still winding down.
+ */
+public class ExportExecutor implements Executor, DisposableBean {
+	private static final Logger LOGGER =
+		Logger.getLogger(ExportExecutor.class);
+
+	private static ExportExecutor instance;
+
+	private final ThreadPoolExecutor executor;
+	private final long asyncTimeoutMillis;
+
+	/**
+	 * Creates the executor. This should only be called by Spring and by
+	 * tests.
+	 *
+	 * @param threads The number of exports that may run at once, which
+	 * 				  should be the export bulkhead's maximum.
+	 *
+	 * @param asyncTimeoutMillis The number of milliseconds an export may
+	 * 							 take in total.
+	 */
+	public ExportExecutor(
+		final int threads,
+		final long asyncTimeoutMillis) {
+
+		if(threads <= 0) {
+			throw new IllegalArgumentException(
+				"The number of threads must be positive.");
+		}
+
+		LOGGER.info("Creating the export executor with " + threads + " threads.");
+
+		executor =
+			new ThreadPoolExecutor(
+				threads,
+				threads,
+				60,
+				TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(threads),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger(0);
+
+					@Override
+					public Thread newThread(final Runnable runnable) {
+						Thread result =
+							new Thread(
+								runnable,
+								"Export worker " + count.incrementAndGet());
+						result.setDaemon(true);
+						return result;
+					}
+				});
+		this.asyncTimeoutMillis = asyncTimeoutMillis;
+
+		instance = this;
+	}
+
+	/**
+	 * Returns the instance of this executor.
+	 *
+	 * @return The instance of this executor.
+	 */
+	public static ExportExecutor instance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the number of milliseconds an asynchronous export may take
+	 * before it is timed out.
+	 *
+	 * @return The asynchronous timeout in milliseconds.
+	 */
+	public long getAsyncTimeout() {
+		return asyncTimeoutMillis;
+	}
+
+	/**
+	 * Queues an export.
+	 *
+	 * @param task The export to run.
+	 *
+	 * @throws RejectedExecutionException The executor and its queue are full.
+	 */
+	@Override
+	public void execute(final Runnable task) {
+		executor.execute(task);
+	}
+
+	/**
+	 * Shuts down the executor, interrupting the running exports.
+	 */
+	@Override
+	public void destroy() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,361 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.service;
+
+import java.util.List;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.log4j.Logger;
+import org.ohmage.cache.MailSender;
+import org.ohmage.cache.PreferenceCache;
+import org.ohmage.domain.OutboundMail;
+import org.ohmage.exception.CacheMissException;
+import org.ohmage.exception.DataAccessException;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.query.IMailOutboxQueries;
+import org.ohmage.util.MailUtils;
+
+import com.sun.mail.smtp.SMTPTransport;
+
+/**
+ * This class is responsible for queueing outgoing mail and for sending the
+ * queued mail in the background.
+ */
+public final class MailServices {
+	private static final Logger LOGGER = Logger.getLogger(MailServices.class);
+
+	/**
+	 * The number of seconds to wait before retrying a message the first time
+	 * it fails. This doubles with each failure.
+	 */
+	public static final int RETRY_BASE_SECONDS = 30;
+
+	/**
+	 * The maximum number of seconds to wait before retrying a message.
+	 */
+	public static final int RETRY_MAX_SECONDS = 60 * 60;
+
+	/**
+	 * The number of times a message may fail before it is no longer retried.
+	 */
+	public static final int MAX_ATTEMPTS = 10;
+
+	/**
+	 * The number of seconds a sender has to send the messages it has claimed
+	 * before they are given to another sender.
+	 */
+	private static final int LEASE_SECONDS = 10 * 60;
+
+	private static MailServices instance;
+	private IMailOutboxQueries mailOutboxQueries;
+
+	/**
+	 * Default constructor. Privately instantiated via dependency injection
+	 * (reflection).
+	 *
+	 * @throws IllegalStateException if an instance of this class already
+	 * exists
+	 *
+	 * @throws IllegalArgumentException if iMailOutboxQueries is null
+	 */
+	private MailServices(IMailOutboxQueries iMailOutboxQueries) {
+		if(instance != null) {
+			throw new IllegalStateException("An instance of this class already exists.");
+		}
+
+		if(iMailOutboxQueries == null) {
+			throw new IllegalArgumentException("An instance of IMailOutboxQueries is required.");
+		}
+
+		mailOutboxQueries = iMailOutboxQueries;
+		instance = this;
+	}
+
+	/**
+	 * @return  Returns the singleton instance of this class.
+	 */
+	public static MailServices instance() {
+		return instance;
+	}
+
+	/**
+	 * Queues a message to be sent in the background. The sender and subject
+	 * are read from the preferences now so that a misconfiguration is
+	 * reported to the request instead of the background sender.
+	 *
+	 * @param senderKey The preference key for the sender's email address.
+	 *
+	 * @param recipient The recipient's email address.
+	 *
+	 * @param subjectKey The preference key for the subject.
+	 *
+	 * @param body The body.
+	 *
+	 * @param contentType The MIME type of the body.
+	 *
+	 * @throws ServiceException A preference is missing, an address is
+	 * 							invalid, or the message could not be queued.
+	 */
+	public void queueMail(
+			final String senderKey,
+			final String recipient,
+			final String subjectKey,
+			final String body,
+			final String contentType)
+			throws ServiceException {
+
+		String sender = lookup(senderKey);
+		String subject = lookup(subjectKey);
+
+		try {
+			new InternetAddress(sender, true);
+		}
+		catch(AddressException e) {
+			throw new ServiceException(
+				"The origin address is not a valid email address.",
+				e);
+		}
+		try {
+			new InternetAddress(recipient, true);
+		}
+		catch(AddressException e) {
+			throw new ServiceException(
+				"The destination address is not a valid email address.",
+				e);
+		}
+
+		try {
+			mailOutboxQueries.queueMail(
+				sender,
+				recipient,
+				subject,
+				body,
+				contentType);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+
+		// Send it now instead of waiting for the next periodic run.
+		MailSender mailSender = MailSender.instance();
+		if(mailSender != null) {
+			mailSender.wakeUp();
+		}
+	}
+
+	/**
+	 * Claims a batch of the queued messages and sends them over a single
+	 * connection to the mail server. Sent messages are removed from the
+	 * queue, and failed messages are retried later.
+	 *
+	 * @param batchSize The maximum number of messages to send.
+	 *
+	 * @return The number of messages that were claimed, whether or not they
+	 * 		   were sent.
+	 *
+	 * @throws ServiceException There was an error reading or updating the
+	 * 							queue.
+	 */
+	public int sendQueuedMail(final int batchSize) throws ServiceException {
+		List<OutboundMail> messages;
+		try {
+			messages = mailOutboxQueries.claimMail(batchSize, LEASE_SECONDS);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+
+		if(messages.isEmpty()) {
+			return 0;
+		}
+
+		Session smtpSession = MailUtils.getMailSession();
+		SMTPTransport transport = null;
+		try {
+			for(OutboundMail mail : messages) {
+				try {
+					// Connect the first time or reconnect if a failure has
+					// closed the connection.
+					if((transport == null) || (! transport.isConnected())) {
+						closeQuietly(transport);
+						transport = null;
+						transport = MailUtils.connect(smtpSession);
+					}
+
+					MailUtils.sendMailMessage(
+						transport,
+						buildMessage(smtpSession, mail));
+				}
+				catch(ServiceException e) {
+					failMail(mail, e);
+					continue;
+				}
+
+				try {
+					mailOutboxQueries.deleteMail(mail.getId());
+				}
+				catch(DataAccessException e) {
+					throw new ServiceException(e);
+				}
+			}
+		}
+		finally {
+			closeQuietly(transport);
+		}
+
+		return messages.size();
+	}
+
+	/**
+	 * Returns the number of seconds to wait before retrying a message.
+	 *
+	 * @param attempts The number of times the message has failed, including
+	 * 				   this one.
+	 *
+	 * @return The number of seconds to wait or null if the message should not
+	 * 		   be retried.
+	 */
+	public static Integer getRetrySeconds(final int attempts) {
+		if(attempts >= MAX_ATTEMPTS) {
+			return null;
+		}
+
+		long delay = RETRY_BASE_SECONDS;
+		for(int i = 1; (i < attempts) && (delay < RETRY_MAX_SECONDS); i++) {
+			delay *= 2;
+		}
+
+		return (int) Math.min(delay, RETRY_MAX_SECONDS);
+	}
+
+	/**
+	 * Records that a message failed and schedules its retry.
+	 *
+	 * @param mail The message that failed.
+	 *
+	 * @param cause Why it failed.
+	 *
+	 * @throws ServiceException The failure could not be recorded.
+	 */
+	private void failMail(
+			final OutboundMail mail,
+			final ServiceException cause)
+			throws ServiceException {
+
+		Integer retrySeconds = getRetrySeconds(mail.getAttempts() + 1);
+		if(retrySeconds == null) {
+			LOGGER.error(
+				"Giving up on mail " + mail.getId() +
+					" after " + MAX_ATTEMPTS + " attempts.",
+				cause);
+		}
+		else {
+			LOGGER.warn(
+				"Could not send mail " + mail.getId() +
+					"; retrying in " + retrySeconds + " seconds.",
+				cause);
+		}
+
+		Throwable reason = (cause.getCause() == null) ? cause : cause.getCause();
+		try {
+			mailOutboxQueries.failMail(
+				mail.getId(),
+				retrySeconds,
+				cause.getMessage() + " " + reason.getMessage());
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+
+	/**
+	 * Builds the message to send from a queued message.
+	 *
+	 * @param smtpSession The session used to create the message.
+	 *
+	 * @param mail The queued message.
+	 *
+	 * @return The message to send.
+	 *
+	 * @throws ServiceException The message could not be built.
+	 */
+	private static Message buildMessage(
+			final Session smtpSession,
+			final OutboundMail mail)
+			throws ServiceException {
+
+		MimeMessage message = new MimeMessage(smtpSession);
+		try {
+			message.setFrom(new InternetAddress(mail.getSender()));
+			message.setRecipient(
+				Message.RecipientType.TO,
+				new InternetAddress(mail.getRecipient()));
+			message.setSubject(mail.getSubject());
+			message.setContent(mail.getBody(), mail.getContentType());
+		}
+		catch(MessagingException e) {
+			throw new ServiceException(
+				"There was an error constructing the message.",
+				e);
+		}
+
+		return message;
+	}
+
+	/**
+	 * Closes a connection to the mail server, ignoring any errors.
+	 *
+	 * @param transport The connection, which may be null.
+	 */
+	private static void closeQuietly(final SMTPTransport transport) {
+		if(transport == null) {
+			return;
+		}
+
+		try {
+			MailUtils.close(transport);
+		}
+		catch(ServiceException e) {
+			LOGGER.info("Could not close the connection to the mail server.", e);
+		}
+	}
+
+	/**
+	 * Reads a mail preference.
+	 *
+	 * @param key The preference's key.
+	 *
+	 * @return The preference's value.
+	 *
+	 * @throws ServiceException The preference does not exist.
+	 */
+	private static String lookup(final String key) throws ServiceException {
+		try {
+			return PreferenceCache.instance().lookup(key);
+		}
+		catch(CacheMissException e) {
+			throw new ServiceException(
+				"The mail property is not in the preference table: " + key,
+				e);
+		}
+	}
+}
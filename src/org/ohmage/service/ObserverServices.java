@@ -18,6 +18,7 @@ import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.annotate.JsonProperty;
 import org.codehaus.jackson.map.annotate.JsonSerialize;
 import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
 import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.domain.DataStream;
 import org.ohmage.domain.DataStream.MetaData;
@@ -878,6 +879,54 @@ public class ObserverServices {
 		}
 	}
 
+	/**
+	 * Retrieves the days on which a user has data for a stream.
+	 * 
+	 * @param username The username of the user to which the data must belong.
+	 * 				   Required.
+	 * 
+	 * @param observerId The observer's unique identifier. Required.
+	 * 
+	 * @param observerVersion The observer's version. Optional.
+	 * 
+	 * @param streamId The stream's unique identifier. Required.
+	 * 
+	 * @param streamVersion The stream's version. Optional.
+	 * 
+	 * @param startDate The earliest day to return. Optional.
+	 * 
+	 * @param endDate The latest day to return. Optional.
+	 * 
+	 * @return The days, in the time zones of the data points, in order.
+	 * 
+	 * @throws ServiceException There was an error.
+	 */
+	public List<LocalDate> getStreamDates(
+			final String username,
+			final String observerId,
+			final Long observerVersion,
+			final String streamId,
+			final Long streamVersion,
+			final LocalDate startDate,
+			final LocalDate endDate)
+			throws ServiceException {
+		
+		try {
+			return
+				observerQueries.readDates(
+					username,
+					observerId,
+					observerVersion,
+					streamId,
+					streamVersion,
+					startDate,
+					endDate);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+
 	/**
 	 * Retrieves the invalid data for a stream.
 	 * 
@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.ohmage.exception.DataAccessException;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.query.IObserverQueries;
+import org.ohmage.query.IPartitionQueries;
+
+/**
+ * This class is responsible for the monthly partitions of the stream data
+ * and Mobility tables. Partitions are created ahead of the months that they
+ * will hold, and, if there is a retention period, the months before it are
+ * dropped.
+ */
+public final class PartitionServices {
+	private static final Logger LOGGER =
+		Logger.getLogger(PartitionServices.class);
+
+	/**
+	 * The table whose days with data are indexed in observer_stream_day.
+	 */
+	private static final String TABLE_STREAM_DATA = "observer_stream_data";
+
+	/**
+	 * The tables that are partitioned by month. The Mobility tables are
+	 * partitioned identically so that a Mobility point and its extended data
+	 * are dropped together.
+	 */
+	public static final List<String> TABLES =
+		Collections.unmodifiableList(
+			Arrays.asList(
+				TABLE_STREAM_DATA,
+				"mobility",
+				"mobility_extended"));
+
+	/**
+	 * The partition that holds the stream data without a time. It is never
+	 * dropped.
+	 */
+	public static final String PARTITION_UNDATED = "p_undated";
+
+	/**
+	 * The last partition, which has no upper bound. New months are divided
+	 * from it, and it is never dropped.
+	 */
+	public static final String PARTITION_FUTURE = "p_future";
+
+	private static PartitionServices instance;
+	private IPartitionQueries partitionQueries;
+	private IObserverQueries observerQueries;
+
+	/**
+	 * Default constructor. Privately instantiated via dependency injection
+	 * (reflection).
+	 *
+	 * @throws IllegalStateException if an instance of this class already
+	 * exists
+	 *
+	 * @throws IllegalArgumentException if iPartitionQueries or
+	 * iObserverQueries is null
+	 */
+	private PartitionServices(
+			IPartitionQueries iPartitionQueries,
+			IObserverQueries iObserverQueries) {
+
+		if(instance != null) {
+			throw new IllegalStateException("An instance of this class already exists.");
+		}
+
+		if(iPartitionQueries == null) {
+			throw new IllegalArgumentException("An instance of IPartitionQueries is required.");
+		}
+		if(iObserverQueries == null) {
+			throw new IllegalArgumentException("An instance of IObserverQueries is required.");
+		}
+
+		partitionQueries = iPartitionQueries;
+		observerQueries = iObserverQueries;
+		instance = this;
+	}
+
+	/**
+	 * @return  Returns the singleton instance of this class.
+	 */
+	public static PartitionServices instance() {
+		return instance;
+	}
+
+	/**
+	 * Creates the partitions for this month and the following months and
+	 * drops the partitions that are entirely before the retention period.
+	 * Tables that are not partitioned are ignored.
+	 *
+	 * @param monthsAhead The number of months after this one that should
+	 * 					  have partitions.
+	 *
+	 * @param retentionMonths The number of months before this one whose data
+	 * 						  is kept. If this is zero or less, no data is
+	 * 						  dropped.
+	 *
+	 * @throws ServiceException There was an error.
+	 */
+	public void maintainPartitions(
+			final int monthsAhead,
+			final int retentionMonths)
+			throws ServiceException {
+
+		DateTime now = new DateTime(DateTimeZone.UTC);
+
+		try {
+			for(String table : TABLES) {
+				Map<String, Long> partitions =
+					partitionQueries.getPartitions(table);
+
+				if(! partitions.containsKey(PARTITION_FUTURE)) {
+					continue;
+				}
+
+				Map<String, Long> missing =
+					getMissingPartitions(partitions, now, monthsAhead);
+				if(! missing.isEmpty()) {
+					LOGGER.info(
+						"Adding the partitions to " + table + ": " +
+							missing.keySet());
+					partitionQueries.addPartitions(
+						table,
+						PARTITION_FUTURE,
+						missing);
+				}
+
+				List<String> expired =
+					getExpiredPartitions(partitions, now, retentionMonths);
+				if(! expired.isEmpty()) {
+					LOGGER.info(
+						"Dropping the partitions from " + table + ": " +
+							expired);
+					partitionQueries.dropPartitions(table, expired);
+
+					// The stream data's days are the dates of its
+					// time_adjusted values, so the days before the first
+					// remaining bound no longer have data.
+					if(TABLE_STREAM_DATA.equals(table)) {
+						long firstBound =
+							partitions.get(expired.get(expired.size() - 1));
+						observerQueries.deleteDatesBefore(
+							new LocalDate(firstBound, DateTimeZone.UTC));
+					}
+				}
+			}
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+
+	/**
+	 * Returns the monthly partitions that need to be divided from the last
+	 * partition so that every month through the given number of months from
+	 * now has its own partition.
+	 *
+	 * @param partitions The existing partitions' names and upper bounds.
+	 *
+	 * @param now The current time.
+	 *
+	 * @param monthsAhead The number of months after the current one that
+	 * 					  should have partitions.
+	 *
+	 * @return The missing partitions' names and upper bounds in order, which
+	 * 		   may be empty.
+	 */
+	static Map<String, Long> getMissingPartitions(
+			final Map<String, Long> partitions,
+			final DateTime now,
+			final int monthsAhead) {
+
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+
+		Long lastBound = getLastBound(partitions);
+		if(lastBound == null) {
+			return result;
+		}
+
+		long target =
+			getMonthStart(now).plusMonths(monthsAhead + 1).getMillis();
+
+		DateTime month = getMonthStart(new DateTime(lastBound, DateTimeZone.UTC));
+		DateTime nextMonth = month.plusMonths(1);
+		while(nextMonth.getMillis() <= target) {
+			if(nextMonth.getMillis() > lastBound) {
+				result.put(getPartitionName(month), nextMonth.getMillis());
+			}
+
+			month = nextMonth;
+			nextMonth = month.plusMonths(1);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the partitions whose rows are all before the retention period,
+	 * which begins at the start of the month the given number of months
+	 * before the current one.
+	 *
+	 * @param partitions The existing partitions' names and upper bounds.
+	 *
+	 * @param now The current time.
+	 *
+	 * @param retentionMonths The number of months before the current one
+	 * 						  whose data is kept. If this is zero or less,
+	 * 						  no partitions are returned.
+	 *
+	 * @return The names of the partitions to drop, which may be empty.
+	 */
+	static List<String> getExpiredPartitions(
+			final Map<String, Long> partitions,
+			final DateTime now,
+			final int retentionMonths) {
+
+		List<String> result = new LinkedList<String>();
+		if(retentionMonths <= 0) {
+			return result;
+		}
+
+		long cutoff =
+			getMonthStart(now).minusMonths(retentionMonths).getMillis();
+
+		for(Map.Entry<String, Long> partition : partitions.entrySet()) {
+			String name = partition.getKey();
+			Long bound = partition.getValue();
+
+			if(
+				PARTITION_UNDATED.equals(name) ||
+				PARTITION_FUTURE.equals(name) ||
+				(bound == null)) {
+
+				continue;
+			}
+
+			if(bound <= cutoff) {
+				result.add(name);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the name of the partition that holds a month.
+	 *
+	 * @param month Any time in the month.
+	 *
+	 * @return The name, which is "p" followed by the year and month, e.g.
+	 * 		   "p201210".
+	 */
+	static String getPartitionName(final DateTime month) {
+		return
+			String.format(
+				"p%04d%02d",
+				month.getYear(),
+				month.getMonthOfYear());
+	}
+
+	/**
+	 * Returns the start of a time's month in UTC.
+	 */
+	private static DateTime getMonthStart(final DateTime time) {
+		return
+			time
+				.withZone(DateTimeZone.UTC)
+				.withDayOfMonth(1)
+				.withTimeAtStartOfDay();
+	}
+
+	/**
+	 * Returns the largest upper bound of the partitions, ignoring the last
+	 * partition without one.
+	 */
+	private static Long getLastBound(final Map<String, Long> partitions) {
+		Long result = null;
+		for(Long bound : partitions.values()) {
+			if((bound != null) && ((result == null) || (bound > result))) {
+				result = bound;
+			}
+		}
+		return result;
+	}
+}
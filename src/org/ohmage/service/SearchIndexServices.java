@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.service;
+
+import org.ohmage.exception.DataAccessException;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.query.ISearchIndexQueries;
+
+/**
+ * This class is responsible for maintaining the index that is used to search
+ * users, classes, campaigns, and documents by partial values.
+ */
+public final class SearchIndexServices {
+	private static SearchIndexServices instance;
+	private ISearchIndexQueries searchIndexQueries;
+
+	/**
+	 * Default constructor. Privately instantiated via dependency injection
+	 * (reflection).
+	 *
+	 * @throws IllegalStateException if an instance of this class already
+	 * exists
+	 *
+	 * @throws IllegalArgumentException if iSearchIndexQueries is null
+	 */
+	private SearchIndexServices(ISearchIndexQueries iSearchIndexQueries) {
+		if(instance != null) {
+			throw new IllegalStateException("An instance of this class already exists.");
+		}
+
+		if(iSearchIndexQueries == null) {
+			throw new IllegalArgumentException("An instance of ISearchIndexQueries is required.");
+		}
+
+		searchIndexQueries = iSearchIndexQueries;
+		instance = this;
+	}
+
+	/**
+	 * @return  Returns the singleton instance of this class.
+	 */
+	public static SearchIndexServices instance() {
+		return instance;
+	}
+
+	/**
+	 * Rebuilds the search index entries of a batch of the entities that were
+	 * queued when they were created or their searchable values were changed.
+	 *
+	 * @param batchSize The maximum number of entities of each type to index.
+	 *
+	 * @return The number of entities that were indexed.
+	 *
+	 * @throws ServiceException There was an error.
+	 */
+	public int indexQueuedEntities(
+			final int batchSize)
+			throws ServiceException {
+
+		try {
+			return searchIndexQueries.indexQueuedEntities(batchSize);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+}
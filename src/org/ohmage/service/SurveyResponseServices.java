@@ -20,6 +20,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -33,7 +34,9 @@ import org.ohmage.domain.IMedia;
 import org.ohmage.domain.Image;
 import org.ohmage.domain.Video;
 import org.ohmage.domain.campaign.Campaign;
+import org.ohmage.domain.campaign.Prompt;
 import org.ohmage.domain.campaign.PromptResponse;
+import org.ohmage.domain.campaign.PromptResponseAggregate;
 import org.ohmage.domain.campaign.RepeatableSetResponse;
 import org.ohmage.domain.campaign.Response;
 import org.ohmage.domain.campaign.SurveyResponse;
@@ -460,6 +463,123 @@ public final class SurveyResponseServices {
 		}
 	}
 	
+	/**
+	 * Aggregates the typed values of the responses to some prompts in the
+	 * database. The prompts must exist in the campaign and must be number,
+	 * hours-before-now, timestamp, or single-choice prompts.
+	 * 
+	 * @param campaign The campaign to which the prompts belong.
+	 * 
+	 * @param username The username of the user that is making this request.
+	 * 
+	 * @param promptIds The prompts' unique identifiers.
+	 * 
+	 * @param usernames Limits the results to only those submitted by any one 
+	 * 					of the users in the list.
+	 * 
+	 * @param startDate Limits the results to only those survey responses that
+	 * 					occurred on or after this date.
+	 * 
+	 * @param endDate Limits the results to only those survey responses that
+	 * 				  occurred on or before this date.
+	 * 
+	 * @param privacyState Limits the results to only those survey responses
+	 * 					   with this privacy state.
+	 * 
+	 * @param groupItems Further groups each prompt's aggregate by these items.
+	 * 
+	 * @param bucketWidth The width of the histogram buckets for number,
+	 * 					  hours-before-now, and timestamp prompts or null.
+	 * 
+	 * @return The aggregates.
+	 * 
+	 * @throws ServiceException A prompt is unknown or cannot be aggregated or
+	 * 							there was an error.
+	 */
+	public List<PromptResponseAggregate> readPromptResponseAggregates(
+			final Campaign campaign,
+			final String username,
+			final Collection<String> promptIds,
+			final Collection<String> usernames,
+			final DateTime startDate,
+			final DateTime endDate,
+			final SurveyResponse.PrivacyState privacyState,
+			final Collection<PromptResponseAggregate.GroupItem> groupItems,
+			final Double bucketWidth)
+			throws ServiceException {
+		
+		Map<String, Prompt.Type> prompts = 
+			new LinkedHashMap<String, Prompt.Type>(promptIds.size());
+		for(String promptId : promptIds) {
+			Prompt.Type promptType;
+			try {
+				promptType = 
+					campaign.getPromptType(
+						campaign.getSurveyIdForPromptId(promptId), 
+						promptId);
+			}
+			catch(DomainException e) {
+				throw new ServiceException(
+					ErrorCode.SURVEY_INVALID_PROMPT_ID,
+					"The prompt does not exist in the campaign: " + promptId,
+					e);
+			}
+			
+			switch(promptType) {
+			case NUMBER:
+			case HOURS_BEFORE_NOW:
+			case TIMESTAMP:
+			case SINGLE_CHOICE:
+				prompts.put(promptId, promptType);
+				break;
+				
+			default:
+				throw new ServiceException(
+					ErrorCode.SURVEY_INVALID_PROMPT_ID,
+					"The prompt's responses cannot be aggregated: " + 
+						promptId);
+			}
+		}
+		
+		try {
+			return surveyResponseQueries.retrievePromptResponseAggregates(
+				campaign, 
+				username, 
+				prompts, 
+				usernames, 
+				startDate, 
+				endDate, 
+				privacyState, 
+				groupItems, 
+				bucketWidth);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+	
+	/**
+	 * Populates the typed columns for a batch of prompt responses that were
+	 * uploaded before those columns existed.
+	 * 
+	 * @param batchSize The maximum number of prompt responses to populate.
+	 * 
+	 * @return The number of prompt responses that were populated.
+	 * 
+	 * @throws ServiceException There was an error.
+	 */
+	public int populateTypedPromptResponses(
+			final int batchSize)
+			throws ServiceException {
+		
+		try {
+			return surveyResponseQueries.populateTypedPromptResponses(batchSize);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+	
 	/**
 	 * Updates the privacy state on a survey.
 	 * 
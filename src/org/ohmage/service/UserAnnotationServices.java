@@ -25,6 +25,7 @@ import org.apache.log4j.Logger;
 import org.joda.time.DateTimeZone;
 import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.domain.Annotation;
+import org.ohmage.domain.SurveyResponseAnnotations;
 import org.ohmage.domain.campaign.Campaign;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.ServiceException;
@@ -124,6 +125,46 @@ public final class UserAnnotationServices {
 		}
 	}
 	
+	/**
+	 * Verifies that a user may read the annotations on the survey responses
+	 * in a campaign. Admins may read all annotations and supervisors may read
+	 * the annotations in their campaigns.
+	 * 
+	 * @param username The user attempting to read the annotations.
+	 * 
+	 * @param campaignId The campaign's unique identifier.
+	 * 
+	 * @throws ServiceException The user may not read the annotations or
+	 * 							there was a problem dispatching to the data
+	 * 							layer.
+	 */
+	public void verifyUserCanReadSurveyResponseAnnotations(
+			final String username,
+			final String campaignId)
+			throws ServiceException {
+		
+		if(UserServices.instance().isUserAnAdmin(username)) {
+			return;
+		}
+		
+		LinkedList<String> ll = new LinkedList<String>();
+		ll.add(campaignId);
+		
+		Map<Campaign, List<Campaign.Role>> campaignRoleMap =
+			UserCampaignServices.instance().getCampaignAndUserRolesForCampaigns(username, ll, false);
+		
+		for(List<Campaign.Role> roleList : campaignRoleMap.values()) {
+			if(roleList.contains(Campaign.Role.SUPERVISOR)) {
+				return;
+			}
+		}
+		
+		throw new ServiceException(
+				ErrorCode.ANNOTATION_INSUFFICIENT_PERMISSIONS, 
+				"The logged-in user does not have the permissions to read the survey response annotations in the campaign: " +
+					campaignId);
+	}
+	
 	/**
 	 * Dispatches to the data layer to create an annotation on a survey
 	 * response.
@@ -166,6 +207,33 @@ public final class UserAnnotationServices {
 		}
 	}
 
+	/**
+	 * Reads the annotations on a set of survey responses and on their prompt
+	 * responses.
+	 * 
+	 * @param campaignId The campaign to which the survey responses belong.
+	 * 					 Survey responses in other campaigns are ignored.
+	 * 
+	 * @param surveyResponseIds The survey responses' unique identifiers.
+	 * 
+	 * @return A map of survey response IDs to their annotations. Survey
+	 * 		   responses without any annotations are omitted.
+	 * 
+	 * @throws ServiceException There was an error.
+	 */
+	public Map<UUID, SurveyResponseAnnotations> readSurveyResponseAnnotations(
+			final String campaignId,
+			final Collection<UUID> surveyResponseIds)
+			throws ServiceException {
+		
+		try {
+			return annotationQueries.readSurveyResponseAnnotations(campaignId, surveyResponseIds);
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+
 	/**
 	 * Dispatches to the data layer to check whether the user
 	 * is the owner of the annotation. Only supervisors can 
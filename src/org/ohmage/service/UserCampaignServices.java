@@ -15,6 +15,7 @@
  ******************************************************************************/
 package org.ohmage.service;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -30,7 +31,7 @@ import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.domain.UserInformation.UserPersonal;
 import org.ohmage.domain.campaign.Campaign;
 import org.ohmage.domain.campaign.CampaignMask;
-import org.ohmage.domain.campaign.SurveyResponse;
+import org.ohmage.domain.campaign.CampaignStats;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.DomainException;
 import org.ohmage.exception.ServiceException;
@@ -853,63 +854,67 @@ public class UserCampaignServices {
 						
 			Collection<Campaign> campaignResults = 
 					campaignQueries.getCampaignInformation(campaignSqlStmt, campaignSqlParameters);
+			if(campaignResults.isEmpty()) {
+				return campaignResults;
+			}
+			
+			// The visible-campaign statement is only evaluated once, above.
+			// The rest of the information is fetched for this batch of 
+			// campaigns by their IDs, with one query each for the roles, the
+			// classes, the statistics, and the masks, however many campaigns
+			// there are. They are not joined into one query because each has
+			// a different number of rows per campaign, so joining them would
+			// return the product of those rows.
+			List<String> campaignIds = new ArrayList<String>(campaignResults.size());
+			for(Campaign campaign : campaignResults) {
+				campaignIds.add(campaign.getId());
+			}
+			String campaignIdsStmt = 
+					"SELECT id FROM campaign WHERE urn IN " + 
+					StringUtils.generateStatementPList(campaignIds.size());
+			Collection<Object> campaignIdsParameters = 
+					new ArrayList<Object>(campaignIds);
 			
-			// request user's roles in different campaigns
-			Map<String, Collection<Campaign.Role>> userCampaignRoles = null;
-			// authors for different campaigns
-			Map<String, Collection<String>> campaignAuthors = null;	
-			//users and their roles in different campaigns
+			// users and their roles in different campaigns. This includes the
+			// request user's roles and the authors and, if requested, 
+			// everyone else.
 			Map<String, Map<String, Collection<Campaign.Role>>> campaignUserRoles = null;
 			// classes associated with each campaign
 			Map<String, Collection<String>> campaignClasses = null; 
 			 // a list of campaign masks associated with each campaign
 			Map<String, Collection<CampaignMask>> campaignMasks = null; 
-			// survey response count breakdown for each campaign
-			Map<String, Map<SurveyResponse.PrivacyState, Integer>> responseCountInfoMap = null;
+			// survey response statistics for each campaign
+			Map<String, CampaignStats> campaignStats = null;
 			
-			// Get information about user's roles in campaigns
+			// Get the users and their roles in the campaigns.
 			try { 
-				userCampaignRoles = userCampaignQueries.
-						getCampaignsAndRolesForUserAndCampaigns(username, campaignSqlStmt, campaignSqlParameters);
-			} catch(DataAccessException e) {
-				throw new ServiceException(
-						"There was a problem getting the user's roles in campaigns", e);
-			}	
-			
-			// get information about authorList in campaigns
-			try {
-				campaignAuthors = 
-						userCampaignQueries.getAuthorsForCampaigns(campaignSqlStmt, campaignSqlParameters);
+				campaignUserRoles = userCampaignQueries.
+						getUsersAndRolesForCampaignIds(
+								campaignIds, 
+								(withUsers) ? null : username);
 			} catch(DataAccessException e) {
 				throw new ServiceException(
-						"There was a problem getting the author list.", e);
+						"There was a problem getting the users' roles in campaigns", e);
 			}	
 			
 			// get class information
 			if (withClasses) {
 				campaignClasses = campaignClassQueries.
-					getClassesAssociatedWithCampaigns(campaignSqlStmt, campaignSqlParameters);
+					getClassesAssociatedWithCampaigns(campaignIdsStmt, campaignIdsParameters);
 			} 
 			
-			// get user information
-			if (withUsers) {
-				// Add the users and their roles to the campaign.
-				campaignUserRoles = userCampaignQueries.
-					getUsersAndRolesForCampaigns(campaignSqlStmt, campaignSqlParameters);
-			} 
-			
-			// get survey response count information 
+			// get survey response statistics
 			if (withResponseCounts) {
-			    responseCountInfoMap = campaignSurveyResponseQueries.
-				    	getSurveyResponseCountInfoForCampaigns(username, campaignSqlStmt, campaignSqlParameters);
+			    campaignStats = campaignSurveyResponseQueries.
+				    	getSurveyResponseStatsForCampaigns(username, campaignIds);
 			}
 			
 			// get campaign mask information
 			try {
 				campaignMasks = userCampaignQueries.
 						getCampaignMasksForCampaigns(
-								campaignSqlStmt, 
-								campaignSqlParameters, 
+								campaignIdsStmt, 
+								campaignIdsParameters, 
 								null, 
 								null, 
 								null, 
@@ -925,8 +930,13 @@ public class UserCampaignServices {
 			for (Campaign campaign : campaignResults) {
 				String campaignId = campaign.getId();
 				
+				Map<String, Collection<Campaign.Role>> userRoles = campaignUserRoles.get(campaignId);
+				if (userRoles == null) {
+					userRoles = Collections.emptyMap();
+				}
+				
 				// update request user's roles in different campaigns
-				Collection<Campaign.Role> campaignRoles = userCampaignRoles.get(campaignId);
+				Collection<Campaign.Role> campaignRoles = userRoles.get(username);
 				if (campaignRoles != null) {
 					try {
 						campaign.addRequestUserRoles(campaignRoles);
@@ -936,8 +946,14 @@ public class UserCampaignServices {
 				} 
 				
 				// update the author list for each campaign 
-				Collection<String> authorList = campaignAuthors.get(campaignId);
-				if (authorList != null) {
+				List<String> authorList = new ArrayList<String>();
+				for (Map.Entry<String, Collection<Campaign.Role>> entry : userRoles.entrySet()) {
+					if (entry.getValue().contains(Campaign.Role.AUTHOR)) {
+						authorList.add(entry.getKey());
+					}
+				}
+				if (! authorList.isEmpty()) {
+					Collections.sort(authorList);
 					try {
 						campaign.addAuthorList(authorList);
 					} catch (DomainException e) {
@@ -959,11 +975,8 @@ public class UserCampaignServices {
 				}
 				
 				// update users and roles information
-				if (withUsers) {
-					Map<String, Collection<Campaign.Role>> userRoles = campaignUserRoles.get(campaignId);
-					if (userRoles != null) {
-						campaign.addUsers(userRoles);
-					}
+				if (withUsers && (! userRoles.isEmpty())) {
+					campaign.addUsers(userRoles);
 				}
 				
 				// update mask information
@@ -972,10 +985,9 @@ public class UserCampaignServices {
 					campaign.addMasks(masks);
 				}
 				
-				// update the survey response count info
+				// update the survey response statistics
 				if (withResponseCounts) {
-				    Map<SurveyResponse.PrivacyState, Integer> countInfo = responseCountInfoMap.get(campaignId);
-				    campaign.addSurveyResponseCounts(countInfo);
+				    campaign.addSurveyResponseStats(campaignStats.get(campaignId));
 				}
 			}
 						
@@ -16,11 +16,15 @@
 package org.ohmage.service;
 
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.UploadStats;
 import org.ohmage.domain.campaign.Campaign;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.ServiceException;
@@ -143,6 +147,61 @@ public class UserMobilityServices {
 		}
 	}
 	
+	/**
+	 * Checks if some "requesting" user can view the Mobility data of some
+	 * users in a campaign. The campaign's roles are read once, so a 
+	 * supervisor, or an analyst of a shared campaign, is allowed to view all 
+	 * of the campaign's users without checking them individually. Otherwise,
+	 * each user is checked with
+	 * {@link #requesterCanViewUsersMobilityData(String, String)}.
+	 * 
+	 * @param campaignId The campaign's unique identifier.
+	 * 
+	 * @param requestersUsername The username of the user that is attempting to
+	 * 							 view data about the other users.
+	 * 
+	 * @param usersUsernames The usernames of the users whose information is
+	 * 						 being queried.
+	 * 
+	 * @throws ServiceException Thrown if the requesting user doesn't have
+	 * 							sufficient permissions to read Mobility 
+	 * 							information about one of the users or if 
+	 * 							there is an error.
+	 */
+	public void requesterCanViewUsersMobilityData(
+			final String campaignId,
+			final String requestersUsername, 
+			final Collection<String> usersUsernames) 
+			throws ServiceException {
+		
+		try {
+			List<Campaign.Role> requestersCampaignRoles = 
+				userCampaignQueries.getUserCampaignRoles(requestersUsername, campaignId);
+			
+			if(requestersCampaignRoles.contains(Campaign.Role.SUPERVISOR) ||
+					(requestersCampaignRoles.contains(Campaign.Role.ANALYST) && 
+					 Campaign.PrivacyState.SHARED.equals(campaignQueries.getCampaignPrivacyState(campaignId)))) {
+				
+				Set<String> campaignUsernames = 
+					new HashSet<String>(userCampaignQueries.getUsersInCampaign(campaignId));
+				
+				for(String usersUsername : usersUsernames) {
+					if(! campaignUsernames.contains(usersUsername)) {
+						requesterCanViewUsersMobilityData(requestersUsername, usersUsername);
+					}
+				}
+			}
+			else {
+				for(String usersUsername : usersUsernames) {
+					requesterCanViewUsersMobilityData(requestersUsername, usersUsername);
+				}
+			}
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
+	
 	/**
 	 * Retrieves the number of hours since the last Mobility upload from a 
 	 * user.
@@ -196,4 +255,29 @@ public class UserMobilityServices {
 			throw new ServiceException(e);
 		}
 	}
+	
+	/**
+	 * Retrieves the Mobility upload statistics of some users with a constant
+	 * number of queries. The recent period is the last 24 hours.
+	 * 
+	 * @param usernames The usernames of the users in question.
+	 * 
+	 * @return A map of usernames to their statistics. Users that have never
+	 * 		   uploaded a Mobility point are not included.
+	 * 
+	 * @throws ServiceException Thrown if there is an error.
+	 */
+	public Map<String, UploadStats> getUploadStatsForUsers(
+			final Collection<String> usernames) 
+			throws ServiceException {
+		
+		try {
+			return userMobilityQueries.getUploadStatsForUsers(
+					usernames, 
+					System.currentTimeMillis() - (HOURS_IN_A_DAY * MILLIS_IN_A_HOUR));
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
 }
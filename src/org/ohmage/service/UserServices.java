@@ -39,13 +39,10 @@ import java.util.Set;
 import java.util.UUID;
 
 import javax.mail.Message;
-import javax.mail.MessagingException;
 import javax.mail.NoSuchProviderException;
 import javax.mail.SendFailedException;
-import javax.mail.Session;
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
-import javax.mail.internet.MimeMessage;
 import com.sun.mail.smtp.SMTPTransport;
 
 import jbcrypt.BCrypt;
@@ -78,7 +75,6 @@ import org.ohmage.query.impl.QueryResultsList;
 import org.ohmage.request.InputKeys;
 import org.ohmage.util.CookieUtils;
 import org.ohmage.util.StringUtils;
-import org.ohmage.util.MailUtils;
 
 
 
@@ -421,32 +417,18 @@ public final class UserServices {
 				registrationText
 					.replace(MAIL_REGISTRATION_TEXT_TOS, termsOfService);
 			
-			// Get the session.
-			Session smtpSession = MailUtils.getMailSession();
-			// Create the message.
-			MimeMessage message = new MimeMessage(smtpSession);
-			
+			// Queue the message. It is sent in the background so that the 
+			// request does not wait on the mail server.
 			try {
-				// set up properties
-				MailUtils.setMailMessageTo(message, emailAddress);
-				MailUtils.setMailMessageFrom(message, PreferenceCache.KEY_MAIL_REGISTRATION_SENDER);
-				MailUtils.setMailMessageSubject(message, PreferenceCache.KEY_MAIL_REGISTRATION_SUBJECT);	
-
-				try {
-					// Set the content of the message.
-					message.setContent(registrationText, "text/html");
-				}
-				catch(MessagingException e) {
-					throw new ServiceException(
-							"There was an error constructing the message.",
-							e);
-				}
-					
-				// send message
-				MailUtils.sendMailMessage(smtpSession, message);
-
-			} catch (ServiceException e) {
-				throw new ServiceException("Cannot successfully send the password recovery notification.", e);
+				MailServices.instance().queueMail(
+					PreferenceCache.KEY_MAIL_REGISTRATION_SENDER,
+					emailAddress,
+					PreferenceCache.KEY_MAIL_REGISTRATION_SUBJECT,
+					registrationText,
+					"text/html");
+			}
+			catch(ServiceException e) {
+				throw new ServiceException("Cannot successfully queue the registration notification.", e);
 			}
 
 			/*
@@ -2048,42 +2030,34 @@ public final class UserServices {
 			throw new ServiceException(e);
 		}
 		
-		// Get the session.
-		Session smtpSession = MailUtils.getMailSession();
-		// Create the message.
-		MimeMessage message = new MimeMessage(smtpSession);
+		// Build the message.
+		String text;
+		try {
+			text =
+				PreferenceCache.instance().lookup(
+					PreferenceCache.KEY_MAIL_PASSWORD_RECOVERY_TEXT) +
+					"<br /><br />" +
+					newPassword;
+		}
+		catch(CacheMissException e) {
+			throw new ServiceException(
+					"The mail property is not in the preference table: " +
+						PreferenceCache.KEY_MAIL_PASSWORD_RECOVERY_TEXT,
+					e);
+		}
 		
+		// Queue the message. It is removed from the queue as soon as it has 
+		// been sent.
 		try {
-			// set up properties
-			MailUtils.setMailMessageTo(message, emailAddress);
-			MailUtils.setMailMessageFrom(message, PreferenceCache.KEY_MAIL_PASSWORD_RECOVERY_SENDER);
-			MailUtils.setMailMessageSubject(message, PreferenceCache.KEY_MAIL_PASSWORD_RECOVERY_SUBJECT);	
-
-			try {
-				message.setContent(
-						PreferenceCache.instance().lookup(
-							PreferenceCache.KEY_MAIL_PASSWORD_RECOVERY_TEXT) +
-							"<br /><br />" +
-							newPassword, 
-						"text/html");
-			}
-			catch(CacheMissException e) {
-				throw new ServiceException(
-						"The mail property is not in the preference table: " +
-							PreferenceCache.KEY_MAIL_PASSWORD_RECOVERY_SUBJECT,
-						e);
-			}
-			catch(MessagingException e) {
-				throw new ServiceException(
-						"Could not set the HTML portion of the message.", 
-						e);
-			}
-			
-			// send message
-			MailUtils.sendMailMessage(smtpSession, message);
-
-		} catch (ServiceException e) {
-			throw new ServiceException("Cannot successfully send the password recovery notification.", e);
+			MailServices.instance().queueMail(
+				PreferenceCache.KEY_MAIL_PASSWORD_RECOVERY_SENDER,
+				emailAddress,
+				PreferenceCache.KEY_MAIL_PASSWORD_RECOVERY_SUBJECT,
+				text,
+				"text/html");
+		}
+		catch(ServiceException e) {
+			throw new ServiceException("Cannot successfully queue the password recovery notification.", e);
 		}
 		
 		/*// Add the recipient.
@@ -15,10 +15,13 @@
  ******************************************************************************/
 package org.ohmage.service;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.Map;
 import java.util.UUID;
 
 import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.UploadStats;
 import org.ohmage.domain.campaign.Campaign;
 import org.ohmage.exception.DataAccessException;
 import org.ohmage.exception.ServiceException;
@@ -199,4 +202,40 @@ public class UserSurveyResponseServices {
 			throw new ServiceException(e);
 		}
 	}
+	
+	/**
+	 * Retrieves the survey upload statistics of some users in a campaign 
+	 * with one query. The survey responses that are counted are those that
+	 * the requester may see, and the recent period is the last 24 hours.
+	 * 
+	 * @param requestersUsername The username of the user that is requesting
+	 * 							 this information.
+	 * 
+	 * @param campaignId The campaign's unique identifier.
+	 * 
+	 * @param usernames The usernames of the users to which the survey 
+	 * 					responses belong.
+	 * 
+	 * @return A map of usernames to their statistics. Users without any
+	 * 		   visible survey responses are not included.
+	 * 
+	 * @throws ServiceException Thrown if there is an error.
+	 */
+	public Map<String, UploadStats> getUploadStatsForUsers(
+			final String requestersUsername, 
+			final String campaignId,
+			final Collection<String> usernames) 
+			throws ServiceException {
+		
+		try {
+			return userSurveyResponseQueries.getUploadStatsForUsers(
+					requestersUsername, 
+					campaignId, 
+					usernames, 
+					System.currentTimeMillis() - (HOURS_IN_A_DAY * MILLIS_IN_A_HOUR));
+		}
+		catch(DataAccessException e) {
+			throw new ServiceException(e);
+		}
+	}
 }
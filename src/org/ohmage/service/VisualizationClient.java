@@ -0,0 +1,525 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.request.RequestCancellation;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * <p>
+ * A pooled HTTP client for the visualization server. All connections to the
+ * visualization server are drawn from a single, bounded connection pool, and
+ * every call is bounded by a connect timeout, a read timeout, and a timeout
+ * for waiting on a free connection.
+ * </p>
+ *
+ * <p>
+ * The client also guards the visualization server with a circuit breaker.
+ * After a configurable number of consecutive failures, the circuit is opened
+ * and all calls fail immediately until the open period has elapsed, at which
+ * point a single trial call is allowed through to decide whether or not to
+ * close the circuit again.
+ * </p>
+ *
+ * <p>
+ * Finally, it owns the bounded executor on which asynchronous visualization
+ * requests are serviced, so that waiting on the visualization server does not
+ * consume servlet container threads.
+ * </p>
+ */
+public class VisualizationClient implements Executor, DisposableBean {
+	private static final Logger LOGGER =
+		Logger.getLogger(VisualizationClient.class);
+
+	/**
+	 * The content type of the parameters sent to the visualization server.
+	 */
+	private static final String CONTENT_TYPE_PARAMETERS =
+		"application/x-www-form-urlencoded";
+	/**
+	 * The encoding of the parameters sent to the visualization server.
+	 */
+	private static final String ENCODING = "UTF-8";
+	/**
+	 * The maximum number of bytes of an error response from the visualization
+	 * server that will be echoed in the logs.
+	 */
+	private static final int MAX_ERROR_LENGTH = 4096;
+
+	/**
+	 * A handler for the content returned by the visualization server.
+	 */
+	public static interface ResponseHandler {
+		/**
+		 * Handles a successful response from the visualization server. The
+		 * content stream should be consumed before returning, and it will be
+		 * closed by the client afterwards.
+		 *
+		 * @param contentType The content type reported by the visualization
+		 * 					  server or null if it wasn't given.
+		 *
+		 * @param contentLength The length of the content or a negative value
+		 * 						if it is unknown.
+		 *
+		 * @param content The content from the visualization server.
+		 *
+		 * @throws IOException There was an error reading the content or
+		 * 					   writing it to its destination.
+		 */
+		public void handle(
+			final String contentType,
+			final long contentLength,
+			final InputStream content)
+			throws IOException;
+	}
+
+	/**
+	 * A simple circuit breaker for the visualization server.
+	 */
+	private static final class CircuitBreaker {
+		private final int failureThreshold;
+		private final long openMillis;
+
+		private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
+		private volatile long openUntil = 0;
+		private volatile boolean trialInProgress = false;
+
+		/**
+		 * Creates a new, closed circuit breaker.
+		 *
+		 * @param failureThreshold The number of consecutive failures that
+		 * 						   will open the circuit.
+		 *
+		 * @param openMillis The number of milliseconds the circuit will stay
+		 * 					 open before allowing a trial call through.
+		 */
+		private CircuitBreaker(
+			final int failureThreshold,
+			final long openMillis) {
+
+			this.failureThreshold = failureThreshold;
+			this.openMillis = openMillis;
+		}
+
+		/**
+		 * Returns whether or not a call may be made. When the circuit is open
+		 * and the open period has elapsed, only one caller will be allowed
+		 * through until that call succeeds or fails.
+		 *
+		 * @return Whether or not a call may be made.
+		 */
+		private synchronized boolean allowRequest() {
+			if(consecutiveFailures.get() < failureThreshold) {
+				return true;
+			}
+
+			if((System.currentTimeMillis() >= openUntil) &&
+				(! trialInProgress)) {
+
+				trialInProgress = true;
+				return true;
+			}
+
+			return false;
+		}
+
+		/**
+		 * Records a successful call, which closes the circuit.
+		 */
+		private synchronized void recordSuccess() {
+			consecutiveFailures.set(0);
+			trialInProgress = false;
+		}
+
+		/**
+		 * Records a call that was abandoned before it reached the
+		 * visualization server, which neither opens nor closes the circuit.
+		 */
+		private synchronized void recordAbandoned() {
+			trialInProgress = false;
+		}
+
+		/**
+		 * Records a failed call, which may open the circuit.
+		 */
+		private synchronized void recordFailure() {
+			trialInProgress = false;
+			if(consecutiveFailures.incrementAndGet() >= failureThreshold) {
+				openUntil = System.currentTimeMillis() + openMillis;
+			}
+		}
+	}
+
+	private static VisualizationClient instance;
+
+	private final ThreadSafeClientConnManager connectionManager;
+	private final DefaultHttpClient httpClient;
+	private final Semaphore permits;
+	private final long poolTimeoutMillis;
+	private final CircuitBreaker circuitBreaker;
+	private final ThreadPoolExecutor executor;
+	private final long asyncTimeoutMillis;
+
+	/**
+	 * Creates the visualization client. This should only be called by Spring
+	 * and by tests.
+	 *
+	 * @param maxConnections The maximum number of concurrent connections to
+	 * 						 the visualization server.
+	 *
+	 * @param queueSize The maximum number of asynchronous requests that may
+	 * 					be waiting for a free connection before new ones are
+	 * 					rejected.
+	 *
+	 * @param connectTimeoutMillis The number of milliseconds to wait while
+	 * 							   connecting to the visualization server.
+	 *
+	 * @param readTimeoutMillis The number of milliseconds to wait for data
+	 * 							from the visualization server.
+	 *
+	 * @param poolTimeoutMillis The number of milliseconds to wait for a free
+	 * 							connection.
+	 *
+	 * @param failureThreshold The number of consecutive failures before the
+	 * 						   circuit is opened.
+	 *
+	 * @param circuitOpenMillis The number of milliseconds the circuit will
+	 * 							stay open.
+	 *
+	 * @param asyncTimeoutMillis The number of milliseconds an asynchronous
+	 * 							 visualization request may take in total.
+	 */
+	public VisualizationClient(
+		final int maxConnections,
+		final int queueSize,
+		final int connectTimeoutMillis,
+		final int readTimeoutMillis,
+		final long poolTimeoutMillis,
+		final int failureThreshold,
+		final long circuitOpenMillis,
+		final long asyncTimeoutMillis) {
+
+		if(maxConnections <= 0) {
+			throw new IllegalArgumentException(
+				"The maximum number of connections must be positive.");
+		}
+		if(queueSize < 0) {
+			throw new IllegalArgumentException(
+				"The queue size may not be negative.");
+		}
+
+		LOGGER.info(
+			"Creating the visualization client with " +
+				maxConnections +
+				" connections.");
+
+		connectionManager = new ThreadSafeClientConnManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+		HttpParams params = new BasicHttpParams();
+		HttpConnectionParams.setConnectionTimeout(params, connectTimeoutMillis);
+		HttpConnectionParams.setSoTimeout(params, readTimeoutMillis);
+		HttpConnectionParams.setStaleCheckingEnabled(params, true);
+		httpClient = new DefaultHttpClient(connectionManager, params);
+
+		// The permits match the size of the pool, so waiting for a permit is
+		// what bounds waiting for a free connection.
+		permits = new Semaphore(maxConnections, true);
+		this.poolTimeoutMillis = poolTimeoutMillis;
+		circuitBreaker =
+			new CircuitBreaker(failureThreshold, circuitOpenMillis);
+
+		executor =
+			new ThreadPoolExecutor(
+				maxConnections,
+				maxConnections,
+				60,
+				TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger(0);
+
+					@Override
+					public Thread newThread(final Runnable runnable) {
+						Thread result =
+							new Thread(
+								runnable,
+								"Visualization worker " +
+									count.incrementAndGet());
+						result.setDaemon(true);
+						return result;
+					}
+				});
+		this.asyncTimeoutMillis = asyncTimeoutMillis;
+
+		instance = this;
+	}
+
+	/**
+	 * Returns the instance of this client.
+	 *
+	 * @return The instance of this client.
+	 */
+	public static VisualizationClient instance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the number of milliseconds an asynchronous visualization request
+	 * may take before it is timed out.
+	 *
+	 * @return The asynchronous timeout in milliseconds.
+	 */
+	public long getAsyncTimeout() {
+		return asyncTimeoutMillis;
+	}
+
+	/**
+	 * Queues a task on the visualization executor.
+	 *
+	 * @param task The task to run.
+	 *
+	 * @throws RejectedExecutionException The executor and its queue are full.
+	 */
+	@Override
+	public void execute(final Runnable task) {
+		executor.execute(task);
+	}
+
+	/**
+	 * POSTs the parameters to the visualization server and, if it responds
+	 * successfully, passes the content to the handler without buffering it.
+	 * If the current thread's request is cancelled, the call is aborted.
+	 *
+	 * @param url The full URL of the visualization.
+	 *
+	 * @param parameters The already-encoded parameters.
+	 *
+	 * @param handler The handler for a successful response.
+	 *
+	 * @throws ServiceException The circuit is open, there were no free
+	 * 							connections, the visualization server returned
+	 * 							an error, or there was an error communicating
+	 * 							with it.
+	 */
+	public void post(
+		final String url,
+		final String parameters,
+		final ResponseHandler handler)
+		throws ServiceException {
+
+		if(! circuitBreaker.allowRequest()) {
+			throw new ServiceException(
+				ErrorCode.VISUALIZATION_GENERAL_ERROR,
+				"There was an error. Please, try again later.",
+				"The visualization server circuit is open: " + url);
+		}
+
+		try {
+			if(! permits.tryAcquire(poolTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				// Don't count this against the server, but release the trial
+				// if we were it.
+				circuitBreaker.recordAbandoned();
+				throw new ServiceException(
+					ErrorCode.VISUALIZATION_GENERAL_ERROR,
+					"There was an error. Please, try again later.",
+					"No connections to the visualization server are free: " +
+						url);
+			}
+		}
+		catch(InterruptedException e) {
+			circuitBreaker.recordAbandoned();
+			Thread.currentThread().interrupt();
+			throw new ServiceException(
+				ErrorCode.VISUALIZATION_GENERAL_ERROR,
+				"Interrupted while waiting for a connection.",
+				e);
+		}
+
+		final HttpPost post = new HttpPost(url);
+		RequestCancellation.Cancellable abort =
+			new RequestCancellation.Cancellable() {
+				@Override
+				public void cancel() {
+					post.abort();
+				}
+			};
+		RequestCancellation cancellation = RequestCancellation.current();
+		if(cancellation != null) {
+			cancellation.register(abort);
+		}
+		try {
+			StringEntity entity = new StringEntity(parameters, ENCODING);
+			entity.setContentType(CONTENT_TYPE_PARAMETERS);
+			post.setEntity(entity);
+
+			HttpResponse response = httpClient.execute(post);
+			HttpEntity responseEntity = response.getEntity();
+			int statusCode = response.getStatusLine().getStatusCode();
+
+			// If a non-200 response was returned, get the text from the
+			// response.
+			if(statusCode != 200) {
+				String error = readError(responseEntity);
+				circuitBreaker.recordFailure();
+				throw new ServiceException(
+					ErrorCode.VISUALIZATION_GENERAL_ERROR,
+					"There was an error. Please, try again later.",
+					"The server returned the HTTP error code '" +
+						statusCode +
+						"' with the error '" +
+						error +
+						"': " +
+						url);
+			}
+			if(responseEntity == null) {
+				circuitBreaker.recordFailure();
+				throw new ServiceException(
+					ErrorCode.VISUALIZATION_GENERAL_ERROR,
+					"There was an error. Please, try again later.",
+					"The server returned no content: " + url);
+			}
+
+			// The visualization server did its job, so whatever happens while
+			// handing off the content is not its fault.
+			circuitBreaker.recordSuccess();
+
+			Header contentType = responseEntity.getContentType();
+			InputStream content = responseEntity.getContent();
+			try {
+				handler.handle(
+					(contentType == null) ? null : contentType.getValue(),
+					responseEntity.getContentLength(),
+					content);
+			}
+			catch(IOException e) {
+				// We may not have read everything, so the connection cannot
+				// be reused.
+				post.abort();
+				throw new ServiceException(
+					ErrorCode.VISUALIZATION_GENERAL_ERROR,
+					"Error while writing the visualization.",
+					e);
+			}
+
+			EntityUtils.consume(responseEntity);
+		}
+		catch(IOException e) {
+			post.abort();
+			
+			// An aborted call says nothing about the visualization server.
+			if((cancellation != null) && cancellation.isCancelled()) {
+				circuitBreaker.recordAbandoned();
+				throw new ServiceException(
+					ErrorCode.VISUALIZATION_GENERAL_ERROR,
+					"The visualization request was cancelled.",
+					e);
+			}
+			
+			circuitBreaker.recordFailure();
+			throw new ServiceException(
+				ErrorCode.VISUALIZATION_GENERAL_ERROR,
+				"Error while communicating with the visualization server.",
+				e);
+		}
+		catch(RuntimeException e) {
+			post.abort();
+			circuitBreaker.recordFailure();
+			throw new ServiceException(
+				ErrorCode.VISUALIZATION_GENERAL_ERROR,
+				"Error while communicating with the visualization server.",
+				e);
+		}
+		finally {
+			if(cancellation != null) {
+				cancellation.unregister(abort);
+			}
+			permits.release();
+		}
+	}
+
+	/**
+	 * Shuts down the executor and closes all pooled connections.
+	 */
+	@Override
+	public void destroy() {
+		executor.shutdownNow();
+		connectionManager.shutdown();
+	}
+
+	/**
+	 * Reads an error response, truncating it if it is too long.
+	 *
+	 * @param entity The error entity, which may be null.
+	 *
+	 * @return The error text.
+	 */
+	private String readError(final HttpEntity entity) {
+		if(entity == null) {
+			return "";
+		}
+
+		ByteArrayOutputStream errorByteStream = new ByteArrayOutputStream();
+		try {
+			InputStream errorStream = entity.getContent();
+			try {
+				byte[] chunk = new byte[4096];
+				int amountRead;
+				while(
+					(errorByteStream.size() < MAX_ERROR_LENGTH) &&
+					((amountRead = errorStream.read(chunk)) != -1)) {
+
+					errorByteStream.write(chunk, 0, amountRead);
+				}
+			}
+			finally {
+				errorStream.close();
+			}
+		}
+		catch(IOException e) {
+			LOGGER.warn("Could not read the visualization error.", e);
+		}
+
+		return errorByteStream.toString();
+	}
+}
@@ -16,17 +16,12 @@
 package org.ohmage.service;
 
 import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.net.URLEncoder;
 import java.util.Map;
 
-import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.cache.PreferenceCache;
 import org.ohmage.exception.CacheMissException;
 import org.ohmage.exception.DomainException;
@@ -141,6 +136,70 @@ public class VisualizationServices {
 			final int height, final Map<String, String> parameters) 
 			throws ServiceException {
 		
+		final ByteArrayOutputStream byteArrayStream =
+			new ByteArrayOutputStream();
+		streamVisualizationRequest(
+			requestPath,
+			userToken,
+			campaignId,
+			width,
+			height,
+			parameters,
+			new VisualizationClient.ResponseHandler() {
+				@Override
+				public void handle(
+					final String contentType,
+					final long contentLength,
+					final InputStream content)
+					throws IOException {
+					
+					byte[] chunk = new byte[4096];
+					int amountRead;
+					while((amountRead = content.read(chunk)) != -1) {
+						byteArrayStream.write(chunk, 0, amountRead);
+					}
+				}
+			});
+		
+		return byteArrayStream.toByteArray();
+	}
+	
+	/**
+	 * Sends a request to the visualization server through the pooled
+	 * {@link VisualizationClient} and hands the resulting image to the
+	 * handler as it arrives without buffering it.
+	 * 
+	 * @param requestPath The additional path beyond the base URI that is 
+	 * 					  stored in the database.
+	 * 
+	 * @param userToken The authentication token for the requesting user that
+	 * 					will be passed on to the visualization server to 
+	 * 					perform subsequent requests on our behalf.
+	 * 
+	 * @param campaignId The unique identifier for the campaign whose 
+	 * 					 information will be used in conjunction with this
+	 * 					 request and any subsequent parameters.
+	 * 
+	 * @param width The desired width of the resulting visualization.
+	 * 
+	 * @param height The desired height of the resulting visualization.
+	 * 
+	 * @param parameters Any additional parameters that should be passed to the
+	 * 					 visualization server.
+	 * 
+	 * @param handler The handler that will receive the image if the 
+	 * 				  visualization server successfully created it.
+	 * 
+	 * @throws ServiceException Thrown if there is an error.
+	 * 
+	 * @see #sendVisualizationRequest(String, String, String, int, int, Map)
+	 */
+	public static void streamVisualizationRequest(final String requestPath, 
+			final String userToken, final String campaignId, final int width, 
+			final int height, final Map<String, String> parameters,
+			final VisualizationClient.ResponseHandler handler) 
+			throws ServiceException {
+		
 		// Build the request URL.
 		StringBuilder urlBuilder = new StringBuilder();
 		try {
@@ -236,76 +295,8 @@ public class VisualizationServices {
 					e);
 		}
 		
-		try {
-			// Connect to the visualization server.
-			URL url = new URL(urlString);
-			HttpURLConnection urlConnection = 
-					(HttpURLConnection) url.openConnection();
-			
-			urlConnection.setDoOutput(true);
-			urlConnection.setDoInput(true);
-			urlConnection.setInstanceFollowRedirects(true);
-			urlConnection.setRequestMethod("POST");
-			urlConnection.setRequestProperty(
-					"Content-Length", 
-					Integer.toString(parameterBuilder.length()));
-			
-			DataOutputStream output = 
-					new DataOutputStream(urlConnection.getOutputStream());
-			output.writeBytes(parameterBuilder.toString());
-			output.flush();
-			output.close();
-			
-			// If a non-200 response was returned, get the text from the 
-			// response.
-			if(urlConnection.getResponseCode() != 200) {
-				// Get the error text.
-				ByteArrayOutputStream errorByteStream = new ByteArrayOutputStream();
-				InputStream errorStream = urlConnection.getErrorStream();
-				byte[] chunk = new byte[4096];
-				int amountRead;
-				while((amountRead = errorStream.read(chunk)) != -1) {
-					errorByteStream.write(chunk, 0, amountRead);
-				}
-				errorStream.close();
-				
-				// Echo the error.
-				throw new ServiceException(
-						ErrorCode.VISUALIZATION_GENERAL_ERROR,
-						"There was an error. Please, try again later.",
-						"The server returned the HTTP error code '" + 
-							urlConnection.getResponseCode() + 
-							"' with the error '" + 
-							errorByteStream.toString() + 
-							"': " + 
-							urlString);
-			}
-			
-			// Build the response.
-			InputStream reader = urlConnection.getInputStream();
-			
-			// Generate the byte array.
-			ByteArrayOutputStream byteArrayStream = new ByteArrayOutputStream();
-			byte[] chunk = new byte[4096];
-			int amountRead = 0;
-			while((amountRead = reader.read(chunk)) != -1) {
-				byteArrayStream.write(chunk, 0, amountRead);
-			}
-			reader.close();
-			
-			return byteArrayStream.toByteArray();
-		}
-		catch(MalformedURLException e) {
-			throw new ServiceException(
-					ErrorCode.VISUALIZATION_GENERAL_ERROR, 
-					"Built a malformed URL: " + urlString, 
-					e);
-		}
-		catch(IOException e) {
-			throw new ServiceException(
-					ErrorCode.VISUALIZATION_GENERAL_ERROR, 
-					"Error while communicating with the visualization server.",
-					e);
-		}
+		VisualizationClient
+			.instance()
+			.post(urlString, parameterBuilder.toString(), handler);
 	}
 }
@@ -182,7 +182,7 @@ public class MailUtils {
 	
 	
 	/**
-	 * Sends a mail message.
+	 * Sends a mail message over its own connection to the mail server.
 	 * 
 	 * @param smtpSession The session used to create the message.
 	 * 
@@ -192,6 +192,29 @@ public class MailUtils {
 	 * 							the mail server or sending the message.
 	 */
 	public static void sendMailMessage(Session smtpSession, Message message) throws ServiceException {
+		SMTPTransport transport = connect(smtpSession);
+		
+		try {
+			sendMailMessage(transport, message);
+		}
+		finally {
+			close(transport);
+		}
+	}
+	
+	/**
+	 * Sends a mail message over an existing connection to the mail server. 
+	 * This allows many messages to be sent over one connection.
+	 * 
+	 * @param transport The connection to the mail server.
+	 * 
+	 * @param message The message to be sent.
+	 * 
+	 * @throws ServiceException There was a problem sending the message.
+	 * 
+	 * @see #connect(Session)
+	 */
+	public static void sendMailMessage(SMTPTransport transport, Message message) throws ServiceException {
 
 		// If use Transport.send(), no need to save the message. 
 		// Otherwise, save the message before sending.  
@@ -203,21 +226,37 @@ public class MailUtils {
 					"Could not save the changes to the message.",
 					e);
 		}
-		
 
-		// Get the transport from the session.
-		SMTPTransport transport;
 		try {
-			transport = 
-					(SMTPTransport) smtpSession.getTransport(MAIL_PROTOCOL);
+			transport.sendMessage(message, message.getAllRecipients());
 		}
-		catch(NoSuchProviderException e) {
+		catch(SendFailedException e) {
 			throw new ServiceException(
-					"There is no provider for SMTP. " +
-						"This means the library has changed as it has built-in support for SMTP.",
+					"Failed to send the message.",
 					e);
 		}
-
+		catch(MessagingException e) {
+			throw new ServiceException(
+					"There was a problem while sending the message.",
+					e);
+		}
+	}
+	
+	/**
+	 * Opens a connection to the mail server. If the preferences require 
+	 * authentication, the connection is authenticated with the username and
+	 * password from the preferences.
+	 * 
+	 * @param smtpSession The session whose properties define the mail server.
+	 * 
+	 * @return The connection, which must be closed by the caller.
+	 * 
+	 * @throws ServiceException There was a problem creating the connection to
+	 * 							the mail server.
+	 * 
+	 * @see #close(SMTPTransport)
+	 */
+	public static SMTPTransport connect(Session smtpSession) throws ServiceException {
 		Boolean auth = null;
 		try {
 			auth = StringUtils.decodeBoolean(
@@ -256,6 +295,50 @@ public class MailUtils {
 					e);
 			}
 			
+			return connect(smtpSession, mailUsername, mailPassword);
+		}
+		else {
+			return connect(smtpSession, null, null);
+		}
+	}
+	
+	/**
+	 * Opens a connection to the mail server.
+	 * 
+	 * @param smtpSession The session whose properties define the mail server.
+	 * 
+	 * @param mailUsername The username to authenticate with or null if the
+	 * 					   connection should not be authenticated.
+	 * 
+	 * @param mailPassword The password to authenticate with.
+	 * 
+	 * @return The connection, which must be closed by the caller.
+	 * 
+	 * @throws ServiceException There was a problem creating the connection to
+	 * 							the mail server.
+	 * 
+	 * @see #close(SMTPTransport)
+	 */
+	public static SMTPTransport connect(
+			Session smtpSession, 
+			String mailUsername, 
+			String mailPassword) 
+			throws ServiceException {
+		
+		// Get the transport from the session.
+		SMTPTransport transport;
+		try {
+			transport = 
+					(SMTPTransport) smtpSession.getTransport(MAIL_PROTOCOL);
+		}
+		catch(NoSuchProviderException e) {
+			throw new ServiceException(
+					"There is no provider for SMTP. " +
+						"This means the library has changed as it has built-in support for SMTP.",
+					e);
+		}
+		
+		if(mailUsername != null) {
 			try {
 				transport.connect(
 						smtpSession.getProperty(MAIL_PROPERTY_HOST), 
@@ -279,21 +362,17 @@ public class MailUtils {
 			}
 		}
 		
-
-		try {
-			transport.sendMessage(message, message.getAllRecipients());
-		}
-		catch(SendFailedException e) {
-			throw new ServiceException(
-					"Failed to send the message.",
-					e);
-		}
-		catch(MessagingException e) {
-			throw new ServiceException(
-					"There was a problem while sending the message.",
-					e);
-		}
-		
+		return transport;
+	}
+	
+	/**
+	 * Closes a connection to the mail server.
+	 * 
+	 * @param transport The connection to close.
+	 * 
+	 * @throws ServiceException There was an error closing the connection.
+	 */
+	public static void close(SMTPTransport transport) throws ServiceException {
 		try {
 			transport.close();
 		}
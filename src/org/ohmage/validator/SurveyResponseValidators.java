@@ -33,6 +33,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.ohmage.annotator.Annotator.ErrorCode;
 import org.ohmage.domain.Image;
+import org.ohmage.domain.campaign.PromptResponseAggregate;
 import org.ohmage.domain.campaign.SurveyResponse;
 import org.ohmage.domain.campaign.SurveyResponse.ColumnKey;
 import org.ohmage.domain.campaign.SurveyResponse.Function;
@@ -581,6 +582,87 @@ public final class SurveyResponseValidators {
 		return result;
 	}
 	
+	/**
+	 * Validates that a list of aggregate group items contains only known
+	 * items.
+	 * 
+	 * @param list The list of group items as a string.
+	 * 
+	 * @return A, possibly empty, set of group items.
+	 * 
+	 * @throws ValidationException An item is unknown.
+	 */
+	public static Set<PromptResponseAggregate.GroupItem> validateAggregateGroupList(
+			final String list)
+			throws ValidationException {
+		
+		if(StringUtils.isEmptyOrWhitespaceOnly(list)) {
+			return Collections.emptySet();
+		}
+		
+		String[] listArray = list.split(InputKeys.LIST_ITEM_SEPARATOR);
+		
+		Set<PromptResponseAggregate.GroupItem> result = 
+			new HashSet<PromptResponseAggregate.GroupItem>(listArray.length);
+		
+		for(int i = 0; i < listArray.length; i++) {
+			String item = listArray[i].trim();
+			
+			if(! StringUtils.isEmptyOrWhitespaceOnly(item)) {
+				try {
+					result.add(PromptResponseAggregate.GroupItem.getValue(item));
+				}
+				catch(IllegalArgumentException e) {
+					throw new ValidationException(
+							ErrorCode.SURVEY_INVALID_AGGREGATE_GROUP_ITEM,
+							"The aggregate grouping item is unknown: " + item,
+							e);
+				}
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Validates that a histogram bucket width is a positive number.
+	 * 
+	 * @param bucketWidth The bucket width as a string.
+	 * 
+	 * @return The bucket width or null if the string is null or whitespace
+	 * 		   only.
+	 * 
+	 * @throws ValidationException The bucket width is not a positive number.
+	 */
+	public static Double validateBucketWidth(
+			final String bucketWidth)
+			throws ValidationException {
+		
+		if(StringUtils.isEmptyOrWhitespaceOnly(bucketWidth)) {
+			return null;
+		}
+		
+		double result;
+		try {
+			result = Double.parseDouble(bucketWidth.trim());
+		}
+		catch(NumberFormatException e) {
+			throw new ValidationException(
+					ErrorCode.SURVEY_INVALID_AGGREGATE_BUCKET_WIDTH,
+					"The bucket width is not a number: " + bucketWidth,
+					e);
+		}
+		
+		if((result <= 0) || Double.isInfinite(result) || Double.isNaN(result)) {
+			throw new ValidationException(
+					ErrorCode.SURVEY_INVALID_AGGREGATE_BUCKET_WIDTH,
+					"The bucket width must be a positive number: " + 
+						bucketWidth);
+		}
+		
+		return result;
+	}
+	
 	/**
 	 * Validates that a date is a valid Date and returns it.
 	 * 
@@ -704,6 +786,24 @@ public final class SurveyResponseValidators {
 				"The collapse value is invalid: ");
 	}
 	
+	/**
+	 * Validates the optional include annotations boolean.
+	 * 
+	 * @param includeAnnotations The value to validate.
+	 * @return the Boolean equivalent of includeAnnotations
+	 * @throws ValidationException if includeAnnotations is not null and
+	 * 							   non-boolean.
+	 */
+	public static Boolean validateIncludeAnnotations(
+			final String includeAnnotations) 
+			throws ValidationException {
+		
+		return validateOptionalBoolean(
+				includeAnnotations, 
+				ErrorCode.SURVEY_INVALID_INCLUDE_ANNOTATIONS_VALUE, 
+				"The include annotations value is invalid: ");
+	}
+	
 	/**
 	 * Validates the number of survey responses to skip.
 	 * 
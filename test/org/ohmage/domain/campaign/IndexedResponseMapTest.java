@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.domain.campaign;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that the indexed response map behaves like a HashMap of the same
+ * responses and iterates them in index order.
+ */
+public class IndexedResponseMapTest extends TestCase {
+	/**
+	 * A response that only has an ID.
+	 */
+	private static final class TestResponse extends Response {
+		private final String id;
+
+		private TestResponse(final String id) {
+			super(id);
+			this.id = id;
+		}
+
+		@Override
+		public JSONObject toJson(final boolean withId) {
+			return new JSONObject();
+		}
+
+		@Override
+		public String getId() {
+			return id;
+		}
+	}
+
+	/**
+	 * Tests adding, replacing, growing, and removing responses.
+	 */
+	@Test
+	public void testMap() {
+		IndexedResponseMap map = new IndexedResponseMap(3);
+		Map<Integer, Response> expected = new HashMap<Integer, Response>();
+
+		Response first = new TestResponse("first");
+		Response second = new TestResponse("second");
+		Response replacement = new TestResponse("replacement");
+		Response past = new TestResponse("past");
+
+		Assert.assertNull(map.put(2, second));
+		expected.put(2, second);
+		Assert.assertNull(map.put(0, first));
+		expected.put(0, first);
+		Assert.assertSame(second, map.put(2, replacement));
+		expected.put(2, replacement);
+		Assert.assertNull(map.put(10, past));
+		expected.put(10, past);
+
+		Assert.assertEquals(expected, map);
+		Assert.assertEquals(map, expected);
+		Assert.assertEquals(expected.hashCode(), map.hashCode());
+		Assert.assertEquals(3, map.size());
+		Assert.assertEquals(Arrays.asList(0, 2, 10), Arrays.asList(map.keySet().toArray()));
+
+		Assert.assertNull(map.get(1));
+		Assert.assertNull(map.get(11));
+		Assert.assertNull(map.get(-1));
+		Assert.assertNull(map.get("0"));
+		Assert.assertFalse(map.containsKey(1));
+		Assert.assertTrue(map.containsKey(10));
+
+		Assert.assertSame(first, map.remove(0));
+		Assert.assertNull(map.remove(0));
+		Assert.assertEquals(2, map.size());
+
+		Iterator<Integer> keys = map.keySet().iterator();
+		Assert.assertEquals(Integer.valueOf(2), keys.next());
+		keys.remove();
+		Assert.assertEquals(Integer.valueOf(10), keys.next());
+		Assert.assertFalse(keys.hasNext());
+		Assert.assertEquals(1, map.size());
+		Assert.assertSame(past, map.get(10));
+
+		try {
+			map.put(0, null);
+			fail("A null response was accepted.");
+		}
+		catch(NullPointerException e) {
+			// Passed.
+		}
+	}
+}
@@ -0,0 +1,471 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.integration;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+
+import org.ohmage.cache.AuthorizationCache;
+import org.ohmage.jee.filter.ClientFilter;
+import org.ohmage.jee.filter.GzipFilter;
+import org.ohmage.jee.listener.ConfigurationFileImport;
+import org.ohmage.request.InputKeys;
+import org.ohmage.request.Request;
+import org.ohmage.request.RequestBuilder;
+import org.springframework.context.support.FileSystemXmlApplicationContext;
+
+/**
+ * Runs the server in-process against a scratch database for the integration
+ * tests and the query benchmarks.
+ *
+ * The harness starts a {@link LocalDatabase}, applies the migrations, points
+ * the server's configuration at the database, loads the same Spring
+ * contexts that the web application loads from 'WEB-INF/spring', and seeds
+ * the {@link SyntheticData}. Requests are then dispatched to the
+ * {@link RequestBuilder} the same way that the request servlet does, without
+ * a servlet container.
+ *
+ * It is started once per JVM and stopped when the JVM exits. The paths are
+ * relative to the root of the project unless the 'ohmage.it.web',
+ * 'ohmage.it.migrations', and 'ohmage.it.fixtures' system properties say
+ * otherwise.
+ *
+ * If the 'ohmage.it.compare' system property is a migration's version, that
+ * migration is held back until {@link #applyHeldMigration()} is called so
+ * that the same data may be read before and after it. The migrations after
+ * it are applied as usual, so they must not depend on it.
+ */
+public final class IntegrationHarness {
+	/**
+	 * The context path under which the requests are dispatched.
+	 */
+	public static final String CONTEXT_PATH = "/app";
+
+	private static final String FULLY_QUALIFIED_DOMAIN_NAME = "localhost";
+	private static final String REMOTE_ADDRESS = "127.0.0.1";
+
+	private static IntegrationHarness instance = null;
+
+	private final LocalDatabase database;
+	private final Migrations migrations;
+	private final long heldMigration;
+	private final File baseDirectory;
+	private final FileSystemXmlApplicationContext context;
+	private final SyntheticData data;
+
+	/**
+	 * Starts the database and the server and seeds the data.
+	 */
+	private IntegrationHarness() throws Exception {
+		File web = new File(System.getProperty("ohmage.it.web", "web"));
+		File migrationDirectory =
+			new File(System.getProperty("ohmage.it.migrations", "db/migration"));
+		File fixtures =
+			new File(
+				System.getProperty("ohmage.it.fixtures", "benchmarks/fixtures"));
+		heldMigration = Long.getLong("ohmage.it.compare", 0);
+
+		database = LocalDatabase.start();
+		FileSystemXmlApplicationContext tContext = null;
+		try {
+			// The media, documents, and audits are written under here.
+			baseDirectory =
+				Files.createTempDirectory("ohmage-it-files").toFile();
+			Map<String, String> placeholders = new HashMap<String, String>();
+			placeholders.put("base_dir", baseDirectory.getAbsolutePath());
+			placeholders.put("fqdn", FULLY_QUALIFIED_DOMAIN_NAME);
+			migrations = new Migrations(migrationDirectory, placeholders);
+
+			Connection connection = database.getConnection();
+			try {
+				if(heldMigration > 0) {
+					migrations.apply(connection, 0, heldMigration - 1);
+					migrations.apply(
+						connection,
+						heldMigration + 1,
+						Long.MAX_VALUE);
+				}
+				else {
+					migrations.apply(connection);
+				}
+			}
+			finally {
+				connection.close();
+			}
+
+			// Give the server the database through its own configuration
+			// file, which is read when the web application is initialized.
+			Properties properties = new Properties();
+			properties.setProperty("db.jdbcurl", database.getUrl());
+			properties.setProperty("db.username", database.getUsername());
+			properties.setProperty("db.password", database.getPassword());
+			File configuration = new File(baseDirectory, "ohmage.conf");
+			OutputStream output = new FileOutputStream(configuration);
+			try {
+				properties.store(output, "Integration tests");
+			}
+			finally {
+				output.close();
+			}
+			System.setProperty("ohmage.config", configuration.getAbsolutePath());
+			System.setProperty(
+				"webapp.root",
+				web.getAbsolutePath() + File.separator);
+
+			ServletContext servletContext = createServletContext(web);
+			new ConfigurationFileImport()
+				.contextInitialized(new ServletContextEvent(servletContext));
+
+			tContext =
+				new FileSystemXmlApplicationContext(
+					"file:" + web.getAbsolutePath() + "/WEB-INF/spring/*.xml");
+			tContext
+				.getBean(RequestBuilder.class)
+				.setServletContext(servletContext);
+			context = tContext;
+
+			data = new SyntheticData();
+			data.seed(context, fixtures);
+		}
+		catch(Exception e) {
+			if(tContext != null) {
+				tContext.close();
+			}
+			database.stop();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the harness, starting it if this is the first call.
+	 *
+	 * @return The harness.
+	 *
+	 * @throws Exception The database or the server could not be started or
+	 * 					 the data could not be seeded.
+	 */
+	public static synchronized IntegrationHarness get() throws Exception {
+		if(instance == null) {
+			final IntegrationHarness harness = new IntegrationHarness();
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					harness.stop();
+				}
+			});
+			instance = harness;
+		}
+		return instance;
+	}
+
+	/**
+	 * Returns a bean from the server's application context.
+	 *
+	 * @param type The bean's type, usually one of the query interfaces.
+	 *
+	 * @return The bean.
+	 */
+	public <T> T getBean(final Class<T> type) {
+		return context.getBean(type);
+	}
+
+	/**
+	 * Returns the version of the migration that is held back.
+	 *
+	 * @return The version or 0 if every migration was applied.
+	 */
+	public long getHeldMigration() {
+		return heldMigration;
+	}
+
+	/**
+	 * Applies the migration that was held back.
+	 *
+	 * @throws IOException The migration could not be read.
+	 *
+	 * @throws SQLException The migration failed.
+	 */
+	public void applyHeldMigration() throws IOException, SQLException {
+		Connection connection = database.getConnection();
+		try {
+			migrations.apply(connection, heldMigration, heldMigration);
+		}
+		finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Opens a new connection to the database, e.g. to explain a query.
+	 *
+	 * @return The connection, which the caller must close.
+	 *
+	 * @throws SQLException The connection could not be opened.
+	 */
+	public Connection getConnection() throws SQLException {
+		return database.getConnection();
+	}
+
+	/**
+	 * Returns the seeded data.
+	 *
+	 * @return The seeded data.
+	 */
+	public SyntheticData getData() {
+		return data;
+	}
+
+	/**
+	 * Dispatches a request the way the request servlet does.
+	 *
+	 * @param path The path below the context path, e.g. "/config/read".
+	 *
+	 * @param parameters The parameters.
+	 *
+	 * @return The response.
+	 *
+	 * @throws Exception The request threw an exception instead of
+	 * 					 responding.
+	 */
+	public LocalResponse dispatch(
+			final String path,
+			final Map<String, String> parameters)
+			throws Exception {
+
+		LocalResponse response = new LocalResponse();
+		HttpServletRequest httpRequest =
+			createRequest(CONTEXT_PATH + path, parameters);
+		try {
+			Request request =
+				RequestBuilder.getInstance().buildRequest(httpRequest);
+			if(! request.isFailed()) {
+				request.service();
+			}
+			request.respond(httpRequest, response.getHttpServletResponse());
+		}
+		finally {
+			AuthorizationCache.unbind();
+		}
+		return response;
+	}
+
+	/**
+	 * Logs in and returns an authentication token.
+	 *
+	 * @param username The user's username.
+	 *
+	 * @return The token.
+	 *
+	 * @throws Exception The user could not log in.
+	 */
+	public String login(final String username) throws Exception {
+		Map<String, String> parameters = new LinkedHashMap<String, String>();
+		parameters.put(InputKeys.USER, username);
+		parameters.put(InputKeys.PASSWORD, SyntheticData.PASSWORD);
+		parameters.put(InputKeys.CLIENT, SyntheticData.CLIENT);
+
+		LocalResponse response = dispatch("/user/auth_token", parameters);
+		if(! response.isSuccess()) {
+			throw new IllegalStateException(
+				"The user could not log in: " + response.getText());
+		}
+		return response.getJson().getString("token");
+	}
+
+	/**
+	 * Closes the application context and stops the database.
+	 */
+	private void stop() {
+		context.close();
+		database.stop();
+		delete(baseDirectory);
+	}
+
+	/**
+	 * Creates the servlet context with which the web application is
+	 * initialized.
+	 */
+	private static ServletContext createServletContext(final File web) {
+		return
+			(ServletContext) Proxy.newProxyInstance(
+				ServletContext.class.getClassLoader(),
+				new Class<?>[] { ServletContext.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(
+							final Object proxy,
+							final Method method,
+							final Object[] args) {
+
+						String name = method.getName();
+						if("getContextPath".equals(name)) {
+							return CONTEXT_PATH;
+						}
+						else if("getRealPath".equals(name)) {
+							return
+								new File(web, (String) args[0])
+									.getAbsolutePath();
+						}
+						else if("getInitParameter".equals(name) ||
+							"getAttribute".equals(name)) {
+
+							return null;
+						}
+						throw new UnsupportedOperationException(name);
+					}
+				});
+	}
+
+	/**
+	 * Creates a request as it would look after the filters. The parameters
+	 * are where the GZIP filter puts them and the client is where the
+	 * client filter puts it.
+	 */
+	private static HttpServletRequest createRequest(
+			final String uri,
+			final Map<String, String> parameters) {
+
+		final Map<String, String[]> parameterMap =
+			new LinkedHashMap<String, String[]>();
+		for(Map.Entry<String, String> parameter : parameters.entrySet()) {
+			parameterMap.put(
+				parameter.getKey(),
+				new String[] { parameter.getValue() });
+		}
+
+		final Map<String, Object> attributes = new HashMap<String, Object>();
+		attributes.put(
+			GzipFilter.ATTRIBUTE_KEY_PARAMETERS,
+			Collections.unmodifiableMap(parameterMap));
+		if(parameters.containsKey(InputKeys.CLIENT)) {
+			attributes.put(
+				ClientFilter.ATTRIBUTE_KEY_CLIENT,
+				parameters.get(InputKeys.CLIENT));
+		}
+
+		return
+			(HttpServletRequest) Proxy.newProxyInstance(
+				HttpServletRequest.class.getClassLoader(),
+				new Class<?>[] { HttpServletRequest.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(
+							final Object proxy,
+							final Method method,
+							final Object[] args)
+							throws ServletException {
+
+						String name = method.getName();
+						if("getParameter".equals(name)) {
+							String[] values = parameterMap.get(args[0]);
+							return (values == null) ? null : values[0];
+						}
+						else if("getParameterValues".equals(name)) {
+							return parameterMap.get(args[0]);
+						}
+						else if("getParameterMap".equals(name)) {
+							return Collections.unmodifiableMap(parameterMap);
+						}
+						else if("getAttribute".equals(name)) {
+							return attributes.get(args[0]);
+						}
+						else if("setAttribute".equals(name)) {
+							attributes.put((String) args[0], args[1]);
+							return null;
+						}
+						else if("removeAttribute".equals(name)) {
+							attributes.remove(args[0]);
+							return null;
+						}
+						else if("getRequestURI".equals(name)) {
+							return uri;
+						}
+						else if("getContextPath".equals(name)) {
+							return CONTEXT_PATH;
+						}
+						else if("getMethod".equals(name)) {
+							return "POST";
+						}
+						else if("getRemoteAddr".equals(name)) {
+							return REMOTE_ADDRESS;
+						}
+						else if("getHeader".equals(name) ||
+							"getCookies".equals(name) ||
+							"getContentType".equals(name)) {
+
+							return null;
+						}
+						else if("getDateHeader".equals(name)) {
+							return -1L;
+						}
+						else if("getPart".equals(name) ||
+							"getParts".equals(name)) {
+
+							// Like the container, this is not a multipart
+							// request.
+							throw new ServletException(
+								"The request is not multipart.");
+						}
+						else if("isAsyncSupported".equals(name) ||
+							"isAsyncStarted".equals(name)) {
+
+							return false;
+						}
+						else if("hashCode".equals(name)) {
+							return System.identityHashCode(proxy);
+						}
+						else if("equals".equals(name)) {
+							return proxy == args[0];
+						}
+						else if("toString".equals(name)) {
+							return uri;
+						}
+						throw new UnsupportedOperationException(name);
+					}
+				});
+	}
+
+	/**
+	 * Deletes a file or a directory and everything in it.
+	 */
+	private static void delete(final File file) {
+		File[] children = file.listFiles();
+		if(children != null) {
+			for(File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,731 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.integration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A scratch MySQL or MariaDB database for the integration harness.
+ *
+ * By default, a private server is started from the local installation in a
+ * temporary directory on a free port, and it and its files are removed when
+ * it is stopped. The server binary is found on the PATH, preferring
+ * MariaDB's, or is given by the 'ohmage.it.mysqld' system property.
+ *
+ * Alternatively, an existing server may be used by setting
+ * 'ohmage.it.jdbc.url' to its root, e.g. "jdbc:mysql://localhost:3306/",
+ * along with 'ohmage.it.jdbc.username' and 'ohmage.it.jdbc.password'. The
+ * database named by 'ohmage.it.database', "ohmage_it" by default, is
+ * dropped and recreated, so it must be a scratch database.
+ *
+ * Private servers may also be started as a primary and its replicas in
+ * order to test the routing of read-only queries.
+ */
+public final class LocalDatabase {
+	private static final String DRIVER = "com.mysql.jdbc.Driver";
+	private static final String DEFAULT_DATABASE = "ohmage_it";
+	private static final String ROOT_USERNAME = "root";
+
+	/**
+	 * How long to wait for a started server to accept connections.
+	 */
+	private static final long STARTUP_MILLIS = 120 * 1000;
+	private static final long POLL_MILLIS = 250;
+
+	private static final String[] SERVER_BINARIES = { "mariadbd", "mysqld" };
+	private static final Pattern PATTERN_VERSION =
+		Pattern.compile("Ver (\\d+)\\.(\\d+)");
+	private static final String[] INSTALL_BINARIES =
+		{ "mariadb-install-db", "mysql_install_db" };
+	private static final String[] EXTRA_PATHS =
+		{ "/usr/sbin", "/usr/local/sbin", "/usr/local/mysql/bin" };
+
+	private final String rootUrl;
+	private final int port;
+	private final String username;
+	private final String password;
+	private final String database;
+
+	private final File directory;
+	private final Process process;
+
+	/**
+	 * Creates the object that describes a database.
+	 */
+	private LocalDatabase(
+			final String rootUrl,
+			final int port,
+			final String username,
+			final String password,
+			final String database,
+			final File directory,
+			final Process process) {
+
+		this.rootUrl = rootUrl;
+		this.port = port;
+		this.username = username;
+		this.password = password;
+		this.database = database;
+		this.directory = directory;
+		this.process = process;
+	}
+
+	/**
+	 * Starts a private server or connects to the configured one and creates
+	 * an empty database.
+	 *
+	 * @return The database.
+	 *
+	 * @throws IOException The server could not be started.
+	 *
+	 * @throws SQLException The database could not be created.
+	 */
+	public static LocalDatabase start() throws IOException, SQLException {
+		return start(false);
+	}
+
+	/**
+	 * Starts a private server that writes a binary log, so that replicas of
+	 * it may be started with {@link #startReplica()}, and creates an empty
+	 * database.
+	 *
+	 * @return The database.
+	 *
+	 * @throws IOException The server could not be started or an existing
+	 * 					   server was configured.
+	 *
+	 * @throws SQLException The database could not be created.
+	 */
+	public static LocalDatabase startPrimary()
+			throws IOException, SQLException {
+
+		if(System.getProperty("ohmage.it.jdbc.url") != null) {
+			throw new IOException(
+				"Replication needs private servers, so 'ohmage.it.jdbc.url' " +
+					"may not be set.");
+		}
+		return start(true);
+	}
+
+	/**
+	 * Starts a private server or connects to the configured one and creates
+	 * an empty database.
+	 *
+	 * @param replicable Whether a private server should write a binary log.
+	 */
+	private static LocalDatabase start(
+			final boolean replicable)
+			throws IOException, SQLException {
+
+		try {
+			Class.forName(DRIVER);
+		}
+		catch(ClassNotFoundException e) {
+			throw new IllegalStateException(
+				"The MySQL driver is not on the classpath.",
+				e);
+		}
+
+		String database =
+			System.getProperty("ohmage.it.database", DEFAULT_DATABASE);
+
+		LocalDatabase result;
+		String url = System.getProperty("ohmage.it.jdbc.url");
+		if(url == null) {
+			result = startServer(database, replicable);
+		}
+		else {
+			result =
+				new LocalDatabase(
+					url.endsWith("/") ? url : (url + "/"),
+					0,
+					System.getProperty("ohmage.it.jdbc.username"),
+					System.getProperty("ohmage.it.jdbc.password", ""),
+					database,
+					null,
+					null);
+		}
+
+		try {
+			Connection connection = result.getRootConnection();
+			try {
+				Statement statement = connection.createStatement();
+				try {
+					statement.execute(
+						"DROP DATABASE IF EXISTS `" + database + "`");
+					statement.execute(
+						"CREATE DATABASE `" + database + "` " +
+							"CHARACTER SET utf8");
+				}
+				finally {
+					statement.close();
+				}
+			}
+			finally {
+				connection.close();
+			}
+		}
+		catch(SQLException e) {
+			result.stop();
+			throw e;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Starts a private server that replicates this one from the beginning of
+	 * its binary log, including the creation of its database.
+	 *
+	 * @return The replica's database, which has the same name as this one.
+	 *
+	 * @throws IllegalStateException This is not a private primary.
+	 *
+	 * @throws IOException The replica's server could not be started.
+	 *
+	 * @throws SQLException Replication could not be started.
+	 */
+	public LocalDatabase startReplica() throws IOException, SQLException {
+		if(process == null) {
+			throw new IllegalStateException(
+				"Only a private server may be replicated.");
+		}
+
+		String logFile;
+		Connection connection = getRootConnection();
+		try {
+			Statement statement = connection.createStatement();
+			try {
+				ResultSet resultSet = statement.executeQuery("SHOW BINARY LOGS");
+				try {
+					if(! resultSet.next()) {
+						throw new IllegalStateException(
+							"The primary was not started with a binary log.");
+					}
+					logFile = resultSet.getString(1);
+				}
+				finally {
+					resultSet.close();
+				}
+			}
+			finally {
+				statement.close();
+			}
+		}
+		finally {
+			connection.close();
+		}
+
+		LocalDatabase replica = startServer(database, true);
+		try {
+			replica.execute(
+				"CHANGE MASTER TO " + getSourceOptions("MASTER", logFile),
+				"CHANGE REPLICATION SOURCE TO " +
+					getSourceOptions("SOURCE", logFile));
+			replica.execute("START SLAVE", "START REPLICA");
+		}
+		catch(SQLException e) {
+			replica.stop();
+			throw e;
+		}
+		return replica;
+	}
+
+	/**
+	 * Stops a replica from applying its primary's changes, so that it falls
+	 * behind.
+	 *
+	 * @throws SQLException Replication could not be stopped.
+	 */
+	public void stopReplication() throws SQLException {
+		execute("STOP SLAVE", "STOP REPLICA");
+	}
+
+	/**
+	 * Returns the JDBC URL of the database.
+	 *
+	 * @return The JDBC URL.
+	 */
+	public String getUrl() {
+		return rootUrl + database + "?characterEncoding=utf8";
+	}
+
+	/**
+	 * Returns the username with which to connect.
+	 *
+	 * @return The username.
+	 */
+	public String getUsername() {
+		return username;
+	}
+
+	/**
+	 * Returns the password with which to connect.
+	 *
+	 * @return The password, which may be empty.
+	 */
+	public String getPassword() {
+		return (password == null) ? "" : password;
+	}
+
+	/**
+	 * Opens a new connection to the database.
+	 *
+	 * @return The connection, which the caller must close.
+	 *
+	 * @throws SQLException The connection could not be opened.
+	 */
+	public Connection getConnection() throws SQLException {
+		return DriverManager.getConnection(getUrl(), username, password);
+	}
+
+	/**
+	 * Stops the private server, if one was started, and deletes its files.
+	 * An existing server's database is left in place for inspection.
+	 */
+	public void stop() {
+		if(process != null) {
+			// This is a SIGTERM, which shuts the server down cleanly.
+			process.destroy();
+			try {
+				process.waitFor();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if(directory != null) {
+			delete(directory);
+		}
+	}
+
+	/**
+	 * Returns the options that point a replica at this server.
+	 *
+	 * @param prefix The options' prefix, which depends on the server's
+	 * 				 version.
+	 *
+	 * @param logFile The binary log file from whose start to replicate.
+	 */
+	private String getSourceOptions(
+			final String prefix,
+			final String logFile) {
+
+		return
+			prefix + "_HOST='127.0.0.1', " +
+				prefix + "_PORT=" + port + ", " +
+				prefix + "_USER='" + username + "', " +
+				prefix + "_PASSWORD='" + getPassword() + "', " +
+				prefix + "_LOG_FILE='" + logFile + "', " +
+				prefix + "_LOG_POS=4";
+	}
+
+	/**
+	 * Executes the first of the equivalent statements that the server
+	 * accepts. Older servers only know the first and the newest only know
+	 * the second.
+	 */
+	private void execute(
+			final String statement,
+			final String alternative)
+			throws SQLException {
+
+		Connection connection = getRootConnection();
+		try {
+			Statement jdbcStatement = connection.createStatement();
+			try {
+				try {
+					jdbcStatement.execute(statement);
+				}
+				catch(SQLException e) {
+					jdbcStatement.execute(alternative);
+				}
+			}
+			finally {
+				jdbcStatement.close();
+			}
+		}
+		finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Opens a connection to the server without selecting a database.
+	 */
+	private Connection getRootConnection() throws SQLException {
+		return DriverManager.getConnection(rootUrl, username, password);
+	}
+
+	/**
+	 * Initializes a data directory in a temporary directory and starts a
+	 * server on it that only listens on the loopback address. A replicable
+	 * server writes a binary log and has a unique server ID.
+	 */
+	private static LocalDatabase startServer(
+			final String database,
+			final boolean replicable)
+			throws IOException, SQLException {
+
+		File server = findServer();
+		String version = getVersion(server);
+		boolean mariaDb = version.contains("MariaDB");
+		String user = System.getProperty("user.name");
+
+		// The installation that the server is in, e.g. "/usr" or an
+		// extracted archive, where its scripts and messages are found.
+		File baseDirectory =
+			server.getAbsoluteFile().getParentFile().getParentFile();
+
+		File directory =
+			Files.createTempDirectory("ohmage-it-db").toFile();
+		File dataDirectory = new File(directory, "data");
+		File errorLog = new File(directory, "error.log");
+		int port = getFreePort();
+
+		try {
+			// Initialize the data directory with a root user that has no
+			// password.
+			List<String> initialize = new ArrayList<String>();
+			if(mariaDb) {
+				File install = findBinary(INSTALL_BINARIES, server);
+				if(install == null) {
+					throw new IOException(
+						"MariaDB's install script could not be found.");
+				}
+				initialize.add(install.getAbsolutePath());
+				initialize.add("--no-defaults");
+				initialize.add("--basedir=" + baseDirectory.getAbsolutePath());
+				initialize.add("--datadir=" + dataDirectory.getAbsolutePath());
+				initialize.add("--user=" + user);
+				// Before 10.4, root has no password and these are unknown.
+				if(isAtLeast(version, 10, 4)) {
+					initialize.add("--auth-root-authentication-method=normal");
+					initialize.add("--skip-test-db");
+				}
+			}
+			else {
+				initialize.add(server.getAbsolutePath());
+				initialize.add("--no-defaults");
+				initialize.add("--initialize-insecure");
+				initialize.add("--datadir=" + dataDirectory.getAbsolutePath());
+				initialize.add("--user=" + user);
+			}
+			run(initialize, new File(directory, "initialize.log"));
+
+			// Start the server. The SQL mode is cleared to match the
+			// production servers that the migrations were written for, and
+			// the "loose" options are ignored by the servers that do not
+			// know them.
+			List<String> command = new ArrayList<String>();
+			command.add(server.getAbsolutePath());
+			command.add("--no-defaults");
+			command.add("--basedir=" + baseDirectory.getAbsolutePath());
+			command.add("--datadir=" + dataDirectory.getAbsolutePath());
+			command.add("--port=" + port);
+			command.add("--bind-address=127.0.0.1");
+			command.add(
+				"--socket=" + new File(directory, "mysqld.sock").getAbsolutePath());
+			command.add(
+				"--pid-file=" + new File(directory, "mysqld.pid").getAbsolutePath());
+			command.add("--log-error=" + errorLog.getAbsolutePath());
+			command.add("--user=" + user);
+			command.add("--sql-mode=");
+			command.add("--character-set-server=utf8");
+			command.add("--loose-default-authentication-plugin=mysql_native_password");
+			command.add("--loose-mysqlx=OFF");
+			if(replicable) {
+				command.add("--server-id=" + port);
+				command.add("--log-bin=mysql-bin");
+				command.add("--log-bin-trust-function-creators=1");
+			}
+			Process process =
+				new ProcessBuilder(command)
+					.redirectErrorStream(true)
+					.redirectOutput(new File(directory, "mysqld.log"))
+					.start();
+
+			LocalDatabase result =
+				new LocalDatabase(
+					"jdbc:mysql://127.0.0.1:" + port + "/",
+					port,
+					ROOT_USERNAME,
+					"",
+					database,
+					directory,
+					process);
+
+			long deadline = System.currentTimeMillis() + STARTUP_MILLIS;
+			while(true) {
+				try {
+					result.getRootConnection().close();
+					return result;
+				}
+				catch(SQLException e) {
+					if(isExited(process) ||
+						(System.currentTimeMillis() > deadline)) {
+
+						String log = read(errorLog);
+						result.stop();
+						throw new IOException(
+							"The database server did not start:\n" + log,
+							e);
+					}
+				}
+
+				try {
+					Thread.sleep(POLL_MILLIS);
+				}
+				catch(InterruptedException e) {
+					result.stop();
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while starting.", e);
+				}
+			}
+		}
+		catch(IOException e) {
+			delete(directory);
+			throw e;
+		}
+	}
+
+	/**
+	 * Finds the server binary.
+	 */
+	private static File findServer() throws IOException {
+		String configured = System.getProperty("ohmage.it.mysqld");
+		if(configured != null) {
+			File result = new File(configured);
+			if(! result.canExecute()) {
+				throw new IOException(
+					"The database server is not executable: " + result);
+			}
+			return result;
+		}
+
+		File result = findBinary(SERVER_BINARIES, null);
+		if(result == null) {
+			throw new IOException(
+				"No MariaDB or MySQL server was found. Install one, set " +
+					"'ohmage.it.mysqld' to its server binary, or set " +
+					"'ohmage.it.jdbc.url' to an existing server.");
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the first of the binaries next to another binary, on the PATH,
+	 * or in the usual system directories.
+	 *
+	 * @param names The binaries' names in order of preference.
+	 *
+	 * @param near A binary whose directory is searched first or null.
+	 *
+	 * @return The binary or null if none was found.
+	 */
+	private static File findBinary(final String[] names, final File near) {
+		List<String> directories = new ArrayList<String>();
+		if(near != null) {
+			directories.add(near.getAbsoluteFile().getParent());
+			File base = near.getAbsoluteFile().getParentFile().getParentFile();
+			if(base != null) {
+				directories.add(new File(base, "bin").getPath());
+				directories.add(new File(base, "scripts").getPath());
+			}
+		}
+		String path = System.getenv("PATH");
+		if(path != null) {
+			for(String directory : path.split(File.pathSeparator)) {
+				directories.add(directory);
+			}
+		}
+		for(String directory : EXTRA_PATHS) {
+			directories.add(directory);
+		}
+
+		for(String name : names) {
+			for(String directory : directories) {
+				File candidate = new File(directory, name);
+				if(candidate.isFile() && candidate.canExecute()) {
+					return candidate;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the server binary's version, e.g. "mysqld  Ver 10.2.11-MariaDB
+	 * for Linux on x86_64 (MariaDB Server)".
+	 */
+	private static String getVersion(final File server) throws IOException {
+		Process process =
+			new ProcessBuilder(server.getAbsolutePath(), "--version")
+				.redirectErrorStream(true)
+				.start();
+		String version =
+			new String(
+				readFully(process.getInputStream()),
+				StandardCharsets.UTF_8);
+		try {
+			process.waitFor();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading the version.", e);
+		}
+		return version;
+	}
+
+	/**
+	 * Returns whether a server's version is at least the given one.
+	 *
+	 * @param version The server binary's version.
+	 */
+	private static boolean isAtLeast(
+			final String version,
+			final int major,
+			final int minor) {
+
+		Matcher matcher = PATTERN_VERSION.matcher(version);
+		if(! matcher.find()) {
+			return true;
+		}
+		int actualMajor = Integer.parseInt(matcher.group(1));
+		int actualMinor = Integer.parseInt(matcher.group(2));
+		return
+			(actualMajor > major) ||
+			((actualMajor == major) && (actualMinor >= minor));
+	}
+
+	/**
+	 * Runs a command to completion.
+	 *
+	 * @throws IOException The command failed.
+	 */
+	private static void run(
+			final List<String> command,
+			final File log)
+			throws IOException {
+
+		Process process =
+			new ProcessBuilder(command)
+				.redirectErrorStream(true)
+				.redirectOutput(log)
+				.start();
+		int exitValue;
+		try {
+			exitValue = process.waitFor();
+		}
+		catch(InterruptedException e) {
+			process.destroy();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while running: " + command, e);
+		}
+		if(exitValue != 0) {
+			throw new IOException(
+				"The command failed with " + exitValue + ": " + command +
+					"\n" + read(log));
+		}
+	}
+
+	/**
+	 * Returns a port that was free when this was called.
+	 */
+	private static int getFreePort() throws IOException {
+		ServerSocket socket = new ServerSocket(0);
+		try {
+			return socket.getLocalPort();
+		}
+		finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Returns whether a process has exited.
+	 */
+	private static boolean isExited(final Process process) {
+		try {
+			process.exitValue();
+			return true;
+		}
+		catch(IllegalThreadStateException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Reads a log file, or returns an empty string if it cannot be read.
+	 */
+	private static String read(final File file) {
+		try {
+			return
+				new String(
+					Files.readAllBytes(file.toPath()),
+					StandardCharsets.UTF_8);
+		}
+		catch(IOException e) {
+			return "";
+		}
+	}
+
+	/**
+	 * Reads a stream to its end.
+	 */
+	private static byte[] readFully(final InputStream input) throws IOException {
+		try {
+			ByteArrayOutputStream result = new ByteArrayOutputStream();
+			byte[] chunk = new byte[4096];
+			int amountRead;
+			while((amountRead = input.read(chunk)) != -1) {
+				result.write(chunk, 0, amountRead);
+			}
+			return result.toByteArray();
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Deletes a file or a directory and everything in it.
+	 */
+	private static void delete(final File file) {
+		File[] children = file.listFiles();
+		if(children != null) {
+			for(File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
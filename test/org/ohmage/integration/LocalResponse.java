@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.integration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A response to a request that was dispatched in-process by the
+ * {@link IntegrationHarness}. It stands in for the container's response and
+ * keeps everything that the request wrote to it.
+ */
+public final class LocalResponse implements InvocationHandler {
+	private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+	private final Map<String, String> headers = new HashMap<String, String>();
+
+	private int status = HttpServletResponse.SC_OK;
+	private String contentType = null;
+	private PrintWriter writer = null;
+
+	private final HttpServletResponse httpResponse;
+
+	/**
+	 * Creates an empty response.
+	 */
+	LocalResponse() {
+		httpResponse =
+			(HttpServletResponse) Proxy.newProxyInstance(
+				HttpServletResponse.class.getClassLoader(),
+				new Class<?>[] { HttpServletResponse.class },
+				this);
+	}
+
+	/**
+	 * Returns the response object that is given to the request.
+	 *
+	 * @return The servlet response.
+	 */
+	HttpServletResponse getHttpServletResponse() {
+		return httpResponse;
+	}
+
+	/**
+	 * Returns the HTTP status.
+	 *
+	 * @return The status.
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns a header's value.
+	 *
+	 * @param name The header's name.
+	 *
+	 * @return The header's last value or null if it was never set.
+	 */
+	public String getHeader(final String name) {
+		return headers.get(name.toLowerCase());
+	}
+
+	/**
+	 * Returns the content type.
+	 *
+	 * @return The content type or null if it was never set.
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Returns the body.
+	 *
+	 * @return The bytes that were written.
+	 */
+	public byte[] getBody() {
+		if(writer != null) {
+			writer.flush();
+		}
+		return body.toByteArray();
+	}
+
+	/**
+	 * Returns the body as text.
+	 *
+	 * @return The body decoded as UTF-8.
+	 */
+	public String getText() {
+		return new String(getBody(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the body as a JSON object.
+	 *
+	 * @return The body's JSON.
+	 *
+	 * @throws JSONException The body was not a JSON object.
+	 */
+	public JSONObject getJson() throws JSONException {
+		return new JSONObject(getText());
+	}
+
+	/**
+	 * Returns whether the body is ohmage's JSON success.
+	 *
+	 * @return Whether the request succeeded.
+	 */
+	public boolean isSuccess() {
+		try {
+			return "success".equals(getJson().optString("result"));
+		}
+		catch(JSONException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Implements the servlet response's methods that requests use.
+	 */
+	@Override
+	public Object invoke(
+			final Object proxy,
+			final Method method,
+			final Object[] args)
+			throws Throwable {
+
+		String name = method.getName();
+		if("setStatus".equals(name)) {
+			status = (Integer) args[0];
+			return null;
+		}
+		else if("sendError".equals(name)) {
+			status = (Integer) args[0];
+			if(args.length > 1) {
+				body.write(((String) args[1]).getBytes(StandardCharsets.UTF_8));
+			}
+			return null;
+		}
+		else if("getStatus".equals(name)) {
+			return status;
+		}
+		else if("setHeader".equals(name) || "addHeader".equals(name)) {
+			headers.put(((String) args[0]).toLowerCase(), (String) args[1]);
+			return null;
+		}
+		else if("setDateHeader".equals(name) ||
+			"addDateHeader".equals(name) ||
+			"setIntHeader".equals(name) ||
+			"addIntHeader".equals(name)) {
+
+			headers.put(
+				((String) args[0]).toLowerCase(),
+				String.valueOf(args[1]));
+			return null;
+		}
+		else if("getHeader".equals(name)) {
+			return getHeader((String) args[0]);
+		}
+		else if("containsHeader".equals(name)) {
+			return headers.containsKey(((String) args[0]).toLowerCase());
+		}
+		else if("setContentType".equals(name)) {
+			contentType = (String) args[0];
+			return null;
+		}
+		else if("getContentType".equals(name)) {
+			return contentType;
+		}
+		else if("setContentLength".equals(name)) {
+			headers.put("content-length", String.valueOf(args[0]));
+			return null;
+		}
+		else if("getOutputStream".equals(name)) {
+			return new ServletOutputStream() {
+				@Override
+				public void write(final int b) {
+					body.write(b);
+				}
+
+				@Override
+				public void write(
+						final byte[] bytes,
+						final int offset,
+						final int length) {
+
+					body.write(bytes, offset, length);
+				}
+			};
+		}
+		else if("getWriter".equals(name)) {
+			if(writer == null) {
+				writer =
+					new PrintWriter(
+						new OutputStreamWriter(body, StandardCharsets.UTF_8));
+			}
+			return writer;
+		}
+		else if("getCharacterEncoding".equals(name)) {
+			return "UTF-8";
+		}
+		else if("isCommitted".equals(name)) {
+			return body.size() > 0;
+		}
+		else if("setCharacterEncoding".equals(name) ||
+			"addCookie".equals(name) ||
+			"flushBuffer".equals(name) ||
+			"setBufferSize".equals(name) ||
+			"reset".equals(name) ||
+			"resetBuffer".equals(name)) {
+
+			return null;
+		}
+		else if("hashCode".equals(name)) {
+			return System.identityHashCode(proxy);
+		}
+		else if("equals".equals(name)) {
+			return proxy == args[0];
+		}
+		else if("toString".equals(name)) {
+			return "LocalResponse(" + status + ")";
+		}
+
+		throw new UnsupportedOperationException(name);
+	}
+}
@@ -0,0 +1,302 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.integration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies the Flyway migrations in 'db/migration' to an empty database the
+ * way that 'flyway migrate' does, without Flyway. The scripts are run in
+ * version order, their placeholders are replaced, and they are split into
+ * statements that honor quotes, comments, and the DELIMITER command.
+ */
+public final class Migrations {
+	private static final Pattern PATTERN_FILE_NAME =
+		Pattern.compile("V(\\d+)__.*\\.sql");
+	private static final Pattern PATTERN_DELIMITER =
+		Pattern.compile("(?i)DELIMITER\\s+(\\S+)");
+
+	/**
+	 * The upgrade from 2.16 checks for a column in the schema by name, which
+	 * would only find it in a database named "ohmage".
+	 */
+	private static final String SCHEMA_BY_NAME = "table_schema = 'ohmage'";
+	private static final String SCHEMA_BY_CONNECTION = "table_schema = DATABASE()";
+
+	private final File directory;
+	private final Map<String, String> placeholders;
+
+	/**
+	 * Creates the migrations.
+	 *
+	 * @param directory The directory with the migrations.
+	 *
+	 * @param placeholders The placeholders' names, e.g. "base_dir", and the
+	 * 					   values with which to replace them.
+	 */
+	public Migrations(
+			final File directory,
+			final Map<String, String> placeholders) {
+
+		this.directory = directory;
+		this.placeholders = placeholders;
+	}
+
+	/**
+	 * Applies all of the migrations.
+	 *
+	 * @param connection The connection to the database, which is used for
+	 * 					 every statement so that session variables persist
+	 * 					 within a script.
+	 *
+	 * @return The number of scripts that were applied.
+	 *
+	 * @throws IOException A script could not be read.
+	 *
+	 * @throws SQLException A statement failed.
+	 */
+	public int apply(final Connection connection) throws IOException, SQLException {
+		return apply(connection, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Applies the migrations whose versions are in a range, e.g. to stop at
+	 * a version, populate the database, and apply the rest.
+	 *
+	 * @param connection The connection to the database, which is used for
+	 * 					 every statement so that session variables persist
+	 * 					 within a script.
+	 *
+	 * @param firstVersion The version of the first migration to apply.
+	 *
+	 * @param lastVersion The version of the last migration to apply.
+	 *
+	 * @return The number of scripts that were applied.
+	 *
+	 * @throws IOException A script could not be read.
+	 *
+	 * @throws SQLException A statement failed.
+	 */
+	public int apply(
+			final Connection connection,
+			final long firstVersion,
+			final long lastVersion)
+			throws IOException, SQLException {
+
+		List<File> scripts = getScripts();
+		int applied = 0;
+		for(File script : scripts) {
+			long version = getVersion(script);
+			if((version < firstVersion) || (version > lastVersion)) {
+				continue;
+			}
+			applied++;
+
+			String sql =
+				new String(
+					Files.readAllBytes(script.toPath()),
+					StandardCharsets.UTF_8);
+			for(Map.Entry<String, String> placeholder : placeholders.entrySet()) {
+				sql =
+					sql.replace(
+						"${" + placeholder.getKey() + "}",
+						placeholder.getValue());
+			}
+			sql = sql.replace(SCHEMA_BY_NAME, SCHEMA_BY_CONNECTION);
+
+			Statement statement = connection.createStatement();
+			try {
+				for(String part : split(sql)) {
+					try {
+						statement.execute(part);
+					}
+					catch(SQLException e) {
+						throw new SQLException(
+							script.getName() + " failed: " + part,
+							e.getSQLState(),
+							e.getErrorCode(),
+							e);
+					}
+				}
+			}
+			finally {
+				statement.close();
+			}
+		}
+		return applied;
+	}
+
+	/**
+	 * Returns the scripts in version order.
+	 */
+	private List<File> getScripts() throws IOException {
+		File[] files = directory.listFiles();
+		if(files == null) {
+			throw new IOException("The migrations are missing: " + directory);
+		}
+
+		List<File> result = new ArrayList<File>();
+		for(File file : files) {
+			if(PATTERN_FILE_NAME.matcher(file.getName()).matches()) {
+				result.add(file);
+			}
+		}
+		Collections.sort(result, new Comparator<File>() {
+			@Override
+			public int compare(final File first, final File second) {
+				return Long.compare(getVersion(first), getVersion(second));
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Returns a script's version from its name.
+	 */
+	private static long getVersion(final File script) {
+		Matcher matcher = PATTERN_FILE_NAME.matcher(script.getName());
+		matcher.matches();
+		return Long.parseLong(matcher.group(1));
+	}
+
+	/**
+	 * Splits a script into its statements.
+	 *
+	 * @param sql The script.
+	 *
+	 * @return The statements without their delimiters or comments.
+	 */
+	static List<String> split(final String sql) {
+		List<String> result = new ArrayList<String>();
+		StringBuilder current = new StringBuilder();
+		String delimiter = ";";
+
+		int length = sql.length();
+		int i = 0;
+		while(i < length) {
+			char c = sql.charAt(i);
+
+			// The DELIMITER command is a client command and is only
+			// recognized at the beginning of a line between statements.
+			if(isLineStart(sql, i) && (current.toString().trim().length() == 0)) {
+				int end = sql.indexOf('\n', i);
+				if(end == -1) {
+					end = length;
+				}
+				Matcher matcher =
+					PATTERN_DELIMITER.matcher(sql.substring(i, end).trim());
+				if(matcher.matches()) {
+					delimiter = matcher.group(1);
+					current.setLength(0);
+					i = end;
+					continue;
+				}
+			}
+
+			// Like Flyway, a line comment begins with two dashes whether or
+			// not they are followed by a space.
+			if(sql.startsWith("--", i) || (c == '#')) {
+				int end = sql.indexOf('\n', i);
+				i = (end == -1) ? length : end;
+				continue;
+			}
+			if(sql.startsWith("/*", i)) {
+				int end = sql.indexOf("*/", i + 2);
+				i = (end == -1) ? length : (end + 2);
+				current.append(' ');
+				continue;
+			}
+			if((c == '\'') || (c == '"') || (c == '`')) {
+				int end = findClosingQuote(sql, i);
+				current.append(sql, i, end);
+				i = end;
+				continue;
+			}
+			if(sql.startsWith(delimiter, i)) {
+				add(result, current);
+				i += delimiter.length();
+				continue;
+			}
+
+			current.append(c);
+			i++;
+		}
+		add(result, current);
+
+		return result;
+	}
+
+	/**
+	 * Returns the index just past the quote that closes the one at 'start',
+	 * honoring backslash escapes and doubled quotes.
+	 */
+	private static int findClosingQuote(final String sql, final int start) {
+		char quote = sql.charAt(start);
+		int i = start + 1;
+		while(i < sql.length()) {
+			char c = sql.charAt(i);
+			if((c == '\\') && (quote != '`')) {
+				i += 2;
+			}
+			else if(c == quote) {
+				if((i + 1 < sql.length()) && (sql.charAt(i + 1) == quote)) {
+					i += 2;
+				}
+				else {
+					return i + 1;
+				}
+			}
+			else {
+				i++;
+			}
+		}
+		return sql.length();
+	}
+
+	/**
+	 * Returns whether an index is at the beginning of a line.
+	 */
+	private static boolean isLineStart(final String sql, final int index) {
+		return (index == 0) || (sql.charAt(index - 1) == '\n');
+	}
+
+	/**
+	 * Adds the current statement, if it is not empty, and clears it.
+	 */
+	private static void add(
+			final List<String> statements,
+			final StringBuilder current) {
+
+		String statement = current.toString().trim();
+		if(statement.length() > 0) {
+			statements.add(statement);
+		}
+		current.setLength(0);
+	}
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.integration;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that the migrations are split into the statements that the MySQL
+ * client and Flyway would send.
+ */
+public class MigrationsTest extends TestCase {
+	/**
+	 * Tests that comments are dropped, including lines of dashes, and that
+	 * delimiters in quotes do not end a statement.
+	 */
+	@Test
+	public void testSplitCommentsAndQuotes() {
+		List<String> statements =
+			Migrations.split(
+				"-- A comment; with a delimiter.\n" +
+				"----------------------------------\n" +
+				"INSERT INTO t VALUES ('a;b', \"c;d\", 'it''s');\n" +
+				"# Another comment.\n" +
+				"/* A block; comment. */ SET @x = 1;\n" +
+				"SELECT `a;b` FROM t");
+
+		Assert.assertEquals(3, statements.size());
+		Assert.assertEquals(
+			"INSERT INTO t VALUES ('a;b', \"c;d\", 'it''s')",
+			statements.get(0));
+		Assert.assertEquals("SET @x = 1", statements.get(1));
+		Assert.assertEquals("SELECT `a;b` FROM t", statements.get(2));
+	}
+
+	/**
+	 * Tests that a procedure defined under another delimiter is one
+	 * statement and that the delimiter is restored.
+	 */
+	@Test
+	public void testSplitDelimiter() {
+		List<String> statements =
+			Migrations.split(
+				"DROP PROCEDURE IF EXISTS p;\n" +
+				"DELIMITER $$\n" +
+				"CREATE PROCEDURE p ( )\n" +
+				"  BEGIN\n" +
+				"  SELECT 1;\n" +
+				"  SELECT 2;\n" +
+				"END$$\n" +
+				"DELIMITER ;\n" +
+				"CALL p;\n");
+
+		Assert.assertEquals(3, statements.size());
+		Assert.assertTrue(statements.get(1).startsWith("CREATE PROCEDURE"));
+		Assert.assertTrue(statements.get(1).endsWith("END"));
+		Assert.assertTrue(statements.get(1).contains("SELECT 2;"));
+		Assert.assertEquals("CALL p", statements.get(2));
+	}
+}
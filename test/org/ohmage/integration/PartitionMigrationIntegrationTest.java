@@ -0,0 +1,446 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.integration;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the migration that partitions the stream data and Mobility tables,
+ * V16, against a database that was migrated to V15 and populated, including
+ * with the duplicate Mobility points of a database that was baselined from
+ * an older release.
+ */
+public class PartitionMigrationIntegrationTest extends TestCase {
+	private static final long VERSION_BEFORE = 15;
+	private static final long VERSION = 16;
+
+	private static final String UUID_DUPLICATED =
+		"00000000-0000-0000-0000-000000000001";
+	private static final String UUID_UNIQUE =
+		"00000000-0000-0000-0000-000000000002";
+
+	/**
+	 * A time in a month that is always before the migration's first month.
+	 */
+	private static final long TIME_HISTORY = 1330000000000L;
+
+	private LocalDatabase database;
+	private Migrations migrations;
+	private Connection connection;
+
+	/**
+	 * Starts the database and migrates it to the version before the
+	 * partitioning.
+	 */
+	@Override
+	protected void setUp() throws IOException, SQLException {
+		Map<String, String> placeholders = new HashMap<String, String>();
+		placeholders.put(
+			"base_dir",
+			System.getProperty("java.io.tmpdir") + File.separator + "ohmage");
+		placeholders.put("fqdn", "localhost");
+		migrations =
+			new Migrations(
+				new File(
+					System.getProperty("ohmage.it.migrations", "db/migration")),
+				placeholders);
+
+		database = LocalDatabase.start();
+		connection = database.getConnection();
+		migrations.apply(connection, 0, VERSION_BEFORE);
+	}
+
+	/**
+	 * Closes the connection and stops the database.
+	 */
+	@Override
+	protected void tearDown() throws SQLException {
+		if(connection != null) {
+			connection.close();
+		}
+		if(database != null) {
+			database.stop();
+		}
+	}
+
+	/**
+	 * Tests that only the later copies of a duplicated Mobility point and
+	 * their extended data are deleted, that every other row is kept in the
+	 * partition for its time, that the foreign keys are gone, that the
+	 * Mobility UUID is still unique, and that the later migrations apply.
+	 */
+	@Test
+	public void testPartition() throws Exception {
+		long now = System.currentTimeMillis();
+		Seed seed = seed(now);
+
+		migrations.apply(connection, VERSION, VERSION);
+
+		assertPartitioned(seed, now);
+
+		migrations.apply(connection, VERSION + 1, Long.MAX_VALUE);
+		Assert.assertEquals(4, count("SELECT COUNT(*) FROM observer_stream_data"));
+	}
+
+	/**
+	 * Tests that the extended data of the deleted Mobility points is
+	 * deleted, and nothing else, when the database never had the foreign key
+	 * that would have cascaded the deletion.
+	 */
+	@Test
+	public void testPartitionWithoutForeignKeys() throws Exception {
+		long now = System.currentTimeMillis();
+		Seed seed = seed(now);
+		dropForeignKeys("mobility_extended");
+
+		migrations.apply(connection, VERSION, VERSION);
+
+		assertPartitioned(seed, now);
+	}
+
+	/**
+	 * The IDs of the rows that were seeded.
+	 */
+	private static final class Seed {
+		private long mobilityFirst;
+		private long mobilityDuplicate;
+		private long mobilityUnique;
+		private long mobilityRecent;
+		private final List<Long> extendedKept = new ArrayList<Long>();
+		private long extendedDeleted;
+	}
+
+	/**
+	 * Populates the tables as a database that was baselined from an older
+	 * release may be, without the unique key on the Mobility UUID and with a
+	 * duplicated point.
+	 *
+	 * @param now The time of the recent rows.
+	 *
+	 * @return The seeded rows' IDs.
+	 */
+	private Seed seed(final long now) throws SQLException {
+		dropUniqueUuidKeys();
+
+		long userId =
+			insert(
+				"INSERT INTO user(username, password, admin, new_account, " +
+					"enabled, campaign_creation_privilege) " +
+					"VALUES ('it.partition', 'x', 0, 0, 1, 0)");
+		long privacyStateId =
+			count("SELECT MIN(id) FROM mobility_privacy_state");
+
+		Seed seed = new Seed();
+		seed.mobilityFirst =
+			insertMobility(userId, privacyStateId, UUID_DUPLICATED, TIME_HISTORY);
+		seed.mobilityDuplicate =
+			insertMobility(userId, privacyStateId, UUID_DUPLICATED, TIME_HISTORY);
+		seed.mobilityUnique =
+			insertMobility(userId, privacyStateId, UUID_UNIQUE, TIME_HISTORY);
+		// The same UUID at another time is another point.
+		seed.mobilityRecent =
+			insertMobility(userId, privacyStateId, UUID_DUPLICATED, now);
+
+		seed.extendedKept.add(insertExtended(seed.mobilityFirst));
+		seed.extendedDeleted = insertExtended(seed.mobilityDuplicate);
+		seed.extendedKept.add(insertExtended(seed.mobilityUnique));
+		seed.extendedKept.add(insertExtended(seed.mobilityRecent));
+
+		long observerId =
+			insert(
+				"INSERT INTO observer(user_id, observer_id, version, name, " +
+					"description, version_string) " +
+					"VALUES (" + userId + ", 'org.ohmage.it', 1, 'IT', " +
+					"'IT', '1')");
+		long streamId =
+			insert(
+				"INSERT INTO observer_stream(stream_id, version, name, " +
+					"description, stream_schema) " +
+					"VALUES ('it', 1, 'IT', 'IT', '{}')");
+		long linkId =
+			insert(
+				"INSERT INTO observer_stream_link(observer_id, " +
+					"observer_stream_id) " +
+					"VALUES (" + observerId + ", " + streamId + ")");
+		insertStreamData(userId, linkId, null);
+		insertStreamData(userId, linkId, TIME_HISTORY);
+		insertStreamData(userId, linkId, now);
+		insertStreamData(userId, linkId, now);
+
+		return seed;
+	}
+
+	/**
+	 * Asserts the state of the tables after the partitioning.
+	 *
+	 * @param seed The seeded rows' IDs.
+	 *
+	 * @param now The time of the recent rows.
+	 */
+	private void assertPartitioned(
+			final Seed seed,
+			final long now)
+			throws SQLException {
+
+		// Only the later copy of the duplicated point is deleted.
+		Assert.assertEquals(
+			"[" + seed.mobilityFirst + ", " + seed.mobilityUnique + ", " +
+				seed.mobilityRecent + "]",
+			ids("SELECT id FROM mobility ORDER BY id").toString());
+
+		// Only its extended data is deleted, and the rest have its point's
+		// time.
+		Assert.assertEquals(
+			seed.extendedKept.toString(),
+			ids("SELECT id FROM mobility_extended ORDER BY id").toString());
+		Assert.assertEquals(
+			0,
+			count(
+				"SELECT COUNT(*) FROM mobility_extended " +
+					"WHERE id = " + seed.extendedDeleted));
+		Assert.assertEquals(
+			0,
+			count(
+				"SELECT COUNT(*) " +
+					"FROM mobility_extended me " +
+					"LEFT JOIN mobility m " +
+						"ON m.id = me.mobility_id " +
+						"AND m.epoch_millis = me.epoch_millis " +
+					"WHERE m.id IS NULL"));
+
+		// Each row is in the partition for its time.
+		DateFormat monthFormat = new SimpleDateFormat("yyyyMM");
+		monthFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		String month = monthFormat.format(new Date(now));
+		Assert.assertEquals(2, count("SELECT COUNT(*) FROM mobility PARTITION (p_history)"));
+		Assert.assertEquals(1, count("SELECT COUNT(*) FROM mobility PARTITION (p" + month + ")"));
+		Assert.assertEquals(2, count("SELECT COUNT(*) FROM mobility_extended PARTITION (p_history)"));
+		Assert.assertEquals(1, count("SELECT COUNT(*) FROM mobility_extended PARTITION (p" + month + ")"));
+		Assert.assertEquals(1, count("SELECT COUNT(*) FROM observer_stream_data PARTITION (p_undated)"));
+		Assert.assertEquals(1, count("SELECT COUNT(*) FROM observer_stream_data PARTITION (p_history)"));
+		Assert.assertEquals(2, count("SELECT COUNT(*) FROM observer_stream_data PARTITION (p" + month + ")"));
+
+		// The foreign keys are gone.
+		Assert.assertEquals(
+			0,
+			count(
+				"SELECT COUNT(*) " +
+					"FROM information_schema.referential_constraints " +
+					"WHERE constraint_schema = DATABASE() " +
+					"AND table_name IN (" +
+						"'observer_stream_data', " +
+						"'mobility', " +
+						"'mobility_extended')"));
+
+		// The Mobility upload still cannot store a point twice.
+		try {
+			insertMobility(
+				count("SELECT MIN(user_id) FROM mobility"),
+				count("SELECT MIN(privacy_state_id) FROM mobility"),
+				UUID_UNIQUE,
+				TIME_HISTORY);
+			Assert.fail("The Mobility UUID is no longer unique.");
+		}
+		catch(SQLException e) {
+			// The key rejected the duplicate.
+		}
+	}
+
+	/**
+	 * Drops every unique key on the Mobility UUID, as a database that was
+	 * baselined from an older release may not have one.
+	 */
+	private void dropUniqueUuidKeys() throws SQLException {
+		for(String index : strings(
+				"SELECT DISTINCT index_name " +
+					"FROM information_schema.statistics " +
+					"WHERE table_schema = DATABASE() " +
+					"AND table_name = 'mobility' " +
+					"AND column_name = 'uuid' " +
+					"AND non_unique = 0")) {
+
+			execute("ALTER TABLE mobility DROP INDEX `" + index + "`");
+		}
+	}
+
+	/**
+	 * Drops every foreign key on a table.
+	 */
+	private void dropForeignKeys(final String table) throws SQLException {
+		for(String constraint : strings(
+				"SELECT constraint_name " +
+					"FROM information_schema.referential_constraints " +
+					"WHERE constraint_schema = DATABASE() " +
+					"AND table_name = '" + table + "'")) {
+
+			execute(
+				"ALTER TABLE " + table + " " +
+					"DROP FOREIGN KEY `" + constraint + "`");
+		}
+	}
+
+	/**
+	 * Inserts a Mobility point.
+	 *
+	 * @return The point's ID.
+	 */
+	private long insertMobility(
+			final long userId,
+			final long privacyStateId,
+			final String uuid,
+			final long epochMillis)
+			throws SQLException {
+
+		return
+			insert(
+				"INSERT INTO mobility(uuid, user_id, client, epoch_millis, " +
+					"phone_timezone, location_status, mode, " +
+					"upload_timestamp, privacy_state_id) " +
+					"VALUES ('" + uuid + "', " + userId + ", 'it', " +
+					epochMillis + ", 'UTC', 'unavailable', 'still', " +
+					"NOW(), " + privacyStateId + ")");
+	}
+
+	/**
+	 * Inserts the extended data of a Mobility point.
+	 *
+	 * @return The extended data's ID.
+	 */
+	private long insertExtended(final long mobilityId) throws SQLException {
+		return
+			insert(
+				"INSERT INTO mobility_extended(mobility_id, sensor_data, " +
+					"features, classifier_version) " +
+					"VALUES (" + mobilityId + ", '{}', '{}', '1')");
+	}
+
+	/**
+	 * Inserts a stream data point.
+	 *
+	 * @param time The point's time or null if it does not have one.
+	 */
+	private void insertStreamData(
+			final long userId,
+			final long linkId,
+			final Long time)
+			throws SQLException {
+
+		insert(
+			"INSERT INTO observer_stream_data(user_id, " +
+				"observer_stream_link_id, time, time_offset, time_adjusted, " +
+				"data) " +
+				"VALUES (" + userId + ", " + linkId + ", " + time + ", 0, " +
+				time + ", '{}')");
+	}
+
+	/**
+	 * Executes a statement.
+	 */
+	private void execute(final String sql) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			statement.execute(sql);
+		}
+		finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Executes an insert.
+	 *
+	 * @return The generated ID.
+	 */
+	private long insert(final String sql) throws SQLException {
+		PreparedStatement statement =
+			connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+		try {
+			statement.executeUpdate();
+			ResultSet keys = statement.getGeneratedKeys();
+			try {
+				return keys.next() ? keys.getLong(1) : 0;
+			}
+			finally {
+				keys.close();
+			}
+		}
+		finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Executes a query for one number.
+	 */
+	private long count(final String sql) throws SQLException {
+		List<Long> result = ids(sql);
+		Assert.assertEquals(1, result.size());
+		return result.get(0);
+	}
+
+	/**
+	 * Executes a query for a column of numbers.
+	 */
+	private List<Long> ids(final String sql) throws SQLException {
+		List<Long> result = new ArrayList<Long>();
+		for(String value : strings(sql)) {
+			result.add(Long.valueOf(value));
+		}
+		return result;
+	}
+
+	/**
+	 * Executes a query for a column of strings.
+	 */
+	private List<String> strings(final String sql) throws SQLException {
+		List<String> result = new ArrayList<String>();
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet resultSet = statement.executeQuery(sql);
+			try {
+				while(resultSet.next()) {
+					result.add(resultSet.getString(1));
+				}
+			}
+			finally {
+				resultSet.close();
+			}
+		}
+		finally {
+			statement.close();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,765 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.integration;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.ohmage.domain.Observer;
+import org.ohmage.domain.campaign.Campaign;
+import org.ohmage.domain.campaign.Prompt;
+import org.ohmage.domain.campaign.Survey;
+import org.ohmage.domain.campaign.SurveyItem;
+import org.ohmage.domain.campaign.SurveyResponse;
+import org.ohmage.query.IAuthorizationQueries;
+import org.ohmage.query.ICampaignQueries;
+import org.ohmage.query.ICampaignSurveyResponseQueries;
+import org.ohmage.query.IObserverQueries;
+import org.ohmage.query.ISurveyResponseQueries;
+import org.ohmage.query.IUserCampaignQueries;
+import org.ohmage.query.IUserClassQueries;
+import org.ohmage.query.IUserSurveyResponseQueries;
+
+/**
+ * Times the queries that back the most frequent and most expensive reads
+ * against the {@link IntegrationHarness}'s seeded database. Each query is
+ * run a number of times to warm up the JIT, the connection pool, and the
+ * database's buffers and then timed. The median, 90th and 99th
+ * percentiles, and maximum, in milliseconds, and the number of rows that
+ * each run returned are printed and written to a JSON file so that runs can
+ * be compared.
+ *
+ * The survey response reads cover the filters that the
+ * V15__2.19_survey_response_indexes migration was written for: a campaign,
+ * a user, a survey, prompts, and a privacy state, each over a time range.
+ *
+ * To compare the queries before and after a migration, e.g. V15, the
+ * 'ohmage.it.compare' property is set to its version. The
+ * {@link IntegrationHarness} holds that migration back, each query is timed
+ * and the SQL that it sends is captured from the database's general log and
+ * explained, the migration is applied, and the queries are timed and
+ * explained again. Both are written side by side for each query. This sets
+ * global variables, so the database user must be allowed to, as the scratch
+ * server's is.
+ *
+ * This is not part of the test suite. It is run by the
+ * "integration-benchmark" Ant target, which passes the options as system
+ * properties:
+ * <ul>
+ *   <li>ohmage.it.warmup: The number of untimed runs. The default is 10.</li>
+ *   <li>ohmage.it.runs: The number of timed runs. The default is 50.</li>
+ *   <li>ohmage.it.results: The JSON file. The default is
+ *     build/integration-benchmark.json.</li>
+ * </ul>
+ * The scale of the data is set as described in {@link SyntheticData}.
+ */
+public class QueryBenchmarks {
+	/**
+	 * A query that is timed.
+	 */
+	private abstract static class Query {
+		private final String name;
+
+		/**
+		 * Creates a query.
+		 *
+		 * @param name The query's name, which is printed.
+		 */
+		Query(final String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Runs the query once.
+		 *
+		 * @return The number of rows or objects that were read.
+		 *
+		 * @throws Exception The query failed.
+		 */
+		abstract int run() throws Exception;
+	}
+
+	/**
+	 * A query's timings.
+	 */
+	private static final class Measurement {
+		private final double[] millis;
+		private final int rows;
+
+		/**
+		 * Creates a measurement.
+		 *
+		 * @param millis The time at each of the {@link #PERCENTILES}.
+		 *
+		 * @param rows The number of rows that the last run read.
+		 */
+		Measurement(final double[] millis, final int rows) {
+			this.millis = millis;
+			this.rows = rows;
+		}
+	}
+
+	/**
+	 * A statement that a query sent and the database's plan for it.
+	 */
+	private static final class Plan {
+		private final String statement;
+		private final List<Map<String, String>> rows;
+
+		/**
+		 * Creates a plan.
+		 *
+		 * @param statement The statement.
+		 *
+		 * @param rows The rows of its EXPLAIN output, each a map of the
+		 * 			   column names to their values.
+		 */
+		Plan(final String statement, final List<Map<String, String>> rows) {
+			this.statement = statement;
+			this.rows = rows;
+		}
+	}
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 100 };
+	private static final String[] PERCENTILE_NAMES =
+		{ "p50", "p90", "p99", "max" };
+
+	/**
+	 * The literals in a statement, which are replaced so that statements
+	 * that differ only in them are explained once.
+	 */
+	private static final Pattern PATTERN_LITERAL =
+		Pattern.compile("'(?:[^'\\\\]|\\\\.)*'|\\b\\d+\\b");
+
+	/**
+	 * Starts the harness, times the queries, and writes the results.
+	 *
+	 * @param args Ignored.
+	 *
+	 * @throws Exception The harness could not be started or a query failed.
+	 */
+	public static void main(final String[] args) throws Exception {
+		int warmup = Integer.getInteger("ohmage.it.warmup", 10);
+		int runs = Integer.getInteger("ohmage.it.runs", 50);
+		File results =
+			new File(
+				System.getProperty(
+					"ohmage.it.results",
+					"build/integration-benchmark.json"));
+
+		IntegrationHarness harness = IntegrationHarness.get();
+		SyntheticData data = harness.getData();
+		System.out.println(
+			"Seeded " + data.getUsernames().size() + " users, " +
+				data.getCampaignIds().size() + " campaigns, " +
+				data.getNumResponses() + " responses per user per " +
+				"campaign, and " + data.getNumPoints() + " points per user.");
+		System.out.println();
+
+		List<Query> queries = getQueries(harness);
+		long migration = harness.getHeldMigration();
+		File parent = results.getAbsoluteFile().getParentFile();
+		if(parent != null) {
+			parent.mkdirs();
+		}
+		FileOutputStream output = new FileOutputStream(results);
+		try {
+			JsonGenerator generator =
+				new JsonFactory()
+					.createJsonGenerator(output, JsonEncoding.UTF8);
+			generator.useDefaultPrettyPrinter();
+			generator.writeStartObject();
+			generator.writeNumberField("users", data.getUsernames().size());
+			generator.writeNumberField(
+				"campaigns",
+				data.getCampaignIds().size());
+			generator.writeNumberField("responses", data.getNumResponses());
+			generator.writeNumberField("points", data.getNumPoints());
+			generator.writeNumberField("runs", runs);
+			if(migration > 0) {
+				generator.writeNumberField("migration", migration);
+			}
+			generator.writeArrayFieldStart("queries");
+
+			if(migration > 0) {
+				compare(harness, queries, warmup, runs, generator);
+			}
+			else {
+				System.out.println(
+					String.format(
+						"%-45s %10s %10s %10s %10s %8s",
+						"Query", "p50 (ms)", "p90 (ms)", "p99 (ms)",
+						"max (ms)", "rows"));
+				for(Query query : queries) {
+					Measurement measurement = measure(query, warmup, runs);
+					System.out.println(
+						String.format(
+							"%-45s %10.2f %10.2f %10.2f %10.2f %8d",
+							query.name,
+							measurement.millis[0],
+							measurement.millis[1],
+							measurement.millis[2],
+							measurement.millis[3],
+							measurement.rows));
+
+					generator.writeStartObject();
+					generator.writeStringField("name", query.name);
+					write(measurement, generator);
+					generator.writeEndObject();
+				}
+			}
+
+			generator.writeEndArray();
+			generator.writeEndObject();
+			generator.close();
+		}
+		finally {
+			output.close();
+		}
+
+		System.out.println();
+		System.out.println("The results were written to " + results + ".");
+		System.exit(0);
+	}
+
+	/**
+	 * Times and explains the queries, applies the migration that the
+	 * harness held back, times and explains them again, and prints and
+	 * writes both side by side.
+	 */
+	private static void compare(
+			final IntegrationHarness harness,
+			final List<Query> queries,
+			final int warmup,
+			final int runs,
+			final JsonGenerator generator)
+			throws Exception {
+
+		int count = queries.size();
+		List<Measurement> before = new ArrayList<Measurement>(count);
+		List<List<Plan>> beforePlans = new ArrayList<List<Plan>>(count);
+		List<Measurement> after = new ArrayList<Measurement>(count);
+		List<List<Plan>> afterPlans = new ArrayList<List<Plan>>(count);
+
+		// Without this, the JIT is warmer for the later queries and for
+		// every query after the migration, which favours them.
+		for(Query query : queries) {
+			for(int i = 0; i < warmup; i++) {
+				query.run();
+			}
+		}
+
+		Connection connection = harness.getConnection();
+		try {
+			for(Query query : queries) {
+				before.add(measure(query, warmup, runs));
+				beforePlans.add(explain(connection, query));
+			}
+
+			System.out.println(
+				"Applying migration " + harness.getHeldMigration() + ".");
+			System.out.println();
+			harness.applyHeldMigration();
+
+			for(Query query : queries) {
+				after.add(measure(query, warmup, runs));
+				afterPlans.add(explain(connection, query));
+			}
+		}
+		finally {
+			connection.close();
+		}
+
+		System.out.println(
+			String.format(
+				"%-45s %21s %21s %17s",
+				"", "p50 (ms)", "p99 (ms)", "rows"));
+		System.out.println(
+			String.format(
+				"%-45s %10s %10s %10s %10s %8s %8s",
+				"Query", "before", "after", "before", "after", "before",
+				"after"));
+		for(int i = 0; i < count; i++) {
+			Query query = queries.get(i);
+			System.out.println(
+				String.format(
+					"%-45s %10.2f %10.2f %10.2f %10.2f %8d %8d",
+					query.name,
+					before.get(i).millis[0],
+					after.get(i).millis[0],
+					before.get(i).millis[2],
+					after.get(i).millis[2],
+					before.get(i).rows,
+					after.get(i).rows));
+
+			generator.writeStartObject();
+			generator.writeStringField("name", query.name);
+			generator.writeObjectFieldStart("before");
+			write(before.get(i), generator);
+			write(beforePlans.get(i), generator);
+			generator.writeEndObject();
+			generator.writeObjectFieldStart("after");
+			write(after.get(i), generator);
+			write(afterPlans.get(i), generator);
+			generator.writeEndObject();
+			generator.writeEndObject();
+		}
+	}
+
+	/**
+	 * Runs and times a query.
+	 */
+	private static Measurement measure(
+			final Query query,
+			final int warmup,
+			final int runs)
+			throws Exception {
+
+		for(int i = 0; i < warmup; i++) {
+			query.run();
+		}
+
+		long[] times = new long[runs];
+		int rows = 0;
+		for(int i = 0; i < runs; i++) {
+			long start = System.nanoTime();
+			rows = query.run();
+			times[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(times);
+
+		double[] millis = new double[PERCENTILES.length];
+		for(int i = 0; i < PERCENTILES.length; i++) {
+			int rank = (int) Math.ceil((PERCENTILES[i] / 100.0) * runs);
+			millis[i] = times[Math.min(Math.max(rank - 1, 0), runs - 1)] / 1000000.0;
+		}
+		return new Measurement(millis, rows);
+	}
+
+	/**
+	 * Runs a query once with the database's general log on and explains
+	 * each distinct SELECT statement that it sent.
+	 *
+	 * @param connection A connection of the harness's own, which is not
+	 * 					 the server's.
+	 */
+	private static List<Plan> explain(
+			final Connection connection,
+			final Query query)
+			throws Exception {
+
+		Set<String> statements = new LinkedHashSet<String>();
+		Statement statement = connection.createStatement();
+		try {
+			statement.execute("SET GLOBAL log_output = 'TABLE'");
+			statement.execute("TRUNCATE TABLE mysql.general_log");
+			statement.execute("SET GLOBAL general_log = 1");
+			try {
+				query.run();
+			}
+			finally {
+				statement.execute("SET GLOBAL general_log = 0");
+			}
+
+			Set<String> shapes = new LinkedHashSet<String>();
+			ResultSet resultSet =
+				statement.executeQuery(
+					"SELECT argument " +
+						"FROM mysql.general_log " +
+						"WHERE command_type IN ('Query', 'Execute') " +
+						"ORDER BY event_time");
+			try {
+				while(resultSet.next()) {
+					String sql = resultSet.getString(1).trim();
+					String lower = sql.toLowerCase(Locale.ENGLISH);
+					// Only reads of tables, which leaves out the driver's
+					// and the pool's own statements.
+					if(lower.startsWith("select") &&
+						lower.contains(" from ") &&
+						(! lower.contains("mysql.general_log")) &&
+						shapes.add(
+							PATTERN_LITERAL.matcher(sql).replaceAll("?"))) {
+
+						statements.add(sql);
+					}
+				}
+			}
+			finally {
+				resultSet.close();
+			}
+		}
+		finally {
+			statement.close();
+		}
+
+		List<Plan> result = new ArrayList<Plan>(statements.size());
+		for(String sql : statements) {
+			result.add(new Plan(sql, explain(connection, sql)));
+		}
+		return result;
+	}
+
+	/**
+	 * Explains a statement.
+	 *
+	 * @return The rows of the EXPLAIN output.
+	 */
+	private static List<Map<String, String>> explain(
+			final Connection connection,
+			final String sql)
+			throws SQLException {
+
+		List<Map<String, String>> result =
+			new ArrayList<Map<String, String>>();
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet resultSet = statement.executeQuery("EXPLAIN " + sql);
+			try {
+				ResultSetMetaData metaData = resultSet.getMetaData();
+				int columns = metaData.getColumnCount();
+				while(resultSet.next()) {
+					Map<String, String> row =
+						new LinkedHashMap<String, String>();
+					for(int i = 1; i <= columns; i++) {
+						row.put(
+							metaData.getColumnLabel(i),
+							resultSet.getString(i));
+					}
+					result.add(row);
+				}
+			}
+			finally {
+				resultSet.close();
+			}
+		}
+		finally {
+			statement.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Writes a query's timings as fields of the current object.
+	 */
+	private static void write(
+			final Measurement measurement,
+			final JsonGenerator generator)
+			throws Exception {
+
+		for(int i = 0; i < PERCENTILES.length; i++) {
+			generator.writeNumberField(
+				PERCENTILE_NAMES[i],
+				measurement.millis[i]);
+		}
+		generator.writeNumberField("rows", measurement.rows);
+	}
+
+	/**
+	 * Writes a query's plans as a field of the current object.
+	 */
+	private static void write(
+			final List<Plan> plans,
+			final JsonGenerator generator)
+			throws Exception {
+
+		generator.writeArrayFieldStart("explain");
+		for(Plan plan : plans) {
+			generator.writeStartObject();
+			generator.writeStringField("statement", plan.statement);
+			generator.writeArrayFieldStart("plan");
+			for(Map<String, String> row : plan.rows) {
+				generator.writeStartObject();
+				for(Map.Entry<String, String> column : row.entrySet()) {
+					generator.writeStringField(
+						column.getKey(),
+						column.getValue());
+				}
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+		}
+		generator.writeEndArray();
+	}
+
+	/**
+	 * Builds the queries against the seeded data.
+	 */
+	private static List<Query> getQueries(final IntegrationHarness harness) {
+		final SyntheticData data = harness.getData();
+		final String admin = SyntheticData.ADMIN_USERNAME;
+		final String participant = data.getUsernames().get(0);
+		final String campaignId = data.getCampaignIds().get(0);
+		final Collection<String> campaignIds = data.getCampaignIds();
+		final Observer observer = data.getObserver();
+		final Observer.Stream stream =
+			observer.getStreamsMap().values().iterator().next();
+
+		final IAuthorizationQueries authorizationQueries =
+			harness.getBean(IAuthorizationQueries.class);
+		final IUserCampaignQueries userCampaignQueries =
+			harness.getBean(IUserCampaignQueries.class);
+		final IUserClassQueries userClassQueries =
+			harness.getBean(IUserClassQueries.class);
+		final ICampaignQueries campaignQueries =
+			harness.getBean(ICampaignQueries.class);
+		final ICampaignSurveyResponseQueries campaignSurveyResponseQueries =
+			harness.getBean(ICampaignSurveyResponseQueries.class);
+		final ISurveyResponseQueries surveyResponseQueries =
+			harness.getBean(ISurveyResponseQueries.class);
+		final IUserSurveyResponseQueries userSurveyResponseQueries =
+			harness.getBean(IUserSurveyResponseQueries.class);
+		final IObserverQueries observerQueries =
+			harness.getBean(IObserverQueries.class);
+
+		List<Query> result = new ArrayList<Query>();
+		result.add(new Query("authorization context") {
+			@Override
+			int run() throws Exception {
+				authorizationQueries.getAuthorizationContext(participant);
+				return 1;
+			}
+		});
+		result.add(new Query("campaigns and roles for user") {
+			@Override
+			int run() throws Exception {
+				return
+					userCampaignQueries
+						.getCampaignsAndRolesForUser(participant)
+						.size();
+			}
+		});
+		result.add(new Query("classes and roles for user") {
+			@Override
+			int run() throws Exception {
+				return
+					userClassQueries
+						.getClassesAndRolesForUser(participant)
+						.size();
+			}
+		});
+		result.add(new Query("campaign configuration") {
+			@Override
+			int run() throws Exception {
+				campaignQueries.findCampaignConfiguration(campaignId);
+				return 1;
+			}
+		});
+		result.add(new Query("campaign information") {
+			@Override
+			int run() throws Exception {
+				campaignQueries.getCampaignInformation(campaignId);
+				return 1;
+			}
+		});
+		result.add(new Query("survey response stats for campaigns") {
+			@Override
+			int run() throws Exception {
+				return
+					campaignSurveyResponseQueries
+						.getSurveyResponseStatsForCampaigns(admin, campaignIds)
+						.size();
+			}
+		});
+		result.add(new Query("upload stats for users") {
+			@Override
+			int run() throws Exception {
+				Map<String, ?> stats =
+					userSurveyResponseQueries
+						.getUploadStatsForUsers(
+							admin,
+							campaignId,
+							data.getUsernames(),
+							0);
+				return stats.size();
+			}
+		});
+		result.add(new Query("survey responses for campaign") {
+			@Override
+			int run() throws Exception {
+				Campaign campaign =
+					campaignQueries.findCampaignConfiguration(campaignId);
+				List<SurveyResponse> responses =
+					new ArrayList<SurveyResponse>();
+				surveyResponseQueries.retrieveSurveyResponses(
+					campaign, admin, null, null, null, null, null, null,
+					null, null, null, null, null, 0, Long.MAX_VALUE,
+					responses);
+				return responses.size();
+			}
+		});
+		result.add(new Query("survey responses for user, last week") {
+			@Override
+			int run() throws Exception {
+				Campaign campaign =
+					campaignQueries.findCampaignConfiguration(campaignId);
+				List<SurveyResponse> responses =
+					new ArrayList<SurveyResponse>();
+				surveyResponseQueries.retrieveSurveyResponses(
+					campaign, admin, null, Arrays.asList(participant),
+					new DateTime().minusWeeks(1), null, null, null,
+					null, null, null, null, null, 0, Long.MAX_VALUE,
+					responses);
+				return responses.size();
+			}
+		});
+		result.add(new Query("survey responses for campaign, last 30 days") {
+			@Override
+			int run() throws Exception {
+				Campaign campaign =
+					campaignQueries.findCampaignConfiguration(campaignId);
+				List<SurveyResponse> responses =
+					new ArrayList<SurveyResponse>();
+				surveyResponseQueries.retrieveSurveyResponses(
+					campaign, admin, null, null,
+					new DateTime().minusDays(30), null, null, null,
+					null, null, null, null, null, 0, Long.MAX_VALUE,
+					responses);
+				return responses.size();
+			}
+		});
+		result.add(new Query("survey responses for survey, last 30 days") {
+			@Override
+			int run() throws Exception {
+				Campaign campaign =
+					campaignQueries.findCampaignConfiguration(campaignId);
+				List<SurveyResponse> responses =
+					new ArrayList<SurveyResponse>();
+				surveyResponseQueries.retrieveSurveyResponses(
+					campaign, admin, null, null,
+					new DateTime().minusDays(30), null, null,
+					Arrays.asList(getSurvey(campaign).getId()),
+					null, null, null, null, null, 0, Long.MAX_VALUE,
+					responses);
+				return responses.size();
+			}
+		});
+		result.add(new Query("survey responses for prompts, last 30 days") {
+			@Override
+			int run() throws Exception {
+				Campaign campaign =
+					campaignQueries.findCampaignConfiguration(campaignId);
+				List<SurveyResponse> responses =
+					new ArrayList<SurveyResponse>();
+				surveyResponseQueries.retrieveSurveyResponses(
+					campaign, admin, null, null,
+					new DateTime().minusDays(30), null, null, null,
+					getPromptIds(getSurvey(campaign), 2),
+					null, null, null, null, 0, Long.MAX_VALUE,
+					responses);
+				return responses.size();
+			}
+		});
+		result.add(new Query("shared survey responses, last 30 days") {
+			@Override
+			int run() throws Exception {
+				Campaign campaign =
+					campaignQueries.findCampaignConfiguration(campaignId);
+				List<SurveyResponse> responses =
+					new ArrayList<SurveyResponse>();
+				surveyResponseQueries.retrieveSurveyResponses(
+					campaign, admin, null, null,
+					new DateTime().minusDays(30), null,
+					SurveyResponse.PrivacyState.SHARED, null,
+					null, null, null, null, null, 0, Long.MAX_VALUE,
+					responses);
+				return responses.size();
+			}
+		});
+		result.add(new Query("stream data, newest 100") {
+			@Override
+			int run() throws Exception {
+				return
+					observerQueries
+						.readData(
+							stream,
+							participant,
+							observer.getId(),
+							observer.getVersion(),
+							null,
+							null,
+							false,
+							0,
+							100)
+						.size();
+			}
+		});
+		result.add(new Query("stream days, last 30") {
+			@Override
+			int run() throws Exception {
+				LocalDate today = new LocalDate();
+				return
+					observerQueries
+						.readDates(
+							participant,
+							observer.getId(),
+							observer.getVersion(),
+							stream.getId(),
+							stream.getVersion(),
+							today.minusDays(30),
+							today)
+						.size();
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Returns the first of a campaign's surveys.
+	 */
+	private static Survey getSurvey(final Campaign campaign) {
+		return campaign.getSurveys().values().iterator().next();
+	}
+
+	/**
+	 * Returns the IDs of up to some number of a survey's prompts.
+	 */
+	private static List<String> getPromptIds(
+			final Survey survey,
+			final int count) {
+
+		List<String> result = new ArrayList<String>(count);
+		for(SurveyItem surveyItem : survey.getSurveyItems().values()) {
+			if(result.size() == count) {
+				break;
+			}
+			if(surveyItem instanceof Prompt) {
+				result.add(surveyItem.getId());
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.integration;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.junit.Assert;
+import org.junit.Test;
+import org.ohmage.cache.AuthorizationCache;
+import org.ohmage.query.impl.ReplicaRoutingDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Tests the routing of read-only queries against two private servers, a
+ * primary and its replica.
+ */
+public class ReplicaRoutingIntegrationTest extends TestCase {
+	private static final String USERNAME = "it.replica.user";
+
+	/**
+	 * How long to wait for the replica to catch up or be checked.
+	 */
+	private static final long WAIT_MILLIS = 30 * 1000;
+
+	private LocalDatabase primary;
+	private LocalDatabase replica;
+	private org.apache.tomcat.jdbc.pool.DataSource primaryPool;
+	private ReplicaRoutingDataSource router;
+
+	private long primaryServerId;
+	private long replicaServerId;
+
+	/**
+	 * Starts the servers and a router that checks the replica's lag every
+	 * 100 milliseconds. Nothing is started if an existing server is
+	 * configured, as replication needs private servers.
+	 */
+	@Override
+	protected void setUp() throws IOException, SQLException {
+		if(System.getProperty("ohmage.it.jdbc.url") != null) {
+			return;
+		}
+
+		primary = LocalDatabase.startPrimary();
+		replica = primary.startReplica();
+
+		primaryServerId = readServerId(primary.getConnection());
+		replicaServerId = readServerId(replica.getConnection());
+
+		PoolProperties properties = new PoolProperties();
+		properties.setDriverClassName("com.mysql.jdbc.Driver");
+		properties.setUrl(primary.getUrl());
+		properties.setUsername(primary.getUsername());
+		properties.setPassword(primary.getPassword());
+		properties.setDefaultAutoCommit(false);
+		properties.setCommitOnReturn(true);
+		primaryPool = new org.apache.tomcat.jdbc.pool.DataSource(properties);
+
+		router =
+			new ReplicaRoutingDataSource(
+				primaryPool,
+				replica.getUrl(),
+				60000,
+				5000,
+				100);
+	}
+
+	/**
+	 * Stops the router and the servers.
+	 */
+	@Override
+	protected void tearDown() {
+		AuthorizationCache.unbind();
+		if(router != null) {
+			router.destroy();
+		}
+		if(primaryPool != null) {
+			primaryPool.close();
+		}
+		if(replica != null) {
+			replica.stop();
+		}
+		if(primary != null) {
+			primary.stop();
+		}
+	}
+
+	/**
+	 * Tests that read-only queries go to the replica, that other queries go
+	 * to the primary, that a user reads their own writes, and that a replica
+	 * that stops replicating is no longer used.
+	 */
+	@Test
+	public void testRouting() throws Exception {
+		if(router == null) {
+			System.out.println(
+				"Skipping replica routing as an existing server is configured.");
+			return;
+		}
+
+		DataSource readOnly = ReplicaRoutingDataSource.readOnly(router);
+
+		// A write to the primary reaches the replica.
+		new JdbcTemplate(router).execute(
+			"CREATE TABLE replicated (id INT PRIMARY KEY)");
+		waitFor(
+			new Condition() {
+				@Override
+				public boolean isMet() throws SQLException {
+					return
+						(router.getAvailableReplicaCount() == 1) &&
+						hasReplicatedTable(replica.getConnection());
+				}
+			});
+
+		Assert.assertEquals(replicaServerId, readServerId(readOnly));
+		Assert.assertEquals(primaryServerId, readServerId(router));
+
+		// A user who just wrote reads from the primary; others do not.
+		AuthorizationCache.bind(USERNAME);
+		ReplicaRoutingDataSource.recordWrite();
+		Assert.assertEquals(primaryServerId, readServerId(readOnly));
+		AuthorizationCache.bind("it.replica.other");
+		Assert.assertEquals(replicaServerId, readServerId(readOnly));
+		AuthorizationCache.unbind();
+
+		// A replica that is not replicating is not used.
+		replica.stopReplication();
+		waitFor(
+			new Condition() {
+				@Override
+				public boolean isMet() throws SQLException {
+					return router.getAvailableReplicaCount() == 0;
+				}
+			});
+		Assert.assertEquals(primaryServerId, readServerId(readOnly));
+	}
+
+	/**
+	 * A condition to wait for.
+	 */
+	private interface Condition {
+		boolean isMet() throws SQLException;
+	}
+
+	/**
+	 * Waits for a condition to be met.
+	 */
+	private static void waitFor(
+			final Condition condition)
+			throws SQLException, InterruptedException {
+
+		long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+		while(! condition.isMet()) {
+			if(System.currentTimeMillis() > deadline) {
+				fail("The condition was not met in time.");
+			}
+			Thread.sleep(100);
+		}
+	}
+
+	/**
+	 * Returns the ID of the server that a data source's connections go to.
+	 */
+	private static long readServerId(final DataSource dataSource) {
+		return
+			new JdbcTemplate(dataSource).queryForLong("SELECT @@server_id");
+	}
+
+	/**
+	 * Returns whether the table created on the primary is on the server that
+	 * a connection is to and closes it.
+	 */
+	private static boolean hasReplicatedTable(
+			final Connection connection)
+			throws SQLException {
+
+		try {
+			Statement statement = connection.createStatement();
+			try {
+				ResultSet resultSet =
+					statement.executeQuery(
+						"SELECT COUNT(*) " +
+							"FROM information_schema.tables " +
+							"WHERE table_schema = DATABASE() " +
+							"AND table_name = 'replicated'");
+				resultSet.next();
+				return resultSet.getInt(1) == 1;
+			}
+			finally {
+				statement.close();
+			}
+		}
+		finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Returns the ID of the server that a connection is to and closes it.
+	 */
+	private static long readServerId(
+			final Connection connection)
+			throws SQLException {
+
+		try {
+			Statement statement = connection.createStatement();
+			try {
+				ResultSet resultSet =
+					statement.executeQuery("SELECT @@server_id");
+				resultSet.next();
+				return resultSet.getLong(1);
+			}
+			finally {
+				statement.close();
+			}
+		}
+		finally {
+			connection.close();
+		}
+	}
+}
@@ -0,0 +1,575 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.integration;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.ohmage.annotator.Annotator;
+import org.ohmage.annotator.Annotator.ErrorCode;
+import org.ohmage.domain.Annotation;
+import org.ohmage.domain.Observer;
+import org.ohmage.domain.SurveyResponseAnnotations;
+import org.ohmage.domain.SurveyResponseAnnotations.PromptResponseAnnotation;
+import org.ohmage.domain.campaign.PromptResponse;
+import org.ohmage.domain.campaign.Response;
+import org.ohmage.domain.campaign.SurveyResponse;
+import org.ohmage.query.IAnnotationQueries;
+import org.ohmage.query.ICampaignQueries;
+import org.ohmage.query.ISurveyResponseQueries;
+import org.ohmage.request.InputKeys;
+import org.ohmage.request.Request;
+import org.ohmage.request.observer.StreamReadRequest;
+import org.ohmage.request.survey.SurveyResponseReadRequest;
+import org.ohmage.request.survey.SurveyResponseRequest;
+import org.ohmage.request.survey.annotation.SurveyResponseAnnotationBatchReadRequest;
+
+/**
+ * Tests requests end-to-end, from the parameters through the services and
+ * queries to the database and back to the response, against the
+ * {@link IntegrationHarness}.
+ *
+ * This is not part of the unit tests because it starts a database server.
+ * It is run by the "integration" Ant target.
+ */
+public class RequestIntegrationTest extends TestCase {
+	private IntegrationHarness harness;
+
+	/**
+	 * Starts the harness if it is not already running.
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		harness = IntegrationHarness.get();
+	}
+
+	/**
+	 * Tests that the configuration can be read without a user.
+	 *
+	 * @throws Exception The request failed.
+	 */
+	@Test
+	public void testConfigRead() throws Exception {
+		LocalResponse response =
+			harness.dispatch(
+				"/config/read",
+				new LinkedHashMap<String, String>());
+
+		Assert.assertTrue(response.getText(), response.isSuccess());
+		Assert.assertNotNull(response.getJson().optJSONObject("data"));
+	}
+
+	/**
+	 * Tests that a participant can log in and that a wrong password is
+	 * rejected.
+	 *
+	 * @throws Exception The request failed.
+	 */
+	@Test
+	public void testAuthToken() throws Exception {
+		String username = harness.getData().getUsernames().get(0);
+		Assert.assertNotNull(harness.login(username));
+
+		Map<String, String> parameters = new LinkedHashMap<String, String>();
+		parameters.put(InputKeys.USER, username);
+		parameters.put(InputKeys.PASSWORD, SyntheticData.PASSWORD + "x");
+		parameters.put(InputKeys.CLIENT, SyntheticData.CLIENT);
+		LocalResponse response = harness.dispatch("/user/auth_token", parameters);
+
+		Assert.assertFalse(response.getText(), response.isSuccess());
+	}
+
+	/**
+	 * Tests that the administrator can read every seeded campaign.
+	 *
+	 * @throws Exception The request failed.
+	 */
+	@Test
+	public void testCampaignRead() throws Exception {
+		Map<String, String> parameters =
+			authenticate(SyntheticData.ADMIN_USERNAME);
+		parameters.put(InputKeys.OUTPUT_FORMAT, "short");
+		LocalResponse response = harness.dispatch("/campaign/read", parameters);
+
+		Assert.assertTrue(response.getText(), response.isSuccess());
+		JSONObject data = response.getJson().getJSONObject("data");
+		for(String campaignId : harness.getData().getCampaignIds()) {
+			Assert.assertTrue(campaignId, data.has(campaignId));
+		}
+	}
+
+	/**
+	 * Tests that reading a campaign's survey responses returns all of the
+	 * seeded responses.
+	 *
+	 * @throws Exception The request failed.
+	 */
+	@Test
+	public void testSurveyResponseRead() throws Exception {
+		SyntheticData data = harness.getData();
+		String campaignId = data.getCampaignIds().get(0);
+
+		Assert.assertEquals(
+			data.getUsernames().size() * data.getNumResponses(),
+			countSurveyResponses(campaignId, SurveyResponseRequest.URN_SPECIAL_ALL));
+	}
+
+	/**
+	 * Tests that an uploaded survey response can be read back.
+	 *
+	 * @throws Exception The request failed.
+	 */
+	@Test
+	public void testSurveyUpload() throws Exception {
+		String username = harness.getData().getUsernames().get(0);
+		String campaignId = harness.getData().getCampaignIds().get(0);
+		int before = countSurveyResponses(campaignId, username);
+
+		// The upload must name the campaign's creation time.
+		Map<String, String> parameters = authenticate(username);
+		parameters.put(InputKeys.OUTPUT_FORMAT, "short");
+		parameters.put(InputKeys.CAMPAIGN_URN_LIST, campaignId);
+		LocalResponse response = harness.dispatch("/campaign/read", parameters);
+		Assert.assertTrue(response.getText(), response.isSuccess());
+		String creationTimestamp =
+			response
+				.getJson()
+				.getJSONObject("data")
+				.getJSONObject(campaignId)
+				.getString("creation_timestamp");
+
+		JSONObject survey =
+			new JSONArray(
+					new String(
+						Files.readAllBytes(
+							new File(
+									System.getProperty(
+										"ohmage.it.fixtures",
+										"benchmarks/fixtures"),
+									"survey_upload.json")
+								.toPath()),
+						StandardCharsets.UTF_8))
+				.getJSONObject(0);
+		survey.put("survey_key", UUID.randomUUID().toString());
+		survey.put("time", System.currentTimeMillis());
+
+		parameters = authenticate(username);
+		parameters.put(InputKeys.CAMPAIGN_URN, campaignId);
+		parameters.put(
+			InputKeys.CAMPAIGN_CREATION_TIMESTAMP,
+			creationTimestamp);
+		parameters.put(InputKeys.SURVEYS, new JSONArray().put(survey).toString());
+		response = harness.dispatch("/survey/upload", parameters);
+		Assert.assertTrue(response.getText(), response.isSuccess());
+
+		Assert.assertEquals(
+			before + 1,
+			countSurveyResponses(campaignId, username));
+	}
+
+	/**
+	 * Tests that a participant can read back their stream data.
+	 *
+	 * @throws Exception The request failed.
+	 */
+	@Test
+	public void testStreamRead() throws Exception {
+		SyntheticData data = harness.getData();
+		Observer observer = data.getObserver();
+		Observer.Stream stream =
+			observer.getStreamsMap().values().iterator().next();
+		long expected =
+			Math.min(
+				data.getNumPoints(),
+				StreamReadRequest.MAX_NUMBER_TO_RETURN);
+
+		Map<String, String> parameters =
+			authenticate(data.getUsernames().get(0));
+		parameters.put(InputKeys.OBSERVER_ID, observer.getId());
+		parameters.put(InputKeys.STREAM_ID, stream.getId());
+		parameters.put(
+			InputKeys.STREAM_VERSION,
+			Long.toString(stream.getVersion()));
+		parameters.put(InputKeys.NUM_TO_RETURN, Long.toString(expected));
+		LocalResponse response = harness.dispatch("/stream/read", parameters);
+
+		Assert.assertTrue(response.getText(), response.isSuccess());
+		Assert.assertEquals(
+			expected,
+			response.getJson().getJSONArray("data").length());
+	}
+
+	/**
+	 * Tests that the annotations on a survey response and on one of its
+	 * prompt responses are read by the batched query, by the batch read, and
+	 * by a survey response read that includes them.
+	 *
+	 * @throws Exception The request failed.
+	 */
+	@Test
+	public void testSurveyResponseAnnotations() throws Exception {
+		String campaignId = harness.getData().getCampaignIds().get(0);
+		SurveyResponse surveyResponse = getSurveyResponse(campaignId);
+		String surveyResponseId =
+			surveyResponse.getSurveyResponseId().toString();
+		String promptId = getPromptId(surveyResponse);
+
+		String surveyResponseText = "survey " + UUID.randomUUID();
+		String promptResponseText = "prompt " + UUID.randomUUID();
+		annotate(surveyResponseId, null, surveyResponseText);
+		annotate(surveyResponseId, promptId, promptResponseText);
+
+		// The UNION ALL query tells the two kinds of annotations apart.
+		SurveyResponseAnnotations annotations =
+			harness
+				.getBean(IAnnotationQueries.class)
+				.readSurveyResponseAnnotations(
+					campaignId,
+					Arrays.asList(surveyResponse.getSurveyResponseId()))
+				.get(surveyResponse.getSurveyResponseId());
+		Assert.assertNotNull(annotations);
+		List<String> texts = new ArrayList<String>();
+		for(Annotation annotation : annotations.getSurveyResponseAnnotations()) {
+			texts.add(annotation.getText());
+		}
+		Assert.assertTrue(texts.contains(surveyResponseText));
+		Assert.assertFalse(texts.contains(promptResponseText));
+		texts.clear();
+		for(PromptResponseAnnotation annotation :
+				annotations.getPromptResponseAnnotations()) {
+
+			if(promptId.equals(annotation.getPromptId())) {
+				texts.add(annotation.getAnnotation().getText());
+			}
+		}
+		Assert.assertTrue(texts.contains(promptResponseText));
+		Assert.assertFalse(texts.contains(surveyResponseText));
+
+		// The batch read returns them keyed by the survey response ID.
+		Map<String, String> parameters =
+			authenticate(SyntheticData.ADMIN_USERNAME);
+		parameters.put(InputKeys.CAMPAIGN_URN, campaignId);
+		parameters.put(InputKeys.SURVEY_ID_LIST, surveyResponseId);
+		LocalResponse response =
+			harness.dispatch("/annotation/survey_response/batch_read", parameters);
+		Assert.assertTrue(response.getText(), response.isSuccess());
+		assertAnnotated(
+			response
+				.getJson()
+				.getJSONObject("data")
+				.getJSONObject(surveyResponseId),
+			surveyResponseText,
+			promptResponseText);
+
+		// A JSON rows read includes them in the record.
+		parameters = getSurveyResponseReadParameters(campaignId, surveyResponseId);
+		parameters.put(InputKeys.INCLUDE_ANNOTATIONS, "true");
+		response = harness.dispatch("/survey_response/read", parameters);
+		Assert.assertTrue(response.getText(), response.isSuccess());
+		JSONArray records = response.getJson().getJSONArray("data");
+		Assert.assertEquals(1, records.length());
+		assertAnnotated(
+			records
+				.getJSONObject(0)
+				.getJSONObject(SurveyResponseReadRequest.JSON_KEY_ANNOTATIONS),
+			surveyResponseText,
+			promptResponseText);
+
+		// Without the parameter, they are left out.
+		parameters = getSurveyResponseReadParameters(campaignId, surveyResponseId);
+		response = harness.dispatch("/survey_response/read", parameters);
+		Assert.assertTrue(response.getText(), response.isSuccess());
+		Assert.assertFalse(
+			response
+				.getJson()
+				.getJSONArray("data")
+				.getJSONObject(0)
+				.has(SurveyResponseReadRequest.JSON_KEY_ANNOTATIONS));
+
+		// They cannot be included in CSV.
+		parameters = getSurveyResponseReadParameters(campaignId, surveyResponseId);
+		parameters.put(InputKeys.OUTPUT_FORMAT, "csv");
+		parameters.put(InputKeys.INCLUDE_ANNOTATIONS, "true");
+		response = harness.dispatch("/survey_response/read", parameters);
+		Assert.assertFalse(response.getText(), response.isSuccess());
+	}
+
+	/**
+	 * Tests that the batch read rejects an empty or oversized list of survey
+	 * response IDs and that it omits the survey responses of other
+	 * campaigns.
+	 *
+	 * @throws Exception The request failed.
+	 */
+	@Test
+	public void testSurveyResponseAnnotationBatchReadValidation()
+			throws Exception {
+
+		List<String> campaignIds = harness.getData().getCampaignIds();
+		String campaignId = campaignIds.get(0);
+
+		Map<String, String> parameters =
+			authenticate(SyntheticData.ADMIN_USERNAME);
+		parameters.put(InputKeys.CAMPAIGN_URN, campaignId);
+		parameters.put(InputKeys.SURVEY_ID_LIST, "");
+		assertFailed(
+			harness.dispatch("/annotation/survey_response/batch_read", parameters),
+			ErrorCode.SURVEY_INVALID_SURVEY_ID);
+
+		StringBuilder surveyIds = new StringBuilder();
+		for(int i = 0; i <= SurveyResponseAnnotationBatchReadRequest.MAX_SURVEY_IDS; i++) {
+			if(i > 0) {
+				surveyIds.append(',');
+			}
+			surveyIds.append(UUID.randomUUID());
+		}
+		parameters = authenticate(SyntheticData.ADMIN_USERNAME);
+		parameters.put(InputKeys.CAMPAIGN_URN, campaignId);
+		parameters.put(InputKeys.SURVEY_ID_LIST, surveyIds.toString());
+		assertFailed(
+			harness.dispatch("/annotation/survey_response/batch_read", parameters),
+			ErrorCode.SURVEY_INVALID_SURVEY_ID);
+
+		// An annotated survey response from another campaign is left out.
+		SurveyResponse other = getSurveyResponse(campaignIds.get(1));
+		String otherId = other.getSurveyResponseId().toString();
+		annotate(otherId, null, "other " + UUID.randomUUID());
+
+		Assert.assertTrue(
+			harness
+				.getBean(IAnnotationQueries.class)
+				.readSurveyResponseAnnotations(
+					campaignId,
+					Collections.singleton(other.getSurveyResponseId()))
+				.isEmpty());
+
+		parameters = authenticate(SyntheticData.ADMIN_USERNAME);
+		parameters.put(InputKeys.CAMPAIGN_URN, campaignId);
+		parameters.put(InputKeys.SURVEY_ID_LIST, otherId);
+		LocalResponse response =
+			harness.dispatch("/annotation/survey_response/batch_read", parameters);
+		Assert.assertTrue(response.getText(), response.isSuccess());
+		Assert.assertFalse(
+			response.getJson().getJSONObject("data").has(otherId));
+	}
+
+	/**
+	 * Returns the parameters that authenticate a user.
+	 */
+	private Map<String, String> authenticate(
+			final String username)
+			throws Exception {
+
+		Map<String, String> result = new LinkedHashMap<String, String>();
+		result.put(InputKeys.AUTH_TOKEN, harness.login(username));
+		result.put(InputKeys.CLIENT, SyntheticData.CLIENT);
+		return result;
+	}
+
+	/**
+	 * Returns one of a campaign's survey responses.
+	 */
+	private SurveyResponse getSurveyResponse(
+			final String campaignId)
+			throws Exception {
+
+		List<SurveyResponse> result = new ArrayList<SurveyResponse>();
+		harness
+			.getBean(ISurveyResponseQueries.class)
+			.retrieveSurveyResponses(
+				harness
+					.getBean(ICampaignQueries.class)
+					.findCampaignConfiguration(campaignId),
+				SyntheticData.ADMIN_USERNAME,
+				null, null, null, null, null, null, null, null, null, null,
+				null, 0, 1,
+				result);
+		Assert.assertFalse(result.isEmpty());
+		return result.get(0);
+	}
+
+	/**
+	 * Returns the ID of a prompt that a survey response answered outside of
+	 * any repeatable set.
+	 */
+	private String getPromptId(final SurveyResponse surveyResponse) {
+		for(Response response : surveyResponse.getResponses().values()) {
+			if(response instanceof PromptResponse) {
+				return response.getId();
+			}
+		}
+		throw new AssertionError("The survey response has no prompt responses.");
+	}
+
+	/**
+	 * Annotates a survey response, or one of its prompt responses if a
+	 * prompt ID is given, as the administrator.
+	 */
+	private void annotate(
+			final String surveyResponseId,
+			final String promptId,
+			final String text)
+			throws Exception {
+
+		Map<String, String> parameters =
+			authenticate(SyntheticData.ADMIN_USERNAME);
+		parameters.put(InputKeys.SURVEY_ID, surveyResponseId);
+		parameters.put(
+			InputKeys.TIME,
+			Long.toString(System.currentTimeMillis()));
+		parameters.put(InputKeys.TIMEZONE, "UTC");
+		parameters.put(InputKeys.ANNOTATION_TEXT, text);
+
+		String path;
+		if(promptId == null) {
+			path = "/annotation/survey_response/create";
+		}
+		else {
+			parameters.put(InputKeys.PROMPT_ID, promptId);
+			path = "/annotation/prompt_response/create";
+		}
+		LocalResponse response = harness.dispatch(path, parameters);
+		Assert.assertTrue(response.getText(), response.isSuccess());
+	}
+
+	/**
+	 * Asserts that the JSON annotations of a survey response contain a
+	 * survey response annotation and a prompt response annotation.
+	 */
+	private static void assertAnnotated(
+			final JSONObject annotations,
+			final String surveyResponseText,
+			final String promptResponseText)
+			throws Exception {
+
+		Assert.assertTrue(
+			annotations.toString(),
+			hasText(
+				annotations.getJSONArray("survey_response"),
+				surveyResponseText));
+		Assert.assertTrue(
+			annotations.toString(),
+			hasText(
+				annotations.getJSONArray("prompt_responses"),
+				promptResponseText));
+	}
+
+	/**
+	 * Returns whether a JSON array of annotations has one with some text.
+	 */
+	private static boolean hasText(
+			final JSONArray annotations,
+			final String text)
+			throws Exception {
+
+		for(int i = 0; i < annotations.length(); i++) {
+			if(text.equals(annotations.getJSONObject(i).getString("text"))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Asserts that a request failed with some error code.
+	 */
+	private static void assertFailed(
+			final LocalResponse response,
+			final ErrorCode errorCode)
+			throws Exception {
+
+		Assert.assertFalse(response.getText(), response.isSuccess());
+		Assert.assertEquals(
+			response.getText(),
+			errorCode.toString(),
+			response
+				.getJson()
+				.getJSONArray(Request.JSON_KEY_ERRORS)
+				.getJSONObject(0)
+				.getString(Annotator.JSON_KEY_CODE));
+	}
+
+	/**
+	 * Returns the parameters of an administrator's JSON rows read of one of
+	 * a campaign's survey responses.
+	 */
+	private Map<String, String> getSurveyResponseReadParameters(
+			final String campaignId,
+			final String surveyResponseId)
+			throws Exception {
+
+		Map<String, String> parameters =
+			authenticate(SyntheticData.ADMIN_USERNAME);
+		parameters.put(InputKeys.CAMPAIGN_URN, campaignId);
+		parameters.put(
+			InputKeys.USER_LIST,
+			SurveyResponseRequest.URN_SPECIAL_ALL);
+		parameters.put(
+			InputKeys.SURVEY_ID_LIST,
+			SurveyResponseRequest.URN_SPECIAL_ALL);
+		parameters.put(InputKeys.SURVEY_RESPONSE_ID_LIST, surveyResponseId);
+		parameters.put(
+			InputKeys.COLUMN_LIST,
+			SurveyResponseRequest.URN_SPECIAL_ALL);
+		parameters.put(InputKeys.OUTPUT_FORMAT, "json-rows");
+		return parameters;
+	}
+
+	/**
+	 * Returns the number of a campaign's survey responses that the
+	 * administrator can read for some user or all users.
+	 */
+	private int countSurveyResponses(
+			final String campaignId,
+			final String userList)
+			throws Exception {
+
+		Map<String, String> parameters =
+			authenticate(SyntheticData.ADMIN_USERNAME);
+		parameters.put(InputKeys.CAMPAIGN_URN, campaignId);
+		parameters.put(InputKeys.USER_LIST, userList);
+		parameters.put(
+			InputKeys.SURVEY_ID_LIST,
+			SurveyResponseRequest.URN_SPECIAL_ALL);
+		parameters.put(
+			InputKeys.COLUMN_LIST,
+			SurveyResponseRequest.URN_SPECIAL_ALL);
+		parameters.put(InputKeys.OUTPUT_FORMAT, "json-rows");
+		LocalResponse response =
+			harness.dispatch("/survey_response/read", parameters);
+
+		Assert.assertTrue(response.getText(), response.isSuccess());
+		return
+			response
+				.getJson()
+				.getJSONObject("metadata")
+				.getInt(Request.JSON_KEY_TOTAL_NUM_RESULTS);
+	}
+}
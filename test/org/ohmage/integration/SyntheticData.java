@@ -0,0 +1,357 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.integration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import jbcrypt.BCrypt;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ObjectNode;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.ohmage.domain.Audio;
+import org.ohmage.domain.Clazz;
+import org.ohmage.domain.DataStream;
+import org.ohmage.domain.IMedia;
+import org.ohmage.domain.Image;
+import org.ohmage.domain.Observer;
+import org.ohmage.domain.User;
+import org.ohmage.domain.Video;
+import org.ohmage.domain.campaign.Campaign;
+import org.ohmage.domain.campaign.SurveyResponse;
+import org.ohmage.exception.DataAccessException;
+import org.ohmage.exception.DomainException;
+import org.ohmage.query.ICampaignQueries;
+import org.ohmage.query.IClassQueries;
+import org.ohmage.query.IObserverQueries;
+import org.ohmage.query.ISurveyUploadQuery;
+import org.ohmage.query.IUserQueries;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Seeds the integration database with synthetic users, a class, campaigns,
+ * survey responses, and stream data built from the benchmark fixtures in
+ * 'benchmarks/fixtures'. Everything is written through the same queries
+ * that the server uses, so the rows are exactly what production would
+ * store.
+ *
+ * The scale is set with system properties:
+ * <ul>
+ *   <li>ohmage.it.users: The number of participants. The default is 10.</li>
+ *   <li>ohmage.it.campaigns: The number of campaigns, each of which every
+ *     participant belongs to. The default is 2.</li>
+ *   <li>ohmage.it.responses: The number of survey responses per participant
+ *     per campaign. The default is 20.</li>
+ *   <li>ohmage.it.points: The number of stream data points per participant.
+ *     The default is 100.</li>
+ * </ul>
+ */
+public final class SyntheticData {
+	/**
+	 * The administrator, who creates and supervises everything.
+	 */
+	public static final String ADMIN_USERNAME = "it.admin";
+	/**
+	 * The password of every user.
+	 */
+	public static final String PASSWORD = "it.Password.1";
+	/**
+	 * The client that uploads the data.
+	 */
+	public static final String CLIENT = "integration";
+	/**
+	 * The class to which every user belongs.
+	 */
+	public static final String CLASS_ID = "urn:class:ohmage:it";
+
+	private static final String USERNAME_PREFIX = "it.user.";
+	private static final String CAMPAIGN_ID_PREFIX = "urn:campaign:ohmage:it:";
+	private static final String FIXTURE_CAMPAIGN_ID =
+		"urn:campaign:ohmage:benchmark:wellbeing";
+	private static final String FIXTURE_CAMPAIGN_NAME = "Daily Wellbeing";
+
+	/**
+	 * The time between the seeded survey responses and points of one user.
+	 */
+	private static final long SPACING_MILLIS = 60 * 60 * 1000;
+
+	/**
+	 * The number of survey responses or points that are stored at once.
+	 */
+	private static final int BATCH_SIZE = 100;
+
+	private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+	private final int numUsers;
+	private final int numCampaigns;
+	private final int numResponses;
+	private final int numPoints;
+
+	private final List<String> usernames = new ArrayList<String>();
+	private final List<String> campaignIds = new ArrayList<String>();
+	private Observer observer;
+
+	/**
+	 * Creates the data at the scale given by the system properties.
+	 */
+	public SyntheticData() {
+		numUsers = Integer.getInteger("ohmage.it.users", 10);
+		numCampaigns = Integer.getInteger("ohmage.it.campaigns", 2);
+		numResponses = Integer.getInteger("ohmage.it.responses", 20);
+		numPoints = Integer.getInteger("ohmage.it.points", 100);
+
+		if(numUsers < 1) {
+			throw new IllegalArgumentException(
+				"There must be at least one user.");
+		}
+		if(numCampaigns < 1) {
+			throw new IllegalArgumentException(
+				"There must be at least one campaign.");
+		}
+	}
+
+	/**
+	 * Stores all of the data.
+	 *
+	 * @param context The server's application context.
+	 *
+	 * @param fixtures The directory with the benchmark fixtures.
+	 *
+	 * @throws IOException A fixture could not be read.
+	 *
+	 * @throws JSONException A survey response fixture is invalid.
+	 *
+	 * @throws DomainException A fixture is invalid.
+	 *
+	 * @throws DataAccessException The data could not be stored.
+	 */
+	public void seed(
+			final ApplicationContext context,
+			final File fixtures)
+			throws IOException, JSONException, DomainException, DataAccessException {
+
+		IUserQueries userQueries = context.getBean(IUserQueries.class);
+		IClassQueries classQueries = context.getBean(IClassQueries.class);
+		ICampaignQueries campaignQueries =
+			context.getBean(ICampaignQueries.class);
+		ISurveyUploadQuery surveyUploadQuery =
+			context.getBean(ISurveyUploadQuery.class);
+		IObserverQueries observerQueries =
+			context.getBean(IObserverQueries.class);
+
+		// Hashing is deliberately slow, so every user shares one hash.
+		String hashedPassword =
+			BCrypt.hashpw(PASSWORD, BCrypt.gensalt(User.BCRYPT_COMPLEXITY));
+
+		// Create the users and put them in one class.
+		Map<String, Clazz.Role> roles = new HashMap<String, Clazz.Role>();
+		userQueries.createUser(
+			ADMIN_USERNAME, null, hashedPassword, null,
+			true, true, false, true, false);
+		roles.put(ADMIN_USERNAME, Clazz.Role.PRIVILEGED);
+		for(int i = 0; i < numUsers; i++) {
+			String username = USERNAME_PREFIX + i;
+			userQueries.createUser(
+				username, null, hashedPassword, null,
+				false, true, false, false, false);
+			roles.put(username, Clazz.Role.RESTRICTED);
+			usernames.add(username);
+		}
+		classQueries.createClass(
+			CLASS_ID,
+			"Integration",
+			"The users of the integration tests.");
+		classQueries.updateClass(CLASS_ID, null, null, roles, null);
+
+		// Create the campaigns in the class, which makes every user a
+		// participant, and upload each participant's responses.
+		String campaignXml = read(fixtures, "campaign.xml");
+		JSONArray uploads = new JSONArray(read(fixtures, "survey_upload.json"));
+		long now = System.currentTimeMillis();
+		for(int i = 0; i < numCampaigns; i++) {
+			String campaignId = CAMPAIGN_ID_PREFIX + i;
+			Campaign campaign =
+				new Campaign(
+					null,
+					null,
+					"A campaign used by the integration tests.",
+					Campaign.RunningState.RUNNING,
+					Campaign.PrivacyState.SHARED,
+					// The database stores whole seconds.
+					new Date((now / 1000) * 1000),
+					campaignXml
+						.replace(FIXTURE_CAMPAIGN_ID, campaignId)
+						.replace(
+							FIXTURE_CAMPAIGN_NAME,
+							FIXTURE_CAMPAIGN_NAME + " " + i),
+					false);
+			campaignQueries.createCampaign(
+				campaign,
+				Collections.singletonList(CLASS_ID),
+				ADMIN_USERNAME);
+			campaignIds.add(campaignId);
+
+			for(String username : usernames) {
+				List<SurveyResponse> batch = new ArrayList<SurveyResponse>();
+				for(int j = 0; j < numResponses; j++) {
+					JSONObject upload =
+						new JSONObject(
+							uploads.getJSONObject(j % uploads.length()).toString());
+					upload.put("survey_key", UUID.randomUUID().toString());
+					upload.put("time", now - ((j + 1) * SPACING_MILLIS));
+					batch.add(
+						new SurveyResponse(
+							username,
+							campaignId,
+							CLIENT,
+							campaign,
+							upload,
+							false));
+
+					if(batch.size() == BATCH_SIZE) {
+						insert(surveyUploadQuery, username, campaignId, batch);
+					}
+				}
+				insert(surveyUploadQuery, username, campaignId, batch);
+			}
+		}
+
+		// Create the observer and upload each participant's points.
+		observer = new Observer(read(fixtures, "observer.xml"));
+		observerQueries.createObserver(ADMIN_USERNAME, observer);
+		JsonNode points =
+			JSON_MAPPER.readTree(read(fixtures, "stream_upload.json"));
+		for(String username : usernames) {
+			List<DataStream> batch = new ArrayList<DataStream>();
+			for(int j = 0; j < numPoints; j++) {
+				ObjectNode point = JSON_MAPPER.createObjectNode();
+				point.putAll((ObjectNode) points.get(j % points.size()));
+
+				ObjectNode metadata = JSON_MAPPER.createObjectNode();
+				metadata.putAll((ObjectNode) point.get("metadata"));
+				metadata.put("id", UUID.randomUUID().toString());
+				metadata.put("time", now - ((j + 1) * SPACING_MILLIS));
+				point.put("metadata", metadata);
+
+				batch.add(observer.getDataStream(point));
+				if(batch.size() == BATCH_SIZE) {
+					observerQueries.storeData(username, observer, batch);
+					batch.clear();
+				}
+			}
+			if(! batch.isEmpty()) {
+				observerQueries.storeData(username, observer, batch);
+			}
+		}
+	}
+
+	/**
+	 * Returns the participants' usernames.
+	 *
+	 * @return The usernames, not including the administrator.
+	 */
+	public List<String> getUsernames() {
+		return Collections.unmodifiableList(usernames);
+	}
+
+	/**
+	 * Returns the campaigns' IDs.
+	 *
+	 * @return The campaign IDs.
+	 */
+	public List<String> getCampaignIds() {
+		return Collections.unmodifiableList(campaignIds);
+	}
+
+	/**
+	 * Returns the observer whose streams were seeded.
+	 *
+	 * @return The observer.
+	 */
+	public Observer getObserver() {
+		return observer;
+	}
+
+	/**
+	 * Returns the number of survey responses per participant per campaign.
+	 *
+	 * @return The number of survey responses.
+	 */
+	public int getNumResponses() {
+		return numResponses;
+	}
+
+	/**
+	 * Returns the number of stream data points per participant.
+	 *
+	 * @return The number of points.
+	 */
+	public int getNumPoints() {
+		return numPoints;
+	}
+
+	/**
+	 * Stores a batch of survey responses and clears it.
+	 */
+	private static void insert(
+			final ISurveyUploadQuery surveyUploadQuery,
+			final String username,
+			final String campaignId,
+			final List<SurveyResponse> batch)
+			throws DataAccessException {
+
+		if(batch.isEmpty()) {
+			return;
+		}
+		surveyUploadQuery.insertSurveys(
+			username,
+			CLIENT,
+			campaignId,
+			batch,
+			Collections.<UUID, Image>emptyMap(),
+			Collections.<UUID, Video>emptyMap(),
+			Collections.<UUID, Audio>emptyMap(),
+			Collections.<UUID, IMedia>emptyMap());
+		batch.clear();
+	}
+
+	/**
+	 * Reads a fixture.
+	 */
+	private static String read(
+			final File fixtures,
+			final String name)
+			throws IOException {
+
+		return
+			new String(
+				Files.readAllBytes(new File(fixtures, name).toPath()),
+				StandardCharsets.UTF_8);
+	}
+}
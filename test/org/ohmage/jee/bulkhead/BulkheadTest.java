@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.jee.bulkhead;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the bulkheads' admission control and connection budgets.
+ */
+public class BulkheadTest extends TestCase {
+	/**
+	 * Tests that a full bulkhead queues up to its limit, admits a waiting
+	 * request once a running one exits, and rejects everything else.
+	 */
+	@Test
+	public void testAdmission() throws InterruptedException {
+		final Bulkhead bulkhead =
+			new Bulkhead(
+				"test",
+				"/survey_response/read",
+				1,
+				1,
+				5000,
+				0,
+				10);
+
+		Assert.assertTrue(bulkhead.enter());
+
+		// The second request waits in the queue.
+		final CountDownLatch admitted = new CountDownLatch(1);
+		Thread waiter = new Thread() {
+			@Override
+			public void run() {
+				try {
+					if(bulkhead.enter()) {
+						admitted.countDown();
+						bulkhead.exit();
+					}
+				}
+				catch(InterruptedException e) {
+					// The test will fail.
+				}
+			}
+		};
+		waiter.start();
+		while(bulkhead.getWaiting() == 0) {
+			Thread.sleep(10);
+		}
+
+		// The third request finds the queue full.
+		Assert.assertFalse(bulkhead.enter());
+		Assert.assertEquals(1, bulkhead.getRejected());
+
+		bulkhead.exit();
+		Assert.assertTrue(admitted.await(5, TimeUnit.SECONDS));
+		waiter.join();
+
+		Assert.assertEquals(0, bulkhead.getInFlight());
+		Assert.assertEquals(0, bulkhead.getWaiting());
+		Assert.assertEquals(2, bulkhead.getAdmitted());
+	}
+
+	/**
+	 * Tests that a request that waits too long is rejected.
+	 */
+	@Test
+	public void testTimeout() throws InterruptedException {
+		Bulkhead bulkhead =
+			new Bulkhead("test", "", 1, 1, 50, 0, 10);
+
+		Assert.assertTrue(bulkhead.enter());
+		Assert.assertFalse(bulkhead.enter());
+		Assert.assertEquals(1, bulkhead.getRejected());
+		Assert.assertEquals(0, bulkhead.getWaiting());
+		bulkhead.exit();
+	}
+
+	/**
+	 * Tests that the URIs are looked up and may not be in two bulkheads.
+	 */
+	@Test
+	public void testRegistry() {
+		Bulkhead export =
+			new Bulkhead(
+				"registry.export",
+				" /survey_response/read, /stream/read ",
+				1,
+				0,
+				0,
+				0,
+				10);
+		Bulkheads bulkheads = new Bulkheads(Arrays.asList(export));
+		try {
+			Assert.assertSame(export, bulkheads.get("/stream/read"));
+			Assert.assertNull(bulkheads.get("/survey/upload"));
+		}
+		finally {
+			bulkheads.destroy();
+		}
+
+		try {
+			new Bulkheads(
+				Arrays.asList(
+					export,
+					new Bulkhead(
+						"registry.other",
+						"/stream/read",
+						1,
+						0,
+						0,
+						0,
+						10)));
+			fail("The same URI was in two bulkheads.");
+		}
+		catch(IllegalArgumentException e) {
+			// Passed.
+		}
+	}
+
+	/**
+	 * Tests that a bulkhead's requests may only hold its budget of
+	 * connections and that closing one gives it back exactly once.
+	 */
+	@Test
+	public void testConnectionBudget() throws SQLException {
+		Bulkhead bulkhead =
+			new Bulkhead("test", "", 2, 0, 50, 1, 10);
+		BulkheadDataSource dataSource =
+			new BulkheadDataSource(createDataSource());
+
+		// Without a bulkhead, the budget does not apply.
+		dataSource.getConnection();
+		dataSource.getConnection();
+		Assert.assertEquals(0, bulkhead.getConnectionsInUse());
+
+		bulkhead.bind();
+		try {
+			Connection connection = dataSource.getConnection();
+			Assert.assertEquals(1, bulkhead.getConnectionsInUse());
+
+			try {
+				dataSource.getConnection();
+				fail("The bulkhead's connection budget was exceeded.");
+			}
+			catch(SQLException e) {
+				Assert.assertEquals(1, bulkhead.getConnectionTimeouts());
+			}
+
+			connection.close();
+			connection.close();
+			Assert.assertEquals(0, bulkhead.getConnectionsInUse());
+
+			dataSource.getConnection().close();
+			Assert.assertEquals(0, bulkhead.getConnectionsInUse());
+		}
+		finally {
+			Bulkhead.unbind();
+		}
+	}
+
+	/**
+	 * Creates a data source whose connections do nothing.
+	 *
+	 * @return The data source.
+	 */
+	private static DataSource createDataSource() {
+		final InvocationHandler connectionHandler = new InvocationHandler() {
+			@Override
+			public Object invoke(
+					final Object proxy,
+					final Method method,
+					final Object[] args) {
+
+				return null;
+			}
+		};
+
+		return
+			(DataSource) Proxy.newProxyInstance(
+				DataSource.class.getClassLoader(),
+				new Class<?>[] { DataSource.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(
+							final Object proxy,
+							final Method method,
+							final Object[] args) {
+
+						if("getConnection".equals(method.getName())) {
+							return
+								Proxy.newProxyInstance(
+									Connection.class.getClassLoader(),
+									new Class<?>[] { Connection.class },
+									connectionHandler);
+						}
+						return null;
+					}
+				});
+	}
+}
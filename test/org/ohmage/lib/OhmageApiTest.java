@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.lib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletContext;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.ohmage.request.RequestBuilder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the streaming reads of the API against a local stub server.
+ */
+public class OhmageApiTest extends TestCase {
+	private static final String CONTEXT_PATH = "/app";
+	private static final int NUM_RESULTS = 100;
+	private static final long TIMEOUT_SECONDS = 10;
+
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private ExecutorService clientExecutor;
+	private OhmageApi api;
+
+	// Whether the server streams results until the client goes away.
+	private volatile boolean endless = false;
+	// Counted down once the server could no longer write an endless response.
+	private final CountDownLatch disconnected = new CountDownLatch(1);
+	// The client ports from which the requests were made.
+	private final Set<Integer> clientPorts =
+		Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+	/**
+	 * Starts the stub server, which responds to survey response reads with
+	 * either a complete JSON rows response or an endless one, and creates an
+	 * API with a single pooled connection to it.
+	 */
+	@Override
+	protected void setUp() throws IOException {
+		new RequestBuilder().setServletContext(
+			(ServletContext) Proxy.newProxyInstance(
+				ServletContext.class.getClassLoader(),
+				new Class<?>[] { ServletContext.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(
+							final Object proxy,
+							final Method method,
+							final Object[] args) {
+
+						if("getContextPath".equals(method.getName())) {
+							return CONTEXT_PATH;
+						}
+						return null;
+					}
+				}));
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext(
+			RequestBuilder.getInstance().getApiSurveyResponseRead(),
+			new HttpHandler() {
+				@Override
+				public void handle(final HttpExchange exchange)
+						throws IOException {
+
+					clientPorts.add(exchange.getRemoteAddress().getPort());
+					drain(exchange.getRequestBody());
+					exchange
+						.getResponseHeaders()
+						.add("Content-Type", "application/json");
+					exchange.sendResponseHeaders(200, 0);
+
+					OutputStream os = exchange.getResponseBody();
+					try {
+						write(
+							os,
+							"{\"result\":\"success\"," +
+								"\"metadata\":{\"number_of_surveys\":" +
+									NUM_RESULTS + "}," +
+								"\"data\":[");
+						for(int i = 0; endless || (i < NUM_RESULTS); i++) {
+							write(os, ((i == 0) ? "" : ",") + "{\"id\":" + i + "}");
+							if(endless) {
+								Thread.sleep(5);
+							}
+						}
+						write(os, "]}");
+						os.close();
+					}
+					catch(IOException e) {
+						disconnected.countDown();
+						exchange.close();
+					}
+					catch(InterruptedException e) {
+						// The server is being stopped.
+						exchange.close();
+					}
+				}
+			});
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.start();
+
+		clientExecutor = Executors.newSingleThreadExecutor();
+		api =
+			new OhmageApi(
+				"127.0.0.1",
+				server.getAddress().getPort(),
+				false,
+				1,
+				5000,
+				5000);
+	}
+
+	/**
+	 * Stops the stub server and the API.
+	 */
+	@Override
+	protected void tearDown() {
+		api.shutdown();
+		clientExecutor.shutdownNow();
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	/**
+	 * Tests that the results are parsed one at a time and that a fully read
+	 * response returns its connection to the pool.
+	 */
+	@Test
+	public void testStreamingRead() throws Exception {
+		for(int i = 0; i < 2; i++) {
+			Assert.assertEquals(
+				Integer.valueOf(NUM_RESULTS),
+				call(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						ResultReader<JSONObject> reader = read();
+						try {
+							int count = 0;
+							while(reader.hasNext()) {
+								Assert.assertEquals(
+									count,
+									reader.next().getInt("id"));
+								count++;
+							}
+							return count;
+						}
+						finally {
+							reader.close();
+						}
+					}
+				}));
+		}
+
+		// Both reads used the same connection.
+		Assert.assertEquals(1, clientPorts.size());
+	}
+
+	/**
+	 * Tests that closing a reader before the end of the response aborts the
+	 * request instead of reading the rest of the response and that the next
+	 * request gets a new connection.
+	 */
+	@Test
+	public void testEarlyClose() throws Exception {
+		endless = true;
+		call(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				ResultReader<JSONObject> reader = read();
+				try {
+					Assert.assertTrue(reader.hasNext());
+					Assert.assertEquals(0, reader.next().getInt("id"));
+				}
+				finally {
+					reader.close();
+				}
+				return null;
+			}
+		});
+		Assert.assertTrue(
+			disconnected.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+		endless = false;
+		call(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				read().close();
+				return null;
+			}
+		});
+		Assert.assertEquals(2, clientPorts.size());
+	}
+
+	/**
+	 * Starts a survey response read.
+	 */
+	private ResultReader<JSONObject> read() throws Exception {
+		return
+			api.getSurveyResponsesJsonRowsIncrementally(
+				"token",
+				null,
+				null,
+				"test",
+				"urn:campaign:test",
+				Collections.<String>emptyList(),
+				null,
+				Collections.<String>emptyList(),
+				null,
+				null,
+				null,
+				null,
+				null,
+				null,
+				null);
+	}
+
+	/**
+	 * Runs some client code, failing if it does not finish in time, e.g.
+	 * because it is reading an endless response or waiting for a connection
+	 * that was never released.
+	 */
+	private <T> T call(final Callable<T> callable) throws Exception {
+		return
+			clientExecutor
+				.submit(callable)
+				.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Writes and flushes some text.
+	 */
+	private static void write(
+			final OutputStream os,
+			final String text)
+			throws IOException {
+
+		os.write(text.getBytes("UTF-8"));
+		os.flush();
+	}
+
+	/**
+	 * Reads and discards a stream.
+	 */
+	private static void drain(final InputStream is) throws IOException {
+		byte[] chunk = new byte[4096];
+		while(is.read(chunk) != -1) {
+			// Discard it.
+		}
+		is.close();
+	}
+}
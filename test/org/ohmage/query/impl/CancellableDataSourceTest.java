@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ohmage.request.RequestCancellation;
+
+/**
+ * Tests that the statements of a request are cancelled with it.
+ */
+public class CancellableDataSourceTest extends TestCase {
+	private final AtomicInteger cancelled = new AtomicInteger(0);
+
+	/**
+	 * Tests that the running statements are cancelled, that later ones are
+	 * cancelled as soon as they are created, and that the statements of a
+	 * closed connection are left alone.
+	 */
+	@Test
+	public void testCancel() throws SQLException {
+		CancellableDataSource dataSource =
+			new CancellableDataSource(createDataSource());
+
+		// Without a cancellation, the statements are not registered.
+		dataSource.getConnection().createStatement();
+
+		RequestCancellation cancellation = new RequestCancellation();
+		cancellation.bind();
+		try {
+			Connection closed = dataSource.getConnection();
+			closed.createStatement();
+			closed.close();
+
+			Connection connection = dataSource.getConnection();
+			connection.createStatement();
+			connection.prepareStatement("SELECT 1");
+
+			cancellation.cancel();
+			Assert.assertTrue(cancellation.isCancelled());
+			Assert.assertEquals(2, cancelled.get());
+
+			connection.createStatement();
+			Assert.assertEquals(3, cancelled.get());
+		}
+		finally {
+			RequestCancellation.unbind();
+		}
+		Assert.assertNull(RequestCancellation.current());
+	}
+
+	/**
+	 * Creates a data source whose statements count their cancellations.
+	 *
+	 * @return The data source.
+	 */
+	private DataSource createDataSource() {
+		final InvocationHandler statementHandler = new InvocationHandler() {
+			@Override
+			public Object invoke(
+					final Object proxy,
+					final Method method,
+					final Object[] args) {
+
+				String name = method.getName();
+				if("equals".equals(name)) {
+					return proxy == args[0];
+				}
+				else if("hashCode".equals(name)) {
+					return System.identityHashCode(proxy);
+				}
+				else if("cancel".equals(name)) {
+					cancelled.incrementAndGet();
+				}
+				return null;
+			}
+		};
+
+		final InvocationHandler connectionHandler = new InvocationHandler() {
+			@Override
+			public Object invoke(
+					final Object proxy,
+					final Method method,
+					final Object[] args) {
+
+				if(Statement.class.isAssignableFrom(method.getReturnType())) {
+					return
+						Proxy.newProxyInstance(
+							Statement.class.getClassLoader(),
+							new Class<?>[] { method.getReturnType() },
+							statementHandler);
+				}
+				return null;
+			}
+		};
+
+		return
+			(DataSource) Proxy.newProxyInstance(
+				DataSource.class.getClassLoader(),
+				new Class<?>[] { DataSource.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(
+							final Object proxy,
+							final Method method,
+							final Object[] args) {
+
+						if("getConnection".equals(method.getName())) {
+							return
+								Proxy.newProxyInstance(
+									Connection.class.getClassLoader(),
+									new Class<?>[] { Connection.class },
+									connectionHandler);
+						}
+						return null;
+					}
+				});
+	}
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.query.impl;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the trigrams that are indexed and the trigrams that are required by
+ * a search.
+ */
+public class SearchIndexQueriesTest extends TestCase {
+	/**
+	 * Tests that values are folded and divided into their distinct trigrams.
+	 */
+	@Test
+	public void testGetTrigrams() {
+		Assert.assertTrue(SearchIndexQueries.getTrigrams(null).isEmpty());
+		Assert.assertTrue(SearchIndexQueries.getTrigrams("ab").isEmpty());
+
+		Assert.assertEquals(
+			set("joh", "ohn"),
+			SearchIndexQueries.getTrigrams("John"));
+		Assert.assertEquals(
+			set("jos", "ose"),
+			SearchIndexQueries.getTrigrams("JOSÉ"));
+		Assert.assertEquals(
+			set("aaa"),
+			SearchIndexQueries.getTrigrams("aaaaa"));
+	}
+
+	/**
+	 * Tests that only the literal runs of a LIKE pattern are used.
+	 */
+	@Test
+	public void testGetRequiredTrigrams() {
+		Assert.assertEquals(
+			set("joh", "ohn"),
+			SearchIndexQueries.getRequiredTrigrams("%john%"));
+		Assert.assertEquals(
+			set("joh", "smi", "mit"),
+			SearchIndexQueries.getRequiredTrigrams("%joh_smit%"));
+		Assert.assertEquals(
+			set("a%b"),
+			SearchIndexQueries.getRequiredTrigrams("%a\\%b%"));
+		Assert.assertTrue(
+			SearchIndexQueries.getRequiredTrigrams("%jo%hn%").isEmpty());
+
+		StringBuilder longValue = new StringBuilder();
+		for(char c = 'a'; c <= 'z'; c++) {
+			longValue.append(c);
+		}
+		Assert.assertEquals(
+			SearchIndexQueries.MAX_SEARCH_TRIGRAMS,
+			SearchIndexQueries.getRequiredTrigrams(
+				"%" + longValue + "%").size());
+	}
+
+	/**
+	 * Tests that a JOIN is only appended when every pattern can be
+	 * restricted.
+	 */
+	@Test
+	public void testAppendCandidateJoin() {
+		StringBuilder sql = new StringBuilder();
+		List<Object> parameters = new LinkedList<Object>();
+
+		Assert.assertFalse(
+			SearchIndexQueries.appendCandidateJoin(
+				sql,
+				parameters,
+				SearchIndexQueries.Field.USERNAME,
+				"u",
+				Arrays.asList("%john%", "%jo%")));
+		Assert.assertEquals(0, sql.length());
+		Assert.assertTrue(parameters.isEmpty());
+
+		Assert.assertTrue(
+			SearchIndexQueries.appendCandidateJoin(
+				sql,
+				parameters,
+				SearchIndexQueries.Field.USERNAME,
+				"u",
+				Arrays.asList("%john%", "%smith%")));
+		Assert.assertEquals(
+			Arrays.<Object>asList("joh", "ohn", "smi", "mit", "ith"),
+			parameters);
+		Assert.assertTrue(
+			sql.toString().endsWith(
+				"FROM search_index_queue " +
+				"WHERE entity_type = 'user') st_username " +
+				"ON st_username.id = u.id"));
+	}
+
+	private static Set<String> set(final String... values) {
+		return new LinkedHashSet<String>(Arrays.asList(values));
+	}
+}
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.joda.time.DateTimeZone;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.ohmage.request.ColumnarResultBuilder.DateTimeColumn;
+import org.ohmage.request.ColumnarResultBuilder.DictionaryColumn;
+import org.ohmage.request.ColumnarResultBuilder.DoubleColumn;
+import org.ohmage.request.ColumnarResultBuilder.LongColumn;
+import org.ohmage.request.ColumnarResultBuilder.ObjectColumn;
+import org.ohmage.request.ColumnarResultBuilder.StringColumn;
+
+/**
+ * Tests that the columnar result builder pads missing values with nulls and
+ * writes the same values that JSONArray columns would have.
+ */
+public class ColumnarResultBuilderTest extends TestCase {
+	/**
+	 * Tests that the JSON output has every column, in order, with its context
+	 * and values.
+	 *
+	 * @throws IOException There was an error writing the JSON.
+	 *
+	 * @throws JSONException The JSON could not be parsed.
+	 */
+	@Test
+	public void testWriteJsonColumns() throws IOException, JSONException {
+		StringWriter writer = new StringWriter();
+		JsonGenerator generator = new JsonFactory().createJsonGenerator(writer);
+		createTable().writeJsonColumns(generator);
+		generator.flush();
+
+		JSONObject result = new JSONObject(writer.toString());
+
+		Assert.assertEquals(
+				new JSONArray(Arrays.asList("alice", "bob", "alice")).toString(),
+				result.getJSONObject("user").getJSONArray("values").toString());
+		Assert.assertEquals(
+				"[1000,null,3000]",
+				result.getJSONObject("time").getJSONArray("values").toString());
+		Assert.assertEquals(
+				"[1.5,null,null]",
+				result.getJSONObject("latitude").getJSONArray("values").toString());
+		Assert.assertEquals(
+				"[\"1970-01-01 00:00:00\",\"1969-12-31 17:00:00\",null]",
+				result.getJSONObject("timestamp").getJSONArray("values").toString());
+		Assert.assertEquals(
+				"[\"a\\\"b\",null,\"c\"]",
+				result.getJSONObject("id").getJSONArray("values").toString());
+		Assert.assertEquals(
+				"[null,[1,2],{\"k\":\"v\"}]",
+				result.getJSONObject("prompt").getJSONArray("values").toString());
+		Assert.assertEquals(
+				"p",
+				result
+					.getJSONObject("prompt")
+						.getJSONObject("context")
+							.getString("id"));
+		Assert.assertFalse(result.getJSONObject("user").has("context"));
+	}
+
+	/**
+	 * Tests that the CSV output quotes the values, doubles the quotes in
+	 * them, and leaves nulls empty.
+	 *
+	 * @throws IOException There was an error writing the CSV.
+	 *
+	 * @throws JSONException There was an error building the table.
+	 */
+	@Test
+	public void testWriteCsvRows() throws IOException, JSONException {
+		StringWriter writer = new StringWriter();
+		createTable().writeCsvRows(writer);
+
+		Assert.assertEquals(
+				"\"alice\",\"1000\",\"1.5\",\"1970-01-01 00:00:00\",\"a\"\"b\",\n" +
+				"\"bob\",,,\"1969-12-31 17:00:00\",,\"[1, 2]\"\n" +
+				"\"alice\",\"3000\",,,\"c\",\"{\"\"k\"\":\"\"v\"\"}\"\n",
+				writer.toString());
+	}
+
+	/**
+	 * Tests that the dictionary only keeps the distinct values and that a
+	 * column that receives two values for one row is rejected.
+	 */
+	@Test
+	public void testRows() {
+		ColumnarResultBuilder builder = new ColumnarResultBuilder();
+		DictionaryColumn usernames =
+				builder.addColumn("user", new DictionaryColumn());
+
+		for(int i = 0; i < 100; i++) {
+			usernames.add((i % 2 == 0) ? "alice" : "bob");
+			builder.endRow();
+		}
+		Assert.assertEquals(100, builder.getNumRows());
+		Assert.assertEquals(2, usernames.getDictionarySize());
+		Assert.assertEquals("bob", usernames.get(99));
+
+		usernames.add("alice");
+		usernames.add("bob");
+		try {
+			builder.endRow();
+			fail("A column with two values for one row was accepted.");
+		}
+		catch(IllegalStateException e) {
+			// Passed.
+		}
+	}
+
+	/**
+	 * Creates a table of three rows with every type of column where some of
+	 * the rows are missing values.
+	 *
+	 * @return The table.
+	 *
+	 * @throws JSONException There was an error building the prompt context.
+	 */
+	private static ColumnarResultBuilder createTable() throws JSONException {
+		ColumnarResultBuilder builder = new ColumnarResultBuilder();
+		DictionaryColumn usernames =
+				builder.addColumn("user", new DictionaryColumn());
+		LongColumn times = builder.addColumn("time", new LongColumn());
+		DoubleColumn latitudes =
+				builder.addColumn("latitude", new DoubleColumn());
+		DateTimeColumn timestamps =
+				builder.addColumn("timestamp", new DateTimeColumn(true));
+		StringColumn ids = builder.addColumn("id", new StringColumn());
+		ObjectColumn prompt = builder.addColumn("prompt", new ObjectColumn());
+		prompt.setContext(new JSONObject().put("id", "p"));
+
+		usernames.add("alice");
+		times.add(1000L);
+		latitudes.add(1.5);
+		timestamps.add(0, DateTimeZone.UTC);
+		ids.add("a\"b");
+		builder.endRow();
+
+		usernames.add("bob");
+		times.add((Long) null);
+		latitudes.add(Double.NaN);
+		timestamps.add(0, DateTimeZone.forOffsetHours(-7));
+		prompt.add(Arrays.asList(1, 2));
+		builder.endRow();
+
+		usernames.add("alice");
+		times.add(3000L);
+		ids.add("c");
+		prompt.add(new JSONObject().put("k", "v"));
+		builder.endRow();
+
+		return builder;
+	}
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ohmage.request.MediaWriter.ByteRange;
+
+/**
+ * Tests the parsing of Range headers and the transfer of file ranges.
+ */
+public class MediaWriterTest extends TestCase {
+	/**
+	 * Tests parsing the Range header.
+	 */
+	@Test
+	public void testParseRanges() {
+		// Headers that should be ignored.
+		Assert.assertNull(MediaWriter.parseRanges(null, 100));
+		Assert.assertNull(MediaWriter.parseRanges("", 100));
+		Assert.assertNull(MediaWriter.parseRanges("items=0-1", 100));
+		Assert.assertNull(MediaWriter.parseRanges("bytes=", 100));
+		Assert.assertNull(MediaWriter.parseRanges("bytes=a-b", 100));
+		Assert.assertNull(MediaWriter.parseRanges("bytes=5-1", 100));
+		Assert.assertNull(MediaWriter.parseRanges("bytes=-", 100));
+		Assert.assertNull(MediaWriter.parseRanges("bytes=10", 100));
+
+		StringBuilder tooMany = new StringBuilder("bytes=0-0");
+		for(int i = 0; i < MediaWriter.MAX_RANGES; i++) {
+			tooMany.append(",0-0");
+		}
+		Assert.assertNull(MediaWriter.parseRanges(tooMany.toString(), 100));
+
+		// Unsatisfiable headers.
+		Assert.assertTrue(
+			MediaWriter.parseRanges("bytes=100-200", 100).isEmpty());
+		Assert.assertTrue(MediaWriter.parseRanges("bytes=-0", 100).isEmpty());
+		Assert.assertTrue(MediaWriter.parseRanges("bytes=0-", 0).isEmpty());
+
+		// Satisfiable headers.
+		Assert.assertEquals(
+			Arrays.asList(new ByteRange(0, 99)),
+			MediaWriter.parseRanges("bytes=0-", 100));
+		Assert.assertEquals(
+			Arrays.asList(new ByteRange(10, 19)),
+			MediaWriter.parseRanges("bytes=10-19", 100));
+		Assert.assertEquals(
+			Arrays.asList(new ByteRange(90, 99)),
+			MediaWriter.parseRanges("bytes=90-1000", 100));
+		Assert.assertEquals(
+			Arrays.asList(new ByteRange(80, 99)),
+			MediaWriter.parseRanges("bytes=-20", 100));
+		Assert.assertEquals(
+			Arrays.asList(new ByteRange(0, 99)),
+			MediaWriter.parseRanges("bytes=-200", 100));
+		Assert.assertEquals(
+			Arrays.asList(new ByteRange(0, 0), new ByteRange(50, 59)),
+			MediaWriter.parseRanges(" bytes=0-0, 50-59, 200-300", 100));
+	}
+
+	/**
+	 * Tests transferring ranges of a file.
+	 *
+	 * @throws IOException There was an error with the temporary file.
+	 */
+	@Test
+	public void testTransfer() throws IOException {
+		byte[] contents = new byte[100000];
+		for(int i = 0; i < contents.length; i++) {
+			contents[i] = (byte) i;
+		}
+
+		File file = File.createTempFile("media", ".bin");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(contents);
+			out.close();
+
+			List<ByteRange> ranges =
+				MediaWriter.parseRanges("bytes=0-9,99990-", contents.length);
+			ByteArrayOutputStream target = new ByteArrayOutputStream();
+			FileInputStream in = new FileInputStream(file);
+			try {
+				for(ByteRange range : ranges) {
+					MediaWriter.transfer(in.getChannel(), range, target);
+				}
+			}
+			finally {
+				in.close();
+			}
+
+			byte[] expected = new byte[20];
+			System.arraycopy(contents, 0, expected, 0, 10);
+			System.arraycopy(contents, 99990, expected, 10, 10);
+			Assert.assertArrayEquals(expected, target.toByteArray());
+		}
+		finally {
+			file.delete();
+		}
+	}
+}
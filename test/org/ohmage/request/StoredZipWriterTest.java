@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.request;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that the stored ZIP writer writes the readable files, in order, as
+ * STORED entries and omits the files that cannot be read.
+ */
+public class StoredZipWriterTest extends TestCase {
+	/**
+	 * Tests writing small, large, and missing files.
+	 *
+	 * @throws IOException There was an error with the temporary files.
+	 */
+	@Test
+	public void testWrite() throws IOException {
+		Random random = new Random(0);
+		byte[] small = new byte[1000];
+		random.nextBytes(small);
+		byte[] large = new byte[StoredZipWriter.MAX_BUFFERED_SIZE + 1];
+		random.nextBytes(large);
+
+		File smallFile = createFile(small);
+		File largeFile = createFile(large);
+		File missingFile = new File(smallFile.getPath() + ".missing");
+		try {
+			Map<String, URL> entries = new LinkedHashMap<String, URL>();
+			entries.put("large", largeFile.toURI().toURL());
+			entries.put("missing", missingFile.toURI().toURL());
+			entries.put("small", smallFile.toURI().toURL());
+
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			Assert.assertEquals(
+				2,
+				new StoredZipWriter(1).write(entries, output));
+
+			ZipInputStream zip =
+				new ZipInputStream(
+					new ByteArrayInputStream(output.toByteArray()));
+			assertEntry(zip, "large", large);
+			assertEntry(zip, "small", small);
+			Assert.assertNull(zip.getNextEntry());
+			zip.close();
+		}
+		finally {
+			smallFile.delete();
+			largeFile.delete();
+		}
+	}
+
+	private static File createFile(final byte[] contents) throws IOException {
+		File file = File.createTempFile("stored-zip", ".bin");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(contents);
+		out.close();
+		return file;
+	}
+
+	private static void assertEntry(
+			final ZipInputStream zip,
+			final String name,
+			final byte[] contents)
+			throws IOException {
+
+		ZipEntry entry = zip.getNextEntry();
+		Assert.assertNotNull(entry);
+		Assert.assertEquals(name, entry.getName());
+		Assert.assertEquals(ZipEntry.STORED, entry.getMethod());
+
+		ByteArrayOutputStream read = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int length;
+		while((length = zip.read(buffer)) != -1) {
+			read.write(buffer, 0, length);
+		}
+		Assert.assertArrayEquals(contents, read.toByteArray());
+	}
+}
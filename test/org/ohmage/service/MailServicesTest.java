@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Message;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ohmage.util.MailUtils;
+
+import com.sun.mail.smtp.SMTPTransport;
+
+/**
+ * Tests the retry schedule of queued mail and that many messages are sent
+ * over one connection to an in-process mail server.
+ */
+public class MailServicesTest extends TestCase {
+	/**
+	 * Tests that the retry delay doubles until it reaches the maximum and that
+	 * messages are abandoned after the maximum number of attempts.
+	 */
+	@Test
+	public void testGetRetrySeconds() {
+		Assert.assertEquals(
+			Integer.valueOf(MailServices.RETRY_BASE_SECONDS),
+			MailServices.getRetrySeconds(1));
+		Assert.assertEquals(
+			Integer.valueOf(MailServices.RETRY_BASE_SECONDS * 2),
+			MailServices.getRetrySeconds(2));
+		Assert.assertEquals(
+			Integer.valueOf(MailServices.RETRY_BASE_SECONDS * 4),
+			MailServices.getRetrySeconds(3));
+		Assert.assertEquals(
+			Integer.valueOf(MailServices.RETRY_MAX_SECONDS),
+			MailServices.getRetrySeconds(MailServices.MAX_ATTEMPTS - 1));
+		Assert.assertNull(
+			MailServices.getRetrySeconds(MailServices.MAX_ATTEMPTS));
+	}
+
+	/**
+	 * Tests that one connection can be used to send many messages.
+	 */
+	@Test
+	public void testSendOverOneConnection() throws Exception {
+		FakeSmtpServer server = new FakeSmtpServer();
+		server.start();
+
+		try {
+			Properties properties = new Properties();
+			properties.put("mail.smtp.host", "localhost");
+			properties.put(
+				"mail.smtp.port",
+				Integer.toString(server.getPort()));
+			Session session = Session.getInstance(properties);
+
+			SMTPTransport transport =
+				MailUtils.connect(session, null, null);
+			try {
+				for(int i = 0; i < 3; i++) {
+					MimeMessage message = new MimeMessage(session);
+					message.setFrom(new InternetAddress("ohmage@localhost"));
+					message.setRecipient(
+						Message.RecipientType.TO,
+						new InternetAddress("user" + i + "@localhost"));
+					message.setSubject("Message " + i);
+					message.setContent("Body " + i, "text/html");
+
+					MailUtils.sendMailMessage(transport, message);
+				}
+			}
+			finally {
+				MailUtils.close(transport);
+			}
+
+			server.join(10000);
+			Assert.assertEquals(1, server.connections.get());
+			Assert.assertEquals(3, server.messages.get());
+		}
+		finally {
+			server.close();
+		}
+	}
+
+	/**
+	 * A mail server that accepts a single connection and every message sent
+	 * over it, counting the messages.
+	 */
+	private static class FakeSmtpServer extends Thread {
+		private final ServerSocket serverSocket;
+		private final AtomicInteger connections = new AtomicInteger(0);
+		private final AtomicInteger messages = new AtomicInteger(0);
+
+		/**
+		 * Opens the server on a free, local port.
+		 */
+		private FakeSmtpServer() throws IOException {
+			super("FakeSmtpServer");
+			setDaemon(true);
+			serverSocket = new ServerSocket(0);
+		}
+
+		/**
+		 * Returns the port the server is listening on.
+		 */
+		private int getPort() {
+			return serverSocket.getLocalPort();
+		}
+
+		/**
+		 * Closes the server.
+		 */
+		private void close() throws IOException {
+			serverSocket.close();
+		}
+
+		/**
+		 * Answers the commands on the first connection until it is closed.
+		 */
+		@Override
+		public void run() {
+			try {
+				Socket socket = serverSocket.accept();
+				connections.incrementAndGet();
+
+				try {
+					BufferedReader in =
+						new BufferedReader(
+							new InputStreamReader(
+								socket.getInputStream(),
+								"US-ASCII"));
+					Writer out =
+						new OutputStreamWriter(
+							socket.getOutputStream(),
+							"US-ASCII");
+
+					reply(out, "220 localhost");
+
+					String line;
+					while((line = in.readLine()) != null) {
+						String command = line.toUpperCase();
+
+						if(command.startsWith("DATA")) {
+							reply(out, "354 End data with <CR><LF>.<CR><LF>");
+							while(((line = in.readLine()) != null) &&
+								(! ".".equals(line))) {
+								// Discard the message.
+							}
+							messages.incrementAndGet();
+							reply(out, "250 OK");
+						}
+						else if(command.startsWith("QUIT")) {
+							reply(out, "221 Bye");
+							break;
+						}
+						else {
+							reply(out, "250 OK");
+						}
+					}
+				}
+				finally {
+					socket.close();
+				}
+			}
+			catch(IOException e) {
+				// The server was closed.
+			}
+		}
+
+		/**
+		 * Writes a reply to the client.
+		 */
+		private static void reply(
+				final Writer out,
+				final String reply)
+				throws IOException {
+
+			out.write(reply);
+			out.write("\r\n");
+			out.flush();
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the monthly partitions that are created ahead of time and dropped
+ * after the retention period.
+ */
+public class PartitionServicesTest extends TestCase {
+	private static final DateTime NOW =
+		new DateTime(2012, 10, 19, 13, 30, DateTimeZone.UTC);
+
+	/**
+	 * Returns the start of a month in milliseconds.
+	 */
+	private static long month(final int year, final int month) {
+		return new DateTime(year, month, 1, 0, 0, DateTimeZone.UTC).getMillis();
+	}
+
+	/**
+	 * Returns the partitions as the migration creates them in October 2012.
+	 */
+	private static Map<String, Long> getMigratedPartitions() {
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		result.put(PartitionServices.PARTITION_UNDATED, 0L);
+		result.put("p_history", month(2012, 10));
+		result.put("p201210", month(2012, 11));
+		result.put("p201211", month(2012, 12));
+		result.put("p201212", month(2013, 1));
+		result.put("p201301", month(2013, 2));
+		result.put(PartitionServices.PARTITION_FUTURE, null);
+		return result;
+	}
+
+	/**
+	 * Tests that the partition names are the year and month.
+	 */
+	@Test
+	public void testGetPartitionName() {
+		Assert.assertEquals(
+			"p201210",
+			PartitionServices.getPartitionName(NOW));
+		Assert.assertEquals(
+			"p201301",
+			PartitionServices.getPartitionName(NOW.plusMonths(3)));
+	}
+
+	/**
+	 * Tests that no partitions are added while there are enough and that the
+	 * missing months are added in order.
+	 */
+	@Test
+	public void testGetMissingPartitions() {
+		Map<String, Long> partitions = getMigratedPartitions();
+
+		Assert.assertTrue(
+			PartitionServices
+				.getMissingPartitions(partitions, NOW, 3)
+				.isEmpty());
+
+		Map<String, Long> missing =
+			PartitionServices.getMissingPartitions(partitions, NOW, 5);
+		Assert.assertEquals(
+			Arrays.asList("p201302", "p201303"),
+			Arrays.asList(missing.keySet().toArray()));
+		Assert.assertEquals(
+			Long.valueOf(month(2013, 3)),
+			missing.get("p201302"));
+		Assert.assertEquals(
+			Long.valueOf(month(2013, 4)),
+			missing.get("p201303"));
+
+		// After a year without maintenance, every month through the next
+		// three is added.
+		missing =
+			PartitionServices.getMissingPartitions(
+				partitions,
+				NOW.plusYears(1),
+				3);
+		Assert.assertEquals(12, missing.size());
+		Assert.assertEquals(
+			Long.valueOf(month(2014, 2)),
+			missing.get("p201401"));
+	}
+
+	/**
+	 * Tests that a table without bounded partitions has nothing added.
+	 */
+	@Test
+	public void testGetMissingPartitionsUnbounded() {
+		Map<String, Long> partitions =
+			Collections.singletonMap(
+				PartitionServices.PARTITION_FUTURE,
+				(Long) null);
+
+		Assert.assertTrue(
+			PartitionServices
+				.getMissingPartitions(partitions, NOW, 3)
+				.isEmpty());
+	}
+
+	/**
+	 * Tests that only the months before the retention period are dropped and
+	 * that the undated and future partitions are never dropped.
+	 */
+	@Test
+	public void testGetExpiredPartitions() {
+		Map<String, Long> partitions = getMigratedPartitions();
+
+		Assert.assertTrue(
+			PartitionServices
+				.getExpiredPartitions(partitions, NOW, 0)
+				.isEmpty());
+		Assert.assertTrue(
+			PartitionServices
+				.getExpiredPartitions(partitions, NOW, 1)
+				.isEmpty());
+
+		Assert.assertEquals(
+			Arrays.asList("p_history"),
+			PartitionServices.getExpiredPartitions(
+				partitions,
+				NOW.plusMonths(1),
+				1));
+
+		Assert.assertEquals(
+			Arrays.asList("p_history", "p201210", "p201211"),
+			PartitionServices.getExpiredPartitions(
+				partitions,
+				NOW.plusMonths(3),
+				1));
+
+		Assert.assertEquals(
+			Arrays.asList(
+				"p_history",
+				"p201210",
+				"p201211",
+				"p201212",
+				"p201301"),
+			PartitionServices.getExpiredPartitions(
+				partitions,
+				NOW.plusYears(2),
+				1));
+	}
+}
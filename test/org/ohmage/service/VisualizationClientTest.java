@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright 2012 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.ohmage.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ohmage.exception.ServiceException;
+import org.ohmage.request.RequestCancellation;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the visualization client against a local stub visualization server.
+ */
+public class VisualizationClientTest extends TestCase {
+	private static final byte[] IMAGE = new byte[] { (byte) 0x89, 'P', 'N', 'G' };
+
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private String baseUrl;
+	private final AtomicInteger calls = new AtomicInteger(0);
+
+	/**
+	 * Starts the stub server, which returns an image from "/image", an
+	 * error from "/error", and nothing for a long time from "/slow".
+	 */
+	@Override
+	protected void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/image", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				calls.incrementAndGet();
+				drain(exchange.getRequestBody());
+				exchange.getResponseHeaders().add("Content-Type", "image/png");
+				exchange.sendResponseHeaders(200, IMAGE.length);
+				OutputStream os = exchange.getResponseBody();
+				os.write(IMAGE);
+				os.close();
+			}
+		});
+		server.createContext("/error", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				calls.incrementAndGet();
+				drain(exchange.getRequestBody());
+				byte[] error = "R failed.".getBytes("UTF-8");
+				exchange.sendResponseHeaders(500, error.length);
+				OutputStream os = exchange.getResponseBody();
+				os.write(error);
+				os.close();
+			}
+		});
+		server.createContext("/slow", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				calls.incrementAndGet();
+				drain(exchange.getRequestBody());
+				try {
+					Thread.sleep(30000);
+				}
+				catch(InterruptedException e) {
+					// The server is being stopped.
+				}
+				exchange.close();
+			}
+		});
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.start();
+
+		baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops the stub server.
+	 */
+	@Override
+	protected void tearDown() {
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	/**
+	 * Tests that a successful image is handed to the handler unchanged.
+	 */
+	@Test
+	public void testPost() throws ServiceException {
+		VisualizationClient client = createClient(5);
+		try {
+			final ByteArrayOutputStream result = new ByteArrayOutputStream();
+			client.post(
+				baseUrl + "/image",
+				"token='abc'",
+				new VisualizationClient.ResponseHandler() {
+					@Override
+					public void handle(
+						final String contentType,
+						final long contentLength,
+						final InputStream content)
+						throws IOException {
+
+						Assert.assertEquals("image/png", contentType);
+						Assert.assertEquals(IMAGE.length, contentLength);
+
+						byte[] chunk = new byte[4096];
+						int amountRead;
+						while((amountRead = content.read(chunk)) != -1) {
+							result.write(chunk, 0, amountRead);
+						}
+					}
+				});
+
+			Assert.assertTrue(Arrays.equals(IMAGE, result.toByteArray()));
+		}
+		finally {
+			client.destroy();
+		}
+	}
+
+	/**
+	 * Tests that errors are reported and that the circuit opens once the
+	 * threshold is reached.
+	 */
+	@Test
+	public void testCircuitBreaker() {
+		VisualizationClient client = createClient(2);
+		try {
+			for(int i = 0; i < 3; i++) {
+				try {
+					client.post(baseUrl + "/error", "", null);
+					fail("The visualization server returned an error.");
+				}
+				catch(ServiceException e) {
+					// Passed.
+				}
+			}
+
+			// Only the first two calls should have reached the server.
+			Assert.assertEquals(2, calls.get());
+		}
+		finally {
+			client.destroy();
+		}
+	}
+
+	/**
+	 * Tests that cancelling the request aborts its call to the visualization
+	 * server without counting against the server.
+	 */
+	@Test
+	public void testCancel() throws ServiceException {
+		VisualizationClient client =
+			new VisualizationClient(2, 2, 1000, 60000, 1000, 1, 60000, 5000);
+		final RequestCancellation cancellation = new RequestCancellation();
+		ExecutorService canceller = Executors.newSingleThreadExecutor();
+		cancellation.bind();
+		try {
+			canceller.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(200);
+					}
+					catch(InterruptedException e) {
+						return;
+					}
+					cancellation.cancel();
+				}
+			});
+
+			long start = System.currentTimeMillis();
+			try {
+				client.post(baseUrl + "/slow", "", null);
+				fail("The call was not aborted.");
+			}
+			catch(ServiceException e) {
+				Assert.assertTrue(
+					(System.currentTimeMillis() - start) < 10000);
+			}
+			RequestCancellation.unbind();
+
+			// With a threshold of one, a failure would have opened the
+			// circuit.
+			client.post(
+				baseUrl + "/image",
+				"",
+				new VisualizationClient.ResponseHandler() {
+					@Override
+					public void handle(
+						final String contentType,
+						final long contentLength,
+						final InputStream content)
+						throws IOException {
+
+						drain(content);
+					}
+				});
+		}
+		finally {
+			RequestCancellation.unbind();
+			canceller.shutdownNow();
+			client.destroy();
+		}
+	}
+
+	/**
+	 * Creates a client with small timeouts.
+	 *
+	 * @param failureThreshold The number of failures before the circuit
+	 * 						   opens.
+	 *
+	 * @return The client.
+	 */
+	private VisualizationClient createClient(final int failureThreshold) {
+		return
+			new VisualizationClient(
+				2,
+				2,
+				1000,
+				1000,
+				1000,
+				failureThreshold,
+				60000,
+				5000);
+	}
+
+	/**
+	 * Reads and discards the stream.
+	 *
+	 * @param input The stream.
+	 */
+	private static void drain(final InputStream input) throws IOException {
+		byte[] chunk = new byte[4096];
+		while(input.read(chunk) != -1) {
+			// Discard.
+		}
+		input.close();
+	}
+}
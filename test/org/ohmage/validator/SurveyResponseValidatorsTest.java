@@ -28,6 +28,7 @@ import junit.framework.TestCase;
 import org.joda.time.DateTime;
 import org.junit.Assert;
 import org.junit.Test;
+import org.ohmage.domain.campaign.PromptResponseAggregate;
 import org.ohmage.domain.campaign.SurveyResponse;
 import org.ohmage.domain.campaign.SurveyResponse.SortParameter;
 import org.ohmage.exception.ValidationException;
@@ -395,6 +396,62 @@ public class SurveyResponseValidatorsTest extends TestCase {
 		}
 	}
 
+	/**
+	 * Tests the aggregate group list validator.
+	 */
+	@Test
+	public void testValidateAggregateGroupList() {
+		try {
+			for(String emptyValue : ParameterSets.getEmptyValues()) {
+				Assert.assertTrue(SurveyResponseValidators.validateAggregateGroupList(emptyValue).isEmpty());
+			}
+			
+			try {
+				SurveyResponseValidators.validateAggregateGroupList("Invalid value.");
+				fail("The group item was invalid.");
+			}
+			catch(ValidationException e) {
+				// Passed.
+			}
+			
+			for(PromptResponseAggregate.GroupItem groupItem : PromptResponseAggregate.GroupItem.values()) {
+				Assert.assertTrue(SurveyResponseValidators.validateAggregateGroupList(groupItem.toString()).contains(groupItem));
+			}
+			
+			Assert.assertEquals(2, SurveyResponseValidators.validateAggregateGroupList("user,day").size());
+		}
+		catch(ValidationException e) {
+			fail("A validation exception was thrown: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Tests the bucket width validator.
+	 */
+	@Test
+	public void testValidateBucketWidth() {
+		try {
+			for(String emptyValue : ParameterSets.getEmptyValues()) {
+				Assert.assertNull(SurveyResponseValidators.validateBucketWidth(emptyValue));
+			}
+			
+			for(String invalidValue : new String[] { "Invalid value.", "0", "-1", "NaN", "Infinity" }) {
+				try {
+					SurveyResponseValidators.validateBucketWidth(invalidValue);
+					fail("The bucket width was invalid: " + invalidValue);
+				}
+				catch(ValidationException e) {
+					// Passed.
+				}
+			}
+			
+			Assert.assertEquals(2.5, SurveyResponseValidators.validateBucketWidth("2.5"), 0);
+		}
+		catch(ValidationException e) {
+			fail("A validation exception was thrown: " + e.getMessage());
+		}
+	}
+
 	/**
 	 * Tests the start date validator.
 	 */
@@ -564,6 +621,32 @@ public class SurveyResponseValidatorsTest extends TestCase {
 			fail("A validation exception was thrown: " + e.getMessage());
 		}
 	}
+
+	/**
+	 * Tests the include annotations value validator.
+	 */
+	@Test
+	public void testValidateIncludeAnnotations() {
+		try {
+			for(String emptyValue : ParameterSets.getEmptyValues()) {
+				Assert.assertNull(SurveyResponseValidators.validateIncludeAnnotations(emptyValue));
+			}
+			
+			try {
+				SurveyResponseValidators.validateIncludeAnnotations("Invalid value.");
+				fail("The include annotations value was invalid.");
+			}
+			catch(ValidationException e) {
+				// Passed.
+			}
+			
+			Assert.assertEquals(true, SurveyResponseValidators.validateIncludeAnnotations("true"));
+			Assert.assertEquals(false, SurveyResponseValidators.validateIncludeAnnotations("false"));
+		}
+		catch(ValidationException e) {
+			fail("A validation exception was thrown: " + e.getMessage());
+		}
+	}
 	
 	/**
 	 * Generates all of the permutations of the given list of SortParameter